@@ -14646,6 +14646,45 @@ CREATE SEQUENCE public.deliveries_parameterdeliveryordercolumn_id_seq
 ALTER SEQUENCE public.deliveries_parameterdeliveryordercolumn_id_seq OWNED BY public.deliveries_parameterdeliveryordercolumn.id;
 
 
+--
+-- Name: emailnotifications_notificationoutbox; Type: TABLE; Schema: public; Owner: -
+--
+
+CREATE TABLE public.emailnotifications_notificationoutbox (
+    id bigint NOT NULL,
+    type character varying(255),
+    recipients text,
+    payload text,
+    dedupkey character varying(255),
+    status character varying(255) DEFAULT '01pending'::character varying,
+    attempts integer DEFAULT 0,
+    nextattemptdate timestamp without time zone DEFAULT now(),
+    lasterror text,
+    createdate timestamp without time zone DEFAULT now(),
+    sentdate timestamp without time zone,
+    entityversion bigint DEFAULT 0
+);
+
+
+--
+-- Name: emailnotifications_notificationoutbox_id_seq; Type: SEQUENCE; Schema: public; Owner: -
+--
+
+CREATE SEQUENCE public.emailnotifications_notificationoutbox_id_seq
+    START WITH 1
+    INCREMENT BY 1
+    NO MINVALUE
+    NO MAXVALUE
+    CACHE 1;
+
+
+--
+-- Name: emailnotifications_notificationoutbox_id_seq; Type: SEQUENCE OWNED BY; Schema: public; Owner: -
+--
+
+ALTER SEQUENCE public.emailnotifications_notificationoutbox_id_seq OWNED BY public.emailnotifications_notificationoutbox.id;
+
+
 --
 -- Name: emailnotifications_staffnotification; Type: TABLE; Schema: public; Owner: -
 --
@@ -20399,7 +20438,11 @@ CREATE SEQUENCE public.materialflowresources_resourcedto_id_seq
 CREATE TABLE public.materialflowresources_resourcestock (
     id bigint NOT NULL,
     location_id bigint,
-    product_id bigint
+    product_id bigint,
+    quantity numeric(14,5) DEFAULT 0,
+    blockedquantity numeric(14,5) DEFAULT 0,
+    reservedquantity numeric(14,5) DEFAULT 0,
+    availablequantity numeric(14,5) DEFAULT 0
 );
 
 
@@ -25756,6 +25799,82 @@ CREATE SEQUENCE public.productioncounting_beforeadditionalactionsanalysisentry_i
     CACHE 1;
 
 
+--
+-- Name: productioncounting_dailyproducedquantity; Type: TABLE; Schema: public; Owner: -
+--
+
+CREATE TABLE public.productioncounting_dailyproducedquantity (
+    id bigint NOT NULL,
+    day date,
+    order_id bigint,
+    technologyoperationcomponent_id bigint,
+    staff_id bigint,
+    shift_id bigint,
+    productionline_id bigint,
+    product_id bigint,
+    typeofmaterial character varying(255),
+    quantity numeric(14,5) DEFAULT 0,
+    entityversion bigint DEFAULT 0
+);
+
+
+--
+-- Name: productioncounting_dailyproducedquantity_id_seq; Type: SEQUENCE; Schema: public; Owner: -
+--
+
+CREATE SEQUENCE public.productioncounting_dailyproducedquantity_id_seq
+    START WITH 1
+    INCREMENT BY 1
+    NO MINVALUE
+    NO MAXVALUE
+    CACHE 1;
+
+
+--
+-- Name: productioncounting_dailyproducedquantity_id_seq; Type: SEQUENCE OWNED BY; Schema: public; Owner: -
+--
+
+ALTER SEQUENCE public.productioncounting_dailyproducedquantity_id_seq OWNED BY public.productioncounting_dailyproducedquantity.id;
+
+
+--
+-- Name: productioncounting_dailyworktime; Type: TABLE; Schema: public; Owner: -
+--
+
+CREATE TABLE public.productioncounting_dailyworktime (
+    id bigint NOT NULL,
+    day date,
+    order_id bigint,
+    technologyoperationcomponent_id bigint,
+    staff_id bigint,
+    shift_id bigint,
+    productionline_id bigint,
+    labortime integer DEFAULT 0,
+    machinetime integer DEFAULT 0,
+    trackingscount integer DEFAULT 0,
+    entityversion bigint DEFAULT 0
+);
+
+
+--
+-- Name: productioncounting_dailyworktime_id_seq; Type: SEQUENCE; Schema: public; Owner: -
+--
+
+CREATE SEQUENCE public.productioncounting_dailyworktime_id_seq
+    START WITH 1
+    INCREMENT BY 1
+    NO MINVALUE
+    NO MAXVALUE
+    CACHE 1;
+
+
+--
+-- Name: productioncounting_dailyworktime_id_seq; Type: SEQUENCE OWNED BY; Schema: public; Owner: -
+--
+
+ALTER SEQUENCE public.productioncounting_dailyworktime_id_seq OWNED BY public.productioncounting_dailyworktime.id;
+
+
 --
 -- Name: productioncounting_employeepieceworksettlementdto; Type: VIEW; Schema: public; Owner: -
 --
@@ -33488,6 +33607,13 @@ ALTER TABLE ONLY public.deliveries_orderedproductreservation ALTER COLUMN id SET
 ALTER TABLE ONLY public.deliveries_parameterdeliveryordercolumn ALTER COLUMN id SET DEFAULT nextval('public.deliveries_parameterdeliveryordercolumn_id_seq'::regclass);
 
 
+--
+-- Name: emailnotifications_notificationoutbox id; Type: DEFAULT; Schema: public; Owner: -
+--
+
+ALTER TABLE ONLY public.emailnotifications_notificationoutbox ALTER COLUMN id SET DEFAULT nextval('public.emailnotifications_notificationoutbox_id_seq'::regclass);
+
+
 --
 -- Name: emailnotifications_staffnotification id; Type: DEFAULT; Schema: public; Owner: -
 --
@@ -34804,6 +34930,20 @@ ALTER TABLE ONLY public.productioncounting_anomalyreason ALTER COLUMN id SET DEF
 ALTER TABLE ONLY public.productioncounting_anomalyreasoncontainer ALTER COLUMN id SET DEFAULT nextval('public.productioncounting_anomalyreasoncontainer_id_seq'::regclass);
 
 
+--
+-- Name: productioncounting_dailyproducedquantity id; Type: DEFAULT; Schema: public; Owner: -
+--
+
+ALTER TABLE ONLY public.productioncounting_dailyproducedquantity ALTER COLUMN id SET DEFAULT nextval('public.productioncounting_dailyproducedquantity_id_seq'::regclass);
+
+
+--
+-- Name: productioncounting_dailyworktime id; Type: DEFAULT; Schema: public; Owner: -
+--
+
+ALTER TABLE ONLY public.productioncounting_dailyworktime ALTER COLUMN id SET DEFAULT nextval('public.productioncounting_dailyworktime_id_seq'::regclass);
+
+
 --
 -- Name: productioncounting_lack id; Type: DEFAULT; Schema: public; Owner: -
 --
@@ -38173,6 +38313,14 @@ COPY public.deliveries_parameterdeliveryordercolumn (id, parameter_id, columnfor
 \.
 
 
+--
+-- Data for Name: emailnotifications_notificationoutbox; Type: TABLE DATA; Schema: public; Owner: -
+--
+
+COPY public.emailnotifications_notificationoutbox (id, type, recipients, payload, dedupkey, status, attempts, nextattemptdate, lasterror, createdate, sentdate, entityversion) FROM stdin;
+\.
+
+
 --
 -- Data for Name: emailnotifications_staffnotification; Type: TABLE DATA; Schema: public; Owner: -
 --
@@ -40476,7 +40624,7 @@ COPY public.materialflowresources_resourcecorrection (id, number, product_id, ne
 -- Data for Name: materialflowresources_resourcestock; Type: TABLE DATA; Schema: public; Owner: -
 --
 
-COPY public.materialflowresources_resourcestock (id, location_id, product_id) FROM stdin;
+COPY public.materialflowresources_resourcestock (id, location_id, product_id, quantity, blockedquantity, reservedquantity, availablequantity) FROM stdin;
 \.
 
 
@@ -41222,6 +41370,22 @@ COPY public.productioncounting_anomalyreasoncontainer (id, anomalyproductiontrac
 \.
 
 
+--
+-- Data for Name: productioncounting_dailyproducedquantity; Type: TABLE DATA; Schema: public; Owner: -
+--
+
+COPY public.productioncounting_dailyproducedquantity (id, day, order_id, technologyoperationcomponent_id, staff_id, shift_id, productionline_id, product_id, typeofmaterial, quantity, entityversion) FROM stdin;
+\.
+
+
+--
+-- Data for Name: productioncounting_dailyworktime; Type: TABLE DATA; Schema: public; Owner: -
+--
+
+COPY public.productioncounting_dailyworktime (id, day, order_id, technologyoperationcomponent_id, staff_id, shift_id, productionline_id, labortime, machinetime, trackingscount, entityversion) FROM stdin;
+\.
+
+
 --
 -- Data for Name: productioncounting_lack; Type: TABLE DATA; Schema: public; Owner: -
 --
@@ -45118,6 +45282,13 @@ SELECT pg_catalog.setval('public.deliveries_orderedproductreservation_id_seq', 1
 SELECT pg_catalog.setval('public.deliveries_parameterdeliveryordercolumn_id_seq', 13, false);
 
 
+--
+-- Name: emailnotifications_notificationoutbox_id_seq; Type: SEQUENCE SET; Schema: public; Owner: -
+--
+
+SELECT pg_catalog.setval('public.emailnotifications_notificationoutbox_id_seq', 1, false);
+
+
 --
 -- Name: emailnotifications_staffnotification_id_seq; Type: SEQUENCE SET; Schema: public; Owner: -
 --
@@ -47127,6 +47298,20 @@ SELECT pg_catalog.setval('public.productioncounting_anomalyreasoncontainer_id_se
 SELECT pg_catalog.setval('public.productioncounting_beforeadditionalactionsanalysisentry_id_seq', 1, false);
 
 
+--
+-- Name: productioncounting_dailyproducedquantity_id_seq; Type: SEQUENCE SET; Schema: public; Owner: -
+--
+
+SELECT pg_catalog.setval('public.productioncounting_dailyproducedquantity_id_seq', 1, false);
+
+
+--
+-- Name: productioncounting_dailyworktime_id_seq; Type: SEQUENCE SET; Schema: public; Owner: -
+--
+
+SELECT pg_catalog.setval('public.productioncounting_dailyworktime_id_seq', 1, false);
+
+
 --
 -- Name: productioncounting_finalproductanalysisentry_id_seq; Type: SEQUENCE SET; Schema: public; Owner: -
 --
@@ -50329,6 +50514,14 @@ ALTER TABLE ONLY public.materialflowresources_document
     ADD CONSTRAINT document_number_unique UNIQUE (number);
 
 
+--
+-- Name: emailnotifications_notificationoutbox emailnotifications_notificationoutbox_pkey; Type: CONSTRAINT; Schema: public; Owner: -
+--
+
+ALTER TABLE ONLY public.emailnotifications_notificationoutbox
+    ADD CONSTRAINT emailnotifications_notificationoutbox_pkey PRIMARY KEY (id);
+
+
 --
 -- Name: emailnotifications_staffnotification emailnotifications_staffnotification_pkey; Type: CONSTRAINT; Schema: public; Owner: -
 --
@@ -52345,6 +52538,22 @@ ALTER TABLE ONLY public.productioncounting_anomalyreasoncontainer
     ADD CONSTRAINT productioncounting_anomalyreasoncontainer_pkey PRIMARY KEY (id);
 
 
+--
+-- Name: productioncounting_dailyproducedquantity productioncounting_dailyproducedquantity_pkey; Type: CONSTRAINT; Schema: public; Owner: -
+--
+
+ALTER TABLE ONLY public.productioncounting_dailyproducedquantity
+    ADD CONSTRAINT productioncounting_dailyproducedquantity_pkey PRIMARY KEY (id);
+
+
+--
+-- Name: productioncounting_dailyworktime productioncounting_dailyworktime_pkey; Type: CONSTRAINT; Schema: public; Owner: -
+--
+
+ALTER TABLE ONLY public.productioncounting_dailyworktime
+    ADD CONSTRAINT productioncounting_dailyworktime_pkey PRIMARY KEY (id);
+
+
 --
 -- Name: productioncounting_lack productioncounting_lack_pkey; Type: CONSTRAINT; Schema: public; Owner: -
 --
@@ -54319,6 +54528,20 @@ CREATE INDEX idx_del_orderedproduct_product_id ON public.deliveries_orderedprodu
 CREATE INDEX idx_del_verystatechange_delivery_id ON public.deliveries_deliverystatechange USING btree (delivery_id);
 
 
+--
+-- Name: idx_ema_notificationoutbox_dedupkey; Type: INDEX; Schema: public; Owner: -
+--
+
+CREATE UNIQUE INDEX idx_ema_notificationoutbox_dedupkey ON public.emailnotifications_notificationoutbox USING btree (dedupkey);
+
+
+--
+-- Name: idx_ema_notificationoutbox_status_nextattemptdate; Type: INDEX; Schema: public; Owner: -
+--
+
+CREATE INDEX idx_ema_notificationoutbox_status_nextattemptdate ON public.emailnotifications_notificationoutbox USING btree (status, nextattemptdate);
+
+
 --
 -- Name: idx_goo_abelstatechange_label_id; Type: INDEX; Schema: public; Owner: -
 --
@@ -54683,6 +54906,13 @@ CREATE INDEX idx_mat_resource_palletnumber_id ON public.materialflowresources_re
 CREATE INDEX idx_mat_resource_product_id ON public.materialflowresources_resource USING btree (product_id);
 
 
+--
+-- Name: idx_mat_resourcestock_location_id_product_id; Type: INDEX; Schema: public; Owner: -
+--
+
+CREATE UNIQUE INDEX idx_mat_resourcestock_location_id_product_id ON public.materialflowresources_resourcestock USING btree (location_id, product_id);
+
+
 --
 -- Name: idx_mat_resourcestock_product_id; Type: INDEX; Schema: public; Owner: -
 --
@@ -54830,6 +55060,20 @@ CREATE INDEX idx_ord_rderstatechange_order_id ON public.orders_orderstatechange
 CREATE INDEX idx_ord_suborders_ordersgroup_id ON public.ordersforsubproductsgeneration_suborders USING btree (ordersgroup_id);
 
 
+--
+-- Name: idx_pro_dailyproducedquantity_day; Type: INDEX; Schema: public; Owner: -
+--
+
+CREATE INDEX idx_pro_dailyproducedquantity_day ON public.productioncounting_dailyproducedquantity USING btree (day);
+
+
+--
+-- Name: idx_pro_dailyproducedquantity_order_id; Type: INDEX; Schema: public; Owner: -
+--
+
+CREATE INDEX idx_pro_dailyproducedquantity_order_id ON public.productioncounting_dailyproducedquantity USING btree (order_id);
+
+
 --
 -- Name: idx_pro_dailyprogress_progressforday_id; Type: INDEX; Schema: public; Owner: -
 --
@@ -54837,6 +55081,20 @@ CREATE INDEX idx_ord_suborders_ordersgroup_id ON public.ordersforsubproductsgene
 CREATE INDEX idx_pro_dailyprogress_progressforday_id ON public.productionpershift_dailyprogress USING btree (progressforday_id);
 
 
+--
+-- Name: idx_pro_dailyworktime_day; Type: INDEX; Schema: public; Owner: -
+--
+
+CREATE INDEX idx_pro_dailyworktime_day ON public.productioncounting_dailyworktime USING btree (day);
+
+
+--
+-- Name: idx_pro_dailyworktime_order_id; Type: INDEX; Schema: public; Owner: -
+--
+
+CREATE INDEX idx_pro_dailyworktime_order_id ON public.productioncounting_dailyworktime USING btree (order_id);
+
+
 --
 -- Name: idx_pro_ductincomponent_product_id; Type: INDEX; Schema: public; Owner: -
 --
@@ -25,37 +25,38 @@ package com.qcadoo.mes.advancedGenealogy.tree;
 
 import static com.qcadoo.mes.advancedGenealogy.constants.BatchFields.ENTITY_TYPE;
 import static com.qcadoo.mes.advancedGenealogy.constants.BatchFields.GENEALOGY_TREE_NODE_LABEL;
-import static com.qcadoo.mes.advancedGenealogy.constants.BatchFields.NUMBER;
 import static com.qcadoo.mes.advancedGenealogy.constants.BatchFields.PARENT;
 import static com.qcadoo.mes.advancedGenealogy.constants.BatchFields.PRIORITY;
 import static com.qcadoo.mes.advancedGenealogy.constants.BatchFields.PRODUCT;
 import static com.qcadoo.mes.advancedGenealogy.constants.BatchFields.SUPPLIER;
 import static com.qcadoo.mes.advancedGenealogy.constants.BatchFields.TRACKING_RECORDS;
-import static com.qcadoo.mes.advancedGenealogy.constants.TrackingRecordFields.STATE;
-import static com.qcadoo.mes.advancedGenealogy.constants.TrackingRecordFields.USED_BATCHES_SIMPLE;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.stream.Collectors;
 
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.i18n.LocaleContextHolder;
 import org.springframework.stereotype.Service;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.qcadoo.localization.api.TranslationService;
 import com.qcadoo.mes.advancedGenealogy.constants.AdvancedGenealogyConstants;
-import com.qcadoo.mes.advancedGenealogy.constants.BatchFields;
-import com.qcadoo.mes.advancedGenealogy.constants.TrackingRecordFields;
-import com.qcadoo.mes.advancedGenealogy.constants.TrackingRecordType;
-import com.qcadoo.mes.advancedGenealogy.constants.UsedBatchSimpleFields;
-import com.qcadoo.mes.advancedGenealogy.states.constants.TrackingRecordState;
 import com.qcadoo.mes.basic.constants.CompanyFields;
 import com.qcadoo.mes.basic.constants.ProductFields;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
-import com.qcadoo.model.api.EntityList;
+import com.qcadoo.model.api.search.SearchRestrictions;
 import com.qcadoo.plugin.api.PluginAccessor;
 
 @Service
@@ -69,6 +70,10 @@ public class AdvancedGenealogyTreeService {
 
     private static final String L_ADVANCED_GENEALOGY_FOR_ORDERS = "advancedGenealogyForOrders";
 
+    private static final int L_MAX_DEPTH = 100;
+
+    private static final int L_PARTITION_SIZE = 1000;
+
     @Autowired
     private PluginAccessor pluginAccessor;
 
@@ -78,36 +83,96 @@ public class AdvancedGenealogyTreeService {
     @Autowired
     private TranslationService translationService;
 
+    @Autowired
+    private GenealogyGraphRepository genealogyGraphRepository;
+
     public List<Entity> getProducedFromTree(final Entity batch, final boolean includeDrafts, final boolean makeIdsUnique) {
-        List<Entity> tree = new ArrayList<>();
+        Map<Long, List<Long>> edges = genealogyGraphRepository.getProducedFromEdges(batch.getId(), includeDrafts,
+                isEnabled(L_ADVANCED_GENEALOGY_FOR_ORDERS), L_MAX_DEPTH);
 
-        addChild(tree, batch, makeIdsUnique);
+        return createTree(batch, edges, makeIdsUnique);
+    }
 
-        generateProducedFromTree(batch, tree, includeDrafts, makeIdsUnique);
+    public List<Entity> getUsedToProduceTree(final Entity batch, final boolean includeDrafts, final boolean makeIdsUnique) {
+        Map<Long, List<Long>> edges = genealogyGraphRepository.getUsedToProduceEdges(batch.getId(), includeDrafts,
+                isEnabled(L_ADVANCED_GENEALOGY_FOR_ORDERS), L_MAX_DEPTH);
 
-        return tree;
+        return createTree(batch, edges, makeIdsUnique);
     }
 
-    public List<Entity> getUsedToProduceTree(final Entity batch, final boolean includeDrafts, final boolean makeIdsUnique) {
+    private List<Entity> createTree(final Entity rootBatch, final Map<Long, List<Long>> edges, final boolean makeIdsUnique) {
+        Long rootBatchId = rootBatch.getId();
+        Set<Long> batchIds = Sets.newHashSet(rootBatchId);
+
+        edges.values().forEach(batchIds::addAll);
+
+        Map<Long, Entity> batches = getBatches(batchIds);
+        Map<Long, String> orders = getOrdersForBatches(batchIds);
+
         List<Entity> tree = new ArrayList<>();
+        Map<Long, Entity> visited = Maps.newHashMap();
+        Deque<Long> queue = new ArrayDeque<>();
+
+        addChild(tree, rootBatch, null, orders.get(rootBatchId), makeIdsUnique);
+
+        visited.put(rootBatchId, rootBatch);
+        queue.add(rootBatchId);
+
+        while (!queue.isEmpty()) {
+            Long parentId = queue.poll();
+            Entity parent = visited.get(parentId);
 
-        long realParentId = batch.getId();
+            for (Long childId : edges.getOrDefault(parentId, Collections.emptyList())) {
+                Entity child = batches.get(childId);
 
-        addChild(tree, batch, true);
+                if (Objects.isNull(child) || visited.containsKey(childId)) {
+                    continue;
+                }
+
+                addChild(tree, child, parent, orders.get(childId), makeIdsUnique);
 
-        generateUsedToProduceTree(batch, tree, includeDrafts, true, realParentId);
+                visited.put(childId, child);
+                queue.add(childId);
+            }
+        }
 
         return tree;
     }
 
-    private boolean addChild(final List<Entity> tree, final Entity child, final boolean makeIdsUnique) {
-        child.setField(PARENT, null);
-        String genealogyTreeNodeLabel = createGenealogyTreeNodeLabel(child);
-        child.setField(GENEALOGY_TREE_NODE_LABEL, genealogyTreeNodeLabel);
-        return addToList(tree, child, makeIdsUnique);
+    private Map<Long, Entity> getBatches(final Set<Long> batchIds) {
+        Map<Long, Entity> batches = Maps.newHashMap();
+
+        for (List<Long> batchIdsPartition : Lists.partition(Lists.newArrayList(batchIds), L_PARTITION_SIZE)) {
+            getDD().find().add(SearchRestrictions.in("id", batchIdsPartition)).list().getEntities()
+                    .forEach(batch -> batches.put(batch.getId(), batch));
+        }
+
+        return batches;
+    }
+
+    private Map<Long, String> getOrdersForBatches(final Set<Long> batchIds) {
+        if (isEnabled(L_ADVANCED_GENEALOGY_FOR_ORDERS)) {
+            return genealogyGraphRepository.getOrdersForBatches(batchIds);
+        } else {
+            return Collections.emptyMap();
+        }
+    }
+
+    private void addChild(final List<Entity> tree, final Entity child, final Entity parent, final String orders,
+            final boolean makeIdsUnique) {
+        child.setField(PARENT, parent);
+        child.setField(GENEALOGY_TREE_NODE_LABEL, createGenealogyTreeNodeLabel(child, orders));
+        child.setField(PRIORITY, 1);
+        child.setField(ENTITY_TYPE, L_BATCH);
+
+        if (makeIdsUnique) {
+            child.setId((long) tree.size());
+        }
+
+        tree.add(child);
     }
 
-    private String createGenealogyTreeNodeLabel(Entity batch) {
+    private String createGenealogyTreeNodeLabel(final Entity batch, final String orders) {
         Entity product = batch.getBelongsToField(PRODUCT);
         Entity supplier = batch.getBelongsToField(SUPPLIER);
         StringBuilder sb = new StringBuilder();
@@ -120,8 +185,7 @@ public class AdvancedGenealogyTreeService {
             sb.append(" - ");
             sb.append(supplier.getStringField(CompanyFields.NAME));
         }
-        String orders = getOrdersForBatch(batch);
-        if (!orders.isEmpty()) {
+        if (StringUtils.isNotEmpty(orders)) {
             sb.append(" - ");
             sb.append(translationService.translate("advancedGenealogy.batch.report.order", LocaleContextHolder.getLocale()));
             sb.append(AdvancedGenealogyConstants.L_SPACER);
@@ -130,142 +194,6 @@ public class AdvancedGenealogyTreeService {
         return sb.toString();
     }
 
-    private boolean addChild(final List<Entity> tree, final Entity child, final Entity parent, final boolean makeIdsUnique) {
-        child.setField(PARENT, parent);
-        String genealogyTreeNodeLabel = createGenealogyTreeNodeLabel(child);
-        child.setField(GENEALOGY_TREE_NODE_LABEL, genealogyTreeNodeLabel);
-        return addToList(tree, child, makeIdsUnique);
-    }
-
-    private boolean addToList(final List<Entity> tree, final Entity child, final boolean makeIdsUnique) {
-        child.setField(PRIORITY, 1);
-        child.setField(ENTITY_TYPE, L_BATCH);
-
-        if (checkIfTreeContainsEntity(tree, child)) {
-            return false;
-        } else {
-            if (makeIdsUnique) {
-                child.setId((long) tree.size());
-            }
-            tree.add(child);
-            return true;
-        }
-    }
-
-    private boolean checkIfTreeContainsEntity(final List<Entity> tree, final Entity child) {
-        for (Entity entity : tree) {
-            if (child.getField(PARENT).equals(entity.getField(PARENT))
-                    && entity.getField(NUMBER).equals(child.getField(NUMBER))) {
-                return true;
-            }
-        }
-        return false;
-    }
-
-    private void generateUsedToProduceTree(final Entity parent, final List<Entity> tree, final boolean includeDrafts,
-            final boolean makeIdsUnique, final long realParentId) {
-        List<Entity> batches = getDD().find().list().getEntities();
-
-        for (Entity producedBatch : batches) {
-            EntityList trackingRecords = producedBatch.getHasManyField(TRACKING_RECORDS);
-            for (Entity trackingRecord : trackingRecords) {
-                String entityType = trackingRecord.getStringField(ENTITY_TYPE);
-                if (entityType == null) {
-                    continue;
-                }
-
-                String state = trackingRecord.getStringField(STATE);
-
-                if (!TrackingRecordState.ACCEPTED.getStringValue().equals(state)) {
-                    boolean isDraftAndWeIncludeDrafts = TrackingRecordState.DRAFT.getStringValue().equals(state) && includeDrafts;
-
-                    if (!isDraftAndWeIncludeDrafts) {
-                        continue;
-                    }
-                }
-
-                if (TrackingRecordType.SIMPLE.equals(entityType)) {
-                    EntityList usedBatches = trackingRecord.getHasManyField(USED_BATCHES_SIMPLE);
-                    for (Entity usedBatch : usedBatches) {
-                        Entity batch = usedBatch.getBelongsToField(UsedBatchSimpleFields.BATCH);
-                        if (batch.getId().equals(realParentId)) {
-                            long realId = producedBatch.getId();
-                            boolean addedChild = addChild(tree, producedBatch, parent, makeIdsUnique);
-                            if (addedChild) {
-                                generateUsedToProduceTree(producedBatch, tree, includeDrafts, makeIdsUnique, realId);
-                            }
-                        }
-                    }
-                } else if (TrackingRecordType.FOR_ORDER.equals(entityType) && isEnabled(L_ADVANCED_GENEALOGY_FOR_ORDERS)) {
-                    EntityList genealogyProductInComponents = trackingRecord.getHasManyField("genealogyProductInComponents");
-                    for (Entity genealogyProductInComponent : genealogyProductInComponents) {
-                        EntityList productInBatches = genealogyProductInComponent.getHasManyField("productInBatches");
-                        for (Entity producedInBatch : productInBatches) {
-                            Entity batch = producedInBatch.getBelongsToField(L_BATCH);
-                            if (batch == null) {
-                                continue;
-                            }
-                            if (batch.getId().equals(realParentId)) {
-                                long realId = producedBatch.getId();
-                                boolean addedChild = addChild(tree, producedBatch, parent, makeIdsUnique);
-                                if (addedChild) {
-                                    generateUsedToProduceTree(producedBatch, tree, includeDrafts, makeIdsUnique, realId);
-                                }
-                            }
-                        }
-                    }
-                }
-            }
-        }
-    }
-
-    private void generateProducedFromTree(final Entity producedBatch, final List<Entity> tree, final boolean includeDrafts,
-            final boolean makeIdsUnique) {
-        EntityList trackingRecords = producedBatch.getHasManyField(BatchFields.TRACKING_RECORDS);
-        for (Entity trackingRecord : trackingRecords) {
-            String type = trackingRecord.getStringField(TrackingRecordFields.ENTITY_TYPE);
-            if (type == null) {
-                continue;
-            }
-
-            String state = trackingRecord.getStringField(STATE);
-
-            if (!TrackingRecordState.ACCEPTED.getStringValue().equals(state)) {
-                boolean isDraftAndWeIncludeDrafts = TrackingRecordState.DRAFT.getStringValue().equals(state) && includeDrafts;
-
-                if (!isDraftAndWeIncludeDrafts) {
-                    continue;
-                }
-            }
-
-            if (TrackingRecordType.SIMPLE.equals(type)) {
-                EntityList usedBatches = trackingRecord.getHasManyField(USED_BATCHES_SIMPLE);
-                for (Entity usedBatch : usedBatches) {
-                    Entity batch = usedBatch.getBelongsToField(UsedBatchSimpleFields.BATCH);
-                    boolean addedChild = addChild(tree, batch, producedBatch, makeIdsUnique);
-                    if (addedChild) {
-                        generateProducedFromTree(batch, tree, includeDrafts, makeIdsUnique);
-                    }
-                }
-            } else if (TrackingRecordType.FOR_ORDER.equals(type) && isEnabled(L_ADVANCED_GENEALOGY_FOR_ORDERS)) {
-                EntityList genealogyProductInComponents = trackingRecord.getHasManyField("genealogyProductInComponents");
-                for (Entity genealogyProductInComponent : genealogyProductInComponents) {
-                    EntityList productInBatches = genealogyProductInComponent.getHasManyField("productInBatches");
-                    for (Entity producedInBatch : productInBatches) {
-                        Entity batch = producedInBatch.getBelongsToField(L_BATCH);
-                        if (batch == null) {
-                            continue;
-                        }
-                        boolean addedChild = addChild(tree, batch, producedBatch, makeIdsUnique);
-                        if (addedChild) {
-                            generateProducedFromTree(batch, tree, includeDrafts, makeIdsUnique);
-                        }
-                    }
-                }
-            }
-        }
-    }
-
     private DataDefinition getDD() {
         return dataDefinitionService.get(AdvancedGenealogyConstants.PLUGIN_IDENTIFIER, AdvancedGenealogyConstants.MODEL_BATCH);
     }
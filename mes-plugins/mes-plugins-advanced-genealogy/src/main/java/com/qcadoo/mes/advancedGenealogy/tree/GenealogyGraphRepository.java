@@ -0,0 +1,148 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.advancedGenealogy.tree;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.advancedGenealogy.constants.TrackingRecordType;
+import com.qcadoo.mes.advancedGenealogy.states.constants.TrackingRecordState;
+
+/**
+ * Reads genealogy of batches as edges between produced and used batches, walking them with one recursive query instead of
+ * loading tracking records batch by batch.
+ */
+@Repository
+class GenealogyGraphRepository {
+
+    private static final int L_PARTITION_SIZE = 1000;
+
+    private static final String L_PRODUCED_BATCH_ID = "producedbatch_id";
+
+    private static final String L_USED_BATCH_ID = "usedbatch_id";
+
+    private static final String SIMPLE_EDGES = "SELECT trackingrecord.producedbatch_id, usedbatchsimple.batch_id AS usedbatch_id "
+            + "FROM advancedgenealogy_trackingrecord trackingrecord "
+            + "JOIN advancedgenealogy_usedbatchsimple usedbatchsimple ON usedbatchsimple.trackingrecord_id = trackingrecord.id "
+            + "WHERE trackingrecord.entitytype = :simple AND trackingrecord.state IN (:states)";
+
+    private static final String FOR_ORDER_EDGES = "SELECT trackingrecord.producedbatch_id, productinbatch.batch_id AS usedbatch_id "
+            + "FROM advancedgenealogy_trackingrecord trackingrecord "
+            + "JOIN advancedgenealogyfororders_genealogyproductincomponent productincomponent "
+            + "ON productincomponent.trackingrecord_id = trackingrecord.id "
+            + "JOIN advancedgenealogyfororders_genealogyproductinbatch productinbatch "
+            + "ON productinbatch.genealogyproductincomponent_id = productincomponent.id "
+            + "WHERE trackingrecord.entitytype = :forOrder AND trackingrecord.state IN (:states) "
+            + "AND productinbatch.batch_id IS NOT NULL";
+
+    private static final String ORDERS_FOR_BATCHES = "SELECT trackingrecord.producedbatch_id, "
+            + "string_agg(DISTINCT ordersorder.number, ', ') AS orders FROM advancedgenealogy_trackingrecord trackingrecord "
+            + "JOIN orders_order ordersorder ON ordersorder.id = trackingrecord.order_id "
+            + "WHERE trackingrecord.producedbatch_id IN (:batchIds) GROUP BY trackingrecord.producedbatch_id";
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    /**
+     * Edges from batches to batches used to produce them, reachable from given batch in at most maxDepth steps.
+     */
+    Map<Long, List<Long>> getProducedFromEdges(final Long batchId, final boolean includeDrafts, final boolean includeForOrders,
+            final int maxDepth) {
+        return getEdges(L_PRODUCED_BATCH_ID, L_USED_BATCH_ID, batchId, includeDrafts, includeForOrders, maxDepth);
+    }
+
+    /**
+     * Edges from batches to batches produced from them, reachable from given batch in at most maxDepth steps.
+     */
+    Map<Long, List<Long>> getUsedToProduceEdges(final Long batchId, final boolean includeDrafts, final boolean includeForOrders,
+            final int maxDepth) {
+        return getEdges(L_USED_BATCH_ID, L_PRODUCED_BATCH_ID, batchId, includeDrafts, includeForOrders, maxDepth);
+    }
+
+    private Map<Long, List<Long>> getEdges(final String parentColumn, final String childColumn, final Long batchId,
+            final boolean includeDrafts, final boolean includeForOrders, final int maxDepth) {
+        StringBuilder query = new StringBuilder();
+
+        query.append("WITH RECURSIVE edges AS NOT MATERIALIZED (");
+        query.append(SIMPLE_EDGES);
+
+        if (includeForOrders) {
+            query.append(" UNION ALL ");
+            query.append(FOR_ORDER_EDGES);
+        }
+
+        query.append("), genealogy (parent_id, child_id, depth) AS (");
+        query.append("SELECT edges.").append(parentColumn).append(", edges.").append(childColumn).append(", 1 FROM edges ");
+        query.append("WHERE edges.").append(parentColumn).append(" = :batchId ");
+        query.append("UNION ");
+        query.append("SELECT edges.").append(parentColumn).append(", edges.").append(childColumn)
+                .append(", genealogy.depth + 1 FROM edges ");
+        query.append("JOIN genealogy ON edges.").append(parentColumn).append(" = genealogy.child_id ");
+        query.append("WHERE genealogy.depth < :maxDepth) ");
+        query.append("SELECT parent_id, child_id FROM genealogy GROUP BY parent_id, child_id ");
+        query.append("ORDER BY MIN(depth), parent_id, child_id");
+
+        List<String> states = Lists.newArrayList(TrackingRecordState.ACCEPTED.getStringValue());
+
+        if (includeDrafts) {
+            states.add(TrackingRecordState.DRAFT.getStringValue());
+        }
+
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+
+        parameters.addValue("batchId", batchId);
+        parameters.addValue("maxDepth", maxDepth);
+        parameters.addValue("states", states);
+        parameters.addValue("simple", TrackingRecordType.SIMPLE);
+        parameters.addValue("forOrder", TrackingRecordType.FOR_ORDER);
+
+        Map<Long, List<Long>> edges = Maps.newHashMap();
+
+        jdbcTemplate.query(query.toString(), parameters, (RowCallbackHandler) rs -> edges
+                .computeIfAbsent(rs.getLong("parent_id"), parentId -> Lists.newArrayList()).add(rs.getLong("child_id")));
+
+        return edges;
+    }
+
+    Map<Long, String> getOrdersForBatches(final Collection<Long> batchIds) {
+        Map<Long, String> orders = Maps.newHashMap();
+
+        for (List<Long> batchIdsPartition : Lists.partition(Lists.newArrayList(batchIds), L_PARTITION_SIZE)) {
+            jdbcTemplate.query(ORDERS_FOR_BATCHES, new MapSqlParameterSource("batchIds", batchIdsPartition),
+                    (RowCallbackHandler) rs -> orders.put(rs.getLong(L_PRODUCED_BATCH_ID), rs.getString("orders")));
+        }
+
+        return orders;
+    }
+
+}
@@ -25,30 +25,32 @@ package com.qcadoo.mes.advancedGenealogy.tree;
 
 import static java.util.Arrays.asList;
 import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
-import java.util.Collection;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import org.junit.Before;
-import org.junit.Ignore;
 import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import com.google.common.collect.ImmutableMap;
 import com.qcadoo.mes.advancedGenealogy.constants.AdvancedGenealogyConstants;
-import com.qcadoo.mes.advancedGenealogy.constants.TrackingRecordType;
-import com.qcadoo.mes.advancedGenealogy.states.constants.TrackingRecordState;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
-import com.qcadoo.model.api.EntityList;
 import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchCriterion;
 import com.qcadoo.model.api.search.SearchResult;
 import com.qcadoo.plugin.api.Plugin;
 import com.qcadoo.plugin.api.PluginAccessor;
@@ -73,24 +75,15 @@ public class AdvancedGenealogyTreeServiceTest {
     private PluginAccessor pluginAccessor;
 
     @Mock
-    private SearchResult searchResult;
-
-    @Mock
-    private Entity batch1Tr;
+    private GenealogyGraphRepository genealogyGraphRepository;
 
     @Mock
-    private Entity parent1, parent2;
+    private SearchResult searchResult;
 
     private String productName1 = "productName1";
 
     private String productNumber1 = "productNumber1";
 
-    private EntityList mockEntityList(List<Entity> list) {
-        EntityList entityList = mock(EntityList.class);
-        when(entityList.iterator()).thenReturn(list.iterator());
-        return entityList;
-    }
-
     @Before
     public void init() {
         MockitoAnnotations.initMocks(this);
@@ -99,6 +92,7 @@ public class AdvancedGenealogyTreeServiceTest {
 
         ReflectionTestUtils.setField(treeService, "dataDefinitionService", dataDefinitionService);
         ReflectionTestUtils.setField(treeService, "pluginAccessor", pluginAccessor);
+        ReflectionTestUtils.setField(treeService, "genealogyGraphRepository", genealogyGraphRepository);
 
         when(pluginAccessor.getPlugin("advancedGenealogyForOrders")).thenReturn(null);
 
@@ -108,48 +102,40 @@ public class AdvancedGenealogyTreeServiceTest {
         when(batch1.getId()).thenReturn(1L);
         when(batch2.getId()).thenReturn(2L);
 
-        EntityList batch1Trs = mockEntityList(asList(batch1Tr));
-        when(batch1.getHasManyField("trackingRecords")).thenReturn(batch1Trs);
-        when(batch1Tr.getStringField("entityType")).thenReturn(TrackingRecordType.SIMPLE);
-        when(batch1Tr.getStringField("state")).thenReturn(TrackingRecordState.DRAFT.getStringValue());
-        Entity batch1TrUsedBatch1 = mock(Entity.class);
-        when(batch1TrUsedBatch1.getBelongsToField("batch")).thenReturn(batch2);
-        EntityList batch1TrUsedBatches = mockEntityList(asList(batch1TrUsedBatch1));
-        when(batch1Tr.getHasManyField("usedBatchesSimple")).thenReturn(batch1TrUsedBatches);
+        Map<Long, List<Long>> producedFromEdges = ImmutableMap.of(1L, asList(2L));
+        Map<Long, List<Long>> usedToProduceEdges = ImmutableMap.of(2L, asList(1L));
 
-        EntityList batch2Trs = mockEntityList(new LinkedList<Entity>());
-        when(batch2.getHasManyField("trackingRecords")).thenReturn(batch2Trs);
+        when(genealogyGraphRepository.getProducedFromEdges(anyLong(), anyBoolean(), anyBoolean(), anyInt())).thenReturn(
+                Collections.emptyMap());
+        when(genealogyGraphRepository.getProducedFromEdges(eq(1L), eq(true), anyBoolean(), anyInt())).thenReturn(
+                producedFromEdges);
+        when(genealogyGraphRepository.getUsedToProduceEdges(anyLong(), anyBoolean(), anyBoolean(), anyInt())).thenReturn(
+                Collections.emptyMap());
+        when(genealogyGraphRepository.getUsedToProduceEdges(eq(2L), eq(true), anyBoolean(), anyInt())).thenReturn(
+                usedToProduceEdges);
 
         SearchCriteriaBuilder searchCriteriaBuilder = Mockito.mock(SearchCriteriaBuilder.class);
         when(dataDefinition.find()).thenReturn(searchCriteriaBuilder);
+        when(searchCriteriaBuilder.add(any(SearchCriterion.class))).thenReturn(searchCriteriaBuilder);
         when(searchCriteriaBuilder.list()).thenReturn(searchResult);
-        when(searchResult.getEntities()).thenReturn(asList(batch1));
+        when(searchResult.getEntities()).thenReturn(asList(batch1, batch2));
 
-        String number1 = "QWD33";
-        String number2 = "POS22";
         String productName2 = "productName2";
         String productNumber2 = "productNumber2";
-        when(batch1.getField("parent")).thenReturn(parent1);
-        when(batch2.getField("parent")).thenReturn(parent2);
         when(batch1.getBelongsToField("product")).thenReturn(product1);
         when(batch2.getBelongsToField("product")).thenReturn(product2);
         when(product1.getStringField("name")).thenReturn(productName1);
         when(product1.getStringField("number")).thenReturn(productNumber1);
         when(product2.getStringField("name")).thenReturn(productName2);
         when(product2.getStringField("number")).thenReturn(productNumber2);
-        when(batch1.getField("number")).thenReturn(number1);
-        when(batch2.getField("number")).thenReturn(number2);
     }
 
     @Test
     public void shouldReturnOnlyTheRootIfThereAreNoRelatedBatchesForProducedFromTree() {
         // given
         Entity batch = mock(Entity.class);
+        when(batch.getId()).thenReturn(3L);
         when(batch.getBelongsToField("product")).thenReturn(product1);
-        when(product1.getStringField("name")).thenReturn(productName1);
-        when(product1.getStringField("number")).thenReturn(productNumber1);
-        EntityList trackingRecords = mockEntityList(new LinkedList<Entity>());
-        when(batch.getHasManyField("trackingRecords")).thenReturn(trackingRecords);
 
         // when
         List<Entity> tree = treeService.getProducedFromTree(batch, true, false);
@@ -163,11 +149,8 @@ public class AdvancedGenealogyTreeServiceTest {
     public void shouldReturnOnlyTheRootIfThereAreNoRelatedBatchesForUsedToProduceTree() {
         // given
         Entity batch = mock(Entity.class);
+        when(batch.getId()).thenReturn(3L);
         when(batch.getBelongsToField("product")).thenReturn(product1);
-        when(product1.getStringField("name")).thenReturn(productName1);
-        when(product1.getStringField("number")).thenReturn(productNumber1);
-
-        when(searchResult.getEntities()).thenReturn(new LinkedList<Entity>());
 
         // when
         List<Entity> tree = treeService.getUsedToProduceTree(batch, true, false);
@@ -188,6 +171,7 @@ public class AdvancedGenealogyTreeServiceTest {
         assertEquals(2, tree.size());
         assertEquals(batch1, tree.get(0));
         assertEquals(batch2, tree.get(1));
+        Mockito.verify(batch2).setField("parent", batch1);
     }
 
     @Test
@@ -201,6 +185,7 @@ public class AdvancedGenealogyTreeServiceTest {
         assertEquals(2, tree.size());
         assertEquals(batch2, tree.get(0));
         assertEquals(batch1, tree.get(1));
+        Mockito.verify(batch1).setField("parent", batch2);
     }
 
     @Test
@@ -216,22 +201,37 @@ public class AdvancedGenealogyTreeServiceTest {
     }
 
     @Test
-    @Ignore
-    public void shouldReturnCorrectProducedFromTreeForOrders() {
+    public void shouldVisitEachBatchOnceIfGenealogyContainsCycle() {
         // given
-        Plugin plugin = mock(Plugin.class);
-        when(pluginAccessor.getPlugin("advancedGenealogyForOrders")).thenReturn(plugin);
-        when(batch1Tr.getStringField("entityType")).thenReturn(TrackingRecordType.FOR_ORDER);
+        Map<Long, List<Long>> edges = ImmutableMap.of(1L, asList(2L, 2L), 2L, asList(1L));
+        when(genealogyGraphRepository.getProducedFromEdges(eq(1L), eq(true), anyBoolean(), anyInt())).thenReturn(edges);
 
-        Entity genProdInComp = mock(Entity.class);
-        EntityList genProdInComps = mockEntityList(asList(genProdInComp));
+        // when
+        List<Entity> tree = treeService.getProducedFromTree(batch1, true, false);
 
-        Entity prodInBatch = mock(Entity.class);
-        when(prodInBatch.getBelongsToField("batch")).thenReturn(batch2);
+        // then
+        assertEquals(2, tree.size());
+        assertEquals(batch1, tree.get(0));
+        assertEquals(batch2, tree.get(1));
+    }
+
+    @Test
+    public void shouldMakeIdsUnique() {
+        // given
+
+        // when
+        treeService.getProducedFromTree(batch1, true, true);
+
+        // then
+        Mockito.verify(batch1).setId(0L);
+        Mockito.verify(batch2).setId(1L);
+    }
 
-        EntityList prodInBatches = mockEntityList(asList(prodInBatch));
-        when(genProdInComp.getHasManyField("productInBatches")).thenReturn(prodInBatches);
-        when(batch1Tr.getHasManyField("genealogyProductInComponents")).thenReturn(genProdInComps);
+    @Test
+    public void shouldReturnCorrectProducedFromTreeForOrders() {
+        // given
+        Plugin plugin = mock(Plugin.class);
+        when(pluginAccessor.getPlugin("advancedGenealogyForOrders")).thenReturn(plugin);
 
         // when
         List<Entity> tree = treeService.getProducedFromTree(batch1, true, false);
@@ -240,25 +240,14 @@ public class AdvancedGenealogyTreeServiceTest {
         assertEquals(2, tree.size());
         assertEquals(batch1, tree.get(0));
         assertEquals(batch2, tree.get(1));
+        Mockito.verify(genealogyGraphRepository).getProducedFromEdges(eq(1L), eq(true), eq(true), anyInt());
     }
 
     @Test
-    @Ignore
     public void shouldReturnCorrectUsedToProduceTreeForOrders() {
         // given
         Plugin plugin = mock(Plugin.class);
         when(pluginAccessor.getPlugin("advancedGenealogyForOrders")).thenReturn(plugin);
-        when(batch1Tr.getStringField("entityType")).thenReturn(TrackingRecordType.FOR_ORDER);
-
-        Entity genProdInComp = mock(Entity.class);
-        EntityList genProdInComps = mockEntityList(asList(genProdInComp));
-
-        Entity prodInBatch = mock(Entity.class);
-        when(prodInBatch.getBelongsToField("batch")).thenReturn(batch2);
-
-        EntityList prodInBatches = mockEntityList(asList(prodInBatch));
-        when(genProdInComp.getHasManyField("productInBatches")).thenReturn(prodInBatches);
-        when(batch1Tr.getHasManyField("genealogyProductInComponents")).thenReturn(genProdInComps);
 
         // when
         List<Entity> tree = treeService.getUsedToProduceTree(batch2, true, false);
@@ -267,5 +256,6 @@ public class AdvancedGenealogyTreeServiceTest {
         assertEquals(2, tree.size());
         assertEquals(batch2, tree.get(0));
         assertEquals(batch1, tree.get(1));
+        Mockito.verify(genealogyGraphRepository).getUsedToProduceEdges(eq(2L), eq(true), eq(true), anyInt());
     }
 }
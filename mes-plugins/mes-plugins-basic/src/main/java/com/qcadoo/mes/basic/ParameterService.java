@@ -26,22 +26,36 @@ package com.qcadoo.mes.basic;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
 import com.qcadoo.mes.basic.constants.BasicConstants;
 import com.qcadoo.mes.basic.constants.CharType;
 import com.qcadoo.mes.basic.constants.ReportColumnWidthFields;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
+import com.qcadoo.tenant.api.MultiTenantUtil;
 
 /**
  * Service for accessing parameters
  * 
+ * Parameter is kept in memory as {@link ParameterSnapshot} per tenant, so reading it doesn't query database nor open a session.
+ * Saving parameter invalidates snapshot of its tenant, once when it's saved and once again when its transaction is completed,
+ * and snapshot is reloaded at the latest after parameterSnapshotExpireSeconds property, so entities referenced by parameter
+ * are refreshed too.
+ * 
  * @since 1.1.5
  */
 @Service
@@ -54,6 +68,22 @@ public class ParameterService {
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${parameterSnapshotExpireSeconds:60}")
+    private long expireSeconds;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final ConcurrentMap<Integer, AtomicLong> versions = Maps.newConcurrentMap();
+
+    private final ConcurrentMap<Integer, ParameterSnapshot> snapshots = Maps.newConcurrentMap();
+
     /**
      * Returns basic parameter entity id for current user
      * 
@@ -61,7 +91,7 @@ public class ParameterService {
      * 
      */
     public Long getParameterId() {
-        return getParameter().getId();
+        return getParameterSnapshot().getId();
     }
 
     /**
@@ -71,8 +101,55 @@ public class ParameterService {
      * @return parameter entity
      * 
      */
-    @Transactional
     public Entity getParameter() {
+        ParameterSnapshot parameterSnapshot = getParameterSnapshot();
+
+        return parameterSnapshot == null ? null : parameterSnapshot.getEntity();
+    }
+
+    /**
+     * Returns snapshot of basic parameter entity of current tenant, loading it if it was changed or expired.
+     * 
+     * @return parameter snapshot
+     * 
+     */
+    public ParameterSnapshot getParameterSnapshot() {
+        int tenantId = MultiTenantUtil.getCurrentTenantId();
+        AtomicLong version = getVersion(tenantId);
+
+        ParameterSnapshot parameterSnapshot = snapshots.get(tenantId);
+
+        if (parameterSnapshot != null && parameterSnapshot.getVersion() == version.get()
+                && !parameterSnapshot.isExpired(TimeUnit.SECONDS.toMillis(expireSeconds))) {
+            hits.incrementAndGet();
+
+            return parameterSnapshot;
+        }
+
+        misses.incrementAndGet();
+
+        long loadedVersion = version.get();
+
+        Entity parameter = new TransactionTemplate(transactionManager).execute(status -> loadParameter());
+
+        if (parameter == null) {
+            return null;
+        }
+
+        parameterSnapshot = new ParameterSnapshot(parameter, loadedVersion);
+
+        if (loadedVersion == version.get()) {
+            snapshots.put(tenantId, parameterSnapshot);
+        }
+
+        return parameterSnapshot;
+    }
+
+    private AtomicLong getVersion(final int tenantId) {
+        return versions.computeIfAbsent(tenantId, key -> new AtomicLong());
+    }
+
+    private Entity loadParameter() {
         Entity parameter = null;
 
         DataDefinition parameterDD = dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_PARAMETER);
@@ -88,6 +165,50 @@ public class ParameterService {
         return parameter;
     }
 
+    /**
+     * Invalidates parameter snapshot of current tenant, it's called by parameter save hooks. Within transaction snapshot is
+     * invalidated again when transaction is completed, so parameter read before commit isn't kept.
+     */
+    public void invalidateParameter() {
+        int tenantId = MultiTenantUtil.getCurrentTenantId();
+
+        invalidate(tenantId);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void afterCompletion(final int status) {
+                    super.afterCompletion(status);
+                    invalidate(tenantId);
+                }
+            });
+        }
+    }
+
+    private void invalidate(final int tenantId) {
+        getVersion(tenantId).incrementAndGet();
+        invalidations.incrementAndGet();
+
+        snapshots.remove(tenantId);
+    }
+
+    public Map<String, Object> getParameterSnapshotStatistics() {
+        Map<String, Object> statistics = Maps.newLinkedHashMap();
+
+        long hitsCount = hits.get();
+        long missesCount = misses.get();
+
+        statistics.put("version", getVersion(MultiTenantUtil.getCurrentTenantId()).get());
+        statistics.put("tenants", snapshots.size());
+        statistics.put("hits", hitsCount);
+        statistics.put("misses", missesCount);
+        statistics.put("invalidations", invalidations.get());
+        statistics.put("hitRate", hitsCount + missesCount == 0L ? 0D : (double) hitsCount / (hitsCount + missesCount));
+
+        return statistics;
+    }
+
     private Entity createParameter(final DataDefinition dataDefinition) {
         Entity parameter = dataDefinition.create();
         parameter = dataDefinition.save(parameter);
@@ -0,0 +1,64 @@
+package com.qcadoo.mes.basic;
+
+import java.math.BigDecimal;
+
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Parameter as it was loaded by {@link ParameterService}, together with version of parameters it was loaded in. Loaded entity is
+ * never given out, {@link #getEntity()} returns its copy, so snapshot stays the same for all readers.
+ */
+public final class ParameterSnapshot {
+
+    private final Entity parameter;
+
+    private final long version;
+
+    private final long loadTime;
+
+    ParameterSnapshot(final Entity parameter, final long version) {
+        this.parameter = parameter.copy();
+        this.version = version;
+        this.loadTime = System.currentTimeMillis();
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public long getLoadTime() {
+        return loadTime;
+    }
+
+    public Long getId() {
+        return parameter.getId();
+    }
+
+    /**
+     * Copy of parameter entity, which can be changed and saved as one loaded from database.
+     */
+    public Entity getEntity() {
+        return parameter.copy();
+    }
+
+    public boolean getBooleanField(final String fieldName) {
+        return parameter.getBooleanField(fieldName);
+    }
+
+    public String getStringField(final String fieldName) {
+        return parameter.getStringField(fieldName);
+    }
+
+    public Integer getIntegerField(final String fieldName) {
+        return parameter.getIntegerField(fieldName);
+    }
+
+    public BigDecimal getDecimalField(final String fieldName) {
+        return parameter.getDecimalField(fieldName);
+    }
+
+    boolean isExpired(final long expireMillis) {
+        return System.currentTimeMillis() - loadTime > expireMillis;
+    }
+
+}
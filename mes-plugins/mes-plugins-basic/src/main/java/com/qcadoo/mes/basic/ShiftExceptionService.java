@@ -34,7 +34,12 @@ public class ShiftExceptionService {
             exceptions = timetableExceptionService.findFor(productionLine, shiftEntity, dateOfDay);
         }
 
-        Shift shiftForDay = new Shift(shiftEntity, new DateTime(dateOfDay), false);
+        return applyExceptions(shiftWorkDateTime, shift, exceptions, dateOfDay, removeFreeTimeException);
+    }
+
+    private List<DateTimeRange> applyExceptions(List<DateTimeRange> shiftWorkDateTime, final Shift shift,
+            final List<Entity> exceptions, final Date dateOfDay, final boolean removeFreeTimeException) {
+        Shift shiftForDay = new Shift(shift.getEntity(), new DateTime(dateOfDay), false);
 
         for (Entity exception : exceptions) {
             if (removeFreeTimeException && TimetableExceptionType.FREE_TIME.getStringValue()
@@ -68,6 +73,23 @@ public class ShiftExceptionService {
         return shiftWorkDateTime;
     }
 
+    /**
+     * Same as {@link #getShiftWorkDateTimes(Entity, Shift, DateTime, boolean)}, but applies already loaded timetable
+     * exceptions of given day instead of querying them.
+     */
+    public List<DateTimeRange> getShiftWorkDateTimes(final Shift shift, final DateTime dateOfDay, final List<Entity> exceptions,
+            final boolean removeFreeTimeException) {
+        List<DateTimeRange> shiftWorkDateTime = Lists.newArrayList();
+
+        if (shift.worksAt(dateOfDay.dayOfWeek().get())) {
+            for (TimeRange range : shift.findWorkTimeAt(dateOfDay.toLocalDate())) {
+                shiftWorkDateTime.add(new DateTimeRange(dateOfDay, range));
+            }
+        }
+
+        return applyExceptions(shiftWorkDateTime, shift, exceptions, dateOfDay.toDate(), removeFreeTimeException);
+    }
+
     private List<DateTimeRange> removeFreeTimeException(final List<DateTimeRange> shiftWorkDateTime, final Entity exception,
             final Shift shift) {
         Optional<DateTimeRange> exceptionRange = getExceptionRange(exception, shift, false);
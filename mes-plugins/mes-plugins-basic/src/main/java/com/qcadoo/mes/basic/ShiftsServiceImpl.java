@@ -30,6 +30,7 @@ import com.qcadoo.mes.basic.constants.BasicConstants;
 import com.qcadoo.mes.basic.constants.ShiftFields;
 import com.qcadoo.mes.basic.constants.TimetableExceptionType;
 import com.qcadoo.mes.basic.shift.Shift;
+import com.qcadoo.mes.basic.shift.WorkingTimeCalendar;
 import com.qcadoo.mes.basic.util.DateTimeRange;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
@@ -52,10 +53,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.stream.Collectors;
 
 import org.joda.time.DateTime;
-import org.joda.time.DateTimeZone;
 import org.joda.time.Days;
 import org.joda.time.IllegalFieldValueException;
 import org.joda.time.Interval;
@@ -105,6 +106,9 @@ public class ShiftsServiceImpl implements ShiftsService {
     @Autowired
     private ShiftExceptionService shiftExceptionService;
 
+    @Autowired
+    private WorkingTimeCalendarService workingTimeCalendarService;
+
     private static final String[] WEEK_DAYS = { L_MONDAY, L_TUESDAY, L_WENSDAY, L_THURSDAY, L_FRIDAY, L_SATURDAY, L_SUNDAY };
 
     private static final Map<Integer, String> DAY_OF_WEEK = buildDayNumToNameMap();
@@ -343,38 +347,17 @@ public class ShiftsServiceImpl implements ShiftsService {
 
     @Override
     public Date findDateToForProductionLine(final Date dateFrom, final long seconds, final Entity productionLine) {
-        if (getShiftDataDefinition().find().list().getTotalNumberOfEntities() == 0) {
-            return Date.from(dateFrom.toInstant().plusSeconds(seconds));
-        }
+        Date lookAheadDate = new DateTime(dateFrom).plusDays(MAX_LOOPS / 2).toDate();
 
-        DateTime dateFromDT = new DateTime(dateFrom, DateTimeZone.getDefault());
+        Optional<WorkingTimeCalendar> calendar = workingTimeCalendarService.getCalendar(productionLine, dateFrom,
+                lookAheadDate);
 
-        List<Shift> shifts = findAll(productionLine);
-        DateTime dateOfDay = new DateTime(dateFrom);
-        dateOfDay = dateOfDay.minusDays(1);
-        dateOfDay = dateOfDay.toLocalDate().toDateTimeAtStartOfDay();
-        long leftMilliseconds = seconds * MILLS;
-        int loopCount = 0;
-        while (leftMilliseconds > 0L) {
-            if (loopCount > MAX_LOOPS) {
-                return Date.from(dateFrom.toInstant().plusSeconds(seconds));
-            }
-            for (Shift shift : shifts) {
-                for (DateTimeRange range : shiftExceptionService.getShiftWorkDateTimes(productionLine, shift, dateOfDay, true)) {
-                    if (dateFrom.after(dateOfDay.toDate())) {
-                        range = range.trimBefore(dateFromDT);
-                    }
-                    if (range != null) {
-                        if (leftMilliseconds > range.durationMillis()) {
-                            leftMilliseconds = leftMilliseconds - range.durationMillis();
-                        } else {
-                            return range.getFrom().plusMillis((int) leftMilliseconds).toDate();
-                        }
-                    }
-                }
+        if (calendar.isPresent()) {
+            OptionalLong dateTo = calendar.get().findDateAfterWorkingMillis(dateFrom.getTime(), seconds * MILLS);
+
+            if (dateTo.isPresent()) {
+                return new Date(dateTo.getAsLong());
             }
-            loopCount++;
-            dateOfDay = dateOfDay.plusDays(1);
         }
 
         return Date.from(dateFrom.toInstant().plusSeconds(seconds));
@@ -382,29 +365,21 @@ public class ShiftsServiceImpl implements ShiftsService {
 
     @Override
     public long getTotalAvailableTimeForProductionLine(final Date dateFrom, final Date dateTo, final Entity productionLine) {
-        if (getShiftDataDefinition().find().list().getTotalNumberOfEntities() == 0) {
-            return (dateTo.getTime() - dateFrom.getTime()) / 1000;
+        if (dateTo.before(dateFrom)) {
+            return 0L;
         }
 
-        long totalAvailableTime = 0;
+        Optional<WorkingTimeCalendar> calendar = Optional.empty();
 
-        List<Shift> shifts = findAll(productionLine);
-        DateTime dateOfDay = new DateTime(dateFrom);
-        int loopCount = 0;
-        while (!dateOfDay.isAfter(new DateTime(dateTo))) {
-            if (loopCount > MAX_LOOPS) {
-                return (dateTo.getTime() - dateFrom.getTime()) / 1000;
-            }
-            for (Shift shift : shifts) {
-                for (DateTimeRange range : shiftExceptionService.getShiftWorkDateTimes(productionLine, shift, dateOfDay, false)) {
-                    totalAvailableTime += range.durationMillis();
-                }
-            }
-            loopCount++;
-            dateOfDay = dateOfDay.plusDays(1);
+        if (getNumberOfDaysBetweenGivenDates(new DateTime(dateFrom), new DateTime(dateTo)) <= MAX_LOOPS) {
+            calendar = workingTimeCalendarService.getCalendar(productionLine, dateFrom, dateTo);
+        }
+
+        if (calendar.isPresent()) {
+            return calendar.get().getWorkingMillisBetween(dateFrom.getTime(), dateTo.getTime()) / MILLS;
         }
 
-        return totalAvailableTime / 1000;
+        return (dateTo.getTime() - dateFrom.getTime()) / MILLS;
     }
 
     @Override
@@ -0,0 +1,208 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.basic.constants.ShiftFields;
+import com.qcadoo.mes.basic.constants.ShiftTimetableExceptionFields;
+import com.qcadoo.mes.basic.shift.Shift;
+import com.qcadoo.mes.basic.shift.ShiftCalendar;
+import com.qcadoo.mes.basic.shift.WorkingTimeCalendar;
+import com.qcadoo.mes.basic.util.DateTimeRange;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.tenant.api.MultiTenantUtil;
+
+/**
+ * Keeps working time calendars of production lines, by tenant and production line. Calendar is built once for a period of
+ * at least 1000 days and as long as requested dates fit in it. All calendars of tenant are invalidated when shifts, timetable
+ * exceptions or production lines change, and once again after their transaction is completed.
+ */
+@Service
+public class WorkingTimeCalendarService {
+
+    private static final int L_HORIZON_DAYS = 1000;
+
+    private static final long L_WITHOUT_PRODUCTION_LINE = 0L;
+
+    private static final long L_MAXIMUM_SIZE = 500L;
+
+    private static final long L_EXPIRE_AFTER_HOURS = 1L;
+
+    private final Cache<String, Optional<WorkingTimeCalendar>> calendars = CacheBuilder.newBuilder().maximumSize(L_MAXIMUM_SIZE)
+            .expireAfterWrite(L_EXPIRE_AFTER_HOURS, TimeUnit.HOURS).build();
+
+    private final AtomicLong generation = new AtomicLong();
+
+    @Autowired
+    private ShiftsService shiftsService;
+
+    @Autowired
+    private ShiftExceptionService shiftExceptionService;
+
+    @Autowired
+    private TimetableExceptionService timetableExceptionService;
+
+    /**
+     * Returns working time calendar of given production line (or of all shifts, if production line is null) covering given
+     * dates, or empty value if there are no shifts defined at all.
+     */
+    public Optional<WorkingTimeCalendar> getCalendar(final Entity productionLine, final Date dateFrom, final Date dateTo) {
+        String key = getKeyPrefix(MultiTenantUtil.getCurrentTenantId())
+                + (Objects.isNull(productionLine) ? L_WITHOUT_PRODUCTION_LINE : productionLine.getId());
+
+        Optional<WorkingTimeCalendar> calendar = calendars.getIfPresent(key);
+
+        if (Objects.nonNull(calendar)
+                && (!calendar.isPresent() || calendar.get().covers(dateFrom.getTime(), dateTo.getTime()))) {
+            return calendar;
+        }
+
+        long currentGeneration = generation.get();
+
+        calendar = buildCalendar(productionLine, dateFrom, dateTo);
+
+        if (currentGeneration == generation.get()) {
+            calendars.put(key, calendar);
+        }
+
+        return calendar;
+    }
+
+    /**
+     * Returns shift calendar of given production line, with timetable exceptions of each shift loaded once. Calendar isn't
+     * cached here, it's meant to be built for a batch of calculations and shared by them.
+     */
+    public ShiftCalendar getShiftCalendar(final Entity productionLine) {
+        List<Shift> shifts = shiftsService.findAll(productionLine);
+        Map<Long, List<Entity>> exceptionsPerShift = Maps.newHashMap();
+
+        for (Shift shift : shifts) {
+            exceptionsPerShift.put(shift.getId(), getExceptions(productionLine, shift));
+        }
+
+        return new ShiftCalendar(shifts,
+                (shift, dateOfDay) -> shiftExceptionService.getShiftWorkDateTimes(shift, dateOfDay, getExceptionsForDay(
+                        productionLine, exceptionsPerShift.get(shift.getId()), dateOfDay.toLocalDate()), true));
+    }
+
+    /**
+     * Invalidates all calendars of current tenant, it's called by shift, timetable exception and production line hooks. Within
+     * transaction calendars are invalidated again when transaction is completed, so calendar built from data read before
+     * commit isn't kept.
+     */
+    public void invalidateAll() {
+        int tenantId = MultiTenantUtil.getCurrentTenantId();
+
+        invalidate(tenantId);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void afterCompletion(final int status) {
+                    super.afterCompletion(status);
+                    invalidate(tenantId);
+                }
+            });
+        }
+    }
+
+    private void invalidate(final int tenantId) {
+        String keyPrefix = getKeyPrefix(tenantId);
+
+        generation.incrementAndGet();
+        calendars.asMap().keySet().removeIf(key -> key.startsWith(keyPrefix));
+    }
+
+    private String getKeyPrefix(final int tenantId) {
+        return tenantId + ":";
+    }
+
+    private Optional<WorkingTimeCalendar> buildCalendar(final Entity productionLine, final Date dateFrom, final Date dateTo) {
+        List<Shift> shifts = shiftsService.findAll(productionLine);
+
+        if (shifts.isEmpty()) {
+            return Optional.empty();
+        }
+
+        DateTime validFrom = new DateTime(dateFrom).withTimeAtStartOfDay();
+        DateTime validTo = validFrom.plusDays(L_HORIZON_DAYS);
+
+        if (validTo.isBefore(dateTo.getTime())) {
+            validTo = new DateTime(dateTo).withTimeAtStartOfDay().plusDays(1);
+        }
+
+        List<DateTimeRange> ranges = Lists.newArrayList();
+
+        for (Shift shift : shifts) {
+            List<Entity> exceptions = getExceptions(productionLine, shift);
+
+            for (DateTime dateOfDay = validFrom.minusDays(1); dateOfDay.isBefore(validTo); dateOfDay = dateOfDay.plusDays(1)) {
+                ranges.addAll(shiftExceptionService.getShiftWorkDateTimes(shift, dateOfDay,
+                        getExceptionsForDay(productionLine, exceptions, dateOfDay.toLocalDate()), true));
+            }
+        }
+
+        return Optional.of(WorkingTimeCalendar.of(validFrom.getMillis(), validTo.getMillis(), ranges));
+    }
+
+    private List<Entity> getExceptions(final Entity productionLine, final Shift shift) {
+        if (Objects.isNull(productionLine)) {
+            return shift.getEntity().getHasManyField(ShiftFields.TIMETABLE_EXCEPTIONS);
+        }
+
+        return timetableExceptionService.findFor(productionLine, shift.getEntity(), null);
+    }
+
+    private List<Entity> getExceptionsForDay(final Entity productionLine, final List<Entity> exceptions, final LocalDate day) {
+        if (Objects.isNull(productionLine)) {
+            return exceptions;
+        }
+
+        return exceptions.stream()
+                .filter(exception -> !new LocalDate(exception.getDateField(ShiftTimetableExceptionFields.FROM_DATE)).isAfter(day)
+                        && !new LocalDate(exception.getDateField(ShiftTimetableExceptionFields.TO_DATE)).isBefore(day))
+                .collect(Collectors.toList());
+    }
+
+}
@@ -0,0 +1,27 @@
+package com.qcadoo.mes.basic.controllers;
+
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import com.qcadoo.mes.basic.ParameterService;
+
+@Controller
+@RequestMapping("/basic")
+public class ParameterSnapshotController {
+
+    @Autowired
+    private ParameterService parameterService;
+
+    @ResponseBody
+    @RequestMapping(value = "/parameterSnapshot/statistics", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    public Map<String, Object> getParameterSnapshotStatistics() {
+        return parameterService.getParameterSnapshotStatistics();
+    }
+
+}
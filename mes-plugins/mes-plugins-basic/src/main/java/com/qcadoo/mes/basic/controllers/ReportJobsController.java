@@ -0,0 +1,67 @@
+package com.qcadoo.mes.basic.controllers;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Optional;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.basic.reports.ReportJob;
+import com.qcadoo.mes.basic.reports.ReportJobService;
+import com.qcadoo.security.api.SecurityService;
+
+@Controller
+@RequestMapping("/basic")
+public class ReportJobsController {
+
+    private static final String L_ROLE_ADMIN = "ROLE_ADMIN";
+
+    @Autowired
+    private ReportJobService reportJobService;
+
+    @Autowired
+    private SecurityService securityService;
+
+    @ResponseBody
+    @RequestMapping(value = "/reportJobs/{jobId}", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ReportJob getReportJob(@PathVariable final String jobId, final HttpServletResponse response) throws IOException {
+        Optional<ReportJob> maybeJob = reportJobService.getJob(jobId);
+
+        if (!maybeJob.isPresent()
+                || !maybeJob.get().getUserName().equals(securityService.getCurrentUserOrQcadooBotName())) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+
+            return null;
+        }
+
+        return maybeJob.get();
+    }
+
+    @ResponseBody
+    @RequestMapping(value = "/reportJobs/statistics", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    public Map<String, Object> getReportJobsStatistics(final HttpServletResponse response) throws IOException {
+        if (!securityService.hasCurrentUserRole(L_ROLE_ADMIN)) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+
+            return null;
+        }
+
+        Map<String, Object> statistics = Maps.newHashMap();
+
+        statistics.put("queueDepth", reportJobService.getQueueDepth());
+        statistics.put("runningJobs", reportJobService.getRunningJobs());
+        statistics.put("durations", reportJobService.getDurations());
+
+        return statistics;
+    }
+
+}
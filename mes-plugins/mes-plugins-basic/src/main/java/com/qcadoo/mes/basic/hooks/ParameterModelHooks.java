@@ -30,6 +30,7 @@ import java.util.Objects;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.qcadoo.mes.basic.ParameterService;
 import com.qcadoo.mes.basic.constants.CurrencyFields;
 import com.qcadoo.mes.basic.constants.ParameterFields;
 import com.qcadoo.mes.basic.util.CurrencyService;
@@ -47,8 +48,12 @@ public class ParameterModelHooks {
     @Autowired
     private CurrencyService currencyService;
 
+    @Autowired
+    private ParameterService parameterService;
+
 
     public void onSave(final DataDefinition parameterDD, final Entity parameter) {
+        parameterService.invalidateParameter();
 
         if(Objects.isNull(parameter.getId())) {
             return;
@@ -23,18 +23,16 @@
  */
 package com.qcadoo.mes.basic.imports.dtos;
 
-import java.util.Locale;
 import java.util.Objects;
 import java.util.function.Consumer;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.builder.ToStringBuilder;
-import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.DataFormatter;
-import org.springframework.context.i18n.LocaleContextHolder;
 
+import com.qcadoo.mes.basic.imports.helpers.BulkCellParser;
 import com.qcadoo.mes.basic.imports.helpers.CellErrorsAccessor;
 import com.qcadoo.mes.basic.imports.helpers.CellParser;
+import com.qcadoo.mes.basic.imports.helpers.ImportLookupCache;
 import com.qcadoo.mes.basic.imports.parsers.BooleanCellParser;
 import com.qcadoo.model.api.Entity;
 
@@ -96,25 +94,38 @@ public abstract class CellBinder {
         return new OptionalCellBinder(fieldName, dependentFieldName, cellParser);
     }
 
-    public abstract void bind(final Cell cell, final Entity entity, final CellErrorsAccessor errorsAccessor);
-
-    public abstract void bind(final Cell cell, final Cell dependentCell, final Entity entity,
+    public abstract void bind(final String cellValue, final Entity entity, final ImportLookupCache lookupCache,
             final CellErrorsAccessor errorsAccessor);
 
-    public abstract void bind(final String cellValue, final Entity entity, final CellErrorsAccessor errorsAccessor);
+    public abstract void bind(final String cellValue, final String dependentCellValue, final Entity entity,
+            final ImportLookupCache lookupCache, final CellErrorsAccessor errorsAccessor);
 
-    private static String formatCell(final Cell cell) {
-        Locale locale = LocaleContextHolder.getLocale();
+    protected void parse(final String cellValue, final String dependentCellValue, final Entity entity,
+            final ImportLookupCache lookupCache, final CellErrorsAccessor errorsAccessor) {
+        Consumer<Object> valueConsumer = fieldValue -> entity.setField(getFieldName(), fieldValue);
 
-        final DataFormatter dataFormatter = new DataFormatter(Objects.isNull(locale) ? Locale.getDefault() : locale);
+        if ((cellParser instanceof BulkCellParser) && Objects.nonNull(lookupCache)) {
+            ((BulkCellParser) cellParser).parse(lookupCache, cellValue, dependentCellValue, errorsAccessor, valueConsumer);
+        } else {
+            cellParser.parse(cellValue, dependentCellValue, errorsAccessor, valueConsumer);
+        }
+    }
 
-        return dataFormatter.formatCellValue(cell).trim();
+    /**
+     * Returns value given to parser for given cell value, or null if cell isn't parsed.
+     */
+    public static String getParsedValue(final String cellValue) {
+        return StringUtils.isEmpty(cellValue) ? null : formatCell(cellValue);
     }
 
     private static String formatCell(final String cellValue) {
         return cellValue.trim();
     }
 
+    private static String formatDependentCell(final String dependentCellValue) {
+        return StringUtils.trimToEmpty(dependentCellValue);
+    }
+
     @Override
     public String toString() {
         return ToStringBuilder.reflectionToString(this);
@@ -144,33 +155,22 @@ public abstract class CellBinder {
         }
 
         @Override
-        public void bind(final Cell cell, final Entity entity, final CellErrorsAccessor errorsAccessor) {
-            if (Objects.isNull(cell)) {
-                errorsAccessor.addError(L_QCADOO_VIEW_VALIDATE_FIELD_ERROR_MISSING);
-            } else {
-                getCellParser().parse(formatCell(cell), null, errorsAccessor,
-                        fieldValue -> entity.setField(getFieldName(), fieldValue));
-            }
-        }
-
-        @Override
-        public void bind(final Cell cell, final Cell dependentCell, final Entity entity,
+        public void bind(final String cellValue, final Entity entity, final ImportLookupCache lookupCache,
                 final CellErrorsAccessor errorsAccessor) {
-            if (Objects.isNull(cell)) {
+            if (StringUtils.isEmpty(cellValue)) {
                 errorsAccessor.addError(L_QCADOO_VIEW_VALIDATE_FIELD_ERROR_MISSING);
             } else {
-                getCellParser().parse(formatCell(cell), formatCell(dependentCell), errorsAccessor,
-                        fieldValue -> entity.setField(getFieldName(), fieldValue));
+                parse(formatCell(cellValue), null, entity, lookupCache, errorsAccessor);
             }
         }
 
         @Override
-        public void bind(final String cellValue, final Entity entity, final CellErrorsAccessor errorsAccessor) {
+        public void bind(final String cellValue, final String dependentCellValue, final Entity entity,
+                final ImportLookupCache lookupCache, final CellErrorsAccessor errorsAccessor) {
             if (StringUtils.isEmpty(cellValue)) {
                 errorsAccessor.addError(L_QCADOO_VIEW_VALIDATE_FIELD_ERROR_MISSING);
             } else {
-                getCellParser().parse(formatCell(cellValue), null, errorsAccessor,
-                        fieldValue -> entity.setField(getFieldName(), fieldValue));
+                parse(formatCell(cellValue), formatDependentCell(dependentCellValue), entity, lookupCache, errorsAccessor);
             }
         }
     }
@@ -190,33 +190,22 @@ public abstract class CellBinder {
         }
 
         @Override
-        public void bind(final Cell cell, final Entity entity, final CellErrorsAccessor errorsAccessor) {
-            if (Objects.isNull(cell)) {
-                setDefaultValue(entity, errorsAccessor);
-            } else {
-                getCellParser().parse(formatCell(cell), null, errorsAccessor,
-                        fieldValue -> entity.setField(getFieldName(), fieldValue));
-            }
-        }
-
-        @Override
-        public void bind(final Cell cell, final Cell dependentCell, final Entity entity,
+        public void bind(final String cellValue, final Entity entity, final ImportLookupCache lookupCache,
                 final CellErrorsAccessor errorsAccessor) {
-            if (Objects.isNull(cell)) {
+            if (StringUtils.isEmpty(cellValue)) {
                 setDefaultValue(entity, errorsAccessor);
             } else {
-                getCellParser().parse(formatCell(cell), formatCell(dependentCell), errorsAccessor,
-                        fieldValue -> entity.setField(getFieldName(), fieldValue));
+                parse(formatCell(cellValue), null, entity, lookupCache, errorsAccessor);
             }
         }
 
         @Override
-        public void bind(final String cellValue, final Entity entity, final CellErrorsAccessor errorsAccessor) {
+        public void bind(final String cellValue, final String dependentCellValue, final Entity entity,
+                final ImportLookupCache lookupCache, final CellErrorsAccessor errorsAccessor) {
             if (StringUtils.isEmpty(cellValue)) {
                 setDefaultValue(entity, errorsAccessor);
             } else {
-                getCellParser().parse(formatCell(cellValue), null, errorsAccessor,
-                        fieldValue -> entity.setField(getFieldName(), fieldValue));
+                parse(formatCell(cellValue), formatDependentCell(dependentCellValue), entity, lookupCache, errorsAccessor);
             }
         }
 
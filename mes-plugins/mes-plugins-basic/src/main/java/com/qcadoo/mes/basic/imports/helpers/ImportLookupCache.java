@@ -0,0 +1,79 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.imports.helpers;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchRestrictions;
+
+/**
+ * Entities resolved by lookup columns during one import. Instance is created per import and dropped with it, so lookups
+ * fetched for earlier chunks are reused by later ones and nothing outlives the import.
+ */
+public class ImportLookupCache {
+
+    private static final int L_PARTITION_SIZE = 1000;
+
+    private static final String L_DOT = ".";
+
+    private final Map<String, Map<String, Entity>> entities = Maps.newHashMap();
+
+    public void prefetch(final DataDefinition dataDefinition, final String fieldName, final Collection<String> values) {
+        Map<String, Entity> entitiesByValue = entities.computeIfAbsent(createKey(dataDefinition, fieldName),
+                key -> Maps.newHashMap());
+
+        List<String> valuesToFetch = values.stream().filter(value -> !entitiesByValue.containsKey(value))
+                .collect(Collectors.toList());
+
+        for (List<String> partition : Lists.partition(valuesToFetch, L_PARTITION_SIZE)) {
+            dataDefinition.find().add(SearchRestrictions.in(fieldName, partition)).list().getEntities()
+                    .forEach(entity -> entitiesByValue.putIfAbsent(entity.getStringField(fieldName), entity));
+        }
+    }
+
+    public Entity get(final DataDefinition dataDefinition, final String fieldName, final String value,
+            final Supplier<Entity> loader) {
+        Map<String, Entity> entitiesByValue = entities.get(createKey(dataDefinition, fieldName));
+
+        if (Objects.nonNull(entitiesByValue) && entitiesByValue.containsKey(value)) {
+            return entitiesByValue.get(value);
+        }
+
+        return loader.get();
+    }
+
+    private String createKey(final DataDefinition dataDefinition, final String fieldName) {
+        return dataDefinition.getPluginIdentifier() + L_DOT + dataDefinition.getName() + L_DOT + fieldName;
+    }
+
+}
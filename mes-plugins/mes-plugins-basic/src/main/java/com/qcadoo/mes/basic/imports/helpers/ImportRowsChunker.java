@@ -0,0 +1,79 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.imports.helpers;
+
+import java.util.List;
+import java.util.function.Predicate;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.imports.dtos.ImportRow;
+
+/**
+ * Collects rows read from import file and passes them in chunks to given processor, so that only one chunk of rows is held
+ * in memory at a time. Processor returns false when import should be stopped.
+ */
+public class ImportRowsChunker implements Predicate<ImportRow> {
+
+    public static final int DEFAULT_CHUNK_SIZE = 500;
+
+    private final int chunkSize;
+
+    private final Predicate<List<ImportRow>> chunkProcessor;
+
+    private final List<ImportRow> chunk;
+
+    public ImportRowsChunker(final Predicate<List<ImportRow>> chunkProcessor) {
+        this(DEFAULT_CHUNK_SIZE, chunkProcessor);
+    }
+
+    public ImportRowsChunker(final int chunkSize, final Predicate<List<ImportRow>> chunkProcessor) {
+        this.chunkSize = chunkSize;
+        this.chunkProcessor = chunkProcessor;
+        this.chunk = Lists.newArrayListWithCapacity(chunkSize);
+    }
+
+    @Override
+    public boolean test(final ImportRow row) {
+        chunk.add(row);
+
+        if (chunk.size() < chunkSize) {
+            return true;
+        }
+
+        return flush();
+    }
+
+    public boolean flush() {
+        if (chunk.isEmpty()) {
+            return true;
+        }
+
+        boolean shouldContinue = chunkProcessor.test(chunk);
+
+        chunk.clear();
+
+        return shouldContinue;
+    }
+
+}
@@ -27,8 +27,6 @@ import java.util.List;
 import java.util.Objects;
 import java.util.function.Function;
 
-import org.apache.poi.ss.usermodel.Cell;
-
 import com.google.common.collect.Lists;
 import com.qcadoo.mes.basic.imports.dtos.CellBinder;
 import com.qcadoo.mes.basic.imports.dtos.CellBinderRegistry;
@@ -46,6 +44,8 @@ public class RowProcessorHelper {
 
     private ImportStatus importStatus;
 
+    private ImportLookupCache lookupCache;
+
     private int currentRow;
 
     private boolean finished = false;
@@ -57,27 +57,20 @@ public class RowProcessorHelper {
     private List<ImportError> rowErrors = Lists.newArrayList();
 
     public RowProcessorHelper(final Entity entity, final CellBinderRegistry cellBinderRegistry, final ImportStatus importStatus,
-            final int rowIndex) {
+            final ImportLookupCache lookupCache, final int rowIndex) {
         this.entity = entity;
         this.cellBinderRegistry = cellBinderRegistry;
         this.importStatus = importStatus;
+        this.lookupCache = lookupCache;
         this.currentRow = rowIndex;
     }
 
-    public boolean isEmpty() {
-        return empty;
+    public Entity getEntity() {
+        return entity;
     }
 
-    public void append(final Cell cell) {
-        assureNotProcessedYet();
-
-        if (Objects.nonNull(cell)) {
-            empty = false;
-        }
-
-        final CellBinder binder = cellBinderRegistry.getCellBinder(index++);
-
-        binder.bind(cell, entity, errorCode -> rowErrors.add(new ImportError(currentRow, binder.getFieldName(), errorCode)));
+    public boolean isEmpty() {
+        return empty;
     }
 
     public void append(final String cellValue) {
@@ -89,19 +82,20 @@ public class RowProcessorHelper {
 
         final CellBinder binder = cellBinderRegistry.getCellBinder(index++);
 
-        binder.bind(cellValue, entity, errorCode -> rowErrors.add(new ImportError(currentRow, binder.getFieldName(), errorCode)));
+        binder.bind(cellValue, entity, lookupCache,
+                errorCode -> rowErrors.add(new ImportError(currentRow, binder.getFieldName(), errorCode)));
     }
 
-    public void append(Cell cell, Cell dependentCell) {
+    public void append(final String cellValue, final String dependentCellValue) {
         assureNotProcessedYet();
 
-        if (Objects.nonNull(cell)) {
+        if (Objects.nonNull(cellValue)) {
             empty = false;
         }
 
         final CellBinder binder = cellBinderRegistry.getCellBinder(index++);
 
-        binder.bind(cell, dependentCell, entity,
+        binder.bind(cellValue, dependentCellValue, entity, lookupCache,
                 errorCode -> rowErrors.add(new ImportError(currentRow, binder.getFieldName(), errorCode)));
     }
 
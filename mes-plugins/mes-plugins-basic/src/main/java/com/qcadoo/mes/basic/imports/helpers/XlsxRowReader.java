@@ -0,0 +1,191 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.imports.helpers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler.SheetContentsHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import com.qcadoo.mes.basic.imports.dtos.ImportRow;
+
+/**
+ * Reads rows of the first sheet of xlsx file with SAX, without building the whole workbook in memory.
+ *
+ * Header row is skipped. Reading stops at the first missing row or when row consumer returns false.
+ */
+public final class XlsxRowReader {
+
+    private XlsxRowReader() {
+    }
+
+    public static void read(final InputStream inputStream, final int columnsCount, final Predicate<ImportRow> rowConsumer)
+            throws IOException {
+        OPCPackage opcPackage;
+
+        try {
+            opcPackage = OPCPackage.open(inputStream);
+        } catch (OpenXML4JException e) {
+            throw new IOException(e);
+        }
+
+        try {
+            XSSFReader xssfReader = new XSSFReader(opcPackage);
+            ReadOnlySharedStringsTable sharedStringsTable = new ReadOnlySharedStringsTable(opcPackage);
+            StylesTable stylesTable = xssfReader.getStylesTable();
+
+            Iterator<InputStream> sheets = xssfReader.getSheetsData();
+
+            if (!sheets.hasNext()) {
+                return;
+            }
+
+            try (InputStream sheet = sheets.next()) {
+                XMLReader xmlReader = createXmlReader();
+
+                xmlReader.setContentHandler(new XSSFSheetXMLHandler(stylesTable, sharedStringsTable,
+                        new RowsHandler(columnsCount, rowConsumer), createDataFormatter(), false));
+
+                xmlReader.parse(new InputSource(sheet));
+            } catch (StopReadingException e) {
+                // reading finished before the end of sheet
+            }
+        } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+            throw new IOException(e);
+        } finally {
+            opcPackage.revert();
+        }
+    }
+
+    private static XMLReader createXmlReader() throws ParserConfigurationException, SAXException {
+        SAXParserFactory saxParserFactory = SAXParserFactory.newInstance();
+
+        saxParserFactory.setNamespaceAware(true);
+        saxParserFactory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+
+        return saxParserFactory.newSAXParser().getXMLReader();
+    }
+
+    private static DataFormatter createDataFormatter() {
+        Locale locale = LocaleContextHolder.getLocale();
+
+        return new DataFormatter(Objects.isNull(locale) ? Locale.getDefault() : locale);
+    }
+
+    private static class RowsHandler implements SheetContentsHandler {
+
+        private final int columnsCount;
+
+        private final Predicate<ImportRow> rowConsumer;
+
+        private int expectedRowNum = 1;
+
+        private String[] values;
+
+        private int nextColumnIndex;
+
+        RowsHandler(final int columnsCount, final Predicate<ImportRow> rowConsumer) {
+            this.columnsCount = columnsCount;
+            this.rowConsumer = rowConsumer;
+        }
+
+        @Override
+        public void startRow(final int rowNum) {
+            values = null;
+
+            if (rowNum == 0) {
+                return;
+            }
+
+            if (rowNum != expectedRowNum) {
+                throw new StopReadingException();
+            }
+
+            values = new String[columnsCount];
+            nextColumnIndex = 0;
+        }
+
+        @Override
+        public void endRow(final int rowNum) {
+            if (Objects.isNull(values)) {
+                return;
+            }
+
+            if (!rowConsumer.test(new ImportRow(rowNum, values))) {
+                throw new StopReadingException();
+            }
+
+            expectedRowNum++;
+        }
+
+        @Override
+        public void cell(final String cellReference, final String formattedValue, final XSSFComment comment) {
+            if (Objects.isNull(values)) {
+                return;
+            }
+
+            int columnIndex = Objects.isNull(cellReference) ? nextColumnIndex : new CellReference(cellReference).getCol();
+
+            nextColumnIndex = columnIndex + 1;
+
+            if ((columnIndex < columnsCount) && StringUtils.isNotEmpty(formattedValue)) {
+                values[columnIndex] = formattedValue;
+            }
+        }
+
+        @Override
+        public void headerFooter(final String text, final boolean isHeader, final String tagName) {
+        }
+
+    }
+
+    private static class StopReadingException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+    }
+
+}
@@ -23,47 +23,16 @@
  */
 package com.qcadoo.mes.basic.imports.parsers;
 
+import org.springframework.stereotype.Component;
+
 import com.qcadoo.mes.basic.constants.AssortmentFields;
 import com.qcadoo.mes.basic.constants.BasicConstants;
-import com.qcadoo.mes.basic.imports.helpers.CellErrorsAccessor;
-import com.qcadoo.mes.basic.imports.helpers.CellParser;
-import com.qcadoo.model.api.DataDefinition;
-import com.qcadoo.model.api.DataDefinitionService;
-import com.qcadoo.model.api.Entity;
-import com.qcadoo.model.api.search.SearchRestrictions;
-
-import java.util.Objects;
-import java.util.function.Consumer;
-
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.stereotype.Component;
 
 @Component
-public class AssortmentCellParser implements CellParser {
-
-    private static final String L_QCADOO_VIEW_VALIDATE_FIELD_ERROR_LOOKUP_CODE_NOT_FOUND = "qcadooView.validate.field.error.lookupCodeNotFound";
-
-    @Autowired
-    private DataDefinitionService dataDefinitionService;
-
-    @Override
-    public void parse(final String cellValue, final String dependentCellValue, final CellErrorsAccessor errorsAccessor, final Consumer<Object> valueConsumer) {
-        Entity assortment = getAssortmentByName(cellValue);
-
-        if (Objects.isNull(assortment)) {
-            errorsAccessor.addError(L_QCADOO_VIEW_VALIDATE_FIELD_ERROR_LOOKUP_CODE_NOT_FOUND);
-        } else {
-            valueConsumer.accept(assortment);
-        }
-    }
-
-    private Entity getAssortmentByName(final String name) {
-        return getAssortmentDD().find().add(SearchRestrictions.eq(AssortmentFields.NAME, name)).setMaxResults(1)
-                .uniqueResult();
-    }
+public class AssortmentCellParser extends EntityLookupCellParser {
 
-    private DataDefinition getAssortmentDD() {
-        return dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_ASSORTMENT);
+    public AssortmentCellParser() {
+        super(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_ASSORTMENT, AssortmentFields.NAME);
     }
 
 }
@@ -23,47 +23,16 @@
  */
 package com.qcadoo.mes.basic.imports.parsers;
 
-import java.util.Objects;
-import java.util.function.Consumer;
-
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import com.qcadoo.mes.basic.constants.BasicConstants;
 import com.qcadoo.mes.basic.constants.CompanyFields;
-import com.qcadoo.mes.basic.imports.helpers.CellErrorsAccessor;
-import com.qcadoo.mes.basic.imports.helpers.CellParser;
-import com.qcadoo.model.api.DataDefinition;
-import com.qcadoo.model.api.DataDefinitionService;
-import com.qcadoo.model.api.Entity;
-import com.qcadoo.model.api.search.SearchRestrictions;
 
 @Component
-public class CompanyCellParser implements CellParser {
-
-    private static final String L_QCADOO_VIEW_VALIDATE_FIELD_ERROR_LOOKUP_CODE_NOT_FOUND = "qcadooView.validate.field.error.lookupCodeNotFound";
-
-    @Autowired
-    private DataDefinitionService dataDefinitionService;
-
-    @Override
-    public void parse(final String cellValue, final String dependentCellValue, final CellErrorsAccessor errorsAccessor,
-            final Consumer<Object> valueConsumer) {
-        Entity company = getCompanyByNumber(cellValue);
-
-        if (Objects.isNull(company)) {
-            errorsAccessor.addError(L_QCADOO_VIEW_VALIDATE_FIELD_ERROR_LOOKUP_CODE_NOT_FOUND);
-        } else {
-            valueConsumer.accept(company);
-        }
-    }
-
-    private Entity getCompanyByNumber(final String number) {
-        return getCompanyDD().find().add(SearchRestrictions.eq(CompanyFields.NUMBER, number)).setMaxResults(1).uniqueResult();
-    }
+public class CompanyCellParser extends EntityLookupCellParser {
 
-    private DataDefinition getCompanyDD() {
-        return dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_COMPANY);
+    public CompanyCellParser() {
+        super(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_COMPANY, CompanyFields.NUMBER);
     }
 
 }
@@ -23,47 +23,16 @@
  */
 package com.qcadoo.mes.basic.imports.parsers;
 
-import java.util.Objects;
-import java.util.function.Consumer;
-
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import com.qcadoo.mes.basic.constants.BasicConstants;
 import com.qcadoo.mes.basic.constants.DivisionFields;
-import com.qcadoo.mes.basic.imports.helpers.CellErrorsAccessor;
-import com.qcadoo.mes.basic.imports.helpers.CellParser;
-import com.qcadoo.model.api.DataDefinition;
-import com.qcadoo.model.api.DataDefinitionService;
-import com.qcadoo.model.api.Entity;
-import com.qcadoo.model.api.search.SearchRestrictions;
 
 @Component
-public class DivisionCellParser implements CellParser {
-
-    private static final String L_QCADOO_VIEW_VALIDATE_FIELD_ERROR_LOOKUP_CODE_NOT_FOUND = "qcadooView.validate.field.error.lookupCodeNotFound";
-
-    @Autowired
-    private DataDefinitionService dataDefinitionService;
-
-    @Override
-    public void parse(final String cellValue, final String dependentCellValue, final CellErrorsAccessor errorsAccessor,
-            final Consumer<Object> valueConsumer) {
-        Entity division = getDivisionByNumber(cellValue);
-
-        if (Objects.isNull(division)) {
-            errorsAccessor.addError(L_QCADOO_VIEW_VALIDATE_FIELD_ERROR_LOOKUP_CODE_NOT_FOUND);
-        } else {
-            valueConsumer.accept(division);
-        }
-    }
-
-    private Entity getDivisionByNumber(final String number) {
-        return getDivisionDD().find().add(SearchRestrictions.eq(DivisionFields.NUMBER, number)).setMaxResults(1).uniqueResult();
-    }
+public class DivisionCellParser extends EntityLookupCellParser {
 
-    private DataDefinition getDivisionDD() {
-        return dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_DIVISION);
+    public DivisionCellParser() {
+        super(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_DIVISION, DivisionFields.NUMBER);
     }
 
 }
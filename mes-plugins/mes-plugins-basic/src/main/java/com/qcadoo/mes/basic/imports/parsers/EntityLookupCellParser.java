@@ -0,0 +1,93 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.imports.parsers;
+
+import java.util.Collection;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.qcadoo.mes.basic.imports.helpers.BulkCellParser;
+import com.qcadoo.mes.basic.imports.helpers.CellErrorsAccessor;
+import com.qcadoo.mes.basic.imports.helpers.ImportLookupCache;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchRestrictions;
+
+public abstract class EntityLookupCellParser implements BulkCellParser {
+
+    private static final String L_QCADOO_VIEW_VALIDATE_FIELD_ERROR_LOOKUP_CODE_NOT_FOUND = "qcadooView.validate.field.error.lookupCodeNotFound";
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    private final String pluginIdentifier;
+
+    private final String modelName;
+
+    private final String fieldName;
+
+    protected EntityLookupCellParser(final String pluginIdentifier, final String modelName, final String fieldName) {
+        this.pluginIdentifier = pluginIdentifier;
+        this.modelName = modelName;
+        this.fieldName = fieldName;
+    }
+
+    @Override
+    public void parse(final String cellValue, final String dependentCellValue, final CellErrorsAccessor errorsAccessor,
+            final Consumer<Object> valueConsumer) {
+        accept(getEntityByFieldValue(cellValue), errorsAccessor, valueConsumer);
+    }
+
+    @Override
+    public void parse(final ImportLookupCache lookupCache, final String cellValue, final String dependentCellValue,
+            final CellErrorsAccessor errorsAccessor, final Consumer<Object> valueConsumer) {
+        accept(lookupCache.get(getDataDefinition(), fieldName, cellValue, () -> getEntityByFieldValue(cellValue)),
+                errorsAccessor, valueConsumer);
+    }
+
+    @Override
+    public void prefetch(final ImportLookupCache lookupCache, final Collection<String> cellValues) {
+        lookupCache.prefetch(getDataDefinition(), fieldName, cellValues);
+    }
+
+    private void accept(final Entity entity, final CellErrorsAccessor errorsAccessor, final Consumer<Object> valueConsumer) {
+        if (Objects.isNull(entity)) {
+            errorsAccessor.addError(L_QCADOO_VIEW_VALIDATE_FIELD_ERROR_LOOKUP_CODE_NOT_FOUND);
+        } else {
+            valueConsumer.accept(entity);
+        }
+    }
+
+    private Entity getEntityByFieldValue(final String value) {
+        return getDataDefinition().find().add(SearchRestrictions.eq(fieldName, value)).setMaxResults(1).uniqueResult();
+    }
+
+    private DataDefinition getDataDefinition() {
+        return dataDefinitionService.get(pluginIdentifier, modelName);
+    }
+
+}
@@ -26,7 +26,6 @@ package com.qcadoo.mes.basic.imports.services;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.util.List;
 import java.util.Objects;
 import java.util.function.Function;
 
@@ -40,8 +39,10 @@ import com.opencsv.CSVParserBuilder;
 import com.opencsv.CSVReader;
 import com.opencsv.CSVReaderBuilder;
 import com.qcadoo.mes.basic.imports.dtos.CellBinderRegistry;
+import com.qcadoo.mes.basic.imports.dtos.ImportRow;
 import com.qcadoo.mes.basic.imports.dtos.ImportStatus;
-import com.qcadoo.mes.basic.imports.helpers.RowProcessorHelper;
+import com.qcadoo.mes.basic.imports.helpers.ImportLookupCache;
+import com.qcadoo.mes.basic.imports.helpers.ImportRowsChunker;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.search.SearchCriterion;
 
@@ -58,40 +59,26 @@ public class CsvImportService extends ImportService {
         CSVParser parser = new CSVParserBuilder().withSeparator(';').build();
         CSVReader csvReader = new CSVReaderBuilder(new InputStreamReader(fis)).withCSVParser(parser).withSkipLines(1).build();
 
-        List<String[]> rows = csvReader.readAll();
+        ImportLookupCache lookupCache = new ImportLookupCache();
 
-        int rowIndex = 0;
-
-        for (String[] row : rows) {
-            Entity entity = createEntity(pluginIdentifier, modelName);
-
-            if (Objects.nonNull(belongsTo) && Objects.nonNull(belongsToName)) {
-                entity.setField(belongsToName, belongsTo);
-            }
+        ImportRowsChunker importRowsChunker = new ImportRowsChunker(rows -> importRows(rows, cellBinderRegistry, importStatus,
+                lookupCache, pluginIdentifier, modelName, belongsTo, belongsToName, shouldUpdate, criteriaSupplier,
+                checkOnUpdate));
 
-            RowProcessorHelper rowProcessorService = new RowProcessorHelper(entity, cellBinderRegistry, importStatus, rowIndex);
+        int rowIndex = 0;
 
-            for (int columnIndex = 0; columnIndex < cellBinderRegistry.getSize(); columnIndex++) {
-                rowProcessorService.append(row[columnIndex]);
-            }
+        String[] row;
 
-            if (rowProcessorService.isEmpty()) {
+        while (Objects.nonNull(row = csvReader.readNext())) {
+            if (!importRowsChunker.test(new ImportRow(rowIndex, row))) {
                 break;
             }
 
-            if (shouldUpdate && !Objects.isNull(criteriaSupplier)) {
-                Entity entityToUpdate = getEntity(pluginIdentifier, modelName, criteriaSupplier.apply(entity));
-
-                rowProcessorService.update(entityToUpdate, checkOnUpdate);
-            }
-
-            validateEntity(entity, entity.getDataDefinition());
-
-            rowProcessorService.process();
-
             rowIndex++;
         }
 
+        importRowsChunker.flush();
+
         if (rollbackOnError && importStatus.hasErrors()) {
             TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
         }
@@ -29,9 +29,15 @@ import com.google.common.io.Files;
 import com.qcadoo.localization.api.TranslationService;
 import com.qcadoo.mes.basic.LogService;
 import com.qcadoo.mes.basic.constants.LogFields;
+import com.qcadoo.mes.basic.imports.dtos.CellBinder;
 import com.qcadoo.mes.basic.imports.dtos.CellBinderRegistry;
 import com.qcadoo.mes.basic.imports.dtos.ImportError;
+import com.qcadoo.mes.basic.imports.dtos.ImportRow;
 import com.qcadoo.mes.basic.imports.dtos.ImportStatus;
+import com.qcadoo.mes.basic.imports.helpers.BulkCellParser;
+import com.qcadoo.mes.basic.imports.helpers.CellParser;
+import com.qcadoo.mes.basic.imports.helpers.ImportLookupCache;
+import com.qcadoo.mes.basic.imports.helpers.RowProcessorHelper;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
@@ -45,11 +51,14 @@ import com.qcadoo.view.api.ribbon.Ribbon;
 import com.qcadoo.view.api.ribbon.RibbonActionItem;
 import com.qcadoo.view.api.ribbon.RibbonGroup;
 import com.qcadoo.view.constants.QcadooViewConstants;
+import org.apache.commons.beanutils.MethodUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.hibernate.classic.Session;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.security.util.FieldUtils;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.util.UriComponentsBuilder;
@@ -57,10 +66,14 @@ import org.springframework.web.util.UriComponentsBuilder;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
 import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 public abstract class ImportService {
@@ -95,6 +108,8 @@ public abstract class ImportService {
 
     private static final String L_BASIC_IMPORT_FAILURE_MESSAGE = "basic.import.failure.message";
 
+    private static final String L_BASIC_IMPORT_SUMMARY_MESSAGE = "basic.import.summary.message";
+
     private static final String L_BASIC_IMPORT_ERROR_GENERIC = "basic.import.error.generic";
 
     private static final String L_BASIC_IMPORT_ERROR_ACTION_SAVE = "basic.import.error.action.save";
@@ -180,9 +195,13 @@ public abstract class ImportService {
             view.addMessage(L_BASIC_IMPORT_ERROR_FILE_INVALID, ComponentState.MessageType.FAILURE);
         } else {
             try (FileInputStream fis = new FileInputStream(filePath)) {
+                long startTime = System.currentTimeMillis();
+
                 ImportStatus importStatus = importFile(fis, cellBinderRegistry, rollbackOnError, pluginIdentifier, modelName,
                         belongsTo, belongsToName, shouldUpdate, criteriaSupplier, checkOnUpdate);
 
+                addSummaryMessage(view, importStatus, System.currentTimeMillis() - startTime);
+
                 Integer rowsProcessed = importStatus.getRowsProcessed();
                 Integer rowsWithErrors = importStatus.getErrorsSize();
                 Integer savedEntities = rowsProcessed - rowsWithErrors;
@@ -222,6 +241,16 @@ public abstract class ImportService {
         }
     }
 
+    private void addSummaryMessage(final ViewDefinitionState view, final ImportStatus importStatus, final long duration) {
+        if (importStatus.getRowsProcessed() > 0) {
+            long rowsPerSecond = importStatus.getRowsProcessed() * 1000L / Math.max(duration, 1L);
+
+            view.addMessage(L_BASIC_IMPORT_SUMMARY_MESSAGE, ComponentState.MessageType.INFO, false,
+                    String.valueOf(importStatus.getRowsProcessed()), String.valueOf(duration / 1000L),
+                    String.valueOf(rowsPerSecond));
+        }
+    }
+
     public ImportStatus importFile(final FileInputStream fis, final CellBinderRegistry cellBinderRegistry,
             final Boolean rollbackOnError, final String pluginIdentifier, final String modelName) throws IOException {
         return importFile(fis, cellBinderRegistry, rollbackOnError, pluginIdentifier, modelName, null, null);
@@ -254,6 +283,133 @@ public abstract class ImportService {
             final String belongsToName, final Boolean shouldUpdate, final Function<Entity, SearchCriterion> criteriaSupplier,
             final Function<Entity, Boolean> checkOnUpdate) throws IOException;
 
+    /**
+     * Imports chunk of rows: values of lookup columns are resolved for the whole chunk at once, then rows are bound and saved
+     * one after another in file order, so a row can refer to an entity saved by an earlier row of the chunk, and the session
+     * is flushed and cleared once per chunk. Returns false when an empty row was found and import should be stopped.
+     */
+    protected boolean importRows(final List<ImportRow> rows, final CellBinderRegistry cellBinderRegistry,
+            final ImportStatus importStatus, final ImportLookupCache lookupCache, final String pluginIdentifier,
+            final String modelName, final Entity belongsTo, final String belongsToName, final Boolean shouldUpdate,
+            final Function<Entity, SearchCriterion> criteriaSupplier, final Function<Entity, Boolean> checkOnUpdate) {
+        long startTime = System.currentTimeMillis();
+
+        boolean shouldContinue = true;
+
+        prefetchLookups(rows, cellBinderRegistry, lookupCache);
+
+        int importedRows = 0;
+
+        for (ImportRow row : rows) {
+            RowProcessorHelper rowProcessorHelper = bindRow(row, cellBinderRegistry, importStatus, lookupCache,
+                    pluginIdentifier, modelName, belongsTo, belongsToName);
+
+            if (rowProcessorHelper.isEmpty()) {
+                shouldContinue = false;
+
+                break;
+            }
+
+            saveRow(rowProcessorHelper, pluginIdentifier, modelName, shouldUpdate, criteriaSupplier, checkOnUpdate);
+
+            importedRows++;
+        }
+
+        if (importedRows > 0) {
+            flushAndClearSession(pluginIdentifier, modelName);
+        }
+
+        if (LOG.isDebugEnabled()) {
+            long duration = Math.max(System.currentTimeMillis() - startTime, 1L);
+
+            LOG.debug("Import of {}: {} rows processed, chunk of {} rows imported in {} ms ({} rows/s)", modelName,
+                    importStatus.getRowsProcessed(), importedRows, duration, importedRows * 1000L / duration);
+        }
+
+        return shouldContinue;
+    }
+
+    private void prefetchLookups(final List<ImportRow> rows, final CellBinderRegistry cellBinderRegistry,
+            final ImportLookupCache lookupCache) {
+        for (int columnIndex = 0; columnIndex < cellBinderRegistry.getSize(); columnIndex++) {
+            CellParser cellParser = cellBinderRegistry.getCellBinder(columnIndex).getCellParser();
+
+            if (cellParser instanceof BulkCellParser) {
+                final int index = columnIndex;
+
+                Set<String> cellValues = rows.stream().map(row -> CellBinder.getParsedValue(row.getValue(index)))
+                        .filter(Objects::nonNull).collect(Collectors.toSet());
+
+                if (!cellValues.isEmpty()) {
+                    ((BulkCellParser) cellParser).prefetch(lookupCache, cellValues);
+                }
+            }
+        }
+    }
+
+    private RowProcessorHelper bindRow(final ImportRow row, final CellBinderRegistry cellBinderRegistry,
+            final ImportStatus importStatus, final ImportLookupCache lookupCache, final String pluginIdentifier,
+            final String modelName, final Entity belongsTo, final String belongsToName) {
+        Entity entity = createEntity(pluginIdentifier, modelName);
+
+        if (Objects.nonNull(belongsTo) && Objects.nonNull(belongsToName)) {
+            entity.setField(belongsToName, belongsTo);
+        }
+
+        RowProcessorHelper rowProcessorHelper = new RowProcessorHelper(entity, cellBinderRegistry, importStatus, lookupCache,
+                row.getRowIndex());
+
+        for (int columnIndex = 0; columnIndex < cellBinderRegistry.getSize(); columnIndex++) {
+            CellBinder cellBinder = cellBinderRegistry.getCellBinder(columnIndex);
+            String dependentFieldName = cellBinder.getDependentFieldName();
+
+            if (StringUtils.isEmpty(dependentFieldName)) {
+                rowProcessorHelper.append(row.getValue(columnIndex));
+            } else {
+                Integer dependentIndex = cellBinderRegistry.getIndexUsingFieldName(dependentFieldName);
+
+                rowProcessorHelper.append(row.getValue(columnIndex),
+                        Objects.isNull(dependentIndex) ? null : row.getValue(dependentIndex));
+            }
+        }
+
+        return rowProcessorHelper;
+    }
+
+    private void saveRow(final RowProcessorHelper rowProcessorHelper, final String pluginIdentifier, final String modelName,
+            final Boolean shouldUpdate, final Function<Entity, SearchCriterion> criteriaSupplier,
+            final Function<Entity, Boolean> checkOnUpdate) {
+        Entity entity = rowProcessorHelper.getEntity();
+
+        if (shouldUpdate && !Objects.isNull(criteriaSupplier)) {
+            Entity entityToUpdate = getEntity(pluginIdentifier, modelName, criteriaSupplier.apply(entity));
+
+            rowProcessorHelper.update(entityToUpdate, checkOnUpdate);
+        }
+
+        validateEntity(entity, entity.getDataDefinition());
+
+        rowProcessorHelper.process();
+    }
+
+    private void flushAndClearSession(final String pluginIdentifier, final String modelName) {
+        Session currentSession = getCurrentSession(getDataDefinition(pluginIdentifier, modelName));
+
+        currentSession.flush();
+        currentSession.clear();
+    }
+
+    private Session getCurrentSession(final DataDefinition dataDefinition) {
+        Object dataAccessService = FieldUtils.getProtectedFieldValue("dataAccessService", dataDefinition);
+        Object hibernateService = FieldUtils.getProtectedFieldValue("hibernateService", dataAccessService);
+
+        try {
+            return (Session) MethodUtils.invokeExactMethod(hibernateService, "getCurrentSession", new Object[0]);
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
     public boolean shouldUpdate(final ViewDefinitionState view) {
         boolean shouldUpdate = false;
 
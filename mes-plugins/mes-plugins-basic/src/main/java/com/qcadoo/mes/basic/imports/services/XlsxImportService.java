@@ -24,23 +24,19 @@
 package com.qcadoo.mes.basic.imports.services;
 
 import com.google.common.io.Files;
-import com.qcadoo.mes.basic.imports.dtos.CellBinder;
 import com.qcadoo.mes.basic.imports.dtos.CellBinderRegistry;
 import com.qcadoo.mes.basic.imports.dtos.ImportStatus;
-import com.qcadoo.mes.basic.imports.helpers.RowProcessorHelper;
+import com.qcadoo.mes.basic.imports.helpers.ImportLookupCache;
+import com.qcadoo.mes.basic.imports.helpers.ImportRowsChunker;
+import com.qcadoo.mes.basic.imports.helpers.XlsxRowReader;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.search.SearchCriterion;
-import org.apache.commons.lang3.StringUtils;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.xssf.usermodel.XSSFSheet;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.interceptor.TransactionAspectSupport;
 
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.Objects;
 import java.util.function.Function;
 
 @Service
@@ -53,50 +49,15 @@ public class XlsxImportService extends ImportService {
             final Function<Entity, Boolean> checkOnUpdate) throws IOException {
         ImportStatus importStatus = new ImportStatus();
 
-        XSSFWorkbook workbook = new XSSFWorkbook(fis);
-        XSSFSheet sheet = workbook.getSheetAt(0);
+        ImportLookupCache lookupCache = new ImportLookupCache();
 
-        for (int rowIndex = 1; rowIndex <= sheet.getLastRowNum(); rowIndex++) {
-            Row row = sheet.getRow(rowIndex);
+        ImportRowsChunker importRowsChunker = new ImportRowsChunker(rows -> importRows(rows, cellBinderRegistry, importStatus,
+                lookupCache, pluginIdentifier, modelName, belongsTo, belongsToName, shouldUpdate, criteriaSupplier,
+                checkOnUpdate));
 
-            if (Objects.isNull(row)) {
-                break;
-            }
+        XlsxRowReader.read(fis, cellBinderRegistry.getSize(), importRowsChunker);
 
-            Entity entity = createEntity(pluginIdentifier, modelName);
-
-            if (Objects.nonNull(belongsTo) && Objects.nonNull(belongsToName)) {
-                entity.setField(belongsToName, belongsTo);
-            }
-
-            RowProcessorHelper rowProcessorHelper = new RowProcessorHelper(entity, cellBinderRegistry, importStatus, rowIndex);
-
-            for (int columnIndex = 0; columnIndex < cellBinderRegistry.getSize(); columnIndex++) {
-                CellBinder cell = cellBinderRegistry.getCellBinder(columnIndex);
-                String dependentFieldName = cell.getDependentFieldName();
-                if (StringUtils.isEmpty(dependentFieldName)) {
-                    rowProcessorHelper.append(row.getCell(columnIndex, Row.MissingCellPolicy.RETURN_BLANK_AS_NULL));
-                } else {
-                    int dependentIndex = getDependentIndex(dependentFieldName, cellBinderRegistry);
-                    rowProcessorHelper.append(row.getCell(columnIndex, Row.MissingCellPolicy.RETURN_BLANK_AS_NULL),
-                            row.getCell(dependentIndex, Row.MissingCellPolicy.RETURN_BLANK_AS_NULL));
-                }
-            }
-
-            if (rowProcessorHelper.isEmpty()) {
-                break;
-            }
-
-            if (shouldUpdate && !Objects.isNull(criteriaSupplier)) {
-                Entity entityToUpdate = getEntity(pluginIdentifier, modelName, criteriaSupplier.apply(entity));
-
-                rowProcessorHelper.update(entityToUpdate, checkOnUpdate);
-            }
-
-            validateEntity(entity, entity.getDataDefinition());
-
-            rowProcessorHelper.process();
-        }
+        importRowsChunker.flush();
 
         if (rollbackOnError && importStatus.hasErrors()) {
             TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
@@ -105,15 +66,6 @@ public class XlsxImportService extends ImportService {
         return importStatus;
     }
 
-    private int getDependentIndex(final String dependentFieldName, final CellBinderRegistry cellBinderRegistry) {
-        for (int columnIndex = 0; columnIndex < cellBinderRegistry.getSize(); columnIndex++) {
-            if (cellBinderRegistry.getCellBinder(columnIndex).getFieldName().equals(dependentFieldName)) {
-                return columnIndex;
-            }
-        }
-        return -1;
-    }
-
     public boolean checkFileExtension(final String filePath) {
         return Files.getFileExtension(filePath).equalsIgnoreCase(L_XLSX);
     }
@@ -0,0 +1,104 @@
+package com.qcadoo.mes.basic.reports;
+
+/**
+ * Report generation requested through {@link ReportJobService}, polled by the view until it's finished or failed.
+ */
+public class ReportJob {
+
+    public enum Status {
+        QUEUED, RUNNING, FINISHED, FAILED
+    }
+
+    public enum Priority {
+        HIGH, NORMAL, LOW
+    }
+
+    private final String id;
+
+    private final String name;
+
+    private final String userName;
+
+    private final Priority priority;
+
+    private final long submitTime;
+
+    private volatile long startTime;
+
+    private volatile long finishTime;
+
+    private volatile Status status = Status.QUEUED;
+
+    private volatile String errorMessage;
+
+    ReportJob(final String id, final String name, final String userName, final Priority priority) {
+        this.id = id;
+        this.name = name;
+        this.userName = userName;
+        this.priority = priority;
+        this.submitTime = System.currentTimeMillis();
+    }
+
+    void start() {
+        startTime = System.currentTimeMillis();
+        status = Status.RUNNING;
+    }
+
+    void finish() {
+        finishTime = System.currentTimeMillis();
+        status = Status.FINISHED;
+    }
+
+    void fail(final String errorMessage) {
+        this.finishTime = System.currentTimeMillis();
+        this.errorMessage = errorMessage;
+        this.status = Status.FAILED;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getUserName() {
+        return userName;
+    }
+
+    public Priority getPriority() {
+        return priority;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public boolean isDone() {
+        return Status.FINISHED == status || Status.FAILED == status;
+    }
+
+    /**
+     * Time spent in queue, in milliseconds, up to now if job is still queued.
+     */
+    public long getQueueTime() {
+        return (startTime == 0L ? System.currentTimeMillis() : startTime) - submitTime;
+    }
+
+    /**
+     * Time of generation, in milliseconds, up to now if job is still running.
+     */
+    public long getDuration() {
+        if (startTime == 0L) {
+            return 0L;
+        }
+
+        return (finishTime == 0L ? System.currentTimeMillis() : finishTime) - startTime;
+    }
+
+}
@@ -0,0 +1,303 @@
+package com.qcadoo.mes.basic.reports;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.qcadoo.mes.basic.util.WorkerContextService;
+import com.qcadoo.security.api.SecurityService;
+import com.qcadoo.tenant.api.MultiTenantUtil;
+
+/**
+ * Generates reports in the background, so view listeners return as soon as generation is requested. Jobs requested within a
+ * transaction are queued once it's committed, so they see everything saved before.
+ *
+ * Jobs are run on a worker pool, which size is set with reportJobWorkers property, in order of their priority. Number of jobs
+ * running at the same time for one tenant is limited with reportJobsPerTenant property, the others wait in the queue of the
+ * tenant, so one tenant doesn't take all workers.
+ * Jobs, with their status and times, are available until they expire, together with durations of finished reports per report
+ * name.
+ *
+ * So far only cost calculation reports are generated here, the other reports are still generated within the request.
+ */
+@Service
+public class ReportJobService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReportJobService.class);
+
+    private static final long L_MAXIMUM_SIZE = 1000L;
+
+    private static final long L_EXPIRE_AFTER_HOURS = 24L;
+
+    @Value("${reportJobWorkers:2}")
+    private int workers;
+
+    @Value("${reportJobsPerTenant:1}")
+    private int jobsPerTenant;
+
+    @Autowired
+    private SecurityService securityService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private WorkerContextService workerContextService;
+
+    private final Cache<String, ReportJob> jobs = CacheBuilder.newBuilder().maximumSize(L_MAXIMUM_SIZE)
+            .expireAfterWrite(L_EXPIRE_AFTER_HOURS, TimeUnit.HOURS).build();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final Map<Integer, Integer> runningJobsPerTenant = Maps.newHashMap();
+
+    private final Map<Integer, Queue<Task>> waitingJobsPerTenant = Maps.newHashMap();
+
+    private final Map<String, Durations> durations = Maps.newConcurrentMap();
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    void init() {
+        executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>(),
+                new ThreadFactoryBuilder().setNameFormat("report-job-%d").setDaemon(true).build());
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public ReportJob submit(final String name, final ReportJob.Priority priority, final Generator generator) {
+        return submit(name, priority, generator, exception -> {
+        });
+    }
+
+    /**
+     * Queue generation of report.
+     *
+     * @param name
+     *            name of report, used in logs and statistics
+     * @param priority
+     *            priority of job
+     * @param generator
+     *            generates and saves report, it's run in its own transaction, in tenant and with security context of the
+     *            current user
+     * @param failureHandler
+     *            called when generation fails, e.g. to let report be generated again
+     * @return queued job
+     */
+    public ReportJob submit(final String name, final ReportJob.Priority priority, final Generator generator,
+            final Consumer<Exception> failureHandler) {
+        String userName = securityService.getCurrentUserOrQcadooBotName();
+        int tenantId = MultiTenantUtil.getCurrentTenantId();
+
+        ReportJob job = new ReportJob(UUID.randomUUID().toString(), name, userName, priority);
+
+        jobs.put(job.getId(), job);
+
+        Task task = new Task(job, tenantId, sequence.incrementAndGet(),
+                workerContextService.wrap(() -> run(job, tenantId, generator, failureHandler)));
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void afterCompletion(final int status) {
+                    super.afterCompletion(status);
+                    if (TransactionSynchronization.STATUS_COMMITTED == status) {
+                        schedule(task);
+                    } else {
+                        job.fail("Transaction requesting report was rolled back");
+                    }
+                }
+            });
+        } else {
+            schedule(task);
+        }
+
+        return job;
+    }
+
+    private synchronized void schedule(final Task task) {
+        int runningJobs = runningJobsPerTenant.getOrDefault(task.tenantId, 0);
+
+        if (runningJobs < jobsPerTenant) {
+            runningJobsPerTenant.put(task.tenantId, runningJobs + 1);
+
+            executor.execute(task);
+        } else {
+            waitingJobsPerTenant.computeIfAbsent(task.tenantId, tenant -> new PriorityQueue<>()).add(task);
+        }
+    }
+
+    private synchronized void release(final int tenantId) {
+        Queue<Task> waitingJobs = waitingJobsPerTenant.get(tenantId);
+
+        if (waitingJobs != null && !waitingJobs.isEmpty()) {
+            executor.execute(waitingJobs.poll());
+
+            if (waitingJobs.isEmpty()) {
+                waitingJobsPerTenant.remove(tenantId);
+            }
+        } else {
+            int runningJobs = runningJobsPerTenant.getOrDefault(tenantId, 1) - 1;
+
+            if (runningJobs > 0) {
+                runningJobsPerTenant.put(tenantId, runningJobs);
+            } else {
+                runningJobsPerTenant.remove(tenantId);
+            }
+        }
+    }
+
+    private void run(final ReportJob job, final int tenantId, final Generator generator,
+            final Consumer<Exception> failureHandler) {
+        job.start();
+
+        try {
+            new TransactionTemplate(transactionManager).execute(status -> {
+                try {
+                    generator.generate();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e.getMessage(), e);
+                }
+
+                return null;
+            });
+
+            job.finish();
+        } catch (Exception e) {
+            LOG.warn("Can't generate report " + job.getName(), e);
+
+            job.fail(e.getMessage());
+
+            try {
+                failureHandler.accept(e);
+            } catch (Exception handlerException) {
+                LOG.warn("Can't handle failure of report " + job.getName(), handlerException);
+            }
+        } finally {
+            durations.computeIfAbsent(job.getName(), name -> new Durations()).add(job.getDuration());
+
+            LOG.info("Report {} took {}ms after {}ms in queue", job.getName(), job.getDuration(), job.getQueueTime());
+
+            release(tenantId);
+        }
+    }
+
+    public Optional<ReportJob> getJob(final String jobId) {
+        return Optional.ofNullable(jobs.getIfPresent(jobId));
+    }
+
+    /**
+     * Number of jobs waiting for a worker or for other jobs of their tenant.
+     */
+    public synchronized int getQueueDepth() {
+        return executor.getQueue().size() + waitingJobsPerTenant.values().stream().mapToInt(Queue::size).sum();
+    }
+
+    public int getRunningJobs() {
+        return executor.getActiveCount();
+    }
+
+    public Map<String, Durations> getDurations() {
+        return durations;
+    }
+
+    @FunctionalInterface
+    public interface Generator {
+
+        void generate() throws Exception;
+
+    }
+
+    public static class Durations {
+
+        private long count;
+
+        private long total;
+
+        private long max;
+
+        synchronized void add(final long duration) {
+            count++;
+            total += duration;
+            max = Math.max(max, duration);
+        }
+
+        public synchronized long getCount() {
+            return count;
+        }
+
+        public synchronized long getAverage() {
+            return count == 0L ? 0L : total / count;
+        }
+
+        public synchronized long getMax() {
+            return max;
+        }
+
+    }
+
+    private static class Task implements Runnable, Comparable<Task> {
+
+        private final ReportJob job;
+
+        private final int tenantId;
+
+        private final long sequence;
+
+        private final Runnable runnable;
+
+        private Task(final ReportJob job, final int tenantId, final long sequence, final Runnable runnable) {
+            this.job = job;
+            this.tenantId = tenantId;
+            this.sequence = sequence;
+            this.runnable = runnable;
+        }
+
+        @Override
+        public void run() {
+            runnable.run();
+        }
+
+        @Override
+        public int compareTo(final Task other) {
+            int result = job.getPriority().compareTo(other.job.getPriority());
+
+            if (result == 0) {
+                result = Long.compare(sequence, other.sequence);
+            }
+
+            return result;
+        }
+
+    }
+
+}
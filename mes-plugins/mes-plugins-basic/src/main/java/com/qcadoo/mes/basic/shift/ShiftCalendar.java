@@ -0,0 +1,106 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.shift;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.BiFunction;
+
+import org.joda.time.DateTime;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.basic.util.DateTimeRange;
+
+/**
+ * Shifts of a production line together with their work ranges per day, with timetable exceptions already applied.
+ *
+ * Unlike {@link WorkingTimeCalendar}, ranges are kept separately for each shift. Ranges of a shift and day are computed on
+ * first use and then shared, so calendar can be used by many threads at once, e.g. when plans of all orders of a production
+ * line are generated. Returned lists can't be modified.
+ */
+public final class ShiftCalendar {
+
+    private final List<Shift> shifts;
+
+    private final BiFunction<Shift, DateTime, List<DateTimeRange>> workDateTimesProvider;
+
+    private final Map<ShiftDay, List<DateTimeRange>> workDateTimes = Maps.newConcurrentMap();
+
+    public ShiftCalendar(final List<Shift> shifts, final BiFunction<Shift, DateTime, List<DateTimeRange>> workDateTimesProvider) {
+        this.shifts = ImmutableList.copyOf(shifts);
+        this.workDateTimesProvider = workDateTimesProvider;
+    }
+
+    public List<Shift> getShifts() {
+        return shifts;
+    }
+
+    public boolean isEmpty() {
+        return shifts.isEmpty();
+    }
+
+    /**
+     * Returns work ranges of given shift in given day.
+     */
+    public List<DateTimeRange> getShiftWorkDateTimes(final Shift shift, final DateTime dateOfDay) {
+        return workDateTimes.computeIfAbsent(new ShiftDay(shift.getId(), dateOfDay.getMillis()),
+                shiftDay -> Collections.unmodifiableList(workDateTimesProvider.apply(shift, dateOfDay)));
+    }
+
+    private static final class ShiftDay {
+
+        private final Long shiftId;
+
+        private final long day;
+
+        private ShiftDay(final Long shiftId, final long day) {
+            this.shiftId = shiftId;
+            this.day = day;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof ShiftDay)) {
+                return false;
+            }
+
+            ShiftDay that = (ShiftDay) other;
+
+            return day == that.day && Objects.equals(shiftId, that.shiftId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(shiftId, day);
+        }
+
+    }
+
+}
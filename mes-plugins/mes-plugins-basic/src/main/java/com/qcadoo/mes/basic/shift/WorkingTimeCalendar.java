@@ -0,0 +1,159 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.shift;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.OptionalLong;
+
+import com.google.common.base.Preconditions;
+import com.qcadoo.mes.basic.util.DateTimeRange;
+
+/**
+ * Working time of a production line in a bounded period, with timetable exceptions already applied.
+ *
+ * Work ranges are kept as sorted, disjoint {@code [start, end)} millisecond intervals together with prefix sums of their
+ * durations, so that both "working time between two dates" and "date after given working time" are answered with a binary
+ * search instead of walking shifts day by day.
+ */
+public final class WorkingTimeCalendar {
+
+    private final long validFrom;
+
+    private final long validTo;
+
+    private final long[] starts;
+
+    private final long[] ends;
+
+    private final long[] workedBefore;
+
+    private WorkingTimeCalendar(final long validFrom, final long validTo, final long[] starts, final long[] ends) {
+        this.validFrom = validFrom;
+        this.validTo = validTo;
+        this.starts = starts;
+        this.ends = ends;
+        this.workedBefore = new long[starts.length + 1];
+
+        for (int i = 0; i < starts.length; i++) {
+            workedBefore[i + 1] = workedBefore[i] + ends[i] - starts[i];
+        }
+    }
+
+    /**
+     * Creates calendar valid between given dates (in millis) from given work ranges. Ranges are trimmed to the validity
+     * period, and overlapping or adjacent ranges are merged.
+     */
+    public static WorkingTimeCalendar of(final long validFrom, final long validTo, final Collection<DateTimeRange> ranges) {
+        Preconditions.checkArgument(validFrom <= validTo, "Calendar validity period ends before it starts.");
+
+        long[][] intervals = ranges.stream()
+                .map(range -> new long[] { Math.max(range.getFrom().getMillis(), validFrom),
+                        Math.min(range.getTo().getMillis(), validTo) })
+                .filter(interval -> interval[0] < interval[1]).sorted((first, second) -> Long.compare(first[0], second[0]))
+                .toArray(long[][]::new);
+
+        long[] starts = new long[intervals.length];
+        long[] ends = new long[intervals.length];
+        int count = 0;
+
+        for (long[] interval : intervals) {
+            if (count > 0 && interval[0] <= ends[count - 1]) {
+                ends[count - 1] = Math.max(ends[count - 1], interval[1]);
+            } else {
+                starts[count] = interval[0];
+                ends[count] = interval[1];
+                count++;
+            }
+        }
+
+        return new WorkingTimeCalendar(validFrom, validTo, Arrays.copyOf(starts, count), Arrays.copyOf(ends, count));
+    }
+
+    public long getValidFrom() {
+        return validFrom;
+    }
+
+    public long getValidTo() {
+        return validTo;
+    }
+
+    public boolean covers(final long from, final long to) {
+        return validFrom <= from && to <= validTo;
+    }
+
+    /**
+     * Returns working time, in millis, between given dates. Both dates have to be covered by this calendar.
+     */
+    public long getWorkingMillisBetween(final long from, final long to) {
+        Preconditions.checkArgument(covers(Math.min(from, to), Math.max(from, to)), "Dates are not covered by calendar.");
+
+        if (to <= from) {
+            return 0L;
+        }
+
+        return getWorkedUntil(to) - getWorkedUntil(from);
+    }
+
+    /**
+     * Returns the date at which given working time, in millis, elapses when work starts at given date. If the working time
+     * doesn't fit before the end of this calendar, returns empty value.
+     */
+    public OptionalLong findDateAfterWorkingMillis(final long from, final long millis) {
+        Preconditions.checkArgument(covers(from, from), "Date is not covered by calendar.");
+
+        long target = getWorkedUntil(from) + millis;
+
+        if (millis <= 0L) {
+            return OptionalLong.of(from);
+        }
+
+        if (target > workedBefore[starts.length]) {
+            return OptionalLong.empty();
+        }
+
+        int index = Arrays.binarySearch(workedBefore, 1, workedBefore.length, target);
+
+        if (index < 0) {
+            index = -index - 1;
+        }
+
+        return OptionalLong.of(starts[index - 1] + target - workedBefore[index - 1]);
+    }
+
+    private long getWorkedUntil(final long date) {
+        int index = Arrays.binarySearch(starts, date);
+
+        if (index < 0) {
+            index = -index - 2;
+        }
+
+        if (index < 0) {
+            return 0L;
+        }
+
+        return workedBefore[index] + Math.min(ends[index], date) - starts[index];
+    }
+
+}
@@ -0,0 +1,95 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.util;
+
+import java.util.concurrent.Callable;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+
+import com.qcadoo.tenant.api.MultiTenantService;
+import com.qcadoo.tenant.api.MultiTenantUtil;
+
+/**
+ * Wraps tasks run on worker threads, so they run in tenant and with security context of the thread, which created them.
+ */
+@Service
+public class WorkerContextService {
+
+    @Autowired
+    private MultiTenantService multiTenantService;
+
+    public Runnable wrap(final Runnable task) {
+        Callable<Void> callable = wrap(() -> {
+            task.run();
+
+            return null;
+        });
+
+        return () -> {
+            try {
+                callable.call();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> Callable<T> wrap(final Callable<T> task) {
+        int tenantId = MultiTenantUtil.getCurrentTenantId();
+        SecurityContext securityContext = SecurityContextHolder.getContext();
+
+        return () -> {
+            SecurityContext previousSecurityContext = SecurityContextHolder.getContext();
+            Object[] result = new Object[1];
+            Exception[] exception = new Exception[1];
+
+            SecurityContextHolder.setContext(securityContext);
+
+            try {
+                multiTenantService.doInMultiTenantContext(tenantId, () -> {
+                    try {
+                        result[0] = task.call();
+                    } catch (Exception e) {
+                        exception[0] = e;
+                    }
+                });
+            } finally {
+                SecurityContextHolder.setContext(previousSecurityContext);
+            }
+
+            if (exception[0] != null) {
+                throw exception[0];
+            }
+
+            return (T) result[0];
+        };
+    }
+
+}
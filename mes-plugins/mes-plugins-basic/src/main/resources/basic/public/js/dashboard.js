@@ -12,6 +12,13 @@ QCD.dashboardContext.operationalTasksPending = {};
 QCD.dashboardContext.operationalTasksInProgress = {};
 QCD.dashboardContext.operationalTasksCompleted = {};
 
+QCD.dashboardContext.lists = [ "ordersPending", "ordersInProgress", "ordersCompleted",
+    "operationalTasksPending", "operationalTasksInProgress", "operationalTasksCompleted" ];
+
+QCD.dashboardContext.version = 0;
+
+QCD.dashboardContext.refreshInterval = 15000;
+
 QCD.dashboardContext.getItems = function getItems() {
     return QCD.dashboardContext.items;
 }
@@ -47,6 +54,7 @@ QCD.dashboard = (function () {
 		registerChart();
 		registerButtons();
 		registerKanban();
+		registerRefresh();
 	}
 
 	function registerChart() {
@@ -261,138 +269,92 @@ QCD.dashboard = (function () {
 
     function initOrders() {
         if ($('#dashboardKanban #ordersPending').length) {
-            getOrdersPending();
-            getOrdersInProgress();
-            getOrdersCompleted();
+            getChanges(false);
         }
     }
 
-    function getOrdersPending() {
-        $.ajax({
-            url : "/rest/dashboardKanban/ordersPending",
-            type : "GET",
-            async : false,
-            beforeSend : function() {
-                //$("#loader").modal('show');
-            },
-            success : function(data) {
-                QCD.dashboardContext.ordersPending = data;
-            },
-            error : function(data) {
-                console.log("error")
-            },
-            complete : function() {
-                //$("#loader").modal('hide');
-            }
-        });
+    function initOperationalTasks() {
+        if ($('#dashboardKanban #operationalTasksPending').length) {
+            getChanges(false);
+        }
     }
 
-    function getOrdersInProgress() {
-        $.ajax({
-            url : "/rest/dashboardKanban/ordersInProgress",
-            type : "GET",
-            async : false,
-            beforeSend : function() {
-                //$("#loader").modal('show');
-            },
-            success : function(data) {
-                QCD.dashboardContext.ordersInProgress = data;
-            },
-            error : function(data) {
-                console.log("error")
-            },
-            complete : function() {
-                //$("#loader").modal('hide');
-            }
-        });
+    function registerRefresh() {
+        if ($('#dashboardKanban').length) {
+            setInterval(function () {
+                getChanges(true, refreshKanban);
+            }, QCD.dashboardContext.refreshInterval);
+        }
     }
 
-    function getOrdersCompleted() {
+    function getChanges(async, onChange) {
         $.ajax({
-            url : "/rest/dashboardKanban/ordersCompleted",
+            url : "/rest/dashboardKanban/changes",
             type : "GET",
-            async : false,
-            beforeSend : function() {
-                //$("#loader").modal('show');
+            data : {
+                since : QCD.dashboardContext.version
             },
+            async : async,
             success : function(data) {
-                QCD.dashboardContext.ordersCompleted = data;
+                let changedLists = [];
+
+                QCD.dashboardContext.version = data.version;
+
+                // lists which didn't change since known version are null
+                $.each(QCD.dashboardContext.lists, function (index, listName) {
+                    if (data[listName]) {
+                        QCD.dashboardContext[listName] = data[listName];
+
+                        changedLists.push(listName);
+                    }
+                });
+
+                if (onChange && changedLists.length) {
+                    onChange(changedLists);
+                }
             },
             error : function(data) {
                 console.log("error")
-            },
-            complete : function() {
-                //$("#loader").modal('hide');
             }
         });
     }
 
-    function initOperationalTasks() {
-        if ($('#dashboardKanban #operationalTasksPending').length) {
-            getOperationalTasksPending();
-            getOperationalTasksInProgress();
-            getOperationalTasksCompleted();
-        }
-    }
+    function refreshKanban(changedLists) {
+        $.each(changedLists, function (index, listName) {
+            let list = $('#dashboardKanban #' + listName);
 
-    function getOperationalTasksPending() {
-        $.ajax({
-            url : "/rest/dashboardKanban/operationalTasksPending",
-            type : "GET",
-            async : false,
-            beforeSend : function() {
-                //$("#loader").modal('show');
-            },
-            success : function(data) {
-                QCD.dashboardContext.operationalTasksPending = data;
-            },
-            error : function(data) {
-                console.log("error")
-            },
-            complete : function() {
-                //$("#loader").modal('hide');
+            if (list.length) {
+                list.empty();
+
+                $.each(QCD.dashboardContext[listName], function (index, item) {
+                    list.append(listName.startsWith('orders') ? createOrderDiv(item) : createOperationalTaskDiv(listName, item));
+                });
             }
         });
-    }
 
-    function getOperationalTasksInProgress() {
-        $.ajax({
-            url : "/rest/dashboardKanban/operationalTasksInProgress",
-            type : "GET",
-            async : false,
-            beforeSend : function() {
-                //$("#loader").modal('show');
-            },
-            success : function(data) {
-                QCD.dashboardContext.operationalTasksInProgress = data;
-            },
-            error : function(data) {
-                console.log("error")
-            },
-            complete : function() {
-                //$("#loader").modal('hide');
+        QCD.dashboardContext.items = [];
+
+        $.each(QCD.dashboardContext.lists, function (index, listName) {
+            if ($('#dashboardKanban #' + listName).length) {
+                $.each(QCD.dashboardContext[listName], function (index, item) {
+                    addItem(item);
+                });
             }
         });
-    }
 
-    function getOperationalTasksCompleted() {
-        $.ajax({
-            url : "/rest/dashboardKanban/operationalTasksCompleted",
-            type : "GET",
-            async : false,
-            beforeSend : function() {
-                //$("#loader").modal('show');
-            },
-            success : function(data) {
-                QCD.dashboardContext.operationalTasksCompleted = data;
-            },
-            error : function(data) {
-                console.log("error")
-            },
-            complete : function() {
-                //$("#loader").modal('hide');
+        if ($("#dashboardKanban #ordersPending").length) {
+            updateDropzones();
+        }
+
+        $("#dashboardKanban .items .card").hover(
+            function() {
+                $(this).addClass('shadow-sm');
+            }, function() {
+                $(this).removeClass('shadow-sm');
             }
-        });
+        );
+
+        filterKanbanReload();
     }
 
     function filterKanbanReload() {
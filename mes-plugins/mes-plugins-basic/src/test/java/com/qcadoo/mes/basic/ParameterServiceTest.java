@@ -27,14 +27,20 @@ import static com.qcadoo.mes.basic.constants.BasicConstants.MODEL_PARAMETER;
 import static org.junit.Assert.assertEquals;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
 import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import com.qcadoo.mes.basic.constants.BasicConstants;
 import com.qcadoo.model.api.DataDefinition;
@@ -43,9 +49,16 @@ import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.search.SearchCriteriaBuilder;
 import com.qcadoo.model.api.search.SearchCriterion;
 import com.qcadoo.model.api.search.SearchQueryBuilder;
+import com.qcadoo.tenant.api.MultiTenantUtil;
 
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(MultiTenantUtil.class)
 public class ParameterServiceTest {
 
+    private static final int L_TENANT_ID = 1;
+
+    private static final int L_OTHER_TENANT_ID = 2;
+
     private ParameterService parameterService;
 
     @Mock
@@ -57,11 +70,20 @@ public class ParameterServiceTest {
     @Mock
     private SearchQueryBuilder searchQueryBuilder;
 
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
     @Before
     public final void init() {
         MockitoAnnotations.initMocks(this);
         parameterService = new ParameterService();
         ReflectionTestUtils.setField(parameterService, "dataDefinitionService", dataDefinitionService);
+        ReflectionTestUtils.setField(parameterService, "transactionManager", transactionManager);
+        ReflectionTestUtils.setField(parameterService, "expireSeconds", 60L);
+
+        PowerMockito.mockStatic(MultiTenantUtil.class);
+
+        given(MultiTenantUtil.getCurrentTenantId()).willReturn(L_TENANT_ID);
 
         given(dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, MODEL_PARAMETER)).willReturn(parameterDD);
         given(parameterDD.find(Mockito.anyString())).willReturn(searchQueryBuilder);
@@ -74,6 +96,7 @@ public class ParameterServiceTest {
         // given
         Entity parameter = Mockito.mock(Entity.class);
         given(parameter.getId()).willReturn(13L);
+        given(parameter.copy()).willReturn(parameter);
         given(searchQueryBuilder.uniqueResult()).willReturn(parameter);
 
         // when
@@ -88,6 +111,7 @@ public class ParameterServiceTest {
         // given
         Entity parameter = Mockito.mock(Entity.class);
         given(parameter.getId()).willReturn(13L);
+        given(parameter.copy()).willReturn(parameter);
         given(searchQueryBuilder.uniqueResult()).willReturn(parameter);
         given(parameter.isValid()).willReturn(true);
 
@@ -108,6 +132,7 @@ public class ParameterServiceTest {
         Entity savedParameter = mock(Entity.class);
         given(savedParameter.isValid()).willReturn(true);
         given(savedParameter.getId()).willReturn(15L);
+        given(savedParameter.copy()).willReturn(savedParameter);
 
         given(parameterDD.save(parameter)).willReturn(savedParameter);
 
@@ -135,4 +160,57 @@ public class ParameterServiceTest {
         parameterService.getParameter();
     }
 
+    @Test
+    public void shouldReadParameterOnceUntilItIsInvalidated() throws Exception {
+        // given
+        Entity parameter = Mockito.mock(Entity.class);
+        given(parameter.getId()).willReturn(13L);
+        given(parameter.copy()).willReturn(parameter);
+        given(searchQueryBuilder.uniqueResult()).willReturn(parameter);
+
+        // when
+        parameterService.getParameter();
+        parameterService.getParameter();
+        parameterService.invalidateParameter();
+        parameterService.getParameter();
+
+        // then
+        verify(searchQueryBuilder, times(2)).uniqueResult();
+        assertEquals(1L, parameterService.getParameterSnapshotStatistics().get("hits"));
+        assertEquals(2L, parameterService.getParameterSnapshotStatistics().get("misses"));
+    }
+
+    @Test
+    public void shouldKeepParameterPerTenant() throws Exception {
+        // given
+        Entity parameter = Mockito.mock(Entity.class);
+        given(parameter.getId()).willReturn(13L);
+        given(parameter.copy()).willReturn(parameter);
+
+        Entity otherParameter = Mockito.mock(Entity.class);
+        given(otherParameter.getId()).willReturn(14L);
+        given(otherParameter.copy()).willReturn(otherParameter);
+
+        given(searchQueryBuilder.uniqueResult()).willReturn(parameter, otherParameter);
+
+        // when
+        Long id = parameterService.getParameterId();
+
+        given(MultiTenantUtil.getCurrentTenantId()).willReturn(L_OTHER_TENANT_ID);
+
+        Long otherId = parameterService.getParameterId();
+
+        parameterService.invalidateParameter();
+
+        given(MultiTenantUtil.getCurrentTenantId()).willReturn(L_TENANT_ID);
+
+        Long idAfterInvalidation = parameterService.getParameterId();
+
+        // then
+        assertEquals(Long.valueOf(13L), id);
+        assertEquals(Long.valueOf(14L), otherId);
+        assertEquals(Long.valueOf(13L), idAfterInvalidation);
+        verify(searchQueryBuilder, times(2)).uniqueResult();
+    }
+
 }
@@ -0,0 +1,146 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic;
+
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.Collections;
+import java.util.Date;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.tenant.api.MultiTenantUtil;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(MultiTenantUtil.class)
+public class WorkingTimeCalendarServiceTest {
+
+    private static final int L_TENANT_ID = 1;
+
+    private static final int L_OTHER_TENANT_ID = 2;
+
+    private WorkingTimeCalendarService workingTimeCalendarService;
+
+    @Mock
+    private ShiftsService shiftsService;
+
+    @Mock
+    private ShiftExceptionService shiftExceptionService;
+
+    @Mock
+    private TimetableExceptionService timetableExceptionService;
+
+    private final Date dateFrom = new Date();
+
+    private final Date dateTo = new Date(dateFrom.getTime() + 3600000L);
+
+    @Before
+    public final void init() {
+        MockitoAnnotations.initMocks(this);
+
+        workingTimeCalendarService = new WorkingTimeCalendarService();
+
+        ReflectionTestUtils.setField(workingTimeCalendarService, "shiftsService", shiftsService);
+        ReflectionTestUtils.setField(workingTimeCalendarService, "shiftExceptionService", shiftExceptionService);
+        ReflectionTestUtils.setField(workingTimeCalendarService, "timetableExceptionService", timetableExceptionService);
+
+        PowerMockito.mockStatic(MultiTenantUtil.class);
+
+        given(MultiTenantUtil.getCurrentTenantId()).willReturn(L_TENANT_ID);
+        given(shiftsService.findAll((Entity) null)).willReturn(Collections.emptyList());
+    }
+
+    @After
+    public final void clear() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    public final void shouldKeepCalendarUntilInvalidated() {
+        // when
+        workingTimeCalendarService.getCalendar(null, dateFrom, dateTo);
+        workingTimeCalendarService.getCalendar(null, dateFrom, dateTo);
+        workingTimeCalendarService.invalidateAll();
+        workingTimeCalendarService.getCalendar(null, dateFrom, dateTo);
+
+        // then
+        verify(shiftsService, times(2)).findAll((Entity) null);
+    }
+
+    @Test
+    public final void shouldInvalidateCalendarBuiltBeforeCommitWhenTransactionIsCompleted() {
+        // given
+        TransactionSynchronizationManager.initSynchronization();
+
+        // when
+        workingTimeCalendarService.invalidateAll();
+        workingTimeCalendarService.getCalendar(null, dateFrom, dateTo);
+
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+        }
+
+        TransactionSynchronizationManager.clearSynchronization();
+
+        workingTimeCalendarService.getCalendar(null, dateFrom, dateTo);
+
+        // then
+        verify(shiftsService, times(2)).findAll((Entity) null);
+    }
+
+    @Test
+    public final void shouldKeepCalendarsPerTenant() {
+        // when
+        workingTimeCalendarService.getCalendar(null, dateFrom, dateTo);
+
+        given(MultiTenantUtil.getCurrentTenantId()).willReturn(L_OTHER_TENANT_ID);
+
+        workingTimeCalendarService.getCalendar(null, dateFrom, dateTo);
+        workingTimeCalendarService.invalidateAll();
+
+        given(MultiTenantUtil.getCurrentTenantId()).willReturn(L_TENANT_ID);
+
+        workingTimeCalendarService.getCalendar(null, dateFrom, dateTo);
+
+        // then
+        verify(shiftsService, times(2)).findAll((Entity) null);
+    }
+
+}
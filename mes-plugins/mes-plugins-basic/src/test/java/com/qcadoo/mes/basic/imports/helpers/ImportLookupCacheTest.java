@@ -0,0 +1,146 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.imports.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchCriterion;
+import com.qcadoo.model.api.search.SearchResult;
+
+public class ImportLookupCacheTest {
+
+    private static final String L_NUMBER = "number";
+
+    @Mock
+    private DataDefinition productDD;
+
+    @Mock
+    private SearchCriteriaBuilder searchCriteriaBuilder;
+
+    @Mock
+    private SearchResult searchResult;
+
+    private Entity product;
+
+    @Before
+    public final void init() {
+        MockitoAnnotations.initMocks(this);
+
+        product = mock(Entity.class);
+
+        given(product.getStringField(L_NUMBER)).willReturn("P1");
+
+        given(productDD.getPluginIdentifier()).willReturn("basic");
+        given(productDD.getName()).willReturn("product");
+        given(productDD.find()).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.add(Matchers.any(SearchCriterion.class))).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.list()).willReturn(searchResult);
+        given(searchResult.getEntities()).willReturn(Lists.newArrayList(product));
+    }
+
+    @Test
+    public final void shouldReturnPrefetchedEntityWithoutLoadingIt() {
+        // given
+        ImportLookupCache lookupCache = new ImportLookupCache();
+        AtomicInteger loads = new AtomicInteger();
+
+        // when
+        lookupCache.prefetch(productDD, L_NUMBER, Lists.newArrayList("P1"));
+
+        Entity result = lookupCache.get(productDD, L_NUMBER, "P1", () -> {
+            loads.incrementAndGet();
+
+            return null;
+        });
+
+        // then
+        assertEquals(product, result);
+        assertEquals(0, loads.get());
+    }
+
+    @Test
+    public final void shouldNotFetchAgainValuesPrefetchedForEarlierChunk() {
+        // given
+        ImportLookupCache lookupCache = new ImportLookupCache();
+
+        // when
+        lookupCache.prefetch(productDD, L_NUMBER, Lists.newArrayList("P1"));
+        lookupCache.prefetch(productDD, L_NUMBER, Lists.newArrayList("P1"));
+
+        // then
+        verify(productDD, times(1)).find();
+    }
+
+    @Test
+    public final void shouldFallBackToLoaderForValueNotFoundInPrefetch() {
+        // given
+        ImportLookupCache lookupCache = new ImportLookupCache();
+
+        lookupCache.prefetch(productDD, L_NUMBER, Lists.newArrayList("P1", "P2"));
+
+        // when
+        Entity result = lookupCache.get(productDD, L_NUMBER, "P2", () -> null);
+
+        // then
+        assertNull(result);
+    }
+
+    @Test
+    public final void shouldNotShareEntitiesBetweenImports() {
+        // given
+        ImportLookupCache firstImportLookupCache = new ImportLookupCache();
+        ImportLookupCache secondImportLookupCache = new ImportLookupCache();
+        AtomicInteger loads = new AtomicInteger();
+
+        firstImportLookupCache.prefetch(productDD, L_NUMBER, Lists.newArrayList("P1"));
+
+        // when
+        secondImportLookupCache.get(productDD, L_NUMBER, "P1", () -> {
+            loads.incrementAndGet();
+
+            return product;
+        });
+
+        // then
+        assertEquals(1, loads.get());
+    }
+
+}
@@ -0,0 +1,93 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.imports.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.imports.dtos.ImportRow;
+
+public class ImportRowsChunkerTest {
+
+    @Test
+    public final void shouldPassRowsInChunksOfGivenSize() {
+        // given
+        List<Integer> chunkSizes = Lists.newArrayList();
+
+        ImportRowsChunker importRowsChunker = new ImportRowsChunker(2, rows -> chunkSizes.add(rows.size()));
+
+        // when
+        for (int rowIndex = 0; rowIndex < 5; rowIndex++) {
+            importRowsChunker.test(new ImportRow(rowIndex, new String[] { "value" }));
+        }
+
+        importRowsChunker.flush();
+
+        // then
+        assertEquals(Lists.newArrayList(2, 2, 1), chunkSizes);
+    }
+
+    @Test
+    public final void shouldStopWhenChunkProcessorAsksToStop() {
+        // given
+        List<Integer> chunkSizes = Lists.newArrayList();
+
+        ImportRowsChunker importRowsChunker = new ImportRowsChunker(2, rows -> {
+            chunkSizes.add(rows.size());
+
+            return false;
+        });
+
+        // when
+        boolean shouldContinueAfterFirstRow = importRowsChunker.test(new ImportRow(0, new String[] { "value" }));
+        boolean shouldContinueAfterSecondRow = importRowsChunker.test(new ImportRow(1, new String[] { "value" }));
+
+        // then
+        assertTrue(shouldContinueAfterFirstRow);
+        assertFalse(shouldContinueAfterSecondRow);
+        assertEquals(Lists.newArrayList(2), chunkSizes);
+    }
+
+    @Test
+    public final void shouldNotCallChunkProcessorForEmptyChunk() {
+        // given
+        List<Integer> chunkSizes = Lists.newArrayList();
+
+        ImportRowsChunker importRowsChunker = new ImportRowsChunker(2, rows -> chunkSizes.add(rows.size()));
+
+        // when
+        boolean shouldContinue = importRowsChunker.flush();
+
+        // then
+        assertTrue(shouldContinue);
+        assertTrue(chunkSizes.isEmpty());
+    }
+
+}
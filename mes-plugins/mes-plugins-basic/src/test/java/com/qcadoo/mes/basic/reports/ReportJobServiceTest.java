@@ -0,0 +1,291 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.reports;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.util.WorkerContextService;
+import com.qcadoo.security.api.SecurityService;
+import com.qcadoo.tenant.api.MultiTenantUtil;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(MultiTenantUtil.class)
+public class ReportJobServiceTest {
+
+    private static final String L_USER_NAME = "user";
+
+    private static final int L_TENANT_ID = 1;
+
+    private static final int L_OTHER_TENANT_ID = 2;
+
+    private static final long L_TIMEOUT_IN_SECONDS = 5L;
+
+    private ReportJobService reportJobService;
+
+    @Mock
+    private SecurityService securityService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private TransactionStatus transactionStatus;
+
+    @Mock
+    private WorkerContextService workerContextService;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        reportJobService = new ReportJobService();
+
+        ReflectionTestUtils.setField(reportJobService, "workers", 2);
+        ReflectionTestUtils.setField(reportJobService, "jobsPerTenant", 1);
+        ReflectionTestUtils.setField(reportJobService, "securityService", securityService);
+        ReflectionTestUtils.setField(reportJobService, "transactionManager", transactionManager);
+        ReflectionTestUtils.setField(reportJobService, "workerContextService", workerContextService);
+
+        PowerMockito.mockStatic(MultiTenantUtil.class);
+
+        given(MultiTenantUtil.getCurrentTenantId()).willReturn(L_TENANT_ID);
+        given(securityService.getCurrentUserOrQcadooBotName()).willReturn(L_USER_NAME);
+        given(transactionManager.getTransaction(any(TransactionDefinition.class))).willReturn(transactionStatus);
+        given(workerContextService.wrap(any(Runnable.class))).willAnswer(invocation -> invocation.getArguments()[0]);
+
+        reportJobService.init();
+    }
+
+    @After
+    public void shutdown() {
+        reportJobService.shutdown();
+    }
+
+    @Test
+    public void shouldGenerateReportInTransactionAndInContextOfCaller() throws InterruptedException {
+        // given
+        CountDownLatch generated = new CountDownLatch(1);
+
+        // when
+        ReportJob job = reportJobService.submit("report", ReportJob.Priority.NORMAL, generated::countDown);
+
+        // then
+        assertTrue(generated.await(L_TIMEOUT_IN_SECONDS, TimeUnit.SECONDS));
+        awaitDone(job);
+
+        assertEquals(ReportJob.Status.FINISHED, job.getStatus());
+        assertEquals(job, reportJobService.getJob(job.getId()).get());
+
+        verify(workerContextService).wrap(any(Runnable.class));
+        verify(transactionManager).commit(transactionStatus);
+    }
+
+    @Test
+    public void shouldFailJobAndHandleFailureWhenGenerationFails() throws InterruptedException {
+        // given
+        CountDownLatch handled = new CountDownLatch(1);
+        Exception[] handledException = new Exception[1];
+        Consumer<Exception> failureHandler = exception -> {
+            handledException[0] = exception;
+            handled.countDown();
+        };
+
+        // when
+        ReportJob job = reportJobService.submit("report", ReportJob.Priority.NORMAL, () -> {
+            throw new IllegalArgumentException("broken report");
+        }, failureHandler);
+
+        // then
+        assertTrue(handled.await(L_TIMEOUT_IN_SECONDS, TimeUnit.SECONDS));
+        awaitDone(job);
+
+        assertEquals(ReportJob.Status.FAILED, job.getStatus());
+        assertEquals("broken report", job.getErrorMessage());
+        assertTrue(handledException[0].getCause() instanceof IllegalArgumentException);
+
+        verify(transactionManager).rollback(transactionStatus);
+    }
+
+    @Test
+    public void shouldQueueJobsOfTenantOverLimitAndRunThemInOrderOfPriority() throws InterruptedException {
+        // given
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> generatedReports = Collections.synchronizedList(Lists.newArrayList());
+
+        ReportJob blockingJob = reportJobService.submit("blocking", ReportJob.Priority.NORMAL, () -> {
+            running.countDown();
+            release.await(L_TIMEOUT_IN_SECONDS, TimeUnit.SECONDS);
+        });
+
+        assertTrue(running.await(L_TIMEOUT_IN_SECONDS, TimeUnit.SECONDS));
+
+        // when
+        ReportJob lowJob = reportJobService.submit("low", ReportJob.Priority.LOW, () -> generatedReports.add("low"));
+        ReportJob highJob = reportJobService.submit("high", ReportJob.Priority.HIGH, () -> generatedReports.add("high"));
+
+        // then
+        assertEquals(2, reportJobService.getQueueDepth());
+        assertEquals(ReportJob.Status.QUEUED, lowJob.getStatus());
+        assertEquals(ReportJob.Status.QUEUED, highJob.getStatus());
+
+        release.countDown();
+
+        awaitDone(blockingJob);
+        awaitDone(lowJob);
+        awaitDone(highJob);
+
+        assertEquals(Lists.newArrayList("high", "low"), generatedReports);
+        assertEquals(0, reportJobService.getQueueDepth());
+    }
+
+    @Test
+    public void shouldRunJobOfOtherTenantWhileTenantIsOverLimit() throws InterruptedException {
+        // given
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch generated = new CountDownLatch(1);
+
+        ReportJob blockingJob = reportJobService.submit("blocking", ReportJob.Priority.NORMAL, () -> {
+            running.countDown();
+            release.await(L_TIMEOUT_IN_SECONDS, TimeUnit.SECONDS);
+        });
+
+        assertTrue(running.await(L_TIMEOUT_IN_SECONDS, TimeUnit.SECONDS));
+
+        ReportJob waitingJob = reportJobService.submit("waiting", ReportJob.Priority.NORMAL, () -> {
+        });
+
+        given(MultiTenantUtil.getCurrentTenantId()).willReturn(L_OTHER_TENANT_ID);
+
+        // when
+        ReportJob otherTenantJob = reportJobService.submit("other", ReportJob.Priority.NORMAL, generated::countDown);
+
+        // then
+        assertTrue(generated.await(L_TIMEOUT_IN_SECONDS, TimeUnit.SECONDS));
+        awaitDone(otherTenantJob);
+
+        assertEquals(ReportJob.Status.QUEUED, waitingJob.getStatus());
+
+        release.countDown();
+
+        awaitDone(blockingJob);
+        awaitDone(waitingJob);
+    }
+
+    @Test
+    public void shouldScheduleJobOnlyAfterRequestingTransactionIsCommitted() throws InterruptedException {
+        // given
+        CountDownLatch generated = new CountDownLatch(1);
+
+        TransactionSynchronizationManager.initSynchronization();
+
+        try {
+            // when
+            ReportJob job = reportJobService.submit("report", ReportJob.Priority.NORMAL, generated::countDown);
+
+            // then
+            assertEquals(1, generated.getCount());
+            assertEquals(ReportJob.Status.QUEUED, job.getStatus());
+
+            completeTransaction(TransactionSynchronization.STATUS_COMMITTED);
+
+            assertTrue(generated.await(L_TIMEOUT_IN_SECONDS, TimeUnit.SECONDS));
+            awaitDone(job);
+
+            assertEquals(ReportJob.Status.FINISHED, job.getStatus());
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    public void shouldFailJobWhenRequestingTransactionIsRolledBack() {
+        // given
+        ReportJobService.Generator generator = mock(ReportJobService.Generator.class);
+
+        TransactionSynchronizationManager.initSynchronization();
+
+        try {
+            // when
+            ReportJob job = reportJobService.submit("report", ReportJob.Priority.NORMAL, generator);
+
+            completeTransaction(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+            // then
+            assertEquals(ReportJob.Status.FAILED, job.getStatus());
+            assertEquals(0, reportJobService.getQueueDepth());
+
+            verifyZeroInteractions(generator);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private void completeTransaction(final int status) {
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCompletion(status);
+        }
+    }
+
+    private void awaitDone(final ReportJob job) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(L_TIMEOUT_IN_SECONDS);
+
+        while (!job.isDone() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+
+        assertTrue(job.isDone());
+    }
+
+}
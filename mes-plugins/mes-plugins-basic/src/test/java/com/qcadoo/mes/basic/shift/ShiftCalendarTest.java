@@ -0,0 +1,82 @@
+package com.qcadoo.mes.basic.shift;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.util.DateTimeRange;
+
+public class ShiftCalendarTest {
+
+    private static final DateTime DAY = new DateTime(2024, 3, 4, 0, 0);
+
+    private Shift firstShift;
+
+    private Shift secondShift;
+
+    private AtomicInteger calls;
+
+    private ShiftCalendar calendar;
+
+    @Before
+    public void init() {
+        firstShift = mockShift(1L);
+        secondShift = mockShift(2L);
+        calls = new AtomicInteger();
+
+        calendar = new ShiftCalendar(Lists.newArrayList(firstShift, secondShift), (shift, dateOfDay) -> {
+            calls.incrementAndGet();
+
+            return Lists.newArrayList(new DateTimeRange(dateOfDay.withHourOfDay(shift.getId().intValue()),
+                    dateOfDay.withHourOfDay(shift.getId().intValue() + 8)));
+        });
+    }
+
+    @Test
+    public void shouldComputeWorkDateTimesOnceForShiftAndDay() {
+        // when
+        List<DateTimeRange> first = calendar.getShiftWorkDateTimes(firstShift, DAY);
+        List<DateTimeRange> again = calendar.getShiftWorkDateTimes(firstShift, new DateTime(DAY.getMillis()));
+
+        // then
+        assertSame(first, again);
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void shouldKeepWorkDateTimesOfShiftsAndDaysSeparately() {
+        // when
+        List<DateTimeRange> first = calendar.getShiftWorkDateTimes(firstShift, DAY);
+        List<DateTimeRange> second = calendar.getShiftWorkDateTimes(secondShift, DAY);
+        List<DateTimeRange> nextDay = calendar.getShiftWorkDateTimes(firstShift, DAY.plusDays(1));
+
+        // then
+        assertEquals(DAY.withHourOfDay(1), first.get(0).getFrom());
+        assertEquals(DAY.withHourOfDay(2), second.get(0).getFrom());
+        assertEquals(DAY.plusDays(1).withHourOfDay(1), nextDay.get(0).getFrom());
+        assertEquals(3, calls.get());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void shouldNotAllowToChangeWorkDateTimes() {
+        // when
+        calendar.getShiftWorkDateTimes(firstShift, DAY).clear();
+    }
+
+    private Shift mockShift(final Long id) {
+        Shift shift = mock(Shift.class);
+        given(shift.getId()).willReturn(id);
+
+        return shift;
+    }
+
+}
@@ -0,0 +1,106 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.shift;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.OptionalLong;
+
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.util.DateTimeRange;
+
+public class WorkingTimeCalendarTest {
+
+    private static final DateTime DAY = new DateTime(2024, 3, 4, 0, 0);
+
+    private WorkingTimeCalendar calendar;
+
+    @Before
+    public void init() {
+        calendar = WorkingTimeCalendar.of(DAY.getMillis(), DAY.plusDays(2).getMillis(),
+                Lists.newArrayList(range(DAY.plusDays(1).withHourOfDay(6), DAY.plusDays(1).withHourOfDay(14)),
+                        range(DAY.withHourOfDay(6), DAY.withHourOfDay(14)), range(DAY.withHourOfDay(12), DAY.withHourOfDay(16)),
+                        range(DAY.minusDays(1).withHourOfDay(22), DAY.withHourOfDay(2))));
+    }
+
+    @Test
+    public void shouldSumWorkingTimeOfMergedAndTrimmedRanges() {
+        // when
+        long workingMillis = calendar.getWorkingMillisBetween(DAY.getMillis(), DAY.plusDays(2).getMillis());
+
+        // then
+        assertEquals(hours(2 + 10 + 8), workingMillis);
+    }
+
+    @Test
+    public void shouldReturnWorkingTimeBetweenDatesInsideRanges() {
+        // when
+        long workingMillis = calendar.getWorkingMillisBetween(DAY.withHourOfDay(1).getMillis(),
+                DAY.plusDays(1).withHourOfDay(7).getMillis());
+
+        // then
+        assertEquals(hours(1 + 10 + 1), workingMillis);
+    }
+
+    @Test
+    public void shouldFindDateAfterWorkingTimeSkippingGaps() {
+        // when
+        OptionalLong dateTo = calendar.findDateAfterWorkingMillis(DAY.withHourOfDay(15).getMillis(), hours(3));
+
+        // then
+        assertEquals(DAY.plusDays(1).withHourOfDay(8).getMillis(), dateTo.getAsLong());
+    }
+
+    @Test
+    public void shouldFindEndOfRangeWhenWorkingTimeFillsIt() {
+        // when
+        OptionalLong dateTo = calendar.findDateAfterWorkingMillis(DAY.withHourOfDay(3).getMillis(), hours(10));
+
+        // then
+        assertEquals(DAY.withHourOfDay(16).getMillis(), dateTo.getAsLong());
+    }
+
+    @Test
+    public void shouldReturnEmptyWhenWorkingTimeExceedsCalendar() {
+        // when
+        OptionalLong dateTo = calendar.findDateAfterWorkingMillis(DAY.withHourOfDay(15).getMillis(), hours(10));
+
+        // then
+        assertFalse(dateTo.isPresent());
+    }
+
+    private DateTimeRange range(final DateTime from, final DateTime to) {
+        return new DateTimeRange(from, to);
+    }
+
+    private long hours(final long hours) {
+        return hours * 60 * 60 * 1000;
+    }
+
+}
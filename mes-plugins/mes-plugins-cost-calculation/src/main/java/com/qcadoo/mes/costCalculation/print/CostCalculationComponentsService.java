@@ -19,6 +19,7 @@ import com.qcadoo.mes.costCalculation.constants.CostCalculationFields;
 import com.qcadoo.mes.costCalculation.constants.SourceOfOperationCosts;
 import com.qcadoo.mes.costCalculation.print.dto.ComponentCostKey;
 import com.qcadoo.mes.costCalculation.print.dto.ComponentsCalculationHolder;
+import com.qcadoo.mes.costCalculation.print.dto.CostCalculationPrices;
 import com.qcadoo.mes.costNormsForOperation.constants.CalculationOperationComponentFields;
 import com.qcadoo.mes.technologies.ProductQuantitiesWithComponentsService;
 import com.qcadoo.mes.technologies.dto.OperationProductComponentHolder;
@@ -44,19 +45,20 @@ public class CostCalculationComponentsService {
     private DataDefinitionService dataDefinitionService;
 
     private void addMaterialCost(final Entity costCalculation, final List<ComponentsCalculationHolder> allOperationComponents,
-                                 final Entity technology, final BigDecimal quantity) {
+                                 final Entity technology, final BigDecimal quantity, final CostCalculationPrices prices) {
         MathContext mathContext = numberService.getMathContext();
-        Map<OperationProductComponentHolder, BigDecimal> materialQuantitiesByOPC = productQuantitiesWithComponentsService
-                .getNeededProductQuantitiesByOPC(technology, quantity, MrpAlgorithm.ONLY_MATERIALS);
+        Map<OperationProductComponentHolder, BigDecimal> materialQuantitiesByOPC = prices.getNeededProductQuantities(technology,
+                MrpAlgorithm.ONLY_MATERIALS, true, () -> productQuantitiesWithComponentsService
+                        .getNeededProductQuantitiesByOPC(technology, quantity, MrpAlgorithm.ONLY_MATERIALS));
         DataDefinition operationProductComponentDD = dataDefinitionService.get(TechnologiesConstants.PLUGIN_IDENTIFIER,
                 TechnologiesConstants.MODEL_OPERATION_PRODUCT_IN_COMPONENT);
-        Entity offer = costCalculation.getBelongsToField(CostCalculationFields.OFFER);
         for (Map.Entry<OperationProductComponentHolder, BigDecimal> neededProductQuantity : materialQuantitiesByOPC.entrySet()) {
             Entity product = neededProductQuantity.getKey().getProduct();
-            Entity operationProductComponent = operationProductComponentDD.get(neededProductQuantity.getKey()
-                    .getOperationProductComponentId());
+            Long operationProductComponentId = neededProductQuantity.getKey().getOperationProductComponentId();
+            Entity operationProductComponent = prices.getOperationProductComponent(operationProductComponentId,
+                    () -> operationProductComponentDD.get(operationProductComponentId));
             BigDecimal costPerUnit = productsCostCalculationService.calculateOperationProductCostPerUnit(costCalculation,
-                    product, operationProductComponent);
+                    product, operationProductComponent, prices);
 
             BigDecimal productQuantity = neededProductQuantity.getValue();
             BigDecimal costForGivenQuantity = costPerUnit.multiply(BigDecimalUtils.convertNullToZero(productQuantity),
@@ -70,10 +72,8 @@ public class CostCalculationComponentsService {
                 for (Entity pbs : productsBySize) {
                     Entity p = pbs.getBelongsToField(ProductBySizeGroupFields.PRODUCT);
 
-                    BigDecimal costPerUnitPBS = productsCostCalculationService.calculateProductCostPerUnit(p,
-                            costCalculation.getStringField(CostCalculationFields.MATERIAL_COSTS_USED),
-                            costCalculation.getBooleanField(CostCalculationFields.USE_NOMINAL_COST_PRICE_NOT_SPECIFIED),
-                            offer);
+                    BigDecimal costPerUnitPBS = productsCostCalculationService.calculateProductCostPerUnit(costCalculation, p,
+                            prices);
                     BigDecimal q = costCalculation.getDecimalField(CostCalculationFields.QUANTITY).multiply(
                             pbs.getDecimalField(ProductBySizeGroupFields.QUANTITY), numberService.getMathContext());
 
@@ -127,6 +127,12 @@ public class CostCalculationComponentsService {
 
     public Collection<ComponentsCalculationHolder> getComponentCosts(final Entity costCalculation, final Entity technology,
                                                                      List<Entity> calculationOperationComponents) {
+        return getComponentCosts(costCalculation, technology, calculationOperationComponents, new CostCalculationPrices());
+    }
+
+    public Collection<ComponentsCalculationHolder> getComponentCosts(final Entity costCalculation, final Entity technology,
+                                                                     List<Entity> calculationOperationComponents,
+                                                                     final CostCalculationPrices prices) {
         EntityTree operationComponents = productStructureTreeService.getOperationComponentsFromTechnology(technology);
         List<ComponentsCalculationHolder> components = operationComponents
                 .stream()
@@ -141,9 +147,9 @@ public class CostCalculationComponentsService {
                         .getBelongsToField(TechnologyOperationComponentFields.PRODUCT_FROM_STRUCTURE_TREE), technology))
                 .collect(Collectors.toList());
         BigDecimal quantity = costCalculation.getDecimalField(CostCalculationFields.QUANTITY);
-        addMaterialCost(costCalculation, allOperationComponents, technology, quantity);
+        addMaterialCost(costCalculation, allOperationComponents, technology, quantity, prices);
         addLaborCost(costCalculation, allOperationComponents, calculationOperationComponents);
-        fillComponentsQuantity(components, technology, quantity);
+        fillComponentsQuantity(components, technology, quantity, prices);
         fillComponentsCosts(operationComponents, components, allOperationComponents, quantity);
         fillAdditionalProductsMark(components);
         return groupComponentCosts(components);
@@ -189,9 +195,11 @@ public class CostCalculationComponentsService {
         return groupedComponentCosts.values();
     }
 
-    private void fillComponentsQuantity(List<ComponentsCalculationHolder> components, Entity technology, BigDecimal quantity) {
-        Map<OperationProductComponentHolder, BigDecimal> componentQuantitiesByOPC = productQuantitiesWithComponentsService
-                .getNeededProductQuantitiesByOPC(technology, quantity, MrpAlgorithm.ALL_PRODUCTS_IN);
+    private void fillComponentsQuantity(List<ComponentsCalculationHolder> components, Entity technology, BigDecimal quantity,
+                                        final CostCalculationPrices prices) {
+        Map<OperationProductComponentHolder, BigDecimal> componentQuantitiesByOPC = prices.getNeededProductQuantities(technology,
+                MrpAlgorithm.ALL_PRODUCTS_IN, true, () -> productQuantitiesWithComponentsService
+                        .getNeededProductQuantitiesByOPC(technology, quantity, MrpAlgorithm.ALL_PRODUCTS_IN));
         DataDefinition operationProductComponentDD = dataDefinitionService.get(TechnologiesConstants.PLUGIN_IDENTIFIER,
                 TechnologiesConstants.MODEL_OPERATION_PRODUCT_IN_COMPONENT);
         for (ComponentsCalculationHolder component : components) {
@@ -201,8 +209,9 @@ public class CostCalculationComponentsService {
                         && cq.getKey().getProductId().equals(component.getProduct().getId())) {
                     component.setQuantity(cq.getValue());
                     String technologyInputProductTypeName = "";
-                    Entity technologyInputProductType = operationProductComponentDD.get(
-                            cq.getKey().getOperationProductComponentId()).getBelongsToField(
+                    Long operationProductComponentId = cq.getKey().getOperationProductComponentId();
+                    Entity technologyInputProductType = prices.getOperationProductComponent(operationProductComponentId,
+                            () -> operationProductComponentDD.get(operationProductComponentId)).getBelongsToField(
                             OperationProductInComponentFields.TECHNOLOGY_INPUT_PRODUCT_TYPE);
                     if (technologyInputProductType != null) {
                         technologyInputProductTypeName = technologyInputProductType
@@ -37,6 +37,7 @@ import com.google.common.collect.Lists;
 import com.qcadoo.mes.basic.constants.ProductFields;
 import com.qcadoo.mes.costCalculation.constants.CostCalculationFields;
 import com.qcadoo.mes.costCalculation.print.dto.CostCalculationMaterial;
+import com.qcadoo.mes.costCalculation.print.dto.CostCalculationPrices;
 import com.qcadoo.mes.costCalculation.print.dto.MaterialCostKey;
 import com.qcadoo.mes.technologies.ProductQuantitiesService;
 import com.qcadoo.mes.technologies.ProductQuantitiesWithComponentsService;
@@ -79,21 +80,27 @@ public class CostCalculationMaterialsService {
 
     public List<CostCalculationMaterial> getSortedMaterialsFromProductQuantities(final Entity costCalculation,
                                                                                  final Entity technology) {
+        return getSortedMaterialsFromProductQuantities(costCalculation, technology, new CostCalculationPrices());
+    }
+
+    public List<CostCalculationMaterial> getSortedMaterialsFromProductQuantities(final Entity costCalculation,
+                                                                                 final Entity technology,
+                                                                                 final CostCalculationPrices prices) {
         List<CostCalculationMaterial> materialCosts = Lists.newArrayList();
         BigDecimal quantity = costCalculation.getDecimalField(CostCalculationFields.QUANTITY);
         Map<OperationProductComponentHolder, BigDecimal> materialQuantitiesByOPC = getNeededProductQuantitiesByOPC(
-                costCalculation, technology, quantity);
+                costCalculation, technology, quantity, prices);
         DataDefinition operationProductComponentDD = dataDefinitionService.get(TechnologiesConstants.PLUGIN_IDENTIFIER,
                 TechnologiesConstants.MODEL_OPERATION_PRODUCT_IN_COMPONENT);
         String technologyNumber = technology.getStringField(TechnologyFields.NUMBER);
         String finalProductNumber = technology.getBelongsToField(TechnologyFields.PRODUCT).getStringField(ProductFields.NUMBER);
-        Entity offer = costCalculation.getBelongsToField(CostCalculationFields.OFFER);
         for (Map.Entry<OperationProductComponentHolder, BigDecimal> neededProductQuantity : materialQuantitiesByOPC.entrySet()) {
             Entity product = neededProductQuantity.getKey().getProduct();
-            Entity operationProductComponent = operationProductComponentDD.get(neededProductQuantity.getKey()
-                    .getOperationProductComponentId());
+            Long operationProductComponentId = neededProductQuantity.getKey().getOperationProductComponentId();
+            Entity operationProductComponent = prices.getOperationProductComponent(operationProductComponentId,
+                    () -> operationProductComponentDD.get(operationProductComponentId));
             BigDecimal costPerUnit = productsCostCalculationService.calculateOperationProductCostPerUnit(costCalculation,
-                    product, operationProductComponent);
+                    product, operationProductComponent, prices);
 
             BigDecimal productQuantity = neededProductQuantity.getValue();
             BigDecimal costForGivenQuantity = costPerUnit.multiply(BigDecimalUtils.convertNullToZero(productQuantity),
@@ -109,10 +116,8 @@ public class CostCalculationMaterialsService {
                 for (Entity pbs : productsBySize) {
                     Entity p = pbs.getBelongsToField(ProductBySizeGroupFields.PRODUCT);
 
-                    BigDecimal costPerUnitPBS = productsCostCalculationService.calculateProductCostPerUnit(p,
-                            costCalculation.getStringField(CostCalculationFields.MATERIAL_COSTS_USED),
-                            costCalculation.getBooleanField(CostCalculationFields.USE_NOMINAL_COST_PRICE_NOT_SPECIFIED),
-                            offer);
+                    BigDecimal costPerUnitPBS = productsCostCalculationService.calculateProductCostPerUnit(costCalculation, p,
+                            prices);
                     BigDecimal q = costCalculation.getDecimalField(CostCalculationFields.QUANTITY).multiply(
                             pbs.getDecimalField(ProductBySizeGroupFields.QUANTITY), numberService.getMathContext());
 
@@ -192,13 +197,17 @@ public class CostCalculationMaterialsService {
     }
 
     private Map<OperationProductComponentHolder, BigDecimal> getNeededProductQuantitiesByOPC(final Entity costCalculation,
-                                                                                             final Entity technology, final BigDecimal quantity) {
+                                                                                             final Entity technology, final BigDecimal quantity,
+                                                                                             final CostCalculationPrices prices) {
         boolean includeComponents = costCalculation.getBooleanField(CostCalculationFields.INCLUDE_COMPONENTS);
         if (pluginManager.isPluginEnabled(ORDERS_FOR_SUBPRODUCTS_GENERATION) && includeComponents) {
-            return productQuantitiesWithComponentsService.getNeededProductQuantitiesByOPC(technology, quantity,
-                    MrpAlgorithm.ONLY_MATERIALS);
+            return prices.getNeededProductQuantities(technology, MrpAlgorithm.ONLY_MATERIALS, true,
+                    () -> productQuantitiesWithComponentsService.getNeededProductQuantitiesByOPC(technology, quantity,
+                            MrpAlgorithm.ONLY_MATERIALS));
         }
-        return productQuantitiesService.getNeededProductQuantitiesByOPC(technology, quantity, MrpAlgorithm.ONLY_COMPONENTS);
+        return prices.getNeededProductQuantities(technology, MrpAlgorithm.ONLY_COMPONENTS, false,
+                () -> productQuantitiesService.getNeededProductQuantitiesByOPC(technology, quantity,
+                        MrpAlgorithm.ONLY_COMPONENTS));
     }
 
 }
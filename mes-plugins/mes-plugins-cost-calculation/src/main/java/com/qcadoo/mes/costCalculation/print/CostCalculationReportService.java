@@ -23,7 +23,8 @@
  */
 package com.qcadoo.mes.costCalculation.print;
 
-import com.qcadoo.localization.api.utils.DateUtils;
+import com.qcadoo.mes.basic.reports.ReportJob;
+import com.qcadoo.mes.basic.reports.ReportJobService;
 import com.qcadoo.mes.costCalculation.constants.CostCalculationConstants;
 import com.qcadoo.mes.costCalculation.constants.CostCalculationFields;
 import com.qcadoo.model.api.DataDefinitionService;
@@ -33,7 +34,6 @@ import com.qcadoo.report.api.ReportService;
 import com.qcadoo.view.api.ComponentState;
 import com.qcadoo.view.api.ComponentState.MessageType;
 import com.qcadoo.view.api.ViewDefinitionState;
-import com.qcadoo.view.api.components.CheckBoxComponent;
 import com.qcadoo.view.api.components.FieldComponent;
 import com.qcadoo.view.api.components.FormComponent;
 import com.qcadoo.view.constants.QcadooViewConstants;
@@ -42,12 +42,16 @@ import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
 import java.io.IOException;
-import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.Locale;
 
 @Service
 public class CostCalculationReportService {
 
+    private static final String L_COST_CALCULATION_REPORT = "costCalculation";
+
+    private static final String L_REPORT_JOB_ID = "reportJobId";
+
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
@@ -60,6 +64,9 @@ public class CostCalculationReportService {
     @Autowired
     private CostCalculationXlsService costCalculationXlsService;
 
+    @Autowired
+    private ReportJobService reportJobService;
+
     public void printCostCalculationReport(final ViewDefinitionState view, final ComponentState state, final String[] args) {
         reportService.printGeneratedReport(view, state, new String[] { args[0], CostCalculationConstants.PLUGIN_IDENTIFIER,
                 CostCalculationConstants.MODEL_COST_CALCULATION });
@@ -67,9 +74,6 @@ public class CostCalculationReportService {
 
     public void generateCostCalculationReport(final ViewDefinitionState view, final ComponentState state, final String[] args) {
         if (state instanceof FormComponent) {
-            FieldComponent dateField = (FieldComponent) view.getComponentByReference(CostCalculationFields.DATE);
-            CheckBoxComponent generatedField = (CheckBoxComponent) view.getComponentByReference(CostCalculationFields.GENERATED);
-
             Entity costCalculation = getCostCalculation((Long) state.getFieldValue());
 
             if (costCalculation == null) {
@@ -82,41 +86,49 @@ public class CostCalculationReportService {
                 return;
             }
 
-            if (!generatedField.isChecked()) {
-                dateField.setFieldValue(new SimpleDateFormat(DateUtils.L_DATE_TIME_FORMAT, view.getLocale()).format(new Date()));
-                generatedField.setChecked(true);
-            }
-
             state.performEvent(view, "save");
 
-            if (state.isHasError()) {
+            if (state.isHasError() || state.getFieldValue() == null || !((FormComponent) state).isValid()) {
                 return;
             }
 
-            if (state.getFieldValue() == null || !((FormComponent) state).isValid()) {
-                dateField.setFieldValue(null);
-                generatedField.setChecked(false);
+            Long costCalculationId = (Long) state.getFieldValue();
+            Locale locale = state.getLocale();
 
-                return;
-            }
+            ReportJob job = reportJobService.submit(L_COST_CALCULATION_REPORT, ReportJob.Priority.NORMAL,
+                    () -> generateCostCalculationReport(costCalculationId, locale));
 
-            costCalculation = getCostCalculation((Long) state.getFieldValue());
+            state.performEvent(view, "reset");
 
-            try {
-                Entity costCalculationWithFileName = fileService.updateReportFileName(costCalculation, CostCalculationFields.DATE,
-                        "costCalculation.costCalculation.report.fileName");
+            FieldComponent reportJobIdField = (FieldComponent) view.getComponentByReference(L_REPORT_JOB_ID);
 
-                costCalculationXlsService.generateDocument(costCalculationWithFileName, state.getLocale());
+            reportJobIdField.setFieldValue(job.getId());
+            reportJobIdField.requestComponentUpdateState();
 
-                state.performEvent(view, "reset");
-                view.getComponentByReference(QcadooViewConstants.L_FORM)
-                        .addMessage("costCalculation.messages.success.calculationComplete", MessageType.SUCCESS);
-            } catch (IOException e) {
-                throw new IllegalStateException(e.getMessage(), e);
-            }
+            view.getComponentByReference(QcadooViewConstants.L_FORM)
+                    .addMessage("costCalculation.messages.info.calculationQueued", MessageType.INFO);
         }
     }
 
+    private void generateCostCalculationReport(final Long costCalculationId, final Locale locale) throws IOException {
+        Entity costCalculation = getCostCalculation(costCalculationId);
+
+        if (costCalculation == null || StringUtils.hasText(costCalculation.getStringField(CostCalculationFields.FILE_NAME))) {
+            return;
+        }
+
+        costCalculation.setField(CostCalculationFields.DATE, new Date());
+
+        Entity costCalculationWithFileName = fileService.updateReportFileName(costCalculation, CostCalculationFields.DATE,
+                "costCalculation.costCalculation.report.fileName");
+
+        costCalculationXlsService.generateDocument(costCalculationWithFileName, locale);
+
+        costCalculationWithFileName.setField(CostCalculationFields.GENERATED, true);
+
+        costCalculationWithFileName.getDataDefinition().save(costCalculationWithFileName);
+    }
+
     private Entity getCostCalculation(final Long costCalculationId) {
         return dataDefinitionService
                 .get(CostCalculationConstants.PLUGIN_IDENTIFIER, CostCalculationConstants.MODEL_COST_CALCULATION)
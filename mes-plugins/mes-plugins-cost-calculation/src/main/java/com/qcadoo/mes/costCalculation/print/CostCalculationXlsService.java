@@ -43,6 +43,7 @@ import com.qcadoo.mes.costCalculation.constants.StandardLaborCostFields;
 import com.qcadoo.mes.costCalculation.print.dto.ComponentsCalculationHolder;
 import com.qcadoo.mes.costCalculation.print.dto.CostCalculationMaterial;
 import com.qcadoo.mes.costCalculation.print.dto.CostCalculationMaterialBySize;
+import com.qcadoo.mes.costCalculation.print.dto.CostCalculationPrices;
 import com.qcadoo.mes.costNormsForOperation.constants.CalculationOperationComponentFields;
 import com.qcadoo.mes.costNormsForOperation.constants.TechnologyOperationComponentFieldsCNFO;
 import com.qcadoo.mes.technologies.TechnologyService;
@@ -124,6 +125,7 @@ public class CostCalculationXlsService extends XlsDocumentService {
         List<Entity> calculationResults = Lists.newArrayList();
         Map<Long, Boolean> hasComponents = Maps.newHashMap();
         List<TechnologyProduct> technologyProducts = Lists.newArrayList();
+        CostCalculationPrices prices = new CostCalculationPrices();
 
         boolean includeComponents = entity.getBooleanField(CostCalculationFields.INCLUDE_COMPONENTS);
 
@@ -132,7 +134,9 @@ public class CostCalculationXlsService extends XlsDocumentService {
         final StylesContainer stylesContainer = new StylesContainer(sheet.getWorkbook(), fontsContainer);
         for (Entity technology : entity.getHasManyField(CostCalculationFields.TECHNOLOGIES)) {
 
-            ProductQuantitiesHolder productComponentQuantities = productQuantitiesService.getProductComponentQuantities(technology, entity.getDecimalField(CostCalculationFields.QUANTITY));
+            ProductQuantitiesHolder productComponentQuantities = prices.getProductQuantities(technology, false,
+                    () -> productQuantitiesService.getProductComponentQuantities(technology,
+                            entity.getDecimalField(CostCalculationFields.QUANTITY)));
             Map<OperationProductComponentHolder, BigDecimal> productQuantities = productComponentQuantities.getProductQuantities();
             for (Map.Entry<OperationProductComponentHolder, BigDecimal> entry : productQuantities.entrySet()) {
 
@@ -170,7 +174,7 @@ public class CostCalculationXlsService extends XlsDocumentService {
             }
 
             List<CostCalculationMaterial> technologyMaterialCosts = costCalculationMaterialsService
-                    .getSortedMaterialsFromProductQuantities(entity, technology);
+                    .getSortedMaterialsFromProductQuantities(entity, technology, prices);
             materialCosts.addAll(technologyMaterialCosts);
             BigDecimal technologyMaterialsCostsSum = BigDecimal.ZERO;
             boolean noMaterialPrice = false;
@@ -190,9 +194,9 @@ public class CostCalculationXlsService extends XlsDocumentService {
             } else if (technology.getBooleanField(TechnologyOperationComponentFieldsTNFO.PIECEWORK_PRODUCTION)) {
                 labourCost = entity.getDecimalField(CostCalculationFields.QUANTITY)
                         .multiply(operationsCostCalculationService.getCurrentRate(technology
-                                .getBelongsToField(TechnologyOperationComponentFieldsCNFO.PIECE_RATE)), numberService.getMathContext());
+                                .getBelongsToField(TechnologyOperationComponentFieldsCNFO.PIECE_RATE), prices), numberService.getMathContext());
             } else {
-                labourCost = operationsCostCalculationService.calculateOperationsCost(entity, technology);
+                labourCost = operationsCostCalculationService.calculateOperationsCost(entity, technology, prices);
                 List<Entity> technologyCalculationOperationComponents = entity
                         .getHasManyField(CostCalculationFields.CALCULATION_OPERATION_COMPONENTS);
                 technologyCalculationOperationComponents
@@ -210,7 +214,7 @@ public class CostCalculationXlsService extends XlsDocumentService {
         if (includeComponents) {
             for (Entity technology : entity.getHasManyField(CostCalculationFields.TECHNOLOGIES)) {
                 Collection<ComponentsCalculationHolder> technologyComponentCosts = costCalculationComponentsService
-                        .getComponentCosts(entity, technology, calculationOperationComponents);
+                        .getComponentCosts(entity, technology, calculationOperationComponents, prices);
                 componentCosts.addAll(technologyComponentCosts);
                 hasComponents.put(technology.getId(), !technologyComponentCosts.isEmpty());
             }
@@ -233,7 +237,7 @@ public class CostCalculationXlsService extends XlsDocumentService {
         createMaterialsBySizeSheet(entity,
                 createSheet(workbook,
                         translationService.translate("costCalculation.costCalculation.report.xls.sheet.materialsBySize", locale)),
-                locale);
+                prices, locale);
         if (!SourceOfOperationCosts.STANDARD_LABOR_COSTS.equals(
                 SourceOfOperationCosts.parseString(entity.getStringField(CostCalculationFields.SOURCE_OF_OPERATION_COSTS)))) {
             createLabourCostSheet(calculationOperationComponents,
@@ -405,7 +409,7 @@ public class CostCalculationXlsService extends XlsDocumentService {
         }
     }
 
-    private void createMaterialsBySizeSheet(Entity entity, HSSFSheet sheet, Locale locale) {
+    private void createMaterialsBySizeSheet(Entity entity, HSSFSheet sheet, CostCalculationPrices prices, Locale locale) {
         final FontsContainer fontsContainer = new FontsContainer(sheet.getWorkbook());
         final StylesContainer stylesContainer = new StylesContainer(sheet.getWorkbook(), fontsContainer);
         final int rowOffset = 1;
@@ -440,13 +444,9 @@ public class CostCalculationXlsService extends XlsDocumentService {
         int rowCounter = 0;
         DataDefinition productDataDefinition = dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER,
                 BasicConstants.MODEL_PRODUCT);
-        Entity offer = entity.getBelongsToField(CostCalculationFields.OFFER);
         for (CostCalculationMaterialBySize costCalculationMaterialBySize : costCalculationService.getMaterialsBySize(entity)) {
             Entity product = productDataDefinition.get(costCalculationMaterialBySize.getMaterialId());
-            BigDecimal costPerUnit = productsCostCalculationService.calculateProductCostPerUnit(product,
-                    entity.getStringField(CostCalculationFields.MATERIAL_COSTS_USED),
-                    entity.getBooleanField(CostCalculationFields.USE_NOMINAL_COST_PRICE_NOT_SPECIFIED),
-                    offer);
+            BigDecimal costPerUnit = productsCostCalculationService.calculateProductCostPerUnit(entity, product, prices);
 
             BigDecimal quantity = entity.getDecimalField(CostCalculationFields.QUANTITY)
                     .multiply(costCalculationMaterialBySize.getQuantity(), numberService.getMathContext());
@@ -23,6 +23,7 @@
  */
 package com.qcadoo.mes.costCalculation.print;
 
+import com.qcadoo.mes.costCalculation.print.dto.CostCalculationPrices;
 import com.qcadoo.model.api.Entity;
 
 import org.springframework.stereotype.Service;
@@ -41,5 +42,18 @@ public interface OperationsCostCalculationService {
      */
     BigDecimal calculateOperationsCost(final Entity costCalculation, final Entity technology);
 
+    /**
+     *
+     * @param costCalculation
+     *            cost calculation
+     * @param technology
+     *            technology
+     * @param prices
+     *            prices shared by all technologies of cost calculation
+     */
+    BigDecimal calculateOperationsCost(final Entity costCalculation, final Entity technology, final CostCalculationPrices prices);
+
     BigDecimal getCurrentRate(Entity pieceRate);
+
+    BigDecimal getCurrentRate(Entity pieceRate, CostCalculationPrices prices);
 }
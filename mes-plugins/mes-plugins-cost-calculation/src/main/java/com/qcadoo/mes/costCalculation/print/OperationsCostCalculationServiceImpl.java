@@ -43,6 +43,7 @@ import com.qcadoo.mes.basic.constants.PieceRateFields;
 import com.qcadoo.mes.basic.constants.PieceRateItemFields;
 import com.qcadoo.mes.costCalculation.constants.CostCalculationFields;
 import com.qcadoo.mes.costCalculation.constants.SourceOfOperationCosts;
+import com.qcadoo.mes.costCalculation.print.dto.CostCalculationPrices;
 import com.qcadoo.mes.costNormsForOperation.constants.CalculationOperationComponentFields;
 import com.qcadoo.mes.costNormsForOperation.constants.TechnologyOperationComponentFieldsCNFO;
 import com.qcadoo.mes.operationCostCalculations.OperationCostCalculationTreeBuilder;
@@ -92,12 +93,18 @@ public class OperationsCostCalculationServiceImpl implements OperationsCostCalcu
 
     @Override
     public BigDecimal calculateOperationsCost(final Entity costCalculation, final Entity technology) {
+        return calculateOperationsCost(costCalculation, technology, new CostCalculationPrices());
+    }
+
+    @Override
+    public BigDecimal calculateOperationsCost(final Entity costCalculation, final Entity technology,
+                                              final CostCalculationPrices prices) {
         DataDefinition costCalculationDataDefinition = costCalculation.getDataDefinition();
 
         BigDecimal quantity = costCalculation.getDecimalField(CostCalculationFields.QUANTITY);
 
         ProductQuantitiesHolder productQuantitiesAndOperationRuns = getProductQuantitiesAndOperationRuns(technology, quantity,
-                costCalculation);
+                costCalculation, prices);
 
         Entity copyCostCalculation = operationCostCalculationTreeBuilder.copyTechnologyTree(costCalculation, technology);
 
@@ -120,7 +127,8 @@ public class OperationsCostCalculationServiceImpl implements OperationsCostCalcu
         boolean hourlyCostFromOperation = !SourceOfOperationCosts.PARAMETERS.getStringValue()
                 .equals(costCalculation.getStringField(CostCalculationFields.SOURCE_OF_OPERATION_COSTS));
         Map<String, BigDecimal> resultsMap = estimateCostCalculationForHourly(calculationOperationComponents.getRoot(),
-                operationTimes, hourlyCostFromOperation, costCalculation, productQuantitiesAndOperationRuns.getOperationRuns());
+                operationTimes, hourlyCostFromOperation, costCalculation, productQuantitiesAndOperationRuns.getOperationRuns(),
+                prices);
 
         costCalculation.setField(CostCalculationFields.CALCULATION_OPERATION_COMPONENTS, calculationOperationComponents);
         return BigDecimalUtils
@@ -132,17 +140,21 @@ public class OperationsCostCalculationServiceImpl implements OperationsCostCalcu
     }
 
     private ProductQuantitiesHolder getProductQuantitiesAndOperationRuns(final Entity technology, final BigDecimal quantity,
-                                                                         final Entity costCalculation) {
+                                                                         final Entity costCalculation,
+                                                                         final CostCalculationPrices prices) {
         boolean includeComponents = costCalculation.getBooleanField(CostCalculationFields.INCLUDE_COMPONENTS);
         if (pluginManager.isPluginEnabled(ORDERS_FOR_SUBPRODUCTS_GENERATION) && includeComponents) {
-            return productQuantitiesWithComponentsService.getProductComponentQuantities(technology, quantity);
+            return prices.getProductQuantities(technology, true,
+                    () -> productQuantitiesWithComponentsService.getProductComponentQuantities(technology, quantity));
         }
-        return productQuantitiesService.getProductComponentQuantities(technology, quantity);
+        return prices.getProductQuantities(technology, false,
+                () -> productQuantitiesService.getProductComponentQuantities(technology, quantity));
     }
 
     private Map<String, BigDecimal> estimateCostCalculationForHourly(final EntityTreeNode calculationOperationComponent,
                                                                      final OperationTimesContainer realizationTimes, final boolean hourlyCostFromOperation,
-                                                                     Entity costCalculation, Map<Long, BigDecimal> operationRuns) {
+                                                                     Entity costCalculation, Map<Long, BigDecimal> operationRuns,
+                                                                     final CostCalculationPrices prices) {
         checkArgument(calculationOperationComponent != null, "given operationComponent is empty");
 
         Map<String, BigDecimal> costs = Maps.newHashMapWithExpectedSize(L_COST_KEYS.size());
@@ -155,7 +167,7 @@ public class OperationsCostCalculationServiceImpl implements OperationsCostCalcu
 
         for (EntityTreeNode child : calculationOperationComponent.getChildren()) {
             Map<String, BigDecimal> unitCosts = estimateCostCalculationForHourly(child, realizationTimes, hourlyCostFromOperation,
-                    costCalculation, operationRuns);
+                    costCalculation, operationRuns, prices);
 
             for (String costKey : L_COST_KEYS) {
                 BigDecimal unitCost = costs.get(costKey).add(unitCosts.get(costKey), mathContext);
@@ -184,7 +196,7 @@ public class OperationsCostCalculationServiceImpl implements OperationsCostCalcu
             costs.put(CalculationOperationComponentFields.LABOR_HOURLY_COST,
                     costs.get(CalculationOperationComponentFields.LABOR_HOURLY_COST).add(
                             BigDecimalUtils.convertNullToZero(operationRuns.get(toc.getId()))
-                                    .multiply(getCurrentRate(toc.getBelongsToField(TechnologyOperationComponentFieldsCNFO.PIECE_RATE)), numberService.getMathContext()),
+                                    .multiply(getCurrentRate(toc.getBelongsToField(TechnologyOperationComponentFieldsCNFO.PIECE_RATE), prices), numberService.getMathContext()),
                             mathContext));
         }
 
@@ -203,6 +215,11 @@ public class OperationsCostCalculationServiceImpl implements OperationsCostCalcu
         return currentRate;
     }
 
+    @Override
+    public BigDecimal getCurrentRate(final Entity pieceRate, final CostCalculationPrices prices) {
+        return prices.getPieceRate(pieceRate, () -> getCurrentRate(pieceRate));
+    }
+
     private Map<String, BigDecimal> estimateHourlyCostCalculationForSingleOperation(final OperationTimes operationTimes,
                                                                                     boolean hourlyCostFromOperation, Entity costCalculation) {
         Map<String, BigDecimal> costs = Maps.newHashMap();
@@ -25,12 +25,18 @@ package com.qcadoo.mes.costCalculation.print;
 
 import java.math.BigDecimal;
 
+import com.qcadoo.mes.costCalculation.print.dto.CostCalculationPrices;
 import com.qcadoo.model.api.Entity;
 
 public interface ProductsCostCalculationService {
 
     BigDecimal calculateOperationProductCostPerUnit(Entity costCalculation, Entity product, Entity operationProductComponent);
 
+    BigDecimal calculateOperationProductCostPerUnit(Entity costCalculation, Entity product, Entity operationProductComponent,
+                                                    CostCalculationPrices prices);
+
+    BigDecimal calculateProductCostPerUnit(Entity costCalculation, Entity product, CostCalculationPrices prices);
+
     BigDecimal calculateProductCostPerUnit(final Entity product, final String materialCostsUsed,
                                            final boolean useNominalCostPriceNotSpecified, final Entity offer);
 }
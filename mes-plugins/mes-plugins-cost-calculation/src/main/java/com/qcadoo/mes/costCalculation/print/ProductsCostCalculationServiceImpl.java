@@ -26,6 +26,7 @@ package com.qcadoo.mes.costCalculation.print;
 import com.qcadoo.mes.basic.constants.CurrencyFields;
 import com.qcadoo.mes.basic.util.CurrencyService;
 import com.qcadoo.mes.costCalculation.constants.CostCalculationFields;
+import com.qcadoo.mes.costCalculation.print.dto.CostCalculationPrices;
 import com.qcadoo.mes.costNormsForMaterials.constants.ProductsCostFields;
 import com.qcadoo.mes.costNormsForProduct.constants.ProductFieldsCNFP;
 import com.qcadoo.mes.supplyNegotiations.SupplyNegotiationsService;
@@ -57,7 +58,13 @@ public class ProductsCostCalculationServiceImpl implements ProductsCostCalculati
     @Override
     public BigDecimal calculateOperationProductCostPerUnit(Entity costCalculation, Entity product,
                                                            Entity operationProductComponent) {
-        Entity offer = costCalculation.getBelongsToField(CostCalculationFields.OFFER);
+        return calculateOperationProductCostPerUnit(costCalculation, product, operationProductComponent,
+                new CostCalculationPrices());
+    }
+
+    @Override
+    public BigDecimal calculateOperationProductCostPerUnit(Entity costCalculation, Entity product,
+                                                           Entity operationProductComponent, CostCalculationPrices prices) {
         BigDecimal costPerUnit;
         if (operationProductComponent.getBooleanField(OperationProductInComponentFields.DIFFERENT_PRODUCTS_IN_DIFFERENT_SIZES)) {
             List<Entity> productBySizeGroups = operationProductComponent
@@ -66,10 +73,8 @@ public class ProductsCostCalculationServiceImpl implements ProductsCostCalculati
                 BigDecimal productBySizeGroupsCost = BigDecimal.ZERO;
                 for (Entity productBySizeGroup : productBySizeGroups) {
                     productBySizeGroupsCost = productBySizeGroupsCost.add(
-                            calculateProductCostPerUnit(productBySizeGroup.getBelongsToField(ProductBySizeGroupFields.PRODUCT),
-                                    costCalculation.getStringField(CostCalculationFields.MATERIAL_COSTS_USED),
-                                    costCalculation.getBooleanField(CostCalculationFields.USE_NOMINAL_COST_PRICE_NOT_SPECIFIED),
-                                    offer),
+                            calculateProductCostPerUnit(costCalculation,
+                                    productBySizeGroup.getBelongsToField(ProductBySizeGroupFields.PRODUCT), prices),
                             numberService.getMathContext());
                 }
                 costPerUnit = productBySizeGroupsCost.divide(new BigDecimal(productBySizeGroups.size()),
@@ -78,10 +83,7 @@ public class ProductsCostCalculationServiceImpl implements ProductsCostCalculati
                 costPerUnit = BigDecimal.ZERO;
             }
         } else if (product != null) {
-            costPerUnit = calculateProductCostPerUnit(product,
-                    costCalculation.getStringField(CostCalculationFields.MATERIAL_COSTS_USED),
-                    costCalculation.getBooleanField(CostCalculationFields.USE_NOMINAL_COST_PRICE_NOT_SPECIFIED),
-                    offer);
+            costPerUnit = calculateProductCostPerUnit(costCalculation, product, prices);
         } else {
             costPerUnit = BigDecimalUtils.convertNullToZero(
                     operationProductComponent.getBelongsToField(OperationProductInComponentFields.TECHNOLOGY_INPUT_PRODUCT_TYPE)
@@ -90,6 +92,15 @@ public class ProductsCostCalculationServiceImpl implements ProductsCostCalculati
         return costPerUnit;
     }
 
+    @Override
+    public BigDecimal calculateProductCostPerUnit(final Entity costCalculation, final Entity product,
+                                                  final CostCalculationPrices prices) {
+        return prices.getProductCostPerUnit(product, () -> calculateProductCostPerUnit(product,
+                costCalculation.getStringField(CostCalculationFields.MATERIAL_COSTS_USED),
+                costCalculation.getBooleanField(CostCalculationFields.USE_NOMINAL_COST_PRICE_NOT_SPECIFIED),
+                costCalculation.getBelongsToField(CostCalculationFields.OFFER)));
+    }
+
     @Override
     public BigDecimal calculateProductCostPerUnit(final Entity product, final String materialCostsUsed,
                                                   final boolean useNominalCostPriceNotSpecified, final Entity offer) {
@@ -0,0 +1,71 @@
+package com.qcadoo.mes.costCalculation.print.dto;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.technologies.constants.MrpAlgorithm;
+import com.qcadoo.mes.technologies.dto.OperationProductComponentHolder;
+import com.qcadoo.mes.technologies.dto.ProductQuantitiesHolder;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Prices and technology expansions read during one cost calculation, shared by all of its technologies.
+ *
+ * Costs per unit of products, current piece rates, operation product components and needed quantities of technologies are
+ * loaded the first time they're needed and reused afterwards, so products, components and workstations shared by many
+ * technologies are priced once and the whole calculation uses the same prices. Values loaded as null are kept too. It's meant to
+ * live as long as one calculation is generated and isn't thread-safe.
+ *
+ * Costs of sub-assemblies aren't shared: they depend on quantities needed by each technology and on its calculation operation
+ * components, so they're still costed within every technology using them.
+ */
+public class CostCalculationPrices {
+
+    private final Map<Long, BigDecimal> productCostsPerUnit = Maps.newHashMap();
+
+    private final Map<Long, BigDecimal> pieceRates = Maps.newHashMap();
+
+    private final Map<Long, Entity> operationProductComponents = Maps.newHashMap();
+
+    private final Map<String, Map<OperationProductComponentHolder, BigDecimal>> neededProductQuantities = Maps.newHashMap();
+
+    private final Map<String, ProductQuantitiesHolder> productQuantities = Maps.newHashMap();
+
+    public BigDecimal getProductCostPerUnit(final Entity product, final Supplier<BigDecimal> loader) {
+        return get(productCostsPerUnit, product.getId(), loader);
+    }
+
+    public BigDecimal getPieceRate(final Entity pieceRate, final Supplier<BigDecimal> loader) {
+        return get(pieceRates, pieceRate.getId(), loader);
+    }
+
+    public Entity getOperationProductComponent(final Long operationProductComponentId, final Supplier<Entity> loader) {
+        return get(operationProductComponents, operationProductComponentId, loader);
+    }
+
+    public Map<OperationProductComponentHolder, BigDecimal> getNeededProductQuantities(final Entity technology,
+            final MrpAlgorithm algorithm, final boolean withComponents,
+            final Supplier<Map<OperationProductComponentHolder, BigDecimal>> loader) {
+        return get(neededProductQuantities, technology.getId() + "_" + algorithm.getStringValue() + "_" + withComponents, loader);
+    }
+
+    public ProductQuantitiesHolder getProductQuantities(final Entity technology, final boolean withComponents,
+            final Supplier<ProductQuantitiesHolder> loader) {
+        return get(productQuantities, technology.getId() + "_" + withComponents, loader);
+    }
+
+    private <K, V> V get(final Map<K, V> values, final K key, final Supplier<V> loader) {
+        if (values.containsKey(key)) {
+            return values.get(key);
+        }
+
+        V value = loader.get();
+
+        values.put(key, value);
+
+        return value;
+    }
+
+}
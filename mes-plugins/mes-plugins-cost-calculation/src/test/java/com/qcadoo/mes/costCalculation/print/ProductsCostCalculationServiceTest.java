@@ -24,6 +24,8 @@
 package com.qcadoo.mes.costCalculation.print;
 
 import com.qcadoo.mes.basic.util.CurrencyService;
+import com.qcadoo.mes.costCalculation.constants.CostCalculationFields;
+import com.qcadoo.mes.costCalculation.print.dto.CostCalculationPrices;
 import com.qcadoo.mes.costNormsForMaterials.constants.ProductsCostFields;
 import com.qcadoo.mes.costNormsForProduct.constants.ProductFieldsCNFP;
 import com.qcadoo.model.api.BigDecimalUtils;
@@ -117,4 +119,26 @@ public class ProductsCostCalculationServiceTest {
         // then
         assertTrue(BigDecimalUtils.valueEquals(result, BigDecimal.valueOf(10L)));
     }
+
+    @Test
+    public void shouldCalculateProductCostOncePerCostCalculation() throws Exception {
+        // given
+        Entity product = mockProduct(BigDecimal.TEN, BigDecimal.ONE);
+
+        Entity costCalculation = mockEntity(2L);
+        when(costCalculation.getStringField(CostCalculationFields.MATERIAL_COSTS_USED)).thenReturn("02average");
+
+        when(currencyService.getCurrencyAlphabeticCode()).thenReturn(currency);
+
+        CostCalculationPrices prices = new CostCalculationPrices();
+
+        // when
+        BigDecimal firstResult = productsCostCalculationService.calculateProductCostPerUnit(costCalculation, product, prices);
+        stubDecimalField(product, ProductFieldsCNFP.AVERAGE_COST, BigDecimal.ONE);
+        BigDecimal secondResult = productsCostCalculationService.calculateProductCostPerUnit(costCalculation, product, prices);
+
+        // then
+        assertTrue(BigDecimalUtils.valueEquals(firstResult, BigDecimal.TEN));
+        assertTrue(BigDecimalUtils.valueEquals(secondResult, BigDecimal.TEN));
+    }
 }
@@ -0,0 +1,98 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.costCalculation.print.dto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.qcadoo.model.api.Entity;
+
+public class CostCalculationPricesTest {
+
+    @Test
+    public void shouldLoadProductCostPerUnitOnce() {
+        // given
+        CostCalculationPrices prices = new CostCalculationPrices();
+        Entity product = mockEntity(1L);
+        AtomicInteger loads = new AtomicInteger();
+
+        // when
+        BigDecimal firstResult = prices.getProductCostPerUnit(product, () -> {
+            loads.incrementAndGet();
+
+            return BigDecimal.TEN;
+        });
+        BigDecimal secondResult = prices.getProductCostPerUnit(product, () -> {
+            loads.incrementAndGet();
+
+            return BigDecimal.ONE;
+        });
+
+        // then
+        assertEquals(BigDecimal.TEN, firstResult);
+        assertEquals(BigDecimal.TEN, secondResult);
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void shouldKeepLoadedNullPieceRate() {
+        // given
+        CostCalculationPrices prices = new CostCalculationPrices();
+        Entity pieceRate = mockEntity(1L);
+        AtomicInteger loads = new AtomicInteger();
+
+        // when
+        BigDecimal firstResult = prices.getPieceRate(pieceRate, () -> {
+            loads.incrementAndGet();
+
+            return null;
+        });
+        BigDecimal secondResult = prices.getPieceRate(pieceRate, () -> {
+            loads.incrementAndGet();
+
+            return BigDecimal.ONE;
+        });
+
+        // then
+        assertNull(firstResult);
+        assertNull(secondResult);
+        assertEquals(1, loads.get());
+    }
+
+    private Entity mockEntity(final Long id) {
+        Entity entity = mock(Entity.class);
+
+        given(entity.getId()).willReturn(id);
+
+        return entity;
+    }
+
+}
@@ -23,26 +23,26 @@
  */
 package com.qcadoo.mes.deliveriesMinState;
 
-import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.google.common.collect.Multimap;
-import com.qcadoo.mes.basic.CompanyService;
 import com.qcadoo.mes.basic.ParameterService;
+import com.qcadoo.mes.basic.constants.BasicConstants;
 import com.qcadoo.mes.basic.constants.ParameterFields;
 import com.qcadoo.mes.basic.constants.ProductFields;
 import com.qcadoo.mes.basic.constants.UnitConversionItemFieldsB;
 import com.qcadoo.mes.costNormsForProduct.constants.ProductFieldsCNFP;
 import com.qcadoo.mes.deliveries.DeliveriesService;
-import com.qcadoo.mes.deliveries.constants.CompanyProductFields;
 import com.qcadoo.mes.deliveries.constants.DeliveriesConstants;
 import com.qcadoo.mes.deliveries.constants.DeliveryFields;
 import com.qcadoo.mes.deliveries.constants.OrderedProductFields;
 import com.qcadoo.mes.deliveries.states.constants.DeliveryState;
+import com.qcadoo.mes.deliveriesMinState.dto.MinimalStatePosition;
+import com.qcadoo.mes.deliveriesMinState.dto.ProposedDelivery;
 import com.qcadoo.mes.emailNotifications.notifications.constants.StaffNotificationFieldsMS;
-import com.qcadoo.mes.emailNotifications.notifications.service.MailingService;
 import com.qcadoo.mes.emailNotifications.constants.EmailNotificationsConstants;
 import com.qcadoo.mes.emailNotifications.constants.StaffNotificationFields;
+import com.qcadoo.mes.emailNotifications.notifications.outbox.NotificationOutboxService;
+import com.qcadoo.mes.emailNotifications.notifications.outbox.OutboxNotification;
 import com.qcadoo.mes.materialFlow.constants.MaterialFlowConstants;
 import com.qcadoo.mes.materialFlowResources.constants.MaterialFlowResourcesConstants;
 import com.qcadoo.mes.warehouseMinimalState.WarehouseMinimalStateHelper;
@@ -54,23 +54,72 @@ import com.qcadoo.view.api.utils.NumberGeneratorService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
+/**
+ * Creates draft deliveries for products, which stock and quantity ordered in active deliveries are lower than their minimal
+ * state in warehouse, one delivery per warehouse and default supplier of products.
+ *
+ * Minimal states of all warehouses are found with one query, which also picks default supplier of product or of its family.
+ * Stocks are taken per warehouse from {@link #getWarehouseStockWithTooSmallMinState(Entity, List)}, so they are the same as
+ * in warehouse stocks and can be changed by integration. Each delivery is saved together with its products.
+ */
 @Service
 public class DeliveriesMinStateHelper {
 
     private static final Logger LOG = LoggerFactory.getLogger(DeliveriesMinStateHelper.class);
 
+    private static final int L_PARTITION_SIZE = 1000;
+
+    static final String MINIMAL_STATES_WITH_DEFAULT_SUPPLIER = "WITH ordered_quantities AS ("
+            + "SELECT orderedproduct.product_id, delivery.location_id, SUM(orderedproduct.orderedquantity) AS quantity "
+            + "FROM deliveries_orderedproduct orderedproduct "
+            + "JOIN deliveries_delivery delivery ON delivery.id = orderedproduct.delivery_id WHERE delivery.active = true "
+            + "AND delivery.state IN ('01draft', '02prepared', '03duringCorrection', '05approved') "
+            + "GROUP BY orderedproduct.product_id, delivery.location_id) "
+            + "SELECT location.id AS warehouseid, location.number AS warehousenumber, supplier.id AS supplierid, "
+            + "supplier.number AS suppliernumber, supplier.name AS suppliername, product.id AS productid, "
+            + "product.number AS productnumber, product.unit AS productunit, minimumstate.minimumstate, "
+            + "COALESCE(ordered_quantities.quantity, 0) AS orderedquantity, "
+            + "COALESCE(minimumstate.optimalorderquantity, 0) AS optimalorderquantity "
+            + "FROM warehouseminimalstate_warehouseminimumstate minimumstate "
+            + "JOIN materialflow_location location ON location.id = minimumstate.location_id "
+            + "JOIN basic_product product ON product.id = minimumstate.product_id "
+            + "JOIN LATERAL (SELECT companyproduct.company_id FROM deliveries_companyproduct companyproduct "
+            + "WHERE companyproduct.isdefault = true AND companyproduct.product_id IN (product.id, product.parent_id) "
+            + "ORDER BY companyproduct.product_id = product.id DESC, companyproduct.id LIMIT 1) defaultsupplier ON true "
+            + "JOIN basic_company supplier ON supplier.id = defaultsupplier.company_id "
+            + "LEFT JOIN ordered_quantities ON ordered_quantities.product_id = minimumstate.product_id "
+            + "AND ordered_quantities.location_id = minimumstate.location_id "
+            + "WHERE minimumstate.minimumstate > 0 AND product.entitytype = '01particularProduct' "
+            + "ORDER BY location.number, supplier.number, product.number";
+
+    private static final String L_PRODUCT_ID = "product_id";
+
+    private static final String L_MINIMUM_STATE = "minimumState";
+
+    private static final String L_QUANTITY = "quantity";
+
+    private static final String L_ORDERED_QUANTITY = "orderedQuantity";
+
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
     @Autowired
     private NumberService numberService;
 
@@ -83,9 +132,6 @@ public class DeliveriesMinStateHelper {
     @Autowired
     private ParameterService parameterService;
 
-    @Autowired
-    private CompanyService companyService;
-
     @Autowired
     private DeliveriesService deliveriesService;
 
@@ -93,108 +139,179 @@ public class DeliveriesMinStateHelper {
     private WarehouseMinimalStateHelper warehouseMinimalStateHelper;
 
     @Autowired
-    private MailingService mailingService;
+    private NotificationOutboxService notificationOutboxService;
 
-    private void sendEmailNotifications(final List<String> createdDeliveries) {
+    private void enqueueEmailNotifications(final List<String> createdDeliveries) {
         if (!createdDeliveries.isEmpty()) {
             List<String> emails = getStaffNotificationDD().find().add(SearchRestrictions.eq(StaffNotificationFieldsMS.CREATE_DELIVERY_MIN_STATE, true))
                     .list().getEntities().stream().map(entity -> entity.getStringField(StaffNotificationFields.EMAIL))
                     .collect(Collectors.toList());
 
-            mailingService.sendTemplateDeliveryInfoEmailsBySendinblue(emails, createdDeliveries);
+            if (!emails.isEmpty()) {
+                notificationOutboxService.enqueue(OutboxNotification.L_DELIVERY_INFO, emails, createdDeliveries);
+            }
         }
     }
 
-    public Map<Long, Multimap<Long, Entity>> createDeliveriesFromMinimalState() {
-        Map<Long, Multimap<Long, Entity>> minimalStatePerWarehousesAndSupplier = Maps.newHashMap();
+    /**
+     * Finds deliveries, which would be created from minimal states, without saving them.
+     *
+     * @return deliveries per warehouse and supplier, without numbers
+     */
+    public List<ProposedDelivery> getDeliveriesFromMinimalState() {
+        return getDeliveriesFromMinimalState(Maps.newHashMap(), Maps.newHashMap());
+    }
+
+    private List<ProposedDelivery> getDeliveriesFromMinimalState(final Map<Long, Entity> warehouses,
+            final Map<Long, Entity> products) {
+        long started = System.currentTimeMillis();
+
+        List<ProposedDelivery> deliveries = getDeliveriesWithDefaultSupplier();
+        List<MinimalStatePosition> minimalStates = deliveries.stream().flatMap(delivery -> delivery.getPositions().stream())
+                .collect(Collectors.toList());
+
+        warehouses.putAll(getEntitiesById(getLocationDD(),
+                minimalStates.stream().map(MinimalStatePosition::getWarehouseId).collect(Collectors.toSet())));
+        products.putAll(getEntitiesById(getProductDD(),
+                minimalStates.stream().map(MinimalStatePosition::getProductId).collect(Collectors.toSet())));
+
+        Map<Long, List<Entity>> productsByWarehouse = minimalStates.stream().collect(
+                Collectors.groupingBy(MinimalStatePosition::getWarehouseId, Maps::newHashMap,
+                        Collectors.mapping(minimalState -> products.get(minimalState.getProductId()), Collectors.toList())));
+        Map<Long, Map<Long, Entity>> stocksByWarehouse = Maps.newHashMap();
 
-        List<Entity> warehouses = getWarehousesFromMinimalState();
+        productsByWarehouse.forEach((warehouseId, warehouseProducts) -> stocksByWarehouse.put(warehouseId,
+                getStocksByProduct(warehouses.get(warehouseId), warehouseProducts)));
+
+        for (ProposedDelivery delivery : deliveries) {
+            Map<Long, Entity> stocksByProduct = stocksByWarehouse.get(delivery.getWarehouseId());
+
+            delivery.getPositions().removeIf(position -> !isLowerThanMinimum(position,
+                    stocksByProduct.get(position.getProductId())));
+        }
+
+        deliveries.removeIf(delivery -> delivery.getPositions().isEmpty());
 
         if (LOG.isDebugEnabled()) {
-            LOG.debug(String.format("CreateDeliveriesFromMinimalState invoked with: %d warehouses.", warehouses.size()));
+            LOG.debug(String.format("Found %d deliveries from minimal state in %d ms.", deliveries.size(),
+                    System.currentTimeMillis() - started));
         }
 
-        List<String> createdDeliveries = Lists.newArrayList();
+        return deliveries;
+    }
 
-        warehouses.forEach(warehouse -> fillPositions(warehouse, minimalStatePerWarehousesAndSupplier));
+    private List<ProposedDelivery> getDeliveriesWithDefaultSupplier() {
+        Map<String, ProposedDelivery> deliveries = Maps.newLinkedHashMap();
 
-        minimalStatePerWarehousesAndSupplier.keySet().forEach(
-                warehouse -> createdDeliveries.addAll(createDeliveries(warehouse, minimalStatePerWarehousesAndSupplier.get(warehouse))));
+        jdbcTemplate.query(MINIMAL_STATES_WITH_DEFAULT_SUPPLIER, Collections.emptyMap(), (RowCallbackHandler) resultSet -> {
+            Long warehouseId = resultSet.getLong("warehouseid");
+            Long supplierId = resultSet.getLong("supplierid");
 
-        sendEmailNotifications(createdDeliveries);
+            String key = warehouseId + "_" + supplierId;
+            ProposedDelivery delivery = deliveries.get(key);
 
-        return minimalStatePerWarehousesAndSupplier;
-    }
+            if (Objects.isNull(delivery)) {
+                delivery = new ProposedDelivery(warehouseId, resultSet.getString("warehousenumber"), supplierId,
+                        resultSet.getString("suppliernumber"), resultSet.getString("suppliername"));
 
-    private void fillPositions(final Entity warehouse,
-                               final Map<Long, Multimap<Long, Entity>> minimalStatePerWarehousesAndSupplier) {
-        List<Entity> minimalStates = getMinimalStateGreaterThanZeroForWarehouse(warehouse);
+                deliveries.put(key, delivery);
+            }
+
+            MinimalStatePosition position = new MinimalStatePosition();
 
-        Map<Long, Entity> minimalStatesByProduct = minimalStates.stream().collect(
-                Collectors.toMap(minimalState -> minimalState.getBelongsToField("product").getId(), minimalState -> minimalState));
+            position.setWarehouseId(warehouseId);
+            position.setSupplierId(supplierId);
+            position.setProductId(resultSet.getLong("productid"));
+            position.setProductNumber(resultSet.getString("productnumber"));
+            position.setProductUnit(resultSet.getString("productunit"));
+            position.setMinimumState(resultSet.getBigDecimal("minimumstate"));
+            position.setQuantity(BigDecimal.ZERO);
+            position.setOrderedQuantity(resultSet.getBigDecimal("orderedquantity"));
+            position.setOptimalOrderQuantity(resultSet.getBigDecimal("optimalorderquantity"));
 
-        List<Entity> stocks = getWarehouseStockWithTooSmallMinState(warehouse,
-                minimalStates.stream().map(minimalState -> minimalState.getBelongsToField("product")).collect(Collectors.toList()));
+            delivery.getPositions().add(position);
+        });
 
-        Map<Long, Entity> stocksByProduct = stocks.stream()
-                .collect(Collectors.toMap(stock -> stock.getIntegerField("product_id").longValue(), stock -> stock));
+        return Lists.newArrayList(deliveries.values());
+    }
 
-        Multimap<Long, Entity> positions = ArrayListMultimap.create();
+    private Map<Long, Entity> getStocksByProduct(final Entity warehouse, final List<Entity> products) {
+        Map<Long, Entity> stocksByProduct = Maps.newHashMap();
 
-        minimalStatesByProduct.keySet().forEach(
-                productId -> createPositions(positions, warehouse.getId(), productId, minimalStatesByProduct, stocksByProduct));
+        for (Entity stock : getWarehouseStockWithTooSmallMinState(warehouse, products)) {
+            stocksByProduct.merge(stock.getIntegerField(L_PRODUCT_ID).longValue(), stock, this::mergeStocks);
+        }
 
-        minimalStatePerWarehousesAndSupplier.put(warehouse.getId(), positions);
+        return stocksByProduct;
     }
 
-    private void createPositions(final Multimap<Long, Entity> positions, final Long warehouseId, final Long productId,
-                                 final Map<Long, Entity> minimalStatesByProduct, final Map<Long, Entity> stocksByProduct) {
-        Entity stock = stocksByProduct.get(productId);
-        Entity minimalState = minimalStatesByProduct.get(productId);
+    // stock of product in warehouse is split by blocked for quality control
+    private Entity mergeStocks(final Entity stock, final Entity otherStock) {
+        Entity mergedStock = stock.copy();
 
-        if (Objects.isNull(stock)) {
-            deliveriesService.getDefaultSupplier(productId).ifPresent(supplier -> {
-                BigDecimal ordered = warehouseMinimalStateHelper.getOrderedQuantityForProductAndLocation(warehouseId, productId);
-
-                if (warehouseMinimalStateHelper.checkIfLowerThanMinimum(productId, ordered,
-                        minimalState.getDecimalField("minimumState"))) {
-                    positions.put(supplier.getBelongsToField(CompanyProductFields.COMPANY).getId(), minimalState);
-                }
-            });
-        } else {
-            BigDecimal statePlusOrder = BigDecimalUtils.convertNullToZero(stock.getDecimalField("orderedQuantity"))
-                    .add(BigDecimalUtils.convertNullToZero(stock.getDecimalField("quantity")), numberService.getMathContext());
+        mergedStock.setField(L_QUANTITY, BigDecimalUtils.convertNullToZero(stock.getDecimalField(L_QUANTITY)).add(
+                BigDecimalUtils.convertNullToZero(otherStock.getDecimalField(L_QUANTITY)), numberService.getMathContext()));
 
-            if (warehouseMinimalStateHelper.checkIfLowerThanMinimum(productId, statePlusOrder,
-                    stock.getDecimalField("minimumState"))) {
-                deliveriesService.getDefaultSupplier(productId).ifPresent(supplier -> positions
-                        .put(supplier.getBelongsToField(CompanyProductFields.COMPANY).getId(), minimalState));
-            }
-        }
+        return mergedStock;
     }
 
-    private List<String> createDeliveries(final Long warehouseId, final Multimap<Long, Entity> minimalStatePerWarehousesAndSupplier) {
-        List<String> deliveriesNumbers = Lists.newArrayList();
+    private boolean isLowerThanMinimum(final MinimalStatePosition position, final Entity stock) {
+        if (Objects.isNull(stock)) {
+            return warehouseMinimalStateHelper.checkIfLowerThanMinimum(position.getProductId(),
+                    BigDecimalUtils.convertNullToZero(position.getOrderedQuantity()), position.getMinimumState());
+        }
 
-        minimalStatePerWarehousesAndSupplier.keySet().forEach(supplierId -> deliveriesNumbers.add(createDelivery(warehouseId, supplierId, minimalStatePerWarehousesAndSupplier.get(supplierId))));
+        BigDecimal quantity = BigDecimalUtils.convertNullToZero(stock.getDecimalField(L_QUANTITY));
+        BigDecimal orderedQuantity = BigDecimalUtils.convertNullToZero(stock.getDecimalField(L_ORDERED_QUANTITY));
 
-        return deliveriesNumbers;
+        position.setQuantity(quantity);
+        position.setOrderedQuantity(orderedQuantity);
+
+        return warehouseMinimalStateHelper.checkIfLowerThanMinimum(position.getProductId(),
+                orderedQuantity.add(quantity, numberService.getMathContext()), stock.getDecimalField(L_MINIMUM_STATE));
     }
 
-    private String createDelivery(final Long warehouseId, final Long supplierId, final Collection<Entity> minimalStates) {
-        Entity warehouse = null;
+    /**
+     * Creates deliveries from minimal states. Notification about created deliveries is added to outbox in the same transaction
+     * and is sent after commit by notification dispatcher.
+     */
+    @Transactional
+    public List<ProposedDelivery> createDeliveriesFromMinimalState() {
+        Map<Long, Entity> warehouses = Maps.newHashMap();
+        Map<Long, Entity> products = Maps.newHashMap();
+
+        List<ProposedDelivery> deliveries = getDeliveriesFromMinimalState(warehouses, products);
 
-        if (Objects.nonNull(warehouseId)) {
-            warehouse = getLocationDD()
-                    .get(warehouseId);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(String.format("CreateDeliveriesFromMinimalState invoked with: %d deliveries.", deliveries.size()));
         }
 
-        Entity supplier = companyService.getCompany(supplierId);
+        Map<Long, Entity> suppliers = getEntitiesById(getCompanyDD(),
+                deliveries.stream().map(ProposedDelivery::getSupplierId).collect(Collectors.toSet()));
+        Map<Long, BigDecimal> conversions = Maps.newHashMap();
+
+        Entity currency = getNewDeliveryCurrency();
+        String deliveryAddress = deliveriesService.getDeliveryAddressDefaultValue();
+
+        List<String> createdDeliveries = Lists.newArrayList();
+
+        for (ProposedDelivery delivery : deliveries) {
+            String number = createDelivery(warehouses.get(delivery.getWarehouseId()), suppliers.get(delivery.getSupplierId()),
+                    currency, deliveryAddress, delivery.getPositions(), products, conversions);
+
+            delivery.setNumber(number);
+
+            createdDeliveries.add(number);
+        }
 
-        return createDeliveries(warehouse, supplier, Lists.newArrayList(minimalStates));
+        enqueueEmailNotifications(createdDeliveries);
+
+        return deliveries;
     }
 
-    private String createDeliveries(final Entity location, final Entity supplier, final List<Entity> warehouseMinimumStates) {
+    private String createDelivery(final Entity location, final Entity supplier, final Entity currency,
+                                  final String deliveryAddress, final List<MinimalStatePosition> positions,
+                                  final Map<Long, Entity> products, final Map<Long, BigDecimal> conversions) {
         DataDefinition deliveryDataDefinition = deliveriesService.getDeliveryDD();
         Entity delivery = deliveryDataDefinition.create();
 
@@ -204,14 +321,13 @@ public class DeliveriesMinStateHelper {
         delivery.setField(DeliveryFields.SUPPLIER, supplier);
         delivery.setField(DeliveryFields.LOCATION, location);
         delivery.setField(DeliveryFields.STATE, DeliveryState.DRAFT);
-        delivery.setField(DeliveryFields.CURRENCY, getNewDeliveryCurrency());
-        delivery.setField(DeliveryFields.DELIVERY_ADDRESS, deliveriesService.getDeliveryAddressDefaultValue());
+        delivery.setField(DeliveryFields.CURRENCY, currency);
+        delivery.setField(DeliveryFields.DELIVERY_ADDRESS, deliveryAddress);
         delivery.setField(DeliveryFields.EXTERNAL_SYNCHRONIZED, true);
+        delivery.setField(DeliveryFields.ORDERED_PRODUCTS, createOrderedProducts(positions, products, conversions));
 
         delivery = deliveryDataDefinition.save(delivery);
 
-        setDeliveryProducts(delivery, warehouseMinimumStates);
-
         if (LOG.isDebugEnabled()) {
             LOG.debug(String.format("Delivery created with number: %s", delivery.getField(DeliveryFields.NUMBER)));
         }
@@ -232,29 +348,29 @@ public class DeliveriesMinStateHelper {
                 DeliveriesConstants.MODEL_DELIVERY);
     }
 
-    private List<Entity> setDeliveryProducts(final Entity delivery, final List<Entity> warehouseMinimumStates) {
-        List<Entity> products = Lists.newArrayList();
+    private List<Entity> createOrderedProducts(final List<MinimalStatePosition> positions, final Map<Long, Entity> products,
+                                               final Map<Long, BigDecimal> conversions) {
+        List<Entity> orderedProducts = Lists.newArrayList();
 
-        for (Entity minimumState : warehouseMinimumStates) {
-            Entity deliveredProduct = deliveriesService.getOrderedProductDD().create();
+        for (MinimalStatePosition position : positions) {
+            Entity orderedProduct = deliveriesService.getOrderedProductDD().create();
 
-            Entity product = minimumState.getBelongsToField("product");
-            BigDecimal orderedQuantity = BigDecimalUtils.convertNullToZero(minimumState.getField("optimalOrderQuantity"));
-            BigDecimal conversion = getConversion(product);
+            Entity product = products.get(position.getProductId());
+            BigDecimal orderedQuantity = BigDecimalUtils.convertNullToZero(position.getOptimalOrderQuantity());
+            BigDecimal conversion = conversions.computeIfAbsent(product.getId(), productId -> getConversion(product));
 
-            deliveredProduct.setField(OrderedProductFields.DELIVERY, delivery);
-            deliveredProduct.setField(OrderedProductFields.PRODUCT, product);
-            deliveredProduct.setField(OrderedProductFields.ORDERED_QUANTITY, orderedQuantity);
-            deliveredProduct.setField(OrderedProductFields.PRICE_PER_UNIT,
+            orderedProduct.setField(OrderedProductFields.PRODUCT, product);
+            orderedProduct.setField(OrderedProductFields.ORDERED_QUANTITY, orderedQuantity);
+            orderedProduct.setField(OrderedProductFields.PRICE_PER_UNIT,
                     product.getDecimalField(ProductFieldsCNFP.LAST_PURCHASE_COST));
-            deliveredProduct.setField(OrderedProductFields.CONVERSION, conversion);
-            deliveredProduct.setField(OrderedProductFields.ADDITIONAL_QUANTITY,
+            orderedProduct.setField(OrderedProductFields.CONVERSION, conversion);
+            orderedProduct.setField(OrderedProductFields.ADDITIONAL_QUANTITY,
                     orderedQuantity.multiply(conversion, numberService.getMathContext()));
 
-            products.add(deliveriesService.getOrderedProductDD().save(deliveredProduct));
+            orderedProducts.add(orderedProduct);
         }
 
-        return products;
+        return orderedProducts;
     }
 
     private BigDecimal getConversion(final Entity product) {
@@ -276,17 +392,15 @@ public class DeliveriesMinStateHelper {
         }
     }
 
-    private List<Entity> getWarehousesFromMinimalState() {
-        String query = "SELECT distinct state.location FROM #warehouseMinimalState_warehouseMinimumState state";
-
-        return getWarehouseMinimumStateDD().find(query).list().getEntities();
-    }
+    private Map<Long, Entity> getEntitiesById(final DataDefinition dataDefinition, final Collection<Long> ids) {
+        Map<Long, Entity> entitiesById = Maps.newHashMap();
 
-    public List<Entity> getMinimalStateGreaterThanZeroForWarehouse(final Entity warehouse) {
-        String query = "SELECT state FROM #warehouseMinimalState_warehouseMinimumState AS state WHERE state.minimumState > 0"
-                + " and state.location.id = :warehouseId";
+        for (List<Long> idsPartition : Lists.partition(Lists.newArrayList(ids), L_PARTITION_SIZE)) {
+            entitiesById.putAll(dataDefinition.find().add(SearchRestrictions.in("id", idsPartition)).list().getEntities()
+                    .stream().collect(Collectors.toMap(Entity::getId, Function.identity())));
+        }
 
-        return getWarehouseMinimumStateDD().find(query).setParameter("warehouseId", warehouse.getId()).list().getEntities();
+        return entitiesById;
     }
 
     // WARNING unused argument is used in aspect in plugin integration
@@ -302,17 +416,21 @@ public class DeliveriesMinStateHelper {
                 .get(EmailNotificationsConstants.PLUGIN_IDENTIFIER, EmailNotificationsConstants.MODEL_STAFF_NOTIFICATION);
     }
 
+    private DataDefinition getResourceStockDtoDD() {
+        return dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
+                MaterialFlowResourcesConstants.MODEL_RESOURCE_STOCK_DTO);
+    }
+
     private DataDefinition getLocationDD() {
         return dataDefinitionService.get(MaterialFlowConstants.PLUGIN_IDENTIFIER, MaterialFlowConstants.MODEL_LOCATION);
     }
 
-    private DataDefinition getResourceStockDtoDD() {
-        return dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
-                MaterialFlowResourcesConstants.MODEL_RESOURCE_STOCK_DTO);
+    private DataDefinition getCompanyDD() {
+        return dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_COMPANY);
     }
 
-    private DataDefinition getWarehouseMinimumStateDD() {
-        return dataDefinitionService.get("warehouseMinimalState", "warehouseMinimumState");
+    private DataDefinition getProductDD() {
+        return dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_PRODUCT);
     }
 
 }
@@ -0,0 +1,44 @@
+package com.qcadoo.mes.deliveriesMinState.controllers;
+
+import java.io.IOException;
+import java.util.List;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import com.qcadoo.mes.deliveriesMinState.DeliveriesMinStateHelper;
+import com.qcadoo.mes.deliveriesMinState.constants.DeliveriesMinStateConstants;
+import com.qcadoo.mes.deliveriesMinState.dto.ProposedDelivery;
+import com.qcadoo.security.api.SecurityService;
+
+@Controller
+@RequestMapping(DeliveriesMinStateConstants.PLUGIN_IDENTIFIER)
+public class DeliveriesMinStateController {
+
+    private static final String L_ROLE_DELIVERIES = "ROLE_DELIVERIES";
+
+    @Autowired
+    private DeliveriesMinStateHelper deliveriesMinStateHelper;
+
+    @Autowired
+    private SecurityService securityService;
+
+    @ResponseBody
+    @RequestMapping(value = "/proposedDeliveries", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    public List<ProposedDelivery> getProposedDeliveries(final HttpServletResponse response) throws IOException {
+        if (!securityService.hasCurrentUserRole(L_ROLE_DELIVERIES)) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+
+            return null;
+        }
+
+        return deliveriesMinStateHelper.getDeliveriesFromMinimalState();
+    }
+
+}
@@ -0,0 +1,97 @@
+package com.qcadoo.mes.deliveriesMinState.dto;
+
+import java.math.BigDecimal;
+
+public class MinimalStatePosition {
+
+    private Long warehouseId;
+
+    private Long supplierId;
+
+    private Long productId;
+
+    private String productNumber;
+
+    private String productUnit;
+
+    private BigDecimal minimumState;
+
+    private BigDecimal quantity;
+
+    private BigDecimal orderedQuantity;
+
+    private BigDecimal optimalOrderQuantity;
+
+    public Long getWarehouseId() {
+        return warehouseId;
+    }
+
+    public void setWarehouseId(Long warehouseId) {
+        this.warehouseId = warehouseId;
+    }
+
+    public Long getSupplierId() {
+        return supplierId;
+    }
+
+    public void setSupplierId(Long supplierId) {
+        this.supplierId = supplierId;
+    }
+
+    public Long getProductId() {
+        return productId;
+    }
+
+    public void setProductId(Long productId) {
+        this.productId = productId;
+    }
+
+    public String getProductNumber() {
+        return productNumber;
+    }
+
+    public void setProductNumber(String productNumber) {
+        this.productNumber = productNumber;
+    }
+
+    public String getProductUnit() {
+        return productUnit;
+    }
+
+    public void setProductUnit(String productUnit) {
+        this.productUnit = productUnit;
+    }
+
+    public BigDecimal getMinimumState() {
+        return minimumState;
+    }
+
+    public void setMinimumState(BigDecimal minimumState) {
+        this.minimumState = minimumState;
+    }
+
+    public BigDecimal getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(BigDecimal quantity) {
+        this.quantity = quantity;
+    }
+
+    public BigDecimal getOrderedQuantity() {
+        return orderedQuantity;
+    }
+
+    public void setOrderedQuantity(BigDecimal orderedQuantity) {
+        this.orderedQuantity = orderedQuantity;
+    }
+
+    public BigDecimal getOptimalOrderQuantity() {
+        return optimalOrderQuantity;
+    }
+
+    public void setOptimalOrderQuantity(BigDecimal optimalOrderQuantity) {
+        this.optimalOrderQuantity = optimalOrderQuantity;
+    }
+
+}
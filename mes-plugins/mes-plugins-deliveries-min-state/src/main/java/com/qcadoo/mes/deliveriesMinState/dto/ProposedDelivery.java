@@ -0,0 +1,67 @@
+package com.qcadoo.mes.deliveriesMinState.dto;
+
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+public class ProposedDelivery {
+
+    private Long warehouseId;
+
+    private String warehouseNumber;
+
+    private Long supplierId;
+
+    private String supplierNumber;
+
+    private String supplierName;
+
+    private String number;
+
+    private final List<MinimalStatePosition> positions = Lists.newArrayList();
+
+    public ProposedDelivery(final Long warehouseId, final String warehouseNumber, final Long supplierId,
+            final String supplierNumber, final String supplierName) {
+        this.warehouseId = warehouseId;
+        this.warehouseNumber = warehouseNumber;
+        this.supplierId = supplierId;
+        this.supplierNumber = supplierNumber;
+        this.supplierName = supplierName;
+    }
+
+    public Long getWarehouseId() {
+        return warehouseId;
+    }
+
+    public String getWarehouseNumber() {
+        return warehouseNumber;
+    }
+
+    public Long getSupplierId() {
+        return supplierId;
+    }
+
+    public String getSupplierNumber() {
+        return supplierNumber;
+    }
+
+    public String getSupplierName() {
+        return supplierName;
+    }
+
+    /**
+     * Number of created delivery, empty if delivery is only proposed.
+     */
+    public String getNumber() {
+        return number;
+    }
+
+    public void setNumber(String number) {
+        this.number = number;
+    }
+
+    public List<MinimalStatePosition> getPositions() {
+        return positions;
+    }
+
+}
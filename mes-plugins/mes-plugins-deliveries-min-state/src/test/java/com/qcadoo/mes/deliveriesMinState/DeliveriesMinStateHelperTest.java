@@ -0,0 +1,409 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.deliveriesMinState;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.basic.constants.BasicConstants;
+import com.qcadoo.mes.deliveriesMinState.dto.MinimalStatePosition;
+import com.qcadoo.mes.deliveriesMinState.dto.ProposedDelivery;
+import com.qcadoo.mes.materialFlow.constants.MaterialFlowConstants;
+import com.qcadoo.mes.materialFlowResources.constants.MaterialFlowResourcesConstants;
+import com.qcadoo.mes.warehouseMinimalState.WarehouseMinimalStateHelper;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.NumberService;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchCriterion;
+import com.qcadoo.model.api.search.SearchQueryBuilder;
+import com.qcadoo.model.api.search.SearchResult;
+
+public class DeliveriesMinStateHelperTest {
+
+    private static final Long L_WAREHOUSE_ID = 1L;
+
+    private DeliveriesMinStateHelper deliveriesMinStateHelper;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Mock
+    private DataDefinitionService dataDefinitionService;
+
+    @Mock
+    private NumberService numberService;
+
+    @Mock
+    private DataDefinition resourceStockDtoDD, locationDD, productDD;
+
+    @Mock
+    private SearchQueryBuilder stockQuery;
+
+    @Mock
+    private Entity warehouse;
+
+    private final List<MinimalState> minimalStates = Lists.newArrayList();
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        deliveriesMinStateHelper = new DeliveriesMinStateHelper();
+
+        ReflectionTestUtils.setField(deliveriesMinStateHelper, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(deliveriesMinStateHelper, "dataDefinitionService", dataDefinitionService);
+        ReflectionTestUtils.setField(deliveriesMinStateHelper, "numberService", numberService);
+        ReflectionTestUtils.setField(deliveriesMinStateHelper, "warehouseMinimalStateHelper",
+                new WarehouseMinimalStateHelper());
+
+        given(dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
+                MaterialFlowResourcesConstants.MODEL_RESOURCE_STOCK_DTO)).willReturn(resourceStockDtoDD);
+        given(dataDefinitionService.get(MaterialFlowConstants.PLUGIN_IDENTIFIER, MaterialFlowConstants.MODEL_LOCATION))
+                .willReturn(locationDD);
+        given(dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_PRODUCT)).willReturn(productDD);
+        given(numberService.getMathContext()).willReturn(MathContext.DECIMAL64);
+        given(warehouse.getId()).willReturn(L_WAREHOUSE_ID);
+
+        given(resourceStockDtoDD.find(anyString())).willReturn(stockQuery);
+        given(stockQuery.setParameter(eq("warehouseId"), anyInt())).willAnswer(invocation -> {
+            long warehouseId = ((Integer) invocation.getArguments()[1]).longValue();
+
+            return searchQuery(minimalStates.stream()
+                    .filter(minimalState -> minimalState.warehouseId == warehouseId && Objects.nonNull(minimalState.stock)
+                            && minimalState.minimumState.signum() > 0)
+                    .flatMap(minimalState -> stocks(minimalState).stream()).collect(Collectors.toList()));
+        });
+
+        stubEntities(locationDD, () -> minimalStates.stream().map(minimalState -> minimalState.warehouseId));
+        stubEntities(productDD, () -> minimalStates.stream().map(minimalState -> minimalState.productId));
+    }
+
+    @Test
+    public void shouldQueryMinimalStatesWithoutStocks() {
+        // given
+        String query = DeliveriesMinStateHelper.MINIMAL_STATES_WITH_DEFAULT_SUPPLIER;
+
+        // then
+        assertTrue(query.contains("minimumstate.minimumstate > 0"));
+        assertTrue(query.contains("product.entitytype = '01particularProduct'"));
+        assertTrue(query.contains("companyproduct.isdefault = true AND companyproduct.product_id IN (product.id, product.parent_id)"));
+        assertTrue(query.contains("ORDER BY companyproduct.product_id = product.id DESC"));
+        assertTrue(query.contains("delivery.active = true"));
+        assertTrue(query.contains("delivery.state IN ('01draft', '02prepared', '03duringCorrection', '05approved')"));
+        assertFalse(query.contains("materialflowresources_resource "));
+    }
+
+    @Test
+    public void shouldProposeTheSamePositionsAsPerProductCheck() {
+        Random random = new Random(18L);
+
+        willAnswer(invocation -> {
+            RowCallbackHandler handler = (RowCallbackHandler) invocation.getArguments()[2];
+
+            for (MinimalState minimalState : minimalStates) {
+                if (isReturnedByQuery(minimalState)) {
+                    handler.processRow(resultSet(minimalState));
+                }
+            }
+
+            return null;
+        }).given(jdbcTemplate).query(anyString(), anyMap(), any(RowCallbackHandler.class));
+
+        for (int scenario = 0; scenario < 300; scenario++) {
+            // given
+            minimalStates.clear();
+            minimalStates.addAll(randomMinimalStates(random));
+
+            // when
+            List<ProposedDelivery> deliveries = deliveriesMinStateHelper.getDeliveriesFromMinimalState();
+
+            // then
+            Set<String> proposed = Sets.newHashSet();
+
+            for (ProposedDelivery delivery : deliveries) {
+                assertFalse(delivery.getPositions().isEmpty());
+
+                for (MinimalStatePosition position : delivery.getPositions()) {
+                    assertEquals(delivery.getWarehouseId(), position.getWarehouseId());
+                    assertEquals(delivery.getSupplierId(), position.getSupplierId());
+                    assertTrue(proposed.add(key(position.getWarehouseId(), position.getSupplierId(), position.getProductId())));
+                }
+            }
+
+            assertEquals("scenario " + scenario, perProductCheck(minimalStates), proposed);
+            assertEquals(deliveries.size(), deliveries.stream()
+                    .map(delivery -> delivery.getWarehouseId() + "_" + delivery.getSupplierId()).distinct().count());
+        }
+    }
+
+    @Test
+    public void shouldTakeStocksOfWarehouseFromResourceStockDto() {
+        // given
+        SearchQueryBuilder warehouseStockQuery = searchQuery(Collections.emptyList());
+
+        given(stockQuery.setParameter("warehouseId", L_WAREHOUSE_ID.intValue())).willReturn(warehouseStockQuery);
+
+        // when
+        List<Entity> stocks = deliveriesMinStateHelper.getWarehouseStockWithTooSmallMinState(warehouse,
+                Collections.emptyList());
+
+        // then
+        verify(resourceStockDtoDD).find("SELECT stock FROM #materialFlowResources_resourceStockDto AS stock"
+                + " WHERE stock.minimumState > 0 AND stock.location_id = :warehouseId");
+        verify(stockQuery).setParameter("warehouseId", L_WAREHOUSE_ID.intValue());
+        assertTrue(stocks.isEmpty());
+    }
+
+    private List<MinimalState> randomMinimalStates(final Random random) {
+        List<MinimalState> minimalStates = Lists.newArrayList();
+
+        int warehouses = 1 + random.nextInt(3);
+
+        for (long warehouseId = 1; warehouseId <= warehouses; warehouseId++) {
+            int products = random.nextInt(8);
+
+            for (long productId = 1; productId <= products; productId++) {
+                BigDecimal stock = random.nextInt(4) == 0 ? null : BigDecimal.valueOf(random.nextInt(10));
+
+                minimalStates.add(new MinimalState(warehouseId, productId, BigDecimal.valueOf(random.nextInt(12) - 2),
+                        stock, BigDecimal.valueOf(random.nextInt(6)), random.nextInt(3) == 0 ? null : (long) random.nextInt(3),
+                        random.nextBoolean() ? null : 10L + random.nextInt(2), random.nextInt(8) != 0,
+                        random.nextInt(3) == 0));
+            }
+        }
+
+        return minimalStates;
+    }
+
+    // rows the minimal states query returns, following its joins and WHERE clause
+    private boolean isReturnedByQuery(final MinimalState minimalState) {
+        return minimalState.minimumState.signum() > 0 && minimalState.particularProduct
+                && Objects.nonNull(minimalState.defaultSupplierId());
+    }
+
+    // rows of resource stock dto of product, split by blocked for quality control
+    private List<Entity> stocks(final MinimalState minimalState) {
+        List<Entity> stocks = Lists.newArrayList();
+
+        if (minimalState.partiallyBlocked) {
+            BigDecimal blocked = minimalState.stock.divide(BigDecimal.valueOf(2));
+
+            stocks.add(stock(minimalState, blocked));
+            stocks.add(stock(minimalState, minimalState.stock.subtract(blocked)));
+        } else {
+            stocks.add(stock(minimalState, minimalState.stock));
+        }
+
+        return stocks;
+    }
+
+    private Entity stock(final MinimalState minimalState, final BigDecimal quantity) {
+        Entity stock = mock(Entity.class);
+
+        given(stock.getIntegerField("product_id")).willReturn(minimalState.productId.intValue());
+        given(stock.getDecimalField("minimumState")).willReturn(minimalState.minimumState);
+        given(stock.getDecimalField("quantity")).willReturn(quantity);
+        given(stock.getDecimalField("orderedQuantity")).willReturn(minimalState.ordered);
+        given(stock.copy()).willAnswer(invocation -> {
+            Map<String, Object> fields = Maps.newHashMap();
+            Entity copy = mock(Entity.class);
+
+            willAnswer(setInvocation -> fields.put((String) setInvocation.getArguments()[0],
+                    setInvocation.getArguments()[1])).given(copy).setField(anyString(), any());
+            given(copy.getIntegerField("product_id")).willReturn(minimalState.productId.intValue());
+            given(copy.getDecimalField("minimumState")).willReturn(minimalState.minimumState);
+            given(copy.getDecimalField("quantity")).willAnswer(getInvocation -> fields.containsKey("quantity")
+                    ? fields.get("quantity") : quantity);
+            given(copy.getDecimalField("orderedQuantity")).willReturn(minimalState.ordered);
+
+            return copy;
+        });
+
+        return stock;
+    }
+
+    // port of per-product check, which created positions before the set-based query
+    private Set<String> perProductCheck(final List<MinimalState> minimalStates) {
+        Set<String> positions = Sets.newHashSet();
+        Map<Long, List<MinimalState>> minimalStatesByWarehouse = minimalStates.stream()
+                .filter(minimalState -> minimalState.minimumState.compareTo(BigDecimal.ZERO) > 0)
+                .collect(Collectors.groupingBy(minimalState -> minimalState.warehouseId, Maps::newHashMap,
+                        Collectors.toList()));
+
+        minimalStatesByWarehouse.forEach((warehouseId, warehouseMinimalStates) -> {
+            for (MinimalState minimalState : warehouseMinimalStates) {
+                Long supplierId = minimalState.particularProduct ? minimalState.defaultSupplierId() : null;
+
+                if (Objects.isNull(minimalState.stock)) {
+                    if (Objects.nonNull(supplierId) && minimalState.ordered.compareTo(minimalState.minimumState) == -1) {
+                        positions.add(key(warehouseId, supplierId, minimalState.productId));
+                    }
+                } else if (minimalState.ordered.add(minimalState.stock).compareTo(minimalState.minimumState) == -1
+                        && Objects.nonNull(supplierId)) {
+                    positions.add(key(warehouseId, supplierId, minimalState.productId));
+                }
+            }
+        });
+
+        return positions;
+    }
+
+    private String key(final Long warehouseId, final Long supplierId, final Long productId) {
+        return warehouseId + "_" + supplierId + "_" + productId;
+    }
+
+    private SearchQueryBuilder searchQuery(final List<Entity> entities) {
+        SearchQueryBuilder searchQueryBuilder = mock(SearchQueryBuilder.class);
+        SearchResult searchResult = mock(SearchResult.class);
+
+        given(searchQueryBuilder.list()).willReturn(searchResult);
+        given(searchResult.getEntities()).willReturn(entities);
+
+        return searchQueryBuilder;
+    }
+
+    private void stubEntities(final DataDefinition dataDefinition,
+            final Supplier<Stream<Long>> ids) {
+        SearchCriteriaBuilder searchCriteriaBuilder = mock(SearchCriteriaBuilder.class);
+        SearchResult searchResult = mock(SearchResult.class);
+
+        given(dataDefinition.find()).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.add(any(SearchCriterion.class))).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.list()).willReturn(searchResult);
+        given(searchResult.getEntities()).willAnswer(invocation -> ids.get().distinct().map(id -> {
+            Entity entity = mock(Entity.class);
+
+            given(entity.getId()).willReturn(id);
+
+            return entity;
+        }).collect(Collectors.toList()));
+    }
+
+    private ResultSet resultSet(final MinimalState minimalState) throws SQLException {
+        Map<String, Object> row = Maps.newHashMap();
+
+        row.put("warehouseid", minimalState.warehouseId);
+        row.put("warehousenumber", "W" + minimalState.warehouseId);
+        row.put("supplierid", minimalState.defaultSupplierId());
+        row.put("suppliernumber", "S" + minimalState.defaultSupplierId());
+        row.put("suppliername", "S" + minimalState.defaultSupplierId());
+        row.put("productid", minimalState.productId);
+        row.put("productnumber", "P" + minimalState.productId);
+        row.put("productunit", "szt");
+        row.put("minimumstate", minimalState.minimumState);
+        row.put("orderedquantity", minimalState.ordered);
+        row.put("optimalorderquantity", BigDecimal.ZERO);
+
+        ResultSet resultSet = mock(ResultSet.class);
+
+        given(resultSet.getLong(anyString())).willAnswer(invocation -> {
+            Object value = row.get(invocation.getArguments()[0]);
+
+            return Objects.isNull(value) ? 0L : ((Number) value).longValue();
+        });
+        given(resultSet.getString(anyString())).willAnswer(invocation -> (String) row.get(invocation.getArguments()[0]));
+        given(resultSet.getBigDecimal(anyString())).willAnswer(
+                invocation -> (BigDecimal) row.get(invocation.getArguments()[0]));
+
+        return resultSet;
+    }
+
+    private static class MinimalState {
+
+        private final Long warehouseId;
+
+        private final Long productId;
+
+        private final BigDecimal minimumState;
+
+        private final BigDecimal stock;
+
+        private final BigDecimal ordered;
+
+        private final Long supplierId;
+
+        private final Long familySupplierId;
+
+        private final boolean particularProduct;
+
+        private final boolean partiallyBlocked;
+
+        MinimalState(final Long warehouseId, final Long productId, final BigDecimal minimumState, final BigDecimal stock,
+                final BigDecimal ordered, final Long supplierId, final Long familySupplierId, final boolean particularProduct,
+                final boolean partiallyBlocked) {
+            this.warehouseId = warehouseId;
+            this.productId = productId;
+            this.minimumState = minimumState;
+            this.stock = stock;
+            this.ordered = ordered;
+            this.supplierId = supplierId;
+            this.familySupplierId = familySupplierId;
+            this.particularProduct = particularProduct;
+            this.partiallyBlocked = partiallyBlocked;
+        }
+
+        Long defaultSupplierId() {
+            return Objects.isNull(supplierId) ? familySupplierId : supplierId;
+        }
+
+    }
+
+}
@@ -33,4 +33,6 @@ public final class EmailNotificationsConstants {
 
     public static final String MODEL_STAFF_NOTIFICATION = "staffNotification";
 
+    public static final String MODEL_NOTIFICATION_OUTBOX = "notificationOutbox";
+
 }
@@ -0,0 +1,42 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.emailNotifications.constants;
+
+public final class NotificationOutboxFields {
+
+    private NotificationOutboxFields() {
+    }
+
+    public static final String TYPE = "type";
+    public static final String RECIPIENTS = "recipients";
+    public static final String PAYLOAD = "payload";
+    public static final String DEDUP_KEY = "dedupKey";
+    public static final String STATUS = "status";
+    public static final String ATTEMPTS = "attempts";
+    public static final String NEXT_ATTEMPT_DATE = "nextAttemptDate";
+    public static final String LAST_ERROR = "lastError";
+    public static final String CREATE_DATE = "createDate";
+    public static final String SENT_DATE = "sentDate";
+
+}
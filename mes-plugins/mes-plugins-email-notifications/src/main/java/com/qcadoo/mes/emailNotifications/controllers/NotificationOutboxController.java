@@ -0,0 +1,43 @@
+package com.qcadoo.mes.emailNotifications.controllers;
+
+import java.io.IOException;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import com.qcadoo.mes.emailNotifications.constants.EmailNotificationsConstants;
+import com.qcadoo.mes.emailNotifications.notifications.outbox.NotificationOutboxDispatcher;
+import com.qcadoo.security.api.SecurityService;
+
+@Controller
+@RequestMapping(EmailNotificationsConstants.PLUGIN_IDENTIFIER)
+public class NotificationOutboxController {
+
+    private static final String L_ROLE_ADMIN = "ROLE_ADMIN";
+
+    @Autowired
+    private NotificationOutboxDispatcher notificationOutboxDispatcher;
+
+    @Autowired
+    private SecurityService securityService;
+
+    @ResponseBody
+    @RequestMapping(value = "/outbox/statistics", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    public Map<String, Object> getOutboxStatistics(final HttpServletResponse response) throws IOException {
+        if (!securityService.hasCurrentUserRole(L_ROLE_ADMIN)) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+
+            return null;
+        }
+
+        return notificationOutboxDispatcher.getStatistics();
+    }
+
+}
@@ -0,0 +1,74 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.emailNotifications.notifications.outbox;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Date;
+
+/**
+ * Writes notifications to log and, if {@code notificationTransportFile} is set, appends them to that file instead of sending
+ * them. Used on development and test environments, where no mailing api key is available.
+ */
+@Service
+public class LogNotificationTransport implements NotificationTransport {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LogNotificationTransport.class);
+
+    @Value("${notificationTransportFile:}")
+    private String notificationTransportFile;
+
+    @Override
+    public String getName() {
+        return "log";
+    }
+
+    @Override
+    public void send(final OutboxNotification notification) {
+        String line = String.format("%s %s %d to: %s - %s", new Date(), notification.getType(), notification.getId(),
+                String.join(",", notification.getRecipients()), String.join(", ", notification.getPayload()));
+
+        LOG.info(line);
+
+        if (StringUtils.isNotEmpty(notificationTransportFile)) {
+            try {
+                Files.write(Paths.get(notificationTransportFile), Collections.singletonList(line), StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                throw new IllegalStateException("Notification " + notification.getId() + " was not written to file", e);
+            }
+        }
+    }
+
+}
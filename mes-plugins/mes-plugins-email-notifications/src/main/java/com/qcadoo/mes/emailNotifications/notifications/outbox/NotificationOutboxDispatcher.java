@@ -0,0 +1,214 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.emailNotifications.notifications.outbox;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.emailNotifications.constants.EmailNotificationsConstants;
+import com.qcadoo.plugin.api.RunIfEnabled;
+import com.qcadoo.tenant.api.MultiTenantService;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends notifications from outbox in batches, outside of any business transaction. Notification, which wasn't sent, is tried
+ * again with exponentially growing delay, until it fails {@code notificationOutboxMaxAttempts} times. Sent notifications are
+ * deleted after {@code notificationOutboxRetentionDays}, failed ones are kept.
+ */
+@Service
+@RunIfEnabled(EmailNotificationsConstants.PLUGIN_IDENTIFIER)
+public class NotificationOutboxDispatcher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NotificationOutboxDispatcher.class);
+
+    private static final int L_MAX_ERROR_LENGTH = 2000;
+
+    @Value("${notificationTransport:sendinblue}")
+    private String notificationTransport;
+
+    @Value("${notificationOutboxBatchSize:50}")
+    private int batchSize;
+
+    @Value("${notificationOutboxMaxBatches:20}")
+    private int maxBatches;
+
+    @Value("${notificationOutboxLeaseSeconds:300}")
+    private long leaseSeconds;
+
+    @Value("${notificationOutboxRetryDelaySeconds:60}")
+    private long retryDelaySeconds;
+
+    @Value("${notificationOutboxMaxRetryDelaySeconds:21600}")
+    private long maxRetryDelaySeconds;
+
+    @Value("${notificationOutboxMaxAttempts:8}")
+    private int maxAttempts;
+
+    @Value("${notificationOutboxRetentionDays:30}")
+    private int retentionDays;
+
+    @Value("${notificationOutboxPurgeSize:1000}")
+    private int purgeSize;
+
+    @Autowired
+    private MultiTenantService multiTenantService;
+
+    @Autowired
+    private NotificationOutboxService notificationOutboxService;
+
+    @Autowired
+    private List<NotificationTransport> transports;
+
+    private NotificationTransport transport;
+
+    private final AtomicLong sent = new AtomicLong();
+
+    private final AtomicLong retried = new AtomicLong();
+
+    private final AtomicLong failed = new AtomicLong();
+
+    private final AtomicLong batches = new AtomicLong();
+
+    private final AtomicLong purged = new AtomicLong();
+
+    private volatile long lastDispatchTime;
+
+    private volatile double lastThroughput;
+
+    @PostConstruct
+    public void init() {
+        transport = transports.stream().filter(candidate -> candidate.getName().equals(notificationTransport)).findFirst()
+                .orElseThrow(() -> new IllegalStateException("Unknown notification transport: " + notificationTransport));
+    }
+
+    public void dispatchNotificationsTrigger() {
+        multiTenantService.doInMultiTenantContext(this::dispatchNotifications);
+    }
+
+    public void dispatchNotifications() {
+        long started = System.currentTimeMillis();
+        int dispatched = 0;
+
+        for (int batch = 0; batch < maxBatches; batch++) {
+            List<OutboxNotification> notifications = notificationOutboxService.claim(batchSize, leaseSeconds);
+
+            if (notifications.isEmpty()) {
+                break;
+            }
+
+            batches.incrementAndGet();
+
+            dispatch(notifications);
+
+            dispatched += notifications.size();
+
+            if (notifications.size() < batchSize) {
+                break;
+            }
+        }
+
+        purged.addAndGet(notificationOutboxService.purgeSent(retentionDays, purgeSize));
+
+        long duration = System.currentTimeMillis() - started;
+
+        lastDispatchTime = started;
+
+        if (dispatched > 0) {
+            lastThroughput = dispatched * 1000D / Math.max(duration, 1L);
+
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(String.format("Dispatched %d notifications by %s transport in %d ms.", dispatched, transport.getName(),
+                        duration));
+            }
+        }
+    }
+
+    private void dispatch(final List<OutboxNotification> notifications) {
+        List<Long> sentIds = Lists.newArrayList();
+
+        for (OutboxNotification notification : notifications) {
+            try {
+                transport.send(notification);
+
+                sentIds.add(notification.getId());
+            } catch (RuntimeException e) {
+                String error = StringUtils.abbreviate(StringUtils.defaultString(e.getMessage(), e.getClass().getName()),
+                        L_MAX_ERROR_LENGTH);
+
+                if (notification.getAttempts() >= maxAttempts) {
+                    LOG.error(String.format("Notification %d failed after %d attempts.", notification.getId(),
+                            notification.getAttempts()), e);
+
+                    notificationOutboxService.markFailed(notification.getId(), error);
+
+                    failed.incrementAndGet();
+                } else {
+                    LOG.warn(String.format("Notification %d not sent, attempt %d: %s", notification.getId(),
+                            notification.getAttempts(), error));
+
+                    notificationOutboxService.markRetry(notification.getId(), getRetryDelay(notification.getAttempts()),
+                            error);
+
+                    retried.incrementAndGet();
+                }
+            }
+        }
+
+        notificationOutboxService.markSent(sentIds);
+
+        sent.addAndGet(sentIds.size());
+    }
+
+    long getRetryDelay(final int attempts) {
+        int exponent = Math.min(Math.max(attempts - 1, 0), 30);
+
+        return Math.min(retryDelaySeconds << exponent, maxRetryDelaySeconds);
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = Maps.newLinkedHashMap();
+
+        statistics.put("transport", transport.getName());
+        statistics.put("sent", sent.get());
+        statistics.put("retried", retried.get());
+        statistics.put("failed", failed.get());
+        statistics.put("batches", batches.get());
+        statistics.put("purged", purged.get());
+        statistics.put("lastDispatchTime", lastDispatchTime);
+        statistics.put("lastThroughputPerSecond", lastThroughput);
+        statistics.put("queueDepth", notificationOutboxService.getQueueDepth());
+
+        return statistics;
+    }
+
+}
@@ -0,0 +1,205 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.emailNotifications.notifications.outbox;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Durable queue of notifications. Notifications are enqueued in transaction of business operation, so they are sent only when
+ * that operation is committed, and they are sent later by {@link NotificationOutboxDispatcher}.
+ */
+@Service
+public class NotificationOutboxService {
+
+    private static final String L_SEPARATOR = "\n";
+
+    private static final String L_INSERT = "INSERT INTO emailnotifications_notificationoutbox "
+            + "(type, recipients, payload, dedupkey, status, attempts, nextattemptdate, createdate) "
+            + "VALUES (:type, :recipients, :payload, :dedupKey, '01pending', 0, now(), now()) "
+            + "ON CONFLICT (dedupkey) DO NOTHING";
+
+    private static final String L_CLAIM = "UPDATE emailnotifications_notificationoutbox "
+            + "SET status = '02sending', attempts = attempts + 1, "
+            + "nextattemptdate = now() + make_interval(secs => :leaseSeconds) "
+            + "WHERE id IN (SELECT id FROM emailnotifications_notificationoutbox "
+            + "WHERE status IN ('01pending', '02sending') AND nextattemptdate <= now() "
+            + "ORDER BY nextattemptdate, id LIMIT :batchSize FOR UPDATE SKIP LOCKED) "
+            + "RETURNING id, type, recipients, payload, attempts";
+
+    private static final String L_MARK_SENT = "UPDATE emailnotifications_notificationoutbox "
+            + "SET status = '03sent', sentdate = now(), lasterror = NULL WHERE id IN (:ids)";
+
+    private static final String L_MARK_RETRY = "UPDATE emailnotifications_notificationoutbox "
+            + "SET status = '01pending', nextattemptdate = now() + make_interval(secs => :delaySeconds), lasterror = :error "
+            + "WHERE id = :id";
+
+    private static final String L_MARK_FAILED = "UPDATE emailnotifications_notificationoutbox "
+            + "SET status = '04failed', lasterror = :error WHERE id = :id";
+
+    private static final String L_QUEUE_DEPTH = "SELECT status, COUNT(*) AS count, "
+            + "COALESCE(EXTRACT(EPOCH FROM now() - MIN(createdate)), 0) AS oldestage "
+            + "FROM emailnotifications_notificationoutbox WHERE status IN ('01pending', '02sending') GROUP BY status";
+
+    private static final String L_PURGE_SENT = "DELETE FROM emailnotifications_notificationoutbox "
+            + "WHERE id IN (SELECT id FROM emailnotifications_notificationoutbox "
+            + "WHERE status = '03sent' AND sentdate < now() - make_interval(days => :retentionDays) LIMIT :limit)";
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    /**
+     * Adds notification to outbox in current transaction. Notification with the same type, recipients and payload as already
+     * enqueued one is skipped.
+     *
+     * @return true if notification was added
+     */
+    @Transactional(propagation = Propagation.REQUIRED)
+    public boolean enqueue(final String type, final List<String> recipients, final List<String> payload) {
+        List<String> sortedRecipients = Lists.newArrayList(recipients);
+
+        Collections.sort(sortedRecipients);
+
+        String joinedRecipients = String.join(L_SEPARATOR, sortedRecipients);
+        String joinedPayload = String.join(L_SEPARATOR, payload);
+
+        Map<String, Object> params = Maps.newHashMap();
+
+        params.put("type", type);
+        params.put("recipients", joinedRecipients);
+        params.put("payload", joinedPayload);
+        params.put("dedupKey", Hashing.sha256()
+                .hashString(type + L_SEPARATOR + joinedRecipients + L_SEPARATOR + joinedPayload, StandardCharsets.UTF_8)
+                .toString());
+
+        return jdbcTemplate.update(L_INSERT, params) > 0;
+    }
+
+    /**
+     * Claims notifications, which should be sent now, for lease time. Notifications claimed by dispatcher, which stopped before
+     * marking them, are claimed again after lease expires.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public List<OutboxNotification> claim(final int batchSize, final long leaseSeconds) {
+        Map<String, Object> params = Maps.newHashMap();
+
+        params.put("batchSize", batchSize);
+        params.put("leaseSeconds", leaseSeconds);
+
+        return jdbcTemplate.query(L_CLAIM, params,
+                (resultSet, rowNum) -> new OutboxNotification(resultSet.getLong("id"), resultSet.getString("type"),
+                        split(resultSet.getString("recipients")), split(resultSet.getString("payload")),
+                        resultSet.getInt("attempts")));
+    }
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void markSent(final List<Long> ids) {
+        if (!ids.isEmpty()) {
+            jdbcTemplate.update(L_MARK_SENT, Collections.singletonMap("ids", ids));
+        }
+    }
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void markRetry(final Long id, final long delaySeconds, final String error) {
+        Map<String, Object> params = Maps.newHashMap();
+
+        params.put("id", id);
+        params.put("delaySeconds", delaySeconds);
+        params.put("error", error);
+
+        jdbcTemplate.update(L_MARK_RETRY, params);
+    }
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void markFailed(final Long id, final String error) {
+        Map<String, Object> params = Maps.newHashMap();
+
+        params.put("id", id);
+        params.put("error", error);
+
+        jdbcTemplate.update(L_MARK_FAILED, params);
+    }
+
+    /**
+     * Number of pending and sending notifications and age of the oldest of them in seconds.
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Object> getQueueDepth() {
+        Map<String, Object> queueDepth = Maps.newLinkedHashMap();
+
+        queueDepth.put(NotificationOutboxStatus.PENDING.getStringValue(), 0L);
+        queueDepth.put(NotificationOutboxStatus.SENDING.getStringValue(), 0L);
+
+        double[] oldestAge = { 0D };
+
+        jdbcTemplate.query(L_QUEUE_DEPTH, Collections.emptyMap(), (RowCallbackHandler) resultSet -> {
+            queueDepth.put(resultSet.getString("status"), resultSet.getLong("count"));
+
+            oldestAge[0] = Math.max(oldestAge[0], resultSet.getDouble("oldestage"));
+        });
+
+        queueDepth.put("oldestAgeSeconds", oldestAge[0]);
+
+        return queueDepth;
+    }
+
+    /**
+     * Deletes at most given number of notifications sent more than given number of days ago. Notification with the same type,
+     * recipients and payload as deleted one can be enqueued again.
+     *
+     * @return number of deleted notifications
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public int purgeSent(final int retentionDays, final int limit) {
+        Map<String, Object> params = Maps.newHashMap();
+
+        params.put("retentionDays", retentionDays);
+        params.put("limit", limit);
+
+        return jdbcTemplate.update(L_PURGE_SENT, params);
+    }
+
+    private List<String> split(final String value) {
+        if (StringUtils.isEmpty(value)) {
+            return Collections.emptyList();
+        }
+
+        return Splitter.on(L_SEPARATOR).splitToList(value);
+    }
+
+}
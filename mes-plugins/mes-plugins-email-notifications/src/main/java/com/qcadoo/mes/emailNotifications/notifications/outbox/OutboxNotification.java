@@ -0,0 +1,77 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.emailNotifications.notifications.outbox;
+
+import java.util.List;
+
+/**
+ * Notification claimed from outbox by {@link NotificationOutboxDispatcher}.
+ */
+public class OutboxNotification {
+
+    public static final String L_DELIVERY_INFO = "deliveryInfo";
+
+    private final Long id;
+
+    private final String type;
+
+    private final List<String> recipients;
+
+    private final List<String> payload;
+
+    private final int attempts;
+
+    public OutboxNotification(final Long id, final String type, final List<String> recipients, final List<String> payload,
+            final int attempts) {
+        this.id = id;
+        this.type = type;
+        this.recipients = recipients;
+        this.payload = payload;
+        this.attempts = attempts;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public List<String> getRecipients() {
+        return recipients;
+    }
+
+    /**
+     * Lines of notification, e.g. numbers of created deliveries.
+     */
+    public List<String> getPayload() {
+        return payload;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+}
@@ -0,0 +1,61 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.emailNotifications.notifications.outbox;
+
+import com.qcadoo.mes.emailNotifications.notifications.constants.SendingStatus;
+import com.qcadoo.mes.emailNotifications.notifications.service.MailingService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.EnumSet;
+
+@Service
+public class SendinblueNotificationTransport implements NotificationTransport {
+
+    private static final EnumSet<SendingStatus> L_ACCEPTED_STATUSES = EnumSet.of(SendingStatus.sent, SendingStatus.queued,
+            SendingStatus.scheduled);
+
+    @Autowired
+    private MailingService mailingService;
+
+    @Override
+    public String getName() {
+        return "sendinblue";
+    }
+
+    @Override
+    public void send(final OutboxNotification notification) {
+        if (!OutboxNotification.L_DELIVERY_INFO.equals(notification.getType())) {
+            throw new IllegalArgumentException("Unsupported notification type: " + notification.getType());
+        }
+
+        SendingStatus status = mailingService.sendTemplateDeliveryInfoEmailsBySendinblue(notification.getRecipients(),
+                notification.getPayload());
+
+        if (!L_ACCEPTED_STATUSES.contains(status)) {
+            throw new IllegalStateException("Notification " + notification.getId() + " was not sent: " + status);
+        }
+    }
+
+}
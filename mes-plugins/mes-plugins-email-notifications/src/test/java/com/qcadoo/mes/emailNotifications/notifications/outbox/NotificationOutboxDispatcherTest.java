@@ -0,0 +1,169 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.emailNotifications.notifications.outbox;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+
+public class NotificationOutboxDispatcherTest {
+
+    private static final String L_ERROR = "Connection refused";
+
+    private NotificationOutboxDispatcher notificationOutboxDispatcher;
+
+    @Mock
+    private NotificationOutboxService notificationOutboxService;
+
+    @Mock
+    private NotificationTransport transport;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        notificationOutboxDispatcher = new NotificationOutboxDispatcher();
+
+        ReflectionTestUtils.setField(notificationOutboxDispatcher, "notificationOutboxService", notificationOutboxService);
+        ReflectionTestUtils.setField(notificationOutboxDispatcher, "transports", Collections.singletonList(transport));
+        ReflectionTestUtils.setField(notificationOutboxDispatcher, "notificationTransport", "log");
+        ReflectionTestUtils.setField(notificationOutboxDispatcher, "batchSize", 2);
+        ReflectionTestUtils.setField(notificationOutboxDispatcher, "maxBatches", 20);
+        ReflectionTestUtils.setField(notificationOutboxDispatcher, "leaseSeconds", 300L);
+        ReflectionTestUtils.setField(notificationOutboxDispatcher, "retryDelaySeconds", 60L);
+        ReflectionTestUtils.setField(notificationOutboxDispatcher, "maxRetryDelaySeconds", 21600L);
+        ReflectionTestUtils.setField(notificationOutboxDispatcher, "maxAttempts", 8);
+        ReflectionTestUtils.setField(notificationOutboxDispatcher, "retentionDays", 30);
+        ReflectionTestUtils.setField(notificationOutboxDispatcher, "purgeSize", 1000);
+
+        given(transport.getName()).willReturn("log");
+
+        notificationOutboxDispatcher.init();
+    }
+
+    @Test
+    public void shouldDoubleRetryDelayUpToMaximum() {
+        // then
+        assertEquals(60L, notificationOutboxDispatcher.getRetryDelay(1));
+        assertEquals(120L, notificationOutboxDispatcher.getRetryDelay(2));
+        assertEquals(240L, notificationOutboxDispatcher.getRetryDelay(3));
+        assertEquals(7680L, notificationOutboxDispatcher.getRetryDelay(8));
+        assertEquals(15360L, notificationOutboxDispatcher.getRetryDelay(9));
+        assertEquals(21600L, notificationOutboxDispatcher.getRetryDelay(10));
+        assertEquals(21600L, notificationOutboxDispatcher.getRetryDelay(64));
+    }
+
+    @Test
+    public void shouldRetryNotSentNotificationWithBackOff() {
+        // given
+        OutboxNotification notSent = notification(1L, 3);
+        OutboxNotification sent = notification(2L, 1);
+
+        given(notificationOutboxService.claim(2, 300L)).willReturn(Lists.newArrayList(notSent, sent),
+                Collections.emptyList());
+        willThrow(new IllegalStateException(L_ERROR)).given(transport).send(notSent);
+
+        // when
+        notificationOutboxDispatcher.dispatchNotifications();
+
+        // then
+        verify(notificationOutboxService).markRetry(1L, 240L, L_ERROR);
+        verify(notificationOutboxService).markSent(Lists.newArrayList(2L));
+        verify(notificationOutboxService, never()).markFailed(anyLong(), anyString());
+        assertEquals(1L, notificationOutboxDispatcher.getStatistics().get("retried"));
+    }
+
+    @Test
+    public void shouldFailNotificationAfterMaxAttempts() {
+        // given
+        OutboxNotification notSent = notification(1L, 8);
+
+        given(notificationOutboxService.claim(2, 300L)).willReturn(Lists.newArrayList(notSent));
+        willThrow(new IllegalStateException(L_ERROR)).given(transport).send(notSent);
+
+        // when
+        notificationOutboxDispatcher.dispatchNotifications();
+
+        // then
+        verify(notificationOutboxService).markFailed(1L, L_ERROR);
+        verify(notificationOutboxService, never()).markRetry(anyLong(), anyLong(), anyString());
+        verify(notificationOutboxService).markSent(Collections.emptyList());
+    }
+
+    @Test
+    public void shouldSendOnlyClaimedNotificationsOnce() {
+        // given
+        List<OutboxNotification> firstBatch = Lists.newArrayList(notification(1L, 1), notification(2L, 1));
+        List<OutboxNotification> secondBatch = Lists.newArrayList(notification(3L, 1));
+
+        given(notificationOutboxService.claim(2, 300L)).willReturn(firstBatch, secondBatch);
+
+        // when
+        notificationOutboxDispatcher.dispatchNotifications();
+
+        // then
+        verify(notificationOutboxService, times(2)).claim(2, 300L);
+        verify(notificationOutboxService).markSent(Lists.newArrayList(1L, 2L));
+        verify(notificationOutboxService).markSent(Lists.newArrayList(3L));
+        verify(transport, times(3)).send(any(OutboxNotification.class));
+        assertEquals(3L, notificationOutboxDispatcher.getStatistics().get("sent"));
+    }
+
+    @Test
+    public void shouldPurgeSentNotificationsAfterDispatching() {
+        // given
+        given(notificationOutboxService.claim(2, 300L)).willReturn(Collections.emptyList());
+        given(notificationOutboxService.purgeSent(30, 1000)).willReturn(5);
+
+        // when
+        notificationOutboxDispatcher.dispatchNotifications();
+
+        // then
+        verify(notificationOutboxService).purgeSent(30, 1000);
+        assertEquals(5L, notificationOutboxDispatcher.getStatistics().get("purged"));
+    }
+
+    private OutboxNotification notification(final Long id, final int attempts) {
+        return new OutboxNotification(id, OutboxNotification.L_DELIVERY_INFO, Lists.newArrayList("a@qcadoo.com"),
+                Lists.newArrayList("D/" + id), attempts);
+    }
+
+}
@@ -0,0 +1,148 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.emailNotifications.notifications.outbox;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+
+public class NotificationOutboxServiceTest {
+
+    private NotificationOutboxService notificationOutboxService;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        notificationOutboxService = new NotificationOutboxService();
+
+        ReflectionTestUtils.setField(notificationOutboxService, "jdbcTemplate", jdbcTemplate);
+    }
+
+    @Test
+    public void shouldClaimNotLockedNotificationsForLeaseTime() {
+        // when
+        notificationOutboxService.claim(50, 300L);
+
+        // then
+        ArgumentCaptor<String> queryCaptor = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<Map> paramsCaptor = ArgumentCaptor.forClass(Map.class);
+
+        verify(jdbcTemplate).query(queryCaptor.capture(), paramsCaptor.capture(), any(RowMapper.class));
+
+        String query = queryCaptor.getValue();
+
+        assertTrue(query.contains("ORDER BY nextattemptdate, id LIMIT :batchSize FOR UPDATE SKIP LOCKED"));
+        assertTrue(query.contains("WHERE status IN ('01pending', '02sending') AND nextattemptdate <= now()"));
+        assertTrue(query.contains("SET status = '02sending', attempts = attempts + 1, "
+                + "nextattemptdate = now() + make_interval(secs => :leaseSeconds)"));
+        assertEquals(50, paramsCaptor.getValue().get("batchSize"));
+        assertEquals(300L, paramsCaptor.getValue().get("leaseSeconds"));
+    }
+
+    @Test
+    public void shouldEnqueueNotificationOnlyOnceByDedupKey() {
+        // given
+        given(jdbcTemplate.update(anyString(), anyMap())).willReturn(1, 0);
+
+        // when
+        boolean first = notificationOutboxService.enqueue(OutboxNotification.L_DELIVERY_INFO,
+                Lists.newArrayList("b@qcadoo.com", "a@qcadoo.com"), Lists.newArrayList("D/1", "D/2"));
+        boolean second = notificationOutboxService.enqueue(OutboxNotification.L_DELIVERY_INFO,
+                Lists.newArrayList("a@qcadoo.com", "b@qcadoo.com"), Lists.newArrayList("D/1", "D/2"));
+
+        // then
+        ArgumentCaptor<String> queryCaptor = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<Map> paramsCaptor = ArgumentCaptor.forClass(Map.class);
+
+        verify(jdbcTemplate, times(2)).update(queryCaptor.capture(), paramsCaptor.capture());
+
+        List<Map> params = paramsCaptor.getAllValues();
+
+        assertTrue(queryCaptor.getValue().endsWith("ON CONFLICT (dedupkey) DO NOTHING"));
+        assertEquals(params.get(0).get("dedupKey"), params.get(1).get("dedupKey"));
+        assertEquals("a@qcadoo.com\nb@qcadoo.com", params.get(0).get("recipients"));
+        assertTrue(first);
+        assertFalse(second);
+    }
+
+    @Test
+    public void shouldEnqueueNotificationsWithDifferentPayloadUnderDifferentDedupKeys() {
+        // when
+        notificationOutboxService.enqueue(OutboxNotification.L_DELIVERY_INFO, Lists.newArrayList("a@qcadoo.com"),
+                Lists.newArrayList("D/1"));
+        notificationOutboxService.enqueue(OutboxNotification.L_DELIVERY_INFO, Lists.newArrayList("a@qcadoo.com"),
+                Lists.newArrayList("D/2"));
+
+        // then
+        ArgumentCaptor<Map> paramsCaptor = ArgumentCaptor.forClass(Map.class);
+
+        verify(jdbcTemplate, times(2)).update(anyString(), paramsCaptor.capture());
+
+        assertNotEquals(paramsCaptor.getAllValues().get(0).get("dedupKey"), paramsCaptor.getAllValues().get(1).get("dedupKey"));
+    }
+
+    @Test
+    public void shouldPurgeOnlySentNotificationsOlderThanRetention() {
+        // when
+        notificationOutboxService.purgeSent(30, 1000);
+
+        // then
+        ArgumentCaptor<String> queryCaptor = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<Map> paramsCaptor = ArgumentCaptor.forClass(Map.class);
+
+        verify(jdbcTemplate).update(queryCaptor.capture(), paramsCaptor.capture());
+
+        assertTrue(queryCaptor.getValue().startsWith("DELETE FROM emailnotifications_notificationoutbox"));
+        assertTrue(queryCaptor.getValue().contains(
+                "WHERE status = '03sent' AND sentdate < now() - make_interval(days => :retentionDays) LIMIT :limit"));
+        assertEquals(30, paramsCaptor.getValue().get("retentionDays"));
+        assertEquals(1000, paramsCaptor.getValue().get("limit"));
+    }
+
+}
@@ -5,8 +5,10 @@ import com.qcadoo.localization.api.TranslationService;
 import com.qcadoo.mes.basic.ParameterService;
 import com.qcadoo.view.api.ComponentState;
 import com.qcadoo.view.api.ViewDefinitionState;
+import com.qcadoo.view.api.components.FieldComponent;
 
 import java.util.List;
+import java.util.Objects;
 
 import org.springframework.context.i18n.LocaleContextHolder;
 
@@ -14,6 +16,8 @@ public class GenerationOrderResult {
 
     private static final String PARAMETER_AUTOMATICALLY_GENERATE_ORDERS_FOR_COMPONENTS = "automaticallyGenerateOrdersForComponents";
 
+    private static final String L_ORDERS_GENERATION_JOB_ID = "ordersGenerationJobId";
+
     private TranslationService translationService;
 
     private ParameterService parameterService;
@@ -31,6 +35,12 @@ public class GenerationOrderResult {
 
     private List<String> ordersWithoutPps = Lists.newArrayList();
 
+    private List<String> ordersWithPpsInBackground = Lists.newArrayList();
+
+    private String ordersGenerationJobId;
+
+    private List<String> positionsOfFailedBatches = Lists.newArrayList();
+
     private List<SubOrderErrorHolder> ordersWithoutGeneratedSubOrders = Lists.newArrayList();
 
     private List<String> ordersWithGeneratedSubOrders = Lists.newArrayList();
@@ -61,6 +71,40 @@ public class GenerationOrderResult {
         ordersWithoutPps.add(number);
     }
 
+    public void addOrdersWithPpsInBackground(List<String> numbers) {
+        ordersWithPpsInBackground.addAll(numbers);
+    }
+
+    public String getOrdersGenerationJobId() {
+        return ordersGenerationJobId;
+    }
+
+    public void setOrdersGenerationJobId(String ordersGenerationJobId) {
+        this.ordersGenerationJobId = ordersGenerationJobId;
+    }
+
+    public void addPositionsOfFailedBatch(List<String> positions) {
+        positionsOfFailedBatches.addAll(positions);
+    }
+
+    public void addNotGeneratedProductErrors(GenerationOrderResult other) {
+        productOrderErrors.addAll(other.productOrderErrors);
+    }
+
+    public void addAll(GenerationOrderResult other) {
+        productOrderErrors.addAll(other.productOrderErrors);
+        generatedOrderNumbers.addAll(other.generatedOrderNumbers);
+        realizationFromStock.addAll(other.realizationFromStock);
+        ordersWithoutPps.addAll(other.ordersWithoutPps);
+        ordersWithPpsInBackground.addAll(other.ordersWithPpsInBackground);
+        positionsOfFailedBatches.addAll(other.positionsOfFailedBatches);
+        ordersWithoutGeneratedSubOrders.addAll(other.ordersWithoutGeneratedSubOrders);
+        ordersWithGeneratedSubOrders.addAll(other.ordersWithGeneratedSubOrders);
+        ordersWithNoGeneratedSubOrders.addAll(other.ordersWithNoGeneratedSubOrders);
+        productsWithoutAcceptedTechnologies.addAll(other.productsWithoutAcceptedTechnologies);
+        productOrderSimpleErrors.addAll(other.productOrderSimpleErrors);
+    }
+
     public void addOrderWithoutGeneratedSubOrders(SubOrderErrorHolder error) {
         ordersWithoutGeneratedSubOrders.add(error);
     }
@@ -89,6 +133,28 @@ public class GenerationOrderResult {
                     String.join(", ", ordersWithoutPps));
         }
 
+        if (!ordersWithPpsInBackground.isEmpty()) {
+            view.addMessage("masterOrders.masterOrder.generationOrder.ordersWithPpsInBackground",
+                    ComponentState.MessageType.INFO, false, String.join(", ", ordersWithPpsInBackground));
+        }
+
+        if (Objects.nonNull(ordersGenerationJobId)) {
+            view.addMessage("masterOrders.masterOrder.generationOrder.ordersGenerationJob", ComponentState.MessageType.INFO,
+                    false, ordersGenerationJobId);
+        }
+
+        ComponentState ordersGenerationJobIdField = view.getComponentByReference(L_ORDERS_GENERATION_JOB_ID);
+
+        if (ordersGenerationJobIdField instanceof FieldComponent) {
+            ((FieldComponent) ordersGenerationJobIdField).setFieldValue(ordersGenerationJobId);
+            ((FieldComponent) ordersGenerationJobIdField).requestComponentUpdateState();
+        }
+
+        if (!positionsOfFailedBatches.isEmpty()) {
+            view.addMessage("masterOrders.masterOrder.generationOrder.positionsOfFailedBatches",
+                    ComponentState.MessageType.FAILURE, false, String.join(", ", positionsOfFailedBatches));
+        }
+
         if (!ordersWithoutGeneratedSubOrders.isEmpty()) {
             ordersWithoutGeneratedSubOrders.forEach(error -> {
                 view.addMessage("masterOrders.masterOrder.generationOrder.ordersWithoutGeneratedSubOrders",
@@ -155,6 +221,21 @@ public class GenerationOrderResult {
                     LocaleContextHolder.getLocale(), String.join(", ", ordersWithoutPps)));
         }
 
+        if (!ordersWithPpsInBackground.isEmpty()) {
+            messages.add(translationService.translate("masterOrders.masterOrder.generationOrder.ordersWithPpsInBackground",
+                    LocaleContextHolder.getLocale(), String.join(", ", ordersWithPpsInBackground)));
+        }
+
+        if (Objects.nonNull(ordersGenerationJobId)) {
+            messages.add(translationService.translate("masterOrders.masterOrder.generationOrder.ordersGenerationJob",
+                    LocaleContextHolder.getLocale(), ordersGenerationJobId));
+        }
+
+        if (!positionsOfFailedBatches.isEmpty()) {
+            messages.add(translationService.translate("masterOrders.masterOrder.generationOrder.positionsOfFailedBatches",
+                    LocaleContextHolder.getLocale(), String.join(", ", positionsOfFailedBatches)));
+        }
+
         if (!ordersWithoutGeneratedSubOrders.isEmpty()) {
             ordersWithoutGeneratedSubOrders.forEach(error -> {
                 messages.add(translationService.translate(
@@ -7,15 +7,22 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import com.qcadoo.mes.materialFlow.constants.MaterialFlowConstants;
 import com.qcadoo.mes.materialFlowResources.constants.MaterialFlowResourcesConstants;
 import org.apache.commons.lang3.StringUtils;
 import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.i18n.LocaleContextHolder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -44,7 +51,6 @@ import com.qcadoo.model.api.DictionaryService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.NumberService;
 import com.qcadoo.model.api.search.SearchOrders;
-import com.qcadoo.model.api.search.SearchQueryBuilder;
 import com.qcadoo.model.api.search.SearchRestrictions;
 import com.qcadoo.model.constants.DictionaryItemFields;
 import com.qcadoo.plugin.api.PluginUtils;
@@ -53,6 +59,8 @@ import com.qcadoo.view.api.utils.NumberGeneratorService;
 @Service
 public class OrdersFromMOProductsGenerationService {
 
+    private static final Logger LOG = LoggerFactory.getLogger(OrdersFromMOProductsGenerationService.class);
+
     private static final String L_IS_SUBCONTRACTED = "isSubcontracted";
 
     private static final String L_CREATE_COLLECTIVE_ORDERS = "createCollectiveOrders";
@@ -74,6 +82,10 @@ public class OrdersFromMOProductsGenerationService {
 
     private static final String L_ORDERS_GENERATED_BY_COVERAGE = "ordersGeneratedByCoverage";
 
+    private static final String L_INTEGRATION_BASE_LINKER = "integrationBaseLinker";
+
+    private static final int L_BATCH_SIZE = 50;
+
     public static final String L_CONSIDER_MINIMUM_STOCK_LEVEL_WHEN_CREATING_PRODUCTION_ORDERS = "considerMinimumStockLevelWhenCreatingProductionOrders";
 
     @Autowired
@@ -106,92 +118,145 @@ public class OrdersFromMOProductsGenerationService {
     @Autowired
     private OrdersGenerationService ordersGenerationService;
 
+    @Autowired
+    private OrdersGenerationJobService ordersGenerationJobService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${ordersGenerationBulkThreshold:200}")
+    private int bulkGenerationThreshold;
+
     public GenerationOrderResult generateOrders(final List<Entity> masterOrderProducts, final Date start, final Date finish,
             final boolean generatePPS) {
         GenerationOrderResult result = new GenerationOrderResult(translationService, parameterService);
 
         boolean automaticPps = parameterService.getParameter().getBooleanField(L_PPS_IS_AUTOMATIC);
+        boolean createCollectiveOrders = parameterService.getParameter().getBooleanField(L_CREATE_COLLECTIVE_ORDERS);
 
-        List<Entity> masterOrderProductsEntities = Lists.newArrayList();
+        List<MasterOrderProduct> positions = getPositions(masterOrderProducts, createCollectiveOrders);
 
-        masterOrderProducts.forEach(masterOrderProduct -> {
-            Optional<Entity> dtoEntity = Optional
-                    .ofNullable(masterOrderProduct.getDataDefinition().getMasterModelEntity(masterOrderProduct.getId()));
+        if (positions.size() >= bulkGenerationThreshold) {
+            generateOrdersInBulk(generatePPS, automaticPps, result, positions, start, finish);
+        } else {
+            positions.forEach(masterOrderProduct -> generateOrder(generatePPS, automaticPps, result, masterOrderProduct, start,
+                    finish));
+        }
 
-            if (dtoEntity.isPresent()) {
-                masterOrderProductsEntities.add(dtoEntity.get());
-            } else {
-                masterOrderProductsEntities.add(masterOrderProduct);
-            }
-        });
+        return result;
+    }
+
+    private List<MasterOrderProduct> getPositions(final List<Entity> masterOrderProducts, final boolean createCollectiveOrders) {
+        Map<Long, Entity> positionDtos = getEntitiesByIds(getMasterOrderProductDtoDD(),
+                masterOrderProducts.stream().map(Entity::getId).collect(Collectors.toList()));
+
+        List<Entity> masterOrderProductsEntities = getMasterOrderProductsEntities(masterOrderProducts);
+
+        Map<Long, Entity> defaultTechnologies = technologyServiceO.getDefaultTechnologies(masterOrderProductsEntities.stream()
+                .filter(mop -> Objects.isNull(mop.getBelongsToField(MasterOrderProductFields.TECHNOLOGY)))
+                .map(mop -> mop.getBelongsToField(MasterOrderProductFields.PRODUCT)).collect(Collectors.toList()));
+
+        List<MasterOrderProduct> positions = Lists.newArrayList();
 
-        boolean createCollectiveOrders = parameterService.getParameter().getBooleanField(L_CREATE_COLLECTIVE_ORDERS);
         if (createCollectiveOrders) {
-            Map<ProductTechnologyKey, List<Entity>> groupedMap = groupPositions(masterOrderProductsEntities);
+            Map<ProductTechnologyKey, List<Entity>> groupedMap = groupPositions(masterOrderProductsEntities, defaultTechnologies);
 
             for (Map.Entry<ProductTechnologyKey, List<Entity>> entry : groupedMap.entrySet()) {
-                String hql = "SELECT SUM(mop.quantityRemainingToOrderWithoutStock) AS quantityRemainingToOrder FROM #masterOrders_masterOrderPositionDto mop "
-                        + " WHERE mop.id IN (:ids)";
-
-                SearchQueryBuilder scb = dataDefinitionService
-                        .get(MasterOrdersConstants.PLUGIN_IDENTIFIER, MasterOrdersConstants.MODEL_MASTER_ORDER_POSITION_DTO)
-                        .find(hql);
+                BigDecimal quantityRemainingToOrder = null;
 
-                scb.setParameterList("ids", entry.getValue().stream().map(Entity::getId).collect(Collectors.toList()));
+                for (Entity mop : entry.getValue()) {
+                    BigDecimal quantity = positionDtos.get(mop.getId())
+                            .getDecimalField(MasterOrderPositionDtoFields.QUANTITY_REMAINING_TO_ORDER_WITHOUT_STOCK);
 
-                Entity quantityRemainingToOrderResult = scb.setMaxResults(1).uniqueResult();
+                    if (Objects.nonNull(quantity)) {
+                        quantityRemainingToOrder = Objects.isNull(quantityRemainingToOrder) ? quantity
+                                : quantityRemainingToOrder.add(quantity, numberService.getMathContext());
+                    }
+                }
 
-                Entity positionDto = dataDefinitionService
-                        .get(MasterOrdersConstants.PLUGIN_IDENTIFIER, MasterOrdersConstants.MODEL_MASTER_ORDER_POSITION_DTO)
-                        .get(entry.getValue().get(0).getId());
+                Entity positionDto = positionDtos.get(entry.getValue().get(0).getId());
 
                 BigDecimal minStateQuantity = positionDto.getDecimalField(MasterOrderPositionDtoFields.WAREHOUSE_MINIMUM_STATE_QUANTITY);
 
-                MasterOrderProduct masterOrderProduct = MasterOrderProduct.newMasterOrderProduct()
+                positions.add(MasterOrderProduct.newMasterOrderProduct()
                         .minStateQuantity(minStateQuantity)
                         .createCollectiveOrders(createCollectiveOrders).product(entry.getKey().getProduct())
                         .technology(entry.getKey().getTechnology()).groupedMasterOrderProduct(entry.getValue())
-                        .quantityRemainingToOrder(quantityRemainingToOrderResult.getDecimalField("quantityRemainingToOrder"))
-                        .build();
-
-                generateOrder(generatePPS, automaticPps, result, masterOrderProduct, start, finish);
+                        .quantityRemainingToOrder(quantityRemainingToOrder)
+                        .build());
             }
         } else {
             masterOrderProductsEntities.forEach(mop -> {
-                BigDecimal quantityRemainingToOrder = dataDefinitionService
-                        .get(MasterOrdersConstants.PLUGIN_IDENTIFIER, MasterOrdersConstants.MODEL_MASTER_ORDER_POSITION_DTO)
-                        .get(mop.getId()).getDecimalField(MasterOrderPositionDtoFields.QUANTITY_REMAINING_TO_ORDER_WITHOUT_STOCK);
-                Entity positionDto = dataDefinitionService
-                        .get(MasterOrdersConstants.PLUGIN_IDENTIFIER, MasterOrdersConstants.MODEL_MASTER_ORDER_POSITION_DTO)
-                        .get(mop.getId());
+                Entity positionDto = positionDtos.get(mop.getId());
+
+                BigDecimal quantityRemainingToOrder = positionDto
+                        .getDecimalField(MasterOrderPositionDtoFields.QUANTITY_REMAINING_TO_ORDER_WITHOUT_STOCK);
                 BigDecimal minStateQuantity = positionDto.getDecimalField(MasterOrderPositionDtoFields.WAREHOUSE_MINIMUM_STATE_QUANTITY);
 
-                MasterOrderProduct masterOrderProduct = MasterOrderProduct.newMasterOrderProduct()
+                Entity product = mop.getBelongsToField(MasterOrderProductFields.PRODUCT);
+                Entity technology = mop.getBelongsToField(MasterOrderProductFields.TECHNOLOGY);
+
+                if (Objects.isNull(technology)) {
+                    technology = defaultTechnologies.get(product.getId());
+                }
+
+                positions.add(MasterOrderProduct.newMasterOrderProduct()
                         .createCollectiveOrders(createCollectiveOrders)
                         .minStateQuantity(minStateQuantity)
-                        .product(mop.getBelongsToField(MasterOrderProductFields.PRODUCT))
-                        .technology(mop.getBelongsToField(MasterOrderProductFields.TECHNOLOGY))
+                        .product(product)
+                        .technology(technology)
                         .masterOrder(mop.getBelongsToField(MasterOrderProductFields.MASTER_ORDER))
                         .comments(mop.getStringField(MasterOrderProductFields.COMMENTS))
-                        .quantityRemainingToOrder(quantityRemainingToOrder).masterOrderProduct(mop).build();
-
-                generateOrder(generatePPS, automaticPps, result, masterOrderProduct, start, finish);
+                        .quantityRemainingToOrder(quantityRemainingToOrder).masterOrderProduct(mop).build());
             });
         }
 
-        MasterOrderProduct.newMasterOrderProduct().createCollectiveOrders(createCollectiveOrders);
+        return positions;
+    }
+
+    private List<Entity> getMasterOrderProductsEntities(final List<Entity> masterOrderProducts) {
+        Map<Long, Entity> masterOrderProductsEntities = getEntitiesByIds(getMasterOrderProductDD(), masterOrderProducts
+                .stream().filter(this::isMasterOrderPositionDto).map(Entity::getId).collect(Collectors.toList()));
 
-        return result;
+        return masterOrderProducts.stream().map(masterOrderProduct -> {
+            Entity masterOrderProductEntity;
+
+            if (isMasterOrderPositionDto(masterOrderProduct)) {
+                masterOrderProductEntity = masterOrderProductsEntities.get(masterOrderProduct.getId());
+            } else {
+                masterOrderProductEntity = masterOrderProduct.getDataDefinition()
+                        .getMasterModelEntity(masterOrderProduct.getId());
+            }
+
+            return Optional.ofNullable(masterOrderProductEntity).orElse(masterOrderProduct);
+        }).collect(Collectors.toList());
     }
 
-    private Map<ProductTechnologyKey, List<Entity>> groupPositions(final List<Entity> masterOrderProductsEntities) {
+    private boolean isMasterOrderPositionDto(final Entity entity) {
+        DataDefinition dataDefinition = entity.getDataDefinition();
+
+        return MasterOrdersConstants.PLUGIN_IDENTIFIER.equals(dataDefinition.getPluginIdentifier())
+                && MasterOrdersConstants.MODEL_MASTER_ORDER_POSITION_DTO.equals(dataDefinition.getName());
+    }
+
+    private Map<Long, Entity> getEntitiesByIds(final DataDefinition dataDefinition, final List<Long> ids) {
+        if (ids.isEmpty()) {
+            return Maps.newHashMap();
+        }
+
+        return dataDefinition.find().add(SearchRestrictions.in("id", ids)).list().getEntities().stream()
+                .collect(Collectors.toMap(Entity::getId, entity -> entity));
+    }
+
+    private Map<ProductTechnologyKey, List<Entity>> groupPositions(final List<Entity> masterOrderProductsEntities,
+            final Map<Long, Entity> defaultTechnologies) {
         Map<ProductTechnologyKey, List<Entity>> groupedMap = Maps.newHashMap();
 
         masterOrderProductsEntities.forEach(mop -> {
             ProductTechnologyKey key = new ProductTechnologyKey(mop);
 
             if (Objects.isNull(key.getTechnology())) {
-                Entity technology = technologyServiceO.getDefaultTechnology(key.getProduct());
+                Entity technology = defaultTechnologies.get(key.getProductId());
 
                 if (Objects.nonNull(technology)) {
                     key.setTechnology(technology);
@@ -213,10 +278,75 @@ public class OrdersFromMOProductsGenerationService {
 
     private void generateOrder(final boolean generatePPS, final boolean automaticPps, final GenerationOrderResult result,
             final MasterOrderProduct masterOrderProduct, final Date start, final Date finish) {
-        if (PluginUtils.isEnabled("integrationBaseLinker")) {
+        if (PluginUtils.isEnabled(L_INTEGRATION_BASE_LINKER)) {
             createDocuments();
         }
 
+        Optional<Entity> maybeOrder = saveOrder(result, masterOrderProduct, start, finish);
+
+        if (maybeOrder.isPresent() && generatePPS && automaticPps
+                && !parameterService.getParameter().getBooleanField(L_ORDERS_GENERATION_NOT_COMPLETE_DATES)) {
+            generatePps(maybeOrder.get(), result::addOrderWithoutPps);
+        }
+    }
+
+    /**
+     * Generates orders in batches, each of them saved in its own transaction, and leaves documents creation and generation of
+     * production per shift to a background job, as both of them take much longer than saving orders. Results of a batch are
+     * taken only when its transaction is committed - positions of a batch which failed are reported and generation goes on
+     * with the next one.
+     */
+    private void generateOrdersInBulk(final boolean generatePPS, final boolean automaticPps, final GenerationOrderResult result,
+            final List<MasterOrderProduct> positions, final Date start, final Date finish) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        List<Entity> orders = Lists.newArrayList();
+
+        for (List<MasterOrderProduct> batch : Lists.partition(positions, L_BATCH_SIZE)) {
+            GenerationOrderResult batchResult = new GenerationOrderResult(translationService, parameterService);
+
+            try {
+                List<Entity> batchOrders = transactionTemplate.execute(status -> batch.stream()
+                        .map(masterOrderProduct -> saveOrder(batchResult, masterOrderProduct, start, finish))
+                        .filter(Optional::isPresent).map(Optional::get).collect(Collectors.toList()));
+
+                result.addAll(batchResult);
+                orders.addAll(batchOrders);
+            } catch (Exception exception) {
+                LOG.warn("Can't generate orders of batch of master order positions", exception);
+
+                result.addNotGeneratedProductErrors(batchResult);
+                result.addPositionsOfFailedBatch(batch.stream().map(this::getPositionNumber).collect(Collectors.toList()));
+            }
+        }
+
+        boolean createDocuments = PluginUtils.isEnabled(L_INTEGRATION_BASE_LINKER);
+        boolean generatePps = generatePPS && automaticPps
+                && !parameterService.getParameter().getBooleanField(L_ORDERS_GENERATION_NOT_COMPLETE_DATES);
+
+        if (createDocuments || generatePps) {
+            List<Long> orderIds = generatePps ? orders.stream().map(Entity::getId).collect(Collectors.toList())
+                    : Collections.emptyList();
+
+            OrdersGenerationJob job = ordersGenerationJobService.submit(orderIds, () -> {
+                if (createDocuments) {
+                    createDocuments();
+                }
+            }, (order, ordersGenerationJob) -> generatePps(order, ordersGenerationJob::addOrderWithoutPps));
+
+            result.setOrdersGenerationJobId(job.getId());
+
+            if (generatePps && !orders.isEmpty()) {
+                result.addOrdersWithPpsInBackground(
+                        orders.stream().map(order -> order.getStringField(OrderFields.NUMBER)).collect(Collectors.toList()));
+            }
+        }
+    }
+
+    private Optional<Entity> saveOrder(final GenerationOrderResult result, final MasterOrderProduct masterOrderProduct,
+            final Date start, final Date finish) {
         Entity parameter = parameterService.getParameter();
 
         boolean realizationFromStock = parameter.getBooleanField(ParameterFieldsO.REALIZATION_FROM_STOCK);
@@ -262,12 +392,14 @@ public class OrdersFromMOProductsGenerationService {
             }
 
             result.addRealizationFromStock(masterOrderProduct.getProduct().getStringField(ProductFields.NUMBER));
+
+            return Optional.empty();
         } else {
             BigDecimal orderedMinState = quantityRemainingToOrder.abs().add(stockQuantity);
             if (considerMinimumStockLevelWhenCreatingProductionOrders && quantityRemainingToOrder.compareTo(BigDecimal.ZERO) <= 0
                     && orderedMinState.compareTo(minStateQuantity) == 0) {
                 result.addProductOrderSimpleError(masterOrderProduct.getProduct().getStringField(ProductFields.NUMBER));
-                return;
+                return Optional.empty();
             }
 
             Entity order = createOrder(masterOrderProduct, realizationFromStock,
@@ -311,66 +443,71 @@ public class OrdersFromMOProductsGenerationService {
                 }
             }
 
-            if (order.isValid() && generatePPS && automaticPps
-                    && !parameter.getBooleanField(L_ORDERS_GENERATION_NOT_COMPLETE_DATES)) {
-                List<Entity> orders = getOrderAndSubOrders(order.getId());
-                Collections.reverse(orders);
-                Integer lastLevel = null;
-                Date lastDate = null;
+            if (order.isValid()) {
+                return Optional.of(order);
+            }
 
-                for (Entity ord : orders) {
-                    Date calculatedOrderStartDate = null;
+            return Optional.empty();
+        }
+    }
 
-                    if (parameterService.getParameter().getBooleanField(ParameterFieldsO.ADVISE_START_DATE_OF_THE_ORDER)) {
-                        calculatedOrderStartDate = order.getDateField(OrderFields.START_DATE);
-                    } else {
-                        if (Objects.isNull(ord.getDateField(OrderFields.DATE_FROM))) {
-                            Optional<Entity> maybeOrder = orderService.findLastOrder(ord);
-
-                            if (maybeOrder.isPresent()) {
-                                calculatedOrderStartDate = ord.getDateField(OrderFields.FINISH_DATE);
-                            } else {
-                                calculatedOrderStartDate = new DateTime().toDate();
-                            }
-                        } else {
-                            Optional<Entity> maybeOrder = ordersGenerationService.findPreviousOrder(ord);
-
-                            if (maybeOrder.isPresent()) {
-                                calculatedOrderStartDate = maybeOrder.get().getDateField(OrderFields.FINISH_DATE);
-
-                            } else {
-                                calculatedOrderStartDate = ord.getDateField(OrderFields.FINISH_DATE);
-                            }
-                        }
-                    }
+    private void generatePps(final Entity order, final Consumer<String> orderWithoutPps) {
+        List<Entity> orders = getOrderAndSubOrders(order.getId());
+        Collections.reverse(orders);
+        Integer lastLevel = null;
+        Date lastDate = null;
 
-                    if (Objects.isNull(calculatedOrderStartDate)) {
+        for (Entity ord : orders) {
+            Date calculatedOrderStartDate = null;
+
+            if (parameterService.getParameter().getBooleanField(ParameterFieldsO.ADVISE_START_DATE_OF_THE_ORDER)) {
+                calculatedOrderStartDate = order.getDateField(OrderFields.START_DATE);
+            } else {
+                if (Objects.isNull(ord.getDateField(OrderFields.DATE_FROM))) {
+                    Optional<Entity> maybeOrder = orderService.findLastOrder(ord);
+
+                    if (maybeOrder.isPresent()) {
+                        calculatedOrderStartDate = ord.getDateField(OrderFields.FINISH_DATE);
+                    } else {
                         calculatedOrderStartDate = new DateTime().toDate();
                     }
+                } else {
+                    Optional<Entity> maybeOrder = ordersGenerationService.findPreviousOrder(ord);
+
+                    if (maybeOrder.isPresent()) {
+                        calculatedOrderStartDate = maybeOrder.get().getDateField(OrderFields.FINISH_DATE);
 
-                    if (Objects.nonNull(lastLevel) && !Objects.equals(lastLevel, ord.getIntegerField("level"))) {
-                        if (Objects.nonNull(lastDate) && calculatedOrderStartDate.before(lastDate)) {
-                            calculatedOrderStartDate = lastDate;
-                        }
+                    } else {
+                        calculatedOrderStartDate = ord.getDateField(OrderFields.FINISH_DATE);
                     }
+                }
+            }
 
-                    try {
-                        Date finishDate = ordersGenerationService.tryGeneratePPS(ord, calculatedOrderStartDate);
+            if (Objects.isNull(calculatedOrderStartDate)) {
+                calculatedOrderStartDate = new DateTime().toDate();
+            }
 
-                        if (Objects.nonNull(lastDate) && finishDate.after(lastDate)) {
-                            lastDate = finishDate;
-                        } else if (Objects.isNull(lastDate)) {
-                            lastDate = finishDate;
-                        }
-                    } catch (Exception ex) {
-                        result.addOrderWithoutPps(ord.getStringField(OrderFields.NUMBER));
+            if (Objects.nonNull(lastLevel) && !Objects.equals(lastLevel, ord.getIntegerField("level"))) {
+                if (Objects.nonNull(lastDate) && calculatedOrderStartDate.before(lastDate)) {
+                    calculatedOrderStartDate = lastDate;
+                }
+            }
 
-                        break;
-                    }
+            try {
+                Date finishDate = ordersGenerationService.tryGeneratePPS(ord, calculatedOrderStartDate);
 
-                    lastLevel = ord.getIntegerField("level");
+                if (Objects.nonNull(lastDate) && finishDate.after(lastDate)) {
+                    lastDate = finishDate;
+                } else if (Objects.isNull(lastDate)) {
+                    lastDate = finishDate;
                 }
+            } catch (Exception ex) {
+                orderWithoutPps.accept(ord.getStringField(OrderFields.NUMBER));
+
+                break;
             }
+
+            lastLevel = ord.getIntegerField("level");
         }
     }
 
@@ -595,6 +732,18 @@ public class OrdersFromMOProductsGenerationService {
         }
     }
 
+    private String getPositionNumber(final MasterOrderProduct masterOrderProduct) {
+        String masterOrderNumber;
+
+        if (masterOrderProduct.isCreateCollectiveOrders()) {
+            masterOrderNumber = extractMasterOrdersNumbers(masterOrderProduct);
+        } else {
+            masterOrderNumber = masterOrderProduct.getMasterOrder().getStringField(MasterOrderFields.NUMBER);
+        }
+
+        return masterOrderProduct.getProduct().getStringField(ProductFields.NUMBER) + " (" + masterOrderNumber + ")";
+    }
+
     private String extractMasterOrdersNumbers(final MasterOrderProduct masterOrderProduct) {
         return String.join(", ", masterOrderProduct.getGroupedMasterOrderProduct().stream()
                 .map(mop -> mop.getBelongsToField(MasterOrderProductFields.MASTER_ORDER).getStringField(MasterOrderFields.NUMBER))
@@ -698,6 +847,10 @@ public class OrdersFromMOProductsGenerationService {
         return dataDefinitionService.get(OrdersConstants.PLUGIN_IDENTIFIER, OrdersConstants.MODEL_ORDER);
     }
 
+    private DataDefinition getMasterOrderProductDD() {
+        return dataDefinitionService.get(MasterOrdersConstants.PLUGIN_IDENTIFIER, MasterOrdersConstants.MODEL_MASTER_ORDER_PRODUCT);
+    }
+
     private DataDefinition getMasterOrderProductDtoDD() {
         return dataDefinitionService.get(MasterOrdersConstants.PLUGIN_IDENTIFIER,
                 MasterOrdersConstants.MODEL_MASTER_ORDER_POSITION_DTO);
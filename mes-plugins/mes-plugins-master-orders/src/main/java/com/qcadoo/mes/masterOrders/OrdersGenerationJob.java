@@ -0,0 +1,74 @@
+package com.qcadoo.mes.masterOrders;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Progress of background stage of orders generation, see {@link OrdersGenerationJobService}.
+ */
+public class OrdersGenerationJob {
+
+    private final String id;
+
+    private final String userName;
+
+    private final int total;
+
+    private final AtomicInteger processed = new AtomicInteger();
+
+    private final List<String> ordersWithoutPps = Collections.synchronizedList(Lists.newArrayList());
+
+    private volatile boolean prepared;
+
+    OrdersGenerationJob(final String id, final String userName, final int total) {
+        this.id = id;
+        this.userName = userName;
+        this.total = total;
+    }
+
+    void setPrepared() {
+        prepared = true;
+    }
+
+    void addProcessed() {
+        processed.incrementAndGet();
+    }
+
+    public void addOrderWithoutPps(final String number) {
+        ordersWithoutPps.add(number);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getUserName() {
+        return userName;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public int getProcessed() {
+        return processed.get();
+    }
+
+    public boolean isPrepared() {
+        return prepared;
+    }
+
+    public boolean isFinished() {
+        return prepared && processed.get() == total;
+    }
+
+    public List<String> getOrdersWithoutPps() {
+        synchronized (ordersWithoutPps) {
+            return Lists.newArrayList(ordersWithoutPps);
+        }
+    }
+
+}
@@ -0,0 +1,146 @@
+package com.qcadoo.mes.masterOrders;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.qcadoo.mes.basic.util.WorkerContextService;
+import com.qcadoo.mes.orders.constants.OrdersConstants;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.security.api.SecurityService;
+
+/**
+ * Runs background stage of orders generation - work which doesn't have to be done before generated orders are shown, like
+ * documents creation and generation of production per shift.
+ *
+ * Jobs run on a worker pool, which size is set with ordersGenerationWorkers property, in tenant and security context of user
+ * who submitted them. Orders of a job are processed one after another, in given order, each of them in its own transaction,
+ * as production per shift of an order depends on orders planned before it. Job progress is available until it expires.
+ */
+@Service
+public class OrdersGenerationJobService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(OrdersGenerationJobService.class);
+
+    private static final long L_MAXIMUM_SIZE = 100L;
+
+    private static final long L_EXPIRE_AFTER_HOURS = 1L;
+
+    @Value("${ordersGenerationWorkers:2}")
+    private int workers;
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @Autowired
+    private SecurityService securityService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private WorkerContextService workerContextService;
+
+    private final Cache<String, OrdersGenerationJob> jobs = CacheBuilder.newBuilder().maximumSize(L_MAXIMUM_SIZE)
+            .expireAfterWrite(L_EXPIRE_AFTER_HOURS, TimeUnit.HOURS).build();
+
+    private ExecutorService executorService;
+
+    @PostConstruct
+    void init() {
+        executorService = Executors.newFixedThreadPool(workers,
+                new ThreadFactoryBuilder().setNameFormat("orders-generation-%d").setDaemon(true).build());
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executorService.shutdownNow();
+    }
+
+    /**
+     * Submits job, which runs given preparation once and then given action for each of given orders.
+     *
+     * @param orderIds
+     *            ids of saved orders
+     * @param preparation
+     *            work done once, before orders are processed, e.g. documents creation
+     * @param action
+     *            work done for each order, it gets the job to report problems to
+     * @return submitted job
+     */
+    public OrdersGenerationJob submit(final List<Long> orderIds, final Runnable preparation,
+            final BiConsumer<Entity, OrdersGenerationJob> action) {
+        List<Long> ids = ImmutableList.copyOf(orderIds);
+
+        OrdersGenerationJob job = new OrdersGenerationJob(UUID.randomUUID().toString(),
+                securityService.getCurrentUserOrQcadooBotName(), ids.size());
+
+        jobs.put(job.getId(), job);
+
+        executorService.submit(workerContextService.wrap(() -> run(job, ids, preparation, action)));
+
+        return job;
+    }
+
+    private void run(final OrdersGenerationJob job, final List<Long> orderIds, final Runnable preparation,
+            final BiConsumer<Entity, OrdersGenerationJob> action) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+        try {
+            transactionTemplate.execute(status -> {
+                preparation.run();
+
+                return null;
+            });
+        } catch (Exception exception) {
+            LOG.warn("Can't prepare orders generation job " + job.getId(), exception);
+        } finally {
+            job.setPrepared();
+        }
+
+        for (Long orderId : orderIds) {
+            try {
+                transactionTemplate.execute(status -> {
+                    Entity order = dataDefinitionService.get(OrdersConstants.PLUGIN_IDENTIFIER, OrdersConstants.MODEL_ORDER)
+                            .get(orderId);
+
+                    if (Objects.nonNull(order)) {
+                        action.accept(order, job);
+                    }
+
+                    return null;
+                });
+            } catch (Exception exception) {
+                LOG.warn("Can't process order " + orderId + " of orders generation job " + job.getId(), exception);
+            } finally {
+                job.addProcessed();
+            }
+        }
+    }
+
+    public Optional<OrdersGenerationJob> getJob(final String jobId) {
+        return Optional.ofNullable(jobs.getIfPresent(jobId));
+    }
+
+}
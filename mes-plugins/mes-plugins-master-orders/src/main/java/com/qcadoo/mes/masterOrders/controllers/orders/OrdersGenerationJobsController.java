@@ -0,0 +1,46 @@
+package com.qcadoo.mes.masterOrders.controllers.orders;
+
+import java.io.IOException;
+import java.util.Optional;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import com.qcadoo.mes.masterOrders.OrdersGenerationJob;
+import com.qcadoo.mes.masterOrders.OrdersGenerationJobService;
+import com.qcadoo.security.api.SecurityService;
+
+@Controller
+@RequestMapping("/masterOrders")
+public class OrdersGenerationJobsController {
+
+    @Autowired
+    private OrdersGenerationJobService ordersGenerationJobService;
+
+    @Autowired
+    private SecurityService securityService;
+
+    @ResponseBody
+    @RequestMapping(value = "/ordersGenerationJobs/{jobId}", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    public OrdersGenerationJob getOrdersGenerationJob(@PathVariable final String jobId, final HttpServletResponse response)
+            throws IOException {
+        Optional<OrdersGenerationJob> maybeJob = ordersGenerationJobService.getJob(jobId);
+
+        if (!maybeJob.isPresent()
+                || !maybeJob.get().getUserName().equals(securityService.getCurrentUserOrQcadooBotName())) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+
+            return null;
+        }
+
+        return maybeJob.get();
+    }
+
+}
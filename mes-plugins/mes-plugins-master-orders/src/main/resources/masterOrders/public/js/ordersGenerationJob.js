@@ -0,0 +1,35 @@
+QCD = QCD || {};
+QCD.translations = QCD.translations || {};
+
+QCD.ordersGenerationJob = QCD.ordersGenerationJob || {};
+
+QCD.ordersGenerationJob.pollingInterval = 2000;
+
+QCD.ordersGenerationJob.translate = function (key) {
+	var msg = QCD.translations[key];
+	return msg === undefined ? '[' + key + ']' : msg;
+};
+
+QCD.ordersGenerationJob.poll = function (ordersGenerationJobId, onFinished) {
+	$.getJSON("/masterOrders/ordersGenerationJobs/" + ordersGenerationJobId, function (ordersGenerationJob) {
+		if (ordersGenerationJob.finished) {
+			var ordersWithoutPps = ordersGenerationJob.ordersWithoutPps;
+
+			mainController.showMessage({
+				type : ordersWithoutPps.length > 0 ? "failure" : "success",
+				title : QCD.ordersGenerationJob.translate('masterOrders.masterOrder.generationOrder.ordersGenerationJobFinished'),
+				content : ordersWithoutPps.length > 0 ? QCD.ordersGenerationJob
+						.translate('masterOrders.masterOrder.generationOrder.ordersWithoutPps')
+						.replace('{0}', ordersWithoutPps.join(', ')) : ''
+			});
+
+			if (onFinished) {
+				onFinished(ordersGenerationJob);
+			}
+		} else {
+			setTimeout(function () {
+				QCD.ordersGenerationJob.poll(ordersGenerationJobId, onFinished);
+			}, QCD.ordersGenerationJob.pollingInterval);
+		}
+	});
+};
@@ -0,0 +1,392 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.masterOrders;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.localization.api.TranslationService;
+import com.qcadoo.mes.basic.ParameterService;
+import com.qcadoo.mes.basic.constants.ProductFields;
+import com.qcadoo.mes.masterOrders.constants.MasterOrderFields;
+import com.qcadoo.mes.masterOrders.constants.MasterOrderPositionDtoFields;
+import com.qcadoo.mes.masterOrders.constants.MasterOrderProductFields;
+import com.qcadoo.mes.masterOrders.constants.MasterOrdersConstants;
+import com.qcadoo.mes.materialFlowResources.MaterialFlowResourcesService;
+import com.qcadoo.mes.orders.OrderService;
+import com.qcadoo.mes.orders.TechnologyServiceO;
+import com.qcadoo.mes.orders.constants.OrderFields;
+import com.qcadoo.mes.orders.constants.OrdersConstants;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.DictionaryService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.NumberService;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchCriterion;
+import com.qcadoo.model.api.search.SearchQueryBuilder;
+import com.qcadoo.model.api.search.SearchRestrictions;
+import com.qcadoo.model.api.search.SearchResult;
+import com.qcadoo.plugin.api.PluginUtils;
+import com.qcadoo.view.api.ComponentState;
+import com.qcadoo.view.api.ViewDefinitionState;
+import com.qcadoo.view.api.utils.NumberGeneratorService;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({ SearchRestrictions.class, PluginUtils.class })
+public class OrdersFromMOProductsGenerationServiceTest {
+
+    private static final int L_BULK_GENERATION_THRESHOLD = 3;
+
+    private static final String L_MASTER_ORDER_NUMBER = "MO";
+
+    private static final String L_JOB_ID = "job";
+
+    private OrdersFromMOProductsGenerationService ordersFromMOProductsGenerationService;
+
+    @Mock
+    private TechnologyServiceO technologyServiceO;
+
+    @Mock
+    private ParameterService parameterService;
+
+    @Mock
+    private DataDefinitionService dataDefinitionService;
+
+    @Mock
+    private NumberGeneratorService numberGeneratorService;
+
+    @Mock
+    private NumberService numberService;
+
+    @Mock
+    private OrderService orderService;
+
+    @Mock
+    private TranslationService translationService;
+
+    @Mock
+    private MaterialFlowResourcesService materialFlowResourcesService;
+
+    @Mock
+    private DictionaryService dictionaryService;
+
+    @Mock
+    private OrdersGenerationService ordersGenerationService;
+
+    @Mock
+    private OrdersGenerationJobService ordersGenerationJobService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private TransactionStatus transactionStatus;
+
+    @Mock
+    private DataDefinition orderDD, masterOrderProductDD, masterOrderPositionDtoDD;
+
+    @Mock
+    private SearchQueryBuilder orderAndSubOrdersQueryBuilder;
+
+    @Mock
+    private Entity parameter, masterOrder, technology;
+
+    @Mock
+    private ViewDefinitionState view;
+
+    private final Map<Long, Entity> savedOrders = Maps.newHashMap();
+
+    private final AtomicInteger savedOrdersCount = new AtomicInteger();
+
+    private Integer failingSave;
+
+    private Long queriedOrderId;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        ordersFromMOProductsGenerationService = new OrdersFromMOProductsGenerationService();
+
+        ReflectionTestUtils.setField(ordersFromMOProductsGenerationService, "technologyServiceO", technologyServiceO);
+        ReflectionTestUtils.setField(ordersFromMOProductsGenerationService, "parameterService", parameterService);
+        ReflectionTestUtils.setField(ordersFromMOProductsGenerationService, "dataDefinitionService", dataDefinitionService);
+        ReflectionTestUtils.setField(ordersFromMOProductsGenerationService, "numberGeneratorService", numberGeneratorService);
+        ReflectionTestUtils.setField(ordersFromMOProductsGenerationService, "numberService", numberService);
+        ReflectionTestUtils.setField(ordersFromMOProductsGenerationService, "orderService", orderService);
+        ReflectionTestUtils.setField(ordersFromMOProductsGenerationService, "translationService", translationService);
+        ReflectionTestUtils.setField(ordersFromMOProductsGenerationService, "materialFlowResourcesService",
+                materialFlowResourcesService);
+        ReflectionTestUtils.setField(ordersFromMOProductsGenerationService, "dictionaryService", dictionaryService);
+        ReflectionTestUtils.setField(ordersFromMOProductsGenerationService, "ordersGenerationService", ordersGenerationService);
+        ReflectionTestUtils.setField(ordersFromMOProductsGenerationService, "ordersGenerationJobService",
+                ordersGenerationJobService);
+        ReflectionTestUtils.setField(ordersFromMOProductsGenerationService, "transactionManager", transactionManager);
+        ReflectionTestUtils.setField(ordersFromMOProductsGenerationService, "bulkGenerationThreshold",
+                L_BULK_GENERATION_THRESHOLD);
+
+        PowerMockito.mockStatic(SearchRestrictions.class);
+        PowerMockito.mockStatic(PluginUtils.class);
+
+        given(parameterService.getParameter()).willReturn(parameter);
+        given(parameter.getBooleanField("ppsIsAutomatic")).willReturn(true);
+
+        given(transactionManager.getTransaction(any(TransactionDefinition.class))).willReturn(transactionStatus);
+
+        given(masterOrder.getStringField(MasterOrderFields.NUMBER)).willReturn(L_MASTER_ORDER_NUMBER);
+
+        given(dataDefinitionService.get(OrdersConstants.PLUGIN_IDENTIFIER, OrdersConstants.MODEL_ORDER)).willReturn(orderDD);
+        given(dataDefinitionService.get(MasterOrdersConstants.PLUGIN_IDENTIFIER, MasterOrdersConstants.MODEL_MASTER_ORDER_PRODUCT))
+                .willReturn(masterOrderProductDD);
+        given(dataDefinitionService.get(MasterOrdersConstants.PLUGIN_IDENTIFIER,
+                MasterOrdersConstants.MODEL_MASTER_ORDER_POSITION_DTO)).willReturn(masterOrderPositionDtoDD);
+        given(masterOrderPositionDtoDD.getPluginIdentifier()).willReturn(MasterOrdersConstants.PLUGIN_IDENTIFIER);
+        given(masterOrderPositionDtoDD.getName()).willReturn(MasterOrdersConstants.MODEL_MASTER_ORDER_POSITION_DTO);
+
+        given(orderDD.create()).willAnswer(invocation -> mock(Entity.class));
+        given(orderDD.save(any(Entity.class))).willAnswer(invocation -> saveOrder((Entity) invocation.getArguments()[0]));
+        given(orderDD.find(anyString())).willReturn(orderAndSubOrdersQueryBuilder);
+        given(orderAndSubOrdersQueryBuilder.setLong(anyString(), anyLong())).willAnswer(invocation -> {
+            queriedOrderId = (Long) invocation.getArguments()[1];
+
+            return orderAndSubOrdersQueryBuilder;
+        });
+        given(orderAndSubOrdersQueryBuilder.list()).willAnswer(invocation -> mockSearchResult(savedOrders.get(queriedOrderId)));
+        given(orderService.findLastOrder(any(Entity.class))).willReturn(Optional.empty());
+
+        given(ordersGenerationJobService.submit(anyListOf(Long.class), any(Runnable.class), any(BiConsumer.class)))
+                .willAnswer(invocation -> new OrdersGenerationJob(L_JOB_ID, "user",
+                        ((List<?>) invocation.getArguments()[0]).size()));
+    }
+
+    @Test
+    public final void shouldGenerateOrdersAndPpsOneByOneBelowThreshold() {
+        // given
+        List<Entity> positions = mockPositions(L_BULK_GENERATION_THRESHOLD - 1);
+
+        // when
+        GenerationOrderResult result = ordersFromMOProductsGenerationService.generateOrders(positions, null, null, true);
+
+        // then
+        assertNull(result.getOrdersGenerationJobId());
+        verify(transactionManager, never()).getTransaction(any(TransactionDefinition.class));
+        verify(ordersGenerationJobService, never()).submit(anyListOf(Long.class), any(Runnable.class), any(BiConsumer.class));
+        verify(ordersGenerationService).tryGeneratePPS(eq(savedOrders.get(1L)), any(Date.class));
+        verify(ordersGenerationService).tryGeneratePPS(eq(savedOrders.get(2L)), any(Date.class));
+    }
+
+    @Test
+    public final void shouldGenerateOrdersInBatchesAndLeavePpsToJobFromThreshold() {
+        // given
+        List<Entity> positions = mockPositions(120);
+
+        // when
+        GenerationOrderResult result = ordersFromMOProductsGenerationService.generateOrders(positions, null, null, true);
+
+        // then
+        assertEquals(L_JOB_ID, result.getOrdersGenerationJobId());
+        verify(transactionManager, times(3)).getTransaction(any(TransactionDefinition.class));
+        verify(transactionManager, times(3)).commit(transactionStatus);
+        verify(ordersGenerationService, never()).tryGeneratePPS(any(Entity.class), any(Date.class));
+        assertEquals(LongStream.rangeClosed(1, 120).boxed().collect(Collectors.toList()), getSubmittedOrderIds());
+    }
+
+    @Test
+    public final void shouldReportPositionsOfFailedBatchAndGoOnWithNextBatch() {
+        // given
+        List<Entity> positions = mockPositions(120);
+
+        failingSave = 60;
+
+        // when
+        GenerationOrderResult result = ordersFromMOProductsGenerationService.generateOrders(positions, null, null, true);
+
+        // then
+        verify(transactionManager, times(2)).commit(transactionStatus);
+        verify(transactionManager).rollback(transactionStatus);
+
+        List<Long> committedOrderIds = LongStream.concat(LongStream.rangeClosed(1, 50), LongStream.rangeClosed(61, 80)).boxed()
+                .collect(Collectors.toList());
+
+        assertEquals(committedOrderIds, getSubmittedOrderIds());
+
+        result.showMessage(view);
+
+        verify(view).addMessage("masterOrders.masterOrder.generationOrder.positionsOfFailedBatches",
+                ComponentState.MessageType.FAILURE, false, LongStream.rangeClosed(51, 100)
+                        .mapToObj(i -> "P" + i + " (" + L_MASTER_ORDER_NUMBER + ")").collect(Collectors.joining(", ")));
+        verify(view).addMessage("masterOrders.masterOrder.generationOrder.generatedOrderNumbers",
+                ComponentState.MessageType.INFO, false,
+                committedOrderIds.stream().map(id -> "O" + id).collect(Collectors.joining(", ")));
+    }
+
+    @Test
+    public final void shouldGeneratePpsOfEachOrderInJob() {
+        // given
+        List<Entity> positions = mockPositions(L_BULK_GENERATION_THRESHOLD);
+
+        ordersFromMOProductsGenerationService.generateOrders(positions, null, null, true);
+
+        BiConsumer<Entity, OrdersGenerationJob> action = getSubmittedAction();
+
+        OrdersGenerationJob job = new OrdersGenerationJob(L_JOB_ID, "user", L_BULK_GENERATION_THRESHOLD);
+
+        given(ordersGenerationService.tryGeneratePPS(eq(savedOrders.get(2L)), any(Date.class)))
+                .willThrow(new IllegalStateException());
+
+        // when
+        savedOrders.values().forEach(order -> action.accept(order, job));
+
+        // then
+        verify(ordersGenerationService).tryGeneratePPS(eq(savedOrders.get(1L)), any(Date.class));
+        verify(ordersGenerationService).tryGeneratePPS(eq(savedOrders.get(2L)), any(Date.class));
+        verify(ordersGenerationService).tryGeneratePPS(eq(savedOrders.get(3L)), any(Date.class));
+        assertEquals(Lists.newArrayList("O2"), job.getOrdersWithoutPps());
+    }
+
+    private List<Entity> mockPositions(final int count) {
+        List<Entity> positionDtos = Lists.newArrayList();
+        List<Entity> masterOrderProducts = Lists.newArrayList();
+
+        for (long id = 1; id <= count; id++) {
+            Entity positionDto = mock(Entity.class);
+            Entity masterOrderProduct = mock(Entity.class);
+            Entity product = mock(Entity.class);
+
+            given(positionDto.getId()).willReturn(id);
+            given(positionDto.getDataDefinition()).willReturn(masterOrderPositionDtoDD);
+            given(positionDto.getDecimalField(MasterOrderPositionDtoFields.QUANTITY_REMAINING_TO_ORDER_WITHOUT_STOCK))
+                    .willReturn(BigDecimal.ONE);
+
+            given(product.getId()).willReturn(id);
+            given(product.getStringField(ProductFields.NUMBER)).willReturn("P" + id);
+
+            given(masterOrderProduct.getId()).willReturn(id);
+            given(masterOrderProduct.getDataDefinition()).willReturn(masterOrderProductDD);
+            given(masterOrderProduct.getBelongsToField(MasterOrderProductFields.PRODUCT)).willReturn(product);
+            given(masterOrderProduct.getBelongsToField(MasterOrderProductFields.TECHNOLOGY)).willReturn(technology);
+            given(masterOrderProduct.getBelongsToField(MasterOrderProductFields.MASTER_ORDER)).willReturn(masterOrder);
+
+            positionDtos.add(positionDto);
+            masterOrderProducts.add(masterOrderProduct);
+        }
+
+        stubFind(masterOrderPositionDtoDD, positionDtos);
+        stubFind(masterOrderProductDD, masterOrderProducts);
+
+        return positionDtos;
+    }
+
+    private void stubFind(final DataDefinition dataDefinition, final List<Entity> entities) {
+        SearchCriteriaBuilder searchCriteriaBuilder = mock(SearchCriteriaBuilder.class);
+        SearchResult searchResult = mockSearchResult(entities.toArray(new Entity[0]));
+
+        given(dataDefinition.find()).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.add(any(SearchCriterion.class))).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.list()).willReturn(searchResult);
+    }
+
+    private SearchResult mockSearchResult(final Entity... entities) {
+        SearchResult searchResult = mock(SearchResult.class);
+
+        given(searchResult.getEntities()).willReturn(Lists.newArrayList(entities));
+
+        return searchResult;
+    }
+
+    private Entity saveOrder(final Entity order) {
+        int count = savedOrdersCount.incrementAndGet();
+
+        if (Integer.valueOf(count).equals(failingSave)) {
+            throw new IllegalStateException();
+        }
+
+        long id = count;
+
+        given(order.getId()).willReturn(id);
+        given(order.isValid()).willReturn(true);
+        given(order.getStringField(OrderFields.NUMBER)).willReturn("O" + id);
+        given(order.getBelongsToField(OrderFields.TECHNOLOGY)).willReturn(technology);
+
+        savedOrders.put(id, order);
+
+        return order;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Long> getSubmittedOrderIds() {
+        ArgumentCaptor<List> orderIdsCaptor = ArgumentCaptor.forClass(List.class);
+
+        verify(ordersGenerationJobService).submit(orderIdsCaptor.capture(), any(Runnable.class), any(BiConsumer.class));
+
+        return orderIdsCaptor.getValue();
+    }
+
+    @SuppressWarnings("unchecked")
+    private BiConsumer<Entity, OrdersGenerationJob> getSubmittedAction() {
+        ArgumentCaptor<BiConsumer> actionCaptor = ArgumentCaptor.forClass(BiConsumer.class);
+
+        verify(ordersGenerationJobService).submit(anyListOf(Long.class), any(Runnable.class), actionCaptor.capture());
+
+        return actionCaptor.getValue();
+    }
+
+}
@@ -0,0 +1,178 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.masterOrders;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.util.WorkerContextService;
+import com.qcadoo.mes.orders.constants.OrdersConstants;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.security.api.SecurityService;
+
+public class OrdersGenerationJobServiceTest {
+
+    private static final String L_USER_NAME = "user";
+
+    private OrdersGenerationJobService ordersGenerationJobService;
+
+    @Mock
+    private DataDefinitionService dataDefinitionService;
+
+    @Mock
+    private SecurityService securityService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private WorkerContextService workerContextService;
+
+    @Mock
+    private ExecutorService executorService;
+
+    @Mock
+    private DataDefinition orderDD;
+
+    @Mock
+    private TransactionStatus transactionStatus;
+
+    @Mock
+    private Entity order1, order2, order3;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        ordersGenerationJobService = new OrdersGenerationJobService();
+
+        ReflectionTestUtils.setField(ordersGenerationJobService, "dataDefinitionService", dataDefinitionService);
+        ReflectionTestUtils.setField(ordersGenerationJobService, "securityService", securityService);
+        ReflectionTestUtils.setField(ordersGenerationJobService, "transactionManager", transactionManager);
+        ReflectionTestUtils.setField(ordersGenerationJobService, "workerContextService", workerContextService);
+        ReflectionTestUtils.setField(ordersGenerationJobService, "executorService", executorService);
+
+        given(securityService.getCurrentUserOrQcadooBotName()).willReturn(L_USER_NAME);
+        given(workerContextService.wrap(any(Runnable.class))).willAnswer(invocation -> invocation.getArguments()[0]);
+        given(transactionManager.getTransaction(any(TransactionDefinition.class))).willReturn(transactionStatus);
+        given(dataDefinitionService.get(OrdersConstants.PLUGIN_IDENTIFIER, OrdersConstants.MODEL_ORDER)).willReturn(orderDD);
+        given(orderDD.get(1L)).willReturn(order1);
+        given(orderDD.get(2L)).willReturn(order2);
+        given(orderDD.get(3L)).willReturn(order3);
+    }
+
+    @Test
+    public final void shouldPrepareOnceAndProcessEachOrderInGivenOrder() {
+        // given
+        Runnable preparation = mock(Runnable.class);
+        List<Entity> processedOrders = Lists.newArrayList();
+
+        // when
+        OrdersGenerationJob job = ordersGenerationJobService.submit(Lists.newArrayList(3L, 1L, 2L), preparation,
+                (order, ordersGenerationJob) -> processedOrders.add(order));
+
+        runSubmittedJob();
+
+        // then
+        verify(preparation).run();
+        assertEquals(Lists.newArrayList(order3, order1, order2), processedOrders);
+        verify(transactionManager, times(4)).commit(transactionStatus);
+        assertEquals(3, job.getProcessed());
+        assertTrue(job.isFinished());
+        assertEquals(L_USER_NAME, job.getUserName());
+    }
+
+    @Test
+    public final void shouldProcessNextOrdersIfOneOfThemFails() {
+        // given
+        List<Entity> processedOrders = Lists.newArrayList();
+
+        // when
+        OrdersGenerationJob job = ordersGenerationJobService.submit(Lists.newArrayList(1L, 2L, 3L), () -> {
+        }, (order, ordersGenerationJob) -> {
+            if (order == order2) {
+                ordersGenerationJob.addOrderWithoutPps("2");
+
+                throw new IllegalStateException();
+            }
+
+            processedOrders.add(order);
+        });
+
+        runSubmittedJob();
+
+        // then
+        assertEquals(Lists.newArrayList(order1, order3), processedOrders);
+        verify(transactionManager).rollback(transactionStatus);
+        assertEquals(Lists.newArrayList("2"), job.getOrdersWithoutPps());
+        assertTrue(job.isFinished());
+    }
+
+    @Test
+    public final void shouldRunJobInContextOfUserWhoSubmittedIt() {
+        // given
+        Runnable wrappedJob = mock(Runnable.class);
+
+        given(workerContextService.wrap(any(Runnable.class))).willReturn(wrappedJob);
+
+        // when
+        OrdersGenerationJob job = ordersGenerationJobService.submit(Lists.newArrayList(1L), () -> {
+        }, (order, ordersGenerationJob) -> {
+        });
+
+        // then
+        verify(executorService).submit(wrappedJob);
+        assertEquals(job, ordersGenerationJobService.getJob(job.getId()).get());
+    }
+
+    private void runSubmittedJob() {
+        ArgumentCaptor<Runnable> jobCaptor = ArgumentCaptor.forClass(Runnable.class);
+
+        verify(executorService).submit(jobCaptor.capture());
+
+        jobCaptor.getValue().run();
+    }
+
+}
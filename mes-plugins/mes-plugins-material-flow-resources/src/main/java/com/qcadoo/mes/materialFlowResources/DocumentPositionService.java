@@ -9,6 +9,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.TreeMap;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -69,6 +70,14 @@ public class DocumentPositionService {
     @Autowired
     private PluginManager pluginManager;
 
+    @Autowired
+    private DocumentPositionsGridCache documentPositionsGridCache;
+
+    /**
+     * Returns page of document positions. Row count is cached per document and filter, and the next page after already served
+     * one is read with keyset condition on sort column and id, so cost of paging doesn't depend on page number. Attribute
+     * columns are pivoted with one aggregation over attribute values of document's positions.
+     */
     public GridResponse<DocumentPositionDTO> findAll(final Long documentId, final String _sidx, final String _sord, int page,
             int perPage, final DocumentPositionDTO position, final Map<String, String> attributeFilters) {
         String sidx = _sidx != null ? _sidx : "";
@@ -76,65 +85,65 @@ public class DocumentPositionService {
 
         Preconditions.checkState(Arrays.asList("asc", "desc", "").contains(sord));
 
-        Map<String, Object> config = getGridConfig(documentId);
-        List<ColumnProperties> columns = (List<ColumnProperties>) config.get("columns");
-        List<String> attrCloumns = columns.stream().filter(c -> c.isChecked() && c.isForAttribute())
+        List<String> attrColumns = getGridColumns().stream().filter(c -> c.isChecked() && c.isForAttribute())
                 .map(ColumnProperties::getName).collect(Collectors.toList());
-        StringBuilder attrQueryPart = new StringBuilder();
-        if (!attrCloumns.isEmpty()) {
-            attrCloumns.forEach(ac -> {
-                attrQueryPart.append(" , ");
-                attrQueryPart.append("(SELECT string_agg(positionattributevalue.value, ', ') ");
-                attrQueryPart.append("FROM materialflowresources_positionattributevalue positionattributevalue ");
-                attrQueryPart.append("LEFT JOIN basic_attribute att ON att.id = positionattributevalue.attribute_id ");
-                attrQueryPart.append("WHERE positionattributevalue.position_id = p.id AND att.number ='" + ac
-                        + "' group by att.number) as \"" + ac + "\" ");
-            });
-
-        }
-        String query = "SELECT %s FROM ( SELECT p.*, p.document_id AS document, product.number AS product, product.name AS productName, product.unit, additionalcode.code AS additionalcode, "
-                + "palletnumber.number AS palletnumber, location.number AS storagelocation, resource.number AS resource, batch.number as batch, batch.id as batchId, \n"
-                + "(coalesce(r1.resourcesCount,0) < 2 AND p.quantity >= coalesce(resource.quantity,0)) AS lastResource, p.pickingdate AS pickingDate, staff.name || ' ' || staff.surname AS pickingWorker "
-                + attrQueryPart.toString() + "	FROM materialflowresources_position p\n"
-                + "	LEFT JOIN basic_product product ON (p.product_id = product.id)\n"
-                + "	LEFT JOIN basic_additionalcode additionalcode ON (p.additionalcode_id = additionalcode.id)\n"
-                + "	LEFT JOIN basic_palletnumber palletnumber ON (p.palletnumber_id = palletnumber.id)\n"
-                + "	LEFT JOIN materialflowresources_resource resource ON (p.resource_id = resource.id)\n"
-                + "	LEFT JOIN advancedgenealogy_batch batch ON (p.batch_id = batch.id)\n"
-                + "	LEFT JOIN basic_staff staff ON (p.pickingworker_id = staff.id)\n"
-                + " LEFT JOIN (SELECT palletnumber_id, count(id) as resourcesCount FROM materialflowresources_resource GROUP BY palletnumber_id) r1 ON r1.palletnumber_id = resource.palletnumber_id \n"
-                + "	LEFT JOIN materialflowresources_storagelocation location ON (p.storagelocation_id = location.id) WHERE p.document_id = :documentId %s) q ";
 
         Map<String, Object> parameters = Maps.newHashMap();
 
         parameters.put(DOCUMENT_ID, documentId);
 
-        query += lookupUtils.addQueryWhereForObject(position);
+        String query = "FROM (" + getPositionsQuery(attrColumns, parameters) + ") q ";
+
+        List<String> conditions = Lists.newArrayList();
+
+        String lookupWhere = lookupUtils.addQueryWhereForObject(position);
+
+        if (!lookupWhere.trim().isEmpty()) {
+            conditions.add(lookupWhere.trim().replaceFirst("^WHERE ", ""));
+        }
+
         parameters.putAll(lookupUtils.getParametersForObject(position));
 
-        if (!attributeFilters.isEmpty()) {
-            StringBuilder attributeFiltersBuilder = new StringBuilder();
-            attributeFiltersBuilder.append("WHERE ");
-            for (Map.Entry<String, String> filterElement : attributeFilters.entrySet()) {
-                attributeFiltersBuilder.append("q.\"" + filterElement.getKey() + "\" ");
-                attributeFiltersBuilder.append("ilike :" + filterElement.getKey().replaceAll("[^a-zA-Z0-9]+", "") + " ");
-                parameters.put(filterElement.getKey().replaceAll("[^a-zA-Z0-9]+", ""), "%" + filterElement.getValue() + "%");
-            }
-            query = query + attributeFiltersBuilder.toString();
+        for (Map.Entry<String, String> filterElement : attributeFilters.entrySet()) {
+            String parameterName = filterElement.getKey().replaceAll("[^a-zA-Z0-9]+", "");
+
+            conditions.add("q.\"" + filterElement.getKey() + "\" ilike :" + parameterName);
+            parameters.put(parameterName, "%" + filterElement.getValue() + "%");
         }
-        String queryCount = String.format(query, "COUNT(*)", "");
 
+        String where = conditions.isEmpty() ? "" : "WHERE " + String.join(" AND ", conditions) + " ";
+        String querySignature = where + new TreeMap<>(parameters);
+
+        int countRecords = documentPositionsGridCache.getCount(documentId, querySignature,
+                () -> jdbcTemplate.queryForObject("SELECT COUNT(*) " + query + where, parameters, Long.class).intValue());
+
+        String sortColumn;
         String orderBy;
         if (sidx.startsWith("attrs.")) {
-            orderBy = "\"" + sidx.replace("attrs.", "") + "\"";
+            sortColumn = sidx.replace("attrs.", "");
+            orderBy = "q.\"" + sortColumn + "\"";
         } else {
+            sortColumn = sidx;
             orderBy = sidx;
         }
 
-        String queryRecords = String.format(query, "*", "ORDER BY " + orderBy + " " + sord)
-                + String.format(" LIMIT %d OFFSET %d", perPage, perPage * (page - 1));
+        String pagingSignature = querySignature + orderBy + " " + sord + " " + perPage;
+        DocumentPositionsGridCache.PageEnd previousPageEnd = page > 1
+                ? documentPositionsGridCache.getPageEnd(documentId, pagingSignature, page - 1) : null;
+
+        String queryRecords;
+        if (Objects.nonNull(previousPageEnd)) {
+            String seekCondition = getSeekCondition(orderBy, sord, previousPageEnd, parameters);
+
+            queryRecords = "SELECT * " + query + (where.isEmpty() ? "WHERE " : where + "AND ") + seekCondition
+                    + getOrderBy(orderBy, sord) + String.format(" LIMIT %d", perPage);
+        } else {
+            queryRecords = "SELECT * " + query + where + getOrderBy(orderBy, sord)
+                    + String.format(" LIMIT %d OFFSET %d", perPage, perPage * (page - 1));
+        }
+
+        DocumentPositionsGridCache.PageEnd[] pageEnd = new DocumentPositionsGridCache.PageEnd[1];
 
-        int countRecords = jdbcTemplate.queryForObject(queryCount, parameters, Long.class).intValue();
         List<DocumentPositionDTO> records = jdbcTemplate.query(queryRecords, parameters, (resultSet, i) -> {
             DocumentPositionDTO documentPositionDTO = new DocumentPositionDTO();
             documentPositionDTO.setId(resultSet.getLong(ID));
@@ -165,21 +174,114 @@ public class DocumentPositionService {
             documentPositionDTO.setResource(resultSet.getString("resource"));
             documentPositionDTO.setWaste(resultSet.getBoolean("waste"));
             documentPositionDTO.setLastResource(resultSet.getBoolean("lastResource"));
-            if (!attrCloumns.isEmpty()) {
+            if (!attrColumns.isEmpty()) {
                 Map<String, Object> attrs = Maps.newHashMap();
-                for (String ac : attrCloumns) {
+                for (String ac : attrColumns) {
                     attrs.put(ac, resultSet.getString(ac));
                 }
                 documentPositionDTO.setAttrs(attrs);
 
             }
+            pageEnd[0] = new DocumentPositionsGridCache.PageEnd(
+                    sortColumn.isEmpty() ? null : resultSet.getObject(sortColumn), documentPositionDTO.getId());
+
             return documentPositionDTO;
         });
 
+        if (records.size() == perPage && Objects.nonNull(pageEnd[0])) {
+            documentPositionsGridCache.putPageEnd(documentId, pagingSignature, page, pageEnd[0]);
+        }
+
         return new GridResponse<>(page, Double.valueOf(Math.ceil((1.0 * countRecords) / perPage)).intValue(), countRecords,
                 records);
     }
 
+    private String getPositionsQuery(final List<String> attrColumns, final Map<String, Object> parameters) {
+        StringBuilder attrQueryPart = new StringBuilder();
+        StringBuilder attrJoinPart = new StringBuilder();
+
+        if (!attrColumns.isEmpty()) {
+            attrJoinPart.append("	LEFT JOIN (SELECT positionattributevalue.position_id");
+
+            for (int index = 0; index < attrColumns.size(); index++) {
+                String ac = attrColumns.get(index);
+                String alias = "\"" + ac.replace("\"", "\"\"") + "\"";
+
+                attrQueryPart.append(", attrs.").append(alias);
+                attrJoinPart.append(", string_agg(positionattributevalue.value, ', ') FILTER (WHERE att.number = :attribute")
+                        .append(index).append(") AS ").append(alias);
+                parameters.put("attribute" + index, ac);
+            }
+
+            attrJoinPart.append(" FROM materialflowresources_positionattributevalue positionattributevalue ");
+            attrJoinPart.append("JOIN materialflowresources_position ap ON ap.id = positionattributevalue.position_id ");
+            attrJoinPart.append("JOIN basic_attribute att ON att.id = positionattributevalue.attribute_id ");
+            attrJoinPart.append("WHERE ap.document_id = :documentId GROUP BY positionattributevalue.position_id) attrs ");
+            attrJoinPart.append("ON attrs.position_id = p.id\n");
+        }
+
+        return "SELECT p.*, p.document_id AS document, product.number AS product, product.name AS productName, product.unit, additionalcode.code AS additionalcode, "
+                + "palletnumber.number AS palletnumber, location.number AS storagelocation, resource.number AS resource, batch.number as batch, batch.id as batchId, \n"
+                + "(coalesce(r1.resourcesCount,0) < 2 AND p.quantity >= coalesce(resource.quantity,0)) AS lastResource, p.pickingdate AS pickingDate, staff.name || ' ' || staff.surname AS pickingWorker "
+                + attrQueryPart.toString() + "	FROM materialflowresources_position p\n"
+                + "	LEFT JOIN basic_product product ON (p.product_id = product.id)\n"
+                + "	LEFT JOIN basic_additionalcode additionalcode ON (p.additionalcode_id = additionalcode.id)\n"
+                + "	LEFT JOIN basic_palletnumber palletnumber ON (p.palletnumber_id = palletnumber.id)\n"
+                + "	LEFT JOIN materialflowresources_resource resource ON (p.resource_id = resource.id)\n"
+                + "	LEFT JOIN advancedgenealogy_batch batch ON (p.batch_id = batch.id)\n"
+                + "	LEFT JOIN basic_staff staff ON (p.pickingworker_id = staff.id)\n"
+                + " LEFT JOIN (SELECT palletnumber_id, count(id) as resourcesCount FROM materialflowresources_resource "
+                + "WHERE palletnumber_id IN (SELECT pr.palletnumber_id FROM materialflowresources_position pp "
+                + "JOIN materialflowresources_resource pr ON pr.id = pp.resource_id WHERE pp.document_id = :documentId) "
+                + "GROUP BY palletnumber_id) r1 ON r1.palletnumber_id = resource.palletnumber_id \n"
+                + attrJoinPart.toString()
+                + "	LEFT JOIN materialflowresources_storagelocation location ON (p.storagelocation_id = location.id) WHERE p.document_id = :documentId";
+    }
+
+    private String getOrderBy(final String orderBy, final String sord) {
+        if (orderBy.isEmpty()) {
+            return "ORDER BY q.id " + sord;
+        }
+
+        return "ORDER BY " + orderBy + " " + sord + ", q.id " + sord;
+    }
+
+    /**
+     * Returns condition selecting rows after given end of previous page. Nulls are last in ascending and first in descending
+     * order.
+     */
+    static String getSeekCondition(final String orderBy, final String sord, final DocumentPositionsGridCache.PageEnd pageEnd,
+            final Map<String, Object> parameters) {
+        boolean descending = "desc".equals(sord);
+        String comparison = descending ? " < " : " > ";
+        String idCondition = "q.id" + comparison + ":lastId";
+
+        parameters.put("lastId", pageEnd.getId());
+
+        if (orderBy.isEmpty()) {
+            return idCondition + " ";
+        }
+
+        if (Objects.isNull(pageEnd.getSortValue())) {
+            if (descending) {
+                return "(" + orderBy + " IS NOT NULL OR " + idCondition + ") ";
+            }
+
+            return "(" + orderBy + " IS NULL AND " + idCondition + ") ";
+        }
+
+        parameters.put("lastSortValue", pageEnd.getSortValue());
+
+        String seekCondition = "(" + orderBy + comparison + ":lastSortValue OR (" + orderBy + " = :lastSortValue AND "
+                + idCondition + "))";
+
+        if (descending) {
+            return seekCondition + " ";
+        }
+
+        return "(" + seekCondition + " OR " + orderBy + " IS NULL) ";
+    }
+
     private void delete(final Long id) {
         validator.validateBeforeDelete(id);
 
@@ -197,6 +299,7 @@ public class DocumentPositionService {
 
         reservationsService.deleteReservationFromDocumentPosition(params);
         jdbcTemplate.update("DELETE FROM materialflowresources_position WHERE id = :id ", params);
+        documentPositionsGridCache.invalidate(((Number) result.get("document_id")).longValue());
     }
 
     public void create(final DocumentPositionDTO documentPositionVO) {
@@ -226,6 +329,7 @@ public class DocumentPositionService {
         }
         attributePositionService.createOrUpdateAttributePositionValues(true, positionId, documentPositionVO.getAttrs());
         updateDocumentPositionsNumbers(documentPositionVO.getDocument());
+        documentPositionsGridCache.invalidate(documentPositionVO.getDocument());
     }
 
     public void update(final DocumentPositionDTO documentPositionVO) {
@@ -245,6 +349,7 @@ public class DocumentPositionService {
         attributePositionService.createOrUpdateAttributePositionValues(false, documentPositionVO.getId(),
                 documentPositionVO.getAttrs());
         updateDocumentPositionsNumbers(documentPositionVO.getDocument());
+        documentPositionsGridCache.invalidate(documentPositionVO.getDocument());
     }
 
     private List<StorageLocationDTO> getStorageLocations(String preparedQuery, String q, Map<String, Object> paramMap) {
@@ -304,12 +409,7 @@ public class DocumentPositionService {
 
     public Map<String, Object> getGridConfig(final Long documentId) {
         try {
-            String query = "SELECT documentpositionparametersitem.*, attr.dataType as attributeDataType, attr.valueType as attributeValueType "
-                    + "FROM materialflowresources_documentpositionparametersitem documentpositionparametersitem "
-                    + "LEFT JOIN basic_attribute attr ON attr.id = documentpositionparametersitem.attribute_id  "
-                    + "WHERE attr IS NULL OR attr.active = TRUE  ORDER BY documentpositionparametersitem.ordering";
-            List<ColumnProperties> columns = jdbcTemplate.query(query, Collections.emptyMap(),
-                    new BeanPropertyRowMapper(ColumnProperties.class));
+            List<ColumnProperties> columns = getGridColumns();
 
             Map<String, Object> config = Maps.newHashMap();
 
@@ -328,6 +428,15 @@ public class DocumentPositionService {
         }
     }
 
+    private List<ColumnProperties> getGridColumns() {
+        String query = "SELECT documentpositionparametersitem.*, attr.dataType as attributeDataType, attr.valueType as attributeValueType "
+                + "FROM materialflowresources_documentpositionparametersitem documentpositionparametersitem "
+                + "LEFT JOIN basic_attribute attr ON attr.id = documentpositionparametersitem.attribute_id  "
+                + "WHERE attr IS NULL OR attr.active = TRUE  ORDER BY documentpositionparametersitem.ordering";
+
+        return jdbcTemplate.query(query, Collections.emptyMap(), new BeanPropertyRowMapper(ColumnProperties.class));
+    }
+
     private String directionConvertingQuantityAfterChangingConverter(Long documentId, Boolean isOutDocument) {
         String query = "SELECT loc.directionconvertingquantityafterchangingconverter as directionconvertingquantityafterchangingconverter ";
         query += "FROM materialflowresources_document doc ";
@@ -250,7 +250,7 @@ public class DocumentPositionValidator {
             }
         }
 
-        String query = "SELECT availableQuantity FROM materialflowresources_resourcestockdto "
+        String query = "SELECT availableQuantity FROM materialflowresources_resourcestock "
                 + "WHERE product_id = :product_id AND location_id = :location_id";
 
         Map<String, Object> params = Maps.newHashMap();
@@ -0,0 +1,112 @@
+package com.qcadoo.mes.materialFlowResources;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.qcadoo.tenant.api.MultiTenantUtil;
+
+/**
+ * Caches row counts and ends of already served pages of document positions grid, per tenant, document and filter. Everything
+ * cached for document is invalidated whenever its positions change and again when the changing transaction is completed, so
+ * state read before commit isn't kept. Entries expire anyway after a few minutes, so changes made elsewhere, e.g. in joined
+ * tables, are eventually visible.
+ */
+@Service
+public class DocumentPositionsGridCache {
+
+    private static final long L_MAXIMUM_SIZE = 1000L;
+
+    private static final long L_EXPIRE_AFTER_MINUTES = 5L;
+
+    private final Cache<String, GridState> states = CacheBuilder.newBuilder().maximumSize(L_MAXIMUM_SIZE)
+            .expireAfterWrite(L_EXPIRE_AFTER_MINUTES, TimeUnit.MINUTES).build();
+
+    public int getCount(final Long documentId, final String querySignature, final Supplier<Integer> countSupplier) {
+        return getState(documentId).counts.computeIfAbsent(querySignature, signature -> countSupplier.get());
+    }
+
+    public PageEnd getPageEnd(final Long documentId, final String pagingSignature, final int page) {
+        return getState(documentId).pageEnds.get(pagingSignature + "#" + page);
+    }
+
+    public void putPageEnd(final Long documentId, final String pagingSignature, final int page, final PageEnd pageEnd) {
+        getState(documentId).pageEnds.put(pagingSignature + "#" + page, pageEnd);
+    }
+
+    public void invalidate(final Long documentId) {
+        if (Objects.isNull(documentId)) {
+            return;
+        }
+
+        String key = getKey(documentId);
+
+        states.invalidate(key);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void afterCompletion(final int status) {
+                    super.afterCompletion(status);
+                    states.invalidate(key);
+                }
+            });
+        }
+    }
+
+    private String getKey(final Long documentId) {
+        return MultiTenantUtil.getCurrentTenantId() + ":" + documentId;
+    }
+
+    private GridState getState(final Long documentId) {
+        try {
+            return states.get(getKey(documentId), GridState::new);
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class GridState {
+
+        private final Map<String, Integer> counts = Maps.newConcurrentMap();
+
+        private final Map<String, PageEnd> pageEnds = Maps.newConcurrentMap();
+
+    }
+
+    /**
+     * Sort value and id of the last row of a page, from which the next page is read with keyset condition instead of offset.
+     */
+    public static class PageEnd {
+
+        private final Object sortValue;
+
+        private final Long id;
+
+        public PageEnd(final Object sortValue, final Long id) {
+            this.sortValue = sortValue;
+            this.id = id;
+        }
+
+        public Object getSortValue() {
+            return sortValue;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+    }
+
+}
@@ -32,6 +32,7 @@ import java.util.Objects;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 
 import com.google.common.collect.Maps;
@@ -46,7 +47,6 @@ import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.NumberService;
 import com.qcadoo.model.api.search.SearchOrders;
-import com.qcadoo.model.api.search.SearchQueryBuilder;
 import com.qcadoo.model.api.search.SearchRestrictions;
 import com.qcadoo.view.api.ViewDefinitionState;
 import com.qcadoo.view.api.components.FieldComponent;
@@ -67,6 +67,9 @@ public class MaterialFlowResourcesServiceImpl implements MaterialFlowResourcesSe
     @Autowired
     private CurrencyService currencyService;
 
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
     @Override
     public List<Entity> getWarehouseLocationsFromDB() {
         return getLocationDD().find().list().getEntities();
@@ -115,34 +118,36 @@ public class MaterialFlowResourcesServiceImpl implements MaterialFlowResourcesSe
         Map<Long, BigDecimal> quantities = Maps.newHashMap();
 
         if (products.size() > 0) {
-            List<Integer> productIds = products.stream().map(product -> product.getId().intValue()).collect(Collectors.toList());
-            Integer locationId = location.getId().intValue();
+            List<Long> productIds = products.stream().map(Entity::getId).collect(Collectors.toList());
 
             StringBuilder query = new StringBuilder();
 
-            query.append("SELECT ");
-            query.append(
-                    "resourceStockDto.product_id AS product_id, resourceStockDto.quantity AS quantity, resourceStockDto.availableQuantity AS availableQuantity ");
-            query.append("FROM #materialFlowResources_resourceStockDto resourceStockDto ");
-            query.append("WHERE resourceStockDto.product_id IN (:productIds) ");
-            query.append("AND resourceStockDto.location_id = :locationId ");
+            query.append("SELECT resourceStock.product_id, ");
 
             if (withoutBlockedForQualityControl) {
-                query.append("AND resourceStockDto.blockedForQualityControl = false ");
+                query.append("resourceStock.quantity - resourceStock.blockedQuantity AS quantity, ");
+                query.append("resourceStock.availableQuantity ");
+            } else {
+                query.append("resourceStock.quantity, resourceStock.availableQuantity ");
             }
 
-            SearchQueryBuilder searchQueryBuilder = getResourceStockDtoDD().find(query.toString());
+            query.append("FROM materialflowresources_resourcestock resourceStock ");
+            query.append("WHERE resourceStock.product_id IN (:productIds) ");
+            query.append("AND resourceStock.location_id = :locationId ");
+
+            if (withoutBlockedForQualityControl) {
+                query.append("AND resourceStock.quantity > resourceStock.blockedQuantity ");
+            }
 
-            searchQueryBuilder.setParameterList("productIds", productIds);
-            searchQueryBuilder.setParameter("locationId", locationId);
+            Map<String, Object> params = Maps.newHashMap();
 
-            List<Entity> resourceStocks = searchQueryBuilder.list().getEntities();
+            params.put("productIds", productIds);
+            params.put("locationId", location.getId());
 
-            resourceStocks.forEach(resourceStock -> quantities.put(
-                    Long.valueOf(resourceStock.getIntegerField(ResourceStockDtoFields.PRODUCT_ID).intValue()),
-                    ResourceStockDtoFields.AVAILABLE_QUANTITY.equals(fieldName)
-                            ? resourceStock.getDecimalField(ResourceStockDtoFields.AVAILABLE_QUANTITY)
-                            : resourceStock.getDecimalField(ResourceStockDtoFields.QUANTITY)));
+            jdbcTemplate.query(query.toString(), params, rs -> {
+                quantities.put(rs.getLong("product_id"), ResourceStockDtoFields.AVAILABLE_QUANTITY.equals(fieldName)
+                        ? rs.getBigDecimal("availableQuantity") : rs.getBigDecimal("quantity"));
+            });
         }
 
         return quantities;
@@ -196,9 +201,4 @@ public class MaterialFlowResourcesServiceImpl implements MaterialFlowResourcesSe
                 MaterialFlowResourcesConstants.MODEL_RESOURCE);
     }
 
-    private DataDefinition getResourceStockDtoDD() {
-        return dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
-                MaterialFlowResourcesConstants.MODEL_RESOURCE_STOCK_DTO);
-    }
-
 }
@@ -86,4 +86,6 @@ public final class PositionFields {
     public static final String REST_AFTER_SHIFT_DISPOSITION = "restAfterShiftDisposition";
 
     public static final String REST_AFTER_SHIFT_DISPOSITION_ADD_UNIT = "restAfterShiftDispositionAddUnit";
+
+    public static final String MAKE_RESERVATION = "makeReservation";
 }
@@ -0,0 +1,56 @@
+package com.qcadoo.mes.materialFlowResources.dto;
+
+import java.math.BigDecimal;
+
+public class ReservationDelta {
+
+    private final Long positionId;
+
+    private final Long resourceId;
+
+    private final Long locationId;
+
+    private final Long productId;
+
+    private final BigDecimal quantity;
+
+    public ReservationDelta(final Long positionId, final Long resourceId, final Long locationId, final Long productId,
+            final BigDecimal quantity) {
+        this.positionId = positionId;
+        this.resourceId = resourceId;
+        this.locationId = locationId;
+        this.productId = productId;
+        this.quantity = quantity;
+    }
+
+    public ReservationDelta negate() {
+        return new ReservationDelta(positionId, resourceId, locationId, productId, quantity.negate());
+    }
+
+    public Long getPositionId() {
+        return positionId;
+    }
+
+    public Long getResourceId() {
+        return resourceId;
+    }
+
+    public Long getLocationId() {
+        return locationId;
+    }
+
+    public Long getProductId() {
+        return productId;
+    }
+
+    public BigDecimal getQuantity() {
+        return quantity;
+    }
+
+    @Override
+    public String toString() {
+        return "ReservationDelta{positionId=" + positionId + ", resourceId=" + resourceId + ", locationId=" + locationId
+                + ", productId=" + productId + ", quantity=" + quantity + "}";
+    }
+
+}
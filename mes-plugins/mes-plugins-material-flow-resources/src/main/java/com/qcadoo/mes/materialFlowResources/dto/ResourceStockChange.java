@@ -0,0 +1,67 @@
+package com.qcadoo.mes.materialFlowResources.dto;
+
+import java.math.BigDecimal;
+
+public class ResourceStockChange {
+
+    private final Long locationId;
+
+    private final Long productId;
+
+    private BigDecimal quantity;
+
+    private BigDecimal blockedQuantity;
+
+    private BigDecimal reservedQuantity;
+
+    public ResourceStockChange(final Long locationId, final Long productId, final BigDecimal quantity,
+            final BigDecimal blockedQuantity, final BigDecimal reservedQuantity) {
+        this.locationId = locationId;
+        this.productId = productId;
+        this.quantity = quantity;
+        this.blockedQuantity = blockedQuantity;
+        this.reservedQuantity = reservedQuantity;
+    }
+
+    public static ResourceStockChange ofQuantity(final Long locationId, final Long productId, final BigDecimal quantity,
+            final boolean blockedForQualityControl) {
+        return new ResourceStockChange(locationId, productId, quantity, blockedForQualityControl ? quantity : BigDecimal.ZERO,
+                BigDecimal.ZERO);
+    }
+
+    public static ResourceStockChange ofReservedQuantity(final Long locationId, final Long productId,
+            final BigDecimal reservedQuantity) {
+        return new ResourceStockChange(locationId, productId, BigDecimal.ZERO, BigDecimal.ZERO, reservedQuantity);
+    }
+
+    public void add(final ResourceStockChange change) {
+        quantity = quantity.add(change.getQuantity());
+        blockedQuantity = blockedQuantity.add(change.getBlockedQuantity());
+        reservedQuantity = reservedQuantity.add(change.getReservedQuantity());
+    }
+
+    public boolean isEmpty() {
+        return quantity.signum() == 0 && blockedQuantity.signum() == 0 && reservedQuantity.signum() == 0;
+    }
+
+    public Long getLocationId() {
+        return locationId;
+    }
+
+    public Long getProductId() {
+        return productId;
+    }
+
+    public BigDecimal getQuantity() {
+        return quantity;
+    }
+
+    public BigDecimal getBlockedQuantity() {
+        return blockedQuantity;
+    }
+
+    public BigDecimal getReservedQuantity() {
+        return reservedQuantity;
+    }
+
+}
@@ -7,6 +7,7 @@ import org.springframework.stereotype.Service;
 
 import com.qcadoo.mes.materialFlowResources.constants.ReservationFields;
 import com.qcadoo.mes.materialFlowResources.service.ResourceReservationsService;
+import com.qcadoo.mes.materialFlowResources.service.ResourceStockService;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.Entity;
 
@@ -16,6 +17,9 @@ public class ReservationHooks {
     @Autowired
     private ResourceReservationsService resourceReservationsService;
 
+    @Autowired
+    private ResourceStockService resourceStockService;
+
     public void onSave(DataDefinition reservationDD, Entity reservation) {
         Entity newResource = reservation.getBelongsToField(ReservationFields.RESOURCE);
         Entity oldResource = null;
@@ -41,6 +45,14 @@ public class ReservationHooks {
         } else if (oldResource != null) {
             resourceReservationsService.updateResourceQuantites(oldReservation, oldQuantity.negate());
         }
+
+        resourceStockService.updateResourceStockReservation(reservation, oldReservation);
+    }
+
+    public boolean onDelete(DataDefinition reservationDD, Entity reservation) {
+        resourceStockService.updateResourceStockReservation(null, reservation);
+
+        return true;
     }
 
     public void onCopy(DataDefinition reservationDD, Entity reservation) {
@@ -24,6 +24,7 @@
 package com.qcadoo.mes.materialFlowResources.hooks;
 
 import com.qcadoo.mes.materialFlowResources.constants.ResourceFields;
+import com.qcadoo.mes.materialFlowResources.service.ResourceStockService;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.Entity;
 import org.apache.commons.lang3.StringUtils;
@@ -43,6 +44,9 @@ public class ResourceModelHooks {
     @Autowired
     private NamedParameterJdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private ResourceStockService resourceStockService;
+
     public void onSave(final DataDefinition resourceDD, final Entity resource) {
         if (StringUtils.isEmpty(resource.getStringField(ResourceFields.NUMBER))) {
             Date time = resource.getDateField(ResourceFields.TIME);
@@ -60,6 +64,28 @@ public class ResourceModelHooks {
 
             resource.setField(ResourceFields.NUMBER, number);
         }
+
+        updateResourceStock(resourceDD, resource);
+    }
+
+    private void updateResourceStock(final DataDefinition resourceDD, final Entity resource) {
+        if (!resource.isValid()) {
+            return;
+        }
+
+        Entity existingResource = null;
+
+        if (Objects.nonNull(resource.getId())) {
+            existingResource = resourceDD.get(resource.getId());
+        }
+
+        resourceStockService.updateResourceStock(resource, existingResource);
+    }
+
+    public boolean onDelete(final DataDefinition resourceDD, final Entity resource) {
+        resourceStockService.updateResourceStock(null, resource);
+
+        return true;
     }
 
     public void onCreate(final DataDefinition resourceDD, final Entity resource) {
@@ -2,21 +2,25 @@ package com.qcadoo.mes.materialFlowResources.listeners;
 
 import java.math.BigDecimal;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.qcadoo.mes.basic.constants.ProductFields;
 import com.qcadoo.mes.materialFlowResources.constants.DocumentFields;
-import com.qcadoo.mes.materialFlowResources.constants.DocumentType;
-import com.qcadoo.mes.materialFlowResources.constants.LocationFieldsMFR;
+import com.qcadoo.mes.materialFlowResources.constants.DocumentState;
 import com.qcadoo.mes.materialFlowResources.constants.MaterialFlowResourcesConstants;
 import com.qcadoo.mes.materialFlowResources.constants.PositionFields;
 import com.qcadoo.mes.materialFlowResources.constants.ResourceFields;
-import com.qcadoo.mes.materialFlowResources.constants.ResourceStockDtoFields;
+import com.qcadoo.mes.materialFlowResources.service.ReservationWriter;
+import com.qcadoo.mes.materialFlowResources.service.ReservationsService;
+import com.qcadoo.mes.materialFlowResources.service.ResourceStockService;
 import com.qcadoo.model.api.BigDecimalUtils;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
@@ -46,6 +50,15 @@ public class PositionAddMultiListeners {
     @Autowired
     private NumberService numberService;
 
+    @Autowired
+    private ReservationsService reservationsService;
+
+    @Autowired
+    private ResourceStockService resourceStockService;
+
+    @Autowired
+    private ReservationWriter reservationWriter;
+
     public void addPositions(final ViewDefinitionState view, final ComponentState state, final String[] args) {
         GridComponent resourceGrid = (GridComponent) view.getComponentByReference(L_RESOURCE_GRID);
         CheckBoxComponent generated = (CheckBoxComponent) view.getComponentByReference(L_GENERATED);
@@ -71,15 +84,31 @@ public class PositionAddMultiListeners {
         Entity helper = form.getPersistedEntityWithIncludedFormValues();
         Entity document = getDocumentDD().get(helper.getLongField(L_DOCUMENT_ID));
 
-        List<String> errorNumbers = Lists.newArrayList();
+        List<Entity> resources = getResourceDD().find().add(SearchRestrictions.in("id", selectedEntities)).list()
+                .getEntities();
 
-        for (Long resourceId : selectedEntities) {
-            Entity resource = getResourceDD().get(resourceId);
+        boolean makeReservations = !DocumentState.of(document).equals(DocumentState.ACCEPTED)
+                && reservationsService.reservationsEnabledForDocumentPositions(document);
+        Map<Long, BigDecimal> availableQuantities = Maps.newHashMap();
 
+        if (makeReservations) {
+            Set<Long> productIds = resources.stream()
+                    .map(resource -> resource.getBelongsToField(ResourceFields.PRODUCT).getId()).collect(Collectors.toSet());
+
+            availableQuantities.putAll(resourceStockService
+                    .getResourceStockAvailableQuantities(document.getBelongsToField(DocumentFields.LOCATION_FROM), productIds));
+        }
+
+        List<String> errorNumbers = Lists.newArrayList();
+        List<Entity> reservedPositions = Lists.newArrayList();
+
+        for (Entity resource : resources) {
             try {
-                Entity newPosition = createPosition(document, resource);
+                Entity newPosition = createPosition(document, resource, makeReservations, availableQuantities);
                 if (!newPosition.isValid()) {
                     errorNumbers.add(resource.getStringField(ResourceFields.NUMBER));
+                } else if (makeReservations) {
+                    reservedPositions.add(newPosition);
                 }
             } catch (EntityRuntimeException ere) {
                 Entity pos = ere.getEntity();
@@ -91,13 +120,18 @@ public class PositionAddMultiListeners {
 
         }
 
+        if (!reservedPositions.isEmpty()) {
+            reservationWriter.createReservations(document.getBelongsToField(DocumentFields.LOCATION_FROM), reservedPositions);
+        }
+
         if (!errorNumbers.isEmpty()) {
             view.addMessage("materialFlowResources.positionAddMulti.errorForResource", ComponentState.MessageType.INFO,
                     String.join(", ", errorNumbers));
         }
     }
 
-    private Entity createPosition(final Entity document, final Entity resource) {
+    private Entity createPosition(final Entity document, final Entity resource, final boolean makeReservations,
+            final Map<Long, BigDecimal> availableQuantities) {
         DataDefinition positionDD = getPositionDD();
 
         Entity newPosition = positionDD.create();
@@ -123,31 +157,37 @@ public class PositionAddMultiListeners {
         newPosition.setField(PositionFields.PALLET_NUMBER, resource.getField(ResourceFields.PALLET_NUMBER));
         newPosition.setField(PositionFields.TYPE_OF_PALLET, resource.getField(ResourceFields.TYPE_OF_PALLET));
         newPosition.setField(PositionFields.WASTE, resource.getField(ResourceFields.WASTE));
+        newPosition.setField(PositionFields.MAKE_RESERVATION, false);
 
-        if (!validateAvailableQuantity(document, newPosition)) {
+        if (makeReservations && !validateAvailableQuantity(newPosition, availableQuantities)) {
             throw new EntityRuntimeException(newPosition);
         }
-        return positionDD.save(newPosition);
+
+        newPosition = positionDD.save(newPosition);
+
+        if (makeReservations && newPosition.isValid()) {
+            BigDecimal reservedQuantity = newPosition.getDecimalField(PositionFields.QUANTITY);
+
+            availableQuantities.computeIfPresent(resource.getBelongsToField(ResourceFields.PRODUCT).getId(),
+                    (productId, productAvailableQuantity) -> productAvailableQuantity.subtract(reservedQuantity));
+        }
+
+        return newPosition;
     }
 
-    private boolean validateAvailableQuantity(Entity document, Entity position) {
-        String type = document.getStringField(DocumentFields.TYPE);
-        if (DocumentType.isOutbound(type) && !document.getBooleanField(DocumentFields.IN_BUFFER)) {
-            Entity location = document.getBelongsToField(DocumentFields.LOCATION_FROM);
-            boolean enabled = location.getBooleanField(LocationFieldsMFR.DRAFT_MAKES_RESERVATION);
-            if (enabled) {
-                BigDecimal availableQuantity = getAvailableQuantityForProductAndLocation(
-                        position.getBelongsToField(PositionFields.PRODUCT), location);
-                BigDecimal quantity = position.getDecimalField(PositionFields.QUANTITY);
-                if (availableQuantity == null || quantity.compareTo(availableQuantity) > 0) {
-                    return false;
-                } else if (Objects.nonNull(position.getBelongsToField(PositionFields.RESOURCE))) {
-                    BigDecimal resourceAvailableQuantity = getAvailableQuantityForResource(
-                            position.getBelongsToField(PositionFields.RESOURCE));
-                    return resourceAvailableQuantity != null && quantity.compareTo(resourceAvailableQuantity) <= 0;
-                }
-            }
+    private boolean validateAvailableQuantity(final Entity position, final Map<Long, BigDecimal> availableQuantities) {
+        BigDecimal availableQuantity = BigDecimalUtils
+                .convertNullToZero(availableQuantities.get(position.getBelongsToField(PositionFields.PRODUCT).getId()));
+        BigDecimal quantity = position.getDecimalField(PositionFields.QUANTITY);
+
+        if (quantity.compareTo(availableQuantity) > 0) {
+            return false;
+        } else if (Objects.nonNull(position.getBelongsToField(PositionFields.RESOURCE))) {
+            BigDecimal resourceAvailableQuantity = getAvailableQuantityForResource(
+                    position.getBelongsToField(PositionFields.RESOURCE));
+            return resourceAvailableQuantity != null && quantity.compareTo(resourceAvailableQuantity) <= 0;
         }
+
         return true;
     }
 
@@ -155,18 +195,6 @@ public class PositionAddMultiListeners {
         return resource.getDecimalField(ResourceFields.AVAILABLE_QUANTITY);
     }
 
-    private BigDecimal getAvailableQuantityForProductAndLocation(Entity product, Entity location) {
-        Entity resourceStockDto = dataDefinitionService
-                .get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER, MaterialFlowResourcesConstants.MODEL_RESOURCE_STOCK_DTO)
-                .find().add(SearchRestrictions.eq(ResourceStockDtoFields.PRODUCT_ID, product.getId().intValue()))
-                .add(SearchRestrictions.eq(ResourceStockDtoFields.LOCATION_ID, location.getId().intValue())).setMaxResults(1)
-                .uniqueResult();
-        if (Objects.isNull(resourceStockDto)) {
-            return BigDecimal.ZERO;
-        }
-        return BigDecimalUtils.convertNullToZero(resourceStockDto.getDecimalField(ResourceStockDtoFields.AVAILABLE_QUANTITY));
-    }
-
     private DataDefinition getResourceDD() {
         return dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
                 MaterialFlowResourcesConstants.MODEL_RESOURCE);
@@ -0,0 +1,196 @@
+package com.qcadoo.mes.materialFlowResources.service;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.materialFlowResources.constants.PositionFields;
+import com.qcadoo.mes.materialFlowResources.dto.ReservationDelta;
+import com.qcadoo.mes.materialFlowResources.dto.ResourceStockChange;
+import com.qcadoo.model.api.BigDecimalUtils;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Writes reservations of document positions as sets of deltas.
+ *
+ * Each delta is a signed change of reserved quantity of one position. Deltas are netted per resource and per stock row, so each
+ * of them is written with one batch statement regardless of the number of positions. The list of deltas is also the log of
+ * the change - replayed against reservations table it has to give the same reserved quantities as the ones written to
+ * resources, which is checked when reservationDriftCheckEnabled property is set.
+ */
+@Service
+public class ReservationWriter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReservationWriter.class);
+
+    private static final String INSERT_RESERVATION = "INSERT INTO materialflowresources_reservation "
+            + "(location_id, product_id, quantity, position_id, resource_id) "
+            + "VALUES (:locationId, :productId, :quantity, :positionId, :resourceId)";
+
+    private static final String UPDATE_RESOURCE_RESERVED_QUANTITY = "UPDATE materialflowresources_resource "
+            + "SET reservedquantity = reservedquantity + :quantity, availablequantity = availablequantity - :quantity "
+            + "WHERE id = :resourceId";
+
+    private static final String RESOURCES_WITH_INVALID_RESERVED_QUANTITY_QUERY = "SELECT r.id FROM materialflowresources_resource r "
+            + "LEFT JOIN (SELECT resource_id, SUM(quantity) AS quantity FROM materialflowresources_reservation "
+            + "WHERE resource_id IN (:resourceIds) GROUP BY resource_id) reservation ON reservation.resource_id = r.id "
+            + "WHERE r.id IN (:resourceIds) AND COALESCE(r.reservedquantity, 0) <> COALESCE(reservation.quantity, 0)";
+
+    @Value("${reservationDriftCheckEnabled:false}")
+    private boolean driftCheckEnabled;
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ResourceStockService resourceStockService;
+
+    /**
+     * Creates reservations of saved positions of document in given location with one batch insert and applies them to
+     * resources and stock.
+     */
+    public void createReservations(final Entity location, final List<Entity> positions) {
+        List<ReservationDelta> deltas = Lists.newArrayList();
+
+        for (Entity position : positions) {
+            Entity product = position.getBelongsToField(PositionFields.PRODUCT);
+            Entity resource = position.getBelongsToField(PositionFields.RESOURCE);
+
+            deltas.add(new ReservationDelta(position.getId(), Objects.isNull(resource) ? null : resource.getId(),
+                    location.getId(), product.getId(),
+                    BigDecimalUtils.convertNullToZero(position.getDecimalField(PositionFields.QUANTITY))));
+        }
+
+        if (deltas.isEmpty()) {
+            return;
+        }
+
+        List<SqlParameterSource> inserts = deltas.stream().map(this::createReservationParameters).collect(Collectors.toList());
+
+        jdbcTemplate.batchUpdate(INSERT_RESERVATION, inserts.toArray(new SqlParameterSource[0]));
+
+        applyDeltas(deltas);
+    }
+
+    private SqlParameterSource createReservationParameters(final ReservationDelta delta) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+
+        parameters.addValue("locationId", delta.getLocationId());
+        parameters.addValue("productId", delta.getProductId());
+        parameters.addValue("quantity", delta.getQuantity());
+        parameters.addValue("positionId", delta.getPositionId());
+        parameters.addValue("resourceId", delta.getResourceId());
+
+        return parameters;
+    }
+
+    /**
+     * Applies deltas of reservations, which were already written to reservations table, to reserved and available quantities
+     * of resources and stock.
+     */
+    public void applyDeltas(final List<ReservationDelta> deltas) {
+        if (deltas.isEmpty()) {
+            return;
+        }
+
+        if (LOG.isDebugEnabled()) {
+            deltas.forEach(delta -> LOG.debug("Applying {}", delta));
+        }
+
+        Map<Long, BigDecimal> resourceChanges = getResourceReservedQuantityChanges(deltas);
+
+        if (!resourceChanges.isEmpty()) {
+            List<SqlParameterSource> updates = Lists.newArrayList();
+
+            for (Map.Entry<Long, BigDecimal> resourceChange : resourceChanges.entrySet()) {
+                MapSqlParameterSource parameters = new MapSqlParameterSource();
+
+                parameters.addValue("resourceId", resourceChange.getKey());
+                parameters.addValue("quantity", resourceChange.getValue());
+
+                updates.add(parameters);
+            }
+
+            jdbcTemplate.batchUpdate(UPDATE_RESOURCE_RESERVED_QUANTITY, updates.toArray(new SqlParameterSource[0]));
+        }
+
+        resourceStockService.updateResourceStocks(getResourceStockChanges(deltas));
+
+        if (driftCheckEnabled) {
+            List<Long> invalidResources = getResourcesWithInvalidReservedQuantity(resourceChanges.keySet());
+
+            if (!invalidResources.isEmpty()) {
+                LOG.warn("Reserved quantity of resources {} differs from their reservations", invalidResources);
+            }
+        }
+    }
+
+    /**
+     * Returns ids of resources, which reserved quantity isn't equal to sum of their reservations.
+     */
+    public List<Long> getResourcesWithInvalidReservedQuantity(final Collection<Long> resourceIds) {
+        List<Long> invalidResources = Lists.newArrayList();
+
+        for (List<Long> ids : Lists.partition(Lists.newArrayList(resourceIds), 1000)) {
+            Map<String, Object> parameters = Maps.newHashMap();
+            parameters.put("resourceIds", ids);
+
+            invalidResources.addAll(jdbcTemplate.queryForList(RESOURCES_WITH_INVALID_RESERVED_QUANTITY_QUERY, parameters,
+                    Long.class));
+        }
+
+        return invalidResources;
+    }
+
+    /**
+     * Replays deltas and returns net change of reserved quantity per resource, omitting resources without change.
+     */
+    public static Map<Long, BigDecimal> getResourceReservedQuantityChanges(final List<ReservationDelta> deltas) {
+        Map<Long, BigDecimal> changes = Maps.newLinkedHashMap();
+
+        for (ReservationDelta delta : deltas) {
+            if (Objects.nonNull(delta.getResourceId())) {
+                changes.merge(delta.getResourceId(), delta.getQuantity(), BigDecimal::add);
+            }
+        }
+
+        changes.values().removeIf(quantity -> quantity.signum() == 0);
+
+        return changes;
+    }
+
+    /**
+     * Replays deltas and returns net change of reserved quantity per location and product.
+     */
+    public static List<ResourceStockChange> getResourceStockChanges(final List<ReservationDelta> deltas) {
+        Map<List<Long>, ResourceStockChange> changes = Maps.newLinkedHashMap();
+
+        for (ReservationDelta delta : deltas) {
+            ResourceStockChange change = ResourceStockChange.ofReservedQuantity(delta.getLocationId(), delta.getProductId(),
+                    delta.getQuantity());
+
+            changes.merge(Lists.newArrayList(delta.getLocationId(), delta.getProductId()), change, (existing, added) -> {
+                existing.add(added);
+
+                return existing;
+            });
+        }
+
+        return changes.values().stream().filter(change -> !change.isEmpty()).collect(Collectors.toList());
+    }
+
+}
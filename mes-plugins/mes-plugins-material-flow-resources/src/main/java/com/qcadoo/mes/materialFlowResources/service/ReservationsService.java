@@ -3,12 +3,10 @@ package com.qcadoo.mes.materialFlowResources.service;
 import java.math.BigDecimal;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.dao.DataAccessException;
-import org.springframework.jdbc.core.ResultSetExtractor;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 
@@ -21,6 +19,7 @@ import com.qcadoo.mes.materialFlowResources.constants.LocationFieldsMFR;
 import com.qcadoo.mes.materialFlowResources.constants.MaterialFlowResourcesConstants;
 import com.qcadoo.mes.materialFlowResources.constants.PositionFields;
 import com.qcadoo.mes.materialFlowResources.constants.ReservationFields;
+import com.qcadoo.mes.materialFlowResources.dto.ReservationDelta;
 import com.qcadoo.model.api.BigDecimalUtils;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
@@ -38,13 +37,21 @@ public class ReservationsService {
     private NamedParameterJdbcTemplate jdbcTemplate;
 
     @Autowired
-    private ResourceReservationsService resourceReservationsService;
+    private ReservationWriter reservationWriter;
 
     @Autowired
     private MultiTenantService multiTenantService;
 
+    private final static String L_ID = "id";
+
     private final static String L_QUANTITY = "quantity";
 
+    private final static String L_PRODUCT_ID = "product_id";
+
+    private final static String L_RESOURCE_ID = "resource_id";
+
+    private final static String L_LOCATION_ID = "location_id";
+
     public void cleanReservationsTrigger() {
         multiTenantService.doInMultiTenantContext(new MultiTenantCallback() {
 
@@ -79,14 +86,21 @@ public class ReservationsService {
      * @see ReservationsService#createReservationFromDocumentPosition(Entity)
      */
     public void createReservationFromDocumentPosition(Map<String, Object> params) {
-        if (!ReservationsService.this.reservationsEnabledForDocumentPositions(params)) {
+        Long locationId = getReservationLocationId(params);
+
+        if (locationId == null) {
             return;
         }
+
+        params.put(L_LOCATION_ID, locationId);
+
         String query = "INSERT INTO materialflowresources_reservation (location_id, product_id, quantity, position_id, resource_id) "
-                + "VALUES ((SELECT locationfrom_id FROM materialflowresources_document WHERE id=:document_id), :product_id, :quantity, :id, :resource_id)";
+                + "VALUES (:location_id, :product_id, :quantity, :id, :resource_id)";
 
         jdbcTemplate.update(query, params);
-        resourceReservationsService.updateResourceQuantites(params, BigDecimalUtils.convertNullToZero(params.get(L_QUANTITY)));
+        reservationWriter.applyDeltas(Lists.newArrayList(new ReservationDelta(getLongValue(params, L_ID),
+                getLongValue(params, L_RESOURCE_ID), locationId, getLongValue(params, L_PRODUCT_ID),
+                BigDecimalUtils.convertNullToZero(params.get(L_QUANTITY)))));
     }
 
     /**
@@ -107,6 +121,10 @@ public class ReservationsService {
             if (!reservationsEnabledForDocumentPositions(document)) {
                 return;
             }
+            if (position.getField(PositionFields.MAKE_RESERVATION) != null
+                    && !position.getBooleanField(PositionFields.MAKE_RESERVATION)) {
+                return;
+            }
             Entity reservation = dataDefinitionService
                     .get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER, MaterialFlowResourcesConstants.MODEL_RESERVATION).create();
 
@@ -132,56 +150,29 @@ public class ReservationsService {
      * @see ReservationsService#updateReservationFromDocumentPosition(Entity)
      */
     public void updateReservationFromDocumentPosition(Map<String, Object> params) {
-        if (!ReservationsService.this.reservationsEnabledForDocumentPositions(params)) {
+        Long locationId = getReservationLocationId(params);
+
+        if (locationId == null || params.get(L_ID) == null) {
             return;
         }
 
-        if (params.get("id") != null) {
-            String queryForOld = "SELECT product_id, resource_id, quantity FROM materialflowresources_position WHERE id = :id";
-            Map<String, Object> oldPosition = jdbcTemplate.query(queryForOld, params,
-                    new ResultSetExtractor<Map<String, Object>>() {
-
-                        @Override
-                        public Map<String, Object> extractData(ResultSet rs) throws SQLException, DataAccessException {
-                            Map<String, Object> result = Maps.newHashMap();
-                            if (rs.next()) {
-                                result.put("product_id", rs.getLong("product_id"));
-                                result.put("resource_id", rs.getLong("resource_id"));
-                                result.put("quantity", rs.getBigDecimal("quantity"));
-                            }
-                            return result;
-                        }
-                    });
-            Long newResourceId = (Long) params.get("resource_id");
-            Long oldResourceId = (Long) oldPosition.get("resource_id");
-            BigDecimal oldPositionQuantity = (BigDecimal) oldPosition.get("quantity");
-
-            BigDecimal newQuantity = BigDecimalUtils.convertNullToZero(params.get(L_QUANTITY));
-            BigDecimal quantityToAdd = newQuantity.subtract(oldPositionQuantity);
-            String query = "UPDATE materialflowresources_reservation SET "
-                    + "location_id = (SELECT locationfrom_id FROM materialflowresources_document WHERE id=:document_id), "
-                    + "product_id = :product_id, quantity = :quantity, resource_id = :resource_id WHERE position_id = :id";
-
-            jdbcTemplate.update(query, params);
-
-            if (oldResourceId != null && newResourceId != null) {
-                if (oldResourceId.compareTo(newResourceId) != 0) {
-                    resourceReservationsService.updateResourceQuantites(params, newQuantity);
-                    Map<String, Object> paramsForOld = Maps.newHashMap(params);
-                    paramsForOld.put("resource_id", oldResourceId);
-                    resourceReservationsService.updateResourceQuantites(paramsForOld, oldPositionQuantity.negate());
-                } else {
-                    resourceReservationsService.updateResourceQuantites(params, quantityToAdd);
-                }
-            } else if (oldResourceId == null && newResourceId != null) {
-                resourceReservationsService.updateResourceQuantites(params, newQuantity);
-            } else if (oldResourceId != null) {
-                Map<String, Object> paramsForOld = Maps.newHashMap(params);
-                paramsForOld.put("resource_id", oldResourceId);
-                resourceReservationsService.updateResourceQuantites(paramsForOld, oldPositionQuantity.negate());
-            }
-        }
+        params.put(L_LOCATION_ID, locationId);
 
+        String queryForOld = "SELECT product_id, resource_id, quantity FROM materialflowresources_position WHERE id = :id";
+        List<ReservationDelta> oldReservations = jdbcTemplate.query(queryForOld, params,
+                (rs, rowNum) -> new ReservationDelta(getLongValue(params, L_ID), getNullableLong(rs, L_RESOURCE_ID), locationId,
+                        getNullableLong(rs, L_PRODUCT_ID), rs.getBigDecimal(L_QUANTITY)));
+
+        String query = "UPDATE materialflowresources_reservation SET location_id = :location_id, "
+                + "product_id = :product_id, quantity = :quantity, resource_id = :resource_id WHERE position_id = :id";
+
+        int updated = jdbcTemplate.update(query, params);
+
+        if (updated > 0 && !oldReservations.isEmpty() && oldReservations.get(0).getQuantity() != null) {
+            reservationWriter.applyDeltas(Lists.newArrayList(oldReservations.get(0).negate(),
+                    new ReservationDelta(getLongValue(params, L_ID), getLongValue(params, L_RESOURCE_ID), locationId,
+                            getLongValue(params, L_PRODUCT_ID), BigDecimalUtils.convertNullToZero(params.get(L_QUANTITY)))));
+        }
     }
 
     /**
@@ -229,13 +220,30 @@ public class ReservationsService {
      * @see ReservationsService#deleteReservationFromDocumentPosition(Entity)
      */
     public void deleteReservationFromDocumentPosition(Map<String, Object> params) {
-        if (!reservationsEnabledForDocumentPositions(params)) {
+        Long locationId = getReservationLocationId(params);
+
+        if (locationId == null) {
             return;
         }
+
         String query = "DELETE FROM materialflowresources_reservation WHERE position_id = :id";
-        jdbcTemplate.update(query, params);
-        resourceReservationsService.updateResourceQuantites(params,
-                BigDecimalUtils.convertNullToZero(params.get(L_QUANTITY)).negate());
+        int deleted = jdbcTemplate.update(query, params);
+
+        if (deleted > 0) {
+            reservationWriter.applyDeltas(Lists.newArrayList(new ReservationDelta(getLongValue(params, L_ID),
+                    getLongValue(params, L_RESOURCE_ID), locationId, getLongValue(params, L_PRODUCT_ID),
+                    BigDecimalUtils.convertNullToZero(params.get(L_QUANTITY)).negate())));
+        }
+    }
+
+    private Long getLongValue(Map<String, Object> params, String key) {
+        Number value = (Number) params.get(key);
+        return value == null ? null : value.longValue();
+    }
+
+    private Long getNullableLong(ResultSet rs, String column) throws SQLException {
+        long value = rs.getLong(column);
+        return rs.wasNull() ? null : value;
     }
 
     /**
@@ -258,15 +266,26 @@ public class ReservationsService {
     }
 
     public Boolean reservationsEnabledForDocumentPositions(Map<String, Object> params) {
-        String queryForDocumentType = "SELECT type, inBuffer, locationfrom_id FROM materialflowresources_document WHERE id = :document_id";
-        Map<String, Object> documentMap = jdbcTemplate.queryForMap(queryForDocumentType, params);
-        if (DocumentType.isOutbound((String) documentMap.get("type")) && !(boolean) documentMap.get("inBuffer")) {
-            String query = "SELECT draftmakesreservation FROM materialflow_location WHERE id = :location_id";
-            Boolean enabled = jdbcTemplate.queryForObject(query,
-                    Collections.singletonMap("location_id", (Long) documentMap.get("locationfrom_id")), Boolean.class);
-            return enabled;
+        return getReservationLocationId(params) != null;
+    }
+
+    /**
+     * Returns id of location, in which positions of document with given id make reservations, or null, when they don't make
+     * them. Document and its location are read with one query.
+     *
+     * @param params
+     *            map containing key document_id
+     */
+    private Long getReservationLocationId(Map<String, Object> params) {
+        String query = "SELECT document.type, document.inbuffer, document.locationfrom_id, location.draftmakesreservation "
+                + "FROM materialflowresources_document document "
+                + "LEFT JOIN materialflow_location location ON location.id = document.locationfrom_id WHERE document.id = :document_id";
+        Map<String, Object> documentMap = jdbcTemplate.queryForMap(query, params);
+        if (DocumentType.isOutbound((String) documentMap.get("type")) && !(boolean) documentMap.get("inbuffer")
+                && Boolean.TRUE.equals(documentMap.get("draftmakesreservation"))) {
+            return getLongValue(documentMap, "locationfrom_id");
         } else {
-            return false;
+            return null;
         }
     }
 
@@ -0,0 +1,232 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlowResources.service;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.basic.constants.ProductFields;
+import com.qcadoo.mes.materialFlowResources.constants.PositionFields;
+import com.qcadoo.mes.materialFlowResources.constants.ResourceFields;
+import com.qcadoo.mes.materialFlowResources.constants.WarehouseAlgorithm;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * In-memory state of resources used while accepting a single document.
+ *
+ * All candidate resources of the document's products are loaded once (see
+ * {@link ResourceAllocationService#prepare(Entity, List, WarehouseAlgorithm)}), positions are matched against them in memory
+ * and quantity changes are collected here, to be written back in batches by
+ * {@link ResourceAllocationService#flush(ResourceAllocation)}.
+ */
+public class ResourceAllocation {
+
+    private final WarehouseAlgorithm warehouseAlgorithm;
+
+    private final Map<Long, List<Entity>> resourcesByProduct = Maps.newHashMap();
+
+    private final Map<Long, Entity> resourcesById = Maps.newHashMap();
+
+    private final Map<Long, BigDecimal> initialQuantities = Maps.newHashMap();
+
+    private final Map<Long, Entity> resourcesToUpdate = Maps.newLinkedHashMap();
+
+    private final Map<Long, Entity> resourcesToDelete = Maps.newLinkedHashMap();
+
+    private final List<Entity> palletNumbersToDispose = Lists.newArrayList();
+
+    public ResourceAllocation(final WarehouseAlgorithm warehouseAlgorithm, final List<Entity> resources) {
+        this.warehouseAlgorithm = warehouseAlgorithm;
+
+        for (Entity resource : resources) {
+            resourcesById.put(resource.getId(), resource);
+            initialQuantities.put(resource.getId(), resource.getDecimalField(ResourceFields.QUANTITY));
+            resourcesByProduct.computeIfAbsent(resource.getBelongsToField(ResourceFields.PRODUCT).getId(),
+                    productId -> Lists.newArrayList()).add(resource);
+        }
+    }
+
+    public WarehouseAlgorithm getWarehouseAlgorithm() {
+        return warehouseAlgorithm;
+    }
+
+    /**
+     * Returns resources matching given position, in the same order as the per-position queries of the warehouse algorithm
+     * would return them at this point of the allocation.
+     */
+    public List<Entity> getResourcesForPosition(final Entity product, final Entity position,
+            final boolean fillResourceIrrespectiveOfConversion) {
+        List<Entity> resources = getResourcesForConversion(product, position, false);
+
+        if (fillResourceIrrespectiveOfConversion) {
+            resources.addAll(getResourcesForConversion(product, position, true));
+        }
+
+        return resources;
+    }
+
+    private List<Entity> getResourcesForConversion(final Entity product, final Entity position,
+            final boolean resourceIrrespectiveOfConversion) {
+        Entity additionalCode = position.getBelongsToField(PositionFields.ADDITIONAL_CODE);
+
+        List<Entity> resources = Lists.newArrayList();
+
+        if (Objects.nonNull(additionalCode)) {
+            resources = getAllThatSatisfies(product, position, resourceIrrespectiveOfConversion,
+                    resource -> hasAdditionalCode(resource, additionalCode));
+
+            resources.addAll(getAllThatSatisfies(product, position, resourceIrrespectiveOfConversion,
+                    resource -> !hasAdditionalCode(resource, additionalCode)));
+        }
+
+        if (resources.isEmpty()) {
+            resources = getAllThatSatisfies(product, position, resourceIrrespectiveOfConversion, resource -> true);
+        }
+
+        return resources;
+    }
+
+    private List<Entity> getAllThatSatisfies(final Entity product, final Entity position,
+            final boolean resourceIrrespectiveOfConversion, final Predicate<Entity> predicate) {
+        BigDecimal conversion;
+
+        if (StringUtils.isNotEmpty(product.getStringField(ProductFields.ADDITIONAL_UNIT))) {
+            conversion = position.getDecimalField(PositionFields.CONVERSION);
+        } else {
+            conversion = BigDecimal.ONE;
+        }
+
+        Entity batch = position.getBelongsToField(PositionFields.BATCH);
+
+        List<Entity> resources = resourcesByProduct.getOrDefault(product.getId(), Lists.newArrayList()).stream()
+                .filter(resource -> !resourcesToDelete.containsKey(resource.getId()))
+                .filter(resource -> BigDecimal.ZERO
+                        .compareTo(resource.getDecimalField(ResourceFields.AVAILABLE_QUANTITY)) < 0)
+                .filter(resource -> resourceIrrespectiveOfConversion != hasConversion(resource, conversion))
+                .filter(resource -> Objects.isNull(batch) || hasBatch(resource, batch)).filter(predicate)
+                .collect(Collectors.toList());
+
+        if (WarehouseAlgorithm.FEFO.equals(warehouseAlgorithm)) {
+            resources.sort(expirationDateComparator().thenComparing(availableQuantityComparator()));
+        } else if (WarehouseAlgorithm.LEFO.equals(warehouseAlgorithm)) {
+            resources.sort(expirationDateComparator().reversed().thenComparing(availableQuantityComparator()));
+        }
+
+        return resources;
+    }
+
+    private Comparator<Entity> expirationDateComparator() {
+        return Comparator.comparing(resource -> resource.getDateField(ResourceFields.EXPIRATION_DATE),
+                Comparator.nullsLast(Comparator.<Date> naturalOrder()));
+    }
+
+    private Comparator<Entity> availableQuantityComparator() {
+        return Comparator.comparing(resource -> resource.getDecimalField(ResourceFields.AVAILABLE_QUANTITY));
+    }
+
+    private boolean hasConversion(final Entity resource, final BigDecimal conversion) {
+        BigDecimal resourceConversion = resource.getDecimalField(ResourceFields.CONVERSION);
+
+        if (Objects.isNull(resourceConversion) || Objects.isNull(conversion)) {
+            return Objects.isNull(resourceConversion) && Objects.isNull(conversion);
+        }
+
+        return resourceConversion.compareTo(conversion) == 0;
+    }
+
+    private boolean hasBatch(final Entity resource, final Entity batch) {
+        Entity resourceBatch = resource.getBelongsToField(ResourceFields.BATCH);
+
+        return Objects.nonNull(resourceBatch) && resourceBatch.getId().equals(batch.getId());
+    }
+
+    private boolean hasAdditionalCode(final Entity resource, final Entity additionalCode) {
+        Entity resourceAdditionalCode = resource.getBelongsToField(ResourceFields.ADDITIONAL_CODE);
+
+        return Objects.nonNull(resourceAdditionalCode) && resourceAdditionalCode.getId().equals(additionalCode.getId());
+    }
+
+    public Entity getResource(final Long resourceId) {
+        if (isDeleted(resourceId)) {
+            return null;
+        }
+
+        return resourcesById.get(resourceId);
+    }
+
+    public void addResource(final Entity resource) {
+        resourcesById.put(resource.getId(), resource);
+        initialQuantities.putIfAbsent(resource.getId(), resource.getDecimalField(ResourceFields.QUANTITY));
+    }
+
+    /**
+     * Returns quantity, which resource with given id had when it was loaded, used to update resource stock by the difference.
+     */
+    public BigDecimal getInitialQuantity(final Long resourceId) {
+        return initialQuantities.getOrDefault(resourceId, BigDecimal.ZERO);
+    }
+
+    public void update(final Entity resource) {
+        resourcesToUpdate.put(resource.getId(), resource);
+    }
+
+    public void delete(final Entity resource, final boolean disposePalletNumber) {
+        resourcesToUpdate.remove(resource.getId());
+        resourcesToDelete.put(resource.getId(), resource);
+
+        Entity palletNumber = resource.getBelongsToField(ResourceFields.PALLET_NUMBER);
+
+        if (disposePalletNumber && Objects.nonNull(palletNumber)) {
+            palletNumbersToDispose.add(palletNumber);
+        }
+    }
+
+    public boolean isDeleted(final Long resourceId) {
+        return resourcesToDelete.containsKey(resourceId);
+    }
+
+    public Collection<Entity> getResourcesToUpdate() {
+        return resourcesToUpdate.values();
+    }
+
+    public Collection<Entity> getResourcesToDelete() {
+        return resourcesToDelete.values();
+    }
+
+    public List<Entity> getPalletNumbersToDispose() {
+        return palletNumbersToDispose;
+    }
+
+}
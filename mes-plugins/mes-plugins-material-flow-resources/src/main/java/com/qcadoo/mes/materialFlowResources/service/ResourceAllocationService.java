@@ -0,0 +1,239 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlowResources.service;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.materialFlowResources.constants.MaterialFlowResourcesConstants;
+import com.qcadoo.mes.materialFlowResources.constants.PositionFields;
+import com.qcadoo.mes.materialFlowResources.constants.ResourceFields;
+import com.qcadoo.mes.materialFlowResources.constants.WarehouseAlgorithm;
+import com.qcadoo.mes.materialFlowResources.dto.ResourceStockChange;
+import com.qcadoo.mes.materialFlowResources.exceptions.InvalidResourceException;
+import com.qcadoo.model.api.BigDecimalUtils;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchOrders;
+import com.qcadoo.model.api.search.SearchRestrictions;
+
+@Service
+public class ResourceAllocationService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResourceAllocationService.class);
+
+    private static final String L_IDS = "ids";
+
+    private static final String UPDATE_RESOURCE_QUANTITIES = "UPDATE materialflowresources_resource SET quantity = :quantity, "
+            + "availablequantity = :availableQuantity, reservedquantity = :reservedQuantity, "
+            + "quantityinadditionalunit = :quantityInAdditionalUnit, entityversion = entityversion + 1 WHERE id = :id";
+
+    private static final String SELECT_RESERVED_QUANTITIES = "SELECT location_id, product_id, SUM(quantity) AS quantity "
+            + "FROM materialflowresources_reservation WHERE resource_id IN (:ids) GROUP BY location_id, product_id";
+
+    private static final String DELETE_RESERVATIONS = "DELETE FROM materialflowresources_reservation WHERE resource_id IN (:ids)";
+
+    private static final String DELETE_RESOURCE_ATTRIBUTE_VALUES = "DELETE FROM materialflowresources_resourceattributevalue "
+            + "WHERE resource_id IN (:ids)";
+
+    private static final String NULLIFY_POSITIONS = "UPDATE materialflowresources_position SET resource_id = NULL "
+            + "WHERE resource_id IN (:ids)";
+
+    private static final String NULLIFY_RESOURCE_CORRECTIONS = "UPDATE materialflowresources_resourcecorrection "
+            + "SET resource_id = NULL WHERE resource_id IN (:ids)";
+
+    private static final String DELETE_RESOURCES = "DELETE FROM materialflowresources_resource WHERE id IN (:ids)";
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PalletNumberDisposalService palletNumberDisposalService;
+
+    @Autowired
+    private ResourceStockService resourceStockService;
+
+    /**
+     * Loads, with a single query, all resources in warehouse that may be used by given positions, ordered as required by
+     * warehouse algorithm.
+     */
+    public ResourceAllocation prepare(final Entity warehouse, final List<Entity> positions,
+            final WarehouseAlgorithm warehouseAlgorithm) {
+        Set<Long> productIds = positions.stream().map(position -> position.getBelongsToField(PositionFields.PRODUCT).getId())
+                .collect(Collectors.toSet());
+
+        if (productIds.isEmpty()) {
+            return new ResourceAllocation(warehouseAlgorithm, Lists.newArrayList());
+        }
+
+        SearchCriteriaBuilder scb = dataDefinitionService
+                .get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER, MaterialFlowResourcesConstants.MODEL_RESOURCE).find()
+                .add(SearchRestrictions.belongsTo(ResourceFields.LOCATION, warehouse))
+                .add(SearchRestrictions.in("product.id", productIds))
+                .add(SearchRestrictions.gt(ResourceFields.AVAILABLE_QUANTITY, BigDecimal.ZERO))
+                .add(SearchRestrictions.eq(ResourceFields.BLOCKED_FOR_QUALITY_CONTROL, false));
+
+        if (WarehouseAlgorithm.LIFO.equals(warehouseAlgorithm)) {
+            scb.addOrder(SearchOrders.desc(ResourceFields.TIME));
+        } else if (WarehouseAlgorithm.FEFO.equals(warehouseAlgorithm)) {
+            scb.addOrder(SearchOrders.asc(ResourceFields.EXPIRATION_DATE));
+        } else if (WarehouseAlgorithm.LEFO.equals(warehouseAlgorithm)) {
+            scb.addOrder(SearchOrders.desc(ResourceFields.EXPIRATION_DATE));
+        } else {
+            scb.addOrder(SearchOrders.asc(ResourceFields.TIME));
+        }
+
+        return new ResourceAllocation(warehouseAlgorithm, scb.list().getEntities());
+    }
+
+    /**
+     * Returns resource with given id, preferring the instance already held by allocation, so that changes made by previous
+     * positions are visible.
+     */
+    public Entity getResource(final ResourceAllocation allocation, final Long resourceId) {
+        Entity resource = allocation.getResource(resourceId);
+
+        if (Objects.isNull(resource) && !allocation.isDeleted(resourceId)) {
+            resource = dataDefinitionService
+                    .get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER, MaterialFlowResourcesConstants.MODEL_RESOURCE)
+                    .get(resourceId);
+
+            if (Objects.nonNull(resource)) {
+                allocation.addResource(resource);
+            }
+        }
+
+        return resource;
+    }
+
+    /**
+     * Writes changes collected in allocation: one batched update for all changed resources and one statement per related
+     * table for all deleted resources. Resource stock is updated by the differences, summed up per location and product.
+     *
+     * Changed resources are validated with resource model validators first, as they were when saved one by one. Resource save
+     * and delete hooks aren't called, the only work they do for existing resources - updating resource stock, including
+     * reservations deleted together with resources - is done here.
+     */
+    public void flush(final ResourceAllocation allocation) {
+        validate(allocation.getResourcesToUpdate());
+
+        List<ResourceStockChange> stockChanges = Lists.newArrayList();
+
+        for (Entity resource : allocation.getResourcesToUpdate()) {
+            stockChanges.add(createStockChange(resource, BigDecimalUtils
+                    .convertNullToZero(resource.getDecimalField(ResourceFields.QUANTITY))
+                    .subtract(allocation.getInitialQuantity(resource.getId()))));
+        }
+        for (Entity resource : allocation.getResourcesToDelete()) {
+            stockChanges.add(createStockChange(resource, allocation.getInitialQuantity(resource.getId()).negate()));
+        }
+
+        List<SqlParameterSource> updates = allocation.getResourcesToUpdate().stream().map(this::createUpdateParameters)
+                .collect(Collectors.toList());
+
+        if (!updates.isEmpty()) {
+            jdbcTemplate.batchUpdate(UPDATE_RESOURCE_QUANTITIES, updates.toArray(new SqlParameterSource[0]));
+        }
+
+        List<Long> ids = allocation.getResourcesToDelete().stream().map(Entity::getId).collect(Collectors.toList());
+
+        if (!ids.isEmpty()) {
+            for (List<Long> partition : Lists.partition(ids, 1000)) {
+                Map<String, Object> params = Maps.newHashMap();
+
+                params.put(L_IDS, partition);
+
+                jdbcTemplate.query(SELECT_RESERVED_QUANTITIES, params,
+                        rs -> {
+                            stockChanges.add(ResourceStockChange.ofReservedQuantity(rs.getLong("location_id"),
+                                    rs.getLong("product_id"),
+                                    BigDecimalUtils.convertNullToZero(rs.getBigDecimal("quantity")).negate()));
+                        });
+                jdbcTemplate.update(DELETE_RESERVATIONS, params);
+                jdbcTemplate.update(DELETE_RESOURCE_ATTRIBUTE_VALUES, params);
+                jdbcTemplate.update(NULLIFY_POSITIONS, params);
+                jdbcTemplate.update(NULLIFY_RESOURCE_CORRECTIONS, params);
+                jdbcTemplate.update(DELETE_RESOURCES, params);
+            }
+        }
+
+        resourceStockService.updateResourceStocks(stockChanges);
+
+        allocation.getPalletNumbersToDispose().forEach(palletNumberDisposalService::tryToDispose);
+
+        LOGGER.debug("Resource allocation flushed: {} resources updated, {} resources deleted", updates.size(), ids.size());
+    }
+
+    private void validate(final Collection<Entity> resources) {
+        DataDefinition resourceDD = dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
+                MaterialFlowResourcesConstants.MODEL_RESOURCE);
+
+        for (Entity resource : resources) {
+            Entity validatedResource = resourceDD.validate(resource);
+
+            if (!validatedResource.isValid()) {
+                throw new InvalidResourceException(validatedResource);
+            }
+        }
+    }
+
+    private ResourceStockChange createStockChange(final Entity resource, final BigDecimal quantity) {
+        return ResourceStockChange.ofQuantity(resource.getBelongsToField(ResourceFields.LOCATION).getId(),
+                resource.getBelongsToField(ResourceFields.PRODUCT).getId(), quantity,
+                resource.getBooleanField(ResourceFields.BLOCKED_FOR_QUALITY_CONTROL));
+    }
+
+    private SqlParameterSource createUpdateParameters(final Entity resource) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+
+        params.addValue("id", resource.getId());
+        params.addValue("quantity", resource.getDecimalField(ResourceFields.QUANTITY));
+        params.addValue("availableQuantity", resource.getDecimalField(ResourceFields.AVAILABLE_QUANTITY));
+        params.addValue("reservedQuantity", resource.getDecimalField(ResourceFields.RESERVED_QUANTITY));
+        params.addValue("quantityInAdditionalUnit", resource.getDecimalField(ResourceFields.QUANTITY_IN_ADDITIONAL_UNIT));
+
+        return params;
+    }
+
+}
@@ -94,9 +94,6 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
     @Autowired
     private NumberService numberService;
 
-    @Autowired
-    private PalletNumberDisposalService palletNumberDisposalService;
-
     @Autowired
     private ResourceStockService resourceStockService;
 
@@ -118,6 +115,9 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
     @Autowired
     private DocumentPositionService documentPositionService;
 
+    @Autowired
+    private ResourceAllocationService resourceAllocationService;
+
     @Override
     @Transactional
     public void createResources(final Entity document) {
@@ -433,11 +433,15 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
         boolean transferPalletToReceivingWarehouse = documentPositionParameters.getBooleanField(
                 DocumentPositionParametersFields.TRANSFER_PALLET_TO_RECEIVING_WAREHOUSE) && buildConnectedDocument(document);
 
-        for (Entity position : document.getHasManyField(DocumentFields.POSITIONS)) {
+        List<Entity> positions = document.getHasManyField(DocumentFields.POSITIONS);
+
+        ResourceAllocation allocation = resourceAllocationService.prepare(warehouse, positions, warehouseAlgorithm);
+
+        for (Entity position : positions) {
             Entity product = position.getBelongsToField(PositionFields.PRODUCT);
 
-            Either<BigDecimal, List<Entity>> eitherPositions = updateResources(warehouse, position, warehouseAlgorithm,
-                    isFromOrder, transferPalletToReceivingWarehouse);
+            Either<BigDecimal, List<Entity>> eitherPositions = updateResources(allocation, warehouse, position, isFromOrder,
+                    transferPalletToReceivingWarehouse);
 
             enoughResources = enoughResources && position.isValid();
 
@@ -468,6 +472,8 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
             }
         }
 
+        resourceAllocationService.flush(allocation);
+
         if (updatePositionsNumbers) {
             documentPositionService.updateDocumentPositionsNumbers(document.getId());
         }
@@ -520,13 +526,13 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
         }
     }
 
-    private Either<BigDecimal, List<Entity>> updateResources(final Entity warehouse, final Entity position,
-            final WarehouseAlgorithm warehouseAlgorithm, boolean isFromOrder, boolean transferPalletToReceivingWarehouse) {
+    private Either<BigDecimal, List<Entity>> updateResources(final ResourceAllocation allocation, final Entity warehouse,
+            final Entity position, boolean isFromOrder, boolean transferPalletToReceivingWarehouse) {
         List<Entity> newPositions = Lists.newArrayList();
 
         Entity product = position.getBelongsToField(PositionFields.PRODUCT);
 
-        List<Entity> resources = getResourcesForWarehouseProductAndAlgorithm(warehouse, product, position, warehouseAlgorithm);
+        List<Entity> resources = getResourcesForPosition(allocation, product, position);
 
         reservationsService.deleteReservationFromDocumentPosition(position);
 
@@ -571,13 +577,7 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
                 quantity = quantity.subtract(resourceAvailableQuantity, numberService.getMathContext());
 
                 if (resourceQuantity.compareTo(resourceAvailableQuantity) <= 0) {
-                    Entity palletNumberToDispose = resource.getBelongsToField(ResourceFields.PALLET_NUMBER);
-
-                    resource.getDataDefinition().delete(resource.getId());
-
-                    if (!transferPalletToReceivingWarehouse) {
-                        palletNumberDisposalService.tryToDispose(palletNumberToDispose);
-                    }
+                    allocation.delete(resource, !transferPalletToReceivingWarehouse);
                 } else {
                     BigDecimal newResourceQuantity = resourceQuantity.subtract(resourceAvailableQuantity);
                     BigDecimal quantityInAdditionalUnit = calculationQuantityService
@@ -587,11 +587,7 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
                     resource.setField(ResourceFields.QUANTITY, newResourceQuantity);
                     resource.setField(ResourceFields.QUANTITY_IN_ADDITIONAL_UNIT, quantityInAdditionalUnit);
 
-                    Entity savedResource = resource.getDataDefinition().save(resource);
-
-                    if (!savedResource.isValid()) {
-                        throw new InvalidResourceException(savedResource);
-                    }
+                    allocation.update(resource);
                 }
 
                 newPosition.setField(PositionFields.QUANTITY,
@@ -615,11 +611,7 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
                 resource.setField(ResourceFields.QUANTITY, numberService.setScaleWithDefaultMathContext(resourceQuantity));
                 resource.setField(ResourceFields.AVAILABLE_QUANTITY, resourceAvailableQuantity);
 
-                Entity savedResource = resource.getDataDefinition().save(resource);
-
-                if (!savedResource.isValid()) {
-                    throw new InvalidResourceException(savedResource);
-                }
+                allocation.update(resource);
 
                 newPosition.setField(PositionFields.QUANTITY, numberService.setScaleWithDefaultMathContext(quantity));
                 newPosition.setField(PositionFields.GIVEN_QUANTITY, givenQuantity);
@@ -650,11 +642,15 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
 
         boolean isFromOrder = Objects.nonNull(document.getBelongsToField(L_ORDER));
 
-        for (Entity position : document.getHasManyField(DocumentFields.POSITIONS)) {
+        List<Entity> positions = document.getHasManyField(DocumentFields.POSITIONS);
+
+        ResourceAllocation allocation = resourceAllocationService.prepare(warehouseFrom, positions, warehouseAlgorithm);
+
+        for (Entity position : positions) {
             Entity product = position.getBelongsToField(PositionFields.PRODUCT);
 
-            Either<BigDecimal, List<Entity>> eitherPositions = moveResources(warehouseFrom, warehouseTo, position, date,
-                    warehouseAlgorithm, isFromOrder);
+            Either<BigDecimal, List<Entity>> eitherPositions = moveResources(allocation, warehouseFrom, warehouseTo, position,
+                    date, isFromOrder);
 
             enoughResources = enoughResources && position.isValid();
 
@@ -685,6 +681,8 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
             }
         }
 
+        resourceAllocationService.flush(allocation);
+
         if (!enoughResources) {
             NotEnoughResourcesErrorMessageCopyToEntityHelper.addError(document, warehouseFrom, errorMessageHolder);
         }
@@ -696,14 +694,13 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
         }
     }
 
-    private Either<BigDecimal, List<Entity>> moveResources(final Entity warehouseFrom, final Entity warehouseTo,
-            final Entity position, final Object date, final WarehouseAlgorithm warehouseAlgorithm, boolean isFromOrder) {
+    private Either<BigDecimal, List<Entity>> moveResources(final ResourceAllocation allocation, final Entity warehouseFrom,
+            final Entity warehouseTo, final Entity position, final Object date, boolean isFromOrder) {
         List<Entity> newPositions = Lists.newArrayList();
 
         Entity product = position.getBelongsToField(PositionFields.PRODUCT);
 
-        List<Entity> resources = getResourcesForWarehouseProductAndAlgorithm(warehouseFrom, product, position,
-                warehouseAlgorithm);
+        List<Entity> resources = getResourcesForPosition(allocation, product, position);
 
         reservationsService.deleteReservationFromDocumentPosition(position);
 
@@ -754,13 +751,7 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
                 quantity = quantity.subtract(resourceAvailableQuantity, numberService.getMathContext());
 
                 if (resourceQuantity.compareTo(resourceAvailableQuantity) <= 0) {
-                    Entity palletNumberToDispose = resource.getBelongsToField(ResourceFields.PALLET_NUMBER);
-
-                    resource.getDataDefinition().delete(resource.getId());
-
-                    if (!transferPalletToReceivingWarehouse) {
-                        palletNumberDisposalService.tryToDispose(palletNumberToDispose);
-                    }
+                    allocation.delete(resource, !transferPalletToReceivingWarehouse);
                 } else {
                     BigDecimal newResourceQuantity = resourceQuantity.subtract(resourceAvailableQuantity);
                     BigDecimal quantityInAdditionalUnit = calculationQuantityService
@@ -770,11 +761,7 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
                     resource.setField(ResourceFields.QUANTITY, newResourceQuantity);
                     resource.setField(ResourceFields.QUANTITY_IN_ADDITIONAL_UNIT, quantityInAdditionalUnit);
 
-                    Entity savedResource = resource.getDataDefinition().save(resource);
-
-                    if (!savedResource.isValid()) {
-                        throw new InvalidResourceException(savedResource);
-                    }
+                    allocation.update(resource);
                 }
 
                 Entity newResource = createResource(position, warehouseTo, resource, resourceAvailableQuantity, date,
@@ -807,11 +794,7 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
                 resource.setField(ResourceFields.QUANTITY, numberService.setScaleWithDefaultMathContext(resourceQuantity));
                 resource.setField(ResourceFields.AVAILABLE_QUANTITY, resourceAvailableQuantity);
 
-                Entity savedResource = resource.getDataDefinition().save(resource);
-
-                if (!savedResource.isValid()) {
-                    throw new InvalidResourceException(savedResource);
-                }
+                allocation.update(resource);
 
                 Entity newResource = createResource(position, warehouseTo, resource, quantity, date,
                         transferPalletToReceivingWarehouse);
@@ -860,14 +843,7 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
         }
 
         if (resource != null) {
-            Entity reservation = reservationsService.getReservationForPosition(position);
-
-            if (reservation != null) {
-                BigDecimal reservationQuantity = reservation.getDecimalField(ReservationFields.QUANTITY);
-                BigDecimal resourceAvailableQuantity = resource.getDecimalField(ResourceFields.AVAILABLE_QUANTITY);
-
-                resource.setField(ResourceFields.AVAILABLE_QUANTITY, resourceAvailableQuantity.add(reservationQuantity));
-            }
+            addReservedQuantityToAvailableQuantity(position, resource);
 
             resources.add(resource);
         } else if (WarehouseAlgorithm.FIFO.equals(warehouseAlgorithm)) {
@@ -883,6 +859,34 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
         return resources;
     }
 
+    private List<Entity> getResourcesForPosition(final ResourceAllocation allocation, final Entity product,
+            final Entity position) {
+        Entity resource = position.getBelongsToField(PositionFields.RESOURCE);
+
+        if (resource != null && resource.getId() != null) {
+            resource = resourceAllocationService.getResource(allocation, resource.getId());
+        }
+
+        if (resource != null) {
+            addReservedQuantityToAvailableQuantity(position, resource);
+
+            return Lists.newArrayList(resource);
+        }
+
+        return allocation.getResourcesForPosition(product, position, fillResourceIrrespectiveOfConversion());
+    }
+
+    private void addReservedQuantityToAvailableQuantity(final Entity position, final Entity resource) {
+        Entity reservation = reservationsService.getReservationForPosition(position);
+
+        if (reservation != null) {
+            BigDecimal reservationQuantity = reservation.getDecimalField(ReservationFields.QUANTITY);
+            BigDecimal resourceAvailableQuantity = resource.getDecimalField(ResourceFields.AVAILABLE_QUANTITY);
+
+            resource.setField(ResourceFields.AVAILABLE_QUANTITY, resourceAvailableQuantity.add(reservationQuantity));
+        }
+    }
+
     private List<Entity> getResourcesForLocationCommonCodeConversion(final Entity warehouse, final Entity product,
             final Entity additionalCode, final Entity position, final boolean resourceIrrespectiveOfConversion,
             final SearchOrder... searchOrders) {
@@ -951,13 +955,7 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
         List<Entity> resources = getResourcesForLocationCommonCodeConversion(warehouse, product, additionalCode, position, false,
                 searchOrders);
 
-        Entity documentPositionParameters = parameterService.getParameter()
-                .getBelongsToField(ParameterFieldsMFR.DOCUMENT_POSITION_PARAMETERS);
-
-        boolean fillResourceIrrespectiveOfConversion = documentPositionParameters
-                .getBooleanField(DocumentPositionParametersFields.FILL_RESOURCE_IRRESPECTIVE_OF_CONVERSION);
-
-        if (fillResourceIrrespectiveOfConversion) {
+        if (fillResourceIrrespectiveOfConversion()) {
             resources.addAll(getResourcesForLocationCommonCodeConversion(warehouse, product, additionalCode, position, true,
                     searchOrders));
         }
@@ -965,6 +963,14 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
         return resources;
     }
 
+    private boolean fillResourceIrrespectiveOfConversion() {
+        Entity documentPositionParameters = parameterService.getParameter()
+                .getBelongsToField(ParameterFieldsMFR.DOCUMENT_POSITION_PARAMETERS);
+
+        return documentPositionParameters
+                .getBooleanField(DocumentPositionParametersFields.FILL_RESOURCE_IRRESPECTIVE_OF_CONVERSION);
+    }
+
     private List<Entity> getResourcesForLocationAndProductFIFO(final Entity warehouse, final Entity product,
             final Entity additionalCode, final Entity position) {
         return getResourcesForLocationCommonCode(warehouse, product, additionalCode, position,
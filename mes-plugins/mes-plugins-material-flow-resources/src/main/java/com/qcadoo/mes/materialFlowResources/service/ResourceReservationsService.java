@@ -1,10 +1,8 @@
 package com.qcadoo.mes.materialFlowResources.service;
 
 import java.math.BigDecimal;
-import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 
 import com.qcadoo.mes.materialFlowResources.constants.MaterialFlowResourcesConstants;
@@ -16,21 +14,9 @@ import com.qcadoo.model.api.Entity;
 @Service
 public class ResourceReservationsService {
 
-    @Autowired
-    private NamedParameterJdbcTemplate jdbcTemplate;
-
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
-    void updateResourceQuantites(Map<String, Object> params, BigDecimal quantityToAdd) {
-        if (params.get("resource_id") != null) {
-            params.put("quantity_to_add", quantityToAdd);
-            String query = "UPDATE materialflowresources_resource SET reservedquantity = reservedquantity + :quantity_to_add, "
-                    + "availablequantity = availablequantity - :quantity_to_add WHERE id = :resource_id";
-            jdbcTemplate.update(query, params);
-        }
-    }
-
     public void updateResourceQuantites(Entity position, BigDecimal quantityToAdd) {
         Entity resource = position.getBelongsToField(PositionFields.RESOURCE);
         if (resource != null) {
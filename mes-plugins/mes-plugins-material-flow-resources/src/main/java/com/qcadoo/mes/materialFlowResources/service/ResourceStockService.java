@@ -1,7 +1,11 @@
 package com.qcadoo.mes.materialFlowResources.service;
 
 import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
+import com.qcadoo.mes.materialFlowResources.dto.ResourceStockChange;
 import com.qcadoo.model.api.Entity;
 
 public interface ResourceStockService {
@@ -12,5 +16,31 @@ public interface ResourceStockService {
 
     BigDecimal getResourceStockQuantity(Entity product, Entity location);
 
+    /**
+     * Returns available quantities of given products in location, read with a single query. Products without stock are
+     * omitted.
+     */
+    Map<Long, BigDecimal> getResourceStockAvailableQuantities(final Entity location, final Collection<Long> productIds);
+
     void checkResourcesStock(Entity document);
+
+    /**
+     * Updates stock by the difference between saved resource and its previous state, any of which may be null.
+     */
+    void updateResourceStock(final Entity resource, final Entity existingResource);
+
+    /**
+     * Updates reserved quantity of stock by the difference between saved reservation and its previous state, any of which may
+     * be null.
+     */
+    void updateResourceStockReservation(final Entity reservation, final Entity existingReservation);
+
+    void updateResourceStocks(final List<ResourceStockChange> changes);
+
+    /**
+     * Recalculates stock from resources and reservations, creating missing rows, and returns number of rows, which were out of
+     * date.
+     */
+    int rebuildResourceStocks();
+
 }
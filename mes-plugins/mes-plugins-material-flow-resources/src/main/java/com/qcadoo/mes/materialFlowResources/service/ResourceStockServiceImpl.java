@@ -2,14 +2,21 @@ package com.qcadoo.mes.materialFlowResources.service;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
 import org.springframework.stereotype.Service;
 
 import com.google.common.collect.Lists;
@@ -17,37 +24,71 @@ import com.google.common.collect.Maps;
 import com.qcadoo.mes.basic.constants.ProductFields;
 import com.qcadoo.mes.materialFlow.constants.LocationFields;
 import com.qcadoo.mes.materialFlowResources.constants.DocumentFields;
-import com.qcadoo.mes.materialFlowResources.constants.MaterialFlowResourcesConstants;
 import com.qcadoo.mes.materialFlowResources.constants.PositionFields;
+import com.qcadoo.mes.materialFlowResources.constants.ReservationFields;
 import com.qcadoo.mes.materialFlowResources.constants.ResourceFields;
-import com.qcadoo.mes.materialFlowResources.constants.ResourceStockFields;
+import com.qcadoo.mes.materialFlowResources.dto.ResourceStockChange;
 import com.qcadoo.mes.materialFlowResources.dto.ResourceStockDto;
-import com.qcadoo.model.api.DataDefinition;
-import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.BigDecimalUtils;
 import com.qcadoo.model.api.Entity;
+import com.qcadoo.tenant.api.MultiTenantCallback;
+import com.qcadoo.tenant.api.MultiTenantService;
 
 @Service
 public class ResourceStockServiceImpl implements ResourceStockService {
 
-    @Autowired
-    private DataDefinitionService dataDefinitionService;
+    private static final Logger LOG = LoggerFactory.getLogger(ResourceStockServiceImpl.class);
+
+    private static final String UPSERT_RESOURCE_STOCK = "INSERT INTO materialflowresources_resourcestock AS rs "
+            + "(location_id, product_id, quantity, blockedquantity, reservedquantity, availablequantity) "
+            + "VALUES (:locationId, :productId, :quantity, :blockedQuantity, :reservedQuantity, "
+            + ":quantity - :blockedQuantity - :reservedQuantity) "
+            + "ON CONFLICT (location_id, product_id) DO UPDATE SET "
+            + "quantity = COALESCE(rs.quantity, 0) + EXCLUDED.quantity, "
+            + "blockedquantity = COALESCE(rs.blockedquantity, 0) + EXCLUDED.blockedquantity, "
+            + "reservedquantity = COALESCE(rs.reservedquantity, 0) + EXCLUDED.reservedquantity, "
+            + "availablequantity = COALESCE(rs.quantity, 0) + EXCLUDED.quantity - COALESCE(rs.blockedquantity, 0) "
+            + "- EXCLUDED.blockedquantity - COALESCE(rs.reservedquantity, 0) - EXCLUDED.reservedquantity";
+
+    private static final String INSERT_MISSING_RESOURCE_STOCKS = "INSERT INTO materialflowresources_resourcestock "
+            + "(location_id, product_id, quantity, blockedquantity, reservedquantity, availablequantity) "
+            + "SELECT r.location_id, r.product_id, 0, 0, 0, 0 "
+            + "FROM (SELECT DISTINCT location_id, product_id FROM materialflowresources_resource) r "
+            + "WHERE NOT EXISTS (SELECT 1 FROM materialflowresources_resourcestock rs "
+            + "WHERE rs.location_id = r.location_id AND rs.product_id = r.product_id) "
+            + "ON CONFLICT (location_id, product_id) DO NOTHING";
+
+    private static final String REBUILD_RESOURCE_STOCKS = "WITH quantities AS ("
+            + "SELECT location_id, product_id, SUM(quantity) AS quantity, "
+            + "SUM(CASE WHEN blockedforqualitycontrol THEN quantity ELSE 0 END) AS blockedquantity "
+            + "FROM materialflowresources_resource GROUP BY location_id, product_id), "
+            + "reserved_quantities AS (SELECT location_id, product_id, SUM(quantity) AS quantity "
+            + "FROM materialflowresources_reservation GROUP BY location_id, product_id), "
+            + "stocks AS (SELECT rs.id, COALESCE(q.quantity, 0) AS quantity, COALESCE(q.blockedquantity, 0) AS blockedquantity, "
+            + "COALESCE(r.quantity, 0) AS reservedquantity FROM materialflowresources_resourcestock rs "
+            + "LEFT JOIN quantities q ON q.location_id = rs.location_id AND q.product_id = rs.product_id "
+            + "LEFT JOIN reserved_quantities r ON r.location_id = rs.location_id AND r.product_id = rs.product_id) "
+            + "UPDATE materialflowresources_resourcestock rs SET quantity = s.quantity, blockedquantity = s.blockedquantity, "
+            + "reservedquantity = s.reservedquantity, availablequantity = s.quantity - s.blockedquantity - s.reservedquantity "
+            + "FROM stocks s "
+            + "WHERE rs.id = s.id AND (rs.quantity IS DISTINCT FROM s.quantity "
+            + "OR rs.blockedquantity IS DISTINCT FROM s.blockedquantity "
+            + "OR rs.reservedquantity IS DISTINCT FROM s.reservedquantity "
+            + "OR rs.availablequantity IS DISTINCT FROM s.quantity - s.blockedquantity - s.reservedquantity)";
 
     @Autowired
     private NamedParameterJdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private MultiTenantService multiTenantService;
+
     @Override
     public void createResourceStock(final Entity resource) {
         Entity product = resource.getBelongsToField(ResourceFields.PRODUCT);
         Entity location = resource.getBelongsToField(ResourceFields.LOCATION);
-        Optional<ResourceStockDto> maybeStock = getResourceStockForProductAndLocation(product, location);
-        if (!maybeStock.isPresent()) {
-            DataDefinition resourceStockDD = dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
-                    MaterialFlowResourcesConstants.MODEL_RESOURCE_STOCK);
-            Entity stock = resourceStockDD.create();
-            stock.setField(ResourceStockFields.LOCATION, location);
-            stock.setField(ResourceStockFields.PRODUCT, product);
-            resourceStockDD.save(stock);
-        }
+
+        applyResourceStockChanges(Lists.newArrayList(ResourceStockChange.ofReservedQuantity(location.getId(),
+                product.getId(), BigDecimal.ZERO)));
     }
 
     @Override
@@ -72,14 +113,14 @@ public class ResourceStockServiceImpl implements ResourceStockService {
 
     private Optional<ResourceStockDto> getResourceStockForProductAndLocation(Entity product, Entity location) {
         StringBuilder query = new StringBuilder();
-        query.append("SELECT rs.* ");
-        query.append("FROM materialflowresources_resourcestockdto rs ");
+        query.append("SELECT rs.quantity, rs.availablequantity ");
+        query.append("FROM materialflowresources_resourcestock rs ");
         query.append("WHERE rs.location_id = :locationId AND rs.product_id = :productId ");
         query.append("LIMIT 1");
 
         Map<String, Object> params = Maps.newHashMap();
-        params.put("locationId", location.getId().intValue());
-        params.put("productId", product.getId().intValue());
+        params.put("locationId", location.getId());
+        params.put("productId", product.getId());
         List<ResourceStockDto> resourceStock = jdbcTemplate.query(query.toString(), params,
                 BeanPropertyRowMapper.newInstance(ResourceStockDto.class));
         if (resourceStock.isEmpty()) {
@@ -89,16 +130,42 @@ public class ResourceStockServiceImpl implements ResourceStockService {
         }
     }
 
+    @Override
+    public Map<Long, BigDecimal> getResourceStockAvailableQuantities(final Entity location, final Collection<Long> productIds) {
+        Map<Long, BigDecimal> availableQuantities = Maps.newHashMap();
+
+        if (Objects.isNull(location) || productIds.isEmpty()) {
+            return availableQuantities;
+        }
+
+        StringBuilder query = new StringBuilder();
+        query.append("SELECT rs.product_id, rs.availablequantity ");
+        query.append("FROM materialflowresources_resourcestock rs ");
+        query.append("WHERE rs.location_id = :locationId AND rs.product_id IN (:productIds)");
+
+        Map<String, Object> params = Maps.newHashMap();
+        params.put("locationId", location.getId());
+        params.put("productIds", productIds);
+
+        jdbcTemplate.query(query.toString(), params, rs -> {
+            availableQuantities.put(rs.getLong("product_id"),
+                    BigDecimalUtils.convertNullToZero(rs.getBigDecimal("availablequantity")));
+        });
+
+        return availableQuantities;
+    }
+
     @Override
     public void checkResourcesStock(Entity document) {
         List<String> invalidProducts = new ArrayList<>();
-        List<Entity> mergedPositions = mergePositionsBeforeValidation(document.getHasManyField(DocumentFields.POSITIONS));
-        for (Entity position : mergedPositions) {
-            if ((position.getDecimalField(PositionFields.QUANTITY)
-                    .compareTo(getResourceStockAvailableQuantity(position.getBelongsToField(PositionFields.PRODUCT),
-                            document.getBelongsToField(DocumentFields.LOCATION_FROM))) > 0)) {
-                Entity product = position.getBelongsToField(PositionFields.PRODUCT);
-                invalidProducts.add(product.getStringField(ProductFields.NUMBER));
+        Map<Long, Entity> products = Maps.newLinkedHashMap();
+        Map<Long, BigDecimal> quantities = mergePositionsBeforeValidation(document.getHasManyField(DocumentFields.POSITIONS),
+                products);
+        Map<Long, BigDecimal> availableQuantities = getResourceStockAvailableQuantities(
+                document.getBelongsToField(DocumentFields.LOCATION_FROM), quantities.keySet());
+        for (Map.Entry<Long, BigDecimal> quantity : quantities.entrySet()) {
+            if (quantity.getValue().compareTo(availableQuantities.getOrDefault(quantity.getKey(), BigDecimal.ZERO)) > 0) {
+                invalidProducts.add(products.get(quantity.getKey()).getStringField(ProductFields.NUMBER));
             }
         }
         if (!invalidProducts.isEmpty()) {
@@ -106,21 +173,14 @@ public class ResourceStockServiceImpl implements ResourceStockService {
         }
     }
 
-    private List<Entity> mergePositionsBeforeValidation(final List<Entity> positions) {
-        List<Entity> mergedPositions = Lists.newArrayList();
+    private Map<Long, BigDecimal> mergePositionsBeforeValidation(final List<Entity> positions, final Map<Long, Entity> products) {
+        Map<Long, BigDecimal> quantities = Maps.newLinkedHashMap();
         for (Entity position : positions) {
-            Optional<Entity> mergedPosition = mergedPositions.stream()
-                    .filter(merged -> merged.getBelongsToField(PositionFields.PRODUCT).getId()
-                            .equals(position.getBelongsToField(PositionFields.PRODUCT).getId()))
-                    .findAny();
-            if (mergedPosition.isPresent()) {
-                mergedPosition.get().setField(PositionFields.QUANTITY, mergedPosition.get()
-                        .getDecimalField(PositionFields.QUANTITY).add(position.getDecimalField(PositionFields.QUANTITY)));
-            } else {
-                mergedPositions.add(position.copy());
-            }
+            Entity product = position.getBelongsToField(PositionFields.PRODUCT);
+            products.putIfAbsent(product.getId(), product);
+            quantities.merge(product.getId(), position.getDecimalField(PositionFields.QUANTITY), BigDecimal::add);
         }
-        return mergedPositions;
+        return quantities;
     }
 
     private void addDocumentErrors(Entity document, List<String> invalidProducts) {
@@ -129,4 +189,121 @@ public class ResourceStockServiceImpl implements ResourceStockService {
         String locationNumber = locationFrom == null ? "" : locationFrom.getStringField(LocationFields.NUMBER);
         document.addGlobalError("materialFlow.error.position.quantity.notEnoughResources", false, productNumbers, locationNumber);
     }
+
+    @Override
+    public void updateResourceStock(final Entity resource, final Entity existingResource) {
+        List<ResourceStockChange> changes = Lists.newArrayList();
+
+        if (Objects.nonNull(existingResource)) {
+            changes.add(ResourceStockChange.ofQuantity(getId(existingResource, ResourceFields.LOCATION),
+                    getId(existingResource, ResourceFields.PRODUCT),
+                    BigDecimalUtils.convertNullToZero(existingResource.getDecimalField(ResourceFields.QUANTITY)).negate(),
+                    existingResource.getBooleanField(ResourceFields.BLOCKED_FOR_QUALITY_CONTROL)));
+        }
+        if (Objects.nonNull(resource)) {
+            changes.add(ResourceStockChange.ofQuantity(getId(resource, ResourceFields.LOCATION),
+                    getId(resource, ResourceFields.PRODUCT),
+                    BigDecimalUtils.convertNullToZero(resource.getDecimalField(ResourceFields.QUANTITY)),
+                    resource.getBooleanField(ResourceFields.BLOCKED_FOR_QUALITY_CONTROL)));
+        }
+
+        updateResourceStocks(changes);
+    }
+
+    @Override
+    public void updateResourceStockReservation(final Entity reservation, final Entity existingReservation) {
+        List<ResourceStockChange> changes = Lists.newArrayList();
+
+        if (Objects.nonNull(existingReservation)) {
+            changes.add(ResourceStockChange.ofReservedQuantity(getId(existingReservation, ReservationFields.LOCATION),
+                    getId(existingReservation, ReservationFields.PRODUCT),
+                    BigDecimalUtils.convertNullToZero(existingReservation.getDecimalField(ReservationFields.QUANTITY)).negate()));
+        }
+        if (Objects.nonNull(reservation)) {
+            changes.add(ResourceStockChange.ofReservedQuantity(getId(reservation, ReservationFields.LOCATION),
+                    getId(reservation, ReservationFields.PRODUCT),
+                    BigDecimalUtils.convertNullToZero(reservation.getDecimalField(ReservationFields.QUANTITY))));
+        }
+
+        updateResourceStocks(changes);
+    }
+
+    private Long getId(final Entity entity, final String fieldName) {
+        Entity belongsToEntity = entity.getBelongsToField(fieldName);
+
+        return Objects.isNull(belongsToEntity) ? null : belongsToEntity.getId();
+    }
+
+    @Override
+    public void updateResourceStocks(final List<ResourceStockChange> changes) {
+        Map<List<Long>, ResourceStockChange> mergedChanges = Maps.newLinkedHashMap();
+
+        for (ResourceStockChange change : changes) {
+            if (Objects.isNull(change.getLocationId()) || Objects.isNull(change.getProductId())) {
+                continue;
+            }
+
+            List<Long> key = Arrays.asList(change.getLocationId(), change.getProductId());
+            ResourceStockChange mergedChange = mergedChanges.get(key);
+
+            if (Objects.isNull(mergedChange)) {
+                mergedChanges.put(key, new ResourceStockChange(change.getLocationId(), change.getProductId(),
+                        change.getQuantity(), change.getBlockedQuantity(), change.getReservedQuantity()));
+            } else {
+                mergedChange.add(change);
+            }
+        }
+
+        mergedChanges.values().removeIf(ResourceStockChange::isEmpty);
+
+        applyResourceStockChanges(Lists.newArrayList(mergedChanges.values()));
+    }
+
+    private void applyResourceStockChanges(final List<ResourceStockChange> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+
+        SqlParameterSource[] params = changes.stream().map(this::createStockParameters).toArray(SqlParameterSource[]::new);
+
+        jdbcTemplate.batchUpdate(UPSERT_RESOURCE_STOCK, params);
+    }
+
+    private SqlParameterSource createStockParameters(final ResourceStockChange change) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+
+        params.addValue("locationId", change.getLocationId());
+        params.addValue("productId", change.getProductId());
+        params.addValue("quantity", change.getQuantity());
+        params.addValue("blockedQuantity", change.getBlockedQuantity());
+        params.addValue("reservedQuantity", change.getReservedQuantity());
+
+        return params;
+    }
+
+    public void rebuildResourceStocksTrigger() {
+        multiTenantService.doInMultiTenantContext(new MultiTenantCallback() {
+
+            @Override
+            public void invoke() {
+                rebuildResourceStocks();
+            }
+
+        });
+    }
+
+    @Override
+    public int rebuildResourceStocks() {
+        int inserted = jdbcTemplate.update(INSERT_MISSING_RESOURCE_STOCKS, Maps.newHashMap());
+        int updated = jdbcTemplate.update(REBUILD_RESOURCE_STOCKS, Maps.newHashMap());
+
+        if (updated > 0) {
+            LOG.warn("Resource stocks rebuilt: {} rows created, {} rows were out of date", inserted, updated);
+        } else {
+            LOG.info("Resource stocks rebuilt: {} rows created", inserted);
+        }
+
+        return inserted + updated;
+    }
+
 }
@@ -0,0 +1,116 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlowResources;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.common.collect.Maps;
+
+public class DocumentPositionServiceTest {
+
+    private static final String L_ORDER_BY = "q.\"batch\"";
+
+    @Test
+    public void shouldSeekByIdWithoutSortColumn() {
+        // given
+        Map<String, Object> parameters = Maps.newHashMap();
+
+        // when
+        String ascending = DocumentPositionService.getSeekCondition("", "asc",
+                new DocumentPositionsGridCache.PageEnd(null, 10L), parameters);
+        String descending = DocumentPositionService.getSeekCondition("", "desc",
+                new DocumentPositionsGridCache.PageEnd(null, 10L), parameters);
+
+        // then
+        assertEquals("q.id > :lastId ", ascending);
+        assertEquals("q.id < :lastId ", descending);
+        assertEquals(Long.valueOf(10L), parameters.get("lastId"));
+        assertFalse(parameters.containsKey("lastSortValue"));
+    }
+
+    @Test
+    public void shouldSeekAfterSortValueAndKeepNullsLastInAscendingOrder() {
+        // given
+        Map<String, Object> parameters = Maps.newHashMap();
+
+        // when
+        String seekCondition = DocumentPositionService.getSeekCondition(L_ORDER_BY, "asc",
+                new DocumentPositionsGridCache.PageEnd("B", 10L), parameters);
+
+        // then
+        assertEquals("((" + L_ORDER_BY + " > :lastSortValue OR (" + L_ORDER_BY + " = :lastSortValue AND q.id > :lastId)) OR "
+                + L_ORDER_BY + " IS NULL) ", seekCondition);
+        assertEquals("B", parameters.get("lastSortValue"));
+        assertEquals(Long.valueOf(10L), parameters.get("lastId"));
+    }
+
+    @Test
+    public void shouldSeekBeforeSortValueWithoutNullsInDescendingOrder() {
+        // given
+        Map<String, Object> parameters = Maps.newHashMap();
+
+        // when
+        String seekCondition = DocumentPositionService.getSeekCondition(L_ORDER_BY, "desc",
+                new DocumentPositionsGridCache.PageEnd("B", 10L), parameters);
+
+        // then
+        assertEquals("(" + L_ORDER_BY + " < :lastSortValue OR (" + L_ORDER_BY + " = :lastSortValue AND q.id < :lastId)) ",
+                seekCondition);
+        assertEquals("B", parameters.get("lastSortValue"));
+    }
+
+    @Test
+    public void shouldSeekWithinNullsWhenAscendingPageEndsOnNull() {
+        // given
+        Map<String, Object> parameters = Maps.newHashMap();
+
+        // when
+        String seekCondition = DocumentPositionService.getSeekCondition(L_ORDER_BY, "asc",
+                new DocumentPositionsGridCache.PageEnd(null, 10L), parameters);
+
+        // then
+        assertEquals("(" + L_ORDER_BY + " IS NULL AND q.id > :lastId) ", seekCondition);
+        assertFalse(parameters.containsKey("lastSortValue"));
+    }
+
+    @Test
+    public void shouldSeekPastNullsWhenDescendingPageEndsOnNull() {
+        // given
+        Map<String, Object> parameters = Maps.newHashMap();
+
+        // when
+        String seekCondition = DocumentPositionService.getSeekCondition(L_ORDER_BY, "desc",
+                new DocumentPositionsGridCache.PageEnd(null, 10L), parameters);
+
+        // then
+        assertEquals("(" + L_ORDER_BY + " IS NOT NULL OR q.id < :lastId) ", seekCondition);
+        assertFalse(parameters.containsKey("lastSortValue"));
+    }
+
+}
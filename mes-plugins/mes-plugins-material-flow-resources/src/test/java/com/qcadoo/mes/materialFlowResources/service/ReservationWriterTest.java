@@ -0,0 +1,79 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlowResources.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.materialFlowResources.dto.ReservationDelta;
+import com.qcadoo.mes.materialFlowResources.dto.ResourceStockChange;
+
+public class ReservationWriterTest {
+
+    private static final Long L_LOCATION_ID = 1L;
+
+    @Test
+    public void shouldNetReservedQuantityChangesPerResource() {
+        // given
+        ReservationDelta oldReservation = new ReservationDelta(100L, 10L, L_LOCATION_ID, 5L, new BigDecimal("4"));
+        List<ReservationDelta> deltas = Lists.newArrayList(oldReservation.negate(),
+                new ReservationDelta(100L, 10L, L_LOCATION_ID, 5L, new BigDecimal("6")),
+                new ReservationDelta(101L, 11L, L_LOCATION_ID, 5L, new BigDecimal("2")),
+                new ReservationDelta(101L, 11L, L_LOCATION_ID, 5L, new BigDecimal("-2")),
+                new ReservationDelta(102L, null, L_LOCATION_ID, 5L, new BigDecimal("3")));
+
+        // when
+        Map<Long, BigDecimal> changes = ReservationWriter.getResourceReservedQuantityChanges(deltas);
+
+        // then
+        assertEquals(1, changes.size());
+        assertEquals(0, new BigDecimal("2").compareTo(changes.get(10L)));
+    }
+
+    @Test
+    public void shouldNetReservedQuantityChangesPerStock() {
+        // given
+        List<ReservationDelta> deltas = Lists.newArrayList(new ReservationDelta(100L, 10L, L_LOCATION_ID, 5L, new BigDecimal("4")),
+                new ReservationDelta(101L, 11L, L_LOCATION_ID, 5L, new BigDecimal("1")),
+                new ReservationDelta(102L, 12L, L_LOCATION_ID, 6L, new BigDecimal("3")),
+                new ReservationDelta(102L, 12L, L_LOCATION_ID, 6L, new BigDecimal("-3")));
+
+        // when
+        List<ResourceStockChange> changes = ReservationWriter.getResourceStockChanges(deltas);
+
+        // then
+        assertEquals(1, changes.size());
+        assertEquals(Long.valueOf(5L), changes.get(0).getProductId());
+        assertEquals(0, new BigDecimal("5").compareTo(changes.get(0).getReservedQuantity()));
+        assertTrue(changes.get(0).getQuantity().signum() == 0);
+    }
+
+}
@@ -0,0 +1,392 @@
+package com.qcadoo.mes.materialFlowResources.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+
+import java.math.BigDecimal;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.materialFlowResources.constants.PositionFields;
+import com.qcadoo.mes.materialFlowResources.constants.ResourceFields;
+import com.qcadoo.mes.materialFlowResources.constants.WarehouseAlgorithm;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Accepts the same document twice: once the way {@link ResourceManagementServiceImpl} did before
+ * {@link ResourceAllocation}, querying resources for each position and saving or deleting them right away, and once with
+ * resources loaded up front and changes flushed at the end. Both have to split positions into the same resources and
+ * quantities and leave the warehouse in the same state.
+ */
+public class ResourceAllocationComparisonTest {
+
+    private static final Long L_PRODUCT_ID = 1L;
+
+    private static final Long L_OTHER_PRODUCT_ID = 2L;
+
+    private static final Long L_ADDITIONAL_CODE_ID = 7L;
+
+    private static final Long L_BATCH_ID = 5L;
+
+    private static final List<String> L_REFERENCES = Lists.newArrayList(ResourceFields.PRODUCT, ResourceFields.ADDITIONAL_CODE,
+            ResourceFields.BATCH);
+
+    private Map<Long, Map<String, Object>> warehouse;
+
+    private Map<Long, Entity> products;
+
+    private final Map<Long, Map<String, Object>> loaded = Maps.newHashMap();
+
+    @Before
+    public void init() {
+        products = Maps.newHashMap();
+        products.put(L_PRODUCT_ID, mockEntity(L_PRODUCT_ID, Maps.newHashMap()));
+        products.put(L_OTHER_PRODUCT_ID, mockEntity(L_OTHER_PRODUCT_ID, Maps.newHashMap()));
+
+        warehouse = Maps.newLinkedHashMap();
+
+        addResource(11L, L_PRODUCT_ID, "10", "10", 1L, 30L, null, null, false);
+        addResource(12L, L_PRODUCT_ID, "5", "3", 2L, 10L, null, null, false);
+        addResource(13L, L_PRODUCT_ID, "8", "8", 3L, 20L, L_ADDITIONAL_CODE_ID, null, false);
+        addResource(14L, L_PRODUCT_ID, "20", "20", 4L, null, null, L_BATCH_ID, false);
+        addResource(15L, L_PRODUCT_ID, "50", "50", 5L, 5L, null, null, true);
+        addResource(16L, L_PRODUCT_ID, "4", "4", 6L, 10L, null, null, false);
+        addResource(21L, L_OTHER_PRODUCT_ID, "6", "6", 1L, 40L, null, null, false);
+        addResource(22L, L_OTHER_PRODUCT_ID, "9", "9", 2L, null, null, null, false);
+    }
+
+    @Test
+    public void shouldSplitDocumentLikePerPositionQueriesForAllAlgorithms() {
+        for (WarehouseAlgorithm warehouseAlgorithm : WarehouseAlgorithm.values()) {
+            // given
+            List<Map<String, Object>> positions = Lists.newArrayList(position(L_PRODUCT_ID, "4", null, null),
+                    position(L_OTHER_PRODUCT_ID, "7", null, null), position(L_PRODUCT_ID, "9", L_ADDITIONAL_CODE_ID, null),
+                    position(L_PRODUCT_ID, "6", null, L_BATCH_ID), position(L_PRODUCT_ID, "5", null, null),
+                    position(L_OTHER_PRODUCT_ID, "8", null, null));
+
+            // when
+            Result perPosition = acceptPerPosition(copyWarehouse(warehouse), positions, warehouseAlgorithm);
+            Result allocated = acceptWithAllocation(copyWarehouse(warehouse), positions, warehouseAlgorithm);
+
+            // then
+            assertEquals(warehouseAlgorithm.getStringValue(), perPosition.splits, allocated.splits);
+            assertEquals(warehouseAlgorithm.getStringValue(), perPosition.warehouse, allocated.warehouse);
+        }
+    }
+
+    @Test
+    public void shouldReportSameMissingQuantityForAllAlgorithms() {
+        for (WarehouseAlgorithm warehouseAlgorithm : WarehouseAlgorithm.values()) {
+            // given
+            List<Map<String, Object>> positions = Lists.newArrayList(position(L_OTHER_PRODUCT_ID, "10", null, null),
+                    position(L_OTHER_PRODUCT_ID, "10", null, null));
+
+            // when
+            Result perPosition = acceptPerPosition(copyWarehouse(warehouse), positions, warehouseAlgorithm);
+            Result allocated = acceptWithAllocation(copyWarehouse(warehouse), positions, warehouseAlgorithm);
+
+            // then
+            assertEquals(warehouseAlgorithm.getStringValue(), perPosition.splits, allocated.splits);
+            assertEquals(warehouseAlgorithm.getStringValue(), perPosition.warehouse, allocated.warehouse);
+        }
+    }
+
+    private Result acceptPerPosition(final Map<Long, Map<String, Object>> warehouse,
+            final List<Map<String, Object>> positions, final WarehouseAlgorithm warehouseAlgorithm) {
+        Result result = new Result();
+
+        for (Map<String, Object> positionFields : positions) {
+            Entity position = mockPosition(positionFields);
+
+            List<Entity> resources = query(warehouse, position, warehouseAlgorithm);
+
+            result.splits.add(consume(resources, positionFields, resource -> warehouse.put(resource.getId(),
+                    copy(fieldsOf(warehouse, resource))), resource -> warehouse.remove(resource.getId())));
+        }
+
+        result.warehouse = warehouse;
+
+        return result;
+    }
+
+    private Result acceptWithAllocation(final Map<Long, Map<String, Object>> warehouse,
+            final List<Map<String, Object>> positions, final WarehouseAlgorithm warehouseAlgorithm) {
+        Result result = new Result();
+
+        ResourceAllocation allocation = new ResourceAllocation(warehouseAlgorithm, load(warehouse, warehouseAlgorithm));
+
+        for (Map<String, Object> positionFields : positions) {
+            Entity position = mockPosition(positionFields);
+
+            List<Entity> resources = allocation.getResourcesForPosition(products.get(positionFields.get("productId")),
+                    position, false);
+
+            result.splits.add(consume(resources, positionFields, allocation::update,
+                    resource -> allocation.delete(resource, true)));
+        }
+
+        for (Entity resource : allocation.getResourcesToUpdate()) {
+            warehouse.put(resource.getId(), copy(loaded.get(resource.getId())));
+        }
+        for (Entity resource : allocation.getResourcesToDelete()) {
+            warehouse.remove(resource.getId());
+        }
+
+        result.warehouse = warehouse;
+
+        return result;
+    }
+
+    /**
+     * Query of {@link ResourceAllocationService#prepare(Entity, List, WarehouseAlgorithm)}.
+     */
+    private List<Entity> load(final Map<Long, Map<String, Object>> warehouse, final WarehouseAlgorithm warehouseAlgorithm) {
+        loaded.clear();
+
+        return warehouse.entrySet().stream().filter(entry -> isAvailable(entry.getValue()))
+                .sorted(Map.Entry.comparingByValue(prepareOrder(warehouseAlgorithm))).map(entry -> {
+                    Map<String, Object> fields = copy(entry.getValue());
+
+                    loaded.put(entry.getKey(), fields);
+
+                    return mockResource(entry.getKey(), fields);
+                }).collect(Collectors.toList());
+    }
+
+    /**
+     * Per-position queries of {@link ResourceManagementServiceImpl}, with resources with position additional code first.
+     */
+    private List<Entity> query(final Map<Long, Map<String, Object>> warehouse, final Entity position,
+            final WarehouseAlgorithm warehouseAlgorithm) {
+        Entity product = position.getBelongsToField(PositionFields.PRODUCT);
+        Entity batch = position.getBelongsToField(PositionFields.BATCH);
+        Entity additionalCode = position.getBelongsToField(PositionFields.ADDITIONAL_CODE);
+
+        List<Map.Entry<Long, Map<String, Object>>> matching = warehouse.entrySet().stream()
+                .filter(entry -> product.getId().equals(entry.getValue().get("productId")))
+                .filter(entry -> isAvailable(entry.getValue()))
+                .filter(entry -> BigDecimal.ONE.compareTo((BigDecimal) entry.getValue().get(ResourceFields.CONVERSION)) == 0)
+                .filter(entry -> Objects.isNull(batch) || batch.getId().equals(entry.getValue().get("batchId")))
+                .sorted(Map.Entry.comparingByValue(queryOrder(warehouseAlgorithm))).collect(Collectors.toList());
+
+        List<Map.Entry<Long, Map<String, Object>>> ordered = Lists.newArrayList();
+
+        if (Objects.nonNull(additionalCode)) {
+            matching.stream().filter(entry -> additionalCode.getId().equals(entry.getValue().get("additionalCodeId")))
+                    .forEach(ordered::add);
+            matching.stream().filter(entry -> !additionalCode.getId().equals(entry.getValue().get("additionalCodeId")))
+                    .forEach(ordered::add);
+        }
+        if (ordered.isEmpty()) {
+            ordered = matching;
+        }
+
+        return ordered.stream().map(entry -> mockResource(entry.getKey(), copy(entry.getValue()))).collect(Collectors.toList());
+    }
+
+    private boolean isAvailable(final Map<String, Object> fields) {
+        return BigDecimal.ZERO.compareTo((BigDecimal) fields.get(ResourceFields.AVAILABLE_QUANTITY)) < 0
+                && !Boolean.TRUE.equals(fields.get(ResourceFields.BLOCKED_FOR_QUALITY_CONTROL));
+    }
+
+    private Comparator<Map<String, Object>> prepareOrder(final WarehouseAlgorithm warehouseAlgorithm) {
+        Comparator<Map<String, Object>> byTime = Comparator.comparing(fields -> (Date) fields.get(ResourceFields.TIME));
+        Comparator<Map<String, Object>> byExpirationDate = Comparator.comparing(
+                fields -> (Date) fields.get(ResourceFields.EXPIRATION_DATE), Comparator.nullsLast(Comparator.naturalOrder()));
+
+        if (WarehouseAlgorithm.LIFO.equals(warehouseAlgorithm)) {
+            return byTime.reversed();
+        } else if (WarehouseAlgorithm.FEFO.equals(warehouseAlgorithm)) {
+            return byExpirationDate.thenComparing(byTime);
+        } else if (WarehouseAlgorithm.LEFO.equals(warehouseAlgorithm)) {
+            return byExpirationDate.reversed().thenComparing(byTime);
+        }
+
+        return byTime;
+    }
+
+    private Comparator<Map<String, Object>> queryOrder(final WarehouseAlgorithm warehouseAlgorithm) {
+        Comparator<Map<String, Object>> byAvailableQuantity = Comparator
+                .comparing(fields -> (BigDecimal) fields.get(ResourceFields.AVAILABLE_QUANTITY));
+        Comparator<Map<String, Object>> byExpirationDate = Comparator.comparing(
+                fields -> (Date) fields.get(ResourceFields.EXPIRATION_DATE), Comparator.nullsLast(Comparator.naturalOrder()));
+
+        if (WarehouseAlgorithm.FEFO.equals(warehouseAlgorithm)) {
+            return byExpirationDate.thenComparing(byAvailableQuantity);
+        } else if (WarehouseAlgorithm.LEFO.equals(warehouseAlgorithm)) {
+            return byExpirationDate.reversed().thenComparing(byAvailableQuantity);
+        }
+
+        return prepareOrder(warehouseAlgorithm);
+    }
+
+    /**
+     * Consumes resources the way release and transfer documents do, returns quantities taken from each resource.
+     */
+    private List<String> consume(final List<Entity> resources, final Map<String, Object> positionFields,
+            final Consumer<Entity> update, final Consumer<Entity> delete) {
+        List<String> split = Lists.newArrayList();
+
+        BigDecimal quantity = (BigDecimal) positionFields.get(PositionFields.QUANTITY);
+
+        for (Entity resource : resources) {
+            BigDecimal resourceQuantity = resource.getDecimalField(ResourceFields.QUANTITY);
+            BigDecimal resourceAvailableQuantity = resource.getDecimalField(ResourceFields.AVAILABLE_QUANTITY);
+
+            if (quantity.compareTo(resourceAvailableQuantity) >= 0) {
+                quantity = quantity.subtract(resourceAvailableQuantity);
+
+                if (resourceQuantity.compareTo(resourceAvailableQuantity) <= 0) {
+                    delete.accept(resource);
+                } else {
+                    resource.setField(ResourceFields.AVAILABLE_QUANTITY, BigDecimal.ZERO);
+                    resource.setField(ResourceFields.QUANTITY, resourceQuantity.subtract(resourceAvailableQuantity));
+
+                    update.accept(resource);
+                }
+
+                split.add(resource.getId() + ":" + resourceAvailableQuantity.toPlainString());
+
+                if (BigDecimal.ZERO.compareTo(quantity) == 0) {
+                    return split;
+                }
+            } else {
+                resource.setField(ResourceFields.QUANTITY, resourceQuantity.subtract(quantity));
+                resource.setField(ResourceFields.AVAILABLE_QUANTITY, resourceAvailableQuantity.subtract(quantity));
+
+                update.accept(resource);
+
+                split.add(resource.getId() + ":" + quantity.toPlainString());
+
+                return split;
+            }
+        }
+
+        split.add("missing:" + quantity.toPlainString());
+
+        return split;
+    }
+
+    private Map<String, Object> fieldsOf(final Map<Long, Map<String, Object>> warehouse, final Entity resource) {
+        Map<String, Object> fields = copy(warehouse.get(resource.getId()));
+
+        fields.put(ResourceFields.QUANTITY, resource.getDecimalField(ResourceFields.QUANTITY));
+        fields.put(ResourceFields.AVAILABLE_QUANTITY, resource.getDecimalField(ResourceFields.AVAILABLE_QUANTITY));
+
+        return fields;
+    }
+
+    private void addResource(final Long id, final Long productId, final String quantity, final String availableQuantity,
+            final Long time, final Long expirationDate, final Long additionalCodeId, final Long batchId,
+            final boolean blockedForQualityControl) {
+        Map<String, Object> fields = Maps.newHashMap();
+
+        fields.put("productId", productId);
+        fields.put("additionalCodeId", additionalCodeId);
+        fields.put("batchId", batchId);
+        fields.put(ResourceFields.QUANTITY, new BigDecimal(quantity));
+        fields.put(ResourceFields.AVAILABLE_QUANTITY, new BigDecimal(availableQuantity));
+        fields.put(ResourceFields.CONVERSION, BigDecimal.ONE);
+        fields.put(ResourceFields.TIME, new Date(time));
+        fields.put(ResourceFields.EXPIRATION_DATE, Objects.isNull(expirationDate) ? null : new Date(expirationDate));
+        fields.put(ResourceFields.BLOCKED_FOR_QUALITY_CONTROL, blockedForQualityControl);
+
+        warehouse.put(id, fields);
+    }
+
+    private Map<String, Object> position(final Long productId, final String quantity, final Long additionalCodeId,
+            final Long batchId) {
+        Map<String, Object> fields = Maps.newHashMap();
+
+        fields.put("productId", productId);
+        fields.put("additionalCodeId", additionalCodeId);
+        fields.put("batchId", batchId);
+        fields.put(PositionFields.QUANTITY, new BigDecimal(quantity));
+        fields.put(PositionFields.CONVERSION, BigDecimal.ONE);
+
+        return fields;
+    }
+
+    private Entity mockPosition(final Map<String, Object> positionFields) {
+        Map<String, Object> fields = copy(positionFields);
+
+        fields.put(PositionFields.PRODUCT, products.get(positionFields.get("productId")));
+        fields.put(PositionFields.ADDITIONAL_CODE, reference(positionFields.get("additionalCodeId")));
+        fields.put(PositionFields.BATCH, reference(positionFields.get("batchId")));
+
+        return mockEntity(null, fields);
+    }
+
+    private Entity mockResource(final Long id, final Map<String, Object> fields) {
+        fields.put(ResourceFields.PRODUCT, products.get(fields.get("productId")));
+        fields.put(ResourceFields.ADDITIONAL_CODE, reference(fields.get("additionalCodeId")));
+        fields.put(ResourceFields.BATCH, reference(fields.get("batchId")));
+
+        return mockEntity(id, fields);
+    }
+
+    private Entity reference(final Object id) {
+        return Objects.isNull(id) ? null : mockEntity((Long) id, Maps.newHashMap());
+    }
+
+    private Entity mockEntity(final Long id, final Map<String, Object> fields) {
+        return mock(Entity.class, invocation -> {
+            Object[] arguments = invocation.getArguments();
+
+            switch (invocation.getMethod().getName()) {
+                case "getId":
+                    return id;
+                case "setField":
+                    fields.put((String) arguments[0], arguments[1]);
+
+                    return null;
+                case "getBooleanField":
+                    return Boolean.TRUE.equals(fields.get(arguments[0]));
+                case "getField":
+                case "getDecimalField":
+                case "getDateField":
+                case "getStringField":
+                case "getBelongsToField":
+                    return fields.get(arguments[0]);
+                default:
+                    return null;
+            }
+        });
+    }
+
+    private Map<String, Object> copy(final Map<String, Object> fields) {
+        Map<String, Object> copy = Maps.newHashMap();
+
+        fields.forEach((key, value) -> {
+            if (!L_REFERENCES.contains(key)) {
+                copy.put(key, value);
+            }
+        });
+
+        return copy;
+    }
+
+    private Map<Long, Map<String, Object>> copyWarehouse(final Map<Long, Map<String, Object>> warehouse) {
+        return warehouse.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, entry -> copy(entry.getValue()),
+                (first, second) -> first, Maps::newLinkedHashMap));
+    }
+
+    private static class Result {
+
+        private final List<List<String>> splits = Lists.newArrayList();
+
+        private Map<Long, Map<String, Object>> warehouse;
+
+    }
+
+}
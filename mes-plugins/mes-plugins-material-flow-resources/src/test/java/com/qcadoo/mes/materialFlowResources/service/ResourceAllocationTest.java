@@ -0,0 +1,267 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlowResources.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.constants.ProductFields;
+import com.qcadoo.mes.materialFlowResources.constants.PositionFields;
+import com.qcadoo.mes.materialFlowResources.constants.ResourceFields;
+import com.qcadoo.mes.materialFlowResources.constants.WarehouseAlgorithm;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Checks that resources selected in memory are the same, and in the same order, as the ones returned by the per-position
+ * queries of {@link ResourceManagementServiceImpl} after previous positions had been saved.
+ */
+public class ResourceAllocationTest {
+
+    private Entity product;
+
+    private Entity position;
+
+    @Before
+    public void init() {
+        product = mockEntity(1L);
+        position = mockEntity(100L);
+
+        given(position.getBelongsToField(PositionFields.PRODUCT)).willReturn(product);
+        given(position.getDecimalField(PositionFields.CONVERSION)).willReturn(BigDecimal.ONE);
+    }
+
+    @Test
+    public void shouldReturnResourcesInLoadOrderWithMatchingConversion() {
+        // given
+        Entity first = mockResource(1L, BigDecimal.TEN, BigDecimal.ONE, null);
+        Entity otherConversion = mockResource(2L, BigDecimal.TEN, new BigDecimal("2"), null);
+        Entity second = mockResource(3L, BigDecimal.TEN, BigDecimal.ONE, null);
+
+        ResourceAllocation allocation = new ResourceAllocation(WarehouseAlgorithm.FIFO,
+                Lists.newArrayList(first, otherConversion, second));
+
+        // when
+        List<Entity> resources = allocation.getResourcesForPosition(product, position, false);
+
+        // then
+        assertEquals(Lists.newArrayList(first, second), resources);
+    }
+
+    @Test
+    public void shouldAppendResourcesWithOtherConversionWhenFillingIrrespectiveOfConversion() {
+        // given
+        Entity otherConversion = mockResource(1L, BigDecimal.TEN, new BigDecimal("2"), null);
+        Entity matching = mockResource(2L, BigDecimal.TEN, BigDecimal.ONE, null);
+
+        ResourceAllocation allocation = new ResourceAllocation(WarehouseAlgorithm.FIFO,
+                Lists.newArrayList(otherConversion, matching));
+
+        // when
+        List<Entity> resources = allocation.getResourcesForPosition(product, position, true);
+
+        // then
+        assertEquals(Lists.newArrayList(matching, otherConversion), resources);
+    }
+
+    @Test
+    public void shouldUsePositionConversionForProductWithAdditionalUnit() {
+        // given
+        given(product.getStringField(ProductFields.ADDITIONAL_UNIT)).willReturn("kg");
+        given(position.getDecimalField(PositionFields.CONVERSION)).willReturn(new BigDecimal("2.00000"));
+
+        Entity withOne = mockResource(1L, BigDecimal.TEN, BigDecimal.ONE, null);
+        Entity withTwo = mockResource(2L, BigDecimal.TEN, new BigDecimal("2"), null);
+
+        ResourceAllocation allocation = new ResourceAllocation(WarehouseAlgorithm.FIFO, Lists.newArrayList(withOne, withTwo));
+
+        // when
+        List<Entity> resources = allocation.getResourcesForPosition(product, position, false);
+
+        // then
+        assertEquals(Lists.newArrayList(withTwo), resources);
+    }
+
+    @Test
+    public void shouldPreferResourcesWithPositionAdditionalCode() {
+        // given
+        Entity additionalCode = mockEntity(7L);
+        Entity otherAdditionalCode = mockEntity(8L);
+
+        given(position.getBelongsToField(PositionFields.ADDITIONAL_CODE)).willReturn(additionalCode);
+
+        Entity withoutCode = mockResource(1L, BigDecimal.TEN, BigDecimal.ONE, null);
+        Entity withOtherCode = mockResource(2L, BigDecimal.TEN, BigDecimal.ONE, null);
+        Entity withCode = mockResource(3L, BigDecimal.TEN, BigDecimal.ONE, null);
+
+        given(withOtherCode.getBelongsToField(ResourceFields.ADDITIONAL_CODE)).willReturn(otherAdditionalCode);
+        given(withCode.getBelongsToField(ResourceFields.ADDITIONAL_CODE)).willReturn(additionalCode);
+
+        ResourceAllocation allocation = new ResourceAllocation(WarehouseAlgorithm.FIFO,
+                Lists.newArrayList(withoutCode, withOtherCode, withCode));
+
+        // when
+        List<Entity> resources = allocation.getResourcesForPosition(product, position, false);
+
+        // then
+        assertEquals(Lists.newArrayList(withCode, withoutCode, withOtherCode), resources);
+    }
+
+    @Test
+    public void shouldReturnOnlyResourcesFromPositionBatch() {
+        // given
+        Entity batch = mockEntity(5L);
+        Entity otherBatch = mockEntity(6L);
+
+        given(position.getBelongsToField(PositionFields.BATCH)).willReturn(batch);
+
+        Entity withOtherBatch = mockResource(1L, BigDecimal.TEN, BigDecimal.ONE, null);
+        Entity withBatch = mockResource(2L, BigDecimal.TEN, BigDecimal.ONE, null);
+
+        given(withOtherBatch.getBelongsToField(ResourceFields.BATCH)).willReturn(otherBatch);
+        given(withBatch.getBelongsToField(ResourceFields.BATCH)).willReturn(batch);
+
+        ResourceAllocation allocation = new ResourceAllocation(WarehouseAlgorithm.FIFO,
+                Lists.newArrayList(withOtherBatch, withBatch));
+
+        // when
+        List<Entity> resources = allocation.getResourcesForPosition(product, position, false);
+
+        // then
+        assertEquals(Lists.newArrayList(withBatch), resources);
+    }
+
+    @Test
+    public void shouldSkipResourcesUsedByPreviousPositions() {
+        // given
+        Entity deleted = mockResource(1L, BigDecimal.TEN, BigDecimal.ONE, null);
+        Entity exhausted = mockResource(2L, BigDecimal.TEN, BigDecimal.ONE, null);
+        Entity remaining = mockResource(3L, BigDecimal.TEN, BigDecimal.ONE, null);
+
+        ResourceAllocation allocation = new ResourceAllocation(WarehouseAlgorithm.FIFO,
+                Lists.newArrayList(deleted, exhausted, remaining));
+
+        // when
+        allocation.delete(deleted, true);
+
+        given(exhausted.getDecimalField(ResourceFields.AVAILABLE_QUANTITY)).willReturn(BigDecimal.ZERO);
+        allocation.update(exhausted);
+
+        List<Entity> resources = allocation.getResourcesForPosition(product, position, false);
+
+        // then
+        assertEquals(Lists.newArrayList(remaining), resources);
+        assertNull(allocation.getResource(1L));
+        assertEquals(Lists.newArrayList(exhausted), Lists.newArrayList(allocation.getResourcesToUpdate()));
+        assertEquals(Lists.newArrayList(deleted), Lists.newArrayList(allocation.getResourcesToDelete()));
+    }
+
+    @Test
+    public void shouldNotUpdateResourceDeletedLater() {
+        // given
+        Entity resource = mockResource(1L, BigDecimal.TEN, BigDecimal.ONE, null);
+
+        ResourceAllocation allocation = new ResourceAllocation(WarehouseAlgorithm.FIFO, Lists.newArrayList(resource));
+
+        // when
+        allocation.update(resource);
+        allocation.delete(resource, false);
+
+        // then
+        assertTrue(allocation.getResourcesToUpdate().isEmpty());
+        assertTrue(allocation.getPalletNumbersToDispose().isEmpty());
+    }
+
+    @Test
+    public void shouldOrderFefoByCurrentAvailableQuantity() {
+        // given
+        Date date = new Date(1000L);
+        Date laterDate = new Date(2000L);
+
+        Entity later = mockResource(1L, BigDecimal.ONE, BigDecimal.ONE, laterDate);
+        Entity bigger = mockResource(2L, BigDecimal.TEN, BigDecimal.ONE, date);
+        Entity smaller = mockResource(3L, new BigDecimal("5"), BigDecimal.ONE, date);
+        Entity withoutDate = mockResource(4L, BigDecimal.ONE, BigDecimal.ONE, null);
+
+        ResourceAllocation allocation = new ResourceAllocation(WarehouseAlgorithm.FEFO,
+                Lists.newArrayList(withoutDate, bigger, later, smaller));
+
+        // when
+        given(bigger.getDecimalField(ResourceFields.AVAILABLE_QUANTITY)).willReturn(BigDecimal.ONE);
+        allocation.update(bigger);
+
+        List<Entity> resources = allocation.getResourcesForPosition(product, position, false);
+
+        // then
+        assertEquals(Lists.newArrayList(bigger, smaller, later, withoutDate), resources);
+    }
+
+    @Test
+    public void shouldOrderLefoWithResourcesWithoutExpirationDateFirst() {
+        // given
+        Entity earlier = mockResource(1L, BigDecimal.ONE, BigDecimal.ONE, new Date(1000L));
+        Entity later = mockResource(2L, BigDecimal.ONE, BigDecimal.ONE, new Date(2000L));
+        Entity withoutDate = mockResource(3L, BigDecimal.ONE, BigDecimal.ONE, null);
+
+        ResourceAllocation allocation = new ResourceAllocation(WarehouseAlgorithm.LEFO,
+                Lists.newArrayList(earlier, later, withoutDate));
+
+        // when
+        List<Entity> resources = allocation.getResourcesForPosition(product, position, false);
+
+        // then
+        assertEquals(Lists.newArrayList(withoutDate, later, earlier), resources);
+    }
+
+    private Entity mockResource(final Long id, final BigDecimal availableQuantity, final BigDecimal conversion,
+            final Date expirationDate) {
+        Entity resource = mockEntity(id);
+
+        given(resource.getBelongsToField(ResourceFields.PRODUCT)).willReturn(product);
+        given(resource.getDecimalField(ResourceFields.AVAILABLE_QUANTITY)).willReturn(availableQuantity);
+        given(resource.getDecimalField(ResourceFields.CONVERSION)).willReturn(conversion);
+        given(resource.getDateField(ResourceFields.EXPIRATION_DATE)).willReturn(expirationDate);
+
+        return resource;
+    }
+
+    private Entity mockEntity(final Long id) {
+        Entity entity = mock(Entity.class);
+
+        given(entity.getId()).willReturn(id);
+
+        return entity;
+    }
+
+}
@@ -0,0 +1,131 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlowResources.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.materialFlowResources.dto.ResourceStockChange;
+
+public class ResourceStockServiceImplTest {
+
+    private static final Long L_LOCATION_ID = 1L;
+
+    private ResourceStockServiceImpl resourceStockService;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        resourceStockService = new ResourceStockServiceImpl();
+
+        ReflectionTestUtils.setField(resourceStockService, "jdbcTemplate", jdbcTemplate);
+    }
+
+    @Test
+    public void shouldUpsertMergedChangesInOneBatch() {
+        // given
+        List<ResourceStockChange> changes = Lists.newArrayList(
+                ResourceStockChange.ofQuantity(L_LOCATION_ID, 5L, new BigDecimal("10"), true),
+                ResourceStockChange.ofReservedQuantity(L_LOCATION_ID, 5L, new BigDecimal("3")),
+                ResourceStockChange.ofQuantity(L_LOCATION_ID, 6L, new BigDecimal("2"), false),
+                ResourceStockChange.ofQuantity(L_LOCATION_ID, 6L, new BigDecimal("-2"), false),
+                ResourceStockChange.ofQuantity(null, 7L, new BigDecimal("1"), false));
+
+        ArgumentCaptor<String> queryCaptor = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<SqlParameterSource[]> paramsCaptor = ArgumentCaptor.forClass(SqlParameterSource[].class);
+
+        // when
+        resourceStockService.updateResourceStocks(changes);
+
+        // then
+        verify(jdbcTemplate).batchUpdate(queryCaptor.capture(), paramsCaptor.capture());
+        verifyNoMoreInteractions(jdbcTemplate);
+
+        assertTrue(queryCaptor.getValue().contains("ON CONFLICT (location_id, product_id) DO UPDATE"));
+
+        SqlParameterSource[] params = paramsCaptor.getValue();
+
+        assertEquals(1, params.length);
+        assertEquals(Long.valueOf(5L), params[0].getValue("productId"));
+        assertEquals(0, new BigDecimal("10").compareTo((BigDecimal) params[0].getValue("quantity")));
+        assertEquals(0, new BigDecimal("10").compareTo((BigDecimal) params[0].getValue("blockedQuantity")));
+        assertEquals(0, new BigDecimal("3").compareTo((BigDecimal) params[0].getValue("reservedQuantity")));
+    }
+
+    @Test
+    public void shouldNotWriteWhenChangesCancelOut() {
+        // given
+        List<ResourceStockChange> changes = Lists.newArrayList(
+                ResourceStockChange.ofReservedQuantity(L_LOCATION_ID, 5L, new BigDecimal("3")),
+                ResourceStockChange.ofReservedQuantity(L_LOCATION_ID, 5L, new BigDecimal("-3")));
+
+        // when
+        resourceStockService.updateResourceStocks(changes);
+
+        // then
+        verifyNoMoreInteractions(jdbcTemplate);
+    }
+
+    @Test
+    public void shouldNotCountBlockedQuantityAsAvailable() {
+        // given
+        ArgumentCaptor<String> queryCaptor = ArgumentCaptor.forClass(String.class);
+
+        // when
+        resourceStockService.updateResourceStocks(Lists.newArrayList(
+                ResourceStockChange.ofQuantity(L_LOCATION_ID, 5L, new BigDecimal("10"), true)));
+        resourceStockService.rebuildResourceStocks();
+
+        // then
+        verify(jdbcTemplate).batchUpdate(queryCaptor.capture(), any(SqlParameterSource[].class));
+        verify(jdbcTemplate, times(2)).update(queryCaptor.capture(), anyMap());
+
+        assertTrue(queryCaptor.getAllValues().get(0).contains(":quantity - :blockedQuantity - :reservedQuantity"));
+        assertTrue(queryCaptor.getAllValues().get(0).contains("- EXCLUDED.blockedquantity"));
+        assertTrue(queryCaptor.getAllValues().get(2).contains("availablequantity = s.quantity - s.blockedquantity - s.reservedquantity"));
+    }
+
+}
@@ -23,7 +23,10 @@
  */
 package com.qcadoo.mes.orders;
 
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.qcadoo.mes.basic.ShiftsService;
 import com.qcadoo.mes.basic.constants.BasicConstants;
 import com.qcadoo.mes.basic.constants.ProductFields;
@@ -44,9 +47,14 @@ import com.qcadoo.model.api.search.SearchResult;
 import com.qcadoo.security.api.SecurityService;
 import com.qcadoo.view.api.utils.NumberGeneratorService;
 
+import java.util.Collection;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -217,6 +225,69 @@ public class TechnologyServiceO {
         }
     }
 
+    /**
+     * Returns default technologies of given products by product id, same as {@link #getDefaultTechnology(Entity)} returns
+     * for each of them, with one query for products and one for their parents. Products without default technology are
+     * left out.
+     */
+    public Map<Long, Entity> getDefaultTechnologies(final Collection<Entity> products) {
+        Map<Long, Entity> defaultTechnologies = Maps.newHashMap();
+
+        Map<Long, Entity> technologies = getSingleMasterTechnologies(
+                products.stream().map(Entity::getId).collect(Collectors.toSet()));
+
+        Set<Long> parentIds = products.stream().filter(product -> !technologies.containsKey(product.getId()))
+                .map(product -> product.getBelongsToField(ProductFields.PARENT)).filter(Objects::nonNull).map(Entity::getId)
+                .collect(Collectors.toSet());
+
+        Map<Long, Entity> parentTechnologies = getSingleMasterTechnologies(parentIds);
+
+        for (Entity product : products) {
+            Entity technology = technologies.get(product.getId());
+
+            if (Objects.isNull(technology)) {
+                Entity parent = product.getBelongsToField(ProductFields.PARENT);
+
+                if (Objects.nonNull(parent)) {
+                    technology = parentTechnologies.get(parent.getId());
+                }
+            }
+
+            if (Objects.nonNull(technology)) {
+                defaultTechnologies.put(product.getId(), technology);
+            }
+        }
+
+        return defaultTechnologies;
+    }
+
+    private Map<Long, Entity> getSingleMasterTechnologies(final Set<Long> productIds) {
+        Map<Long, Entity> technologies = Maps.newHashMap();
+
+        if (productIds.isEmpty()) {
+            return technologies;
+        }
+
+        ListMultimap<Long, Entity> technologiesByProduct = ArrayListMultimap.create();
+
+        getTechnologyDD().find().add(SearchRestrictions.eq(TechnologyFields.MASTER, true))
+                .add(SearchRestrictions.eq("active", true))
+                .add(SearchRestrictions.in(TechnologyFields.PRODUCT + ".id", productIds))
+                .add(SearchRestrictions.isNull(TechnologyFields.TECHNOLOGY_TYPE)).list().getEntities()
+                .forEach(technology -> technologiesByProduct.put(technology.getBelongsToField(TechnologyFields.PRODUCT).getId(),
+                        technology));
+
+        for (Long productId : technologiesByProduct.keySet()) {
+            List<Entity> productTechnologies = technologiesByProduct.get(productId);
+
+            if (productTechnologies.size() == 1) {
+                technologies.put(productId, productTechnologies.get(0));
+            }
+        }
+
+        return technologies;
+    }
+
     private Entity getParentDefaultTechnology(final Entity product) {
         SearchResult searchResult = getTechnologyDD().find()
                 .add(SearchRestrictions.eq(TechnologyFields.MASTER, true)).add(SearchRestrictions.eq("active", true))
@@ -10,6 +10,7 @@ import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 
 import com.google.common.collect.Lists;
@@ -19,7 +20,10 @@ import com.qcadoo.mes.orders.constants.OrdersConstants;
 import com.qcadoo.mes.orders.controllers.dataProvider.DashboardKanbanDataProvider;
 import com.qcadoo.mes.orders.controllers.dto.OperationalTaskHolder;
 import com.qcadoo.mes.orders.controllers.dto.OrderHolder;
+import com.qcadoo.mes.orders.controllers.responses.DashboardKanbanChangesResponse;
 import com.qcadoo.mes.orders.controllers.responses.OrderResponse;
+import com.qcadoo.mes.orders.services.DashboardKanbanFeedService;
+import com.qcadoo.mes.orders.services.DashboardKanbanFeedService.Projection;
 import com.qcadoo.mes.orders.states.aop.OrderStateChangeAspect;
 import com.qcadoo.mes.orders.states.constants.OrderState;
 import com.qcadoo.mes.states.StateChangeContext;
@@ -37,6 +41,9 @@ public class DashboardKanbanController {
     @Autowired
     private DashboardKanbanDataProvider dashboardKanbanDataProvider;
 
+    @Autowired
+    private DashboardKanbanFeedService dashboardKanbanFeedService;
+
     @Autowired
     private OrderStateChangeAspect orderStateChangeAspect;
 
@@ -52,37 +59,65 @@ public class DashboardKanbanController {
     @ResponseBody
     @RequestMapping(value = "/ordersPending", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
     public List<OrderHolder> getOrdersPending() {
-        return dashboardKanbanDataProvider.getOrdersPending();
+        return dashboardKanbanFeedService.getOrders().getPending();
     }
 
     @ResponseBody
     @RequestMapping(value = "/ordersInProgress", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
     public List<OrderHolder> getOrdersInProgress() {
-        return dashboardKanbanDataProvider.getOrdersInProgress();
+        return dashboardKanbanFeedService.getOrders().getInProgress();
     }
 
     @ResponseBody
     @RequestMapping(value = "/ordersCompleted", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
     public List<OrderHolder> getOrdersCompleted() {
-        return dashboardKanbanDataProvider.getOrdersCompleted();
+        return dashboardKanbanFeedService.getOrders().getCompleted();
     }
 
     @ResponseBody
     @RequestMapping(value = "/operationalTasksPending", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
     public List<OperationalTaskHolder> getOperationalTasksPending() {
-        return dashboardKanbanDataProvider.getOperationalTasksPending();
+        return dashboardKanbanFeedService.getOperationalTasks().getPending();
     }
 
     @ResponseBody
     @RequestMapping(value = "/operationalTasksInProgress", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
     public List<OperationalTaskHolder> getOperationalTasksInProgress() {
-        return dashboardKanbanDataProvider.getOperationalTasksInProgress();
+        return dashboardKanbanFeedService.getOperationalTasks().getInProgress();
     }
 
     @ResponseBody
     @RequestMapping(value = "/operationalTasksCompleted", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
     public List<OperationalTaskHolder> getOperationalTasksCompleted() {
-        return dashboardKanbanDataProvider.getOperationalTasksCompleted();
+        return dashboardKanbanFeedService.getOperationalTasks().getCompleted();
+    }
+
+    @ResponseBody
+    @RequestMapping(value = "/changes", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    public DashboardKanbanChangesResponse getChanges(@RequestParam(value = "since", defaultValue = "0") final long since) {
+        // version taken before lists, as lists loaded meanwhile by other dashboards can be newer than the ones returned
+        long version = dashboardKanbanFeedService.getVersion();
+
+        Projection<OrderHolder> orders = dashboardKanbanFeedService.getOrders();
+        Projection<OperationalTaskHolder> operationalTasks = dashboardKanbanFeedService.getOperationalTasks();
+
+        // client knows version from before restart, so it gets everything again
+        boolean snapshot = since > version;
+
+        DashboardKanbanChangesResponse changesResponse = new DashboardKanbanChangesResponse(version);
+
+        if (snapshot || orders.getVersion() > since) {
+            changesResponse.setOrdersPending(orders.getPending());
+            changesResponse.setOrdersInProgress(orders.getInProgress());
+            changesResponse.setOrdersCompleted(orders.getCompleted());
+        }
+        if (snapshot || operationalTasks.getVersion() > since) {
+            changesResponse.setOperationalTasksPending(operationalTasks.getPending());
+            changesResponse.setOperationalTasksInProgress(operationalTasks.getInProgress());
+            changesResponse.setOperationalTasksCompleted(operationalTasks.getCompleted());
+        }
+
+        return changesResponse;
     }
 
     @ResponseBody
@@ -50,45 +50,51 @@ public class DashboardKanbanDataProvider {
     private ParameterService parameterService;
 
     public List<OrderHolder> getOrdersPending() {
-        Map<String, Object> params = Maps.newHashMap();
+        return getOrdersPending(getCurrentUserProductionLineId());
+    }
 
-        Entity productionLine = getCurrentUserProductionLine();
+    public List<OrderHolder> getOrdersPending(final Long productionLineId) {
+        Map<String, Object> params = Maps.newHashMap();
 
-        if (!Objects.isNull(productionLine)) {
-            params.put(L_PRODUCTION_LINE_ID, productionLine.getId());
+        if (!Objects.isNull(productionLineId)) {
+            params.put(L_PRODUCTION_LINE_ID, productionLineId);
         }
 
         params.put(L_STATES, Sets.newHashSet(OrderStateStringValues.ACCEPTED, OrderStateStringValues.INTERRUPTED));
 
-        return jdbcTemplate.query(getOrdersQuery(productionLine), params, new BeanPropertyRowMapper(OrderHolder.class));
+        return jdbcTemplate.query(getOrdersQuery(productionLineId), params, new BeanPropertyRowMapper(OrderHolder.class));
     }
 
     public List<OrderHolder> getOrdersInProgress() {
-        Map<String, Object> params = Maps.newHashMap();
+        return getOrdersInProgress(getCurrentUserProductionLineId());
+    }
 
-        Entity productionLine = getCurrentUserProductionLine();
+    public List<OrderHolder> getOrdersInProgress(final Long productionLineId) {
+        Map<String, Object> params = Maps.newHashMap();
 
-        if (!Objects.isNull(productionLine)) {
-            params.put(L_PRODUCTION_LINE_ID, productionLine.getId());
+        if (!Objects.isNull(productionLineId)) {
+            params.put(L_PRODUCTION_LINE_ID, productionLineId);
         }
 
         params.put(L_STATES, Sets.newHashSet(OrderStateStringValues.IN_PROGRESS));
 
-        return jdbcTemplate.query(getOrdersQuery(productionLine), params, new BeanPropertyRowMapper(OrderHolder.class));
+        return jdbcTemplate.query(getOrdersQuery(productionLineId), params, new BeanPropertyRowMapper(OrderHolder.class));
     }
 
     public List<OrderHolder> getOrdersCompleted() {
-        Map<String, Object> params = Maps.newHashMap();
+        return getOrdersCompleted(getCurrentUserProductionLineId());
+    }
 
-        Entity productionLine = getCurrentUserProductionLine();
+    public List<OrderHolder> getOrdersCompleted(final Long productionLineId) {
+        Map<String, Object> params = Maps.newHashMap();
 
-        if (!Objects.isNull(productionLine)) {
-            params.put(L_PRODUCTION_LINE_ID, productionLine.getId());
+        if (!Objects.isNull(productionLineId)) {
+            params.put(L_PRODUCTION_LINE_ID, productionLineId);
         }
 
         params.put(L_STATES, Sets.newHashSet(OrderStateStringValues.COMPLETED));
 
-        return jdbcTemplate.query(getOrdersQuery(productionLine), params, new BeanPropertyRowMapper(OrderHolder.class));
+        return jdbcTemplate.query(getOrdersQuery(productionLineId), params, new BeanPropertyRowMapper(OrderHolder.class));
     }
 
     public OrderHolder getOrder(final Long orderId) {
@@ -112,13 +118,13 @@ public class DashboardKanbanDataProvider {
                 + "AND mop.masterorder_id = orderlistdto.masterorderid ";
     }
 
-    private String getOrdersQuery(final Entity productionLine) {
+    private String getOrdersQuery(final Long productionLineId) {
         String query = getOrderQueryProjections();
 
         query += "WHERE orderlistdto.state IN (:states) ";
         query += "AND date_trunc('day', orderlistdto.startdate) <= current_date AND current_date <= date_trunc('day', orderlistdto.finishdate) ";
 
-        if (!Objects.isNull(productionLine)) {
+        if (!Objects.isNull(productionLineId)) {
             query += "AND orderlistdto.productionlineid = :productionLineId ";
         }
 
@@ -153,12 +159,14 @@ public class DashboardKanbanDataProvider {
         return query;
     }
 
-    private Entity getCurrentUserProductionLine() {
+    public Long getCurrentUserProductionLineId() {
         Entity currentUser = dataDefinitionService
                 .get(QcadooSecurityConstants.PLUGIN_IDENTIFIER, QcadooSecurityConstants.MODEL_USER)
                 .get(securityService.getCurrentUserId());
 
-        return currentUser.getBelongsToField(UserFieldsPL.PRODUCTION_LINE);
+        Entity productionLine = currentUser.getBelongsToField(UserFieldsPL.PRODUCTION_LINE);
+
+        return Objects.isNull(productionLine) ? null : productionLine.getId();
     }
 
     public List<OperationalTaskHolder> getOperationalTasksPendingForOrder(final Long orderId) {
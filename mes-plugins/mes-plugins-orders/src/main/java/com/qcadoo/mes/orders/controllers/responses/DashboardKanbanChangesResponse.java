@@ -0,0 +1,88 @@
+package com.qcadoo.mes.orders.controllers.responses;
+
+import java.util.List;
+
+import com.qcadoo.mes.orders.controllers.dto.OperationalTaskHolder;
+import com.qcadoo.mes.orders.controllers.dto.OrderHolder;
+
+/**
+ * Changes of dashboard kanban since version known by client. Lists which didn't change are null, so client keeps ones it
+ * already has, and sends returned version with its next request.
+ */
+public class DashboardKanbanChangesResponse {
+
+    private long version;
+
+    private List<OrderHolder> ordersPending;
+
+    private List<OrderHolder> ordersInProgress;
+
+    private List<OrderHolder> ordersCompleted;
+
+    private List<OperationalTaskHolder> operationalTasksPending;
+
+    private List<OperationalTaskHolder> operationalTasksInProgress;
+
+    private List<OperationalTaskHolder> operationalTasksCompleted;
+
+    public DashboardKanbanChangesResponse(long version) {
+        this.version = version;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public List<OrderHolder> getOrdersPending() {
+        return ordersPending;
+    }
+
+    public void setOrdersPending(List<OrderHolder> ordersPending) {
+        this.ordersPending = ordersPending;
+    }
+
+    public List<OrderHolder> getOrdersInProgress() {
+        return ordersInProgress;
+    }
+
+    public void setOrdersInProgress(List<OrderHolder> ordersInProgress) {
+        this.ordersInProgress = ordersInProgress;
+    }
+
+    public List<OrderHolder> getOrdersCompleted() {
+        return ordersCompleted;
+    }
+
+    public void setOrdersCompleted(List<OrderHolder> ordersCompleted) {
+        this.ordersCompleted = ordersCompleted;
+    }
+
+    public List<OperationalTaskHolder> getOperationalTasksPending() {
+        return operationalTasksPending;
+    }
+
+    public void setOperationalTasksPending(List<OperationalTaskHolder> operationalTasksPending) {
+        this.operationalTasksPending = operationalTasksPending;
+    }
+
+    public List<OperationalTaskHolder> getOperationalTasksInProgress() {
+        return operationalTasksInProgress;
+    }
+
+    public void setOperationalTasksInProgress(List<OperationalTaskHolder> operationalTasksInProgress) {
+        this.operationalTasksInProgress = operationalTasksInProgress;
+    }
+
+    public List<OperationalTaskHolder> getOperationalTasksCompleted() {
+        return operationalTasksCompleted;
+    }
+
+    public void setOperationalTasksCompleted(List<OperationalTaskHolder> operationalTasksCompleted) {
+        this.operationalTasksCompleted = operationalTasksCompleted;
+    }
+
+}
@@ -9,6 +9,7 @@ import com.qcadoo.mes.orders.constants.OperationalTaskFields;
 import com.qcadoo.mes.orders.constants.OrderFields;
 import com.qcadoo.mes.orders.constants.WorkstationChangeoverForOperationalTaskChangeoverType;
 import com.qcadoo.mes.orders.constants.WorkstationChangeoverForOperationalTaskFields;
+import com.qcadoo.mes.orders.services.DashboardKanbanFeedService;
 import com.qcadoo.mes.orders.services.WorkstationChangeoverService;
 import com.qcadoo.mes.orders.states.OperationalTasksServiceMarker;
 import com.qcadoo.mes.orders.states.constants.OperationalTaskStateStringValues;
@@ -45,6 +46,9 @@ public class OperationalTaskHooks {
     @Autowired
     private WorkstationChangeoverService workstationChangeoverService;
 
+    @Autowired
+    private DashboardKanbanFeedService dashboardKanbanFeedService;
+
     public void onCopy(final DataDefinition operationalTaskDD, final Entity operationalTask) {
         setInitialState(operationalTask);
     }
@@ -65,6 +69,8 @@ public class OperationalTaskHooks {
         operationalTaskValidators.datesAreCorrect(operationalTaskDD, operationalTask);
 
         changeDateInOrder(operationalTask);
+
+        dashboardKanbanFeedService.publishOperationalTaskChange();
     }
 
     public void fillNameAndDescription(final Entity operationalTask) {
@@ -300,6 +306,8 @@ public class OperationalTaskHooks {
         if (Objects.nonNull(workstation) && Objects.nonNull(startDate)) {
             setPreviousWorkstationChangeoverForOperationalTasks(operationalTask, true);
         }
+
+        dashboardKanbanFeedService.publishOperationalTaskChange();
     }
 
 }
@@ -60,6 +60,7 @@ import com.qcadoo.mes.orders.constants.OrderFields;
 import com.qcadoo.mes.orders.constants.OrderStartDateBasedOn;
 import com.qcadoo.mes.orders.constants.OrdersConstants;
 import com.qcadoo.mes.orders.constants.ParameterFieldsO;
+import com.qcadoo.mes.orders.services.DashboardKanbanFeedService;
 import com.qcadoo.mes.orders.states.constants.OrderState;
 import com.qcadoo.mes.orders.states.constants.OrderStateChangeDescriber;
 import com.qcadoo.mes.orders.states.constants.OrderStateChangeFields;
@@ -110,6 +111,9 @@ public class OrderHooks {
     @Autowired
     private OrderDatesService orderDatesService;
 
+    @Autowired
+    private DashboardKanbanFeedService dashboardKanbanFeedService;
+
     @Autowired
     private StateChangeEntityBuilder stateChangeEntityBuilder;
 
@@ -220,6 +224,8 @@ public class OrderHooks {
         setAdditionalFields(order);
         fillExpirationDate(order);
         checkMinimalQuantity(order);
+
+        dashboardKanbanFeedService.publishOrderChange();
     }
 
     private void fillExpirationDate(final Entity order) {
@@ -968,6 +974,8 @@ public class OrderHooks {
             return false;
         }
 
+        dashboardKanbanFeedService.publishOrderChange();
+
         return true;
     }
 
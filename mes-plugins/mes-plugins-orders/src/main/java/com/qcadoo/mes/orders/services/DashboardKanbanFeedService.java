@@ -0,0 +1,244 @@
+package com.qcadoo.mes.orders.services;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
+
+import javax.annotation.PostConstruct;
+
+import org.joda.time.LocalDate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.qcadoo.mes.basic.ParameterService;
+import com.qcadoo.mes.basic.ParameterSnapshot;
+import com.qcadoo.mes.orders.controllers.dataProvider.DashboardKanbanDataProvider;
+import com.qcadoo.mes.orders.controllers.dto.OperationalTaskHolder;
+import com.qcadoo.mes.orders.controllers.dto.OrderHolder;
+import com.qcadoo.tenant.api.MultiTenantUtil;
+
+/**
+ * Shared projection of dashboard kanban, served to all connected dashboards instead of querying orders and operational tasks
+ * for each of them.
+ *
+ * Lists are loaded once per tenant, production line (orders only), day and version of parameters, and kept until an order
+ * or an operational task is changed - changes are published by their save and delete hooks, when transaction is committed -
+ * or until they expire, as not all changes are published (e.g. quantities produced in operational tasks). Each loaded
+ * projection gets next version of the feed, so clients asking for changes since version they know get only lists loaded
+ * after it.
+ */
+@Service
+public class DashboardKanbanFeedService {
+
+    private static final long L_MAXIMUM_SIZE = 500L;
+
+    private static final long L_WITHOUT_PRODUCTION_LINE = 0L;
+
+    @Value("${dashboardKanbanExpireSeconds:30}")
+    private long expireSeconds;
+
+    @Autowired
+    private DashboardKanbanDataProvider dashboardKanbanDataProvider;
+
+    @Autowired
+    private ParameterService parameterService;
+
+    private final AtomicLong version = new AtomicLong(System.currentTimeMillis());
+
+    private volatile long ordersChangeVersion;
+
+    private volatile long operationalTasksChangeVersion;
+
+    private Cache<ProjectionKey, Projection<OrderHolder>> ordersProjections;
+
+    private Cache<ProjectionKey, Projection<OperationalTaskHolder>> operationalTasksProjections;
+
+    @PostConstruct
+    void init() {
+        ordersProjections = CacheBuilder.newBuilder().maximumSize(L_MAXIMUM_SIZE)
+                .expireAfterWrite(expireSeconds, TimeUnit.SECONDS).build();
+        operationalTasksProjections = CacheBuilder.newBuilder().maximumSize(L_MAXIMUM_SIZE)
+                .expireAfterWrite(expireSeconds, TimeUnit.SECONDS).build();
+    }
+
+    /**
+     * Returns current version of the feed, it's not lower than versions of all projections loaded so far.
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Returns orders of dashboard kanban of current user's production line.
+     */
+    public Projection<OrderHolder> getOrders() {
+        Long productionLineId = dashboardKanbanDataProvider.getCurrentUserProductionLineId();
+
+        ProjectionKey key = new ProjectionKey(
+                Objects.isNull(productionLineId) ? L_WITHOUT_PRODUCTION_LINE : productionLineId, ordersChangeVersion,
+                getParameterVersion());
+
+        return getProjection(ordersProjections, key,
+                projectionVersion -> new Projection<>(projectionVersion,
+                        dashboardKanbanDataProvider.getOrdersPending(productionLineId),
+                        dashboardKanbanDataProvider.getOrdersInProgress(productionLineId),
+                        dashboardKanbanDataProvider.getOrdersCompleted(productionLineId)));
+    }
+
+    /**
+     * Returns operational tasks of dashboard kanban.
+     */
+    public Projection<OperationalTaskHolder> getOperationalTasks() {
+        ProjectionKey key = new ProjectionKey(L_WITHOUT_PRODUCTION_LINE, operationalTasksChangeVersion, getParameterVersion());
+
+        return getProjection(operationalTasksProjections, key,
+                projectionVersion -> new Projection<>(projectionVersion,
+                        dashboardKanbanDataProvider.getOperationalTasksPending(),
+                        dashboardKanbanDataProvider.getOperationalTasksInProgress(),
+                        dashboardKanbanDataProvider.getOperationalTasksCompleted()));
+    }
+
+    /**
+     * Publishes change of an order, it's called by order hooks. Operational tasks are reloaded too, as they show products of
+     * their orders.
+     */
+    public void publishOrderChange() {
+        afterCommit(() -> {
+            long changeVersion = version.incrementAndGet();
+
+            ordersChangeVersion = changeVersion;
+            operationalTasksChangeVersion = changeVersion;
+        });
+    }
+
+    /**
+     * Publishes change of an operational task, it's called by operational task hooks.
+     */
+    public void publishOperationalTaskChange() {
+        afterCommit(() -> operationalTasksChangeVersion = version.incrementAndGet());
+    }
+
+    private <T> Projection<T> getProjection(final Cache<ProjectionKey, Projection<T>> projections, final ProjectionKey key,
+            final LongFunction<Projection<T>> loader) {
+        try {
+            return projections.get(key, () -> loader.apply(version.incrementAndGet()));
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private long getParameterVersion() {
+        ParameterSnapshot parameterSnapshot = parameterService.getParameterSnapshot();
+
+        return Objects.isNull(parameterSnapshot) ? 0L : parameterSnapshot.getVersion();
+    }
+
+    private void afterCommit(final Runnable runnable) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void afterCompletion(final int status) {
+                    super.afterCompletion(status);
+                    if (TransactionSynchronization.STATUS_COMMITTED == status) {
+                        runnable.run();
+                    }
+                }
+            });
+        } else {
+            runnable.run();
+        }
+    }
+
+    /**
+     * Pending, in progress and completed items of dashboard kanban, together with version of the feed they were loaded in.
+     * Lists are shared by all dashboards and can't be modified.
+     */
+    public static final class Projection<T> {
+
+        private final long version;
+
+        private final List<T> pending;
+
+        private final List<T> inProgress;
+
+        private final List<T> completed;
+
+        private Projection(final long version, final List<T> pending, final List<T> inProgress, final List<T> completed) {
+            this.version = version;
+            this.pending = Collections.unmodifiableList(pending);
+            this.inProgress = Collections.unmodifiableList(inProgress);
+            this.completed = Collections.unmodifiableList(completed);
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public List<T> getPending() {
+            return pending;
+        }
+
+        public List<T> getInProgress() {
+            return inProgress;
+        }
+
+        public List<T> getCompleted() {
+            return completed;
+        }
+
+    }
+
+    private static final class ProjectionKey {
+
+        private final int tenantId;
+
+        private final long productionLineId;
+
+        private final long changeVersion;
+
+        private final long parameterVersion;
+
+        private final LocalDate day;
+
+        private ProjectionKey(final long productionLineId, final long changeVersion, final long parameterVersion) {
+            this.tenantId = MultiTenantUtil.getCurrentTenantId();
+            this.productionLineId = productionLineId;
+            this.changeVersion = changeVersion;
+            this.parameterVersion = parameterVersion;
+            this.day = LocalDate.now();
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof ProjectionKey)) {
+                return false;
+            }
+
+            ProjectionKey that = (ProjectionKey) other;
+
+            return tenantId == that.tenantId && productionLineId == that.productionLineId
+                    && changeVersion == that.changeVersion && parameterVersion == that.parameterVersion && day.equals(that.day);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(tenantId, productionLineId, changeVersion, parameterVersion, day);
+        }
+
+    }
+
+}
@@ -1,5 +1,7 @@
 package com.qcadoo.mes.orders.services;
 
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
 import com.qcadoo.mes.basic.constants.AttributeDataType;
 import com.qcadoo.mes.basic.constants.AttributeFields;
@@ -8,8 +10,8 @@ import com.qcadoo.mes.basic.constants.ProductFields;
 import com.qcadoo.mes.orders.constants.*;
 import com.qcadoo.mes.orders.states.constants.OperationalTaskState;
 import com.qcadoo.mes.orders.states.constants.OperationalTaskStateStringValues;
-import com.qcadoo.mes.technologies.constants.WorkstationChangeoverNormChangeoverType;
 import com.qcadoo.mes.technologies.constants.WorkstationChangeoverNormFields;
+import com.qcadoo.mes.technologies.dto.WorkstationChangeoverMatrix;
 import com.qcadoo.mes.technologies.services.WorkstationChangeoverNormService;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
@@ -45,7 +47,9 @@ public class WorkstationChangeoverService {
                                                                       final Entity previousSchedulePosition) {
         List<Entity> workstationChangeovers = Lists.newArrayList();
 
-        if (workstationChangeoverNormService.hasWorkstationChangeoverNorms(workstation)) {
+        WorkstationChangeoverMatrix changeoverMatrix = workstationChangeoverNormService.getChangeoverMatrix(workstation);
+
+        if (!changeoverMatrix.isEmpty()) {
             Entity previousOperationalTask = null;
             Entity previousProduct = null;
             if (previousSchedulePosition != null) {
@@ -60,11 +64,15 @@ public class WorkstationChangeoverService {
                 Entity currentProduct = schedulePosition.getBelongsToField(SchedulePositionFields.ORDER).getBelongsToField(OrderFields.PRODUCT);
 
                 List<Entity> currentProductAttributeValues = getProductAttributeValuesWithDataTypeCalculated(currentProduct);
-                List<Entity> previousProductAttributeValues = getProductAttributeValuesWithDataTypeCalculated(previousProduct);
+                ListMultimap<Long, Long> previousProductAttributeValues = getAttributeValueIdsByAttribute(
+                        getProductAttributeValuesWithDataTypeCalculated(previousProduct));
 
                 for (Entity currentProductAttributeValue : currentProductAttributeValues) {
-                    createChangeoversForAttribute(workstation, schedulePosition, previousSchedulePosition, workstationChangeovers,
-                            previousOperationalTask, previousProductAttributeValues, currentProductAttributeValue);
+                    for (Entity workstationChangeoverNorm : findWorkstationChangeoverNorms(changeoverMatrix,
+                            currentProductAttributeValue, previousProductAttributeValues)) {
+                        workstationChangeovers.add(createWorkstationChangeoverForSchedulePosition(schedulePosition,
+                                previousSchedulePosition, workstationChangeoverNorm, previousOperationalTask));
+                    }
                 }
             }
 
@@ -74,41 +82,6 @@ public class WorkstationChangeoverService {
         return workstationChangeovers;
     }
 
-    private void createChangeoversForAttribute(Entity workstation, Entity schedulePosition,
-                                               Entity previousSchedulePosition,
-                                               List<Entity> workstationChangeovers, Entity previousOperationalTask,
-                                               List<Entity> previousProductAttributeValues,
-                                               Entity currentProductAttributeValue) {
-        Entity attribute = currentProductAttributeValue.getBelongsToField(ProductAttributeValueFields.ATTRIBUTE);
-        Entity attributeValue = currentProductAttributeValue.getBelongsToField(ProductAttributeValueFields.ATTRIBUTE_VALUE);
-
-        List<Entity> filteredProductAttributeValues = previousProductAttributeValues.stream().filter(previousProductAttributeValue ->
-                filterProductAttributeValuesWithAttribute(previousProductAttributeValue, attribute)).collect(Collectors.toList());
-        if (!filteredProductAttributeValues.isEmpty()) {
-            List<Entity> workstationChangeoverNorms = workstationChangeoverNormService.findWorkstationChangeoverNorms(workstation, attribute);
-
-            for (Entity workstationChangeoverNorm : workstationChangeoverNorms) {
-                String changeoverType = workstationChangeoverNorm.getStringField(WorkstationChangeoverNormFields.CHANGEOVER_TYPE);
-
-                if (WorkstationChangeoverNormChangeoverType.BETWEEN_VALUES.getStringValue().equals(changeoverType)) {
-                    Entity fromAttributeValue = workstationChangeoverNorm.getBelongsToField(WorkstationChangeoverNormFields.FROM_ATTRIBUTE_VALUE);
-                    Entity toAttributeValue = workstationChangeoverNorm.getBelongsToField(WorkstationChangeoverNormFields.TO_ATTRIBUTE_VALUE);
-
-                    if (attributeValue.getId().equals(toAttributeValue.getId()) && filteredProductAttributeValues.stream().anyMatch(previousProductAttributeValue ->
-                            filterProductAttributeValuesWithAttributeValue(previousProductAttributeValue, fromAttributeValue))) {
-                        Entity workstationChangeover = createWorkstationChangeoverForSchedulePosition(schedulePosition, previousSchedulePosition, workstationChangeoverNorm, previousOperationalTask);
-
-                        workstationChangeovers.add(workstationChangeover);
-                    }
-                } else {
-                    Entity workstationChangeover = createWorkstationChangeoverForSchedulePosition(schedulePosition, previousSchedulePosition, workstationChangeoverNorm, previousOperationalTask);
-
-                    workstationChangeovers.add(workstationChangeover);
-                }
-            }
-        }
-    }
-
     public Optional<Date> getWorkstationChangeoversMaxFinishDate(final List<Entity> workstationChangeovers) {
         return workstationChangeovers.stream().map(workstationChangeover ->
                         workstationChangeover.getDateField(WorkstationChangeoverForOperationalTaskFields.FINISH_DATE))
@@ -149,7 +122,9 @@ public class WorkstationChangeoverService {
 
         Entity workstation = operationalTask.getBelongsToField(OperationalTaskFields.WORKSTATION);
 
-        if (workstationChangeoverNormService.hasWorkstationChangeoverNorms(workstation)) {
+        WorkstationChangeoverMatrix changeoverMatrix = workstationChangeoverNormService.getChangeoverMatrix(workstation);
+
+        if (!changeoverMatrix.isEmpty()) {
             Date startDate = operationalTask.getDateField(OperationalTaskFields.START_DATE);
 
             Entity currentOperationalTaskOrder = operationalTask.getBelongsToField(OperationalTaskFields.ORDER);
@@ -159,41 +134,18 @@ public class WorkstationChangeoverService {
             Entity previousOperationalTaskOrderProduct = previousOperationalTaskOrder.getBelongsToField(OrderFields.PRODUCT);
 
             List<Entity> currentProductAttributeValues = getProductAttributeValuesWithDataTypeCalculated(currentOperationalTaskOrderProduct);
-            List<Entity> previousProductAttributeValues = getProductAttributeValuesWithDataTypeCalculated(previousOperationalTaskOrderProduct);
+            ListMultimap<Long, Long> previousProductAttributeValues = getAttributeValueIdsByAttribute(
+                    getProductAttributeValuesWithDataTypeCalculated(previousOperationalTaskOrderProduct));
 
-            currentProductAttributeValues.forEach(currentProductAttributeValue -> {
+            for (Entity currentProductAttributeValue : currentProductAttributeValues) {
                 Entity attribute = currentProductAttributeValue.getBelongsToField(ProductAttributeValueFields.ATTRIBUTE);
-                Entity attributeValue = currentProductAttributeValue.getBelongsToField(ProductAttributeValueFields.ATTRIBUTE_VALUE);
-
-                List<Entity> filteredProductAttributeValues = previousProductAttributeValues.stream().filter(previousProductAttributeValue ->
-                        filterProductAttributeValuesWithAttribute(previousProductAttributeValue, attribute)).collect(Collectors.toList());
-
-                if (!filteredProductAttributeValues.isEmpty()) {
-                    List<Entity> workstationChangeoverNorms = workstationChangeoverNormService.findWorkstationChangeoverNorms(workstation, attribute);
-
-                    workstationChangeoverNorms.forEach(workstationChangeoverNorm -> {
-                        String changeoverType = workstationChangeoverNorm.getStringField(WorkstationChangeoverNormFields.CHANGEOVER_TYPE);
-
-                        if (WorkstationChangeoverNormChangeoverType.BETWEEN_VALUES.getStringValue().equals(changeoverType)) {
-                            Entity fromAttributeValue = workstationChangeoverNorm.getBelongsToField(WorkstationChangeoverNormFields.FROM_ATTRIBUTE_VALUE);
-                            Entity toAttributeValue = workstationChangeoverNorm.getBelongsToField(WorkstationChangeoverNormFields.TO_ATTRIBUTE_VALUE);
-
-                            if (attributeValue.getId().equals(toAttributeValue.getId())) {
-                                if (filteredProductAttributeValues.stream().anyMatch(previousProductAttributeValue ->
-                                        filterProductAttributeValuesWithAttributeValue(previousProductAttributeValue, fromAttributeValue))) {
-                                    Entity workstationChangeoverForOperationalTask = createWorkstationChangeoverForOperationalTask(operationalTask, previousOperationalTask, workstationChangeoverNorm, workstation, attribute);
-
-                                    workstationChangeoverForOperationalTasks.add(workstationChangeoverForOperationalTask);
-                                }
-                            }
-                        } else {
-                            Entity workstationChangeoverForOperationalTask = createWorkstationChangeoverForOperationalTask(operationalTask, previousOperationalTask, workstationChangeoverNorm, workstation, attribute);
 
-                            workstationChangeoverForOperationalTasks.add(workstationChangeoverForOperationalTask);
-                        }
-                    });
+                for (Entity workstationChangeoverNorm : findWorkstationChangeoverNorms(changeoverMatrix,
+                        currentProductAttributeValue, previousProductAttributeValues)) {
+                    workstationChangeoverForOperationalTasks.add(createWorkstationChangeoverForOperationalTask(operationalTask,
+                            previousOperationalTask, workstationChangeoverNorm, workstation, attribute));
                 }
-            });
+            }
 
             updateWorkstationChangeoverForOperationalTasksDates(workstationChangeoverForOperationalTasks, startDate);
         }
@@ -268,14 +220,27 @@ public class WorkstationChangeoverService {
         return AttributeDataType.CALCULATED.getStringValue().equals(productAttributeValue.getBelongsToField(ProductAttributeValueFields.ATTRIBUTE).getStringField(AttributeFields.DATA_TYPE));
     }
 
-    private boolean filterProductAttributeValuesWithAttribute(final Entity productAttributeValue,
-                                                              final Entity attribute) {
-        return productAttributeValue.getBelongsToField(ProductAttributeValueFields.ATTRIBUTE).getId().equals(attribute.getId());
+    private ListMultimap<Long, Long> getAttributeValueIdsByAttribute(final List<Entity> productAttributeValues) {
+        ListMultimap<Long, Long> attributeValueIds = ArrayListMultimap.create();
+
+        for (Entity productAttributeValue : productAttributeValues) {
+            Entity attributeValue = productAttributeValue.getBelongsToField(ProductAttributeValueFields.ATTRIBUTE_VALUE);
+
+            attributeValueIds.put(productAttributeValue.getBelongsToField(ProductAttributeValueFields.ATTRIBUTE).getId(),
+                    Objects.isNull(attributeValue) ? null : attributeValue.getId());
+        }
+
+        return attributeValueIds;
     }
 
-    private boolean filterProductAttributeValuesWithAttributeValue(final Entity productAttributeValue,
-                                                                   final Entity attributeValue) {
-        return productAttributeValue.getBelongsToField(ProductAttributeValueFields.ATTRIBUTE_VALUE).getId().equals(attributeValue.getId());
+    private List<Entity> findWorkstationChangeoverNorms(final WorkstationChangeoverMatrix changeoverMatrix,
+                                                        final Entity currentProductAttributeValue,
+                                                        final ListMultimap<Long, Long> previousProductAttributeValues) {
+        Long attributeId = currentProductAttributeValue.getBelongsToField(ProductAttributeValueFields.ATTRIBUTE).getId();
+        Entity attributeValue = currentProductAttributeValue.getBelongsToField(ProductAttributeValueFields.ATTRIBUTE_VALUE);
+
+        return changeoverMatrix.findNorms(attributeId, Objects.isNull(attributeValue) ? null : attributeValue.getId(),
+                previousProductAttributeValues.get(attributeId));
     }
 
     private Entity createWorkstationChangeoverForOperationalTask(final Entity currentOperationalTask,
@@ -0,0 +1,160 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.orders.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import com.qcadoo.mes.basic.ParameterService;
+import com.qcadoo.mes.orders.controllers.dataProvider.DashboardKanbanDataProvider;
+import com.qcadoo.mes.orders.controllers.dto.OperationalTaskHolder;
+import com.qcadoo.mes.orders.controllers.dto.OrderHolder;
+import com.qcadoo.mes.orders.services.DashboardKanbanFeedService.Projection;
+import com.qcadoo.tenant.api.MultiTenantUtil;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(MultiTenantUtil.class)
+public class DashboardKanbanFeedServiceTest {
+
+    private static final Long L_PRODUCTION_LINE_ID = 1L;
+
+    private static final int L_TENANT_ID = 1;
+
+    private static final int L_OTHER_TENANT_ID = 2;
+
+    private DashboardKanbanFeedService dashboardKanbanFeedService;
+
+    @Mock
+    private DashboardKanbanDataProvider dashboardKanbanDataProvider;
+
+    @Mock
+    private ParameterService parameterService;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        dashboardKanbanFeedService = new DashboardKanbanFeedService();
+
+        setField(dashboardKanbanFeedService, "dashboardKanbanDataProvider", dashboardKanbanDataProvider);
+        setField(dashboardKanbanFeedService, "parameterService", parameterService);
+        setField(dashboardKanbanFeedService, "expireSeconds", 60L);
+
+        dashboardKanbanFeedService.init();
+
+        PowerMockito.mockStatic(MultiTenantUtil.class);
+
+        given(MultiTenantUtil.getCurrentTenantId()).willReturn(L_TENANT_ID);
+
+        List<OrderHolder> orders = Collections.singletonList(new OrderHolder());
+
+        given(dashboardKanbanDataProvider.getCurrentUserProductionLineId()).willReturn(L_PRODUCTION_LINE_ID);
+        given(dashboardKanbanDataProvider.getOrdersPending(L_PRODUCTION_LINE_ID)).willReturn(orders);
+        given(dashboardKanbanDataProvider.getOrdersInProgress(L_PRODUCTION_LINE_ID)).willReturn(Collections.emptyList());
+        given(dashboardKanbanDataProvider.getOrdersCompleted(L_PRODUCTION_LINE_ID)).willReturn(Collections.emptyList());
+        given(dashboardKanbanDataProvider.getOperationalTasksPending()).willReturn(Collections.emptyList());
+        given(dashboardKanbanDataProvider.getOperationalTasksInProgress()).willReturn(Collections.emptyList());
+        given(dashboardKanbanDataProvider.getOperationalTasksCompleted()).willReturn(Collections.emptyList());
+    }
+
+    @Test
+    public final void shouldShareOrdersUntilOrderIsChanged() {
+        // when
+        Projection<OrderHolder> first = dashboardKanbanFeedService.getOrders();
+        Projection<OrderHolder> second = dashboardKanbanFeedService.getOrders();
+
+        // then
+        assertSame(first, second);
+        assertEquals(1, first.getPending().size());
+        verify(dashboardKanbanDataProvider, times(1)).getOrdersPending(L_PRODUCTION_LINE_ID);
+    }
+
+    @Test
+    public final void shouldReloadOrdersAndOperationalTasksWithNewerVersionAfterOrderIsChanged() {
+        // given
+        dashboardKanbanFeedService.getOrders();
+        dashboardKanbanFeedService.getOperationalTasks();
+
+        long version = dashboardKanbanFeedService.getVersion();
+
+        // when
+        dashboardKanbanFeedService.publishOrderChange();
+
+        Projection<OrderHolder> changedOrders = dashboardKanbanFeedService.getOrders();
+        Projection<OperationalTaskHolder> changedOperationalTasks = dashboardKanbanFeedService.getOperationalTasks();
+
+        // then
+        assertTrue(changedOrders.getVersion() > version);
+        assertTrue(changedOperationalTasks.getVersion() > version);
+        assertTrue(dashboardKanbanFeedService.getVersion() >= changedOperationalTasks.getVersion());
+        verify(dashboardKanbanDataProvider, times(2)).getOrdersPending(L_PRODUCTION_LINE_ID);
+        verify(dashboardKanbanDataProvider, times(2)).getOperationalTasksPending();
+    }
+
+    @Test
+    public final void shouldKeepOrdersAfterOperationalTaskIsChanged() {
+        // given
+        Projection<OrderHolder> orders = dashboardKanbanFeedService.getOrders();
+
+        // when
+        dashboardKanbanFeedService.publishOperationalTaskChange();
+
+        // then
+        assertSame(orders, dashboardKanbanFeedService.getOrders());
+    }
+
+    @Test
+    public final void shouldNotShareOrdersBetweenTenants() {
+        // given
+        Projection<OrderHolder> orders = dashboardKanbanFeedService.getOrders();
+
+        given(MultiTenantUtil.getCurrentTenantId()).willReturn(L_OTHER_TENANT_ID);
+
+        // when
+        Projection<OrderHolder> otherTenantOrders = dashboardKanbanFeedService.getOrders();
+
+        // then
+        assertNotSame(orders, otherTenantOrders);
+        verify(dashboardKanbanDataProvider, times(2)).getOrdersPending(L_PRODUCTION_LINE_ID);
+    }
+
+}
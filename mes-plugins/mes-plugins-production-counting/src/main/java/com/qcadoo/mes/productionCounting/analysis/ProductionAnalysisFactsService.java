@@ -0,0 +1,136 @@
+package com.qcadoo.mes.productionCounting.analysis;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.productionCounting.states.constants.ProductionTrackingStateStringValues;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Keeps fact tables read by production analyses: produced quantities and work times of accepted production trackings, summed up
+ * per day, order, operation, worker, shift, production line and product (product only for quantities).
+ *
+ * Accepting, declining or correcting a tracking recalculates facts of its day and order from accepted trackings, so the
+ * analyses don't have to aggregate trackings on every refresh, and facts stay right when the production line of order changes
+ * in between. Trackings of one order are applied one after another, as their order's counting quantities are locked. The day
+ * of a tracking is its shift start day, or else the day of its time range start or creation. Facts of any range of days can
+ * be recalculated from accepted trackings with {@link #rebuild(LocalDate, LocalDate)}.
+ */
+@Service
+public class ProductionAnalysisFactsService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ProductionAnalysisFactsService.class);
+
+    private static final String L_DAY = "COALESCE(pt.shiftstartday, date(pt.timerangefrom), date(pt.createdate))";
+
+    private static final String L_KEYS = "day, order_id, technologyoperationcomponent_id, staff_id, shift_id, productionline_id";
+
+    private static final String L_ACCEPTED = "pt.state = '" + ProductionTrackingStateStringValues.ACCEPTED + "'";
+
+    private static final String L_DAY_AND_ORDER_OF_PRODUCTION_TRACKING = "(SELECT " + L_DAY + ", pt.order_id "
+            + "FROM productioncounting_productiontracking pt WHERE pt.id = :productionTrackingId)";
+
+    static final String FOR_PRODUCTION_TRACKING = "(" + L_DAY + ", pt.order_id) = " + L_DAY_AND_ORDER_OF_PRODUCTION_TRACKING
+            + " AND (" + L_ACCEPTED + " AND pt.id <> :productionTrackingId OR pt.id = :productionTrackingId AND :accepted) ";
+
+    static final String FOR_DAYS = L_ACCEPTED + " AND " + L_DAY + " BETWEEN :dateFrom AND :dateTo ";
+
+    private static final String INSERT_PRODUCED_QUANTITIES = "INSERT INTO productioncounting_dailyproducedquantity (" + L_KEYS
+            + ", product_id, typeofmaterial, quantity) SELECT " + L_DAY + ", pt.order_id, pt.technologyoperationcomponent_id, "
+            + "pt.staff_id, pt.shift_id, o.productionline_id, topoc.product_id, topoc.typeofmaterial, SUM(topoc.usedquantity) "
+            + "FROM productioncounting_productiontracking pt "
+            + "JOIN productioncounting_trackingoperationproductoutcomponent topoc ON topoc.productiontracking_id = pt.id "
+            + "JOIN orders_order o ON o.id = pt.order_id WHERE topoc.usedquantity IS NOT NULL AND %s"
+            + "GROUP BY 1, 2, 3, 4, 5, 6, 7, 8";
+
+    private static final String INSERT_WORK_TIMES = "INSERT INTO productioncounting_dailyworktime (" + L_KEYS
+            + ", labortime, machinetime, trackingscount) SELECT " + L_DAY + ", pt.order_id, "
+            + "pt.technologyoperationcomponent_id, pt.staff_id, pt.shift_id, o.productionline_id, "
+            + "SUM(COALESCE(pt.labortime, 0)), SUM(COALESCE(pt.machinetime, 0)), COUNT(*) "
+            + "FROM productioncounting_productiontracking pt JOIN orders_order o ON o.id = pt.order_id WHERE %s"
+            + "GROUP BY 1, 2, 3, 4, 5, 6";
+
+    private static final String DELETE_PRODUCTION_TRACKING_PRODUCED_QUANTITIES = "DELETE FROM "
+            + "productioncounting_dailyproducedquantity WHERE (day, order_id) = " + L_DAY_AND_ORDER_OF_PRODUCTION_TRACKING;
+
+    private static final String DELETE_PRODUCTION_TRACKING_WORK_TIMES = "DELETE FROM productioncounting_dailyworktime "
+            + "WHERE (day, order_id) = " + L_DAY_AND_ORDER_OF_PRODUCTION_TRACKING;
+
+    private static final String LOCK_FACTS = "LOCK TABLE productioncounting_dailyproducedquantity, "
+            + "productioncounting_dailyworktime IN SHARE ROW EXCLUSIVE MODE";
+
+    private static final String DELETE_PRODUCED_QUANTITIES = "DELETE FROM productioncounting_dailyproducedquantity "
+            + "WHERE day BETWEEN :dateFrom AND :dateTo";
+
+    private static final String DELETE_WORK_TIMES = "DELETE FROM productioncounting_dailyworktime "
+            + "WHERE day BETWEEN :dateFrom AND :dateTo";
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    /**
+     * Recalculates facts of day and order of production tracking, which is being accepted.
+     */
+    public void addProductionTracking(final Entity productionTracking) {
+        updateFacts(productionTracking, true);
+    }
+
+    /**
+     * Recalculates facts of day and order of production tracking, which is no longer accepted.
+     */
+    public void removeProductionTracking(final Entity productionTracking) {
+        updateFacts(productionTracking, false);
+    }
+
+    // state of tracking isn't saved yet, so it's included or excluded explicitly
+    private void updateFacts(final Entity productionTracking, final boolean accepted) {
+        Map<String, Object> parameters = Maps.newHashMap();
+
+        parameters.put("productionTrackingId", productionTracking.getId());
+        parameters.put("accepted", accepted);
+
+        jdbcTemplate.update(DELETE_PRODUCTION_TRACKING_PRODUCED_QUANTITIES, parameters);
+        jdbcTemplate.update(DELETE_PRODUCTION_TRACKING_WORK_TIMES, parameters);
+        jdbcTemplate.update(String.format(INSERT_PRODUCED_QUANTITIES, FOR_PRODUCTION_TRACKING), parameters);
+        jdbcTemplate.update(String.format(INSERT_WORK_TIMES, FOR_PRODUCTION_TRACKING), parameters);
+    }
+
+    /**
+     * Recalculates facts of given days from accepted production trackings. Fact tables are locked until the end of transaction,
+     * so trackings accepted or declined meanwhile wait and are applied to rebuilt facts. Facts of archived trackings are lost, as
+     * they're no longer available to recalculate them.
+     *
+     * @return number of facts written
+     */
+    @Transactional
+    public int rebuild(final LocalDate dateFrom, final LocalDate dateTo) {
+        long started = System.currentTimeMillis();
+
+        Map<String, Object> parameters = Maps.newHashMap();
+
+        parameters.put("dateFrom", Date.valueOf(dateFrom));
+        parameters.put("dateTo", Date.valueOf(dateTo));
+
+        jdbcTemplate.update(LOCK_FACTS, parameters);
+        jdbcTemplate.update(DELETE_PRODUCED_QUANTITIES, parameters);
+        jdbcTemplate.update(DELETE_WORK_TIMES, parameters);
+
+        int inserted = jdbcTemplate.update(String.format(INSERT_PRODUCED_QUANTITIES, FOR_DAYS), parameters)
+                + jdbcTemplate.update(String.format(INSERT_WORK_TIMES, FOR_DAYS), parameters);
+
+        LOG.info("Production analysis facts from {} to {} rebuilt: {} rows in {}ms", dateFrom, dateTo, inserted,
+                System.currentTimeMillis() - started);
+
+        return inserted;
+    }
+
+}
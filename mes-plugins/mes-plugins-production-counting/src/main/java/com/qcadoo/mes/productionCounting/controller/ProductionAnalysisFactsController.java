@@ -0,0 +1,69 @@
+package com.qcadoo.mes.productionCounting.controller;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.productionCounting.analysis.ProductionAnalysisFactsService;
+import com.qcadoo.security.api.SecurityService;
+
+@Controller
+@RequestMapping("/productionAnalysisFacts")
+public class ProductionAnalysisFactsController {
+
+    private static final String L_ROLE_ADMIN = "ROLE_ADMIN";
+
+    @Autowired
+    private ProductionAnalysisFactsService productionAnalysisFactsService;
+
+    @Autowired
+    private SecurityService securityService;
+
+    @ResponseBody
+    @RequestMapping(value = "/rebuild", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE)
+    public Map<String, Object> rebuild(@RequestParam String dateFrom, @RequestParam String dateTo,
+            final HttpServletResponse response) throws IOException {
+        if (!securityService.hasCurrentUserRole(L_ROLE_ADMIN)) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+
+            return null;
+        }
+
+        LocalDate from;
+        LocalDate to;
+
+        try {
+            from = LocalDate.parse(dateFrom);
+            to = LocalDate.parse(dateTo);
+        } catch (DateTimeParseException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+
+            return null;
+        }
+
+        if (from.isAfter(to)) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "dateFrom is after dateTo");
+
+            return null;
+        }
+
+        Map<String, Object> result = Maps.newHashMap();
+
+        result.put("rows", productionAnalysisFactsService.rebuild(from, to));
+
+        return result;
+    }
+
+}
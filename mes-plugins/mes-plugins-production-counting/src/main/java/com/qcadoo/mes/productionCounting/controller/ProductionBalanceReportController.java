@@ -0,0 +1,121 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productionCounting.controller;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import com.google.common.io.Files;
+import com.qcadoo.mes.productionCounting.ProductionCountingService;
+import com.qcadoo.mes.productionCounting.constants.ProductionBalanceFields;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.security.api.SecurityService;
+
+/**
+ * Serves generated production balance to users, who can open production balances. Balances are generated as XLSX, balances
+ * generated before are still served from their XLS files.
+ */
+@Controller
+@RequestMapping("/productionCounting")
+public class ProductionBalanceReportController {
+
+    private static final String L_ROLE_PRODUCTION_COUNTING = "ROLE_PRODUCTION_COUNTING";
+
+    private static final String L_XLSX_EXTENSION = "xlsx";
+
+    private static final String L_XLS_EXTENSION = "xls";
+
+    private static final String L_XLSX_CONTENT_TYPE = "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+
+    private static final String L_XLS_CONTENT_TYPE = "application/vnd.ms-excel";
+
+    @Autowired
+    private ProductionCountingService productionCountingService;
+
+    @Autowired
+    private SecurityService securityService;
+
+    @RequestMapping(value = "/productionBalanceReport", method = RequestMethod.GET)
+    public final void printProductionBalance(@RequestParam("id") final Long productionBalanceId,
+            final HttpServletResponse response) throws IOException {
+        if (!securityService.hasCurrentUserRole(L_ROLE_PRODUCTION_COUNTING)) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+
+            return;
+        }
+
+        Entity productionBalance = productionCountingService.getProductionBalance(productionBalanceId);
+
+        String fileName = Objects.isNull(productionBalance) ? null
+                : productionBalance.getStringField(ProductionBalanceFields.FILE_NAME);
+
+        if (StringUtils.isEmpty(fileName)) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+
+            return;
+        }
+
+        File file = new File(fileName + "." + L_XLSX_EXTENSION);
+        String contentType = L_XLSX_CONTENT_TYPE;
+
+        if (!file.exists()) {
+            file = new File(fileName + "." + L_XLS_EXTENSION);
+            contentType = L_XLS_CONTENT_TYPE;
+        }
+
+        if (!file.exists()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+
+            return;
+        }
+
+        response.setContentType(contentType);
+        response.setHeader("Content-disposition", getContentDisposition(file.getName()));
+        response.setContentLength((int) file.length());
+
+        Files.copy(file, response.getOutputStream());
+
+        response.flushBuffer();
+    }
+
+    private String getContentDisposition(final String fileName) throws IOException {
+        String asciiFileName = fileName.replaceAll("[^\\x20-\\x7E]|[\"\\\\]", "_");
+        String encodedFileName = URLEncoder.encode(fileName, StandardCharsets.UTF_8.name()).replace("+", "%20");
+
+        return "attachment; filename=\"" + asciiFileName + "\"; filename*=UTF-8''" + encodedFileName;
+    }
+
+}
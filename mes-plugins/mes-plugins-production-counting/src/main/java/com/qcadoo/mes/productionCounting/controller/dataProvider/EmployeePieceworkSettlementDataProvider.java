@@ -40,8 +40,6 @@ public class EmployeePieceworkSettlementDataProvider implements AnalysisDataProv
 
     private static final String NUMERIC_DATA_TYPE = "02numeric";
 
-    private static final String L_TIME_PART = " 23:59:59";
-
     @Autowired
     private NamedParameterJdbcTemplate jdbcTemplate;
 
@@ -87,16 +85,18 @@ public class EmployeePieceworkSettlementDataProvider implements AnalysisDataProv
                                                 final JSONObject filters, final String sortColumn,
                                                 final boolean sortAsc) throws JSONException {
         StringBuilder query = new StringBuilder();
+        Map<String, Object> parameters = Maps.newHashMap();
 
         appendBaseQuery(query);
 
-        appendDateBetween(query, dateFrom, dateTo);
+        parameters.put("dateFrom", dateFrom);
+        parameters.put("dateTo", dateTo);
 
-        appendFilters(query, filters);
+        appendFilters(query, filters, parameters);
 
         appendSort(query, sortColumn, sortAsc);
 
-        return jdbcTemplate.queryForList(query.toString(), Maps.newHashMap());
+        return jdbcTemplate.queryForList(query.toString(), parameters);
     }
 
     private static void appendBaseQuery(final StringBuilder query) {
@@ -111,14 +111,44 @@ public class EmployeePieceworkSettlementDataProvider implements AnalysisDataProv
         query.append("  producedquantity AS \"producedQuantity\", ");
         query.append("  rate, ");
         query.append("  cost ");
-        query.append("FROM productioncounting_employeepieceworksettlementdto ");
+        query.append("FROM (");
+        appendSettlementQuery(query);
+        query.append(") settlement WHERE 1 = 1 ");
     }
 
-    private static void appendDateBetween(final StringBuilder query, final String dateFrom, final String dateTo) {
-        query.append("WHERE date BETWEEN '").append(dateFrom).append("' AND '").append(dateTo).append(L_TIME_PART).append("'  ");
+    private static void appendSettlementQuery(final StringBuilder query) {
+        query.append("SELECT ((staff.name)::text || ' '::text || (staff.surname)::text) AS worker, ");
+        query.append("  dpq.day AS date, ");
+        query.append("  shift.name AS shiftname, ");
+        query.append("  ordersorder.number AS ordernumber, ");
+        query.append("  operation.number AS operationnumber, ");
+        query.append("  product.number AS productnumber, ");
+        query.append("  product.name AS productname, ");
+        query.append("  SUM(dpq.quantity) AS producedquantity, ");
+        query.append("  COALESCE(MAX(piecerateitem.rate), 0) AS rate, ");
+        query.append("  SUM(dpq.quantity) * COALESCE(MAX(piecerateitem.rate), 0) AS cost ");
+        query.append("FROM productioncounting_dailyproducedquantity dpq ");
+        query.append("JOIN orders_order ordersorder ON ordersorder.id = dpq.order_id ");
+        query.append("JOIN technologies_technology technology ON technology.id = ordersorder.technology_id ");
+        query.append("JOIN basic_product product ON product.id = dpq.product_id ");
+        query.append("LEFT JOIN technologies_technologyoperationcomponent toc ON toc.id = dpq.technologyoperationcomponent_id ");
+        query.append("LEFT JOIN technologies_operation operation ON operation.id = toc.operation_id ");
+        query.append("LEFT JOIN basic_shift shift ON shift.id = dpq.shift_id ");
+        query.append("LEFT JOIN basic_staff staff ON staff.id = dpq.staff_id ");
+        query.append("LEFT JOIN LATERAL (SELECT piecerateitem.actualrate AS rate FROM basic_piecerateitem piecerateitem ");
+        query.append("  WHERE piecerateitem.piecerate_id = technology.piecerate_id AND piecerateitem.datefrom <= dpq.day ");
+        query.append("  ORDER BY piecerateitem.datefrom DESC LIMIT 1) piecerateitem ON TRUE ");
+        query.append("WHERE technology.pieceworkproduction = TRUE ");
+        query.append("AND dpq.day BETWEEN CAST(:dateFrom AS DATE) AND CAST(:dateTo AS DATE) ");
+        query.append("AND ((ordersorder.typeofproductionrecording = '02cumulated' AND dpq.typeofmaterial = '03finalProduct') ");
+        query.append("  OR (ordersorder.typeofproductionrecording = '03forEach' ");
+        query.append("  AND dpq.typeofmaterial IN ('02intermediate', '03finalProduct'))) ");
+        query.append("GROUP BY staff.name, staff.surname, dpq.day, shift.name, ordersorder.number, operation.number, ");
+        query.append("  product.number, product.name ");
     }
 
-    private void appendFilters(final StringBuilder query, final JSONObject filters) throws JSONException {
+    private void appendFilters(final StringBuilder query, final JSONObject filters, final Map<String, Object> parameters)
+            throws JSONException {
         if (filters.length() > 0) {
             for (int i = 0; i < filters.names().length(); i++) {
                 String key = filters.names().getString(i);
@@ -130,62 +160,67 @@ public class EmployeePieceworkSettlementDataProvider implements AnalysisDataProv
 
                 switch (key) {
                     case L_WORKER:
-                        query.append("AND UPPER(worker) LIKE '%").append(value).append("%' ");
+                        query.append("AND UPPER(worker) LIKE :worker ");
 
                         break;
 
                     case L_DATE:
-                        query.append("AND to_char(date, 'YYYY-MM-DD') LIKE '%").append(value).append("%' ");
+                        query.append("AND to_char(date, 'YYYY-MM-DD') LIKE :date ");
 
                         break;
 
                     case L_SHIFT_NAME:
-                        query.append("AND UPPER(shiftName) LIKE '%").append(value).append("%' ");
+                        query.append("AND UPPER(shiftName) LIKE :shiftName ");
 
                         break;
 
                     case L_ORDER_NUMBER:
-                        query.append("AND UPPER(orderNumber) LIKE '%").append(value).append("%' ");
+                        query.append("AND UPPER(orderNumber) LIKE :orderNumber ");
 
                         break;
 
                     case L_OPERATION_NUMBER:
-                        query.append("AND UPPER(operationNumber) LIKE '%").append(value).append("%' ");
+                        query.append("AND UPPER(operationNumber) LIKE :operationNumber ");
 
                         break;
 
                     case L_PRODUCT_NUMBER:
-                        query.append("AND UPPER(productNumber) LIKE '%").append(value).append("%' ");
+                        query.append("AND UPPER(productNumber) LIKE :productNumber ");
 
                         break;
 
                     case L_PRODUCT_NAME:
-                        query.append("AND UPPER(productName) LIKE '%").append(value).append("%' ");
+                        query.append("AND UPPER(productName) LIKE :productName ");
 
                         break;
 
                     case L_PRODUCED_QUANTITY:
-                        query.append("AND CAST(producedQuantity AS TEXT) LIKE '%").append(value).append("%' ");
+                        query.append("AND CAST(producedQuantity AS TEXT) LIKE :producedQuantity ");
 
                         break;
 
                     case L_RATE:
-                        query.append("AND CAST(rate AS TEXT) LIKE '%").append(value).append("%' ");
+                        query.append("AND CAST(rate AS TEXT) LIKE :rate ");
 
                         break;
 
                     case L_COST:
-                        query.append("AND CAST(cost AS TEXT) LIKE '%").append(value).append("%' ");
+                        query.append("AND CAST(cost AS TEXT) LIKE :cost ");
 
                         break;
+
+                    default:
+                        continue;
                 }
+
+                parameters.put(key, "%" + value + "%");
             }
         }
     }
 
     private void appendSort(final StringBuilder query, final String sortColumn, final boolean sortAsc) {
         if (!sortColumn.isEmpty()) {
-            query.append("ORDER BY \"").append(sortColumn);
+            query.append("ORDER BY \"").append(sortColumn.replace("\"", "\"\""));
 
             if (sortAsc) {
                 query.append("\" ASC");
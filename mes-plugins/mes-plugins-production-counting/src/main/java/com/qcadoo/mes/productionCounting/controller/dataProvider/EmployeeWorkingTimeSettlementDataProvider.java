@@ -45,8 +45,6 @@ public class EmployeeWorkingTimeSettlementDataProvider implements AnalysisDataPr
 
     private static final String L_WORKSTATION_NUMBER = "workstationNumber";
 
-    private static final String L_TIME_PART = " 23:59:59";
-
     @Autowired
     private NamedParameterJdbcTemplate jdbcTemplate;
 
@@ -97,19 +95,23 @@ public class EmployeeWorkingTimeSettlementDataProvider implements AnalysisDataPr
     public List<Map<String, Object>> getRecords(String dateFrom, String dateTo, JSONObject filters, String sortColumn,
                                                 boolean sortAsc) throws JSONException {
         StringBuilder query = new StringBuilder();
+        Map<String, Object> parameters = Maps.newHashMap();
 
         StringBuilder queryShiftPart = new StringBuilder();
         StringBuilder queryCreateDatePart = new StringBuilder();
         appendBaseQuery(queryShiftPart);
         appendBaseQuery(queryCreateDatePart);
 
-        queryShiftPart.append("WHERE pt.shiftstartday IS NOT NULL AND pt.shiftstartday BETWEEN '").append(dateFrom)
-                .append("' AND '").append(dateTo).append(L_TIME_PART).append("'  ");
-        queryCreateDatePart.append("WHERE pt.shiftstartday IS NULL AND pt.createdate BETWEEN '").append(dateFrom)
-                .append("' AND '").append(dateTo).append(L_TIME_PART).append("'  ");
+        queryShiftPart.append("WHERE pt.shiftstartday IS NOT NULL ")
+                .append("AND pt.shiftstartday BETWEEN CAST(:dateFrom AS DATE) AND CAST(:dateTo AS DATE) ");
+        queryCreateDatePart.append("WHERE pt.shiftstartday IS NULL ")
+                .append("AND pt.createdate >= CAST(:dateFrom AS DATE) AND pt.createdate < CAST(:dateTo AS DATE) + 1 ");
+
+        parameters.put("dateFrom", dateFrom);
+        parameters.put("dateTo", dateTo);
 
-        appendFilters(filters, queryShiftPart);
-        appendFilters(filters, queryCreateDatePart);
+        appendFilters(filters, queryShiftPart, parameters);
+        appendFilters(filters, queryCreateDatePart, parameters);
 
         appendSort(sortColumn, sortAsc, queryShiftPart);
         appendSort(sortColumn, sortAsc, queryCreateDatePart);
@@ -118,7 +120,7 @@ public class EmployeeWorkingTimeSettlementDataProvider implements AnalysisDataPr
         query.append(" UNION ALL ");
         query.append("(").append(queryCreateDatePart).append(")");
 
-        return jdbcTemplate.queryForList(query.toString(), Maps.newHashMap());
+        return jdbcTemplate.queryForList(query.toString(), parameters);
     }
 
     private void appendBaseQuery(StringBuilder query) {
@@ -151,7 +153,7 @@ public class EmployeeWorkingTimeSettlementDataProvider implements AnalysisDataPr
         query.append("LEFT JOIN basic_division d ON pt.division_id = d.id ");
     }
 
-    private void appendFilters(JSONObject filters, StringBuilder query) throws JSONException {
+    private void appendFilters(JSONObject filters, StringBuilder query, Map<String, Object> parameters) throws JSONException {
         if (filters.length() > 0) {
             for (int i = 0; i < filters.names().length(); i++) {
                 String key = filters.names().getString(i);
@@ -161,52 +163,52 @@ public class EmployeeWorkingTimeSettlementDataProvider implements AnalysisDataPr
                 }
                 switch (key) {
                     case L_WORKER:
-                        query.append("AND UPPER(stf.surname || ' ' || stf.name) LIKE '%").append(value).append("%' ");
+                        query.append("AND UPPER(stf.surname || ' ' || stf.name) LIKE :worker ");
                         break;
                     case L_START_DATE:
-                        query.append("AND to_char(swt.effectiveexecutiontimestart, 'YYYY-MM-DD HH24:MI:SS') LIKE '%")
-                                .append(value).append("%' ");
+                        query.append("AND to_char(swt.effectiveexecutiontimestart, 'YYYY-MM-DD HH24:MI:SS') LIKE :startDate ");
                         break;
                     case L_FINISH_DATE:
-                        query.append("AND to_char(swt.effectiveexecutiontimeend, 'YYYY-MM-DD HH24:MI:SS') LIKE '%").append(value)
-                                .append("%' ");
+                        query.append("AND to_char(swt.effectiveexecutiontimeend, 'YYYY-MM-DD HH24:MI:SS') LIKE :finishDate ");
                         break;
                     case L_WORK_TIME:
-                        query.append("AND TO_CHAR((swt.labortime || ' second')::interval, 'HH24:MI:SS') LIKE '%").append(value)
-                                .append("%' ");
+                        query.append("AND TO_CHAR((swt.labortime || ' second')::interval, 'HH24:MI:SS') LIKE :workTime ");
                         break;
                     case L_SHIFT_NUMBER:
-                        query.append("AND UPPER(s.name) LIKE '%").append(value).append("%' ");
+                        query.append("AND UPPER(s.name) LIKE :shiftNumber ");
                         break;
                     case L_SHIFT_START_DATE:
-                        query.append("AND to_char(pt.shiftstartday, 'YYYY-MM-DD') LIKE '%").append(value).append("%' ");
+                        query.append("AND to_char(pt.shiftstartday, 'YYYY-MM-DD') LIKE :shiftStartDate ");
                         break;
                     case L_ORDER_NUMBER:
-                        query.append("AND UPPER(o.number) LIKE '%").append(value).append("%' ");
+                        query.append("AND UPPER(o.number) LIKE :orderNumber ");
                         break;
                     case L_OPERATION_NUMBER:
-                        query.append("AND UPPER(toc.nodenumber || ' ' || op.name) LIKE '%").append(value).append("%' ");
+                        query.append("AND UPPER(toc.nodenumber || ' ' || op.name) LIKE :operationNumber ");
                         break;
                     case L_PRODUCT_NUMBER:
-                        query.append("AND UPPER(p.number) LIKE '%").append(value).append("%' ");
+                        query.append("AND UPPER(p.number) LIKE :productNumber ");
                         break;
                     case L_DIVISION_NUMBER:
-                        query.append("AND UPPER(d.number) LIKE '%").append(value).append("%' ");
+                        query.append("AND UPPER(d.number) LIKE :divisionNumber ");
                         break;
                     case L_PRODUCTION_LINE_NUMBER:
-                        query.append("AND UPPER(pl.number) LIKE '%").append(value).append("%' ");
+                        query.append("AND UPPER(pl.number) LIKE :productionLineNumber ");
                         break;
                     case L_WORKSTATION_NUMBER:
-                        query.append("AND UPPER(w.number) LIKE '%").append(value).append("%' ");
+                        query.append("AND UPPER(w.number) LIKE :workstationNumber ");
                         break;
+                    default:
+                        continue;
                 }
+                parameters.put(key, "%" + value + "%");
             }
         }
     }
 
     private void appendSort(String sortColumn, boolean sortAsc, StringBuilder query) {
         if (!sortColumn.isEmpty()) {
-            query.append("ORDER BY \"").append(sortColumn);
+            query.append("ORDER BY \"").append(sortColumn.replace("\"", "\"\""));
             if (sortAsc) {
                 query.append("\" ASC");
             } else {
@@ -90,12 +90,12 @@ public class LinesProducedQuantitiesChartDataProvider {
     }
 
     private List<Map<String, Object>> getProducedQuantities(String dateFrom, String dateTo) {
-        StringBuilder query = getProducedQuantitiesQuery();
+        Map<String, Object> parameters = Maps.newHashMap();
 
-        query.append("AND COALESCE(pt.shiftstartday, date(pt.timerangefrom), date(pt.createdate)) BETWEEN '")
-                .append(dateFrom).append("' AND '").append(dateTo).append("' ")
-                .append("GROUP BY productionline, chartdate ORDER BY productionline, chartdate ");
-        return jdbcTemplate.queryForList(query.toString(), Maps.newHashMap());
+        parameters.put("dateFrom", dateFrom);
+        parameters.put("dateTo", dateTo);
+
+        return jdbcTemplate.queryForList(getProducedQuantitiesQuery(), parameters);
     }
 
     private Set<String> getProductionLines(List<Map<String, Object>> producedQuantities) {
@@ -130,20 +130,19 @@ public class LinesProducedQuantitiesChartDataProvider {
         return labels;
     }
 
-    private StringBuilder getProducedQuantitiesQuery() {
+    private String getProducedQuantitiesQuery() {
         StringBuilder query = new StringBuilder();
         query.append("SELECT ");
         query.append("pl.number AS productionline, ");
-        query.append("to_char(COALESCE(pt.shiftstartday, date(pt.timerangefrom), date(pt.createdate)), 'YYYY-MM-DD') AS chartdate, ");
-        query.append("SUM(topoc.usedquantity) AS quantity ");
-        query.append("FROM productioncounting_productiontracking pt ");
-        query.append("JOIN productioncounting_trackingoperationproductoutcomponent topoc ");
-        query.append("ON topoc.productiontracking_id = pt.id ");
-        query.append("JOIN orders_order o ON o.id = pt.order_id ");
-        query.append("JOIN productionlines_productionline pl ON pl.id = o.productionline_id ");
-        query.append("WHERE pt.state = '02accepted' ");
-        query.append("AND topoc.product_id = o.product_id ");
-        return query;
+        query.append("to_char(dpq.day, 'YYYY-MM-DD') AS chartdate, ");
+        query.append("SUM(dpq.quantity) AS quantity ");
+        query.append("FROM productioncounting_dailyproducedquantity dpq ");
+        query.append("JOIN orders_order o ON o.id = dpq.order_id ");
+        query.append("JOIN productionlines_productionline pl ON pl.id = dpq.productionline_id ");
+        query.append("WHERE dpq.product_id = o.product_id ");
+        query.append("AND dpq.day BETWEEN CAST(:dateFrom AS DATE) AND CAST(:dateTo AS DATE) ");
+        query.append("GROUP BY productionline, chartdate ORDER BY productionline, chartdate ");
+        return query.toString();
     }
 
 }
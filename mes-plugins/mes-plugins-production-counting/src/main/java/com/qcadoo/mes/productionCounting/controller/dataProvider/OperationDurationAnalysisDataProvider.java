@@ -51,8 +51,6 @@ public class OperationDurationAnalysisDataProvider implements AnalysisDataProvid
 
     private static final String MACHINE_UNIT_TIME = "machineUnitTime";
 
-    private static final String L_TIME_PART = " 23:59:59";
-
     @Autowired
     private NamedParameterJdbcTemplate jdbcTemplate;
 
@@ -124,23 +122,26 @@ public class OperationDurationAnalysisDataProvider implements AnalysisDataProvid
     public List<Map<String, Object>> getRecords(final String dateFrom, final String dateTo, final JSONObject filters,
                                                 final String sortColumn, final boolean sortAsc) throws JSONException {
         StringBuilder query = new StringBuilder();
+        Map<String, Object> parameters = Maps.newHashMap();
 
         appendBaseQuery(query);
 
-        query.append("WHERE o.dateFrom BETWEEN '").append(dateFrom).append("' AND '").append(dateTo).append(L_TIME_PART)
-                .append("' ");
+        query.append("WHERE o.dateFrom >= CAST(:dateFrom AS DATE) AND o.dateFrom < CAST(:dateTo AS DATE) + 1 ");
         query.append("AND o.typeofproductionrecording = '03forEach' AND o.state IN ('04completed','03inProgress','06interrupted') ");
 
-        appendFilters(filters, query);
+        parameters.put("dateFrom", dateFrom);
+        parameters.put("dateTo", dateTo);
+
+        appendFilters(filters, query, parameters);
 
         query.append("GROUP BY op.number, p.number, p.name, toc.tj, toc.tpz, toc.machineUtilization, ");
         query.append("toc.laborUtilization, toc.productionInOneCycle, opocp.number, opocp.unit ");
 
-        appendGroupFilters(filters, query);
+        appendGroupFilters(filters, query, parameters);
 
         appendSort(sortColumn, sortAsc, query);
 
-        return jdbcTemplate.queryForList(query.toString(), Maps.newHashMap());
+        return jdbcTemplate.queryForList(query.toString(), parameters);
     }
 
     private void appendBaseQuery(final StringBuilder query) {
@@ -154,14 +155,14 @@ public class OperationDurationAnalysisDataProvider implements AnalysisDataProvid
         query.append("toc.machineUtilization AS \"machineUtilization\", ");
         query.append("toc.laborUtilization AS \"laborUtilization\", ");
         query.append("opocp.number AS \"outProductNumber\", ");
-        query.append("SUM(topoc.usedquantity) AS \"quantity\", ");
+        query.append("SUM(dpq.quantity) AS \"quantity\", ");
         query.append("opocp.unit AS \"productUnit\", ");
-        query.append("TO_CHAR((SUM(pt.laborTime)  || ' second')::interval, 'HH24:MI:SS') AS \"workersWorkingTimeSum\", ");
-        query.append("SUM(pt.laborTime) AS \"workersWorkingTimeSumInSeconds\", ");
-        query.append("TO_CHAR((SUM(pt.laborTime)/(SUM(topoc.usedquantity) * toc.productionInOneCycle) || ' second')::interval, 'HH24:MI:SS') AS \"workerUnitTime\", ");
-        query.append("TO_CHAR((SUM(pt.machineTime)  || ' second')::interval, 'HH24:MI:SS') AS \"machinesWorkingTimeSum\", ");
-        query.append("SUM(pt.machineTime) AS \"machinesWorkingTimeSumInSeconds\", ");
-        query.append("TO_CHAR((SUM(pt.machineTime)/(SUM(topoc.usedquantity) * toc.productionInOneCycle) || ' second')::interval, 'HH24:MI:SS') AS \"machineUnitTime\" ");
+        query.append("TO_CHAR((SUM(dwt.laborTime)  || ' second')::interval, 'HH24:MI:SS') AS \"workersWorkingTimeSum\", ");
+        query.append("SUM(dwt.laborTime) AS \"workersWorkingTimeSumInSeconds\", ");
+        query.append("TO_CHAR((SUM(dwt.laborTime)/(SUM(dpq.quantity) * toc.productionInOneCycle) || ' second')::interval, 'HH24:MI:SS') AS \"workerUnitTime\", ");
+        query.append("TO_CHAR((SUM(dwt.machineTime)  || ' second')::interval, 'HH24:MI:SS') AS \"machinesWorkingTimeSum\", ");
+        query.append("SUM(dwt.machineTime) AS \"machinesWorkingTimeSumInSeconds\", ");
+        query.append("TO_CHAR((SUM(dwt.machineTime)/(SUM(dpq.quantity) * toc.productionInOneCycle) || ' second')::interval, 'HH24:MI:SS') AS \"machineUnitTime\" ");
         query.append("FROM orders_order o ");
         query.append("JOIN technologies_technology t ON o.technology_id = t.id ");
         query.append("JOIN technologies_technologyoperationcomponent toc ON toc.technology_id = t.id ");
@@ -169,13 +170,15 @@ public class OperationDurationAnalysisDataProvider implements AnalysisDataProvid
         query.append("JOIN technologies_operationproductoutcomponent opoc ON opoc.operationcomponent_id = toc.id AND waste = FALSE ");
         query.append("JOIN basic_product p ON o.product_id = p.id ");
         query.append("JOIN basic_product opocp ON opoc.product_id = opocp.id ");
-        query.append("LEFT JOIN productioncounting_productiontracking pt ON pt.order_id = o.id ");
-        query.append("AND pt.technologyoperationcomponent_id = toc.id AND pt.state = '02accepted' ");
-        query.append("LEFT JOIN productioncounting_trackingoperationproductoutcomponent topoc ON topoc.productiontracking_id = pt.id ");
-        query.append("AND topoc.typeOfMaterial IN ('02intermediate','03finalProduct') ");
+        query.append("LEFT JOIN LATERAL (SELECT SUM(quantity) AS quantity FROM productioncounting_dailyproducedquantity ");
+        query.append("WHERE order_id = o.id AND technologyoperationcomponent_id = toc.id ");
+        query.append("AND typeOfMaterial IN ('02intermediate','03finalProduct')) dpq ON TRUE ");
+        query.append("LEFT JOIN LATERAL (SELECT SUM(laborTime) AS laborTime, SUM(machineTime) AS machineTime ");
+        query.append("FROM productioncounting_dailyworktime WHERE order_id = o.id AND technologyoperationcomponent_id = toc.id) dwt ON TRUE ");
     }
 
-    private void appendFilters(final JSONObject filters, final StringBuilder query) throws JSONException {
+    private void appendFilters(final JSONObject filters, final StringBuilder query, final Map<String, Object> parameters)
+            throws JSONException {
         if (filters.length() > 0) {
             for (int i = 0; i < filters.names().length(); i++) {
                 String key = filters.names().getString(i);
@@ -187,48 +190,52 @@ public class OperationDurationAnalysisDataProvider implements AnalysisDataProvid
 
                 switch (key) {
                     case L_OPERATION_NUMBER:
-                        query.append("AND UPPER(op.number) LIKE '%").append(value).append("%' ");
+                        query.append("AND UPPER(op.number) LIKE :operationNumber ");
                         break;
 
                     case L_PRODUCT_NUMBER:
-                        query.append("AND UPPER(p.number) LIKE '%").append(value).append("%' ");
+                        query.append("AND UPPER(p.number) LIKE :productNumber ");
                         break;
 
                     case L_PRODUCT_NAME:
-                        query.append("AND UPPER(p.name) LIKE '%").append(value).append("%' ");
+                        query.append("AND UPPER(p.name) LIKE :productName ");
                         break;
 
                     case L_TJ:
-                        query.append("AND TO_CHAR((toc.tj || ' second')::interval, 'HH24:MI:SS') LIKE '%")
-                                .append(value).append("%' ");
+                        query.append("AND TO_CHAR((toc.tj || ' second')::interval, 'HH24:MI:SS') LIKE :tj ");
                         break;
 
                     case L_TPZ:
-                        query.append("AND TO_CHAR((toc.tpz || ' second')::interval, 'HH24:MI:SS') LIKE '%")
-                                .append(value).append("%' ");
+                        query.append("AND TO_CHAR((toc.tpz || ' second')::interval, 'HH24:MI:SS') LIKE :tpz ");
                         break;
 
                     case LABOR_UTILIZATION:
-                        query.append("AND CAST(toc.machineUtilization AS TEXT) LIKE '%").append(value).append("%' ");
+                        query.append("AND CAST(toc.machineUtilization AS TEXT) LIKE :laborUtilization ");
                         break;
 
                     case MACHINE_UTILIZATION:
-                        query.append("AND CAST(toc.laborUtilization AS TEXT) LIKE '%").append(value).append("%' ");
+                        query.append("AND CAST(toc.laborUtilization AS TEXT) LIKE :machineUtilization ");
                         break;
 
                     case L_OUT_PRODUCT_NUMBER:
-                        query.append("AND UPPER(opocp.number) LIKE '%").append(value).append("%' ");
+                        query.append("AND UPPER(opocp.number) LIKE :outProductNumber ");
                         break;
 
                     case L_PRODUCT_UNIT:
-                        query.append("AND UPPER(opocp.unit) LIKE '%").append(value).append("%' ");
+                        query.append("AND UPPER(opocp.unit) LIKE :productUnit ");
                         break;
+
+                    default:
+                        continue;
                 }
+
+                parameters.put(key, "%" + value + "%");
             }
         }
     }
 
-    private void appendGroupFilters(final JSONObject filters, final StringBuilder query) throws JSONException {
+    private void appendGroupFilters(final JSONObject filters, final StringBuilder query, final Map<String, Object> parameters)
+            throws JSONException {
         if (filters.length() > 0) {
             boolean addHaving = true;
             for (int i = 0; i < filters.names().length(); i++) {
@@ -246,36 +253,37 @@ public class OperationDurationAnalysisDataProvider implements AnalysisDataProvid
 
                 switch (key) {
                     case L_QUANTITY:
-                        query.append("AND CAST(SUM(topoc.usedquantity) AS TEXT) LIKE '%").append(value).append("%' ");
+                        query.append("AND CAST(SUM(dpq.quantity) AS TEXT) LIKE :quantity ");
                         break;
 
                     case WORKERS_WORKING_TIME_SUM:
-                        query.append("AND TO_CHAR((SUM(pt.laborTime) || ' second')::interval, 'HH24:MI:SS') LIKE '%")
-                                .append(value).append("%' ");
+                        query.append("AND TO_CHAR((SUM(dwt.laborTime) || ' second')::interval, 'HH24:MI:SS') LIKE :workersWorkingTimeSum ");
                         break;
 
                     case WORKER_UNIT_TIME:
-                        query.append("AND TO_CHAR((SUM(pt.laborTime)/(SUM(topoc.usedquantity) * toc.productionInOneCycle) || ' second')::interval, 'HH24:MI:SS') LIKE '%")
-                                .append(value).append("%' ");
+                        query.append("AND TO_CHAR((SUM(dwt.laborTime)/(SUM(dpq.quantity) * toc.productionInOneCycle) || ' second')::interval, 'HH24:MI:SS') LIKE :workerUnitTime ");
                         break;
 
                     case MACHINES_WORKING_TIME_SUM:
-                        query.append("AND TO_CHAR((SUM(pt.machineTime) || ' second')::interval, 'HH24:MI:SS') LIKE '%")
-                                .append(value).append("%' ");
+                        query.append("AND TO_CHAR((SUM(dwt.machineTime) || ' second')::interval, 'HH24:MI:SS') LIKE :machinesWorkingTimeSum ");
                         break;
 
                     case MACHINE_UNIT_TIME:
-                        query.append("AND TO_CHAR((SUM(pt.machineTime)/(SUM(topoc.usedquantity) * toc.productionInOneCycle) || ' second')::interval, 'HH24:MI:SS') LIKE '%")
-                                .append(value).append("%' ");
+                        query.append("AND TO_CHAR((SUM(dwt.machineTime)/(SUM(dpq.quantity) * toc.productionInOneCycle) || ' second')::interval, 'HH24:MI:SS') LIKE :machineUnitTime ");
                         break;
+
+                    default:
+                        continue;
                 }
+
+                parameters.put(key, "%" + value + "%");
             }
         }
     }
 
     private void appendSort(final String sortColumn, final boolean sortAsc, final StringBuilder query) {
         if (!sortColumn.isEmpty()) {
-            query.append("ORDER BY \"").append(sortColumn);
+            query.append("ORDER BY \"").append(sortColumn.replace("\"", "\"\""));
 
             if (sortAsc) {
                 query.append("\" ASC");
@@ -55,8 +55,6 @@ public class ProductionBalanceAnalysisDataProvider implements AnalysisDataProvid
     private static final String TOTAL_MANUFACTURING_COST = "totalManufacturingCost";
     private static final String SELL_PRICE = "sellPrice";
 
-    private static final String L_TIME_PART = " 23:59:59";
-
     @Autowired
     private NamedParameterJdbcTemplate jdbcTemplate;
 
@@ -160,17 +158,20 @@ public class ProductionBalanceAnalysisDataProvider implements AnalysisDataProvid
     public List<Map<String, Object>> getRecords(final String dateFrom, final String dateTo, final JSONObject filters,
                                                 final String sortColumn, final boolean sortAsc) throws JSONException {
         StringBuilder query = new StringBuilder();
+        Map<String, Object> parameters = Maps.newHashMap();
 
         appendBaseQuery(query);
 
-        query.append("WHERE pb.date BETWEEN '").append(dateFrom).append("' AND '").append(dateTo).append(L_TIME_PART)
-                .append("' ");
+        query.append("WHERE pb.date >= CAST(:dateFrom AS DATE) AND pb.date < CAST(:dateTo AS DATE) + 1 ");
+
+        parameters.put("dateFrom", dateFrom);
+        parameters.put("dateTo", dateTo);
 
-        appendFilters(filters, query);
+        appendFilters(filters, query, parameters);
 
         appendSort(sortColumn, sortAsc, query);
 
-        return jdbcTemplate.queryForList(query.toString(), Maps.newHashMap());
+        return jdbcTemplate.queryForList(query.toString(), parameters);
     }
 
     private void appendBaseQuery(final StringBuilder query) {
@@ -200,7 +201,8 @@ public class ProductionBalanceAnalysisDataProvider implements AnalysisDataProvid
         query.append("JOIN productioncounting_productionbalance pb ON pb.id = ob.productionbalance_id ");
     }
 
-    private void appendFilters(final JSONObject filters, final StringBuilder query) throws JSONException {
+    private void appendFilters(final JSONObject filters, final StringBuilder query, final Map<String, Object> parameters)
+            throws JSONException {
         if (filters.length() > 0) {
             for (int i = 0; i < filters.names().length(); i++) {
                 String key = filters.names().getString(i);
@@ -212,88 +214,93 @@ public class ProductionBalanceAnalysisDataProvider implements AnalysisDataProvid
 
                 switch (key) {
                     case PRODUCTION_BALANCE_NUMBER:
-                        query.append("AND UPPER(pb.number) LIKE '%").append(value).append("%' ");
+                        query.append("AND UPPER(pb.number) LIKE :productionBalanceNumber ");
                         break;
 
                     case ORDER_NUMBER:
-                        query.append("AND UPPER(ob.orderNumber) LIKE '%").append(value).append("%' ");
+                        query.append("AND UPPER(ob.orderNumber) LIKE :orderNumber ");
                         break;
 
                     case PRODUCT_NUMBER:
-                        query.append("AND UPPER(ob.productNumber) LIKE '%").append(value).append("%' ");
+                        query.append("AND UPPER(ob.productNumber) LIKE :productNumber ");
                         break;
 
                     case PLANNED_QUANTITY:
-                        query.append("AND CAST(ob.plannedQuantity AS TEXT) LIKE '%").append(value).append("%' ");
+                        query.append("AND CAST(ob.plannedQuantity AS TEXT) LIKE :plannedQuantity ");
                         break;
 
                     case PRODUCED_QUANTITY:
-                        query.append("AND CAST(ob.producedQuantity AS TEXT) LIKE '%").append(value).append("%' ");
+                        query.append("AND CAST(ob.producedQuantity AS TEXT) LIKE :producedQuantity ");
                         break;
 
                     case DEVIATION:
-                        query.append("AND CAST(ob.deviation AS TEXT) LIKE '%").append(value).append("%' ");
+                        query.append("AND CAST(ob.deviation AS TEXT) LIKE :deviation ");
                         break;
 
                     case PRODUCT_UNIT:
-                        query.append("AND UPPER(ob.productUnit) LIKE '%").append(value).append("%' ");
+                        query.append("AND UPPER(ob.productUnit) LIKE :productUnit ");
                         break;
 
                     case PLANNED_COST:
-                        query.append("AND CAST(ob.plannedMaterialCosts AS TEXT) LIKE '%").append(value).append("%' ");
+                        query.append("AND CAST(ob.plannedMaterialCosts AS TEXT) LIKE :plannedCost ");
                         break;
 
                     case REAL_COST:
-                        query.append("AND CAST(ob.materialCosts AS TEXT) LIKE '%").append(value).append("%' ");
+                        query.append("AND CAST(ob.materialCosts AS TEXT) LIKE :realCost ");
                         break;
 
                     case VALUE_DEVIATION:
-                        query.append("AND CAST(ob.materialCostsDeviation AS TEXT) LIKE '%").append(value).append("%' ");
+                        query.append("AND CAST(ob.materialCostsDeviation AS TEXT) LIKE :valueDeviation ");
                         break;
 
                     case PLANNED_COSTS_SUM:
-                        query.append("AND CAST(ob.plannedProductionCosts AS TEXT) LIKE '%").append(value).append("%' ");
+                        query.append("AND CAST(ob.plannedProductionCosts AS TEXT) LIKE :plannedCostsSum ");
                         break;
 
                     case REAL_COSTS_SUM:
-                        query.append("AND CAST(ob.productionCosts AS TEXT) LIKE '%").append(value).append("%' ");
+                        query.append("AND CAST(ob.productionCosts AS TEXT) LIKE :realCostsSum ");
                         break;
 
                     case SUM_COSTS_DEVIATION:
-                        query.append("AND CAST(ob.productionCostsDeviation AS TEXT) LIKE '%").append(value).append("%' ");
+                        query.append("AND CAST(ob.productionCostsDeviation AS TEXT) LIKE :sumCostsDeviation ");
                         break;
 
                     case TECHNICAL_PRODUCTION_COSTS:
-                        query.append("AND CAST(ob.technicalProductionCosts AS TEXT) LIKE '%").append(value).append("%' ");
+                        query.append("AND CAST(ob.technicalProductionCosts AS TEXT) LIKE :technicalProductionCosts ");
                         break;
 
                     case TOTAL_COSTS:
-                        query.append("AND CAST(ob.totalCosts AS TEXT) LIKE '%").append(value).append("%' ");
+                        query.append("AND CAST(ob.totalCosts AS TEXT) LIKE :totalCosts ");
                         break;
 
                     case REGISTRATION_PRICE:
-                        query.append("AND CAST(ob.registrationPrice AS TEXT) LIKE '%").append(value).append("%' ");
+                        query.append("AND CAST(ob.registrationPrice AS TEXT) LIKE :registrationPrice ");
                         break;
 
                     case REAL_PRODUCTION_COSTS:
-                        query.append("AND CAST(ob.realProductionCosts AS TEXT) LIKE '%").append(value).append("%' ");
+                        query.append("AND CAST(ob.realProductionCosts AS TEXT) LIKE :realProductionCosts ");
                         break;
 
                     case TOTAL_MANUFACTURING_COST:
-                        query.append("AND CAST(ob.totalManufacturingCost AS TEXT) LIKE '%").append(value).append("%' ");
+                        query.append("AND CAST(ob.totalManufacturingCost AS TEXT) LIKE :totalManufacturingCost ");
                         break;
 
                     case SELL_PRICE:
-                        query.append("AND CAST(ob.sellPrice AS TEXT) LIKE '%").append(value).append("%' ");
+                        query.append("AND CAST(ob.sellPrice AS TEXT) LIKE :sellPrice ");
                         break;
+
+                    default:
+                        continue;
                 }
+
+                parameters.put(key, "%" + value + "%");
             }
         }
     }
 
     private void appendSort(final String sortColumn, final boolean sortAsc, final StringBuilder query) {
         if (!sortColumn.isEmpty()) {
-            query.append("ORDER BY \"").append(sortColumn);
+            query.append("ORDER BY \"").append(sortColumn.replace("\"", "\"\""));
 
             if (sortAsc) {
                 query.append("\" ASC");
@@ -37,12 +37,10 @@ import com.google.common.collect.Lists;
 import com.qcadoo.mes.orders.constants.OrdersConstants;
 import com.qcadoo.mes.productionCounting.ProductionCountingService;
 import com.qcadoo.mes.productionCounting.constants.ProductionBalanceFields;
-import com.qcadoo.mes.productionCounting.constants.ProductionCountingConstants;
 import com.qcadoo.mes.productionCounting.xls.ProductionBalanceXlsService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.file.FileService;
 import com.qcadoo.model.api.search.SearchRestrictions;
-import com.qcadoo.report.api.ReportService;
 import com.qcadoo.security.api.SecurityService;
 import com.qcadoo.view.api.ComponentState;
 import com.qcadoo.view.api.ComponentState.MessageType;
@@ -60,9 +58,6 @@ public class ProductionBalanceDetailsListeners {
     @Autowired
     private FileService fileService;
 
-    @Autowired
-    private ReportService reportService;
-
     @Autowired
     private ProductionCountingService productionCountingService;
 
@@ -120,16 +115,30 @@ public class ProductionBalanceDetailsListeners {
                 localePrefix);
 
         try {
-            productionBalanceXlsService.generateDocument(productionBalanceWithFileName, locale);
-
+            productionBalanceXlsService.generateXlsxDocument(productionBalanceWithFileName, locale);
         } catch (IOException e) {
             throw new IllegalStateException("Problem with saving productionBalance report", e);
         }
     }
 
     public void printProductionBalance(final ViewDefinitionState view, final ComponentState state, final String[] args) {
-        reportService.printGeneratedReport(view, state, new String[] { args[0], ProductionCountingConstants.PLUGIN_IDENTIFIER,
-                ProductionCountingConstants.MODEL_PRODUCTION_BALANCE });
+        Long productionBalanceId = (Long) state.getFieldValue();
+
+        if (productionBalanceId == null) {
+            state.addMessage("qcadooView.message.entityNotFound", MessageType.FAILURE);
+
+            return;
+        }
+
+        Entity productionBalance = productionCountingService.getProductionBalance(productionBalanceId);
+
+        if (StringUtils.isEmpty(productionBalance.getStringField(ProductionBalanceFields.FILE_NAME))) {
+            state.addMessage("qcadooReport.errorMessage.documentsWasNotGenerated", MessageType.FAILURE);
+
+            return;
+        }
+
+        view.redirectTo("/productionCounting/productionBalanceReport?id=" + productionBalanceId, true, false);
     }
 
     public final void addAllRelatedOrders(final ViewDefinitionState view, final ComponentState state, final String[] args) {
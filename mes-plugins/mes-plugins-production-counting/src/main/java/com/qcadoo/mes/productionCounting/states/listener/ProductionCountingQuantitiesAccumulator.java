@@ -0,0 +1,192 @@
+package com.qcadoo.mes.productionCounting.states.listener;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.basicProductionCounting.constants.ProductionCountingQuantityRole;
+import com.qcadoo.mes.basicProductionCounting.constants.ProductionCountingQuantityTypeOfMaterial;
+
+/**
+ * Production counting quantities and basic production countings of one order, loaded once and locked until the end of
+ * transaction, so concurrent acceptances of trackings of the same order are applied one after another. Quantities are changed in
+ * memory and only the changed rows are written back, with one batch update per table, which increments their entity version
+ * as saving them through data definition would.
+ */
+class ProductionCountingQuantitiesAccumulator {
+
+    private static final String PRODUCTION_COUNTING_QUANTITIES_QUERY = "SELECT id, product_id, role, typeofmaterial, "
+            + "technologyoperationcomponent_id, plannedquantity, usedquantity, producedquantity "
+            + "FROM basicproductioncounting_productioncountingquantity WHERE order_id = :orderId ORDER BY id FOR UPDATE";
+
+    private static final String BASIC_PRODUCTION_COUNTINGS_QUERY = "SELECT id, product_id, usedquantity, producedquantity "
+            + "FROM basicproductioncounting_basicproductioncounting WHERE order_id = :orderId ORDER BY id FOR UPDATE";
+
+    private static final String UPDATE_PRODUCTION_COUNTING_QUANTITY = "UPDATE basicproductioncounting_productioncountingquantity "
+            + "SET usedquantity = :usedQuantity, producedquantity = :producedQuantity, entityversion = entityversion + 1 "
+            + "WHERE id = :id";
+
+    private static final String UPDATE_BASIC_PRODUCTION_COUNTING = "UPDATE basicproductioncounting_basicproductioncounting "
+            + "SET usedquantity = :usedQuantity, producedquantity = :producedQuantity, entityversion = entityversion + 1 "
+            + "WHERE id = :id";
+
+    private static final List<String> IN_TYPES_OF_MATERIAL = Lists.newArrayList(
+            ProductionCountingQuantityTypeOfMaterial.COMPONENT.getStringValue(),
+            ProductionCountingQuantityTypeOfMaterial.INTERMEDIATE.getStringValue());
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    private final List<Quantity> productionCountingQuantities;
+
+    private final List<Quantity> basicProductionCountings;
+
+    private ProductionCountingQuantitiesAccumulator(final NamedParameterJdbcTemplate jdbcTemplate,
+            final List<Quantity> productionCountingQuantities, final List<Quantity> basicProductionCountings) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.productionCountingQuantities = productionCountingQuantities;
+        this.basicProductionCountings = basicProductionCountings;
+    }
+
+    static ProductionCountingQuantitiesAccumulator load(final NamedParameterJdbcTemplate jdbcTemplate, final Long orderId) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource("orderId", orderId);
+
+        List<Quantity> basicProductionCountings = jdbcTemplate.query(BASIC_PRODUCTION_COUNTINGS_QUERY, parameters,
+                (rs, rowNum) -> new Quantity(rs.getLong("id"), rs.getLong("product_id"), null, null, null, null,
+                        rs.getBigDecimal("usedquantity"), rs.getBigDecimal("producedquantity")));
+        List<Quantity> productionCountingQuantities = jdbcTemplate.query(PRODUCTION_COUNTING_QUANTITIES_QUERY, parameters,
+                (rs, rowNum) -> new Quantity(rs.getLong("id"), rs.getLong("product_id"), rs.getString("role"),
+                        rs.getString("typeofmaterial"), getNullableLong(rs, "technologyoperationcomponent_id"),
+                        rs.getBigDecimal("plannedquantity"), rs.getBigDecimal("usedquantity"),
+                        rs.getBigDecimal("producedquantity")));
+
+        return new ProductionCountingQuantitiesAccumulator(jdbcTemplate, productionCountingQuantities, basicProductionCountings);
+    }
+
+    private static Long getNullableLong(final ResultSet rs, final String column) throws SQLException {
+        long value = rs.getLong(column);
+
+        return rs.wasNull() ? null : value;
+    }
+
+    List<Quantity> getInProductionCountingQuantities(final Long productId, final Long technologyOperationComponentId,
+            final boolean isForEach) {
+        return productionCountingQuantities.stream()
+                .filter(quantity -> ProductionCountingQuantityRole.USED.getStringValue().equals(quantity.role)
+                        && IN_TYPES_OF_MATERIAL.contains(quantity.typeOfMaterial) && quantity.productId.equals(productId)
+                        && matchesTechnologyOperationComponent(quantity, technologyOperationComponentId, isForEach))
+                .collect(Collectors.toList());
+    }
+
+    Optional<Quantity> getOutProductionCountingQuantity(final Long productId, final Long technologyOperationComponentId,
+            final boolean isForEach) {
+        return productionCountingQuantities.stream()
+                .filter(quantity -> ProductionCountingQuantityRole.PRODUCED.getStringValue().equals(quantity.role)
+                        && quantity.productId.equals(productId)
+                        && matchesTechnologyOperationComponent(quantity, technologyOperationComponentId, isForEach))
+                .findFirst();
+    }
+
+    Optional<Quantity> getBasicProductionCounting(final Long productId) {
+        return basicProductionCountings.stream().filter(quantity -> quantity.productId.equals(productId)).findFirst();
+    }
+
+    private boolean matchesTechnologyOperationComponent(final Quantity quantity, final Long technologyOperationComponentId,
+            final boolean isForEach) {
+        return !isForEach || Objects.isNull(technologyOperationComponentId)
+                || technologyOperationComponentId.equals(quantity.technologyOperationComponentId);
+    }
+
+    void flush() {
+        write(UPDATE_PRODUCTION_COUNTING_QUANTITY, productionCountingQuantities);
+        write(UPDATE_BASIC_PRODUCTION_COUNTING, basicProductionCountings);
+    }
+
+    private void write(final String update, final List<Quantity> quantities) {
+        List<SqlParameterSource> updates = Lists.newArrayList();
+
+        for (Quantity quantity : quantities) {
+            if (quantity.changed) {
+                MapSqlParameterSource parameters = new MapSqlParameterSource();
+
+                parameters.addValue("id", quantity.id);
+                parameters.addValue("usedQuantity", quantity.usedQuantity);
+                parameters.addValue("producedQuantity", quantity.producedQuantity);
+
+                updates.add(parameters);
+
+                quantity.changed = false;
+            }
+        }
+
+        if (!updates.isEmpty()) {
+            jdbcTemplate.batchUpdate(update, updates.toArray(new SqlParameterSource[0]));
+        }
+    }
+
+    static class Quantity {
+
+        private final Long id;
+
+        private final Long productId;
+
+        private final String role;
+
+        private final String typeOfMaterial;
+
+        private final Long technologyOperationComponentId;
+
+        private final BigDecimal plannedQuantity;
+
+        private BigDecimal usedQuantity;
+
+        private BigDecimal producedQuantity;
+
+        private boolean changed;
+
+        private Quantity(final Long id, final Long productId, final String role, final String typeOfMaterial,
+                final Long technologyOperationComponentId, final BigDecimal plannedQuantity, final BigDecimal usedQuantity,
+                final BigDecimal producedQuantity) {
+            this.id = id;
+            this.productId = productId;
+            this.role = role;
+            this.typeOfMaterial = typeOfMaterial;
+            this.technologyOperationComponentId = technologyOperationComponentId;
+            this.plannedQuantity = plannedQuantity;
+            this.usedQuantity = usedQuantity;
+            this.producedQuantity = producedQuantity;
+        }
+
+        BigDecimal getPlannedQuantity() {
+            return plannedQuantity;
+        }
+
+        BigDecimal getUsedQuantity() {
+            return usedQuantity;
+        }
+
+        void setUsedQuantity(final BigDecimal usedQuantity) {
+            this.usedQuantity = usedQuantity;
+            this.changed = true;
+        }
+
+        BigDecimal getProducedQuantity() {
+            return producedQuantity;
+        }
+
+        void setProducedQuantity(final BigDecimal producedQuantity) {
+            this.producedQuantity = producedQuantity;
+            this.changed = true;
+        }
+
+    }
+
+}
@@ -28,11 +28,6 @@ import com.qcadoo.localization.api.TranslationService;
 import com.qcadoo.mes.basic.ParameterService;
 import com.qcadoo.mes.basic.constants.ProductFields;
 import com.qcadoo.mes.basicProductionCounting.BasicProductionCountingService;
-import com.qcadoo.mes.basicProductionCounting.constants.BasicProductionCountingFields;
-import com.qcadoo.mes.basicProductionCounting.constants.OrderFieldsBPC;
-import com.qcadoo.mes.basicProductionCounting.constants.ProductionCountingQuantityFields;
-import com.qcadoo.mes.basicProductionCounting.constants.ProductionCountingQuantityRole;
-import com.qcadoo.mes.basicProductionCounting.constants.ProductionCountingQuantityTypeOfMaterial;
 import com.qcadoo.mes.orders.constants.OrderFields;
 import com.qcadoo.mes.orders.constants.OrdersConstants;
 import com.qcadoo.mes.orders.hooks.OrderHooks;
@@ -40,6 +35,7 @@ import com.qcadoo.mes.orders.states.aop.OrderStateChangeAspect;
 import com.qcadoo.mes.orders.states.constants.OrderState;
 import com.qcadoo.mes.productionCounting.ProductionCountingService;
 import com.qcadoo.mes.productionCounting.ProductionTrackingService;
+import com.qcadoo.mes.productionCounting.analysis.ProductionAnalysisFactsService;
 import com.qcadoo.mes.productionCounting.constants.OrderFieldsPC;
 import com.qcadoo.mes.productionCounting.constants.ParameterFieldsPC;
 import com.qcadoo.mes.productionCounting.constants.ProductionTrackingFields;
@@ -48,6 +44,7 @@ import com.qcadoo.mes.productionCounting.constants.TrackingOperationProductInCom
 import com.qcadoo.mes.productionCounting.constants.TrackingOperationProductOutComponentFields;
 import com.qcadoo.mes.productionCounting.constants.TypeOfProductionRecording;
 import com.qcadoo.mes.productionCounting.states.constants.ProductionTrackingStateStringValues;
+import com.qcadoo.mes.productionCounting.states.listener.ProductionCountingQuantitiesAccumulator.Quantity;
 import com.qcadoo.mes.productionCounting.utils.OrderClosingHelper;
 import com.qcadoo.mes.states.StateChangeContext;
 import com.qcadoo.mes.states.constants.StateChangeStatus;
@@ -64,11 +61,13 @@ import com.qcadoo.model.api.validators.ErrorMessage;
 import java.math.BigDecimal;
 import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 import static com.qcadoo.mes.basicProductionCounting.constants.BasicProductionCountingFields.ORDER;
 import static com.qcadoo.mes.orders.constants.OrderFields.STATE;
@@ -117,6 +116,12 @@ public final class ProductionTrackingListenerService {
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ProductionAnalysisFactsService productionAnalysisFactsService;
+
     public void onChangeFromDraftToAny(final Entity productionTracking) {
         productionTracking.setField(ProductionTrackingFields.LAST_STATE_CHANGE_FAILS, false);
         productionTracking.setField(ProductionTrackingFields.LAST_STATE_CHANGE_FAIL_CAUSE, null);
@@ -180,14 +185,23 @@ public final class ProductionTrackingListenerService {
     }
 
     public void onAccept(final Entity productionTracking) {
-        updateBasicProductionCounting(productionTracking, new Addition());
-        updateProductionCountingQuantity(productionTracking, new Addition());
+        ProductionCountingQuantitiesAccumulator accumulator = loadProductionCountingQuantities(productionTracking);
+
+        addTrackedQuantities(productionTracking, accumulator);
+        accumulator.flush();
+        productionAnalysisFactsService.addProductionTracking(productionTracking);
+
         setOrderDoneAndWastesQuantity(productionTracking, new Addition());
         closeOrder(productionTracking);
     }
 
     public void onChangeFromAcceptedToDeclined(final Entity productionTracking) {
-        updateBasicProductionCounting(productionTracking, new Substraction());
+        ProductionCountingQuantitiesAccumulator accumulator = loadProductionCountingQuantities(productionTracking);
+
+        subtractDeclinedQuantities(productionTracking, accumulator);
+        accumulator.flush();
+        productionAnalysisFactsService.removeProductionTracking(productionTracking);
+
         setOrderDoneAndWastesQuantity(productionTracking, new Substraction());
         fillOrderReportedQuantity(productionTracking, new Substraction());
     }
@@ -395,57 +409,71 @@ public final class ProductionTrackingListenerService {
         return orderWastesQuantity;
     }
 
-    private void updateProductionCountingQuantitySubtraction(Entity productionTracking, Operation operation) {
+    void addTrackedQuantities(final Entity productionTracking, final ProductionCountingQuantitiesAccumulator accumulator) {
+        updateBasicProductionCounting(productionTracking, new Addition(), accumulator);
+        updateProductionCountingQuantity(productionTracking, new Addition(), accumulator);
+    }
+
+    void subtractDeclinedQuantities(final Entity productionTracking,
+            final ProductionCountingQuantitiesAccumulator accumulator) {
+        updateBasicProductionCounting(productionTracking, new Substraction(), accumulator);
+    }
+
+    void subtractCorrectedQuantities(final Entity productionTracking,
+            final ProductionCountingQuantitiesAccumulator accumulator) {
+        updateBasicProductionCounting(productionTracking, new Substraction(), accumulator);
+        updateProductionCountingQuantitySubtraction(productionTracking, new Substraction(), accumulator);
+    }
+
+    private void updateProductionCountingQuantitySubtraction(Entity productionTracking, Operation operation,
+            final ProductionCountingQuantitiesAccumulator accumulator) {
         final Entity order = productionTracking.getBelongsToField(ProductionTrackingFields.ORDER);
         String typeOfProductionRecording = order.getStringField(OrderFieldsPC.TYPE_OF_PRODUCTION_RECORDING);
 
         boolean isForEach = TypeOfProductionRecording.FOR_EACH.getStringValue().equals(typeOfProductionRecording);
         Entity technologyOperationComponent = productionTracking
                 .getBelongsToField(ProductionTrackingFields.TECHNOLOGY_OPERATION_COMPONENT);
+        Long technologyOperationComponentId = Objects.isNull(technologyOperationComponent) ? null
+                : technologyOperationComponent.getId();
         final List<Entity> trackingOperationProductInComponents = productionTracking
                 .getHasManyField(ProductionTrackingFields.TRACKING_OPERATION_PRODUCT_IN_COMPONENTS);
         final List<Entity> trackingOperationProductOutComponents = productionTracking
                 .getHasManyField(ProductionTrackingFields.TRACKING_OPERATION_PRODUCT_OUT_COMPONENTS);
 
         trackingOperationProductInComponents.forEach(trackingOperationProductInComponent -> {
-            List<Entity> productionCountingQuantities = getInProductionCountingQuantities(trackingOperationProductInComponent,
-                    order, technologyOperationComponent, isForEach);
+            List<Quantity> productionCountingQuantities = accumulator.getInProductionCountingQuantities(
+                    getProductId(trackingOperationProductInComponent), technologyOperationComponentId, isForEach);
 
             if (productionCountingQuantities.isEmpty()) {
                 return;
             }
 
             if (productionCountingQuantities.size() == 1) {
-                Entity pcq = productionCountingQuantities.get(0);
-                final BigDecimal usedQuantity = BigDecimalUtils.convertNullToZero(pcq
-                        .getDecimalField(ProductionCountingQuantityFields.USED_QUANTITY));
+                Quantity pcq = productionCountingQuantities.get(0);
+                final BigDecimal usedQuantity = BigDecimalUtils.convertNullToZero(pcq.getUsedQuantity());
                 final BigDecimal productQuantity = BigDecimalUtils.convertNullToZero(trackingOperationProductInComponent
                         .getDecimalField(TrackingOperationProductInComponentFields.USED_QUANTITY));
 
                 final BigDecimal result = operation.perform(usedQuantity, productQuantity);
 
-                pcq.setField(ProductionCountingQuantityFields.USED_QUANTITY, result);
-                pcq.getDataDefinition().save(pcq);
+                pcq.setUsedQuantity(result);
             } else {
 
                 BigDecimal productQuantity = BigDecimalUtils.convertNullToZero(trackingOperationProductInComponent
                         .getDecimalField(TrackingOperationProductInComponentFields.USED_QUANTITY));
 
                 for (int i = productionCountingQuantities.size() - 1; i >= 0; i--) {
-                    Entity pcq = productionCountingQuantities.get(i);
-                    final BigDecimal usedQuantity = BigDecimalUtils.convertNullToZero(pcq
-                            .getDecimalField(ProductionCountingQuantityFields.USED_QUANTITY));
+                    Quantity pcq = productionCountingQuantities.get(i);
+                    final BigDecimal usedQuantity = BigDecimalUtils.convertNullToZero(pcq.getUsedQuantity());
 
                     if (usedQuantity.compareTo(BigDecimal.ZERO) > 0 && productQuantity.compareTo(BigDecimal.ZERO) > 0) {
                         if (usedQuantity.compareTo(productQuantity) <= 0) {
 
-                            pcq.setField(ProductionCountingQuantityFields.USED_QUANTITY, BigDecimal.ZERO);
-                            pcq.getDataDefinition().save(pcq);
+                            pcq.setUsedQuantity(BigDecimal.ZERO);
                             productQuantity = productQuantity.subtract(usedQuantity, numberService.getMathContext());
                         } else {
                             final BigDecimal result = operation.perform(usedQuantity, productQuantity);
-                            pcq.setField(ProductionCountingQuantityFields.USED_QUANTITY, result);
-                            pcq.getDataDefinition().save(pcq);
+                            pcq.setUsedQuantity(result);
                             productQuantity = productQuantity.subtract(productQuantity, numberService.getMathContext());
                         }
                     }
@@ -456,29 +484,31 @@ public final class ProductionTrackingListenerService {
 
         trackingOperationProductOutComponents.forEach(trackingOperationProductOutComponent -> {
 
-            Entity productionCountingQuantity = getOutProductionCountingQuantity(trackingOperationProductOutComponent, order,
-                    technologyOperationComponent, isForEach);
-            if (productionCountingQuantity == null) {
+            Optional<Quantity> maybeProductionCountingQuantity = accumulator.getOutProductionCountingQuantity(
+                    getProductId(trackingOperationProductOutComponent), technologyOperationComponentId, isForEach);
+            if (!maybeProductionCountingQuantity.isPresent()) {
                 return;
             }
-            final BigDecimal usedQuantity = BigDecimalUtils.convertNullToZero(productionCountingQuantity
-                    .getDecimalField(ProductionCountingQuantityFields.PRODUCED_QUANTITY));
+            Quantity productionCountingQuantity = maybeProductionCountingQuantity.get();
+            final BigDecimal usedQuantity = BigDecimalUtils.convertNullToZero(productionCountingQuantity.getProducedQuantity());
             final BigDecimal productQuantity = BigDecimalUtils.convertNullToZero(trackingOperationProductOutComponent
                     .getDecimalField(TrackingOperationProductOutComponentFields.USED_QUANTITY));
             final BigDecimal result = operation.perform(usedQuantity, productQuantity);
-            productionCountingQuantity.setField(ProductionCountingQuantityFields.PRODUCED_QUANTITY, result);
-            productionCountingQuantity.getDataDefinition().save(productionCountingQuantity);
+            productionCountingQuantity.setProducedQuantity(result);
         });
 
     }
 
-    private void updateProductionCountingQuantity(final Entity productionTracking, final Operation operation) {
+    private void updateProductionCountingQuantity(final Entity productionTracking, final Operation operation,
+            final ProductionCountingQuantitiesAccumulator accumulator) {
         final Entity order = productionTracking.getBelongsToField(ProductionTrackingFields.ORDER);
         String typeOfProductionRecording = order.getStringField(OrderFieldsPC.TYPE_OF_PRODUCTION_RECORDING);
         boolean isForEach = TypeOfProductionRecording.FOR_EACH.getStringValue().equals(typeOfProductionRecording);
 
         Entity technologyOperationComponent = productionTracking
                 .getBelongsToField(ProductionTrackingFields.TECHNOLOGY_OPERATION_COMPONENT);
+        Long technologyOperationComponentId = Objects.isNull(technologyOperationComponent) ? null
+                : technologyOperationComponent.getId();
 
         final List<Entity> trackingOperationProductInComponents = productionTracking
                 .getHasManyField(ProductionTrackingFields.TRACKING_OPERATION_PRODUCT_IN_COMPONENTS);
@@ -486,41 +516,36 @@ public final class ProductionTrackingListenerService {
                 .getHasManyField(ProductionTrackingFields.TRACKING_OPERATION_PRODUCT_OUT_COMPONENTS);
 
         trackingOperationProductInComponents.forEach(trackingOperationProductInComponent -> {
-            List<Entity> productionCountingQuantities = getInProductionCountingQuantities(trackingOperationProductInComponent,
-                    order, technologyOperationComponent, isForEach);
+            List<Quantity> productionCountingQuantities = accumulator.getInProductionCountingQuantities(
+                    getProductId(trackingOperationProductInComponent), technologyOperationComponentId, isForEach);
 
             if (productionCountingQuantities.isEmpty()) {
                 return;
             }
 
             if (productionCountingQuantities.size() == 1) {
-                Entity pcq = productionCountingQuantities.get(0);
-                final BigDecimal usedQuantity = BigDecimalUtils.convertNullToZero(pcq
-                        .getDecimalField(ProductionCountingQuantityFields.USED_QUANTITY));
+                Quantity pcq = productionCountingQuantities.get(0);
+                final BigDecimal usedQuantity = BigDecimalUtils.convertNullToZero(pcq.getUsedQuantity());
                 final BigDecimal productQuantity = BigDecimalUtils.convertNullToZero(trackingOperationProductInComponent
                         .getDecimalField(TrackingOperationProductInComponentFields.USED_QUANTITY));
 
                 final BigDecimal result = operation.perform(usedQuantity, productQuantity);
 
-                pcq.setField(ProductionCountingQuantityFields.USED_QUANTITY, result);
-                pcq = pcq.getDataDefinition().save(pcq);
-                pcq.isValid();
+                pcq.setUsedQuantity(result);
             } else {
                 int lastIndex = productionCountingQuantities.size() - 1;
                 BigDecimal productQuantity = BigDecimalUtils.convertNullToZero(trackingOperationProductInComponent
                         .getDecimalField(TrackingOperationProductInComponentFields.USED_QUANTITY));
 
                 for (int i = 0; i < productionCountingQuantities.size(); i++) {
-                    Entity pcq = productionCountingQuantities.get(i);
-                    final BigDecimal usedQuantity = BigDecimalUtils.convertNullToZero(pcq
-                            .getDecimalField(ProductionCountingQuantityFields.USED_QUANTITY));
-                    final BigDecimal plannedQuantity = pcq.getDecimalField(ProductionCountingQuantityFields.PLANNED_QUANTITY);
+                    Quantity pcq = productionCountingQuantities.get(i);
+                    final BigDecimal usedQuantity = BigDecimalUtils.convertNullToZero(pcq.getUsedQuantity());
+                    final BigDecimal plannedQuantity = pcq.getPlannedQuantity();
 
                     if (i == lastIndex) {
 
                         final BigDecimal result = operation.perform(usedQuantity, productQuantity);
-                        pcq.setField(ProductionCountingQuantityFields.USED_QUANTITY, result);
-                        pcq = pcq.getDataDefinition().save(pcq);
+                        pcq.setUsedQuantity(result);
                         productQuantity = productQuantity.subtract(productQuantity, numberService.getMathContext());
 
                     } else {
@@ -532,14 +557,12 @@ public final class ProductionTrackingListenerService {
 
                                 if (diff.compareTo(productQuantity) >= 0) {
                                     final BigDecimal result = operation.perform(usedQuantity, productQuantity);
-                                    pcq.setField(ProductionCountingQuantityFields.USED_QUANTITY, result);
-                                    pcq = pcq.getDataDefinition().save(pcq);
+                                    pcq.setUsedQuantity(result);
                                     productQuantity = productQuantity.subtract(productQuantity, numberService.getMathContext());
 
                                 } else {
                                     final BigDecimal result = operation.perform(usedQuantity, diff);
-                                    pcq.setField(ProductionCountingQuantityFields.USED_QUANTITY, result);
-                                    pcq = pcq.getDataDefinition().save(pcq);
+                                    pcq.setUsedQuantity(result);
                                     productQuantity = productQuantity.subtract(diff, numberService.getMathContext());
                                 }
                             }
@@ -553,61 +576,66 @@ public final class ProductionTrackingListenerService {
 
         trackingOperationProductOutComponents.forEach(trackingOperationProductOutComponent -> {
 
-            Entity productionCountingQuantity = getOutProductionCountingQuantity(trackingOperationProductOutComponent, order,
-                    technologyOperationComponent, isForEach);
-            if (productionCountingQuantity == null) {
+            Optional<Quantity> maybeProductionCountingQuantity = accumulator.getOutProductionCountingQuantity(
+                    getProductId(trackingOperationProductOutComponent), technologyOperationComponentId, isForEach);
+            if (!maybeProductionCountingQuantity.isPresent()) {
                 return;
             }
-            final BigDecimal usedQuantity = BigDecimalUtils.convertNullToZero(productionCountingQuantity
-                    .getDecimalField(ProductionCountingQuantityFields.PRODUCED_QUANTITY));
+            Quantity productionCountingQuantity = maybeProductionCountingQuantity.get();
+            final BigDecimal usedQuantity = BigDecimalUtils.convertNullToZero(productionCountingQuantity.getProducedQuantity());
             final BigDecimal productQuantity = BigDecimalUtils.convertNullToZero(trackingOperationProductOutComponent
                     .getDecimalField(TrackingOperationProductOutComponentFields.USED_QUANTITY));
             final BigDecimal result = operation.perform(usedQuantity, productQuantity);
-            productionCountingQuantity.setField(ProductionCountingQuantityFields.PRODUCED_QUANTITY, result);
-            productionCountingQuantity.getDataDefinition().save(productionCountingQuantity);
+            productionCountingQuantity.setProducedQuantity(result);
         });
 
     }
 
-    private void updateBasicProductionCounting(final Entity productionTracking, final Operation operation) {
-        final Entity order = productionTracking.getBelongsToField(ProductionTrackingFields.ORDER);
-
+    private void updateBasicProductionCounting(final Entity productionTracking, final Operation operation,
+            final ProductionCountingQuantitiesAccumulator accumulator) {
         final List<Entity> trackingOperationProductInComponents = productionTracking
                 .getHasManyField(ProductionTrackingFields.TRACKING_OPERATION_PRODUCT_IN_COMPONENTS);
         final List<Entity> trackingOperationProductOutComponents = productionTracking
                 .getHasManyField(ProductionTrackingFields.TRACKING_OPERATION_PRODUCT_OUT_COMPONENTS);
 
         trackingOperationProductInComponents.forEach(trackingOperationProductInComponent -> {
-            Entity basicProductionCounting = getBasicProductionCounting(trackingOperationProductInComponent, order);
+            Optional<Quantity> maybeBasicProductionCounting = accumulator
+                    .getBasicProductionCounting(getProductId(trackingOperationProductInComponent));
 
-            if (basicProductionCounting == null) {
+            if (!maybeBasicProductionCounting.isPresent()) {
                 return;
             }
 
-            final BigDecimal usedQuantity = basicProductionCounting.getDecimalField(BasicProductionCountingFields.USED_QUANTITY);
+            Quantity basicProductionCounting = maybeBasicProductionCounting.get();
+
+            final BigDecimal usedQuantity = basicProductionCounting.getUsedQuantity();
             final BigDecimal productQuantity = trackingOperationProductInComponent
                     .getDecimalField(TrackingOperationProductInComponentFields.USED_QUANTITY);
             final BigDecimal result = operation.perform(usedQuantity, productQuantity);
 
-            basicProductionCounting.setField(BasicProductionCountingFields.USED_QUANTITY, result);
-            basicProductionCounting.getDataDefinition().save(basicProductionCounting);
+            if (result.signum() >= 0) {
+                basicProductionCounting.setUsedQuantity(result);
+            }
         });
 
         trackingOperationProductOutComponents.forEach(trackingOperationProductOutComponent -> {
-            Entity basicProductionCounting = getBasicProductionCounting(trackingOperationProductOutComponent, order);
+            Optional<Quantity> maybeBasicProductionCounting = accumulator
+                    .getBasicProductionCounting(getProductId(trackingOperationProductOutComponent));
 
-            if (basicProductionCounting == null) {
+            if (!maybeBasicProductionCounting.isPresent()) {
                 return;
             }
 
-            final BigDecimal usedQuantity = basicProductionCounting
-                    .getDecimalField(BasicProductionCountingFields.PRODUCED_QUANTITY);
+            Quantity basicProductionCounting = maybeBasicProductionCounting.get();
+
+            final BigDecimal usedQuantity = basicProductionCounting.getProducedQuantity();
             final BigDecimal productQuantity = trackingOperationProductOutComponent
                     .getDecimalField(TrackingOperationProductOutComponentFields.USED_QUANTITY);
             final BigDecimal result = operation.perform(usedQuantity, productQuantity);
 
-            basicProductionCounting.setField(BasicProductionCountingFields.PRODUCED_QUANTITY, result);
-            basicProductionCounting.getDataDefinition().save(basicProductionCounting);
+            if (result.signum() >= 0) {
+                basicProductionCounting.setProducedQuantity(result);
+            }
         });
     }
 
@@ -653,57 +681,22 @@ public final class ProductionTrackingListenerService {
         }
     }
 
-    private Entity getBasicProductionCounting(final Entity trackingOperationProductComponent, final Entity order) {
-        Entity product = trackingOperationProductComponent.getBelongsToField(L_PRODUCT);
-
-        return order.getHasManyField(OrderFieldsBPC.BASIC_PRODUCTION_COUNTINGS).find()
-                .add(SearchRestrictions.belongsTo(BasicProductionCountingFields.PRODUCT, product)).setMaxResults(1)
-                .uniqueResult();
+    private Long getProductId(final Entity trackingOperationProductComponent) {
+        return trackingOperationProductComponent.getBelongsToField(L_PRODUCT).getId();
     }
 
-    private List<Entity> getInProductionCountingQuantities(Entity trackingOperationProductComponent, Entity order,
-            Entity technologyOperationComponent, boolean isForEach) {
-        Entity product = trackingOperationProductComponent.getBelongsToField(L_PRODUCT);
-
-        SearchCriteriaBuilder scb = order
-                .getHasManyField(OrderFieldsBPC.PRODUCTION_COUNTING_QUANTITIES)
-                .find()
-                .add(SearchRestrictions.eq(ProductionCountingQuantityFields.ROLE,
-                        ProductionCountingQuantityRole.USED.getStringValue()))
-                .add(SearchRestrictions.in(ProductionCountingQuantityFields.TYPE_OF_MATERIAL,
-                        Lists.newArrayList(ProductionCountingQuantityTypeOfMaterial.COMPONENT.getStringValue(),
-                                ProductionCountingQuantityTypeOfMaterial.INTERMEDIATE.getStringValue())))
-                .add(SearchRestrictions.belongsTo(ProductionCountingQuantityFields.PRODUCT, product));
-
-        if (isForEach && Objects.nonNull(technologyOperationComponent)) {
-            Entity toc = technologyOperationComponent.getDataDefinition().get(technologyOperationComponent.getId());
-            scb = scb.add(SearchRestrictions.belongsTo(ProductionCountingQuantityFields.TECHNOLOGY_OPERATION_COMPONENT, toc));
-        }
-
-        return scb.list().getEntities();
-
+    private ProductionCountingQuantitiesAccumulator loadProductionCountingQuantities(final Entity productionTracking) {
+        return ProductionCountingQuantitiesAccumulator.load(jdbcTemplate,
+                productionTracking.getBelongsToField(ProductionTrackingFields.ORDER).getId());
     }
 
-    private Entity getOutProductionCountingQuantity(Entity trackingOperationProductOutComponent, Entity order,
-            Entity technologyOperationComponent, boolean isForEach) {
-        Entity product = trackingOperationProductOutComponent.getBelongsToField(L_PRODUCT);
+    public void onCorrected(final Entity productionTracking) {
+        ProductionCountingQuantitiesAccumulator accumulator = loadProductionCountingQuantities(productionTracking);
 
-        SearchCriteriaBuilder scb = order
-                .getHasManyField(OrderFieldsBPC.PRODUCTION_COUNTING_QUANTITIES)
-                .find()
-                .add(SearchRestrictions.eq(ProductionCountingQuantityFields.ROLE,
-                        ProductionCountingQuantityRole.PRODUCED.getStringValue()))
-                .add(SearchRestrictions.belongsTo(ProductionCountingQuantityFields.PRODUCT, product));
-        if (isForEach && Objects.nonNull(technologyOperationComponent)) {
-            Entity toc = technologyOperationComponent.getDataDefinition().get(technologyOperationComponent.getId());
-            scb = scb.add(SearchRestrictions.belongsTo(ProductionCountingQuantityFields.TECHNOLOGY_OPERATION_COMPONENT, toc));
-        }
-        return scb.setMaxResults(1).uniqueResult();
-    }
+        subtractCorrectedQuantities(productionTracking, accumulator);
+        accumulator.flush();
+        productionAnalysisFactsService.removeProductionTracking(productionTracking);
 
-    public void onCorrected(final Entity productionTracking) {
-        updateBasicProductionCounting(productionTracking, new Substraction());
-        updateProductionCountingQuantitySubtraction(productionTracking, new Substraction());
         setOrderDoneAndWastesQuantity(productionTracking, new Substraction());
         fillOrderReportedQuantity(productionTracking, new Substraction());
     }
@@ -0,0 +1,119 @@
+package com.qcadoo.mes.productionCounting.xls;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.qcadoo.mes.basic.util.WorkerContextService;
+
+/**
+ * Runs independent production balance queries on a bounded pool, each in its own read-only transaction and in tenant of the
+ * generating thread, so they don't wait for each other nor for sheets written in the meantime by the generating thread.
+ *
+ * Every query has its own time budget, which is applied to its transaction, so statements exceeding it are cancelled by the
+ * database, and to waiting for its result.
+ */
+@Service
+class ProductionBalanceQueryExecutor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ProductionBalanceQueryExecutor.class);
+
+    @Value("${productionBalanceQueryThreads:4}")
+    private int threads;
+
+    private ExecutorService executorService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private WorkerContextService workerContextService;
+
+    @PostConstruct
+    void init() {
+        executorService = Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setNameFormat("production-balance-query-%d").setDaemon(true).build());
+    }
+
+    <T> PendingQuery<T> submit(final String name, final int timeBudgetInSeconds, final Supplier<T> query) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+        transactionTemplate.setReadOnly(true);
+        transactionTemplate.setTimeout(timeBudgetInSeconds);
+
+        Future<T> future = executorService.submit(workerContextService.wrap(() -> {
+            long start = System.currentTimeMillis();
+
+            try {
+                return transactionTemplate.execute(status -> query.get());
+            } finally {
+                LOG.info("Production balance query {} took {}ms", name, System.currentTimeMillis() - start);
+            }
+        }));
+
+        return new PendingQuery<>(name, timeBudgetInSeconds, future);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executorService.shutdownNow();
+    }
+
+    static class PendingQuery<T> {
+
+        private final String name;
+
+        private final long deadline;
+
+        private final Future<T> future;
+
+        private PendingQuery(final String name, final int timeBudgetInSeconds, final Future<T> future) {
+            this.name = name;
+            this.deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeBudgetInSeconds);
+            this.future = future;
+        }
+
+        /**
+         * Waits for result of query for what's left of its time budget.
+         */
+        T get() {
+            try {
+                return future.get(Math.max(deadline - System.nanoTime(), 0L), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                future.cancel(true);
+
+                throw new IllegalStateException("Production balance query " + name + " exceeded its time budget", e);
+            } catch (InterruptedException e) {
+                future.cancel(true);
+                Thread.currentThread().interrupt();
+
+                throw new IllegalStateException("Interrupted while waiting for production balance query " + name, e);
+            } catch (ExecutionException | CancellationException e) {
+                throw new IllegalStateException("Production balance query " + name + " failed", e);
+            }
+        }
+
+        void cancel() {
+            future.cancel(true);
+        }
+
+    }
+
+}
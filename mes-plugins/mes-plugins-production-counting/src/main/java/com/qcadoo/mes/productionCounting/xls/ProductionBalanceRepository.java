@@ -1,13 +1,25 @@
 package com.qcadoo.mes.productionCounting.xls;
 
+import java.sql.PreparedStatement;
 import java.util.List;
+import java.util.function.Consumer;
 
 import com.qcadoo.mes.productionCounting.xls.dto.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.PreparedStatementCreatorFactory;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterUtils;
+import org.springframework.jdbc.core.namedparam.ParsedSql;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import com.qcadoo.mes.costCalculation.constants.MaterialCostsUsed;
 import com.qcadoo.mes.costCalculation.constants.SourceOfOperationCosts;
@@ -17,10 +29,51 @@ import com.qcadoo.model.api.Entity;
 @Repository
 class ProductionBalanceRepository {
 
+    private static final Logger LOG = LoggerFactory.getLogger(ProductionBalanceRepository.class);
+
+    private static final int L_FETCH_SIZE = 1000;
+
     @Autowired
     private NamedParameterJdbcTemplate jdbcTemplate;
 
-    List<ProducedQuantity> getProducedQuantities(final List<Long> ordersIds) {
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    /**
+     * Passes rows of query to consumer as they are fetched from database, in portions of {@link #L_FETCH_SIZE} rows, so they
+     * don't have to be kept in memory all at once. Query runs in read only transaction, as PostgreSQL driver uses cursor, and
+     * so fetch size, only when autocommit is off.
+     */
+    private <T> void stream(final String query, final List<Long> ordersIds, final Class<T> rowClass,
+            final Consumer<T> consumer) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource("ordersIds", ordersIds);
+        ParsedSql parsedSql = NamedParameterUtils.parseSqlStatement(query);
+        PreparedStatementCreator preparedStatementCreator = new PreparedStatementCreatorFactory(
+                NamedParameterUtils.substituteNamedParameters(parsedSql, parameters),
+                NamedParameterUtils.buildSqlParameterList(parsedSql, parameters))
+                        .newPreparedStatementCreator(NamedParameterUtils.buildValueArray(parsedSql, parameters, null));
+
+        RowMapper<T> rowMapper = BeanPropertyRowMapper.newInstance(rowClass);
+        long start = System.currentTimeMillis();
+
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setReadOnly(true);
+
+        transactionTemplate.execute(status -> {
+            jdbcTemplate.getJdbcOperations().query(connection -> {
+                PreparedStatement preparedStatement = preparedStatementCreator.createPreparedStatement(connection);
+                preparedStatement.setFetchSize(L_FETCH_SIZE);
+
+                return preparedStatement;
+            }, (RowCallbackHandler) rs -> consumer.accept(rowMapper.mapRow(rs, rs.getRow())));
+
+            return null;
+        });
+
+        LOG.info("Production balance query {} took {}ms", rowClass.getSimpleName(), System.currentTimeMillis() - start);
+    }
+
+    void streamProducedQuantities(final List<Long> ordersIds, final Consumer<ProducedQuantity> consumer) {
         StringBuilder query = new StringBuilder();
         query.append("SELECT ");
         query.append("o.number AS orderNumber, ");
@@ -58,12 +111,11 @@ class ProductionBalanceRepository {
         query.append("GROUP BY o.id, orderNumber, productNumber, productName, productUnit, prodWaste.producedWastes ");
         query.append("ORDER BY orderNumber ");
 
-        return jdbcTemplate.query(query.toString(), new MapSqlParameterSource("ordersIds", ordersIds),
-                BeanPropertyRowMapper.newInstance(ProducedQuantity.class));
+        stream(query.toString(), ordersIds, ProducedQuantity.class, consumer);
     }
 
 
-    public List<OrderProduct> getOrderProducts(List<Long> ordersIds) {
+    void streamOrderProducts(List<Long> ordersIds, final Consumer<OrderProduct> consumer) {
         StringBuilder query = new StringBuilder();
         query.append("SELECT \n" +
                 "o.number AS orderNumber,\n" +
@@ -80,8 +132,7 @@ class ProductionBalanceRepository {
                 "WHERE o.id IN (:ordersIds)  AND pcq.typeofmaterial::text = ANY (ARRAY['05additionalFinalProduct'::character varying::text, '03finalProduct'::character varying::text, '04waste'::character varying::text]) AND pcq.role::text = '02produced'::text \n ");
         query.append("ORDER BY orderNumber ");
 
-        return jdbcTemplate.query(query.toString(), new MapSqlParameterSource("ordersIds", ordersIds),
-                BeanPropertyRowMapper.newInstance(OrderProduct.class));
+        stream(query.toString(), ordersIds, OrderProduct.class, consumer);
     }
 
     private void appendProducedQuantity(StringBuilder query) {
@@ -293,7 +344,7 @@ class ProductionBalanceRepository {
         query.append("MIN(q.usedQuantity - q.childsQuantity) ");
     }
 
-    List<PieceworkDetails> getPieceworkDetails(List<Long> ordersIds) {
+    void streamPieceworkDetails(List<Long> ordersIds, final Consumer<PieceworkDetails> consumer) {
         StringBuilder query = new StringBuilder();
         query.append("SELECT ");
         query.append("o.number AS orderNumber, ");
@@ -345,8 +396,7 @@ class ProductionBalanceRepository {
         query.append("GROUP BY orderNumber, o.startdate, operationNumber, worker, pr.id, pieceRate ");
         query.append("ORDER BY orderNumber, operationNumber, worker ");
 
-        return jdbcTemplate.query(query.toString(), new MapSqlParameterSource("ordersIds", ordersIds),
-                BeanPropertyRowMapper.newInstance(PieceworkDetails.class));
+        stream(query.toString(), ordersIds, PieceworkDetails.class, consumer);
     }
 
     private void appendActualPieceRate(StringBuilder query) {
@@ -354,7 +404,7 @@ class ProductionBalanceRepository {
         query.append("AND pri.datefrom <= o.startdate ORDER BY pri.datefrom DESC LIMIT 1), 0) ");
     }
 
-    List<LaborTime> getLaborTime(List<Long> ordersIds) {
+    void streamLaborTime(List<Long> ordersIds, final Consumer<LaborTime> consumer) {
         StringBuilder query = new StringBuilder();
         query.append("SELECT ");
         query.append("o.number AS orderNumber, ");
@@ -377,11 +427,10 @@ class ProductionBalanceRepository {
                 "GROUP BY orderNumber, operationNumber, staffNumber, staffName, staffSurname, staffLaborHourlyCost, wageGroupName ");
         query.append("ORDER BY orderNumber, operationNumber, staffNumber ");
 
-        return jdbcTemplate.query(query.toString(), new MapSqlParameterSource("ordersIds", ordersIds),
-                BeanPropertyRowMapper.newInstance(LaborTime.class));
+        stream(query.toString(), ordersIds, LaborTime.class, consumer);
     }
 
-    List<LaborTimeDetails> getLaborTimeDetails(Entity entity, List<Long> ordersIds) {
+    void streamLaborTimeDetails(Entity entity, List<Long> ordersIds, final Consumer<LaborTimeDetails> consumer) {
         StringBuilder query = new StringBuilder();
         query.append("(WITH planned_time (order_id, staff_time, machine_time) AS (SELECT o.id AS orderId, ");
         appendPlannedStaffTime(entity, query);
@@ -491,8 +540,7 @@ class ProductionBalanceRepository {
         query.append("AND o.typeofproductionrecording = '03forEach') ");
         query.append("ORDER BY orderNumber, operationNumber, staffNumber ");
 
-        return jdbcTemplate.query(query.toString(), new MapSqlParameterSource("ordersIds", ordersIds),
-                BeanPropertyRowMapper.newInstance(LaborTimeDetails.class));
+        stream(query.toString(), ordersIds, LaborTimeDetails.class, consumer);
     }
 
     List<ProductionCost> getProductionCosts(Entity entity, List<Long> ordersIds) {
@@ -1326,7 +1374,7 @@ class ProductionBalanceRepository {
         query.append("FROM component_balance GROUP BY product_id) ");
     }
 
-    List<Stoppage> getStoppages(List<Long> ordersIds) {
+    void streamStoppages(List<Long> ordersIds, final Consumer<Stoppage> consumer) {
         StringBuilder query = new StringBuilder();
         query.append("SELECT ");
         query.append("o.number AS orderNumber, ");
@@ -1353,11 +1401,10 @@ class ProductionBalanceRepository {
         appendWhereClause(query);
         query.append("ORDER BY orderNumber, productionTrackingNumber, dateFrom ");
 
-        return jdbcTemplate.query(query.toString(), new MapSqlParameterSource("ordersIds", ordersIds),
-                BeanPropertyRowMapper.newInstance(Stoppage.class));
+        stream(query.toString(), ordersIds, Stoppage.class, consumer);
     }
 
-    public List<AdditionalCost> getAdditionalCosts(List<Long> ordersIds) {
+    void streamAdditionalCosts(List<Long> ordersIds, final Consumer<AdditionalCost> consumer) {
         StringBuilder query = new StringBuilder();
         query.append("SELECT ");
         query.append("o.number AS orderNumber, ");
@@ -1370,8 +1417,7 @@ class ProductionBalanceRepository {
         appendWhereClause(query);
         query.append("ORDER BY orderNumber, number ");
 
-        return jdbcTemplate.query(query.toString(), new MapSqlParameterSource("ordersIds", ordersIds),
-                BeanPropertyRowMapper.newInstance(AdditionalCost.class));
+        stream(query.toString(), ordersIds, AdditionalCost.class, consumer);
     }
 
 }
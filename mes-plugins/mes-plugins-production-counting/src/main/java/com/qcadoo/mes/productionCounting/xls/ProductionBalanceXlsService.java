@@ -1,5 +1,7 @@
 package com.qcadoo.mes.productionCounting.xls;
 
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.util.Date;
 import java.util.List;
@@ -10,18 +12,24 @@ import java.util.stream.Collectors;
 import com.google.common.base.Strings;
 import com.qcadoo.mes.productionCounting.xls.dto.*;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.poi.hssf.usermodel.HSSFCell;
-import org.apache.poi.hssf.usermodel.HSSFCellStyle;
-import org.apache.poi.hssf.usermodel.HSSFRow;
 import org.apache.poi.hssf.usermodel.HSSFSheet;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.ss.usermodel.BorderStyle;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.FillPatternType;
 import org.apache.poi.ss.usermodel.Font;
 import org.apache.poi.ss.usermodel.HorizontalAlignment;
 import org.apache.poi.ss.usermodel.IndexedColors;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.VerticalAlignment;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.WorkbookUtil;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.i18n.LocaleContextHolder;
 import org.springframework.stereotype.Service;
 
@@ -32,6 +40,7 @@ import com.qcadoo.mes.basic.util.CurrencyService;
 import com.qcadoo.mes.productionCounting.constants.OrderBalanceFields;
 import com.qcadoo.mes.productionCounting.constants.ProductionBalanceFields;
 import com.qcadoo.mes.productionCounting.constants.ProductionCountingConstants;
+import com.qcadoo.mes.productionCounting.xls.ProductionBalanceQueryExecutor.PendingQuery;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
@@ -50,23 +59,68 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
     @Autowired
     private ProductionBalanceRepository productionBalanceRepository;
 
+    @Autowired
+    private ProductionBalanceQueryExecutor productionBalanceQueryExecutor;
+
+    @Value("${productionBalanceMaterialCostsTimeBudgetInSeconds:600}")
+    private int materialCostsTimeBudgetInSeconds;
+
+    @Value("${productionBalanceProductionCostsTimeBudgetInSeconds:600}")
+    private int productionCostsTimeBudgetInSeconds;
+
     @Autowired
     private CurrencyService currencyService;
 
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
+    private static final int L_ROW_ACCESS_WINDOW_SIZE = 500;
+
+    private static final String L_XLSX_EXTENSION = ".xlsx";
+
     private static final List<String> PRODUCED_QUANTITIES_HEADERS = Lists.newArrayList("orderNumber", "productNumber",
             "productName", "additionalFinalProducts", "plannedQuantity", "producedQuantity", "wastesQuantity", "additionalFinalProductsQuantity", "producedWastes", "deviation", "productUnit");
 
     private static final List<String> ORDER_PRODUCTS_HEADERS = Lists.newArrayList("orderNumber", "productType", "productNumber",
             "productName", "plannedQuantity", "producedQuantity", "deviation", "productUnit");
 
+    /**
+     * Generates production balance as XLSX document, writing rows to a streaming workbook, which keeps only a window of rows in
+     * memory and flushes the rest to a temporary file, so both the number of orders and the number of rows per sheet aren't
+     * limited by memory or by the row limit of XLS format.
+     */
+    public void generateXlsxDocument(final Entity productionBalance, final Locale locale) throws IOException {
+        SXSSFWorkbook workbook = new SXSSFWorkbook(L_ROW_ACCESS_WINDOW_SIZE);
+        workbook.setCompressTempFiles(true);
+
+        try {
+            StylesContainer stylesContainer = new StylesContainer(workbook, new FontsContainer(workbook));
+            List<Long> ordersIds = getOrdersIds(productionBalance);
+
+            Sheet sheet = createWorkbookSheet(workbook, getReportTitle(locale));
+            createProducedQuantitiesHeader(sheet, locale, stylesContainer);
+            createProducedQuantitiesSheet(sheet, ordersIds, stylesContainer);
+
+            createSheets(workbook, productionBalance, locale, stylesContainer);
+
+            try (FileOutputStream outputStream = new FileOutputStream(
+                    productionBalance.getStringField(ProductionBalanceFields.FILE_NAME) + L_XLSX_EXTENSION)) {
+                workbook.write(outputStream);
+            }
+        } finally {
+            workbook.dispose();
+        }
+    }
+
     @Override
     protected void addHeader(HSSFSheet sheet, Locale locale, Entity entity) {
         final FontsContainer fontsContainer = new FontsContainer(sheet.getWorkbook());
         final StylesContainer stylesContainer = new StylesContainer(sheet.getWorkbook(), fontsContainer);
-        HSSFRow headerRow = sheet.createRow(0);
+        createProducedQuantitiesHeader(sheet, locale, stylesContainer);
+    }
+
+    private void createProducedQuantitiesHeader(Sheet sheet, Locale locale, StylesContainer stylesContainer) {
+        Row headerRow = sheet.createRow(0);
         int columnIndex = 0;
         for (String key : PRODUCED_QUANTITIES_HEADERS) {
             createHeaderCell(stylesContainer, headerRow,
@@ -92,64 +146,83 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
 
     @Override
     protected void addExtraSheets(final HSSFWorkbook workbook, Entity entity, Locale locale) {
+        final FontsContainer fontsContainer = new FontsContainer(workbook);
+        final StylesContainer stylesContainer = new StylesContainer(workbook, fontsContainer);
+        createSheets(workbook, entity, locale, stylesContainer);
+    }
+
+    private void createSheets(final Workbook workbook, Entity entity, Locale locale, StylesContainer stylesContainer) {
         List<Long> ordersIds = getOrdersIds(entity);
 
-        List<OrderProduct> orderProducts = productionBalanceRepository.getOrderProducts(ordersIds);
-        createOrderProductsSheet(orderProducts, createSheet(workbook,
-                        translationService.translate("productionCounting.productionBalance.report.xls.sheet.orderProducts", locale)),
-                locale);
-
-        List<MaterialCost> materialCosts = productionBalanceRepository.getMaterialCosts(entity, ordersIds);
-        recalculateMaterialCostsWithCurrencies(materialCosts);
-        createMaterialCostsSheet(materialCosts, createSheet(workbook,
-                        translationService.translate("productionCounting.productionBalance.report.xls.sheet.materialCosts", locale)),
-                locale);
-        createLaborTimeSheet(createSheet(workbook, translationService.translate(LaborTimeSheetConstants.SHEET_TITLE, locale)),
-                ordersIds, locale);
-
-        List<LaborTimeDetails> laborTimeDetailsList = productionBalanceRepository.getLaborTimeDetails(entity, ordersIds);
-        createLaborTimeDetailsSheet(laborTimeDetailsList, createSheet(workbook,
-                        translationService.translate("productionCounting.productionBalance.report.xls.sheet.laborTimeDetails", locale)),
-                locale);
-        createPieceworkSheet(createSheet(workbook, translationService.translate(PieceworkSheetConstants.SHEET_TITLE, locale)),
-                ordersIds, locale);
-        createStoppagesSheet(
-                createSheet(workbook,
-                        translationService.translate("productionCounting.productionBalance.report.xls.sheet.stoppages", locale)),
-                ordersIds, locale);
-
-        List<ProductionCost> productionCosts = productionBalanceRepository.getProductionCosts(entity, ordersIds);
-        createProductionCostsSheet(productionCosts, createSheet(workbook,
-                        translationService.translate("productionCounting.productionBalance.report.xls.sheet.productionCosts", locale)),
-                locale);
-
-        List<AdditionalCost> additionalCosts = productionBalanceRepository.getAdditionalCosts(ordersIds);
-        createAdditionalCostsSheet(additionalCosts, createSheet(workbook,
-                        translationService.translate("productionCounting.productionBalance.report.xls.sheet.additionalCosts", locale)),
-                locale);
-
-        List<OrderBalance> ordersBalance = productionBalanceRepository.getOrdersBalance(entity, ordersIds, materialCosts,
-                productionCosts);
-        saveOrdersBalance(entity, ordersBalance);
-        createOrdersBalanceSheet(ordersBalance, createSheet(workbook,
-                        translationService.translate("productionCounting.productionBalance.report.xls.sheet.ordersBalance", locale)),
-                locale);
-
-        List<OrderBalance> componentsBalance = productionBalanceRepository.getComponentsBalance(entity, ordersIds, ordersBalance);
-        createOrdersBalanceSheet(componentsBalance, createSheet(workbook,
-                        translationService.translate("productionCounting.productionBalance.report.xls.sheet.componentsBalance", locale)),
-                locale);
-
-        List<OrderBalance> productsBalance = productionBalanceRepository.getProductsBalance(entity, ordersIds, componentsBalance);
-        createProductsBalanceSheet(productsBalance, createSheet(workbook,
-                        translationService.translate("productionCounting.productionBalance.report.xls.sheet.productsBalance", locale)),
-                locale);
+        PendingQuery<List<MaterialCost>> materialCostsQuery = productionBalanceQueryExecutor.submit("materialCosts",
+                materialCostsTimeBudgetInSeconds, () -> productionBalanceRepository.getMaterialCosts(entity, ordersIds));
+        PendingQuery<List<ProductionCost>> productionCostsQuery = productionBalanceQueryExecutor.submit("productionCosts",
+                productionCostsTimeBudgetInSeconds, () -> productionBalanceRepository.getProductionCosts(entity, ordersIds));
+
+        try {
+            createOrderProductsSheet(createWorkbookSheet(workbook,
+                            translationService.translate("productionCounting.productionBalance.report.xls.sheet.orderProducts", locale)),
+                    ordersIds, locale, stylesContainer);
+            Sheet materialCostsSheet = createWorkbookSheet(workbook,
+                    translationService.translate("productionCounting.productionBalance.report.xls.sheet.materialCosts", locale));
+            createLaborTimeSheet(createWorkbookSheet(workbook, translationService.translate(LaborTimeSheetConstants.SHEET_TITLE, locale)),
+                    ordersIds, locale, stylesContainer);
+            createLaborTimeDetailsSheet(entity, ordersIds, createWorkbookSheet(workbook,
+                            translationService.translate("productionCounting.productionBalance.report.xls.sheet.laborTimeDetails", locale)),
+                    locale, stylesContainer);
+            createPieceworkSheet(createWorkbookSheet(workbook, translationService.translate(PieceworkSheetConstants.SHEET_TITLE, locale)),
+                    ordersIds, locale, stylesContainer);
+            createStoppagesSheet(
+                    createWorkbookSheet(workbook,
+                            translationService.translate("productionCounting.productionBalance.report.xls.sheet.stoppages", locale)),
+                    ordersIds, locale, stylesContainer);
+            Sheet productionCostsSheet = createWorkbookSheet(workbook,
+                    translationService.translate("productionCounting.productionBalance.report.xls.sheet.productionCosts", locale));
+            createAdditionalCostsSheet(createWorkbookSheet(workbook,
+                            translationService.translate("productionCounting.productionBalance.report.xls.sheet.additionalCosts", locale)),
+                    ordersIds, locale, stylesContainer);
+
+            List<MaterialCost> materialCosts = materialCostsQuery.get();
+            recalculateMaterialCostsWithCurrencies(materialCosts);
+            createMaterialCostsSheet(materialCosts, materialCostsSheet, locale, stylesContainer);
+
+            List<ProductionCost> productionCosts = productionCostsQuery.get();
+            createProductionCostsSheet(productionCosts, productionCostsSheet, locale, stylesContainer);
+
+            List<OrderBalance> ordersBalance = productionBalanceRepository.getOrdersBalance(entity, ordersIds, materialCosts,
+                    productionCosts);
+            saveOrdersBalance(entity, ordersBalance);
+            createOrdersBalanceSheet(ordersBalance, createWorkbookSheet(workbook,
+                            translationService.translate("productionCounting.productionBalance.report.xls.sheet.ordersBalance", locale)),
+                    locale, stylesContainer);
+
+            List<OrderBalance> componentsBalance = productionBalanceRepository.getComponentsBalance(entity, ordersIds, ordersBalance);
+            createOrdersBalanceSheet(componentsBalance, createWorkbookSheet(workbook,
+                            translationService.translate("productionCounting.productionBalance.report.xls.sheet.componentsBalance", locale)),
+                    locale, stylesContainer);
+
+            List<OrderBalance> productsBalance = productionBalanceRepository.getProductsBalance(entity, ordersIds, componentsBalance);
+            createProductsBalanceSheet(productsBalance, createWorkbookSheet(workbook,
+                            translationService.translate("productionCounting.productionBalance.report.xls.sheet.productsBalance", locale)),
+                    locale, stylesContainer);
+        } finally {
+            materialCostsQuery.cancel();
+            productionCostsQuery.cancel();
+        }
     }
 
-    private void createOrderProductsSheet(List<OrderProduct> orderProducts, HSSFSheet sheet, Locale locale) {
-        final FontsContainer fontsContainer = new FontsContainer(sheet.getWorkbook());
-        final StylesContainer stylesContainer = new StylesContainer(sheet.getWorkbook(), fontsContainer);
-        HSSFRow headerRow = sheet.createRow(0);
+    private Sheet createWorkbookSheet(final Workbook workbook, final String title) {
+        Sheet sheet = workbook.createSheet(WorkbookUtil.createSafeSheetName(title));
+
+        if (sheet instanceof SXSSFSheet) {
+            ((SXSSFSheet) sheet).trackAllColumnsForAutoSizing();
+        }
+
+        return sheet;
+    }
+
+    private void createOrderProductsSheet(Sheet sheet, List<Long> ordersIds, Locale locale, StylesContainer stylesContainer) {
+        Row headerRow = sheet.createRow(0);
         int columnIndex = 0;
         for (String key : ORDER_PRODUCTS_HEADERS) {
             createHeaderCell(stylesContainer, headerRow,
@@ -158,9 +231,8 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
             columnIndex++;
         }
 
-        int rowIndex = 1;
-        for (OrderProduct op : orderProducts) {
-            HSSFRow row = sheet.createRow(rowIndex);
+        productionBalanceRepository.streamOrderProducts(ordersIds, op -> {
+            Row row = sheet.createRow(sheet.getLastRowNum() + 1);
             createRegularCell(stylesContainer, row, 0, op.getOrderNumber());
             if (StringUtils.isNotEmpty(op.getProductType())) {
                 createRegularCell(stylesContainer, row, 1, translationService.translate("basicProductionCounting.productionCountingQuantity.typeOfMaterial.value." + op.getProductType(), locale));
@@ -173,8 +245,7 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
             createNumericCell(stylesContainer, row, 5, op.getProducedQuantity(), true);
             createNumericCell(stylesContainer, row, 6, op.getDeviation(), false);
             createRegularCell(stylesContainer, row, 7, op.getProductUnit());
-            rowIndex++;
-        }
+        });
 
         for (int i = 0; i <= 7; i++) {
             sheet.autoSizeColumn(i, false);
@@ -277,11 +348,9 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
         return orders.stream().map(Entity::getId).collect(Collectors.toList());
     }
 
-    private void createProducedQuantitiesSheet(HSSFSheet sheet, List<Long> ordersIds, StylesContainer stylesContainer) {
-        List<ProducedQuantity> producedQuantities = productionBalanceRepository.getProducedQuantities(ordersIds);
-        int rowIndex = 1;
-        for (ProducedQuantity producedQuantity : producedQuantities) {
-            HSSFRow row = sheet.createRow(rowIndex);
+    private void createProducedQuantitiesSheet(Sheet sheet, List<Long> ordersIds, StylesContainer stylesContainer) {
+        productionBalanceRepository.streamProducedQuantities(ordersIds, producedQuantity -> {
+            Row row = sheet.createRow(sheet.getLastRowNum() + 1);
             createRegularCell(stylesContainer, row, 0, producedQuantity.getOrderNumber());
             createRegularCell(stylesContainer, row, 1, producedQuantity.getProductNumber());
             createRegularCell(stylesContainer, row, 2, producedQuantity.getProductName());
@@ -293,19 +362,16 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
             createNumericCell(stylesContainer, row, 8, producedQuantity.getProducedWastes(), false);
             createNumericCell(stylesContainer, row, 9, producedQuantity.getDeviation(), false);
             createRegularCell(stylesContainer, row, 10, producedQuantity.getProductUnit());
-            rowIndex++;
-        }
+        });
 
         for (int i = 0; i < PRODUCED_QUANTITIES_HEADERS.size(); i++) {
             sheet.autoSizeColumn(i, false);
         }
     }
 
-    private void createMaterialCostsSheet(List<MaterialCost> materialCosts, HSSFSheet sheet, Locale locale) {
-        final FontsContainer fontsContainer = new FontsContainer(sheet.getWorkbook());
-        final StylesContainer stylesContainer = new StylesContainer(sheet.getWorkbook(), fontsContainer);
+    private void createMaterialCostsSheet(List<MaterialCost> materialCosts, Sheet sheet, Locale locale, StylesContainer stylesContainer) {
         final int rowOffset = 1;
-        HSSFRow row = sheet.createRow(0);
+        Row row = sheet.createRow(0);
         createHeaderCell(
                 stylesContainer, row, translationService
                         .translate("productionCounting.productionBalance.report.xls.sheet.materialCosts.orderNumber", locale),
@@ -385,11 +451,8 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
         }
     }
 
-    private void createPieceworkSheet(HSSFSheet sheet, List<Long> ordersIds, Locale locale) {
-        final FontsContainer fontsContainer = new FontsContainer(sheet.getWorkbook());
-        final StylesContainer stylesContainer = new StylesContainer(sheet.getWorkbook(), fontsContainer);
-        final int rowOffset = 1;
-        HSSFRow row = sheet.createRow(0);
+    private void createPieceworkSheet(Sheet sheet, List<Long> ordersIds, Locale locale, StylesContainer stylesContainer) {
+        Row row = sheet.createRow(0);
         createHeaderCell(stylesContainer, row, translationService.translate(PieceworkSheetConstants.ORDER_NUMBER, locale), 0);
         createHeaderCell(stylesContainer, row, translationService.translate(PieceworkSheetConstants.OPERATION_NUMBER, locale), 1);
         createHeaderCell(stylesContainer, row, translationService.translate("productionCounting.productionBalance.report.xls.sheet.piecework.worker", locale), 2);
@@ -398,29 +461,23 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
         createHeaderCell(stylesContainer, row, translationService.translate("productionCounting.productionBalance.report.xls.sheet.piecework.rate", locale), 5);
         createHeaderCell(stylesContainer, row, translationService.translate("productionCounting.productionBalance.report.xls.sheet.piecework.cost", locale), 6);
 
-        List<PieceworkDetails> pieceworkDetailsList = productionBalanceRepository.getPieceworkDetails(ordersIds);
-        int rowCounter = 0;
-        for (PieceworkDetails pieceworkDetails : pieceworkDetailsList) {
-            row = sheet.createRow(rowOffset + rowCounter);
-            createRegularCell(stylesContainer, row, 0, pieceworkDetails.getOrderNumber());
-            createRegularCell(stylesContainer, row, 1, pieceworkDetails.getOperationNumber());
-            createRegularCell(stylesContainer, row, 2, pieceworkDetails.getWorker());
-            createNumericCell(stylesContainer, row, 3, pieceworkDetails.getProducedQuantity(), false);
-            createRegularCell(stylesContainer, row, 4, pieceworkDetails.getPieceRate());
-            createNumericCell(stylesContainer, row, 5, pieceworkDetails.getRate(), false);
-            createNumericCell(stylesContainer, row, 6, pieceworkDetails.getCost(), false);
-            rowCounter++;
-        }
+        productionBalanceRepository.streamPieceworkDetails(ordersIds, pieceworkDetails -> {
+            Row pieceworkRow = sheet.createRow(sheet.getLastRowNum() + 1);
+            createRegularCell(stylesContainer, pieceworkRow, 0, pieceworkDetails.getOrderNumber());
+            createRegularCell(stylesContainer, pieceworkRow, 1, pieceworkDetails.getOperationNumber());
+            createRegularCell(stylesContainer, pieceworkRow, 2, pieceworkDetails.getWorker());
+            createNumericCell(stylesContainer, pieceworkRow, 3, pieceworkDetails.getProducedQuantity(), false);
+            createRegularCell(stylesContainer, pieceworkRow, 4, pieceworkDetails.getPieceRate());
+            createNumericCell(stylesContainer, pieceworkRow, 5, pieceworkDetails.getRate(), false);
+            createNumericCell(stylesContainer, pieceworkRow, 6, pieceworkDetails.getCost(), false);
+        });
         for (int i = 0; i <= 6; i++) {
             sheet.autoSizeColumn(i, false);
         }
     }
 
-    private void createStoppagesSheet(HSSFSheet sheet, List<Long> ordersIds, Locale locale) {
-        final FontsContainer fontsContainer = new FontsContainer(sheet.getWorkbook());
-        final StylesContainer stylesContainer = new StylesContainer(sheet.getWorkbook(), fontsContainer);
-        final int rowOffset = 1;
-        HSSFRow row = sheet.createRow(0);
+    private void createStoppagesSheet(Sheet sheet, List<Long> ordersIds, Locale locale, StylesContainer stylesContainer) {
+        Row row = sheet.createRow(0);
         createHeaderCell(
                 stylesContainer, row, translationService
                         .translate("productionCounting.productionBalance.report.xls.sheet.stoppages.orderNumber", locale),
@@ -464,37 +521,31 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
                 translationService.translate("productionCounting.productionBalance.report.xls.sheet.stoppages.worker", locale),
                 11);
 
-        List<Stoppage> stoppages = productionBalanceRepository.getStoppages(ordersIds);
-        int rowCounter = 0;
-        for (Stoppage stoppage : stoppages) {
-            row = sheet.createRow(rowOffset + rowCounter);
-            createRegularCell(stylesContainer, row, 0, stoppage.getOrderNumber());
-            createRegularCell(stylesContainer, row, 1, stoppage.getProductionTrackingNumber());
-            createRegularCell(stylesContainer, row, 2,
+        productionBalanceRepository.streamStoppages(ordersIds, stoppage -> {
+            Row stoppageRow = sheet.createRow(sheet.getLastRowNum() + 1);
+            createRegularCell(stylesContainer, stoppageRow, 0, stoppage.getOrderNumber());
+            createRegularCell(stylesContainer, stoppageRow, 1, stoppage.getProductionTrackingNumber());
+            createRegularCell(stylesContainer, stoppageRow, 2,
                     stoppage.getProductionTrackingState() != null ? translationService.translate(
                             "productionCounting.productionTracking.state.value." + stoppage.getProductionTrackingState(), locale)
                             : null);
-            createTimeCell(stylesContainer, row, 3, stoppage.getDuration(), false);
-            createDateTimeCell(stylesContainer, row, 4, stoppage.getDateFrom());
-            createDateTimeCell(stylesContainer, row, 5, stoppage.getDateTo());
-            createRegularCell(stylesContainer, row, 6, stoppage.getReason());
-            createRegularCell(stylesContainer, row, 7, stoppage.getDescription());
-            createRegularCell(stylesContainer, row, 8, stoppage.getDivision());
-            createRegularCell(stylesContainer, row, 9, stoppage.getProductionLine());
-            createRegularCell(stylesContainer, row, 10, stoppage.getWorkstation());
-            createRegularCell(stylesContainer, row, 11, stoppage.getWorker());
-            rowCounter++;
-        }
+            createTimeCell(stylesContainer, stoppageRow, 3, stoppage.getDuration(), false);
+            createDateTimeCell(stylesContainer, stoppageRow, 4, stoppage.getDateFrom());
+            createDateTimeCell(stylesContainer, stoppageRow, 5, stoppage.getDateTo());
+            createRegularCell(stylesContainer, stoppageRow, 6, stoppage.getReason());
+            createRegularCell(stylesContainer, stoppageRow, 7, stoppage.getDescription());
+            createRegularCell(stylesContainer, stoppageRow, 8, stoppage.getDivision());
+            createRegularCell(stylesContainer, stoppageRow, 9, stoppage.getProductionLine());
+            createRegularCell(stylesContainer, stoppageRow, 10, stoppage.getWorkstation());
+            createRegularCell(stylesContainer, stoppageRow, 11, stoppage.getWorker());
+        });
         for (int i = 0; i <= 11; i++) {
             sheet.autoSizeColumn(i, false);
         }
     }
 
-    private void createLaborTimeSheet(HSSFSheet sheet, List<Long> ordersIds, Locale locale) {
-        final FontsContainer fontsContainer = new FontsContainer(sheet.getWorkbook());
-        final StylesContainer stylesContainer = new StylesContainer(sheet.getWorkbook(), fontsContainer);
-        final int rowOffset = 1;
-        HSSFRow row = sheet.createRow(0);
+    private void createLaborTimeSheet(Sheet sheet, List<Long> ordersIds, Locale locale, StylesContainer stylesContainer) {
+        Row row = sheet.createRow(0);
         createHeaderCell(stylesContainer, row, translationService.translate(LaborTimeSheetConstants.ORDER_NUMBER, locale), 0
         );
         createHeaderCell(stylesContainer, row, translationService.translate(LaborTimeSheetConstants.OPERATION_NUMBER, locale), 1
@@ -513,30 +564,25 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
         createHeaderCell(stylesContainer, row, translationService.translate(LaborTimeSheetConstants.LABOR_TIME, locale), 7
         );
 
-        List<LaborTime> laborTimeList = productionBalanceRepository.getLaborTime(ordersIds);
-        int rowCounter = 0;
-        for (LaborTime laborTime : laborTimeList) {
-            row = sheet.createRow(rowOffset + rowCounter);
-            createRegularCell(stylesContainer, row, 0, laborTime.getOrderNumber());
-            createRegularCell(stylesContainer, row, 1, laborTime.getOperationNumber());
-            createRegularCell(stylesContainer, row, 2, laborTime.getStaffNumber());
-            createRegularCell(stylesContainer, row, 3, laborTime.getStaffName());
-            createRegularCell(stylesContainer, row, 4, laborTime.getStaffSurname());
-            createRegularCell(stylesContainer, row, 5, laborTime.getWageGroupName());
-            createNumericCell(stylesContainer, row, 6, laborTime.getStaffLaborHourlyCost(), false);
-            createTimeCell(stylesContainer, row, 7, laborTime.getLaborTime(), false);
-            rowCounter++;
-        }
+        productionBalanceRepository.streamLaborTime(ordersIds, laborTime -> {
+            Row laborTimeRow = sheet.createRow(sheet.getLastRowNum() + 1);
+            createRegularCell(stylesContainer, laborTimeRow, 0, laborTime.getOrderNumber());
+            createRegularCell(stylesContainer, laborTimeRow, 1, laborTime.getOperationNumber());
+            createRegularCell(stylesContainer, laborTimeRow, 2, laborTime.getStaffNumber());
+            createRegularCell(stylesContainer, laborTimeRow, 3, laborTime.getStaffName());
+            createRegularCell(stylesContainer, laborTimeRow, 4, laborTime.getStaffSurname());
+            createRegularCell(stylesContainer, laborTimeRow, 5, laborTime.getWageGroupName());
+            createNumericCell(stylesContainer, laborTimeRow, 6, laborTime.getStaffLaborHourlyCost(), false);
+            createTimeCell(stylesContainer, laborTimeRow, 7, laborTime.getLaborTime(), false);
+        });
         for (int i = 0; i <= 7; i++) {
             sheet.autoSizeColumn(i, false);
         }
     }
 
-    private void createLaborTimeDetailsSheet(List<LaborTimeDetails> laborTimeDetailsList, HSSFSheet sheet, Locale locale) {
-        final FontsContainer fontsContainer = new FontsContainer(sheet.getWorkbook());
-        final StylesContainer stylesContainer = new StylesContainer(sheet.getWorkbook(), fontsContainer);
-        final int rowOffset = 1;
-        HSSFRow row = sheet.createRow(0);
+    private void createLaborTimeDetailsSheet(Entity entity, List<Long> ordersIds, Sheet sheet, Locale locale,
+            StylesContainer stylesContainer) {
+        Row row = sheet.createRow(0);
         createHeaderCell(stylesContainer, row,
                 translationService.translate(
                         "productionCounting.productionBalance.report.xls.sheet.laborTimeDetails.divisionNumber", locale),
@@ -642,48 +688,44 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
                         "productionCounting.productionBalance.report.xls.sheet.laborTimeDetails.machineTimeDeviation", locale),
                 25);
 
-        int rowCounter = 0;
-        for (LaborTimeDetails laborTimeDetails : laborTimeDetailsList) {
-            row = sheet.createRow(rowOffset + rowCounter);
-            createRegularCell(stylesContainer, row, 0, laborTimeDetails.getDivisionNumber());
-            createRegularCell(stylesContainer, row, 1, laborTimeDetails.getProductionLineNumber());
-            createRegularCell(stylesContainer, row, 2, laborTimeDetails.getOrderNumber());
-            createRegularCell(stylesContainer, row, 3,
+        productionBalanceRepository.streamLaborTimeDetails(entity, ordersIds, laborTimeDetails -> {
+            Row laborTimeDetailsRow = sheet.createRow(sheet.getLastRowNum() + 1);
+            createRegularCell(stylesContainer, laborTimeDetailsRow, 0, laborTimeDetails.getDivisionNumber());
+            createRegularCell(stylesContainer, laborTimeDetailsRow, 1, laborTimeDetails.getProductionLineNumber());
+            createRegularCell(stylesContainer, laborTimeDetailsRow, 2, laborTimeDetails.getOrderNumber());
+            createRegularCell(stylesContainer, laborTimeDetailsRow, 3,
                     translationService.translate("orders.order.state.value." + laborTimeDetails.getOrderState(), locale));
-            createDateTimeCell(stylesContainer, row, 4, laborTimeDetails.getPlannedDateFrom());
-            createDateTimeCell(stylesContainer, row, 5, laborTimeDetails.getEffectiveDateFrom());
-            createDateTimeCell(stylesContainer, row, 6, laborTimeDetails.getPlannedDateTo());
-            createDateTimeCell(stylesContainer, row, 7, laborTimeDetails.getEffectiveDateTo());
-            createRegularCell(stylesContainer, row, 8, laborTimeDetails.getProductNumber());
-            createRegularCell(stylesContainer, row, 9, laborTimeDetails.getOrderName());
-            createNumericCell(stylesContainer, row, 10, laborTimeDetails.getPlannedQuantity(), false);
-            createNumericCell(stylesContainer, row, 11, laborTimeDetails.getAmountOfProductProduced(), false);
-            createRegularCell(stylesContainer, row, 12, laborTimeDetails.getStaffNumber());
-            createRegularCell(stylesContainer, row, 13, laborTimeDetails.getStaffName());
-            createRegularCell(stylesContainer, row, 14, laborTimeDetails.getStaffSurname());
-            createRegularCell(stylesContainer, row, 15, laborTimeDetails.getOperationNumber());
-            createDateTimeCell(stylesContainer, row, 16, laborTimeDetails.getTimeRangeFrom());
-            createDateTimeCell(stylesContainer, row, 17, laborTimeDetails.getTimeRangeTo());
-            createRegularCell(stylesContainer, row, 18, laborTimeDetails.getShiftName());
-            createDateTimeCell(stylesContainer, row, 19, laborTimeDetails.getCreateDate());
-            createTimeCell(stylesContainer, row, 20, laborTimeDetails.getLaborTime(), false);
-            createTimeCell(stylesContainer, row, 21, laborTimeDetails.getPlannedLaborTime(), false);
-            createTimeCell(stylesContainer, row, 22, laborTimeDetails.getLaborTimeDeviation(), false);
-            createTimeCell(stylesContainer, row, 23, laborTimeDetails.getMachineTime(), false);
-            createTimeCell(stylesContainer, row, 24, laborTimeDetails.getPlannedMachineTime(), false);
-            createTimeCell(stylesContainer, row, 25, laborTimeDetails.getMachineTimeDeviation(), false);
-            rowCounter++;
-        }
+            createDateTimeCell(stylesContainer, laborTimeDetailsRow, 4, laborTimeDetails.getPlannedDateFrom());
+            createDateTimeCell(stylesContainer, laborTimeDetailsRow, 5, laborTimeDetails.getEffectiveDateFrom());
+            createDateTimeCell(stylesContainer, laborTimeDetailsRow, 6, laborTimeDetails.getPlannedDateTo());
+            createDateTimeCell(stylesContainer, laborTimeDetailsRow, 7, laborTimeDetails.getEffectiveDateTo());
+            createRegularCell(stylesContainer, laborTimeDetailsRow, 8, laborTimeDetails.getProductNumber());
+            createRegularCell(stylesContainer, laborTimeDetailsRow, 9, laborTimeDetails.getOrderName());
+            createNumericCell(stylesContainer, laborTimeDetailsRow, 10, laborTimeDetails.getPlannedQuantity(), false);
+            createNumericCell(stylesContainer, laborTimeDetailsRow, 11, laborTimeDetails.getAmountOfProductProduced(), false);
+            createRegularCell(stylesContainer, laborTimeDetailsRow, 12, laborTimeDetails.getStaffNumber());
+            createRegularCell(stylesContainer, laborTimeDetailsRow, 13, laborTimeDetails.getStaffName());
+            createRegularCell(stylesContainer, laborTimeDetailsRow, 14, laborTimeDetails.getStaffSurname());
+            createRegularCell(stylesContainer, laborTimeDetailsRow, 15, laborTimeDetails.getOperationNumber());
+            createDateTimeCell(stylesContainer, laborTimeDetailsRow, 16, laborTimeDetails.getTimeRangeFrom());
+            createDateTimeCell(stylesContainer, laborTimeDetailsRow, 17, laborTimeDetails.getTimeRangeTo());
+            createRegularCell(stylesContainer, laborTimeDetailsRow, 18, laborTimeDetails.getShiftName());
+            createDateTimeCell(stylesContainer, laborTimeDetailsRow, 19, laborTimeDetails.getCreateDate());
+            createTimeCell(stylesContainer, laborTimeDetailsRow, 20, laborTimeDetails.getLaborTime(), false);
+            createTimeCell(stylesContainer, laborTimeDetailsRow, 21, laborTimeDetails.getPlannedLaborTime(), false);
+            createTimeCell(stylesContainer, laborTimeDetailsRow, 22, laborTimeDetails.getLaborTimeDeviation(), false);
+            createTimeCell(stylesContainer, laborTimeDetailsRow, 23, laborTimeDetails.getMachineTime(), false);
+            createTimeCell(stylesContainer, laborTimeDetailsRow, 24, laborTimeDetails.getPlannedMachineTime(), false);
+            createTimeCell(stylesContainer, laborTimeDetailsRow, 25, laborTimeDetails.getMachineTimeDeviation(), false);
+        });
         for (int i = 0; i <= 25; i++) {
             sheet.autoSizeColumn(i, false);
         }
     }
 
-    private void createProductionCostsSheet(List<ProductionCost> productionCosts, HSSFSheet sheet, Locale locale) {
-        final FontsContainer fontsContainer = new FontsContainer(sheet.getWorkbook());
-        final StylesContainer stylesContainer = new StylesContainer(sheet.getWorkbook(), fontsContainer);
+    private void createProductionCostsSheet(List<ProductionCost> productionCosts, Sheet sheet, Locale locale, StylesContainer stylesContainer) {
         final int rowOffset = 1;
-        HSSFRow row = sheet.createRow(0);
+        Row row = sheet.createRow(0);
         createHeaderCell(
                 stylesContainer, row, translationService
                         .translate("productionCounting.productionBalance.report.xls.sheet.productionCosts.orderNumber", locale),
@@ -806,11 +848,8 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
         }
     }
 
-    private void createAdditionalCostsSheet(List<AdditionalCost> additionalCosts, HSSFSheet sheet, Locale locale) {
-        final FontsContainer fontsContainer = new FontsContainer(sheet.getWorkbook());
-        final StylesContainer stylesContainer = new StylesContainer(sheet.getWorkbook(), fontsContainer);
-        final int rowOffset = 1;
-        HSSFRow row = sheet.createRow(0);
+    private void createAdditionalCostsSheet(Sheet sheet, List<Long> ordersIds, Locale locale, StylesContainer stylesContainer) {
+        Row row = sheet.createRow(0);
         createHeaderCell(
                 stylesContainer, row, translationService
                         .translate("productionCounting.productionBalance.report.xls.sheet.additionalCosts.orderNumber", locale),
@@ -829,25 +868,21 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
                 3);
 
 
-        int rowCounter = 0;
-        for (AdditionalCost additionalCost : additionalCosts) {
-            row = sheet.createRow(rowOffset + rowCounter);
-            createRegularCell(stylesContainer, row, 0, additionalCost.getOrderNumber());
-            createRegularCell(stylesContainer, row, 1, additionalCost.getNumber());
-            createRegularCell(stylesContainer, row, 2, additionalCost.getName());
-            createNumericCell(stylesContainer, row, 3, additionalCost.getActualCost(), false);
-            rowCounter++;
-        }
+        productionBalanceRepository.streamAdditionalCosts(ordersIds, additionalCost -> {
+            Row additionalCostRow = sheet.createRow(sheet.getLastRowNum() + 1);
+            createRegularCell(stylesContainer, additionalCostRow, 0, additionalCost.getOrderNumber());
+            createRegularCell(stylesContainer, additionalCostRow, 1, additionalCost.getNumber());
+            createRegularCell(stylesContainer, additionalCostRow, 2, additionalCost.getName());
+            createNumericCell(stylesContainer, additionalCostRow, 3, additionalCost.getActualCost(), false);
+        });
         for (int i = 0; i <= 3; i++) {
             sheet.autoSizeColumn(i, false);
         }
     }
 
-    private void createOrdersBalanceSheet(List<OrderBalance> ordersBalance, HSSFSheet sheet, Locale locale) {
-        final FontsContainer fontsContainer = new FontsContainer(sheet.getWorkbook());
-        final StylesContainer stylesContainer = new StylesContainer(sheet.getWorkbook(), fontsContainer);
+    private void createOrdersBalanceSheet(List<OrderBalance> ordersBalance, Sheet sheet, Locale locale, StylesContainer stylesContainer) {
         final int rowOffset = 1;
-        HSSFRow row = sheet.createRow(0);
+        Row row = sheet.createRow(0);
         createHeaderCell(
                 stylesContainer, row, translationService
                         .translate("productionCounting.productionBalance.report.xls.sheet.ordersBalance.orderNumber", locale),
@@ -992,11 +1027,9 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
                 : translationService.translate("qcadooView.false", locale);
     }
 
-    private void createProductsBalanceSheet(List<OrderBalance> productsBalance, HSSFSheet sheet, Locale locale) {
-        final FontsContainer fontsContainer = new FontsContainer(sheet.getWorkbook());
-        final StylesContainer stylesContainer = new StylesContainer(sheet.getWorkbook(), fontsContainer);
+    private void createProductsBalanceSheet(List<OrderBalance> productsBalance, Sheet sheet, Locale locale, StylesContainer stylesContainer) {
         final int rowOffset = 1;
-        HSSFRow row = sheet.createRow(0);
+        Row row = sheet.createRow(0);
         createHeaderCell(
                 stylesContainer, row, translationService
                         .translate("productionCounting.productionBalance.report.xls.sheet.ordersBalance.productNumber", locale),
@@ -1126,14 +1159,14 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
         }
     }
 
-    private void createRegularCell(StylesContainer stylesContainer, HSSFRow row, int column, String content) {
-        HSSFCell cell = row.createCell(column);
+    private void createRegularCell(StylesContainer stylesContainer, Row row, int column, String content) {
+        Cell cell = row.createCell(column);
         cell.setCellValue(content);
         cell.setCellStyle(StylesContainer.aligned(stylesContainer.regularStyle, HorizontalAlignment.LEFT));
     }
 
-    private void createNumericCell(StylesContainer stylesContainer, HSSFRow row, int column, BigDecimal value, boolean bold) {
-        HSSFCell cell = row.createCell(column, HSSFCell.CELL_TYPE_NUMERIC);
+    private void createNumericCell(StylesContainer stylesContainer, Row row, int column, BigDecimal value, boolean bold) {
+        Cell cell = row.createCell(column, Cell.CELL_TYPE_NUMERIC);
         if(Objects.nonNull(value)) {
             cell.setCellValue(numberService.setScaleWithDefaultMathContext(value, 2).doubleValue());
         }
@@ -1144,8 +1177,8 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
         }
     }
 
-    private void createTimeCell(StylesContainer stylesContainer, HSSFRow row, int column, Integer value, boolean bold) {
-        HSSFCell cell = row.createCell(column, HSSFCell.CELL_TYPE_NUMERIC);
+    private void createTimeCell(StylesContainer stylesContainer, Row row, int column, Integer value, boolean bold) {
+        Cell cell = row.createCell(column, Cell.CELL_TYPE_NUMERIC);
         if (value == null) {
             value = 0;
         }
@@ -1161,39 +1194,39 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
         }
     }
 
-    private void createDateTimeCell(StylesContainer stylesContainer, HSSFRow row, int column, Date value) {
-        HSSFCell cell = row.createCell(column);
+    private void createDateTimeCell(StylesContainer stylesContainer, Row row, int column, Date value) {
+        Cell cell = row.createCell(column);
         if (value != null) {
             cell.setCellValue(value);
             cell.setCellStyle(StylesContainer.aligned(stylesContainer.dateTimeStyle, HorizontalAlignment.RIGHT));
         }
     }
 
-    private void createHeaderCell(StylesContainer stylesContainer, HSSFRow row, String content, int column) {
-        HSSFCell cell = row.createCell(column);
+    private void createHeaderCell(StylesContainer stylesContainer, Row row, String content, int column) {
+        Cell cell = row.createCell(column);
         cell.setCellValue(content);
         cell.setCellStyle(StylesContainer.aligned(stylesContainer.headerStyle, HorizontalAlignment.LEFT));
     }
 
     private static class StylesContainer {
 
-        private final HSSFCellStyle regularStyle;
+        private final CellStyle regularStyle;
 
-        private final HSSFCellStyle headerStyle;
+        private final CellStyle headerStyle;
 
-        private final HSSFCellStyle timeStyle;
+        private final CellStyle timeStyle;
 
-        private final HSSFCellStyle timeBoldStyle;
+        private final CellStyle timeBoldStyle;
 
-        private final HSSFCellStyle negativeTimeStyle;
+        private final CellStyle negativeTimeStyle;
 
-        private final HSSFCellStyle numberStyle;
+        private final CellStyle numberStyle;
 
-        private final HSSFCellStyle numberBoldStyle;
+        private final CellStyle numberBoldStyle;
 
-        private final HSSFCellStyle dateTimeStyle;
+        private final CellStyle dateTimeStyle;
 
-        StylesContainer(HSSFWorkbook workbook, FontsContainer fontsContainer) {
+        StylesContainer(Workbook workbook, FontsContainer fontsContainer) {
             regularStyle = workbook.createCellStyle();
             regularStyle.setVerticalAlignment(VerticalAlignment.CENTER);
 
@@ -1225,7 +1258,7 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
             dateTimeStyle.setDataFormat(workbook.createDataFormat().getFormat("yyyy-mm-dd hh:mm"));
         }
 
-        private static HSSFCellStyle aligned(HSSFCellStyle style, HorizontalAlignment horizontalAlignment) {
+        private static CellStyle aligned(CellStyle style, HorizontalAlignment horizontalAlignment) {
             style.setAlignment(horizontalAlignment);
             return style;
         }
@@ -1235,7 +1268,7 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
 
         private final Font boldFont;
 
-        FontsContainer(HSSFWorkbook workbook) {
+        FontsContainer(Workbook workbook) {
             boldFont = workbook.createFont();
             boldFont.setBold(true);
         }
@@ -0,0 +1,159 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productionCounting.analysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.qcadoo.mes.productionCounting.states.constants.ProductionTrackingStateStringValues;
+import com.qcadoo.model.api.Entity;
+
+public class ProductionAnalysisFactsServiceTest {
+
+    private static final Long L_PRODUCTION_TRACKING_ID = 1L;
+
+    private ProductionAnalysisFactsService productionAnalysisFactsService;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Mock
+    private Entity productionTracking;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        productionAnalysisFactsService = new ProductionAnalysisFactsService();
+
+        ReflectionTestUtils.setField(productionAnalysisFactsService, "jdbcTemplate", jdbcTemplate);
+
+        given(productionTracking.getId()).willReturn(L_PRODUCTION_TRACKING_ID);
+    }
+
+    @Test
+    public void shouldRecalculateFactsOfDayAndOrderWithTheSameStatementsAsRebuild() {
+        // given
+        LocalDate day = LocalDate.of(2026, 10, 18);
+
+        // when
+        productionAnalysisFactsService.addProductionTracking(productionTracking);
+        productionAnalysisFactsService.rebuild(day, day);
+
+        // then
+        List<String> statements = captureStatements(9);
+        List<String> incrementalInserts = statements.subList(2, 4);
+        List<String> rebuildInserts = statements.subList(7, 9);
+
+        assertTrue(statements.get(0).startsWith("DELETE FROM productioncounting_dailyproducedquantity WHERE (day, order_id) = "));
+        assertTrue(statements.get(1).startsWith("DELETE FROM productioncounting_dailyworktime WHERE (day, order_id) = "));
+
+        for (int i = 0; i < 2; i++) {
+            String incrementalInsert = incrementalInserts.get(i);
+            String rebuildInsert = rebuildInserts.get(i);
+
+            assertTrue(incrementalInsert.contains(ProductionAnalysisFactsService.FOR_PRODUCTION_TRACKING));
+            assertTrue(rebuildInsert.contains(ProductionAnalysisFactsService.FOR_DAYS));
+            assertFalse(incrementalInsert.contains("productiontracking_id,"));
+            assertEquals(rebuildInsert.replace(ProductionAnalysisFactsService.FOR_DAYS, ""),
+                    incrementalInsert.replace(ProductionAnalysisFactsService.FOR_PRODUCTION_TRACKING, ""));
+        }
+
+        assertEquals(true, captureParameters(9).get(0).get("accepted"));
+    }
+
+    @Test
+    public void shouldRecalculateFactsOfDayAndOrderWithoutProductionTrackingOnRemoval() {
+        // when
+        productionAnalysisFactsService.removeProductionTracking(productionTracking);
+
+        // then
+        List<String> statements = captureStatements(4);
+        Map<String, Object> parameters = captureParameters(4).get(0);
+
+        assertTrue(statements.get(0).startsWith("DELETE FROM productioncounting_dailyproducedquantity"));
+        assertTrue(statements.get(1).startsWith("DELETE FROM productioncounting_dailyworktime"));
+        assertTrue(statements.get(2).contains(ProductionAnalysisFactsService.FOR_PRODUCTION_TRACKING));
+        assertTrue(statements.get(3).contains(ProductionAnalysisFactsService.FOR_PRODUCTION_TRACKING));
+        assertEquals(L_PRODUCTION_TRACKING_ID, parameters.get("productionTrackingId"));
+        assertEquals(false, parameters.get("accepted"));
+    }
+
+    @Test
+    public void shouldLockFactsBeforeRebuildingThem() {
+        // given
+        LocalDate dateFrom = LocalDate.of(2026, 10, 1);
+        LocalDate dateTo = LocalDate.of(2026, 10, 31);
+
+        // when
+        productionAnalysisFactsService.rebuild(dateFrom, dateTo);
+
+        // then
+        List<String> statements = captureStatements(5);
+
+        assertTrue(statements.get(0).startsWith("LOCK TABLE productioncounting_dailyproducedquantity, "
+                + "productioncounting_dailyworktime"));
+        assertTrue(statements.get(1).startsWith("DELETE FROM productioncounting_dailyproducedquantity WHERE day BETWEEN"));
+        assertTrue(statements.get(2).startsWith("DELETE FROM productioncounting_dailyworktime WHERE day BETWEEN"));
+        assertTrue(statements.get(3).contains("pt.state = '" + ProductionTrackingStateStringValues.ACCEPTED + "'"));
+        assertEquals(Date.valueOf(dateFrom), captureParameters(5).get(0).get("dateFrom"));
+    }
+
+    private List<String> captureStatements(final int count) {
+        ArgumentCaptor<String> statementCaptor = ArgumentCaptor.forClass(String.class);
+
+        verify(jdbcTemplate, times(count)).update(statementCaptor.capture(), anyMap());
+
+        return statementCaptor.getAllValues();
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Map<String, Object>> captureParameters(final int count) {
+        ArgumentCaptor<Map> parametersCaptor = ArgumentCaptor.forClass(Map.class);
+
+        verify(jdbcTemplate, times(count)).update(anyString(), parametersCaptor.capture());
+
+        return (List) parametersCaptor.getAllValues();
+    }
+
+}
@@ -0,0 +1,634 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productionCounting.states.listener;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.sql.ResultSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Random;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.basicProductionCounting.constants.ProductionCountingQuantityRole;
+import com.qcadoo.mes.basicProductionCounting.constants.ProductionCountingQuantityTypeOfMaterial;
+import com.qcadoo.mes.productionCounting.constants.OrderFieldsPC;
+import com.qcadoo.mes.productionCounting.constants.ProductionTrackingFields;
+import com.qcadoo.mes.productionCounting.constants.TrackingOperationProductInComponentFields;
+import com.qcadoo.mes.productionCounting.constants.TrackingOperationProductOutComponentFields;
+import com.qcadoo.mes.productionCounting.constants.TypeOfProductionRecording;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.EntityList;
+import com.qcadoo.model.api.NumberService;
+
+/**
+ * Compares quantities applied in memory by {@link ProductionCountingQuantitiesAccumulator} with the previous recalculation, which
+ * looked up and saved production counting quantities and basic production countings one entity at a time.
+ */
+public class ProductionCountingQuantitiesAccumulatorTest {
+
+    private static final MathContext L_MATH_CONTEXT = MathContext.DECIMAL64;
+
+    private static final int L_SCENARIOS = 300;
+
+    private static final String L_USED = ProductionCountingQuantityRole.USED.getStringValue();
+
+    private static final String L_PRODUCED = ProductionCountingQuantityRole.PRODUCED.getStringValue();
+
+    private static final List<String> L_IN_TYPES_OF_MATERIAL = Lists.newArrayList(
+            ProductionCountingQuantityTypeOfMaterial.COMPONENT.getStringValue(),
+            ProductionCountingQuantityTypeOfMaterial.INTERMEDIATE.getStringValue());
+
+    private static final List<String> L_TYPES_OF_MATERIAL = Lists.newArrayList(
+            ProductionCountingQuantityTypeOfMaterial.COMPONENT.getStringValue(),
+            ProductionCountingQuantityTypeOfMaterial.INTERMEDIATE.getStringValue(),
+            ProductionCountingQuantityTypeOfMaterial.FINAL_PRODUCT.getStringValue());
+
+    private ProductionTrackingListenerService productionTrackingListenerService;
+
+    @Mock
+    private NumberService numberService;
+
+    private final Random random = new Random(20261018L);
+
+    private final List<String> executedUpdates = Lists.newArrayList();
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        productionTrackingListenerService = new ProductionTrackingListenerService();
+
+        ReflectionTestUtils.setField(productionTrackingListenerService, "numberService", numberService);
+
+        given(numberService.getMathContext()).willReturn(L_MATH_CONTEXT);
+    }
+
+    @Test
+    public void shouldAddTrackedQuantitiesAsPerEntityRecalculation() {
+        for (int i = 0; i < L_SCENARIOS; i++) {
+            // given
+            Scenario scenario = createScenario();
+
+            // when
+            Scenario accumulated = applyWithAccumulator(scenario,
+                    productionTrackingListenerService::addTrackedQuantities);
+            Scenario recalculated = scenario.copy();
+
+            updateBasicProductionCountings(recalculated, this::add);
+            updateProductionCountingQuantities(recalculated, this::add);
+
+            // then
+            assertSameQuantities(recalculated, accumulated);
+        }
+    }
+
+    @Test
+    public void shouldSubtractCorrectedQuantitiesAsPerEntityRecalculation() {
+        for (int i = 0; i < L_SCENARIOS; i++) {
+            // given
+            Scenario scenario = createScenario();
+
+            // when
+            Scenario accumulated = applyWithAccumulator(scenario,
+                    productionTrackingListenerService::subtractCorrectedQuantities);
+            Scenario recalculated = scenario.copy();
+
+            updateBasicProductionCountings(recalculated, this::subtract);
+            subtractProductionCountingQuantities(recalculated);
+
+            // then
+            assertSameQuantities(recalculated, accumulated);
+        }
+    }
+
+    @Test
+    public void shouldSubtractDeclinedQuantitiesAsPerEntityRecalculation() {
+        for (int i = 0; i < L_SCENARIOS; i++) {
+            // given
+            Scenario scenario = createScenario();
+
+            // when
+            Scenario accumulated = applyWithAccumulator(scenario,
+                    productionTrackingListenerService::subtractDeclinedQuantities);
+            Scenario recalculated = scenario.copy();
+
+            updateBasicProductionCountings(recalculated, this::subtract);
+
+            // then
+            assertSameQuantities(recalculated, accumulated);
+        }
+    }
+
+    @Test
+    public void shouldIncrementEntityVersionOfWrittenRows() {
+        // given
+        Scenario scenario = new Scenario();
+        Row productionCountingQuantity = new Row(1L, 1L);
+        Row basicProductionCounting = new Row(101L, 1L);
+
+        productionCountingQuantity.role = L_USED;
+        productionCountingQuantity.typeOfMaterial = ProductionCountingQuantityTypeOfMaterial.COMPONENT.getStringValue();
+        productionCountingQuantity.plannedQuantity = BigDecimal.TEN;
+
+        scenario.productionCountingQuantities.add(productionCountingQuantity);
+        scenario.basicProductionCountings.add(basicProductionCounting);
+        scenario.inComponents.add(new Component(1L, BigDecimal.ONE));
+
+        // when
+        applyWithAccumulator(scenario, productionTrackingListenerService::addTrackedQuantities);
+
+        // then
+        assertEquals(2, executedUpdates.size());
+        assertTrue(executedUpdates.stream().allMatch(update -> update.contains("entityversion = entityversion + 1")));
+    }
+
+    private interface Application {
+
+        void apply(Entity productionTracking, ProductionCountingQuantitiesAccumulator accumulator);
+
+    }
+
+    private Scenario applyWithAccumulator(final Scenario scenario, final Application application) {
+        Scenario result = scenario.copy();
+        Map<Long, Row> productionCountingQuantities = result.productionCountingQuantities.stream()
+                .collect(Collectors.toMap(row -> row.id, row -> row));
+        Map<Long, Row> basicProductionCountings = result.basicProductionCountings.stream()
+                .collect(Collectors.toMap(row -> row.id, row -> row));
+
+        NamedParameterJdbcTemplate jdbcTemplate = mock(NamedParameterJdbcTemplate.class);
+
+        given(jdbcTemplate.query(anyString(), any(SqlParameterSource.class), any(RowMapper.class))).willAnswer(invocation -> {
+            String query = (String) invocation.getArguments()[0];
+            RowMapper<?> rowMapper = (RowMapper<?>) invocation.getArguments()[2];
+            List<Row> rows = query.contains("productioncountingquantity") ? scenario.productionCountingQuantities
+                    : scenario.basicProductionCountings;
+            List<Object> mapped = Lists.newArrayList();
+
+            for (int index = 0; index < rows.size(); index++) {
+                mapped.add(rowMapper.mapRow(mockResultSet(rows.get(index)), index));
+            }
+
+            return mapped;
+        });
+        given(jdbcTemplate.batchUpdate(anyString(), any(SqlParameterSource[].class))).willAnswer(invocation -> {
+            String update = (String) invocation.getArguments()[0];
+            SqlParameterSource[] parameters = (SqlParameterSource[]) invocation.getArguments()[1];
+            Map<Long, Row> rows = update.contains("productioncountingquantity") ? productionCountingQuantities
+                    : basicProductionCountings;
+
+            executedUpdates.add(update);
+
+            for (SqlParameterSource parameter : parameters) {
+                Row row = rows.get((Long) parameter.getValue("id"));
+
+                row.usedQuantity = (BigDecimal) parameter.getValue("usedQuantity");
+                row.producedQuantity = (BigDecimal) parameter.getValue("producedQuantity");
+            }
+
+            return new int[parameters.length];
+        });
+
+        ProductionCountingQuantitiesAccumulator accumulator = ProductionCountingQuantitiesAccumulator.load(jdbcTemplate, 1L);
+
+        application.apply(mockProductionTracking(scenario), accumulator);
+        accumulator.flush();
+
+        return result;
+    }
+
+    private void updateBasicProductionCountings(final Scenario scenario, final BinaryOperator<BigDecimal> operation) {
+        for (Component component : scenario.inComponents) {
+            getBasicProductionCounting(scenario, component.productId).ifPresent(basicProductionCounting -> {
+                BigDecimal result = operation.apply(basicProductionCounting.usedQuantity, component.quantity);
+
+                if (isSavedByValidator(result)) {
+                    basicProductionCounting.usedQuantity = result;
+                }
+            });
+        }
+        for (Component component : scenario.outComponents) {
+            getBasicProductionCounting(scenario, component.productId).ifPresent(basicProductionCounting -> {
+                BigDecimal result = operation.apply(basicProductionCounting.producedQuantity, component.quantity);
+
+                if (isSavedByValidator(result)) {
+                    basicProductionCounting.producedQuantity = result;
+                }
+            });
+        }
+    }
+
+    private boolean isSavedByValidator(final BigDecimal quantity) {
+        return quantity.signum() >= 0;
+    }
+
+    private void updateProductionCountingQuantities(final Scenario scenario, final BinaryOperator<BigDecimal> operation) {
+        for (Component component : scenario.inComponents) {
+            List<Row> productionCountingQuantities = getInProductionCountingQuantities(scenario, component.productId);
+
+            if (productionCountingQuantities.isEmpty()) {
+                continue;
+            }
+
+            if (productionCountingQuantities.size() == 1) {
+                Row pcq = productionCountingQuantities.get(0);
+
+                pcq.usedQuantity = operation.apply(zeroIfNull(pcq.usedQuantity), zeroIfNull(component.quantity));
+            } else {
+                int lastIndex = productionCountingQuantities.size() - 1;
+                BigDecimal productQuantity = zeroIfNull(component.quantity);
+
+                for (int i = 0; i < productionCountingQuantities.size(); i++) {
+                    Row pcq = productionCountingQuantities.get(i);
+                    BigDecimal usedQuantity = zeroIfNull(pcq.usedQuantity);
+
+                    if (i == lastIndex) {
+                        pcq.usedQuantity = operation.apply(usedQuantity, productQuantity);
+                        productQuantity = BigDecimal.ZERO;
+                    } else if (usedQuantity.compareTo(pcq.plannedQuantity) != 0) {
+                        BigDecimal diff = pcq.plannedQuantity.subtract(usedQuantity, L_MATH_CONTEXT);
+
+                        if (diff.compareTo(BigDecimal.ZERO) > 0) {
+                            if (diff.compareTo(productQuantity) >= 0) {
+                                pcq.usedQuantity = operation.apply(usedQuantity, productQuantity);
+                                productQuantity = BigDecimal.ZERO;
+                            } else {
+                                pcq.usedQuantity = operation.apply(usedQuantity, diff);
+                                productQuantity = productQuantity.subtract(diff, L_MATH_CONTEXT);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        updateOutProductionCountingQuantities(scenario, operation);
+    }
+
+    private void subtractProductionCountingQuantities(final Scenario scenario) {
+        for (Component component : scenario.inComponents) {
+            List<Row> productionCountingQuantities = getInProductionCountingQuantities(scenario, component.productId);
+
+            if (productionCountingQuantities.isEmpty()) {
+                continue;
+            }
+
+            if (productionCountingQuantities.size() == 1) {
+                Row pcq = productionCountingQuantities.get(0);
+
+                pcq.usedQuantity = subtract(zeroIfNull(pcq.usedQuantity), zeroIfNull(component.quantity));
+            } else {
+                BigDecimal productQuantity = zeroIfNull(component.quantity);
+
+                for (int i = productionCountingQuantities.size() - 1; i >= 0; i--) {
+                    Row pcq = productionCountingQuantities.get(i);
+                    BigDecimal usedQuantity = zeroIfNull(pcq.usedQuantity);
+
+                    if (usedQuantity.signum() > 0 && productQuantity.signum() > 0) {
+                        if (usedQuantity.compareTo(productQuantity) <= 0) {
+                            pcq.usedQuantity = BigDecimal.ZERO;
+                            productQuantity = productQuantity.subtract(usedQuantity, L_MATH_CONTEXT);
+                        } else {
+                            pcq.usedQuantity = subtract(usedQuantity, productQuantity);
+                            productQuantity = BigDecimal.ZERO;
+                        }
+                    }
+                }
+            }
+        }
+
+        updateOutProductionCountingQuantities(scenario, this::subtract);
+    }
+
+    private void updateOutProductionCountingQuantities(final Scenario scenario, final BinaryOperator<BigDecimal> operation) {
+        for (Component component : scenario.outComponents) {
+            scenario.productionCountingQuantities.stream()
+                    .filter(row -> L_PRODUCED.equals(row.role) && row.productId.equals(component.productId)
+                            && matchesTechnologyOperationComponent(scenario, row))
+                    .findFirst().ifPresent(pcq -> pcq.producedQuantity = operation
+                            .apply(zeroIfNull(pcq.producedQuantity), zeroIfNull(component.quantity)));
+        }
+    }
+
+    private List<Row> getInProductionCountingQuantities(final Scenario scenario, final Long productId) {
+        return scenario.productionCountingQuantities.stream()
+                .filter(row -> L_USED.equals(row.role) && L_IN_TYPES_OF_MATERIAL.contains(row.typeOfMaterial)
+                        && row.productId.equals(productId) && matchesTechnologyOperationComponent(scenario, row))
+                .collect(Collectors.toList());
+    }
+
+    private boolean matchesTechnologyOperationComponent(final Scenario scenario, final Row row) {
+        return !scenario.isForEach || Objects.isNull(scenario.technologyOperationComponentId)
+                || scenario.technologyOperationComponentId.equals(row.technologyOperationComponentId);
+    }
+
+    private Optional<Row> getBasicProductionCounting(final Scenario scenario, final Long productId) {
+        return scenario.basicProductionCountings.stream().filter(row -> row.productId.equals(productId)).findFirst();
+    }
+
+    private BigDecimal add(final BigDecimal value, final BigDecimal addition) {
+        return zeroIfNull(value).add(zeroIfNull(addition), L_MATH_CONTEXT);
+    }
+
+    private BigDecimal subtract(final BigDecimal value, final BigDecimal subtrahend) {
+        return zeroIfNull(value).subtract(zeroIfNull(subtrahend), L_MATH_CONTEXT);
+    }
+
+    private BigDecimal zeroIfNull(final BigDecimal value) {
+        return Objects.isNull(value) ? BigDecimal.ZERO : value;
+    }
+
+    private void assertSameQuantities(final Scenario expected, final Scenario actual) {
+        assertSameRows(expected.productionCountingQuantities, actual.productionCountingQuantities);
+        assertSameRows(expected.basicProductionCountings, actual.basicProductionCountings);
+    }
+
+    private void assertSameRows(final List<Row> expected, final List<Row> actual) {
+        assertEquals(expected.size(), actual.size());
+
+        for (int i = 0; i < expected.size(); i++) {
+            assertSameQuantity(expected.get(i).usedQuantity, actual.get(i).usedQuantity);
+            assertSameQuantity(expected.get(i).producedQuantity, actual.get(i).producedQuantity);
+        }
+    }
+
+    private void assertSameQuantity(final BigDecimal expected, final BigDecimal actual) {
+        if (Objects.isNull(expected) || Objects.isNull(actual)) {
+            assertEquals(expected, actual);
+        } else {
+            assertEquals(expected + " <> " + actual, 0, expected.compareTo(actual));
+        }
+    }
+
+    private Scenario createScenario() {
+        Scenario scenario = new Scenario();
+
+        scenario.isForEach = random.nextBoolean();
+        scenario.technologyOperationComponentId = random.nextInt(4) == 0 ? null : (long) (1 + random.nextInt(3));
+
+        int productionCountingQuantitiesCount = 2 + random.nextInt(10);
+
+        for (long id = 1; id <= productionCountingQuantitiesCount; id++) {
+            Row row = new Row(id, randomProductId());
+
+            row.role = random.nextInt(10) < 7 ? L_USED : L_PRODUCED;
+            row.typeOfMaterial = L_TYPES_OF_MATERIAL.get(random.nextInt(L_TYPES_OF_MATERIAL.size()));
+            row.technologyOperationComponentId = random.nextInt(5) == 0 ? null : (long) (1 + random.nextInt(3));
+            row.plannedQuantity = randomQuantity();
+            row.usedQuantity = randomNullableQuantity();
+            row.producedQuantity = randomNullableQuantity();
+
+            scenario.productionCountingQuantities.add(row);
+        }
+
+        for (long productId = 1; productId <= 4; productId++) {
+            if (random.nextInt(5) > 0) {
+                Row row = new Row(100 + productId, productId);
+
+                row.usedQuantity = randomNullableQuantity();
+                row.producedQuantity = randomNullableQuantity();
+
+                scenario.basicProductionCountings.add(row);
+            }
+        }
+
+        for (int i = random.nextInt(5); i > 0; i--) {
+            scenario.inComponents.add(new Component(randomProductId(), randomNullableQuantity()));
+        }
+        for (int i = random.nextInt(4); i > 0; i--) {
+            scenario.outComponents.add(new Component(randomProductId(), randomNullableQuantity()));
+        }
+
+        return scenario;
+    }
+
+    private Long randomProductId() {
+        return (long) (1 + random.nextInt(4));
+    }
+
+    private BigDecimal randomQuantity() {
+        return BigDecimal.valueOf(random.nextInt(200), 1);
+    }
+
+    private BigDecimal randomNullableQuantity() {
+        return random.nextInt(8) == 0 ? null : randomQuantity();
+    }
+
+    private Entity mockProductionTracking(final Scenario scenario) {
+        Entity productionTracking = mock(Entity.class);
+        Entity order = mock(Entity.class);
+
+        given(order.getStringField(OrderFieldsPC.TYPE_OF_PRODUCTION_RECORDING)).willReturn(
+                scenario.isForEach ? TypeOfProductionRecording.FOR_EACH.getStringValue()
+                        : TypeOfProductionRecording.CUMULATED.getStringValue());
+        given(productionTracking.getBelongsToField(ProductionTrackingFields.ORDER)).willReturn(order);
+
+        if (Objects.nonNull(scenario.technologyOperationComponentId)) {
+            Entity technologyOperationComponent = mock(Entity.class);
+
+            given(technologyOperationComponent.getId()).willReturn(scenario.technologyOperationComponentId);
+            given(productionTracking.getBelongsToField(ProductionTrackingFields.TECHNOLOGY_OPERATION_COMPONENT))
+                    .willReturn(technologyOperationComponent);
+        }
+
+        EntityList inComponents = mockEntityList(scenario.inComponents.stream()
+                .map(component -> mockComponent(component, TrackingOperationProductInComponentFields.USED_QUANTITY))
+                .collect(Collectors.toList()));
+        EntityList outComponents = mockEntityList(scenario.outComponents.stream()
+                .map(component -> mockComponent(component, TrackingOperationProductOutComponentFields.USED_QUANTITY))
+                .collect(Collectors.toList()));
+
+        given(productionTracking.getHasManyField(ProductionTrackingFields.TRACKING_OPERATION_PRODUCT_IN_COMPONENTS))
+                .willReturn(inComponents);
+        given(productionTracking.getHasManyField(ProductionTrackingFields.TRACKING_OPERATION_PRODUCT_OUT_COMPONENTS))
+                .willReturn(outComponents);
+
+        return productionTracking;
+    }
+
+    private Entity mockComponent(final Component component, final String quantityField) {
+        Entity trackingOperationProductComponent = mock(Entity.class);
+        Entity product = mock(Entity.class);
+
+        given(product.getId()).willReturn(component.productId);
+        given(trackingOperationProductComponent.getBelongsToField("product")).willReturn(product);
+        given(trackingOperationProductComponent.getDecimalField(quantityField)).willReturn(component.quantity);
+
+        return trackingOperationProductComponent;
+    }
+
+    @SuppressWarnings("unchecked")
+    private EntityList mockEntityList(final List<Entity> entities) {
+        EntityList entityList = mock(EntityList.class);
+
+        given(entityList.iterator()).willAnswer(invocation -> entities.iterator());
+        willAnswer(invocation -> {
+            entities.forEach((Consumer<Entity>) invocation.getArguments()[0]);
+
+            return null;
+        }).given(entityList).forEach(any(Consumer.class));
+
+        return entityList;
+    }
+
+    private ResultSet mockResultSet(final Row row) {
+        Map<String, Object> values = Maps.newHashMap();
+
+        values.put("id", row.id);
+        values.put("product_id", row.productId);
+        values.put("role", row.role);
+        values.put("typeofmaterial", row.typeOfMaterial);
+        values.put("technologyoperationcomponent_id", row.technologyOperationComponentId);
+        values.put("plannedquantity", row.plannedQuantity);
+        values.put("usedquantity", row.usedQuantity);
+        values.put("producedquantity", row.producedQuantity);
+
+        boolean[] wasNull = new boolean[1];
+
+        return mock(ResultSet.class, invocation -> {
+            String methodName = invocation.getMethod().getName();
+
+            if ("wasNull".equals(methodName)) {
+                return wasNull[0];
+            } else if (invocation.getArguments().length == 0) {
+                return null;
+            }
+
+            Object value = values.get(invocation.getArguments()[0]);
+
+            wasNull[0] = Objects.isNull(value);
+
+            if ("getLong".equals(methodName)) {
+                return Objects.isNull(value) ? 0L : value;
+            }
+
+            return value;
+        });
+    }
+
+    private static class Scenario {
+
+        private boolean isForEach;
+
+        private Long technologyOperationComponentId;
+
+        private List<Row> productionCountingQuantities = Lists.newArrayList();
+
+        private List<Row> basicProductionCountings = Lists.newArrayList();
+
+        private List<Component> inComponents = Lists.newArrayList();
+
+        private List<Component> outComponents = Lists.newArrayList();
+
+        private Scenario copy() {
+            Scenario copy = new Scenario();
+
+            copy.isForEach = isForEach;
+            copy.technologyOperationComponentId = technologyOperationComponentId;
+            copy.productionCountingQuantities = productionCountingQuantities.stream().map(Row::copy)
+                    .collect(Collectors.toList());
+            copy.basicProductionCountings = basicProductionCountings.stream().map(Row::copy).collect(Collectors.toList());
+            copy.inComponents = inComponents;
+            copy.outComponents = outComponents;
+
+            return copy;
+        }
+
+    }
+
+    private static class Row {
+
+        private final Long id;
+
+        private final Long productId;
+
+        private String role;
+
+        private String typeOfMaterial;
+
+        private Long technologyOperationComponentId;
+
+        private BigDecimal plannedQuantity;
+
+        private BigDecimal usedQuantity;
+
+        private BigDecimal producedQuantity;
+
+        private Row(final Long id, final Long productId) {
+            this.id = id;
+            this.productId = productId;
+        }
+
+        private Row copy() {
+            Row copy = new Row(id, productId);
+
+            copy.role = role;
+            copy.typeOfMaterial = typeOfMaterial;
+            copy.technologyOperationComponentId = technologyOperationComponentId;
+            copy.plannedQuantity = plannedQuantity;
+            copy.usedQuantity = usedQuantity;
+            copy.producedQuantity = producedQuantity;
+
+            return copy;
+        }
+
+    }
+
+    private static class Component {
+
+        private final Long productId;
+
+        private final BigDecimal quantity;
+
+        private Component(final Long productId, final BigDecimal quantity) {
+            this.productId = productId;
+            this.quantity = quantity;
+        }
+
+    }
+
+}
@@ -0,0 +1,158 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productionCounting.xls;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.verify;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+
+import com.qcadoo.mes.basic.util.WorkerContextService;
+import com.qcadoo.mes.productionCounting.xls.ProductionBalanceQueryExecutor.PendingQuery;
+
+public class ProductionBalanceQueryExecutorTest {
+
+    private ProductionBalanceQueryExecutor productionBalanceQueryExecutor;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private TransactionStatus transactionStatus;
+
+    @Mock
+    private WorkerContextService workerContextService;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        productionBalanceQueryExecutor = new ProductionBalanceQueryExecutor();
+
+        ReflectionTestUtils.setField(productionBalanceQueryExecutor, "threads", 2);
+        ReflectionTestUtils.setField(productionBalanceQueryExecutor, "transactionManager", transactionManager);
+        ReflectionTestUtils.setField(productionBalanceQueryExecutor, "workerContextService", workerContextService);
+
+        given(transactionManager.getTransaction(any(TransactionDefinition.class))).willReturn(transactionStatus);
+        given(workerContextService.wrap(any(Callable.class))).willAnswer(invocation -> invocation.getArguments()[0]);
+
+        productionBalanceQueryExecutor.init();
+    }
+
+    @After
+    public void shutdown() {
+        productionBalanceQueryExecutor.shutdown();
+    }
+
+    @Test
+    public void shouldRunQueryInReadOnlyTransactionWithTimeBudgetAndContextOfCaller() {
+        // given
+        ArgumentCaptor<TransactionDefinition> definitionCaptor = ArgumentCaptor.forClass(TransactionDefinition.class);
+
+        // when
+        PendingQuery<String> query = productionBalanceQueryExecutor.submit("test", 30, () -> "result");
+
+        // then
+        assertEquals("result", query.get());
+
+        verify(workerContextService).wrap(any(Callable.class));
+        verify(transactionManager).getTransaction(definitionCaptor.capture());
+
+        assertTrue(definitionCaptor.getValue().isReadOnly());
+        assertEquals(30, definitionCaptor.getValue().getTimeout());
+    }
+
+    @Test
+    public void shouldRunQueriesConcurrently() throws InterruptedException {
+        // given
+        CountDownLatch started = new CountDownLatch(2);
+
+        // when
+        PendingQuery<Boolean> first = productionBalanceQueryExecutor.submit("first", 30, () -> awaitOther(started));
+        PendingQuery<Boolean> second = productionBalanceQueryExecutor.submit("second", 30, () -> awaitOther(started));
+
+        // then
+        assertTrue(first.get());
+        assertTrue(second.get());
+    }
+
+    @Test
+    public void shouldFailQueryExceedingItsTimeBudget() {
+        // given
+        CountDownLatch otherNeverStarted = new CountDownLatch(2);
+
+        PendingQuery<Boolean> query = productionBalanceQueryExecutor.submit("slow", 0, () -> awaitOther(otherNeverStarted));
+
+        // when
+        try {
+            query.get();
+
+            fail();
+        } catch (IllegalStateException e) {
+            // then
+            assertTrue(e.getMessage().contains("exceeded its time budget"));
+        }
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void shouldRejectQueriesAfterShutdown() {
+        // given
+        productionBalanceQueryExecutor.shutdown();
+
+        // when
+        productionBalanceQueryExecutor.submit("late", 30, () -> "result");
+    }
+
+    private boolean awaitOther(final CountDownLatch started) {
+        started.countDown();
+
+        try {
+            started.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            return false;
+        }
+
+        return true;
+    }
+
+}
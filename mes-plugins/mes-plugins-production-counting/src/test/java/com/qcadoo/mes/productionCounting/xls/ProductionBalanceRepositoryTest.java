@@ -0,0 +1,114 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productionCounting.xls;
+
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.verify;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+
+import com.google.common.collect.Lists;
+
+public class ProductionBalanceRepositoryTest {
+
+    private ProductionBalanceRepository productionBalanceRepository;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Mock
+    private JdbcOperations jdbcOperations;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private TransactionStatus transactionStatus;
+
+    @Mock
+    private Connection connection;
+
+    @Mock
+    private PreparedStatement preparedStatement;
+
+    @Before
+    public void init() throws Exception {
+        MockitoAnnotations.initMocks(this);
+
+        productionBalanceRepository = new ProductionBalanceRepository();
+
+        ReflectionTestUtils.setField(productionBalanceRepository, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(productionBalanceRepository, "transactionManager", transactionManager);
+
+        given(jdbcTemplate.getJdbcOperations()).willReturn(jdbcOperations);
+        given(transactionManager.getTransaction(any(TransactionDefinition.class))).willReturn(transactionStatus);
+        given(connection.prepareStatement(anyString())).willReturn(preparedStatement);
+    }
+
+    @Test
+    public void shouldStreamRowsWithFetchSizeInReadOnlyTransaction() throws Exception {
+        // given
+        ArgumentCaptor<TransactionDefinition> definitionCaptor = ArgumentCaptor.forClass(TransactionDefinition.class);
+        ArgumentCaptor<PreparedStatementCreator> creatorCaptor = ArgumentCaptor.forClass(PreparedStatementCreator.class);
+
+        // when
+        productionBalanceRepository.streamAdditionalCosts(Lists.newArrayList(1L, 2L), additionalCost -> {
+        });
+
+        // then
+        verify(transactionManager).getTransaction(definitionCaptor.capture());
+        verify(transactionManager).commit(transactionStatus);
+        verify(jdbcOperations).query(creatorCaptor.capture(), any(RowCallbackHandler.class));
+
+        assertTrue(definitionCaptor.getValue().isReadOnly());
+
+        creatorCaptor.getValue().createPreparedStatement(connection);
+
+        ArgumentCaptor<String> sqlCaptor = ArgumentCaptor.forClass(String.class);
+
+        verify(connection).prepareStatement(sqlCaptor.capture());
+        verify(preparedStatement).setFetchSize(1000);
+
+        assertTrue(sqlCaptor.getValue().contains("?, ?"));
+    }
+
+}
@@ -1,12 +1,14 @@
 package com.qcadoo.mes.productionPerShift.domain;
 
 import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.shift.ShiftCalendar;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.validators.ErrorMessage;
 import org.joda.time.DateTime;
 
 import java.math.BigDecimal;
 import java.util.List;
+import java.util.Map;
 
 public class ProgressForDaysContainer {
 
@@ -34,6 +36,10 @@ public class ProgressForDaysContainer {
 
     private BigDecimal alreadyRegisteredQuantity = BigDecimal.ZERO;
 
+    private ShiftCalendar shiftCalendar;
+
+    private Map<DailyProgressKey, Entity> dailyProgressesWithTrackingRecords;
+
     public void addError(ErrorMessage errorMessage) {
         errors.add(errorMessage);
     }
@@ -133,4 +139,24 @@ public class ProgressForDaysContainer {
     public void setPlanForOrderCompleted(boolean planForOrderCompleted) {
         this.planForOrderCompleted = planForOrderCompleted;
     }
+
+    /**
+     * Shift calendar of production line, shared between calculations of many orders. If it isn't set, algorithm builds one
+     * for its own calculation.
+     */
+    public ShiftCalendar getShiftCalendar() {
+        return shiftCalendar;
+    }
+
+    public void setShiftCalendar(ShiftCalendar shiftCalendar) {
+        this.shiftCalendar = shiftCalendar;
+    }
+
+    public Map<DailyProgressKey, Entity> getDailyProgressesWithTrackingRecords() {
+        return dailyProgressesWithTrackingRecords;
+    }
+
+    public void setDailyProgressesWithTrackingRecords(Map<DailyProgressKey, Entity> dailyProgressesWithTrackingRecords) {
+        this.dailyProgressesWithTrackingRecords = dailyProgressesWithTrackingRecords;
+    }
 }
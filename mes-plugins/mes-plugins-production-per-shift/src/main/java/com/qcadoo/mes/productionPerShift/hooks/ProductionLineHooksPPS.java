@@ -0,0 +1,63 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productionPerShift.hooks;
+
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.qcadoo.mes.productionLines.constants.ProductionLineFields;
+import com.qcadoo.mes.productionPerShift.services.AutomaticPpsParametersService;
+import com.qcadoo.mes.productionPerShift.services.PpsRegenerationService;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+
+@Service
+public class ProductionLineHooksPPS {
+
+    @Autowired
+    private PpsRegenerationService ppsRegenerationService;
+
+    @Autowired
+    private AutomaticPpsParametersService automaticPpsParametersService;
+
+    public void onUpdate(final DataDefinition productionLineDD, final Entity productionLine) {
+        if (automaticPpsParametersService.isAutomaticPlanForShiftOn()
+                && shiftsHaveBeenChanged(productionLine, productionLineDD.get(productionLine.getId()))) {
+            ppsRegenerationService.submit(productionLine.getId());
+        }
+    }
+
+    private boolean shiftsHaveBeenChanged(final Entity productionLine, final Entity productionLineFromDB) {
+        return productionLineFromDB == null || !getShiftIds(productionLine).equals(getShiftIds(productionLineFromDB));
+    }
+
+    private Set<Long> getShiftIds(final Entity productionLine) {
+        return productionLine.getManyToManyField(ProductionLineFields.SHIFTS).stream().map(Entity::getId)
+                .collect(Collectors.toSet());
+    }
+
+}
@@ -0,0 +1,66 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productionPerShift.hooks;
+
+import java.util.List;
+import java.util.Objects;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.constants.ShiftFields;
+import com.qcadoo.mes.productionPerShift.services.AutomaticPpsParametersService;
+import com.qcadoo.mes.productionPerShift.services.PpsRegenerationService;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+
+@Service
+public class ShiftHooksPPS {
+
+    private static final List<String> L_WORKING_TIME_FIELDS = Lists.newArrayList(ShiftFields.MONDAY_WORKING,
+            ShiftFields.MONDAY_HOURS, ShiftFields.TUESDAY_WORKING, ShiftFields.TUESDAY_HOURS, ShiftFields.WENSDAY_WORKING,
+            ShiftFields.WENSDAY_HOURS, ShiftFields.THURSDAY_WORKING, ShiftFields.THURSDAY_HOURS, ShiftFields.FRIDAY_WORKING,
+            ShiftFields.FRIDAY_HOURS, ShiftFields.SATURDAY_WORKING, ShiftFields.SATURDAY_HOURS, ShiftFields.SUNDAY_WORKING,
+            ShiftFields.SUNDAY_HOURS);
+
+    @Autowired
+    private PpsRegenerationService ppsRegenerationService;
+
+    @Autowired
+    private AutomaticPpsParametersService automaticPpsParametersService;
+
+    public void onUpdate(final DataDefinition shiftDD, final Entity shift) {
+        if (automaticPpsParametersService.isAutomaticPlanForShiftOn()
+                && workingTimeHasBeenChanged(shift, shiftDD.get(shift.getId()))) {
+            ppsRegenerationService.submitForShift(shift.getId());
+        }
+    }
+
+    private boolean workingTimeHasBeenChanged(final Entity shift, final Entity shiftFromDB) {
+        return shiftFromDB == null || L_WORKING_TIME_FIELDS.stream()
+                .anyMatch(fieldName -> !Objects.equals(shift.getField(fieldName), shiftFromDB.getField(fieldName)));
+    }
+
+}
@@ -0,0 +1,76 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productionPerShift.hooks;
+
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.qcadoo.mes.basic.constants.ShiftTimetableExceptionFields;
+import com.qcadoo.mes.productionPerShift.services.AutomaticPpsParametersService;
+import com.qcadoo.mes.productionPerShift.services.PpsRegenerationService;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+
+@Service
+public class ShiftTimetableExceptionHooksPPS {
+
+    @Autowired
+    private PpsRegenerationService ppsRegenerationService;
+
+    @Autowired
+    private AutomaticPpsParametersService automaticPpsParametersService;
+
+    public void onSave(final DataDefinition shiftTimetableExceptionDD, final Entity shiftTimetableException) {
+        if (automaticPpsParametersService.isAutomaticPlanForShiftOn()) {
+            Set<Long> productionLineIds = getProductionLineIds(shiftTimetableException);
+
+            if (shiftTimetableException.getId() != null) {
+                Entity shiftTimetableExceptionFromDB = shiftTimetableExceptionDD.get(shiftTimetableException.getId());
+
+                if (shiftTimetableExceptionFromDB != null) {
+                    productionLineIds.addAll(getProductionLineIds(shiftTimetableExceptionFromDB));
+                }
+            }
+
+            productionLineIds.forEach(ppsRegenerationService::submit);
+        }
+    }
+
+    public boolean onDelete(final DataDefinition shiftTimetableExceptionDD, final Entity shiftTimetableException) {
+        if (automaticPpsParametersService.isAutomaticPlanForShiftOn()) {
+            getProductionLineIds(shiftTimetableException).forEach(ppsRegenerationService::submit);
+        }
+
+        return true;
+    }
+
+    private Set<Long> getProductionLineIds(final Entity shiftTimetableException) {
+        return shiftTimetableException.getManyToManyField(ShiftTimetableExceptionFields.PRODUCTION_LINES).stream()
+                .map(Entity::getId).collect(Collectors.toSet());
+    }
+
+}
@@ -3,9 +3,9 @@ package com.qcadoo.mes.productionPerShift.services;
 import com.google.common.collect.Lists;
 import com.qcadoo.localization.api.utils.DateUtils;
 import com.qcadoo.mes.basic.ParameterService;
-import com.qcadoo.mes.basic.ShiftExceptionService;
-import com.qcadoo.mes.basic.ShiftsService;
+import com.qcadoo.mes.basic.WorkingTimeCalendarService;
 import com.qcadoo.mes.basic.shift.Shift;
+import com.qcadoo.mes.basic.shift.ShiftCalendar;
 import com.qcadoo.mes.basic.util.DateTimeRange;
 import com.qcadoo.mes.basicProductionCounting.BasicProductionCountingService;
 import com.qcadoo.mes.orders.constants.OrderFields;
@@ -45,16 +45,11 @@ public abstract class PpsBaseAlgorithmService {
     private DataDefinitionService dataDefinitionService;
 
     @Autowired
-    private ShiftsService shiftsService;
-
-    @Autowired
-    private ShiftExceptionService shiftExceptionService;
+    private WorkingTimeCalendarService workingTimeCalendarService;
 
     @Autowired
     private ParameterService parameterService;
 
-    private Map<DailyProgressKey, Entity> dailyProgressesWithTrackingRecords;
-
     public void generateProgressForDays(ProgressForDaysContainer progressForDaysContainer, Entity productionPerShift) {
         Entity order = productionPerShift.getBelongsToField(ProductionPerShiftFields.ORDER);
         if (progressForDaysContainer.getOrder() != null) {
@@ -75,8 +70,8 @@ public abstract class PpsBaseAlgorithmService {
             throw new IllegalStateException("No production line in order");
         }
 
-        List<Shift> shifts = shiftsService.findAll(productionLine);
-        if (shifts.isEmpty()) {
+        ShiftCalendar shiftCalendar = getShiftCalendar(progressForDaysContainer, productionLine);
+        if (shiftCalendar.isEmpty()) {
             progressForDaysContainer
                     .addError(new ErrorMessage("productionPerShift.automaticAlgorithm.productionLine.shiftsRequired", false,
                             productionLine.getStringField(ProductionLineFields.NUMBER)));
@@ -84,6 +79,7 @@ public abstract class PpsBaseAlgorithmService {
         }
 
         boolean allowIncompleteUnits = parameterService.getParameter().getBooleanField(ParameterFieldsPPS.ALLOW_INCOMPLITE_UNITS);
+        DataDefinition dailyProgressDD = getDailyProgressDD(productionPerShift);
 
         BigDecimal plannedQuantity = order.getDecimalField(OrderFields.PLANNED_QUANTITY);
         if (order.getBooleanField(OrderFields.FINAL_PRODUCTION_TRACKING)) {
@@ -103,8 +99,9 @@ public abstract class PpsBaseAlgorithmService {
                 || progressForDaysContainer.getAlreadyRegisteredQuantity().compareTo(BigDecimal.ZERO) > 0) {
 
             DailyProgressContainer dailyProgressContainer = fillDailyProgressWithShifts(progressForDaysContainer,
-                    productionPerShift, order, order.getBelongsToField(OrderFields.PRODUCTION_LINE), shifts, currentDate,
-                    orderStartDate, shouldBeCorrected, progressForDays.size(), alreadyPlannedQuantity, allowIncompleteUnits);
+                    productionPerShift, order, order.getBelongsToField(OrderFields.PRODUCTION_LINE), shiftCalendar,
+                    dailyProgressDD, currentDate, orderStartDate, shouldBeCorrected, progressForDays.size(),
+                    alreadyPlannedQuantity, allowIncompleteUnits);
             if (dailyProgressContainer.isCalculationError()) {
                 progressForDaysContainer.setCalculationError(true);
                 return;
@@ -127,8 +124,8 @@ public abstract class PpsBaseAlgorithmService {
 
         Entity productionLine = planProductionPerShift.getBelongsToField(PlanProductionPerShiftFields.PRODUCTION_LINE);
 
-        List<Shift> shifts = shiftsService.findAll(productionLine);
-        if (shifts.isEmpty()) {
+        ShiftCalendar shiftCalendar = getShiftCalendar(progressForDaysContainer, productionLine);
+        if (shiftCalendar.isEmpty()) {
             progressForDaysContainer
                     .addError(new ErrorMessage("productionPerShift.automaticAlgorithm.productionLine.shiftsRequired", false,
                             productionLine.getStringField(ProductionLineFields.NUMBER)));
@@ -136,6 +133,7 @@ public abstract class PpsBaseAlgorithmService {
         }
 
         boolean allowIncompleteUnits = parameterService.getParameter().getBooleanField(ParameterFieldsPPS.ALLOW_INCOMPLITE_UNITS);
+        DataDefinition dailyProgressDD = getDailyProgressDD(planProductionPerShift);
 
         progressForDaysContainer.setPlannedQuantity(order.getDecimalField(OrderFields.PLANNED_QUANTITY));
 
@@ -149,8 +147,8 @@ public abstract class PpsBaseAlgorithmService {
         int realizationDayNumber = 0;
         while (progressForDaysContainer.getPlannedQuantity().compareTo(BigDecimal.ZERO) > 0) {
             DailyProgressContainer dailyProgressContainer = fillDailyProgressWithShifts(progressForDaysContainer,
-                    planProductionPerShift, order, productionLine, shifts, currentDate, startDate, shouldBeCorrected,
-                    progressForDays.size(), alreadyPlannedQuantity, allowIncompleteUnits);
+                    planProductionPerShift, order, productionLine, shiftCalendar, dailyProgressDD, currentDate, startDate,
+                    shouldBeCorrected, progressForDays.size(), alreadyPlannedQuantity, allowIncompleteUnits);
             if (dailyProgressContainer.isCalculationError()) {
                 progressForDaysContainer.setCalculationError(true);
                 return;
@@ -168,20 +166,33 @@ public abstract class PpsBaseAlgorithmService {
         progressForDaysContainer.setProgressForDays(progressForDays);
     }
 
+    private ShiftCalendar getShiftCalendar(final ProgressForDaysContainer progressForDaysContainer, final Entity productionLine) {
+        if (progressForDaysContainer.getShiftCalendar() != null) {
+            return progressForDaysContainer.getShiftCalendar();
+        }
+        return workingTimeCalendarService.getShiftCalendar(productionLine);
+    }
+
+    private DataDefinition getDailyProgressDD(final Entity productionPerShift) {
+        if (ProductionPerShiftConstants.MODEL_PLAN_PRODUCTION_PER_SHIFT.equals(productionPerShift.getDataDefinition().getName())) {
+            return dataDefinitionService
+                    .get(ProductionPerShiftConstants.PLUGIN_IDENTIFIER, ProductionPerShiftConstants.MODEL_PLAN_DAILY_PROGRESS);
+        }
+        return dataDefinitionService
+                .get(ProductionPerShiftConstants.PLUGIN_IDENTIFIER, ProductionPerShiftConstants.MODEL_DAILY_PROGRESS);
+    }
+
     private DailyProgressContainer fillDailyProgressWithShifts(ProgressForDaysContainer progressForDaysContainer,
-                                                               Entity productionPerShift, Entity order, Entity productionLine, List<Shift> shifts, DateTime dateOfDay, Date orderStartDate,
+                                                               Entity productionPerShift, Entity order, Entity productionLine, ShiftCalendar shiftCalendar,
+                                                               DataDefinition dailyProgressDD, DateTime dateOfDay, Date orderStartDate,
                                                                boolean shouldBeCorrected, int progressForDayQuantity, BigDecimal alreadyPlannedQuantity,
                                                                boolean allowIncompleteUnits) {
         DailyProgressContainer dailyProgressContainer = new DailyProgressContainer();
         List<Entity> dailyProgressWithShifts = Lists.newLinkedList();
 
-        DataDefinition dailyProgressDD = dataDefinitionService
-                .get(ProductionPerShiftConstants.PLUGIN_IDENTIFIER, ProductionPerShiftConstants.MODEL_DAILY_PROGRESS);
-        if (ProductionPerShiftConstants.MODEL_PLAN_PRODUCTION_PER_SHIFT.equals(productionPerShift.getDataDefinition().getName())) {
-            dailyProgressDD = dataDefinitionService
-                    .get(ProductionPerShiftConstants.PLUGIN_IDENTIFIER, ProductionPerShiftConstants.MODEL_PLAN_DAILY_PROGRESS);
-        }
-        for (Shift shift : shifts) {
+        Map<DailyProgressKey, Entity> dailyProgressesWithTrackingRecords = progressForDaysContainer
+                .getDailyProgressesWithTrackingRecords();
+        for (Shift shift : shiftCalendar.getShifts()) {
             Entity dailyProgress = null;
             if (dailyProgressesWithTrackingRecords != null) {
                 DailyProgressKey key = new DailyProgressKey(shift.getId(), dateOfDay);
@@ -204,8 +215,7 @@ public abstract class PpsBaseAlgorithmService {
                 DateTime orderStartDateDT = new DateTime(orderStartDate, DateTimeZone.getDefault());
                 BigDecimal shiftEfficiency = BigDecimal.ZERO;
                 int time = 0;
-                for (DateTimeRange range : shiftExceptionService
-                        .getShiftWorkDateTimes(productionLine, shift, dateOfDay, true)) {
+                for (DateTimeRange range : shiftCalendar.getShiftWorkDateTimes(shift, dateOfDay)) {
                     if (orderStartDate.after(dateOfDay.toDate())) {
                         range = range.trimBefore(orderStartDateDT);
                     }
@@ -272,14 +282,16 @@ public abstract class PpsBaseAlgorithmService {
                                              final Entity pps, BigDecimal plannedQuantity) {
         BigDecimal alreadyRegisteredQuantity = progressForDaysContainer.getAlreadyRegisteredQuantity();
         if (pps != null) {
-            dailyProgressesWithTrackingRecords = dailyProgressService.getDailyProgressesWithTrackingRecords(pps);
+            Map<DailyProgressKey, Entity> dailyProgressesWithTrackingRecords = dailyProgressService
+                    .getDailyProgressesWithTrackingRecords(pps);
+            progressForDaysContainer.setDailyProgressesWithTrackingRecords(dailyProgressesWithTrackingRecords);
 
             for (Map.Entry<DailyProgressKey, Entity> entry : dailyProgressesWithTrackingRecords.entrySet()) {
                 alreadyRegisteredQuantity = alreadyRegisteredQuantity.add(entry.getKey().getQuantity());
             }
             progressForDaysContainer.setAlreadyRegisteredQuantity(alreadyRegisteredQuantity);
         } else {
-            dailyProgressesWithTrackingRecords = null;
+            progressForDaysContainer.setDailyProgressesWithTrackingRecords(null);
         }
         progressForDaysContainer
                 .setPlannedQuantity(plannedQuantity.subtract(alreadyRegisteredQuantity, numberService.getMathContext()));
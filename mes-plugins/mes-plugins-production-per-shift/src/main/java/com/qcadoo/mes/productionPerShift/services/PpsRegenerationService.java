@@ -0,0 +1,303 @@
+package com.qcadoo.mes.productionPerShift.services;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.qcadoo.mes.basic.WorkingTimeCalendarService;
+import com.qcadoo.mes.basic.shift.ShiftCalendar;
+import com.qcadoo.mes.basic.util.WorkerContextService;
+import com.qcadoo.mes.orders.constants.OrderFields;
+import com.qcadoo.mes.orders.constants.OrdersConstants;
+import com.qcadoo.mes.orders.states.constants.OrderState;
+import com.qcadoo.mes.productionLines.constants.ProductionLinesConstants;
+import com.qcadoo.mes.productionPerShift.PpsTimeHelper;
+import com.qcadoo.mes.productionPerShift.constants.ProductionPerShiftConstants;
+import com.qcadoo.mes.productionPerShift.constants.ProductionPerShiftFields;
+import com.qcadoo.mes.productionPerShift.domain.ProgressForDaysContainer;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchRestrictions;
+import com.qcadoo.model.api.validators.ErrorMessage;
+
+/**
+ * Regenerates production per shift of all open orders of a production line, e.g. after its shifts, their working hours or
+ * timetable exceptions were changed.
+ *
+ * Shift calendar of the line is built once and shared by calculations of all orders. Orders are calculated on a worker pool,
+ * which size is set with ppsRegenerationWorkers property, in tenant and security context of the caller, each of them in its
+ * own transaction and with its own {@link ProgressForDaysContainer}, and their progress for days are saved with
+ * {@link ProgressForDaysWriter}.
+ */
+@Service
+public class PpsRegenerationService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PpsRegenerationService.class);
+
+    private static final String ORDERS_WITH_PROGRESS_FOR_DAYS_QUERY = "SELECT DISTINCT pps.order_id "
+            + "FROM productionpershift_productionpershift pps "
+            + "JOIN productionpershift_progressforday progressforday ON progressforday.productionpershift_id = pps.id "
+            + "JOIN orders_order o ON o.id = pps.order_id "
+            + "WHERE o.productionline_id = :productionLineId AND o.state IN (:states) ORDER BY pps.order_id";
+
+    private static final String PRODUCTION_LINES_OF_SHIFT_QUERY = "SELECT productionline.id "
+            + "FROM productionlines_productionline productionline WHERE EXISTS (SELECT 1 FROM jointable_productionline_shift "
+            + "WHERE productionline_id = productionline.id AND shift_id = :shiftId) OR NOT EXISTS (SELECT 1 "
+            + "FROM jointable_productionline_shift WHERE productionline_id = productionline.id) ORDER BY productionline.id";
+
+    private static final List<String> L_OPEN_ORDER_STATES = Lists.newArrayList(OrderState.PENDING.getStringValue(),
+            OrderState.ACCEPTED.getStringValue(), OrderState.IN_PROGRESS.getStringValue(),
+            OrderState.INTERRUPTED.getStringValue());
+
+    @Value("${ppsRegenerationWorkers:4}")
+    private int workers;
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private WorkingTimeCalendarService workingTimeCalendarService;
+
+    @Autowired
+    private AutomaticPpsExecutorService automaticPpsExecutorService;
+
+    @Autowired
+    private AutomaticPpsParametersService automaticPpsParametersService;
+
+    @Autowired
+    private ProgressForDaysWriter progressForDaysWriter;
+
+    @Autowired
+    private PpsTimeHelper ppsTimeHelper;
+
+    @Autowired
+    private WorkerContextService workerContextService;
+
+    private ExecutorService executor;
+
+    @PostConstruct
+    void init() {
+        executor = Executors.newFixedThreadPool(workers,
+                new ThreadFactoryBuilder().setNameFormat("pps-regeneration-%d").setDaemon(true).build());
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Queues regeneration of production per shift of open orders of given production line. If it's requested within a
+     * transaction, orders are queued once it's committed, so they're calculated with the saved shifts.
+     */
+    public void submit(final Long productionLineId) {
+        Runnable task = workerContextService.wrap(() -> submitOrders(productionLineId));
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void afterCompletion(final int status) {
+                    super.afterCompletion(status);
+                    if (TransactionSynchronization.STATUS_COMMITTED == status) {
+                        executor.execute(task);
+                    }
+                }
+            });
+        } else {
+            executor.execute(task);
+        }
+    }
+
+    /**
+     * Queues regeneration of production per shift of production lines, which work in given shift - lines with this shift
+     * and lines without shifts, which work in all of them.
+     */
+    public void submitForShift(final Long shiftId) {
+        jdbcTemplate.queryForList(PRODUCTION_LINES_OF_SHIFT_QUERY, new MapSqlParameterSource("shiftId", shiftId), Long.class)
+                .forEach(this::submit);
+    }
+
+    /**
+     * Regenerates production per shift of open orders of given production line and waits until all of them are done. It
+     * should be called outside of a transaction, or after changes of the line were committed - orders are calculated in
+     * transactions of workers.
+     *
+     * @return number of orders, which production per shift was regenerated
+     */
+    public int regenerate(final Entity productionLine) {
+        long startTime = System.currentTimeMillis();
+
+        List<Future<Boolean>> results = submitOrders(getShiftCalendar(productionLine), findOrders(productionLine.getId()));
+
+        int regenerated = 0;
+
+        for (Future<Boolean> result : results) {
+            try {
+                if (result.get()) {
+                    regenerated++;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+
+                throw new IllegalStateException(e.getMessage(), e);
+            } catch (ExecutionException e) {
+                LOG.warn("Can't regenerate production per shift", e.getCause());
+            }
+        }
+
+        LOG.info("Production per shift of {} of {} orders of production line {} regenerated in {}ms", regenerated,
+                results.size(), productionLine.getId(), System.currentTimeMillis() - startTime);
+
+        return regenerated;
+    }
+
+    private ShiftCalendar getShiftCalendar(final Entity productionLine) {
+        return workingTimeCalendarService.getShiftCalendar(productionLine);
+    }
+
+    private List<Long> findOrders(final Long productionLineId) {
+        if (!automaticPpsParametersService.isAutomaticPlanForShiftOn()) {
+            return Lists.newArrayList();
+        }
+
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+
+        parameters.addValue("productionLineId", productionLineId);
+        parameters.addValue("states", L_OPEN_ORDER_STATES);
+
+        return jdbcTemplate.queryForList(ORDERS_WITH_PROGRESS_FOR_DAYS_QUERY, parameters, Long.class);
+    }
+
+    private void submitOrders(final Long productionLineId) {
+        inTransaction(status -> {
+            Entity productionLine = getProductionLine(productionLineId);
+
+            if (productionLine != null) {
+                submitOrders(getShiftCalendar(productionLine), findOrders(productionLineId));
+            }
+
+            return null;
+        });
+    }
+
+    private List<Future<Boolean>> submitOrders(final ShiftCalendar shiftCalendar, final List<Long> orderIds) {
+        List<Future<Boolean>> results = Lists.newArrayList();
+
+        for (Long orderId : orderIds) {
+            Callable<Boolean> task = () -> inTransaction(status -> regenerateOrder(orderId, shiftCalendar, status));
+
+            results.add(executor.submit(workerContextService.wrap(task)));
+        }
+
+        return results;
+    }
+
+    private boolean regenerateOrder(final Long orderId, final ShiftCalendar shiftCalendar, final TransactionStatus status) {
+        Entity order = dataDefinitionService.get(OrdersConstants.PLUGIN_IDENTIFIER, OrdersConstants.MODEL_ORDER).get(orderId);
+
+        if (order == null) {
+            return false;
+        }
+
+        Entity productionPerShift = dataDefinitionService
+                .get(ProductionPerShiftConstants.PLUGIN_IDENTIFIER, ProductionPerShiftConstants.MODEL_PRODUCTION_PER_SHIFT)
+                .find().add(SearchRestrictions.belongsTo(ProductionPerShiftFields.ORDER, order)).setMaxResults(1)
+                .uniqueResult();
+
+        if (productionPerShift == null) {
+            return false;
+        }
+
+        boolean shouldBeCorrected = OrderState.of(order).compareTo(OrderState.PENDING) != 0;
+
+        ProgressForDaysContainer progressForDaysContainer = new ProgressForDaysContainer();
+        progressForDaysContainer.setShouldBeCorrected(shouldBeCorrected);
+        progressForDaysContainer.setOrder(order);
+        progressForDaysContainer.setShiftCalendar(shiftCalendar);
+
+        try {
+            automaticPpsExecutorService.generateProgressForDays(progressForDaysContainer, productionPerShift);
+        } catch (Exception e) {
+            LOG.warn("Can't regenerate production per shift of order {}: {}", orderId, progressForDaysContainer.getErrors()
+                    .stream().map(ErrorMessage::getMessage).collect(Collectors.toList()));
+
+            return false;
+        }
+
+        if (progressForDaysContainer.isCalculationError()) {
+            LOG.warn("Can't regenerate production per shift of order {}: calculation error", orderId);
+
+            return false;
+        }
+
+        List<Entity> progressForDays = progressForDaysContainer.getProgressForDays();
+
+        if (!progressForDaysWriter.replaceProgressForDays(productionPerShift, progressForDays, shouldBeCorrected)) {
+            LOG.warn("Can't regenerate production per shift of order {}: {}", orderId, productionPerShift.getGlobalErrors()
+                    .stream().map(ErrorMessage::getMessage).collect(Collectors.toList()));
+
+            status.setRollbackOnly();
+
+            return false;
+        }
+
+        if (!progressForDaysContainer.isPartCalculation()) {
+            Date finishDate = ppsTimeHelper.calculateOrderFinishDate(order, progressForDays);
+
+            order.setField(OrderFields.FINISH_DATE, finishDate);
+
+            if (shouldBeCorrected) {
+                order.setField(OrderFields.CORRECTED_DATE_TO, finishDate);
+            } else {
+                order.setField(OrderFields.DATE_TO, finishDate);
+            }
+
+            order.getDataDefinition().save(order);
+        }
+
+        return true;
+    }
+
+    private Entity getProductionLine(final Long productionLineId) {
+        return dataDefinitionService
+                .get(ProductionLinesConstants.PLUGIN_IDENTIFIER, ProductionLinesConstants.MODEL_PRODUCTION_LINE)
+                .get(productionLineId);
+    }
+
+    private <T> T inTransaction(final TransactionCallback<T> callback) {
+        return new TransactionTemplate(transactionManager).execute(callback);
+    }
+
+}
@@ -0,0 +1,54 @@
+package com.qcadoo.mes.productionPerShift.services;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.productionPerShift.constants.ProductionPerShiftFields;
+import com.qcadoo.mes.productionPerShift.constants.ProgressForDayFields;
+import com.qcadoo.mes.productionPerShift.constants.ProgressType;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Writes generated progress for days of production per shift, replacing the previous ones, through data definition of
+ * production per shift.
+ */
+@Service
+public class ProgressForDaysWriter {
+
+    /**
+     * Replaces progress for days of production per shift with given, not yet saved ones. When corrected progresses are
+     * written, planned ones are kept, otherwise all previous progresses are removed - same as when production per shift is
+     * regenerated on save of order. Production per shift is saved with its data definition, so its hooks and validators of
+     * daily progresses are run.
+     *
+     * @param productionPerShift
+     *            production per shift
+     * @param progressForDays
+     *            generated progress for days with their daily progresses
+     * @param corrected
+     *            true if corrected progresses are written
+     * @return true if production per shift was saved
+     */
+    public boolean replaceProgressForDays(final Entity productionPerShift, final List<Entity> progressForDays,
+            final boolean corrected) {
+        List<Entity> replacedProgressForDays = Lists.newArrayList(progressForDays);
+
+        if (corrected) {
+            productionPerShift.setField(ProductionPerShiftFields.PLANNED_PROGRESS_TYPE, ProgressType.CORRECTED.getStringValue());
+
+            replacedProgressForDays.addAll(productionPerShift.getHasManyField(ProductionPerShiftFields.PROGRES_FOR_DAYS).stream()
+                    .filter(progressForDay -> !progressForDay.getBooleanField(ProgressForDayFields.CORRECTED))
+                    .collect(Collectors.toList()));
+        } else {
+            productionPerShift.setField(ProductionPerShiftFields.PLANNED_PROGRESS_TYPE, ProgressType.PLANNED.getStringValue());
+        }
+
+        productionPerShift.setField(ProductionPerShiftFields.PROGRES_FOR_DAYS, replacedProgressForDays);
+
+        return productionPerShift.getDataDefinition().save(productionPerShift).isValid();
+    }
+
+}
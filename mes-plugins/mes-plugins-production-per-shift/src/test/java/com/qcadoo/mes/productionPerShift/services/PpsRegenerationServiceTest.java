@@ -0,0 +1,289 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productionPerShift.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.WorkingTimeCalendarService;
+import com.qcadoo.mes.basic.shift.ShiftCalendar;
+import com.qcadoo.mes.basic.util.WorkerContextService;
+import com.qcadoo.mes.orders.constants.OrderFields;
+import com.qcadoo.mes.orders.constants.OrdersConstants;
+import com.qcadoo.mes.orders.states.constants.OrderState;
+import com.qcadoo.mes.productionPerShift.PpsTimeHelper;
+import com.qcadoo.mes.productionPerShift.constants.ProductionPerShiftConstants;
+import com.qcadoo.mes.productionPerShift.domain.ProgressForDaysContainer;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchCriterion;
+import com.qcadoo.model.api.search.SearchRestrictions;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(SearchRestrictions.class)
+public class PpsRegenerationServiceTest {
+
+    private static final Long L_PRODUCTION_LINE_ID = 1L;
+
+    private static final Long L_FIRST_ORDER_ID = 11L;
+
+    private static final Long L_SECOND_ORDER_ID = 12L;
+
+    private PpsRegenerationService ppsRegenerationService;
+
+    @Mock
+    private DataDefinitionService dataDefinitionService;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private TransactionStatus transactionStatus;
+
+    @Mock
+    private WorkingTimeCalendarService workingTimeCalendarService;
+
+    @Mock
+    private AutomaticPpsExecutorService automaticPpsExecutorService;
+
+    @Mock
+    private AutomaticPpsParametersService automaticPpsParametersService;
+
+    @Mock
+    private ProgressForDaysWriter progressForDaysWriter;
+
+    @Mock
+    private PpsTimeHelper ppsTimeHelper;
+
+    @Mock
+    private WorkerContextService workerContextService;
+
+    @Mock
+    private DataDefinition orderDD, productionPerShiftDD;
+
+    @Mock
+    private SearchCriteriaBuilder searchCriteriaBuilder;
+
+    @Mock
+    private Entity productionLine, firstOrder, secondOrder, firstProductionPerShift, secondProductionPerShift, progressForDay;
+
+    private final ShiftCalendar shiftCalendar = new ShiftCalendar(Collections.emptyList(),
+            (shift, dateOfDay) -> Collections.emptyList());
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+        PowerMockito.mockStatic(SearchRestrictions.class);
+
+        ppsRegenerationService = new PpsRegenerationService();
+
+        ReflectionTestUtils.setField(ppsRegenerationService, "workers", 2);
+        ReflectionTestUtils.setField(ppsRegenerationService, "dataDefinitionService", dataDefinitionService);
+        ReflectionTestUtils.setField(ppsRegenerationService, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(ppsRegenerationService, "transactionManager", transactionManager);
+        ReflectionTestUtils.setField(ppsRegenerationService, "workingTimeCalendarService", workingTimeCalendarService);
+        ReflectionTestUtils.setField(ppsRegenerationService, "automaticPpsExecutorService", automaticPpsExecutorService);
+        ReflectionTestUtils.setField(ppsRegenerationService, "automaticPpsParametersService", automaticPpsParametersService);
+        ReflectionTestUtils.setField(ppsRegenerationService, "progressForDaysWriter", progressForDaysWriter);
+        ReflectionTestUtils.setField(ppsRegenerationService, "ppsTimeHelper", ppsTimeHelper);
+        ReflectionTestUtils.setField(ppsRegenerationService, "workerContextService", workerContextService);
+
+        ppsRegenerationService.init();
+
+        given(workerContextService.wrap(any(Runnable.class))).willAnswer(invocation -> invocation.getArguments()[0]);
+        given(workerContextService.wrap(any(Callable.class))).willAnswer(invocation -> invocation.getArguments()[0]);
+        given(transactionManager.getTransaction(any(TransactionDefinition.class))).willReturn(transactionStatus);
+        given(automaticPpsParametersService.isAutomaticPlanForShiftOn()).willReturn(true);
+
+        given(productionLine.getId()).willReturn(L_PRODUCTION_LINE_ID);
+        given(workingTimeCalendarService.getShiftCalendar(productionLine)).willReturn(shiftCalendar);
+        given(jdbcTemplate.queryForList(anyString(), any(SqlParameterSource.class), eq(Long.class))).willReturn(
+                Lists.newArrayList(L_FIRST_ORDER_ID, L_SECOND_ORDER_ID));
+
+        given(dataDefinitionService.get(OrdersConstants.PLUGIN_IDENTIFIER, OrdersConstants.MODEL_ORDER)).willReturn(orderDD);
+        given(dataDefinitionService.get(ProductionPerShiftConstants.PLUGIN_IDENTIFIER,
+                ProductionPerShiftConstants.MODEL_PRODUCTION_PER_SHIFT)).willReturn(productionPerShiftDD);
+
+        stubOrder(L_FIRST_ORDER_ID, firstOrder);
+        stubOrder(L_SECOND_ORDER_ID, secondOrder);
+
+        SearchCriterion firstCriterion = mock(SearchCriterion.class);
+        SearchCriterion secondCriterion = mock(SearchCriterion.class);
+
+        given(SearchRestrictions.belongsTo(anyString(), eq(firstOrder))).willReturn(firstCriterion);
+        given(SearchRestrictions.belongsTo(anyString(), eq(secondOrder))).willReturn(secondCriterion);
+        given(productionPerShiftDD.find()).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.add(any(SearchCriterion.class))).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.setMaxResults(1)).willReturn(searchCriteriaBuilder);
+        willAnswer(invocation -> {
+            ProgressForDaysContainer progressForDaysContainer = (ProgressForDaysContainer) invocation.getArguments()[0];
+
+            progressForDaysContainer.setProgressForDays(Lists.newArrayList(progressForDay));
+
+            return null;
+        }).given(automaticPpsExecutorService).generateProgressForDays(any(ProgressForDaysContainer.class), any(Entity.class));
+    }
+
+    @After
+    public void tearDown() {
+        ppsRegenerationService.shutdown();
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private void stubOrder(final Long orderId, final Entity order) {
+        given(orderDD.get(orderId)).willReturn(order);
+        given(order.getId()).willReturn(orderId);
+        given(order.getStringField(OrderFields.STATE)).willReturn(OrderState.PENDING.getStringValue());
+        given(order.getDataDefinition()).willReturn(orderDD);
+    }
+
+    @Test
+    public void shouldRegenerateEachOrderInOwnTransactionAndContextOfCaller() {
+        // given
+        given(searchCriteriaBuilder.uniqueResult()).willReturn(firstProductionPerShift, secondProductionPerShift);
+        given(progressForDaysWriter.replaceProgressForDays(any(Entity.class), any(List.class), eq(false))).willReturn(true);
+
+        // when
+        int regenerated = ppsRegenerationService.regenerate(productionLine);
+
+        // then
+        assertEquals(2, regenerated);
+
+        verify(workerContextService, times(2)).wrap(any(Callable.class));
+        verify(transactionManager, times(2)).getTransaction(any(TransactionDefinition.class));
+        verify(transactionManager, times(2)).commit(transactionStatus);
+        verify(progressForDaysWriter, times(2)).replaceProgressForDays(any(Entity.class),
+                eq(Lists.newArrayList(progressForDay)), eq(false));
+        verify(orderDD).save(firstOrder);
+        verify(orderDD).save(secondOrder);
+        verify(transactionStatus, never()).setRollbackOnly();
+    }
+
+    @Test
+    public void shouldRollbackOrderWhichProductionPerShiftCanNotBeSaved() {
+        // given
+        given(searchCriteriaBuilder.uniqueResult()).willReturn(firstProductionPerShift);
+        given(progressForDaysWriter.replaceProgressForDays(any(Entity.class), any(List.class), eq(false))).willReturn(false);
+
+        // when
+        int regenerated = ppsRegenerationService.regenerate(productionLine);
+
+        // then
+        assertEquals(0, regenerated);
+
+        verify(transactionStatus, times(2)).setRollbackOnly();
+        verify(orderDD, never()).save(any(Entity.class));
+    }
+
+    @Test
+    public void shouldQueueRegenerationOnceTransactionIsCommitted() {
+        // given
+        ExecutorService executor = mock(ExecutorService.class);
+
+        ppsRegenerationService.shutdown();
+
+        ReflectionTestUtils.setField(ppsRegenerationService, "executor", executor);
+
+        TransactionSynchronizationManager.initSynchronization();
+
+        // when
+        ppsRegenerationService.submit(L_PRODUCTION_LINE_ID);
+
+        // then
+        verify(workerContextService).wrap(any(Runnable.class));
+        verify(executor, never()).execute(any(Runnable.class));
+
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+
+        assertEquals(1, synchronizations.size());
+
+        synchronizations.get(0).afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        verify(executor, never()).execute(any(Runnable.class));
+
+        synchronizations.get(0).afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+
+        verify(executor).execute(any(Runnable.class));
+    }
+
+    @Test
+    public void shouldQueueRegenerationOfProductionLinesWorkingInShift() {
+        // given
+        ExecutorService executor = mock(ExecutorService.class);
+
+        ppsRegenerationService.shutdown();
+
+        ReflectionTestUtils.setField(ppsRegenerationService, "executor", executor);
+
+        given(jdbcTemplate.queryForList(anyString(), any(SqlParameterSource.class), eq(Long.class))).willReturn(
+                Lists.newArrayList(1L, 2L));
+
+        // when
+        ppsRegenerationService.submitForShift(5L);
+
+        // then
+        verify(executor, times(2)).execute(any(Runnable.class));
+    }
+
+}
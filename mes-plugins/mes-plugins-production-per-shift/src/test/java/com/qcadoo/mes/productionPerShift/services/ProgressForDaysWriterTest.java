@@ -0,0 +1,126 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productionPerShift.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.stream.Stream;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.productionPerShift.constants.ProductionPerShiftFields;
+import com.qcadoo.mes.productionPerShift.constants.ProgressForDayFields;
+import com.qcadoo.mes.productionPerShift.constants.ProgressType;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.EntityList;
+
+public class ProgressForDaysWriterTest {
+
+    private ProgressForDaysWriter progressForDaysWriter;
+
+    @Mock
+    private DataDefinition productionPerShiftDD;
+
+    @Mock
+    private Entity productionPerShift, savedProductionPerShift, generatedProgressForDay, plannedProgressForDay,
+            correctedProgressForDay;
+
+    @Mock
+    private EntityList progressForDays;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        progressForDaysWriter = new ProgressForDaysWriter();
+
+        given(productionPerShift.getDataDefinition()).willReturn(productionPerShiftDD);
+        given(productionPerShiftDD.save(productionPerShift)).willReturn(savedProductionPerShift);
+        given(savedProductionPerShift.isValid()).willReturn(true);
+        given(productionPerShift.getHasManyField(ProductionPerShiftFields.PROGRES_FOR_DAYS)).willReturn(progressForDays);
+        given(progressForDays.stream()).willReturn(Stream.of(plannedProgressForDay, correctedProgressForDay));
+        given(plannedProgressForDay.getBooleanField(ProgressForDayFields.CORRECTED)).willReturn(false);
+        given(correctedProgressForDay.getBooleanField(ProgressForDayFields.CORRECTED)).willReturn(true);
+    }
+
+    @Test
+    public void shouldReplaceAllProgressForDaysWithPlannedOnesThroughDataDefinition() {
+        // when
+        boolean saved = progressForDaysWriter.replaceProgressForDays(productionPerShift,
+                Lists.newArrayList(generatedProgressForDay), false);
+
+        // then
+        assertTrue(saved);
+
+        verify(productionPerShift).setField(ProductionPerShiftFields.PLANNED_PROGRESS_TYPE,
+                ProgressType.PLANNED.getStringValue());
+        verify(productionPerShift).setField(ProductionPerShiftFields.PROGRES_FOR_DAYS,
+                Lists.newArrayList(generatedProgressForDay));
+        verify(productionPerShiftDD).save(productionPerShift);
+    }
+
+    @Test
+    public void shouldKeepPlannedProgressForDaysWhenCorrectedOnesAreReplaced() {
+        // when
+        progressForDaysWriter.replaceProgressForDays(productionPerShift, Lists.newArrayList(generatedProgressForDay), true);
+
+        // then
+        ArgumentCaptor<Object> progressForDaysCaptor = ArgumentCaptor.forClass(Object.class);
+
+        verify(productionPerShift).setField(ProductionPerShiftFields.PLANNED_PROGRESS_TYPE,
+                ProgressType.CORRECTED.getStringValue());
+        verify(productionPerShift).setField(eq(ProductionPerShiftFields.PROGRES_FOR_DAYS), progressForDaysCaptor.capture());
+        verify(productionPerShiftDD).save(productionPerShift);
+
+        assertEquals(Lists.newArrayList(generatedProgressForDay, plannedProgressForDay), progressForDaysCaptor.getValue());
+    }
+
+    @Test
+    public void shouldReturnFalseWhenProductionPerShiftIsNotValid() {
+        // given
+        given(savedProductionPerShift.isValid()).willReturn(false);
+
+        // when
+        boolean saved = progressForDaysWriter.replaceProgressForDays(productionPerShift, Lists.<Entity> newArrayList(), false);
+
+        // then
+        assertFalse(saved);
+
+        verify(productionPerShift, never()).setField(ProductionPerShiftFields.PLANNED_PROGRESS_TYPE,
+                ProgressType.CORRECTED.getStringValue());
+    }
+
+}
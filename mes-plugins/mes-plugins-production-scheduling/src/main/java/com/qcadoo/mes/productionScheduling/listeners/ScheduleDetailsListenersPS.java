@@ -3,7 +3,6 @@ package com.qcadoo.mes.productionScheduling.listeners;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
-import com.qcadoo.mes.basic.ParameterService;
 import com.qcadoo.mes.basic.ShiftsService;
 import com.qcadoo.mes.basic.constants.*;
 import com.qcadoo.mes.basicProductionCounting.BasicProductionCountingService;
@@ -39,10 +38,7 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.util.*;
-import java.util.stream.Collectors;
 
-import static com.qcadoo.mes.orders.states.constants.OperationalTaskStateStringValues.FINISHED;
-import static com.qcadoo.mes.orders.states.constants.OperationalTaskStateStringValues.REJECTED;
 import static com.qcadoo.mes.timeNormsForOperations.constants.TechnologyOperationComponentFieldsTNFO.NEXT_OPERATION_AFTER_PRODUCED_TYPE;
 import static com.qcadoo.mes.timeNormsForOperations.constants.TechnologyOperationComponentFieldsTNFO.SPECIFIED;
 import static com.qcadoo.model.api.search.SearchProjections.*;
@@ -76,9 +72,6 @@ public class ScheduleDetailsListenersPS {
     @Autowired
     private SchedulePositionValidators schedulePositionValidators;
 
-    @Autowired
-    private ParameterService parameterService;
-
     @Autowired
     private NormService normService;
 
@@ -91,6 +84,9 @@ public class ScheduleDetailsListenersPS {
     @Autowired
     private WorkstationChangeoverService workstationChangeoverService;
 
+    @Autowired
+    private ScheduleSnapshotService scheduleSnapshotService;
+
     @Transactional
     public void generatePlan(final ViewDefinitionState view, final ComponentState state, final String[] args) {
         getOperations(view, state, args);
@@ -173,15 +169,14 @@ public class ScheduleDetailsListenersPS {
                                                final String[] args) {
         long startAll = System.currentTimeMillis();
         Entity schedule = ((FormComponent) state).getEntity();
+        Date scheduleStartTime = schedule.getDateField(ScheduleFields.START_TIME);
+        ScheduleSnapshot snapshot = scheduleSnapshotService.load(schedule.getId(), scheduleStartTime);
         Map<Long, Date> workstationsFinishDates = Maps.newHashMap();
         Map<Long, Entity> workstationsPositions = Maps.newHashMap();
         Set<Long> ordersToAvoid = Sets.newHashSet();
-        List<Long> positionsIds = sortPositionsForWorkstations(schedule.getId());
-        Date scheduleStartTime = schedule.getDateField(ScheduleFields.START_TIME);
+        List<Long> positionsIds = sortPositionsForWorkstations(snapshot.getSchedule());
         for (Long positionId : positionsIds) {
-            long start = System.currentTimeMillis();
-            Entity position = dataDefinitionService
-                    .get(OrdersConstants.PLUGIN_IDENTIFIER, OrdersConstants.MODEL_SCHEDULE_POSITION).get(positionId);
+            Entity position = snapshot.getPosition(positionId);
             Entity order = position.getBelongsToField(SchedulePositionFields.ORDER);
             if (ordersToAvoid.contains(order.getId())) {
                 continue;
@@ -193,8 +188,8 @@ public class ScheduleDetailsListenersPS {
             }
             Map<Long, PositionNewData> operationWorkstationsPositionNewData = Maps.newHashMap();
 
-            boolean allMachineWorkTimesEqualsZero = getWorkstationsNewFinishDate(workstationsFinishDates, scheduleStartTime,
-                    position, workstations, operationWorkstationsPositionNewData, workstationsPositions);
+            boolean allMachineWorkTimesEqualsZero = getWorkstationsNewFinishDate(snapshot, workstationsFinishDates,
+                    scheduleStartTime, position, workstations, operationWorkstationsPositionNewData, workstationsPositions);
 
             if (allMachineWorkTimesEqualsZero) {
                 ordersToAvoid.add(order.getId());
@@ -205,7 +200,8 @@ public class ScheduleDetailsListenersPS {
                     .equals(schedule.getStringField(ScheduleFields.WORKSTATION_ASSIGN_CRITERION))) {
                 operationWorkstationsPositionNewData.entrySet().stream()
                         .min(Comparator.comparing(e -> e.getValue().getFinishDate()))
-                        .ifPresent(entry -> updatePositionWorkstationAndDates(entry, workstationsFinishDates, position, workstationsPositions));
+                        .ifPresent(entry -> updatePositionWorkstationAndDates(entry, snapshot, workstationsFinishDates,
+                                position, workstations, workstationsPositions));
             } else {
                 Map.Entry<Long, PositionNewData> firstEntry;
                 if (workstationsFinishDates.isEmpty()) {
@@ -215,21 +211,21 @@ public class ScheduleDetailsListenersPS {
                             .filter(entry -> workstationsFinishDates.containsKey(entry.getKey())).findFirst()
                             .orElse(operationWorkstationsPositionNewData.entrySet().iterator().next());
                 }
-                updatePositionWorkstationAndDates(firstEntry, workstationsFinishDates, position, workstationsPositions);
+                updatePositionWorkstationAndDates(firstEntry, snapshot, workstationsFinishDates, position, workstations,
+                        workstationsPositions);
             }
-            long finish = System.currentTimeMillis();
-            LOG.info("Plan for shift - workstation assignment: {}s.", (finish - start) / 1000);
         }
+        scheduleSnapshotService.save(snapshot);
         long finishAll = System.currentTimeMillis();
         LOG.info("Plan for shift {} - workstations assignment: {}s.", schedule.getStringField(ScheduleFields.NUMBER), (finishAll - startAll) / 1000);
     }
 
-    private boolean getWorkstationsNewFinishDate(Map<Long, Date> workstationsFinishDates, Date scheduleStartTime,
-                                                 Entity position,
+    private boolean getWorkstationsNewFinishDate(ScheduleSnapshot snapshot, Map<Long, Date> workstationsFinishDates,
+                                                 Date scheduleStartTime, Entity position,
                                                  List<Entity> workstations,
                                                  Map<Long, PositionNewData> operationWorkstationsPositionNewData,
                                                  Map<Long, Entity> workstationsPositions) {
-        Entity schedule = position.getBelongsToField(SchedulePositionFields.SCHEDULE);
+        Entity schedule = snapshot.getSchedule();
         Entity technologyOperationComponent = position.getBelongsToField(SchedulePositionFields.TECHNOLOGY_OPERATION_COMPONENT);
         BigDecimal staffFactor = normService.getStaffFactor(technologyOperationComponent, technologyOperationComponent.getIntegerField(TechnologyOperationComponentFieldsTNFO.OPTIMAL_STAFF));
         boolean allMachineWorkTimesEqualsZero = true;
@@ -254,8 +250,8 @@ public class ScheduleDetailsListenersPS {
             } else {
                 allMachineWorkTimesEqualsZero = false;
             }
-            Date finishDate = getFinishDate(workstationsFinishDates, scheduleStartTime, schedule, workstation);
-            finishDate = getFinishDateWithChildren(position, finishDate);
+            Date finishDate = getFinishDate(snapshot, workstationsFinishDates, scheduleStartTime, workstation);
+            finishDate = getFinishDateWithChildren(snapshot, position, finishDate);
             Entity previousPosition = workstationsPositions.get(workstation.getId());
             List<Entity> workstationChangeovers = workstationChangeoverService.findWorkstationChangeoversForSchedulePosition(finishDate, workstation, position, previousPosition);
             finishDate = getFinisDateWithChangeovers(finishDate, workstationChangeovers);
@@ -268,7 +264,7 @@ public class ScheduleDetailsListenersPS {
             if (schedule.getBooleanField(ScheduleFields.ADDITIONAL_TIME_EXTENDS_OPERATION)) {
                 newFinishDate = Date.from(newFinishDate.toInstant().plusSeconds(additionalTime));
             }
-            Date childrenEndTime = schedulePositionValidators.getChildrenMaxEndTime(position);
+            Date childrenEndTime = snapshot.getChildrenMaxEndTime(position);
             if (!Objects.isNull(childrenEndTime) && childrenEndTime.after(newFinishDate)) {
                 newFinishDate = childrenEndTime;
             }
@@ -289,13 +285,13 @@ public class ScheduleDetailsListenersPS {
         return finishDate;
     }
 
-    private Date getFinishDateWithChildren(Entity position, Date finishDate) {
-        Date childrenEndTime = getChildrenMaxEndTime(position);
+    private Date getFinishDateWithChildren(ScheduleSnapshot snapshot, Entity position, Date finishDate) {
+        Date childrenEndTime = getChildrenMaxEndTime(snapshot, position);
         if (!Objects.isNull(childrenEndTime) && childrenEndTime.after(finishDate)) {
             finishDate = childrenEndTime;
         }
         if (pluginManager.isPluginEnabled(ORDERS_FOR_SUBPRODUCTS_GENERATION)) {
-            childrenEndTime = schedulePositionValidators.getOrdersChildrenMaxEndTime(position);
+            childrenEndTime = snapshot.getOrdersChildrenMaxEndTime(position);
             if (!Objects.isNull(childrenEndTime) && childrenEndTime.after(finishDate)) {
                 finishDate = childrenEndTime;
             }
@@ -303,16 +299,11 @@ public class ScheduleDetailsListenersPS {
         return finishDate;
     }
 
-    private Date getChildrenMaxEndTime(Entity position) {
+    private Date getChildrenMaxEndTime(ScheduleSnapshot snapshot, Entity position) {
         Date childrenEndTime = null;
-        Entity schedule = position.getBelongsToField(SchedulePositionFields.SCHEDULE);
+        Entity schedule = snapshot.getSchedule();
         boolean includeTpz = schedule.getBooleanField(ScheduleFields.INCLUDE_TPZ);
-        List<Entity> children = schedule.getHasManyField(ScheduleFields.POSITIONS).stream()
-                .filter(e -> e.getBelongsToField(SchedulePositionFields.ORDER).getId().equals(position.getBelongsToField(SchedulePositionFields.ORDER).getId())
-                        && e.getBelongsToField(SchedulePositionFields.TECHNOLOGY_OPERATION_COMPONENT).getBelongsToField(TechnologyOperationComponentFields.PARENT) != null
-                        && e.getBelongsToField(SchedulePositionFields.TECHNOLOGY_OPERATION_COMPONENT).getBelongsToField(TechnologyOperationComponentFields.PARENT).getId()
-                        .equals(position.getBelongsToField(SchedulePositionFields.TECHNOLOGY_OPERATION_COMPONENT).getId())).collect(Collectors.toList());
-        for (Entity child : children) {
+        for (Entity child : snapshot.getChildren(position)) {
             Entity operationComponent = child.getBelongsToField(SchedulePositionFields.TECHNOLOGY_OPERATION_COMPONENT);
             Date childEndTime;
             if (SPECIFIED.equals(operationComponent.getStringField(NEXT_OPERATION_AFTER_PRODUCED_TYPE))) {
@@ -354,8 +345,9 @@ public class ScheduleDetailsListenersPS {
         return partialOperationWorkTime.getMachineWorkTime();
     }
 
-    private Date getFinishDate(Map<Long, Date> workstationsFinishDates, Date scheduleStartTime, Entity schedule,
+    private Date getFinishDate(ScheduleSnapshot snapshot, Map<Long, Date> workstationsFinishDates, Date scheduleStartTime,
                                Entity workstation) {
+        Entity schedule = snapshot.getSchedule();
         Date finishDate;
         if (schedule.getBooleanField(ScheduleFields.SCHEDULE_FOR_BUFFER)
                 && workstation.getBooleanField(WorkstationFields.BUFFER)) {
@@ -363,8 +355,7 @@ public class ScheduleDetailsListenersPS {
         } else {
             finishDate = workstationsFinishDates.get(workstation.getId());
             if (finishDate == null) {
-                Date operationalTasksMaxFinishDate = getOperationalTasksMaxFinishDateForWorkstation(scheduleStartTime,
-                        workstation);
+                Date operationalTasksMaxFinishDate = snapshot.getOperationalTasksMaxFinishDateForWorkstation(workstation.getId());
                 if (operationalTasksMaxFinishDate != null) {
                     finishDate = operationalTasksMaxFinishDate;
                     workstationsFinishDates.put(workstation.getId(), finishDate);
@@ -377,46 +368,26 @@ public class ScheduleDetailsListenersPS {
         return finishDate;
     }
 
-    private Date getOperationalTasksMaxFinishDateForWorkstation(Date scheduleStartTime, Entity workstation) {
-        SearchCriteriaBuilder scb = dataDefinitionService
-                .get(OrdersConstants.PLUGIN_IDENTIFIER, OrdersConstants.MODEL_OPERATIONAL_TASK).find()
-                .add(SearchRestrictions.belongsTo(OperationalTaskFields.WORKSTATION, workstation))
-                .add(SearchRestrictions.ne(OperationalTaskFields.STATE, REJECTED));
-        Entity parameter = parameterService.getParameter();
-        if (parameter.getBooleanField(ParameterFieldsO.SKIP_FINISHED_TASKS)) {
-            scb.add(SearchRestrictions.ne(OperationalTaskFields.STATE, FINISHED));
-        }
-
-        Entity operationalTasksMaxFinishDateEntity = scb.add(SearchRestrictions.gt(OperationalTaskFields.FINISH_DATE, scheduleStartTime))
-                .setProjection(list()
-                        .add(alias(SearchProjections.max(OperationalTaskFields.FINISH_DATE), OperationalTaskFields.FINISH_DATE))
-                        .add(rowCount()))
-                .addOrder(SearchOrders.desc(OperationalTaskFields.FINISH_DATE)).setMaxResults(1).uniqueResult();
-        return operationalTasksMaxFinishDateEntity.getDateField(OperationalTaskFields.FINISH_DATE);
-    }
-
-    private void updatePositionWorkstationAndDates(Map.Entry<Long, PositionNewData> entry,
+    private void updatePositionWorkstationAndDates(Map.Entry<Long, PositionNewData> entry, ScheduleSnapshot snapshot,
                                                    Map<Long, Date> workstationsFinishDates, Entity position,
-                                                   Map<Long, Entity> workstationsPositions) {
+                                                   List<Entity> workstations, Map<Long, Entity> workstationsPositions) {
         PositionNewData positionNewData = entry.getValue();
         workstationsFinishDates.put(entry.getKey(), positionNewData.getFinishDate());
-        position.setField(SchedulePositionFields.WORKSTATION, entry.getKey());
+        position.setField(SchedulePositionFields.WORKSTATION, workstations.stream()
+                .filter(workstation -> workstation.getId().equals(entry.getKey())).findFirst().orElse(null));
         position.setField(SchedulePositionFields.START_TIME, positionNewData.getStartDate());
         position.setField(SchedulePositionFields.END_TIME, positionNewData.getFinishDate());
         position.setField(SchedulePositionFields.STAFF, null);
         position.setField(SchedulePositionFields.LABOR_WORK_TIME, positionNewData.getLaborWorkTime());
         position.setField(SchedulePositionFields.MACHINE_WORK_TIME, positionNewData.getMachineWorkTime());
         position.setField(SchedulePositionFields.ADDITIONAL_TIME, positionNewData.getAdditionalTime());
-        position.setField(SchedulePositionFields.CURRENT_WORKSTATION_CHANGEOVER_FOR_SCHEDULE_POSITIONS, positionNewData.getWorkstationChangeovers());
-        position = position.getDataDefinition().fastSave(position);
+        snapshot.setWorkstationChangeovers(position, positionNewData.getWorkstationChangeovers());
         workstationsPositions.put(entry.getKey(), position);
     }
 
-    private List<Long> sortPositionsForWorkstations(Long scheduleId) {
-        Entity schedule = dataDefinitionService.get(OrdersConstants.PLUGIN_IDENTIFIER, OrdersConstants.MODEL_SCHEDULE)
-                .get(scheduleId);
+    private List<Long> sortPositionsForWorkstations(Entity schedule) {
         Map<String, Object> parameters = Maps.newHashMap();
-        parameters.put("scheduleId", scheduleId);
+        parameters.put("scheduleId", schedule.getId());
         StringBuilder query = new StringBuilder();
         query.append("SELECT id FROM ");
         query.append("(SELECT sp.id, sp.machineworktime, ");
@@ -447,11 +418,12 @@ public class ScheduleDetailsListenersPS {
         long start = System.currentTimeMillis();
         Entity schedule = ((FormComponent) state).getEntity();
         String scheduleWorkerAssignCriterion = schedule.getStringField(ScheduleFields.WORKER_ASSIGN_CRITERION);
+        Date scheduleStartTime = schedule.getDateField(ScheduleFields.START_TIME);
+        ScheduleSnapshot snapshot = scheduleSnapshotService.load(schedule.getId(), scheduleStartTime);
         Map<Long, Date> workersFinishDates = Maps.newHashMap();
         Map<Long, Long> workstationLastWorkers = Maps.newHashMap();
-        List<Entity> positions = sortPositionsForWorkers(schedule.getId());
-        Date scheduleStartTime = schedule.getDateField(ScheduleFields.START_TIME);
-        for (Entity position : positions) {
+        Map<Long, List<Entity>> operationsWorkers = Maps.newHashMap();
+        for (Entity position : snapshot.getPositions()) {
             Entity workstation = position.getBelongsToField(SchedulePositionFields.WORKSTATION);
             Entity technologyOperationComponent = position
                     .getBelongsToField(SchedulePositionFields.TECHNOLOGY_OPERATION_COMPONENT);
@@ -463,11 +435,14 @@ public class ScheduleDetailsListenersPS {
                     .equals(scheduleWorkerAssignCriterion)) {
                 position.setField(SchedulePositionFields.STAFF, workstation.getBelongsToField(WorkstationFields.STAFF));
             } else {
-                List<Entity> workers = getWorkers(position);
+                List<Entity> workers = operationsWorkers.computeIfAbsent(technologyOperationComponent
+                        .getBelongsToField(TechnologyOperationComponentFields.OPERATION).getId(), operationId -> getWorkers(position));
                 Map<Long, Date> operationWorkersFinishDates = Maps.newHashMap();
-                getWorkersFinishDate(workersFinishDates, scheduleStartTime, position, workers, operationWorkersFinishDates);
+                getWorkersFinishDate(snapshot, workersFinishDates, scheduleStartTime, position, workers,
+                        operationWorkersFinishDates);
                 if (workstationLastWorkers.get(workstation.getId()) == null) {
-                    workstationLastWorkers.put(workstation.getId(), getOperationalTasksLastWorkerForWorkstation(workstation));
+                    workstationLastWorkers.put(workstation.getId(),
+                            snapshot.getOperationalTasksLastWorkerForWorkstation(workstation.getId()));
                 }
                 Optional<Map.Entry<Long, Date>> firstEntryOptional = getFirstEntryOptional(scheduleWorkerAssignCriterion,
                         workstationLastWorkers, workstation, operationWorkersFinishDates);
@@ -475,8 +450,9 @@ public class ScheduleDetailsListenersPS {
                 firstEntryOptional.ifPresent(firstEntry -> updatePositionWorker(workersFinishDates, workstationLastWorkers,
                         position, workstation, firstEntry));
             }
-            position.getDataDefinition().fastSave(position);
+            snapshot.markChanged(position);
         }
+        scheduleSnapshotService.save(snapshot);
         long finish = System.currentTimeMillis();
         LOG.info("Plan for shift {} - workers assignment: {}s.", schedule.getStringField(ScheduleFields.NUMBER), (finish - start) / 1000);
     }
@@ -500,19 +476,6 @@ public class ScheduleDetailsListenersPS {
         return firstEntryOptional;
     }
 
-    private Long getOperationalTasksLastWorkerForWorkstation(Entity workstation) {
-        Entity entity = dataDefinitionService.get(OrdersConstants.PLUGIN_IDENTIFIER, OrdersConstants.MODEL_OPERATIONAL_TASK)
-                .find().add(SearchRestrictions.belongsTo(SchedulePositionFields.WORKSTATION, workstation))
-                .add(SearchRestrictions.isNotNull(SchedulePositionFields.STAFF))
-                .add(SearchRestrictions.ne(OperationalTaskFields.STATE, REJECTED))
-                .addOrder(SearchOrders.desc(OperationalTaskFields.FINISH_DATE)).setMaxResults(1).uniqueResult();
-        if (entity != null) {
-            return entity.getBelongsToField(SchedulePositionFields.STAFF).getId();
-        } else {
-            return null;
-        }
-    }
-
     private List<Entity> getWorkers(Entity position) {
         List<Entity> operationSkills = position.getBelongsToField(SchedulePositionFields.TECHNOLOGY_OPERATION_COMPONENT)
                 .getBelongsToField(TechnologyOperationComponentFields.OPERATION)
@@ -538,12 +501,12 @@ public class ScheduleDetailsListenersPS {
         return staffScb.list().getEntities();
     }
 
-    private void getWorkersFinishDate(Map<Long, Date> workersFinishDates, Date scheduleStartTime, Entity position,
-                                      List<Entity> workers, Map<Long, Date> operationWorkersFinishDates) {
+    private void getWorkersFinishDate(ScheduleSnapshot snapshot, Map<Long, Date> workersFinishDates, Date scheduleStartTime,
+                                      Entity position, List<Entity> workers, Map<Long, Date> operationWorkersFinishDates) {
         for (Entity worker : workers) {
             Date finishDate = workersFinishDates.get(worker.getId());
             if (finishDate == null) {
-                Date operationalTasksMaxFinishDate = getOperationalTasksMaxFinishDateForWorker(worker);
+                Date operationalTasksMaxFinishDate = snapshot.getOperationalTasksMaxFinishDateForWorker(worker.getId());
                 if (operationalTasksMaxFinishDate != null) {
                     finishDate = operationalTasksMaxFinishDate;
                     workersFinishDates.put(worker.getId(), finishDate);
@@ -566,26 +529,6 @@ public class ScheduleDetailsListenersPS {
         position.setField(SchedulePositionFields.STAFF, firstEntry.getKey());
     }
 
-    private List<Entity> sortPositionsForWorkers(Long scheduleId) {
-        Entity schedule = dataDefinitionService.get(OrdersConstants.PLUGIN_IDENTIFIER, OrdersConstants.MODEL_SCHEDULE)
-                .get(scheduleId);
-        return schedule.getHasManyField(ScheduleFields.POSITIONS).find()
-                .addOrder(SearchOrders.asc(SchedulePositionFields.START_TIME)).list().getEntities();
-
-    }
-
-    private Date getOperationalTasksMaxFinishDateForWorker(Entity worker) {
-        Entity operationalTasksMaxFinishDateEntity = dataDefinitionService
-                .get(OrdersConstants.PLUGIN_IDENTIFIER, OrdersConstants.MODEL_OPERATIONAL_TASK).find()
-                .add(SearchRestrictions.belongsTo(SchedulePositionFields.STAFF, worker))
-                .add(SearchRestrictions.ne(OperationalTaskFields.STATE, REJECTED))
-                .setProjection(list()
-                        .add(alias(SearchProjections.max(OperationalTaskFields.FINISH_DATE), OperationalTaskFields.FINISH_DATE))
-                        .add(rowCount()))
-                .addOrder(SearchOrders.desc(OperationalTaskFields.FINISH_DATE)).setMaxResults(1).uniqueResult();
-        return operationalTasksMaxFinishDateEntity.getDateField(OperationalTaskFields.FINISH_DATE);
-    }
-
     public void changeState(final ViewDefinitionState view, final ComponentState state, final String[] args) {
         stateExecutorService.changeState(ScheduleServiceMarker.class, view, args);
     }
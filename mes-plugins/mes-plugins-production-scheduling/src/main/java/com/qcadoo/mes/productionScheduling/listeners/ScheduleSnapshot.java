@@ -0,0 +1,170 @@
+package com.qcadoo.mes.productionScheduling.listeners;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.orders.constants.ScheduleFields;
+import com.qcadoo.mes.orders.constants.SchedulePositionFields;
+import com.qcadoo.model.api.Entity;
+
+import java.util.*;
+
+/**
+ * In-memory state of a schedule used while assigning workstations and workers to its positions.
+ *
+ * Positions, their relations and loads of workstations and workers from existing operational tasks are read once, positions are
+ * modified in memory only and changed ones are written back at the end by {@link ScheduleSnapshotService#save(ScheduleSnapshot)}.
+ */
+class ScheduleSnapshot {
+
+    private final Entity schedule;
+
+    private final Map<Long, Entity> positions = Maps.newLinkedHashMap();
+
+    private final Map<Long, Long> positionsOrders = Maps.newHashMap();
+
+    private final ListMultimap<List<Long>, Entity> childrenByOrderAndOperation = ArrayListMultimap.create();
+
+    private final ListMultimap<Long, Entity> rootPositionsByParentOrder = ArrayListMultimap.create();
+
+    private final Map<Long, Date> workstationsFinishDates;
+
+    private final Map<Long, Date> workersFinishDates;
+
+    private final Map<Long, Long> workstationsLastWorkers;
+
+    private final Set<Long> changedPositions = Sets.newLinkedHashSet();
+
+    private final Map<Long, List<Entity>> workstationChangeovers = Maps.newLinkedHashMap();
+
+    ScheduleSnapshot(final Entity schedule, final List<Entity> positions, final Map<Long, Date> workstationsFinishDates,
+                     final Map<Long, Date> workersFinishDates, final Map<Long, Long> workstationsLastWorkers) {
+        this.schedule = schedule;
+        this.workstationsFinishDates = workstationsFinishDates;
+        this.workersFinishDates = workersFinishDates;
+        this.workstationsLastWorkers = workstationsLastWorkers;
+
+        for (Entity position : positions) {
+            this.positions.put(position.getId(), position);
+        }
+    }
+
+    void addRelations(final Long positionId, final Long orderId, final Long orderParentId, final Long operationId,
+                      final Long operationParentId) {
+        Entity position = positions.get(positionId);
+
+        if (Objects.isNull(position)) {
+            return;
+        }
+
+        positionsOrders.put(positionId, orderId);
+
+        if (Objects.nonNull(operationParentId)) {
+            childrenByOrderAndOperation.put(Arrays.asList(orderId, operationParentId), position);
+        } else if (Objects.nonNull(orderParentId)) {
+            rootPositionsByParentOrder.put(orderParentId, position);
+        }
+    }
+
+    Entity getSchedule() {
+        return schedule;
+    }
+
+    Entity getPosition(final Long positionId) {
+        return positions.get(positionId);
+    }
+
+    Collection<Entity> getPositions() {
+        return positions.values();
+    }
+
+    Date getOperationalTasksMaxFinishDateForWorkstation(final Long workstationId) {
+        return workstationsFinishDates.get(workstationId);
+    }
+
+    Date getOperationalTasksMaxFinishDateForWorker(final Long workerId) {
+        return workersFinishDates.get(workerId);
+    }
+
+    Long getOperationalTasksLastWorkerForWorkstation(final Long workstationId) {
+        return workstationsLastWorkers.get(workstationId);
+    }
+
+    /**
+     * Returns positions of the same order, which operations are direct children of given position's operation.
+     */
+    List<Entity> getChildren(final Entity position) {
+        Long operationId = position.getBelongsToField(SchedulePositionFields.TECHNOLOGY_OPERATION_COMPONENT).getId();
+
+        return childrenByOrderAndOperation.get(Arrays.asList(positionsOrders.get(position.getId()), operationId));
+    }
+
+    /**
+     * Returns maximal end time of children positions, extended by additional time when it doesn't extend operations.
+     */
+    Date getChildrenMaxEndTime(final Entity position) {
+        return getMaxEndTime(getChildren(position));
+    }
+
+    /**
+     * Returns maximal end time of root positions of orders generated for subproducts of given position's order.
+     */
+    Date getOrdersChildrenMaxEndTime(final Entity position) {
+        return getMaxEndTime(rootPositionsByParentOrder.get(positionsOrders.get(position.getId())));
+    }
+
+    private Date getMaxEndTime(final List<Entity> positions) {
+        boolean additionalTimeExtendsOperation = schedule.getBooleanField(ScheduleFields.ADDITIONAL_TIME_EXTENDS_OPERATION);
+
+        Date maxEndTime = null;
+
+        for (Entity position : positions) {
+            Date endTime = position.getDateField(SchedulePositionFields.END_TIME);
+
+            if (Objects.isNull(endTime)) {
+                continue;
+            }
+
+            if (!additionalTimeExtendsOperation) {
+                Integer additionalTime = position.getIntegerField(SchedulePositionFields.ADDITIONAL_TIME);
+
+                if (Objects.isNull(additionalTime)) {
+                    continue;
+                }
+
+                endTime = Date.from(endTime.toInstant().plusSeconds(additionalTime));
+            }
+
+            if (Objects.isNull(maxEndTime) || endTime.after(maxEndTime)) {
+                maxEndTime = endTime;
+            }
+        }
+
+        return maxEndTime;
+    }
+
+    void markChanged(final Entity position) {
+        changedPositions.add(position.getId());
+    }
+
+    void setWorkstationChangeovers(final Entity position, final List<Entity> changeovers) {
+        markChanged(position);
+        workstationChangeovers.put(position.getId(), changeovers);
+    }
+
+    List<Entity> getChangedPositions() {
+        List<Entity> changed = new ArrayList<>();
+
+        for (Long positionId : changedPositions) {
+            changed.add(positions.get(positionId));
+        }
+
+        return changed;
+    }
+
+    Map<Long, List<Entity>> getWorkstationChangeovers() {
+        return workstationChangeovers;
+    }
+
+}
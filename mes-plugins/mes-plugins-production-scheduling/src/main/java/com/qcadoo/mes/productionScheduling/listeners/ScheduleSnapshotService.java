@@ -0,0 +1,246 @@
+package com.qcadoo.mes.productionScheduling.listeners;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.basic.ParameterService;
+import com.qcadoo.mes.orders.constants.OrdersConstants;
+import com.qcadoo.mes.orders.constants.ParameterFieldsO;
+import com.qcadoo.mes.orders.constants.SchedulePositionFields;
+import com.qcadoo.mes.orders.constants.WorkstationChangeoverForSchedulePositionFields;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchOrders;
+import com.qcadoo.model.api.search.SearchRestrictions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Service;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.*;
+
+import static com.qcadoo.mes.orders.states.constants.OperationalTaskStateStringValues.FINISHED;
+import static com.qcadoo.mes.orders.states.constants.OperationalTaskStateStringValues.REJECTED;
+
+@Service
+class ScheduleSnapshotService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ScheduleSnapshotService.class);
+
+    private static final String L_SCHEDULE_ID = "scheduleId";
+
+    private static final String L_REJECTED = "rejected";
+
+    private static final String L_FINISHED = "finished";
+
+    private static final String L_START_TIME = "startTime";
+
+    private static final String POSITIONS_RELATIONS_QUERY = "SELECT sp.id, sp.order_id, o.parent_id AS orderparent_id, "
+            + "sp.technologyoperationcomponent_id, toc.parent_id AS tocparent_id FROM orders_scheduleposition sp "
+            + "JOIN technologies_technologyoperationcomponent toc ON sp.technologyoperationcomponent_id = toc.id "
+            + "JOIN orders_order o ON sp.order_id = o.id WHERE sp.schedule_id = :scheduleId";
+
+    private static final String WORKERS_FINISH_DATES_QUERY = "SELECT staff_id, MAX(finishdate) AS finishdate "
+            + "FROM orders_operationaltask WHERE staff_id IS NOT NULL AND state <> :rejected GROUP BY staff_id";
+
+    private static final String WORKSTATIONS_LAST_WORKERS_QUERY = "SELECT DISTINCT ON (workstation_id) workstation_id, staff_id "
+            + "FROM orders_operationaltask WHERE workstation_id IS NOT NULL AND staff_id IS NOT NULL AND state <> :rejected "
+            + "ORDER BY workstation_id, finishdate DESC";
+
+    private static final String UPDATE_POSITION = "UPDATE orders_scheduleposition SET workstation_id = :workstationId, "
+            + "staff_id = :staffId, starttime = :startTime, endtime = :endTime, additionaltime = :additionalTime, "
+            + "machineworktime = :machineWorkTime, laborworktime = :laborWorkTime WHERE id = :id";
+
+    private static final String DELETE_WORKSTATION_CHANGEOVERS = "DELETE FROM orders_workstationchangeoverforscheduleposition "
+            + "WHERE currentscheduleposition_id IN (:positionsIds)";
+
+    private static final String INSERT_WORKSTATION_CHANGEOVER = "INSERT INTO orders_workstationchangeoverforscheduleposition "
+            + "(currentscheduleposition_id, previousscheduleposition_id, previousoperationaltask_id, "
+            + "workstationchangeovernorm_id, startdate, finishdate) VALUES (:currentSchedulePositionId, "
+            + ":previousSchedulePositionId, :previousOperationalTaskId, :workstationChangeoverNormId, :startDate, :finishDate)";
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ParameterService parameterService;
+
+    /**
+     * Loads schedule with its positions ordered by start time, relations between positions and current loads of workstations
+     * and workers resulting from operational tasks.
+     */
+    ScheduleSnapshot load(final Long scheduleId, final Date scheduleStartTime) {
+        long start = System.currentTimeMillis();
+
+        Entity schedule = dataDefinitionService.get(OrdersConstants.PLUGIN_IDENTIFIER, OrdersConstants.MODEL_SCHEDULE)
+                .get(scheduleId);
+        List<Entity> positions = dataDefinitionService
+                .get(OrdersConstants.PLUGIN_IDENTIFIER, OrdersConstants.MODEL_SCHEDULE_POSITION).find()
+                .add(SearchRestrictions.belongsTo(SchedulePositionFields.SCHEDULE, schedule))
+                .addOrder(SearchOrders.asc(SchedulePositionFields.START_TIME)).list().getEntities();
+
+        ScheduleSnapshot snapshot = new ScheduleSnapshot(schedule, positions, getWorkstationsFinishDates(scheduleStartTime),
+                getWorkersFinishDates(), getWorkstationsLastWorkers());
+
+        Map<String, Object> parameters = Maps.newHashMap();
+        parameters.put(L_SCHEDULE_ID, scheduleId);
+
+        jdbcTemplate.query(POSITIONS_RELATIONS_QUERY, parameters,
+                rs -> {
+                    snapshot.addRelations(rs.getLong("id"), rs.getLong("order_id"), getNullableLong(rs, "orderparent_id"),
+                            rs.getLong("technologyoperationcomponent_id"), getNullableLong(rs, "tocparent_id"));
+                });
+
+        LOG.info("Schedule {} snapshot with {} positions loaded in {}ms.", scheduleId, positions.size(),
+                System.currentTimeMillis() - start);
+
+        return snapshot;
+    }
+
+    private Long getNullableLong(final ResultSet rs, final String column) throws SQLException {
+        long value = rs.getLong(column);
+
+        return rs.wasNull() ? null : value;
+    }
+
+    private Map<Long, Date> getWorkstationsFinishDates(final Date scheduleStartTime) {
+        StringBuilder query = new StringBuilder();
+        query.append("SELECT workstation_id, MAX(finishdate) AS finishdate FROM orders_operationaltask ");
+        query.append("WHERE workstation_id IS NOT NULL AND state <> :rejected AND finishdate > :startTime ");
+
+        Map<String, Object> parameters = Maps.newHashMap();
+        parameters.put(L_REJECTED, REJECTED);
+        parameters.put(L_START_TIME, scheduleStartTime);
+
+        if (parameterService.getParameter().getBooleanField(ParameterFieldsO.SKIP_FINISHED_TASKS)) {
+            query.append("AND state <> :finished ");
+            parameters.put(L_FINISHED, FINISHED);
+        }
+
+        query.append("GROUP BY workstation_id");
+
+        return getDatesById(query.toString(), parameters, "workstation_id");
+    }
+
+    private Map<Long, Date> getWorkersFinishDates() {
+        Map<String, Object> parameters = Maps.newHashMap();
+        parameters.put(L_REJECTED, REJECTED);
+
+        return getDatesById(WORKERS_FINISH_DATES_QUERY, parameters, "staff_id");
+    }
+
+    private Map<Long, Date> getDatesById(final String query, final Map<String, Object> parameters, final String idColumn) {
+        Map<Long, Date> datesById = Maps.newHashMap();
+
+        jdbcTemplate.query(query, parameters, rs -> {
+            if (Objects.nonNull(rs.getTimestamp("finishdate"))) {
+                datesById.put(rs.getLong(idColumn), new Date(rs.getTimestamp("finishdate").getTime()));
+            }
+        });
+
+        return datesById;
+    }
+
+    private Map<Long, Long> getWorkstationsLastWorkers() {
+        Map<String, Object> parameters = Maps.newHashMap();
+        parameters.put(L_REJECTED, REJECTED);
+
+        Map<Long, Long> workstationsLastWorkers = Maps.newHashMap();
+
+        jdbcTemplate.query(WORKSTATIONS_LAST_WORKERS_QUERY, parameters,
+                rs -> {
+                    workstationsLastWorkers.put(rs.getLong("workstation_id"), rs.getLong("staff_id"));
+                });
+
+        return workstationsLastWorkers;
+    }
+
+    /**
+     * Writes fields of changed positions, which are set while assigning workstations and workers, with one batch update.
+     * Workstation changeovers of positions, which were assigned to workstations, are replaced together with them - previous
+     * ones are deleted and new ones inserted with one batch.
+     */
+    void save(final ScheduleSnapshot snapshot) {
+        long start = System.currentTimeMillis();
+
+        Map<Long, List<Entity>> workstationChangeovers = snapshot.getWorkstationChangeovers();
+        List<Entity> changedPositions = snapshot.getChangedPositions();
+
+        if (!changedPositions.isEmpty()) {
+            jdbcTemplate.batchUpdate(UPDATE_POSITION,
+                    changedPositions.stream().map(this::createPositionParameters).toArray(SqlParameterSource[]::new));
+        }
+
+        if (!workstationChangeovers.isEmpty()) {
+            List<SqlParameterSource> changeoversParameters = Lists.newArrayList();
+
+            for (Map.Entry<Long, List<Entity>> positionChangeovers : workstationChangeovers.entrySet()) {
+                for (Entity changeover : positionChangeovers.getValue()) {
+                    changeoversParameters.add(createChangeoverParameters(positionChangeovers.getKey(), changeover));
+                }
+            }
+
+            Map<String, Object> parameters = Maps.newHashMap();
+            parameters.put("positionsIds", workstationChangeovers.keySet());
+
+            jdbcTemplate.update(DELETE_WORKSTATION_CHANGEOVERS, parameters);
+
+            if (!changeoversParameters.isEmpty()) {
+                jdbcTemplate.batchUpdate(INSERT_WORKSTATION_CHANGEOVER,
+                        changeoversParameters.toArray(new SqlParameterSource[0]));
+            }
+        }
+
+        LOG.info("Schedule {} - {} positions saved in {}ms.", snapshot.getSchedule().getId(), changedPositions.size(),
+                System.currentTimeMillis() - start);
+    }
+
+    private SqlParameterSource createPositionParameters(final Entity position) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+
+        parameters.addValue("id", position.getId());
+        parameters.addValue("workstationId", getId(position, SchedulePositionFields.WORKSTATION), Types.BIGINT);
+        parameters.addValue("staffId", getId(position, SchedulePositionFields.STAFF), Types.BIGINT);
+        parameters.addValue("startTime", position.getDateField(SchedulePositionFields.START_TIME), Types.TIMESTAMP);
+        parameters.addValue("endTime", position.getDateField(SchedulePositionFields.END_TIME), Types.TIMESTAMP);
+        parameters.addValue("additionalTime", position.getIntegerField(SchedulePositionFields.ADDITIONAL_TIME), Types.INTEGER);
+        parameters.addValue("machineWorkTime", position.getIntegerField(SchedulePositionFields.MACHINE_WORK_TIME),
+                Types.INTEGER);
+        parameters.addValue("laborWorkTime", position.getIntegerField(SchedulePositionFields.LABOR_WORK_TIME), Types.INTEGER);
+
+        return parameters;
+    }
+
+    private SqlParameterSource createChangeoverParameters(final Long positionId, final Entity changeover) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+
+        parameters.addValue("currentSchedulePositionId", positionId);
+        parameters.addValue("previousSchedulePositionId",
+                getId(changeover, WorkstationChangeoverForSchedulePositionFields.PREVIOUS_SCHEDULE_POSITION), Types.BIGINT);
+        parameters.addValue("previousOperationalTaskId",
+                getId(changeover, WorkstationChangeoverForSchedulePositionFields.PREVIOUS_OPERATIONAL_TASK), Types.BIGINT);
+        parameters.addValue("workstationChangeoverNormId",
+                getId(changeover, WorkstationChangeoverForSchedulePositionFields.WORKSTATION_CHANGEOVER_NORM), Types.BIGINT);
+        parameters.addValue("startDate", changeover.getDateField(WorkstationChangeoverForSchedulePositionFields.START_DATE),
+                Types.TIMESTAMP);
+        parameters.addValue("finishDate", changeover.getDateField(WorkstationChangeoverForSchedulePositionFields.FINISH_DATE),
+                Types.TIMESTAMP);
+
+        return parameters;
+    }
+
+    private Long getId(final Entity entity, final String fieldName) {
+        Entity belongsToEntity = entity.getBelongsToField(fieldName);
+
+        return Objects.isNull(belongsToEntity) ? null : belongsToEntity.getId();
+    }
+
+}
@@ -0,0 +1,176 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productionScheduling.listeners;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.orders.constants.SchedulePositionFields;
+import com.qcadoo.mes.orders.constants.WorkstationChangeoverForSchedulePositionFields;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+
+public class ScheduleSnapshotServiceTest {
+
+    private ScheduleSnapshotService scheduleSnapshotService;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Mock
+    private Entity schedule;
+
+    @Mock
+    private Entity firstPosition;
+
+    @Mock
+    private Entity secondPosition;
+
+    @Mock
+    private Entity thirdPosition;
+
+    @Mock
+    private Entity workstation;
+
+    @Mock
+    private Entity changeover;
+
+    @Mock
+    private Entity changeoverNorm;
+
+    @Mock
+    private DataDefinition positionDD;
+
+    @Before
+    public final void init() {
+        MockitoAnnotations.initMocks(this);
+
+        scheduleSnapshotService = new ScheduleSnapshotService();
+
+        ReflectionTestUtils.setField(scheduleSnapshotService, "jdbcTemplate", jdbcTemplate);
+
+        given(firstPosition.getId()).willReturn(1L);
+        given(secondPosition.getId()).willReturn(2L);
+        given(thirdPosition.getId()).willReturn(3L);
+        given(workstation.getId()).willReturn(10L);
+        given(changeoverNorm.getId()).willReturn(20L);
+
+        for (Entity position : Lists.newArrayList(firstPosition, secondPosition, thirdPosition)) {
+            given(position.getDataDefinition()).willReturn(positionDD);
+        }
+    }
+
+    @Test
+    public final void shouldSaveOnlyChangedPositionsWithOneBatchWithTheirChangeovers() {
+        // given
+        ScheduleSnapshot snapshot = new ScheduleSnapshot(schedule,
+                Lists.newArrayList(firstPosition, secondPosition, thirdPosition), Maps.newHashMap(), Maps.newHashMap(),
+                Maps.newHashMap());
+
+        Date startTime = new Date();
+
+        given(firstPosition.getBelongsToField(SchedulePositionFields.WORKSTATION)).willReturn(workstation);
+        given(firstPosition.getDateField(SchedulePositionFields.START_TIME)).willReturn(startTime);
+        given(changeover.getBelongsToField(WorkstationChangeoverForSchedulePositionFields.PREVIOUS_SCHEDULE_POSITION))
+                .willReturn(thirdPosition);
+        given(changeover.getBelongsToField(WorkstationChangeoverForSchedulePositionFields.WORKSTATION_CHANGEOVER_NORM))
+                .willReturn(changeoverNorm);
+
+        snapshot.setWorkstationChangeovers(firstPosition, Lists.newArrayList(changeover));
+        snapshot.markChanged(thirdPosition);
+
+        ArgumentCaptor<SqlParameterSource[]> positionsCaptor = ArgumentCaptor.forClass(SqlParameterSource[].class);
+        ArgumentCaptor<Map> deleteCaptor = ArgumentCaptor.forClass(Map.class);
+        ArgumentCaptor<SqlParameterSource[]> changeoversCaptor = ArgumentCaptor.forClass(SqlParameterSource[].class);
+
+        // when
+        scheduleSnapshotService.save(snapshot);
+
+        // then
+        verify(jdbcTemplate).batchUpdate(eq(getField("UPDATE_POSITION")), positionsCaptor.capture());
+        verify(jdbcTemplate).update(eq(getField("DELETE_WORKSTATION_CHANGEOVERS")), deleteCaptor.capture());
+        verify(jdbcTemplate).batchUpdate(eq(getField("INSERT_WORKSTATION_CHANGEOVER")), changeoversCaptor.capture());
+        verifyNoMoreInteractions(jdbcTemplate);
+        verify(positionDD, never()).fastSave(firstPosition);
+
+        SqlParameterSource[] positions = positionsCaptor.getValue();
+
+        assertEquals(2, positions.length);
+        assertEquals(1L, positions[0].getValue("id"));
+        assertEquals(10L, positions[0].getValue("workstationId"));
+        assertEquals(startTime, positions[0].getValue("startTime"));
+        assertEquals(3L, positions[1].getValue("id"));
+        assertEquals(null, positions[1].getValue("workstationId"));
+
+        assertEquals(Lists.newArrayList(1L), Lists.newArrayList((Collection<?>) deleteCaptor.getValue().get("positionsIds")));
+
+        SqlParameterSource[] changeovers = changeoversCaptor.getValue();
+
+        assertEquals(1, changeovers.length);
+        assertEquals(1L, changeovers[0].getValue("currentSchedulePositionId"));
+        assertEquals(3L, changeovers[0].getValue("previousSchedulePositionId"));
+        assertEquals(null, changeovers[0].getValue("previousOperationalTaskId"));
+        assertEquals(20L, changeovers[0].getValue("workstationChangeoverNormId"));
+    }
+
+    @Test
+    public final void shouldNotWriteWithoutChangedPositions() {
+        // given
+        ScheduleSnapshot snapshot = new ScheduleSnapshot(schedule, Lists.newArrayList(firstPosition), Maps.newHashMap(),
+                Maps.newHashMap(), Maps.newHashMap());
+
+        // when
+        scheduleSnapshotService.save(snapshot);
+
+        // then
+        verify(jdbcTemplate, never()).update(anyString(), anyMap());
+        verifyNoMoreInteractions(jdbcTemplate);
+    }
+
+    private String getField(final String name) {
+        return (String) ReflectionTestUtils.getField(scheduleSnapshotService, name);
+    }
+
+}
@@ -0,0 +1,213 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productionScheduling.listeners;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.orders.constants.ScheduleFields;
+import com.qcadoo.mes.orders.constants.SchedulePositionFields;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Compares lookups of {@link ScheduleSnapshot} with the per-position path they replaced, which scanned all positions of the
+ * schedule (or queried them, see SchedulePositionValidators) for every position: children of the same order, which
+ * operations are direct children of position's operation, and root positions of orders generated for position's order.
+ */
+public class ScheduleSnapshotTest {
+
+    private static final int L_ORDERS = 60;
+
+    private static final long L_BASE_TIME = 1700000000000L;
+
+    private final Random random = new Random(20240304L);
+
+    private final Map<Long, Long> operationParents = Maps.newHashMap();
+
+    private final Map<Long, Long> orderParents = Maps.newHashMap();
+
+    private final Map<Long, Long> positionOrders = Maps.newHashMap();
+
+    private final List<Entity> positions = Lists.newArrayList();
+
+    @Test
+    public void shouldFindSameChildrenEndTimesAsPerPositionScanWhenAdditionalTimeExtendsOperation() {
+        shouldFindSameChildrenEndTimesAsPerPositionScan(true);
+    }
+
+    @Test
+    public void shouldFindSameChildrenEndTimesAsPerPositionScanWhenAdditionalTimeDoesNotExtendOperation() {
+        shouldFindSameChildrenEndTimesAsPerPositionScan(false);
+    }
+
+    private void shouldFindSameChildrenEndTimesAsPerPositionScan(final boolean additionalTimeExtendsOperation) {
+        // given
+        Entity schedule = mockEntity(1L, Maps.newHashMap());
+        schedule.setField(ScheduleFields.ADDITIONAL_TIME_EXTENDS_OPERATION, additionalTimeExtendsOperation);
+
+        createSchedulePositions();
+
+        ScheduleSnapshot snapshot = new ScheduleSnapshot(schedule, positions, Maps.newHashMap(), Maps.newHashMap(),
+                Maps.newHashMap());
+
+        for (Entity position : positions) {
+            Long orderId = positionOrders.get(position.getId());
+
+            snapshot.addRelations(position.getId(), orderId, orderParents.get(orderId), getOperationId(position),
+                    operationParents.get(getOperationId(position)));
+        }
+
+        for (Entity position : positions) {
+            // when
+            Date childrenMaxEndTime = snapshot.getChildrenMaxEndTime(position);
+            Date ordersChildrenMaxEndTime = snapshot.getOrdersChildrenMaxEndTime(position);
+
+            // then
+            assertEquals(getChildrenMaxEndTime(position, additionalTimeExtendsOperation), childrenMaxEndTime);
+            assertEquals(getOrdersChildrenMaxEndTime(position, additionalTimeExtendsOperation), ordersChildrenMaxEndTime);
+        }
+    }
+
+    private Date getChildrenMaxEndTime(final Entity position, final boolean additionalTimeExtendsOperation) {
+        Date maxEndTime = null;
+
+        for (Entity child : positions) {
+            if (positionOrders.get(child.getId()).equals(positionOrders.get(position.getId()))
+                    && getOperationId(position).equals(operationParents.get(getOperationId(child)))) {
+                maxEndTime = max(maxEndTime, getEndTime(child, additionalTimeExtendsOperation));
+            }
+        }
+
+        return maxEndTime;
+    }
+
+    private Date getOrdersChildrenMaxEndTime(final Entity position, final boolean additionalTimeExtendsOperation) {
+        Date maxEndTime = null;
+
+        for (Entity child : positions) {
+            if (positionOrders.get(position.getId()).equals(orderParents.get(positionOrders.get(child.getId())))
+                    && Objects.isNull(operationParents.get(getOperationId(child)))) {
+                maxEndTime = max(maxEndTime, getEndTime(child, additionalTimeExtendsOperation));
+            }
+        }
+
+        return maxEndTime;
+    }
+
+    private Date getEndTime(final Entity position, final boolean additionalTimeExtendsOperation) {
+        Date endTime = position.getDateField(SchedulePositionFields.END_TIME);
+        Integer additionalTime = position.getIntegerField(SchedulePositionFields.ADDITIONAL_TIME);
+
+        if (Objects.isNull(endTime) || additionalTimeExtendsOperation) {
+            return endTime;
+        }
+
+        return Objects.isNull(additionalTime) ? null : new Date(endTime.getTime() + additionalTime * 1000L);
+    }
+
+    private Date max(final Date maxEndTime, final Date endTime) {
+        if (Objects.isNull(endTime) || (Objects.nonNull(maxEndTime) && !endTime.after(maxEndTime))) {
+            return maxEndTime;
+        }
+
+        return endTime;
+    }
+
+    private void createSchedulePositions() {
+        List<List<Long>> technologies = Lists.newArrayList();
+
+        long operationId = 1L;
+
+        for (int technologyIndex = 0; technologyIndex < 4; technologyIndex++) {
+            List<Long> operations = Lists.newArrayList();
+
+            for (int operationIndex = 0; operationIndex < 3 + technologyIndex * 2; operationIndex++, operationId++) {
+                operationParents.put(operationId,
+                        operations.isEmpty() ? null : operations.get(random.nextInt(operations.size())));
+                operations.add(operationId);
+            }
+
+            technologies.add(operations);
+        }
+
+        long positionId = 1L;
+
+        for (long orderId = 1L; orderId <= L_ORDERS; orderId++) {
+            orderParents.put(orderId, (orderId > 1L) && random.nextBoolean() ? (long) (1 + random.nextInt((int) orderId - 1))
+                    : null);
+
+            for (Long orderOperationId : technologies.get(random.nextInt(technologies.size()))) {
+                Map<String, Object> fields = Maps.newHashMap();
+
+                fields.put(SchedulePositionFields.TECHNOLOGY_OPERATION_COMPONENT, mockEntity(orderOperationId,
+                        Maps.newHashMap()));
+                fields.put(SchedulePositionFields.END_TIME, (random.nextInt(10) == 0) ? null
+                        : new Date(L_BASE_TIME + random.nextInt(100000) * 1000L));
+                fields.put(SchedulePositionFields.ADDITIONAL_TIME, (random.nextInt(10) == 0) ? null : random.nextInt(3600));
+
+                positionOrders.put(positionId, orderId);
+                positions.add(mockEntity(positionId++, fields));
+            }
+        }
+    }
+
+    private Long getOperationId(final Entity position) {
+        return position.getBelongsToField(SchedulePositionFields.TECHNOLOGY_OPERATION_COMPONENT).getId();
+    }
+
+    private Entity mockEntity(final Long id, final Map<String, Object> fields) {
+        return mock(Entity.class, invocation -> {
+            Object[] arguments = invocation.getArguments();
+
+            switch (invocation.getMethod().getName()) {
+                case "getId":
+                    return id;
+                case "setField":
+                    fields.put((String) arguments[0], arguments[1]);
+
+                    return null;
+                case "getBooleanField":
+                    return Boolean.TRUE.equals(fields.get(arguments[0]));
+                case "getField":
+                case "getDateField":
+                case "getIntegerField":
+                case "getBelongsToField":
+                    return fields.get(arguments[0]);
+                default:
+                    return null;
+            }
+        });
+    }
+
+}
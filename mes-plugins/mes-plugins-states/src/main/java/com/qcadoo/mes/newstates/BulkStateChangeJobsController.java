@@ -0,0 +1,62 @@
+package com.qcadoo.mes.newstates;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import com.google.common.collect.Maps;
+import com.qcadoo.security.api.SecurityService;
+
+@Controller
+@RequestMapping("/states")
+public class BulkStateChangeJobsController {
+
+    @Autowired
+    private BulkStateChangeService bulkStateChangeService;
+
+    @Autowired
+    private SecurityService securityService;
+
+    @ResponseBody
+    @RequestMapping(value = "/bulkStateChangeJobs/{jobId}", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    public Map<String, Object> getBulkStateChangeJob(@PathVariable final String jobId, final HttpServletResponse response)
+            throws IOException {
+        Optional<StateChangeJob> maybeJob = bulkStateChangeService.getJob(jobId);
+
+        if (!maybeJob.isPresent()
+                || !maybeJob.get().getUserName().equals(securityService.getCurrentUserOrQcadooBotName())) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+
+            return null;
+        }
+
+        return getProgress(maybeJob.get());
+    }
+
+    static Map<String, Object> getProgress(final StateChangeJob job) {
+        Map<String, Object> progress = Maps.newLinkedHashMap();
+
+        progress.put("id", job.getId());
+        progress.put("targetState", job.getTargetState());
+        progress.put("total", job.getTotal());
+        progress.put("processed", job.getProcessed());
+        progress.put("failed", job.getFailed());
+        progress.put("finished", job.isFinished());
+        progress.put("failedEntityIds", job.getOutcomes().stream().filter(outcome -> !outcome.isSuccessful())
+                .map(StateChangeJob.Outcome::getEntityId).sorted().collect(Collectors.toList()));
+
+        return progress;
+    }
+
+}
@@ -0,0 +1,148 @@
+package com.qcadoo.mes.newstates;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.qcadoo.mes.basic.util.WorkerContextService;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.security.api.SecurityService;
+import com.qcadoo.view.api.ComponentState;
+
+/**
+ * Changes state of many entities as a job running in the background.
+ *
+ * Services of marker are resolved once per job. Entities are processed in batches on a worker pool, which size is set with
+ * bulkStateChangeWorkers property, each entity in its own transaction, so a failure of one of them doesn't roll back the others.
+ * Every entity has its own messages holder, which together with its outcome is available from the job until it expires. Batches
+ * run in tenant and with security context of the user, who started the job.
+ */
+@Service
+public class BulkStateChangeService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BulkStateChangeService.class);
+
+    private static final int L_BATCH_SIZE = 50;
+
+    private static final long L_MAXIMUM_SIZE = 100L;
+
+    private static final long L_EXPIRE_AFTER_HOURS = 1L;
+
+    @Value("${bulkStateChangeWorkers:4}")
+    private int workers;
+
+    @Autowired
+    private SingletonStateExecutorService singletonStateExecutorService;
+
+    @Autowired
+    private SecurityService securityService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private WorkerContextService workerContextService;
+
+    private final Cache<String, StateChangeJob> jobs = CacheBuilder.newBuilder().maximumSize(L_MAXIMUM_SIZE)
+            .expireAfterWrite(L_EXPIRE_AFTER_HOURS, TimeUnit.HOURS).build();
+
+    private ExecutorService executorService;
+
+    @PostConstruct
+    void init() {
+        executorService = Executors.newFixedThreadPool(workers,
+                new ThreadFactoryBuilder().setNameFormat("bulk-state-change-%d").setDaemon(true).build());
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executorService.shutdownNow();
+    }
+
+    public <M extends StateService> StateChangeJob changeState(final Class<M> serviceMarker, final DataDefinition dataDefinition,
+            final Collection<Long> entityIds, final String targetState) {
+        List<M> services = singletonStateExecutorService.getChangeStateServices(serviceMarker);
+
+        Long userId = securityService.getCurrentUserOrQcadooBotId();
+        String userName = securityService.getCurrentUserOrQcadooBotName();
+
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        StateChangeJob job = new StateChangeJob(UUID.randomUUID().toString(), targetState, userName, entityIds.size());
+
+        jobs.put(job.getId(), job);
+
+        for (List<Long> batch : Lists.partition(Lists.newArrayList(entityIds), L_BATCH_SIZE)) {
+            executorService.submit(workerContextService.wrap(() -> {
+                for (Long entityId : batch) {
+                    job.addOutcome(changeState(services, dataDefinition, entityId, userId, userName, targetState,
+                            transactionTemplate));
+                }
+            }));
+        }
+
+        return job;
+    }
+
+    private <M extends StateService> StateChangeJob.Outcome changeState(final List<M> services,
+            final DataDefinition dataDefinition, final Long entityId, final Long userId, final String userName,
+            final String targetState, final TransactionTemplate transactionTemplate) {
+        StateChangeMessages messages = new StateChangeMessages();
+
+        try {
+            Boolean successful = transactionTemplate.execute(status -> {
+                Entity entity = dataDefinition.getMasterModelEntity(entityId);
+
+                if (Objects.isNull(entity)) {
+                    messages.addMessage("qcadooView.message.entityNotFound", ComponentState.MessageType.FAILURE);
+
+                    return false;
+                }
+
+                entity.setField(StateExecutorService.USER_CHANGE_STATE, userId);
+
+                entity = singletonStateExecutorService.changeState(services, entity, userName, targetState, messages);
+
+                return entity.isValid();
+            });
+
+            return new StateChangeJob.Outcome(entityId, Boolean.TRUE.equals(successful), messages);
+        } catch (Exception exception) {
+            LOG.warn("Can't perform state change of entity " + entityId, exception);
+
+            messages.addMessage("states.messages.change.failure", ComponentState.MessageType.FAILURE);
+            messages.addMessage("states.messages.change.failure.internalServerError", ComponentState.MessageType.FAILURE);
+
+            return new StateChangeJob.Outcome(entityId, false, messages);
+        }
+    }
+
+    public Optional<StateChangeJob> getJob(final String jobId) {
+        return Optional.ofNullable(jobs.getIfPresent(jobId));
+    }
+
+}
@@ -0,0 +1,106 @@
+package com.qcadoo.mes.newstates;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Progress and per entity outcomes of bulk state change, see {@link BulkStateChangeService}.
+ */
+public class StateChangeJob {
+
+    private final String id;
+
+    private final String targetState;
+
+    private final String userName;
+
+    private final int total;
+
+    private final AtomicInteger processed = new AtomicInteger();
+
+    private final AtomicInteger failed = new AtomicInteger();
+
+    private final Map<Long, Outcome> outcomes = Maps.newConcurrentMap();
+
+    StateChangeJob(final String id, final String targetState, final String userName, final int total) {
+        this.id = id;
+        this.targetState = targetState;
+        this.userName = userName;
+        this.total = total;
+    }
+
+    void addOutcome(final Outcome outcome) {
+        outcomes.put(outcome.getEntityId(), outcome);
+
+        if (!outcome.isSuccessful()) {
+            failed.incrementAndGet();
+        }
+
+        processed.incrementAndGet();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getTargetState() {
+        return targetState;
+    }
+
+    public String getUserName() {
+        return userName;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public int getProcessed() {
+        return processed.get();
+    }
+
+    public int getFailed() {
+        return failed.get();
+    }
+
+    public boolean isFinished() {
+        return processed.get() == total;
+    }
+
+    public Collection<Outcome> getOutcomes() {
+        return Collections.unmodifiableCollection(outcomes.values());
+    }
+
+    public static class Outcome {
+
+        private final Long entityId;
+
+        private final boolean successful;
+
+        private final StateChangeMessages messages;
+
+        Outcome(final Long entityId, final boolean successful, final StateChangeMessages messages) {
+            this.entityId = entityId;
+            this.successful = successful;
+            this.messages = messages;
+        }
+
+        public Long getEntityId() {
+            return entityId;
+        }
+
+        public boolean isSuccessful() {
+            return successful;
+        }
+
+        public StateChangeMessages getMessages() {
+            return messages;
+        }
+
+    }
+
+}
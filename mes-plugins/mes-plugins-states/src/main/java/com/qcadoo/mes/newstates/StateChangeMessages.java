@@ -0,0 +1,89 @@
+package com.qcadoo.mes.newstates;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.validators.ErrorMessage;
+import com.qcadoo.model.api.validators.GlobalMessage;
+import com.qcadoo.view.api.ComponentMessagesHolder;
+import com.qcadoo.view.api.ComponentState;
+
+/**
+ * Messages of one state change, kept apart from the view, so each change, or job of changes, has its own holder.
+ */
+public class StateChangeMessages {
+
+    private final List<Message> messages = Lists.newArrayList();
+
+    private final List<ErrorMessage> errorMessages = Lists.newArrayList();
+
+    private final List<GlobalMessage> globalMessages = Lists.newArrayList();
+
+    public void addMessage(final String key, final ComponentState.MessageType type) {
+        messages.add(new Message(key, type));
+    }
+
+    public void addEntityMessages(final Entity entity) {
+        addEntityMessages(entity, null);
+    }
+
+    public void addEntityMessages(final Entity entity, final Entity mainEntity) {
+        if (Objects.nonNull(mainEntity) && mainEntity.equals(entity)
+                && entity.getGlobalErrors().size() == mainEntity.getGlobalErrors().size()) {
+            return;
+        }
+
+        errorMessages.addAll(entity.getGlobalErrors());
+        errorMessages.addAll(entity.getErrors().values());
+        globalMessages.addAll(entity.getGlobalMessages());
+    }
+
+    public void copyTo(final ComponentMessagesHolder componentMessagesHolder) {
+        for (ErrorMessage errorMessage : errorMessages) {
+            componentMessagesHolder.addMessage(errorMessage);
+        }
+        for (GlobalMessage globalMessage : globalMessages) {
+            componentMessagesHolder.addMessage(globalMessage);
+        }
+        for (Message message : messages) {
+            componentMessagesHolder.addMessage(message.getKey(), message.getType());
+        }
+    }
+
+    public List<Message> getMessages() {
+        return Collections.unmodifiableList(messages);
+    }
+
+    public List<ErrorMessage> getErrorMessages() {
+        return Collections.unmodifiableList(errorMessages);
+    }
+
+    public List<GlobalMessage> getGlobalMessages() {
+        return Collections.unmodifiableList(globalMessages);
+    }
+
+    public static class Message {
+
+        private final String key;
+
+        private final ComponentState.MessageType type;
+
+        private Message(final String key, final ComponentState.MessageType type) {
+            this.key = key;
+            this.type = type;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public ComponentState.MessageType getType() {
+            return type;
+        }
+
+    }
+
+}
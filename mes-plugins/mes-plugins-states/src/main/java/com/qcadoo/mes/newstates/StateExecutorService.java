@@ -14,6 +14,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Scope;
 import org.springframework.context.annotation.ScopedProxyMode;
@@ -34,8 +35,6 @@ import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.exception.EntityRuntimeException;
 import com.qcadoo.model.api.search.SearchCriteriaBuilder;
 import com.qcadoo.model.api.search.SearchRestrictions;
-import com.qcadoo.model.api.validators.ErrorMessage;
-import com.qcadoo.model.api.validators.GlobalMessage;
 import com.qcadoo.plugin.api.PluginUtils;
 import com.qcadoo.plugin.api.RunIfEnabled;
 import com.qcadoo.security.api.SecurityService;
@@ -54,6 +53,9 @@ public class StateExecutorService {
 
     public static final String USER_CHANGE_STATE = "user";
 
+    @Value("${bulkStateChangeThreshold:20}")
+    private int bulkStateChangeThreshold;
+
     @Autowired
     private ApplicationContext applicationContext;
 
@@ -75,14 +77,27 @@ public class StateExecutorService {
         Optional<GridComponent> maybeGridComponent = view.tryFindComponentByReference(QcadooViewConstants.L_GRID);
 
         if (maybeGridComponent.isPresent()) {
-            maybeGridComponent.get().getSelectedEntities().forEach(entity -> {
+            GridComponent gridComponent = maybeGridComponent.get();
+
+            if (gridComponent.getSelectedEntitiesIds().size() > bulkStateChangeThreshold) {
+                changeStateInBackground(serviceMarker, gridComponent, args[0]);
+
+                return;
+            }
+
+            List<M> services = getChangeStateServices(serviceMarker);
+
+            gridComponent.getSelectedEntities().forEach(entity -> {
                 entity = entity.getDataDefinition().getMasterModelEntity(entity.getId());
 
                 entity.setField(USER_CHANGE_STATE, userId);
 
-                entity = changeState(serviceMarker, entity, userName, args[0]);
+                StateChangeMessages messages = new StateChangeMessages();
 
-                copyMessages(entity);
+                entity = changeState(services, entity, userName, args[0], messages);
+
+                messages.addEntityMessages(entity);
+                messages.copyTo(componentMessagesHolder);
             });
         } else {
             Optional<FormComponent> maybeForm = view.tryFindComponentByReference(QcadooViewConstants.L_FORM);
@@ -103,10 +118,39 @@ public class StateExecutorService {
         }
     }
 
+    /**
+     * Changes state of entities selected in grid as a job of {@link BulkStateChangeService}, which is looked up only when needed,
+     * as it depends on singleton executor extending this service.
+     */
+    private <M extends StateService> void changeStateInBackground(final Class<M> serviceMarker,
+            final GridComponent gridComponent, final String targetState) {
+        StateChangeJob job = applicationContext.getBean(BulkStateChangeService.class).changeState(serviceMarker,
+                gridComponent.getSelectedEntities().get(0).getDataDefinition(), gridComponent.getSelectedEntitiesIds(),
+                targetState);
+
+        componentMessagesHolder.addMessage("states.messages.change.bulk.started", ComponentState.MessageType.INFO,
+                String.valueOf(job.getTotal()), job.getId());
+    }
+
     public <M extends StateService> Entity changeState(final Class<M> serviceMarker, Entity entity, final String userName,
             final String targetState) {
-        List<M> services = lookupChangeStateServices(serviceMarker);
+        StateChangeMessages messages = new StateChangeMessages();
+
+        entity = changeState(getChangeStateServices(serviceMarker), entity, userName, targetState, messages);
+
+        if (Objects.nonNull(componentMessagesHolder)) {
+            messages.copyTo(componentMessagesHolder);
+        }
+
+        return entity;
+    }
 
+    /**
+     * Changes state of entity with already resolved services, collecting messages in given holder instead of view, so it can
+     * be called concurrently for different entities.
+     */
+    public <M extends StateService> Entity changeState(final List<M> services, Entity entity, final String userName,
+            final String targetState, final StateChangeMessages messages) {
         StateChangeEntityDescriber describer = services.stream().findFirst().get().getChangeEntityDescriber();
         String sourceState = entity.getStringField(describer.getOwnerStateFieldName());
 
@@ -126,11 +170,11 @@ public class StateExecutorService {
             entity = performChangeState(services, entity, stateChangeEntity, describer);
 
             if (entity.isValid()) {
-                copyMessages(entity);
+                messages.addEntityMessages(entity);
 
                 saveStateChangeEntity(stateChangeEntity, StateChangeStatus.SUCCESSFUL);
 
-                message("states.messages.change.successful", ComponentState.MessageType.SUCCESS);
+                messages.addMessage("states.messages.change.successful", ComponentState.MessageType.SUCCESS);
 
                 LOG.info(String.format("Change state successful. Entity name : %S id : %d. Target state : %S",
                         entity.getDataDefinition().getName(), entity.getId(),
@@ -140,20 +184,20 @@ public class StateExecutorService {
 
                 entity = rollbackStateChange(entity, sourceState);
 
-                message("states.messages.change.failure", ComponentState.MessageType.FAILURE);
+                messages.addMessage("states.messages.change.failure", ComponentState.MessageType.FAILURE);
 
                 LOG.info(String.format("Change state failure. Entity name : %S id : %d. Target state : %S",
                         entity.getDataDefinition().getName(), entity.getId(),
                         stateChangeEntity.getStringField(describer.getTargetStateFieldName())));
             }
         } catch (EntityRuntimeException entityException) {
-            copyMessages(entityException.getEntity(), entity);
+            messages.addEntityMessages(entityException.getEntity(), entity);
 
             entity = rollbackStateChange(entity, sourceState);
 
             saveStateChangeEntity(stateChangeEntity, StateChangeStatus.FAILURE);
 
-            message("states.messages.change.failure", ComponentState.MessageType.FAILURE);
+            messages.addMessage("states.messages.change.failure", ComponentState.MessageType.FAILURE);
 
             return entity;
         } catch (AnotherChangeInProgressException e) {
@@ -161,8 +205,8 @@ public class StateExecutorService {
 
             saveStateChangeEntity(stateChangeEntity, StateChangeStatus.FAILURE);
 
-            message("states.messages.change.failure", ComponentState.MessageType.FAILURE);
-            message("states.messages.change.failure.anotherChangeInProgress", ComponentState.MessageType.FAILURE);
+            messages.addMessage("states.messages.change.failure", ComponentState.MessageType.FAILURE);
+            messages.addMessage("states.messages.change.failure.anotherChangeInProgress", ComponentState.MessageType.FAILURE);
 
             LOG.info(String.format("Another state change in progress. Entity name : %S id : %d. Target state : %S",
                     entity.getDataDefinition().getName(), entity.getId(), targetState));
@@ -171,8 +215,8 @@ public class StateExecutorService {
 
             saveStateChangeEntity(stateChangeEntity, StateChangeStatus.FAILURE);
 
-            message("states.messages.change.failure", ComponentState.MessageType.FAILURE);
-            message("states.messages.change.failure.transitionNotAllowed", ComponentState.MessageType.FAILURE);
+            messages.addMessage("states.messages.change.failure", ComponentState.MessageType.FAILURE);
+            messages.addMessage("states.messages.change.failure.transitionNotAllowed", ComponentState.MessageType.FAILURE);
 
             LOG.info(String.format("State change - transition not allowed. Entity name : %S id : %d. Target state : %S",
                     entity.getDataDefinition().getName(), entity.getId(), targetState));
@@ -181,8 +225,8 @@ public class StateExecutorService {
 
             saveStateChangeEntity(stateChangeEntity, StateChangeStatus.FAILURE);
 
-            message("states.messages.change.failure", ComponentState.MessageType.FAILURE);
-            message("states.messages.change.failure.internalServerError", ComponentState.MessageType.FAILURE);
+            messages.addMessage("states.messages.change.failure", ComponentState.MessageType.FAILURE);
+            messages.addMessage("states.messages.change.failure.internalServerError", ComponentState.MessageType.FAILURE);
 
             LOG.info(String.format("State change exception. Entity name : %S id : %d. Target state : %S",
                     entity.getDataDefinition().getName(), entity.getId(), targetState));
@@ -336,7 +380,10 @@ public class StateExecutorService {
         return entity.isValid();
     }
 
-    private <M extends StateService> List<M> lookupChangeStateServices(final Class<M> serviceMarker) {
+    /**
+     * Returns services of given marker, which plugins are enabled, in order of their execution.
+     */
+    public <M extends StateService> List<M> getChangeStateServices(final Class<M> serviceMarker) {
         Map<String, M> stateServices = applicationContext.getBeansOfType(serviceMarker);
 
         List<M> services = Lists.newArrayList();
@@ -354,7 +401,7 @@ public class StateExecutorService {
 
     public <M extends StateService> void buildInitial(final Class<M> serviceMarker, final Entity entity,
             final String initialState) {
-        List<M> services = lookupChangeStateServices(serviceMarker);
+        List<M> services = getChangeStateServices(serviceMarker);
 
         StateChangeEntityDescriber describer = services.get(0).getChangeEntityDescriber();
         Entity stateChangeEntity = buildStateChangeEntity(describer, entity, StringUtils.EMPTY, null, initialState);
@@ -381,32 +428,6 @@ public class StateExecutorService {
         return true;
     }
 
-    private void copyMessages(final Entity entity, final Entity mainEntity) {
-        if (Objects.nonNull(mainEntity) && mainEntity.equals(entity)
-                && entity.getGlobalErrors().size() == mainEntity.getGlobalErrors().size()) {
-            return;
-        }
-
-        if (Objects.isNull(componentMessagesHolder)) {
-            return;
-        }
-
-        for (ErrorMessage errorMessage : entity.getGlobalErrors()) {
-            componentMessagesHolder.addMessage(errorMessage);
-        }
-        for (ErrorMessage errorMessage : entity.getErrors().values()) {
-            componentMessagesHolder.addMessage(errorMessage);
-        }
-
-        for (GlobalMessage globalMessage : entity.getGlobalMessages()) {
-             componentMessagesHolder.addMessage(globalMessage);
-        }
-    }
-
-    private void copyMessages(final Entity entity) {
-        copyMessages(entity, null);
-    }
-
     private Entity saveAndValidate(final Entity entity) {
         if (Objects.isNull(entity)) {
             return null;
@@ -421,12 +442,6 @@ public class StateExecutorService {
         return saved;
     }
 
-    private void message(final String msg, final ComponentState.MessageType messageType) {
-        if (Objects.nonNull(componentMessagesHolder)) {
-            componentMessagesHolder.addMessage(msg, messageType);
-        }
-    }
-
     private void checkForUnfinishedStateChange(final StateChangeEntityDescriber describer, final Entity owner) {
         final String ownerFieldName = describer.getOwnerFieldName();
         final String statusFieldName = describer.getStatusFieldName();
@@ -0,0 +1,184 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.newstates;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.util.WorkerContextService;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.security.api.SecurityService;
+
+public class BulkStateChangeServiceTest {
+
+    private static final String L_USER_NAME = "user";
+
+    private static final String L_TARGET_STATE = "02accepted";
+
+    private BulkStateChangeService bulkStateChangeService;
+
+    @Mock
+    private SingletonStateExecutorService singletonStateExecutorService;
+
+    @Mock
+    private SecurityService securityService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private TransactionStatus transactionStatus;
+
+    @Mock
+    private WorkerContextService workerContextService;
+
+    @Mock
+    private DataDefinition dataDefinition;
+
+    @Mock
+    private StateService stateService;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        bulkStateChangeService = new BulkStateChangeService();
+
+        ReflectionTestUtils.setField(bulkStateChangeService, "workers", 2);
+        ReflectionTestUtils.setField(bulkStateChangeService, "singletonStateExecutorService", singletonStateExecutorService);
+        ReflectionTestUtils.setField(bulkStateChangeService, "securityService", securityService);
+        ReflectionTestUtils.setField(bulkStateChangeService, "transactionManager", transactionManager);
+        ReflectionTestUtils.setField(bulkStateChangeService, "workerContextService", workerContextService);
+
+        given(securityService.getCurrentUserOrQcadooBotId()).willReturn(1L);
+        given(securityService.getCurrentUserOrQcadooBotName()).willReturn(L_USER_NAME);
+        given(transactionManager.getTransaction(any(TransactionDefinition.class))).willReturn(transactionStatus);
+        given(workerContextService.wrap(any(Runnable.class))).willAnswer(invocation -> invocation.getArguments()[0]);
+        given(singletonStateExecutorService.getChangeStateServices(StateService.class))
+                .willReturn(Lists.newArrayList(stateService));
+
+        bulkStateChangeService.init();
+    }
+
+    @After
+    public void shutdown() {
+        bulkStateChangeService.shutdown();
+    }
+
+    @Test
+    public void shouldChangeStateOfEveryEntityAndReportFailuresSeparately() throws InterruptedException {
+        // given
+        List<Long> entityIds = Lists.newArrayList();
+
+        for (long id = 1; id <= 120; id++) {
+            entityIds.add(id);
+
+            if (id != 7L) {
+                Entity entity = mockEntity(id, id != 8L);
+
+                given(dataDefinition.getMasterModelEntity(id)).willReturn(entity);
+            }
+        }
+
+        given(dataDefinition.getMasterModelEntity(9L)).willThrow(new IllegalStateException());
+
+        // when
+        StateChangeJob job = bulkStateChangeService.changeState(StateService.class, dataDefinition, entityIds, L_TARGET_STATE);
+
+        awaitFinished(job);
+
+        // then
+        assertEquals(120, job.getProcessed());
+        assertEquals(3, job.getFailed());
+        assertEquals(L_USER_NAME, job.getUserName());
+        assertTrue(bulkStateChangeService.getJob(job.getId()).isPresent());
+
+        verify(workerContextService, times(3)).wrap(any(Runnable.class));
+
+        Map<String, Object> progress = BulkStateChangeJobsController.getProgress(job);
+
+        assertEquals(Boolean.TRUE, progress.get("finished"));
+        assertEquals(Lists.newArrayList(7L, 8L, 9L), progress.get("failedEntityIds"));
+    }
+
+    @Test
+    public void shouldReportProgressOfUnfinishedJob() {
+        // given
+        StateChangeJob job = new StateChangeJob("job", L_TARGET_STATE, L_USER_NAME, 2);
+
+        // when
+        job.addOutcome(new StateChangeJob.Outcome(1L, false, new StateChangeMessages()));
+
+        // then
+        assertFalse(job.isFinished());
+        assertEquals(1, job.getProcessed());
+        assertEquals(1, job.getFailed());
+    }
+
+    private Entity mockEntity(final Long id, final boolean valid) {
+        Entity entity = mock(Entity.class);
+
+        given(entity.getId()).willReturn(id);
+        given(entity.isValid()).willReturn(valid);
+        given(singletonStateExecutorService.changeState(anyList(), eq(entity), eq(L_USER_NAME), eq(L_TARGET_STATE),
+                any(StateChangeMessages.class))).willReturn(entity);
+
+        return entity;
+    }
+
+    private void awaitFinished(final StateChangeJob job) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+
+        while (!job.isFinished() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertTrue(job.isFinished());
+    }
+
+}
@@ -63,6 +63,9 @@ public class ProductQuantitiesServiceImpl implements ProductQuantitiesService {
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
+    @Autowired
+    private TechnologyQuantitiesGraphService technologyQuantitiesGraphService;
+
     @Override
     public ProductQuantitiesHolder getProductComponentQuantities(final Entity technology, final BigDecimal givenQuantity) {
         Map<Long, BigDecimal> operationRuns = Maps.newHashMap();
@@ -274,6 +277,15 @@ public class ProductQuantitiesServiceImpl implements ProductQuantitiesService {
             }
         }
 
+        Optional<TechnologyQuantitiesGraph> technologyQuantitiesGraph = technologyQuantitiesGraphService.getGraph(technology);
+
+        if (technologyQuantitiesGraph.isPresent() && technologyQuantitiesGraph.get().canExpand(product)) {
+            technologyQuantitiesGraph.get().expand(givenQuantity, numberService.getMathContext(),
+                    operationProductComponentWithQuantityContainer, nonComponents, operationRuns);
+
+            return operationProductComponentWithQuantityContainer;
+        }
+
         EntityTree operationComponents = getOperationComponentsFromTechnology(technology);
 
         Entity root = operationComponents.getRoot();
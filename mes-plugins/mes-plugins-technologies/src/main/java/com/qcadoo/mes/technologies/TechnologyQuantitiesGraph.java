@@ -0,0 +1,402 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.technologies;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.basic.constants.ProductFamilyElementType;
+import com.qcadoo.mes.basic.constants.ProductFields;
+import com.qcadoo.mes.technologies.constants.OperationProductInComponentFields;
+import com.qcadoo.mes.technologies.constants.OperationProductOutComponentFields;
+import com.qcadoo.mes.technologies.constants.ProductBySizeGroupFields;
+import com.qcadoo.mes.technologies.constants.TechnologyFields;
+import com.qcadoo.mes.technologies.constants.TechnologyOperationComponentFields;
+import com.qcadoo.mes.technologies.dto.OperationProductComponentHolder;
+import com.qcadoo.mes.technologies.dto.OperationProductComponentWithQuantityContainer;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Immutable, compiled form of technology operation tree, used to compute product quantities and operation runs without
+ * loading technology entities again.
+ *
+ * Operations are kept in a flat array in the order in which the tree is traversed (parents before children), each with
+ * precomputed indices of its input and output products and of the parent inputs it produces. Quantities are kept in slots,
+ * one slot per distinct {@link OperationProductComponentHolder}, so that components sharing a holder share a quantity, as
+ * they do in {@link OperationProductComponentWithQuantityContainer}.
+ */
+public final class TechnologyQuantitiesGraph {
+
+    private static final int L_SCALE = 5;
+
+    private static final String L_QUANTITY = "quantity";
+
+    private final OperationProductComponentHolder[] holders;
+
+    private final Node[] nodes;
+
+    private final boolean attributeDependent;
+
+    private TechnologyQuantitiesGraph(final OperationProductComponentHolder[] holders, final Node[] nodes,
+            final boolean attributeDependent) {
+        this.holders = holders;
+        this.nodes = nodes;
+        this.attributeDependent = attributeDependent;
+    }
+
+    public static TechnologyQuantitiesGraph compile(final Entity technology) {
+        return new Compiler(technology).compile();
+    }
+
+    /**
+     * Checks if quantities for given ordered product can be computed from compiled graph. They can't when technology has
+     * products family inputs resolved by attribute values of the ordered product.
+     */
+    public boolean canExpand(final Entity orderedProduct) {
+        return Objects.isNull(orderedProduct) || !attributeDependent;
+    }
+
+    /**
+     * Computes product quantities and operation runs for given quantity in one pass over the operations, with the same
+     * results as {@link ProductQuantitiesService#preloadProductQuantitiesAndOperationRuns} followed by
+     * {@link ProductQuantitiesService#traverseProductQuantitiesAndOperationRuns}.
+     */
+    public void expand(final BigDecimal givenQuantity, final MathContext mathContext,
+            final OperationProductComponentWithQuantityContainer operationProductComponentWithQuantityContainer,
+            final Set<OperationProductComponentHolder> nonComponents, final Map<Long, BigDecimal> operationRuns) {
+        if (nodes.length == 0) {
+            return;
+        }
+
+        long[] sizeGroupIds = operationProductComponentWithQuantityContainer.getSizeGroups().stream()
+                .mapToLong(Entity::getId).toArray();
+
+        BigDecimal[] quantities = new BigDecimal[holders.length];
+        boolean[] present = new boolean[holders.length];
+
+        for (Node node : nodes) {
+            for (Component inComponent : node.inComponents) {
+                if (inComponent.differentProductsInDifferentSizes && (sizeGroupIds.length > 0)) {
+                    for (long sizeGroupId : sizeGroupIds) {
+                        for (SizeGroupVariant variant : inComponent.variants) {
+                            if (variant.sizeGroupId == sizeGroupId) {
+                                quantities[variant.slot] = variant.quantity;
+                                present[variant.slot] = true;
+                            }
+                        }
+                    }
+                } else {
+                    quantities[inComponent.slot] = inComponent.quantity;
+                    present[inComponent.slot] = true;
+                }
+            }
+
+            for (Component outComponent : node.outComponents) {
+                quantities[outComponent.slot] = outComponent.quantity;
+                present[outComponent.slot] = true;
+            }
+
+            operationRuns.put(node.technologyOperationComponentId, BigDecimal.ONE);
+        }
+
+        for (Node node : nodes) {
+            if (node.parentIndex < 0) {
+                if (node.rootOutComponentIndex >= 0) {
+                    multiply(node, givenQuantity, quantities[node.outComponents[node.rootOutComponentIndex].slot],
+                            sizeGroupIds, quantities, present, mathContext, operationRuns);
+                }
+            } else {
+                Node parent = nodes[node.parentIndex];
+
+                for (int[] match : node.matches) {
+                    Component parentInComponent = parent.inComponents[match[0]];
+
+                    multiply(node, quantities[parentInComponent.slot], quantities[node.outComponents[match[1]].slot],
+                            sizeGroupIds, quantities, present, mathContext, operationRuns);
+
+                    nonComponents.add(holders[parentInComponent.slot]);
+                }
+            }
+        }
+
+        for (int slot = 0; slot < holders.length; slot++) {
+            if (present[slot]) {
+                operationProductComponentWithQuantityContainer.put(holders[slot], quantities[slot]);
+            }
+        }
+    }
+
+    private void multiply(final Node node, final BigDecimal needed, final BigDecimal actual, final long[] sizeGroupIds,
+            final BigDecimal[] quantities, final boolean[] present, final MathContext mathContext,
+            final Map<Long, BigDecimal> operationRuns) {
+        BigDecimal multiplier = needed.divide(actual, mathContext);
+
+        if (!node.areProductQuantitiesDivisible) {
+            // It's intentional to round up the operation runs
+            multiplier = multiplier.setScale(0, RoundingMode.CEILING);
+        }
+
+        BigDecimal runs = multiplier;
+
+        if (!node.isTjDivisible) {
+            runs = multiplier.setScale(0, RoundingMode.CEILING);
+        }
+
+        operationRuns.put(node.technologyOperationComponentId, runs);
+
+        for (Component inComponent : node.inComponents) {
+            if (inComponent.differentProductsInDifferentSizes) {
+                if (sizeGroupIds.length > 0) {
+                    for (long sizeGroupId : sizeGroupIds) {
+                        for (SizeGroupVariant variant : inComponent.variants) {
+                            if (variant.sizeGroupId == sizeGroupId) {
+                                quantities[variant.slot] = multiply(quantities[variant.slot], multiplier, mathContext);
+                                present[variant.slot] = true;
+                            }
+                        }
+                    }
+                } else {
+                    quantities[inComponent.slot] = null;
+                    present[inComponent.slot] = true;
+                }
+            } else {
+                quantities[inComponent.slot] = multiply(quantities[inComponent.slot], multiplier, mathContext);
+            }
+        }
+
+        for (Component outComponent : node.outComponents) {
+            quantities[outComponent.slot] = multiply(quantities[outComponent.slot], multiplier, mathContext);
+        }
+    }
+
+    private BigDecimal multiply(final BigDecimal quantity, final BigDecimal multiplier, final MathContext mathContext) {
+        return quantity.multiply(multiplier, mathContext).setScale(L_SCALE, RoundingMode.CEILING);
+    }
+
+    private static final class Node {
+
+        private final Long technologyOperationComponentId;
+
+        private final int parentIndex;
+
+        private final boolean areProductQuantitiesDivisible;
+
+        private final boolean isTjDivisible;
+
+        private final Component[] inComponents;
+
+        private final Component[] outComponents;
+
+        private final int rootOutComponentIndex;
+
+        private final int[][] matches;
+
+        private Node(final Long technologyOperationComponentId, final int parentIndex,
+                final boolean areProductQuantitiesDivisible, final boolean isTjDivisible, final Component[] inComponents,
+                final Component[] outComponents, final int rootOutComponentIndex, final int[][] matches) {
+            this.technologyOperationComponentId = technologyOperationComponentId;
+            this.parentIndex = parentIndex;
+            this.areProductQuantitiesDivisible = areProductQuantitiesDivisible;
+            this.isTjDivisible = isTjDivisible;
+            this.inComponents = inComponents;
+            this.outComponents = outComponents;
+            this.rootOutComponentIndex = rootOutComponentIndex;
+            this.matches = matches;
+        }
+
+    }
+
+    private static final class Component {
+
+        private final int slot;
+
+        private final Long productId;
+
+        private final BigDecimal quantity;
+
+        private final boolean differentProductsInDifferentSizes;
+
+        private final SizeGroupVariant[] variants;
+
+        private Component(final int slot, final Long productId, final BigDecimal quantity,
+                final boolean differentProductsInDifferentSizes, final SizeGroupVariant[] variants) {
+            this.slot = slot;
+            this.productId = productId;
+            this.quantity = quantity;
+            this.differentProductsInDifferentSizes = differentProductsInDifferentSizes;
+            this.variants = variants;
+        }
+
+    }
+
+    private static final class SizeGroupVariant {
+
+        private final long sizeGroupId;
+
+        private final int slot;
+
+        private final BigDecimal quantity;
+
+        private SizeGroupVariant(final long sizeGroupId, final int slot, final BigDecimal quantity) {
+            this.sizeGroupId = sizeGroupId;
+            this.slot = slot;
+            this.quantity = quantity;
+        }
+
+    }
+
+    private static final class Compiler {
+
+        private final Entity technology;
+
+        private final Map<OperationProductComponentHolder, Integer> slots = Maps.newLinkedHashMap();
+
+        private final List<Node> nodes = Lists.newArrayList();
+
+        private boolean attributeDependent = false;
+
+        private Compiler(final Entity technology) {
+            this.technology = technology;
+        }
+
+        private TechnologyQuantitiesGraph compile() {
+            Entity root = technology.getTreeField(TechnologyFields.OPERATION_COMPONENTS).getRoot();
+
+            if (Objects.nonNull(root)) {
+                addNode(root, -1, null);
+            }
+
+            return new TechnologyQuantitiesGraph(slots.keySet().toArray(new OperationProductComponentHolder[0]),
+                    nodes.toArray(new Node[0]), attributeDependent);
+        }
+
+        private void addNode(final Entity operationComponent, final int parentIndex, final Component[] parentInComponents) {
+            List<Entity> operationProductInComponents = operationComponent
+                    .getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_IN_COMPONENTS);
+
+            Component[] inComponents = new Component[operationProductInComponents.size()];
+
+            for (int index = 0; index < inComponents.length; index++) {
+                inComponents[index] = createInComponent(operationProductInComponents.get(index));
+            }
+
+            Component[] outComponents = operationComponent
+                    .getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_OUT_COMPONENTS).stream()
+                    .map(this::createOutComponent).toArray(Component[]::new);
+
+            int rootOutComponentIndex = -1;
+            List<int[]> matches = Lists.newArrayList();
+
+            if (parentIndex < 0) {
+                Long technologyProductId = technology.getBelongsToField(TechnologyFields.PRODUCT).getId();
+
+                rootOutComponentIndex = findOutComponentIndex(outComponents, technologyProductId);
+            } else {
+                for (int index = 0; index < parentInComponents.length; index++) {
+                    Component parentInComponent = parentInComponents[index];
+
+                    if (!parentInComponent.differentProductsInDifferentSizes && Objects.nonNull(parentInComponent.productId)) {
+                        int outComponentIndex = findOutComponentIndex(outComponents, parentInComponent.productId);
+
+                        if (outComponentIndex >= 0) {
+                            matches.add(new int[] { index, outComponentIndex });
+                        }
+                    }
+                }
+            }
+
+            int nodeIndex = nodes.size();
+
+            nodes.add(new Node(operationComponent.getId(), parentIndex,
+                    operationComponent.getBooleanField(TechnologyOperationComponentFields.ARE_PRODUCT_QUANTITIES_DIVISIBLE),
+                    operationComponent.getBooleanField(TechnologyOperationComponentFields.IS_TJ_DIVISIBLE), inComponents,
+                    outComponents, rootOutComponentIndex, matches.toArray(new int[0][])));
+
+            for (Entity child : operationComponent.getHasManyField(TechnologyOperationComponentFields.CHILDREN)) {
+                addNode(child, nodeIndex, inComponents);
+            }
+        }
+
+        private int findOutComponentIndex(final Component[] outComponents, final Long productId) {
+            for (int index = 0; index < outComponents.length; index++) {
+                if (productId.equals(outComponents[index].productId)) {
+                    return index;
+                }
+            }
+
+            return -1;
+        }
+
+        private Component createInComponent(final Entity operationProductInComponent) {
+            Entity product = operationProductInComponent.getBelongsToField(OperationProductInComponentFields.PRODUCT);
+            boolean differentProductsInDifferentSizes = operationProductInComponent
+                    .getBooleanField(OperationProductInComponentFields.DIFFERENT_PRODUCTS_IN_DIFFERENT_SIZES);
+
+            SizeGroupVariant[] variants = new SizeGroupVariant[0];
+
+            if (differentProductsInDifferentSizes) {
+                variants = operationProductInComponent
+                        .getHasManyField(OperationProductInComponentFields.PRODUCT_BY_SIZE_GROUPS).stream()
+                        .map(productBySizeGroup -> new SizeGroupVariant(
+                                productBySizeGroup.getBelongsToField(ProductBySizeGroupFields.SIZE_GROUP).getId(),
+                                getSlot(new OperationProductComponentHolder(operationProductInComponent,
+                                        productBySizeGroup.getBelongsToField(ProductBySizeGroupFields.PRODUCT))),
+                                productBySizeGroup.getDecimalField(ProductBySizeGroupFields.QUANTITY)))
+                        .toArray(SizeGroupVariant[]::new);
+            }
+
+            if (Objects.nonNull(product)
+                    && ProductFamilyElementType.PRODUCTS_FAMILY.getStringValue()
+                            .equals(product.getStringField(ProductFields.ENTITY_TYPE))
+                    && Objects.nonNull(operationProductInComponent.getBelongsToField(OperationProductInComponentFields.ATTRIBUTE))) {
+                attributeDependent = true;
+            }
+
+            return new Component(getSlot(new OperationProductComponentHolder(operationProductInComponent)),
+                    Objects.isNull(product) ? null : product.getId(), operationProductInComponent.getDecimalField(L_QUANTITY),
+                    differentProductsInDifferentSizes, variants);
+        }
+
+        private Component createOutComponent(final Entity operationProductOutComponent) {
+            Entity product = operationProductOutComponent.getBelongsToField(OperationProductOutComponentFields.PRODUCT);
+
+            return new Component(getSlot(new OperationProductComponentHolder(operationProductOutComponent)),
+                    Objects.isNull(product) ? null : product.getId(), operationProductOutComponent.getDecimalField(L_QUANTITY),
+                    false, new SizeGroupVariant[0]);
+        }
+
+        private int getSlot(final OperationProductComponentHolder holder) {
+            return slots.computeIfAbsent(holder, key -> slots.size());
+        }
+
+    }
+
+}
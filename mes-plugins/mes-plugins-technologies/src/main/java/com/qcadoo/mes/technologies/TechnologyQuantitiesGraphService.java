@@ -0,0 +1,84 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.technologies;
+
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+
+import org.springframework.stereotype.Service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.qcadoo.mes.technologies.constants.TechnologyFields;
+import com.qcadoo.mes.technologies.states.constants.TechnologyStateStringValues;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.tenant.api.MultiTenantUtil;
+
+/**
+ * Caches compiled operation trees of accepted and outdated technologies, which can't be modified any more, by tenant and
+ * technology. Graphs are evicted whenever technology changes state.
+ */
+@Service
+public class TechnologyQuantitiesGraphService {
+
+    private static final long L_MAXIMUM_SIZE = 2000L;
+
+    private final Cache<String, TechnologyQuantitiesGraph> graphs = CacheBuilder.newBuilder().maximumSize(L_MAXIMUM_SIZE)
+            .build();
+
+    public Optional<TechnologyQuantitiesGraph> getGraph(final Entity technology) {
+        if (Objects.isNull(technology.getId()) || !isFrozen(technology)) {
+            return Optional.empty();
+        }
+
+        String key = getKey(technology.getId());
+
+        try {
+            return Optional.of(graphs.get(key, () -> TechnologyQuantitiesGraph.compile(technology)));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            graphs.invalidate(key);
+
+            return Optional.empty();
+        }
+    }
+
+    public void evict(final Long technologyId) {
+        if (Objects.nonNull(technologyId)) {
+            graphs.invalidate(getKey(technologyId));
+        }
+    }
+
+    private String getKey(final Long technologyId) {
+        return MultiTenantUtil.getCurrentTenantId() + ":" + technologyId;
+    }
+
+    private boolean isFrozen(final Entity technology) {
+        String state = technology.getStringField(TechnologyFields.STATE);
+
+        return TechnologyStateStringValues.ACCEPTED.equals(state) || TechnologyStateStringValues.OUTDATED.equals(state);
+    }
+
+}
@@ -0,0 +1,163 @@
+package com.qcadoo.mes.technologies.dto;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.technologies.constants.WorkstationChangeoverNormChangeoverType;
+import com.qcadoo.mes.technologies.constants.WorkstationChangeoverNormFields;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Active changeover norms of a workstation (its own and of its workstation type), arranged for lookup by attribute, so
+ * changeovers between products are found without querying norms.
+ *
+ * Attribute values of products are given as multimaps of attribute value ids by attribute id, with null for product
+ * attribute values without attribute value.
+ */
+public final class WorkstationChangeoverMatrix {
+
+    private static final WorkstationChangeoverMatrix EMPTY = new WorkstationChangeoverMatrix(Collections.emptyList());
+
+    private final int size;
+
+    private final ListMultimap<Long, Norm> normsByAttribute;
+
+    private WorkstationChangeoverMatrix(final List<Entity> workstationChangeoverNorms) {
+        ImmutableListMultimap.Builder<Long, Norm> normsByAttributeBuilder = ImmutableListMultimap.builder();
+
+        for (Entity workstationChangeoverNorm : workstationChangeoverNorms) {
+            normsByAttributeBuilder.put(
+                    workstationChangeoverNorm.getBelongsToField(WorkstationChangeoverNormFields.ATTRIBUTE).getId(),
+                    new Norm(workstationChangeoverNorm));
+        }
+
+        this.size = workstationChangeoverNorms.size();
+        this.normsByAttribute = normsByAttributeBuilder.build();
+    }
+
+    public static WorkstationChangeoverMatrix of(final List<Entity> workstationChangeoverNorms) {
+        if (workstationChangeoverNorms.isEmpty()) {
+            return EMPTY;
+        }
+
+        return new WorkstationChangeoverMatrix(workstationChangeoverNorms);
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns norms of changeover to given value of attribute, after product with given values of the same attribute, in order
+     * in which norms were given - norms between one of previous values and the current one and all norms of any change of
+     * attribute (the values don't have to differ). No norms are returned if previous product has no value of the attribute;
+     * previous values without attribute value (null) count as a value of the attribute, but match no norm between values.
+     */
+    public List<Entity> findNorms(final Long attributeId, final Long toAttributeValueId,
+            final Collection<Long> fromAttributeValueIds) {
+        if (fromAttributeValueIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<Entity> norms = Lists.newArrayList();
+
+        for (Norm norm : normsByAttribute.get(attributeId)) {
+            if (norm.matches(toAttributeValueId, fromAttributeValueIds)) {
+                norms.add(norm.entity);
+            }
+        }
+
+        return norms;
+    }
+
+    /**
+     * Returns norms of changeover between products with given attribute values, in order of current product attribute values.
+     */
+    public List<Entity> findNorms(final ListMultimap<Long, Long> previousAttributeValues,
+            final ListMultimap<Long, Long> currentAttributeValues) {
+        List<Entity> norms = Lists.newArrayList();
+
+        for (Map.Entry<Long, Long> currentAttributeValue : currentAttributeValues.entries()) {
+            norms.addAll(findNorms(currentAttributeValue.getKey(), currentAttributeValue.getValue(),
+                    previousAttributeValues.get(currentAttributeValue.getKey())));
+        }
+
+        return norms;
+    }
+
+    /**
+     * Returns duration (in seconds) of changeover between products with given attribute values - norms which aren't parallel
+     * follow one another, parallel ones start together with the first of them.
+     */
+    public int getDuration(final ListMultimap<Long, Long> previousAttributeValues,
+            final ListMultimap<Long, Long> currentAttributeValues) {
+        int sequentialDuration = 0;
+        int parallelDuration = 0;
+
+        for (Entity norm : findNorms(previousAttributeValues, currentAttributeValues)) {
+            int duration = norm.getIntegerField(WorkstationChangeoverNormFields.DURATION);
+
+            if (norm.getBooleanField(WorkstationChangeoverNormFields.IS_PARALLEL)) {
+                parallelDuration = Math.max(parallelDuration, duration);
+            } else {
+                sequentialDuration += duration;
+            }
+        }
+
+        return Math.max(sequentialDuration, parallelDuration);
+    }
+
+    /**
+     * Returns total duration (in seconds) of changeovers between consecutive products of given sequence, given as their
+     * attribute values.
+     */
+    public int getDuration(final List<ListMultimap<Long, Long>> attributeValuesSequence) {
+        int duration = 0;
+
+        for (int i = 1; i < attributeValuesSequence.size(); i++) {
+            duration += getDuration(attributeValuesSequence.get(i - 1), attributeValuesSequence.get(i));
+        }
+
+        return duration;
+    }
+
+    private static final class Norm {
+
+        private final Entity entity;
+
+        private final boolean betweenValues;
+
+        private final Long fromAttributeValueId;
+
+        private final Long toAttributeValueId;
+
+        private Norm(final Entity entity) {
+            this.entity = entity;
+            this.betweenValues = WorkstationChangeoverNormChangeoverType.BETWEEN_VALUES.getStringValue()
+                    .equals(entity.getStringField(WorkstationChangeoverNormFields.CHANGEOVER_TYPE));
+
+            if (betweenValues) {
+                this.fromAttributeValueId = entity.getBelongsToField(WorkstationChangeoverNormFields.FROM_ATTRIBUTE_VALUE).getId();
+                this.toAttributeValueId = entity.getBelongsToField(WorkstationChangeoverNormFields.TO_ATTRIBUTE_VALUE).getId();
+            } else {
+                this.fromAttributeValueId = null;
+                this.toAttributeValueId = null;
+            }
+        }
+
+        private boolean matches(final Long currentAttributeValueId, final Collection<Long> previousAttributeValueIds) {
+            if (!betweenValues) {
+                return true;
+            }
+
+            return toAttributeValueId.equals(currentAttributeValueId) && previousAttributeValueIds.contains(fromAttributeValueId);
+        }
+
+    }
+
+}
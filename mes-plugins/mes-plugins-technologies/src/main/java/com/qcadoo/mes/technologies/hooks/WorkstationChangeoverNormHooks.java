@@ -7,6 +7,7 @@ import com.qcadoo.mes.basic.constants.WorkstationFields;
 import com.qcadoo.mes.basic.constants.WorkstationTypeFields;
 import com.qcadoo.mes.technologies.constants.WorkstationChangeoverNormChangeoverType;
 import com.qcadoo.mes.technologies.constants.WorkstationChangeoverNormFields;
+import com.qcadoo.mes.technologies.services.WorkstationChangeoverNormService;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.search.JoinType;
@@ -31,6 +32,9 @@ public class WorkstationChangeoverNormHooks {
     @Autowired
     private TranslationService translationService;
 
+    @Autowired
+    private WorkstationChangeoverNormService workstationChangeoverNormService;
+
     public boolean validatesWith(final DataDefinition workstationChangeoverNormDD, final Entity workstationChangeoverNorm) {
         boolean isValid = checkIfWorkstationTypeOrWorkstationAreEmpty(workstationChangeoverNormDD, workstationChangeoverNorm);
 
@@ -127,6 +131,14 @@ public class WorkstationChangeoverNormHooks {
         if (StringUtils.isEmpty(name)) {
             workstationChangeoverNorm.setField(WorkstationChangeoverNormFields.NAME, buildChangeoverName(workstationChangeoverNorm));
         }
+
+        workstationChangeoverNormService.invalidateChangeoverMatrices();
+    }
+
+    public boolean onDelete(final DataDefinition workstationChangeoverNormDD, final Entity workstationChangeoverNorm) {
+        workstationChangeoverNormService.invalidateChangeoverMatrices();
+
+        return true;
     }
 
     private String buildChangeoverName(final Entity workstationChangeoverNorm) {
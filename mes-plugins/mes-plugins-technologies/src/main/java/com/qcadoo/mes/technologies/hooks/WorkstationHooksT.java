@@ -25,15 +25,24 @@ package com.qcadoo.mes.technologies.hooks;
 
 import java.util.List;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import com.qcadoo.mes.technologies.constants.WorkstationFieldsT;
+import com.qcadoo.mes.technologies.services.WorkstationChangeoverNormService;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.Entity;
 
 @Service
 public class WorkstationHooksT {
 
+    @Autowired
+    private WorkstationChangeoverNormService workstationChangeoverNormService;
+
+    public void onSave(final DataDefinition workstationDD, final Entity workstation) {
+        workstationChangeoverNormService.invalidateChangeoverMatrices();
+    }
+
     public boolean onDelete(final DataDefinition workstationDD, final Entity workstation) {
         boolean isDeleted = true;
         List<Entity> operations = workstation.getManyToManyField(WorkstationFieldsT.OPERATIONS);
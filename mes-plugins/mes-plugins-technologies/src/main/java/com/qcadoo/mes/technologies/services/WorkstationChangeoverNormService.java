@@ -1,18 +1,26 @@
 package com.qcadoo.mes.technologies.services;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.qcadoo.mes.basic.constants.WorkstationFields;
 import com.qcadoo.mes.technologies.constants.TechnologiesConstants;
 import com.qcadoo.mes.technologies.constants.WorkstationChangeoverNormDtoFields;
 import com.qcadoo.mes.technologies.constants.WorkstationChangeoverNormFields;
+import com.qcadoo.mes.technologies.dto.WorkstationChangeoverMatrix;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.search.*;
+import com.qcadoo.tenant.api.MultiTenantUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Service
 public class WorkstationChangeoverNormService {
@@ -21,33 +29,77 @@ public class WorkstationChangeoverNormService {
 
     private static final String L_ID = "id";
 
-    private static final String L_COUNT = "count";
+    private static final long L_MAXIMUM_SIZE = 1000L;
+
+    private static final long L_EXPIRE_AFTER_HOURS = 1L;
+
+    private final Cache<String, WorkstationChangeoverMatrix> changeoverMatrices = CacheBuilder.newBuilder()
+            .maximumSize(L_MAXIMUM_SIZE).expireAfterWrite(L_EXPIRE_AFTER_HOURS, TimeUnit.HOURS).build();
+
+    private final AtomicLong generation = new AtomicLong();
 
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
-    public boolean hasWorkstationChangeoverNorms(final Entity workstation) {
+    /**
+     * Returns changeover matrix of active norms of given workstation and its workstation type. Matrix is built once per tenant
+     * and workstation and kept until norms or workstations change.
+     */
+    public WorkstationChangeoverMatrix getChangeoverMatrix(final Entity workstation) {
+        String key = getKeyPrefix(MultiTenantUtil.getCurrentTenantId()) + workstation.getId();
+
+        WorkstationChangeoverMatrix changeoverMatrix = changeoverMatrices.getIfPresent(key);
+
+        if (Objects.nonNull(changeoverMatrix)) {
+            return changeoverMatrix;
+        }
+
+        long currentGeneration = generation.get();
+
         SearchCriteriaBuilder searchCriteriaBuilder = getWorkstationChangeoverNormDD().find();
 
         addWorkstationSearchRestrictions(searchCriteriaBuilder, workstation);
 
-        Entity workstationChangeoverNorm = searchCriteriaBuilder.add(SearchRestrictions.eq(WorkstationChangeoverNormFields.ACTIVE, true))
-                .setProjection(SearchProjections.alias(SearchProjections.countDistinct(L_ID), L_COUNT))
-                .addOrder(SearchOrders.desc(L_COUNT)).setMaxResults(1).uniqueResult();
+        changeoverMatrix = WorkstationChangeoverMatrix.of(searchCriteriaBuilder
+                .add(SearchRestrictions.eq(WorkstationChangeoverNormFields.ACTIVE, true)).list().getEntities());
 
-        Long countValue = (Long) workstationChangeoverNorm.getField(L_COUNT);
+        if (currentGeneration == generation.get()) {
+            changeoverMatrices.put(key, changeoverMatrix);
+        }
 
-        return countValue > 0;
+        return changeoverMatrix;
     }
 
-    public List<Entity> findWorkstationChangeoverNorms(final Entity workstation, final Entity attribute) {
-        SearchCriteriaBuilder searchCriteriaBuilder = getWorkstationChangeoverNormDD().find();
+    /**
+     * Invalidates all matrices of current tenant, it's called by changeover norm and workstation hooks. Within transaction
+     * matrices are invalidated again when transaction is completed, so matrix built from norms read before commit isn't kept.
+     */
+    public void invalidateChangeoverMatrices() {
+        int tenantId = MultiTenantUtil.getCurrentTenantId();
 
-        addWorkstationSearchRestrictions(searchCriteriaBuilder, workstation);
-        addAttributeSearchRestrictions(searchCriteriaBuilder, attribute);
+        invalidate(tenantId);
 
-        return searchCriteriaBuilder.add(SearchRestrictions.eq(WorkstationChangeoverNormFields.ACTIVE, true))
-                .list().getEntities();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void afterCompletion(final int status) {
+                    super.afterCompletion(status);
+                    invalidate(tenantId);
+                }
+            });
+        }
+    }
+
+    private void invalidate(final int tenantId) {
+        String keyPrefix = getKeyPrefix(tenantId);
+
+        generation.incrementAndGet();
+        changeoverMatrices.asMap().keySet().removeIf(key -> key.startsWith(keyPrefix));
+    }
+
+    private String getKeyPrefix(final int tenantId) {
+        return tenantId + ":";
     }
 
     private void addWorkstationSearchRestrictions(final SearchCriteriaBuilder searchCriteriaBuilder, final Entity workstation) {
@@ -68,13 +120,6 @@ public class WorkstationChangeoverNormService {
         }
     }
 
-    private void addAttributeSearchRestrictions(final SearchCriteriaBuilder searchCriteriaBuilder, final Entity attribute) {
-        if (Objects.nonNull(attribute)) {
-            searchCriteriaBuilder.createAlias(WorkstationChangeoverNormFields.ATTRIBUTE, WorkstationChangeoverNormFields.ATTRIBUTE, JoinType.LEFT);
-            searchCriteriaBuilder.add(SearchRestrictions.eq(WorkstationChangeoverNormFields.ATTRIBUTE + L_DOT + L_ID, attribute.getId()));
-        }
-    }
-
     public List<Entity> getWorkstationChangeoverNormDtos(final Entity workstation) {
         Entity workstationType = workstation.getBelongsToField(WorkstationFields.WORKSTATION_TYPE);
 
@@ -0,0 +1,189 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.technologies;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.technologies.constants.OperationProductInComponentFields;
+import com.qcadoo.mes.technologies.constants.OperationProductOutComponentFields;
+import com.qcadoo.mes.technologies.constants.TechnologiesConstants;
+import com.qcadoo.mes.technologies.constants.TechnologyFields;
+import com.qcadoo.mes.technologies.constants.TechnologyOperationComponentFields;
+import com.qcadoo.mes.technologies.dto.OperationProductComponentHolder;
+import com.qcadoo.mes.technologies.dto.OperationProductComponentWithQuantityContainer;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.EntityTree;
+import com.qcadoo.testing.model.EntityListMock;
+
+public class TechnologyQuantitiesGraphTest {
+
+    private DataDefinition operationProductInComponentDD;
+
+    private DataDefinition operationProductOutComponentDD;
+
+    private Entity technology;
+
+    private Entity rootOperationComponent;
+
+    private Entity childOperationComponent;
+
+    private Entity intermediateIn;
+
+    private Entity rawMaterialIn;
+
+    @Before
+    public void init() {
+        operationProductInComponentDD = mock(DataDefinition.class);
+        operationProductOutComponentDD = mock(DataDefinition.class);
+
+        given(operationProductInComponentDD.getName()).willReturn(TechnologiesConstants.MODEL_OPERATION_PRODUCT_IN_COMPONENT);
+        given(operationProductOutComponentDD.getName()).willReturn(TechnologiesConstants.MODEL_OPERATION_PRODUCT_OUT_COMPONENT);
+
+        Entity finalProduct = mockEntity(1L);
+        Entity intermediateProduct = mockEntity(2L);
+        Entity rawMaterial = mockEntity(3L);
+
+        rootOperationComponent = mockEntity(10L);
+        childOperationComponent = mockEntity(20L);
+
+        Entity finalOut = mockOperationProductComponent(100L, operationProductOutComponentDD, rootOperationComponent,
+                finalProduct, new BigDecimal("2"));
+        intermediateIn = mockOperationProductComponent(101L, operationProductInComponentDD, rootOperationComponent,
+                intermediateProduct, new BigDecimal("3"));
+        Entity intermediateOut = mockOperationProductComponent(200L, operationProductOutComponentDD, childOperationComponent,
+                intermediateProduct, new BigDecimal("4"));
+        rawMaterialIn = mockOperationProductComponent(201L, operationProductInComponentDD, childOperationComponent, rawMaterial,
+                new BigDecimal("5"));
+
+        stubOperationComponent(rootOperationComponent, Lists.newArrayList(intermediateIn), Lists.newArrayList(finalOut),
+                Lists.newArrayList(childOperationComponent), true);
+        stubOperationComponent(childOperationComponent, Lists.newArrayList(rawMaterialIn), Lists.newArrayList(intermediateOut),
+                Lists.newArrayList(), false);
+
+        EntityTree operationComponents = mock(EntityTree.class);
+
+        given(operationComponents.getRoot()).willReturn(rootOperationComponent);
+
+        technology = mockEntity(1000L);
+
+        given(technology.getTreeField(TechnologyFields.OPERATION_COMPONENTS)).willReturn(operationComponents);
+        given(technology.getBelongsToField(TechnologyFields.PRODUCT)).willReturn(finalProduct);
+    }
+
+    @Test
+    public void shouldExpandQuantitiesAndOperationRuns() {
+        // given
+        TechnologyQuantitiesGraph graph = TechnologyQuantitiesGraph.compile(technology);
+
+        OperationProductComponentWithQuantityContainer container = new OperationProductComponentWithQuantityContainer();
+        Set<OperationProductComponentHolder> nonComponents = Sets.newHashSet();
+        Map<Long, BigDecimal> operationRuns = Maps.newHashMap();
+
+        // when
+        graph.expand(BigDecimal.TEN, MathContext.DECIMAL64, container, nonComponents, operationRuns);
+
+        // then
+        assertEquals(0, new BigDecimal("5").compareTo(operationRuns.get(10L)));
+        assertEquals(0, new BigDecimal("15").compareTo(container.get(intermediateIn)));
+        assertEquals(0, new BigDecimal("4").compareTo(operationRuns.get(20L)));
+        assertEquals(0, new BigDecimal("20").compareTo(container.get(rawMaterialIn)));
+        assertEquals(4, container.asMap().size());
+        assertEquals(1, nonComponents.size());
+        assertTrue(nonComponents.contains(new OperationProductComponentHolder(intermediateIn)));
+    }
+
+    @Test
+    public void shouldExpandSameGraphManyTimes() {
+        // given
+        TechnologyQuantitiesGraph graph = TechnologyQuantitiesGraph.compile(technology);
+
+        graph.expand(BigDecimal.TEN, MathContext.DECIMAL64, new OperationProductComponentWithQuantityContainer(),
+                Sets.newHashSet(), Maps.newHashMap());
+
+        OperationProductComponentWithQuantityContainer container = new OperationProductComponentWithQuantityContainer();
+        Map<Long, BigDecimal> operationRuns = Maps.newHashMap();
+
+        // when
+        graph.expand(new BigDecimal("2"), MathContext.DECIMAL64, container, Sets.newHashSet(), operationRuns);
+
+        // then
+        assertEquals(0, BigDecimal.ONE.compareTo(operationRuns.get(10L)));
+        assertEquals(0, new BigDecimal("3").compareTo(container.get(intermediateIn)));
+        assertEquals(0, BigDecimal.ONE.compareTo(operationRuns.get(20L)));
+        assertEquals(0, new BigDecimal("5").compareTo(container.get(rawMaterialIn)));
+    }
+
+    private void stubOperationComponent(final Entity operationComponent, final List<Entity> operationProductInComponents,
+            final List<Entity> operationProductOutComponents, final List<Entity> children,
+            final boolean areProductQuantitiesDivisible) {
+        given(operationComponent.getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_IN_COMPONENTS))
+                .willReturn(EntityListMock.create(operationProductInComponents));
+        given(operationComponent.getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_OUT_COMPONENTS))
+                .willReturn(EntityListMock.create(operationProductOutComponents));
+        given(operationComponent.getHasManyField(TechnologyOperationComponentFields.CHILDREN))
+                .willReturn(EntityListMock.create(children));
+        given(operationComponent.getBooleanField(TechnologyOperationComponentFields.ARE_PRODUCT_QUANTITIES_DIVISIBLE))
+                .willReturn(areProductQuantitiesDivisible);
+        given(operationComponent.getBooleanField(TechnologyOperationComponentFields.IS_TJ_DIVISIBLE))
+                .willReturn(areProductQuantitiesDivisible);
+    }
+
+    private Entity mockOperationProductComponent(final Long id, final DataDefinition dataDefinition,
+            final Entity operationComponent, final Entity product, final BigDecimal quantity) {
+        Entity operationProductComponent = mockEntity(id);
+
+        given(operationProductComponent.getDataDefinition()).willReturn(dataDefinition);
+        given(operationProductComponent.getBelongsToField(OperationProductInComponentFields.OPERATION_COMPONENT))
+                .willReturn(operationComponent);
+        given(operationProductComponent.getBelongsToField(OperationProductOutComponentFields.PRODUCT)).willReturn(product);
+        given(operationProductComponent.getDecimalField(OperationProductInComponentFields.QUANTITY)).willReturn(quantity);
+
+        return operationProductComponent;
+    }
+
+    private Entity mockEntity(final Long id) {
+        Entity entity = mock(Entity.class);
+
+        given(entity.getId()).willReturn(id);
+
+        return entity;
+    }
+
+}
@@ -0,0 +1,165 @@
+package com.qcadoo.mes.technologies.dto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.technologies.constants.WorkstationChangeoverNormChangeoverType;
+import com.qcadoo.mes.technologies.constants.WorkstationChangeoverNormFields;
+import com.qcadoo.model.api.Entity;
+
+public class WorkstationChangeoverMatrixTest {
+
+    private static final Long L_COLOR = 1L;
+
+    private static final Long L_WHITE = 11L;
+
+    private static final Long L_BLACK = 12L;
+
+    private static final Long L_RED = 13L;
+
+    private static final Long L_SIZE = 2L;
+
+    private static final Long L_SMALL = 21L;
+
+    private Entity whiteToBlack, anyColorChange, anySizeChange;
+
+    private WorkstationChangeoverMatrix changeoverMatrix;
+
+    @Before
+    public void init() {
+        whiteToBlack = mockNorm(L_COLOR, WorkstationChangeoverNormChangeoverType.BETWEEN_VALUES, L_WHITE, L_BLACK, 600, false);
+        anyColorChange = mockNorm(L_COLOR, WorkstationChangeoverNormChangeoverType.ANY_CHANGE, null, null, 300, true);
+        anySizeChange = mockNorm(L_SIZE, WorkstationChangeoverNormChangeoverType.ANY_CHANGE, null, null, 120, false);
+
+        changeoverMatrix = WorkstationChangeoverMatrix.of(Lists.newArrayList(anyColorChange, whiteToBlack, anySizeChange));
+    }
+
+    @Test
+    public void shouldFindNormsBetweenValuesAndOfAnyChangeInOrderOfNorms() {
+        // when
+        List<Entity> norms = changeoverMatrix.findNorms(L_COLOR, L_BLACK, Lists.newArrayList(L_WHITE));
+
+        // then
+        assertEquals(Lists.newArrayList(anyColorChange, whiteToBlack), norms);
+    }
+
+    @Test
+    public void shouldFindNormsOfAnyChangeIfValueDoesNotChange() {
+        // when
+        List<Entity> norms = changeoverMatrix.findNorms(L_COLOR, L_WHITE, Lists.newArrayList(L_WHITE));
+
+        // then
+        assertEquals(Lists.newArrayList(anyColorChange), norms);
+    }
+
+    @Test
+    public void shouldFindOnlyNormsOfAnyChangeIfPreviousProductHasAttributeWithoutValue() {
+        // when
+        List<Entity> norms = changeoverMatrix.findNorms(L_COLOR, L_BLACK, Lists.newArrayList((Long) null));
+
+        // then
+        assertEquals(Lists.newArrayList(anyColorChange), norms);
+    }
+
+    @Test
+    public void shouldFindOnlyNormsOfAnyChangeIfCurrentProductHasAttributeWithoutValue() {
+        // when
+        List<Entity> norms = changeoverMatrix.findNorms(L_COLOR, null, Lists.newArrayList(L_WHITE));
+
+        // then
+        assertEquals(Lists.newArrayList(anyColorChange), norms);
+    }
+
+    @Test
+    public void shouldFindOnlyNormsOfAnyChangeIfThereAreNoNormsBetweenValues() {
+        // when
+        List<Entity> norms = changeoverMatrix.findNorms(L_COLOR, L_RED, Lists.newArrayList(L_WHITE));
+
+        // then
+        assertEquals(Lists.newArrayList(anyColorChange), norms);
+    }
+
+    @Test
+    public void shouldNotFindNormsIfPreviousProductHasNoValueOfAttribute() {
+        // when
+        List<Entity> norms = changeoverMatrix.findNorms(L_COLOR, L_BLACK, Lists.newArrayList());
+
+        // then
+        assertTrue(norms.isEmpty());
+    }
+
+    @Test
+    public void shouldCalculateDurationOfChangeoversOfSequence() {
+        // given
+        ImmutableListMultimap<Long, Long> whiteSmall = ImmutableListMultimap.of(L_COLOR, L_WHITE, L_SIZE, L_SMALL);
+        ImmutableListMultimap<Long, Long> blackSmall = ImmutableListMultimap.of(L_COLOR, L_BLACK, L_SIZE, L_SMALL);
+        ImmutableListMultimap<Long, Long> red = ImmutableListMultimap.of(L_COLOR, L_RED);
+
+        // when
+        int duration = changeoverMatrix.getDuration(Lists.newArrayList(whiteSmall, blackSmall, red));
+
+        // then
+        assertEquals((600 + 120) + 300, duration);
+    }
+
+    @Test
+    public void shouldCalculateDurationOfChangeoverAfterProductWithAttributeWithoutValue() {
+        // given
+        ListMultimap<Long, Long> withoutColor = ArrayListMultimap.create();
+        withoutColor.put(L_COLOR, null);
+        ImmutableListMultimap<Long, Long> black = ImmutableListMultimap.of(L_COLOR, L_BLACK);
+
+        // when
+        int duration = changeoverMatrix.getDuration(withoutColor, black);
+
+        // then
+        assertEquals(300, duration);
+    }
+
+    @Test
+    public void shouldBeEmptyWithoutNorms() {
+        // when
+        WorkstationChangeoverMatrix emptyMatrix = WorkstationChangeoverMatrix.of(Lists.newArrayList());
+
+        // then
+        assertTrue(emptyMatrix.isEmpty());
+    }
+
+    private Entity mockNorm(final Long attributeId, final WorkstationChangeoverNormChangeoverType changeoverType,
+            final Long fromAttributeValueId, final Long toAttributeValueId, final int duration, final boolean isParallel) {
+        Entity norm = mock(Entity.class);
+
+        given(norm.getStringField(WorkstationChangeoverNormFields.CHANGEOVER_TYPE)).willReturn(changeoverType.getStringValue());
+        given(norm.getBelongsToField(WorkstationChangeoverNormFields.ATTRIBUTE)).willReturn(mockEntity(attributeId));
+        given(norm.getBelongsToField(WorkstationChangeoverNormFields.FROM_ATTRIBUTE_VALUE))
+                .willReturn(mockEntity(fromAttributeValueId));
+        given(norm.getBelongsToField(WorkstationChangeoverNormFields.TO_ATTRIBUTE_VALUE)).willReturn(mockEntity(toAttributeValueId));
+        given(norm.getIntegerField(WorkstationChangeoverNormFields.DURATION)).willReturn(duration);
+        given(norm.getBooleanField(WorkstationChangeoverNormFields.IS_PARALLEL)).willReturn(isParallel);
+
+        return norm;
+    }
+
+    private Entity mockEntity(final Long id) {
+        if (id == null) {
+            return null;
+        }
+
+        Entity entity = mock(Entity.class);
+        given(entity.getId()).willReturn(id);
+
+        return entity;
+    }
+
+}
@@ -23,24 +23,19 @@
  */
 package com.qcadoo.mes.timeGapsPreview;
 
-import com.google.common.base.Predicate;
-import com.google.common.collect.Collections2;
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 import com.qcadoo.mes.timeGapsPreview.constants.TimeGapsPreviewConstants;
 import com.qcadoo.mes.timeGapsPreview.provider.OrderAndChangeoverIntervalsProvider;
 import com.qcadoo.mes.timeGapsPreview.provider.ShiftIntervalsProvider;
-import com.qcadoo.mes.timeGapsPreview.util.TimeGapsBuilder;
-import com.qcadoo.mes.timeGapsPreview.util.TimeGapsBuilderImpl;
+import com.qcadoo.mes.timeGapsPreview.util.EpochIntervals;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 
-import java.util.Collection;
 import java.util.Map;
-import java.util.Set;
+import java.util.stream.Collectors;
 
-import org.joda.time.DateTime;
-import org.joda.time.Duration;
 import org.joda.time.Interval;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -58,41 +53,39 @@ public class TimeGapsGenerator {
     private DataDefinitionService dataDefinitionService;
 
     public TimeGapsSearchResult generate(final TimeGapsContext timeGapsContext) {
-        Multimap<Long, Interval> occupiedIntervals = createMultiMapWithKeys(timeGapsContext.getProductionLines());
-        occupiedIntervals.putAll(orderAndChangeoverIntervalsProvider.getIntervalsPerProductionLine(timeGapsContext));
-        occupiedIntervals.putAll(shiftIntervalsProvider.getIntervalsPerProductionLine(timeGapsContext));
+        return TimeGapsSearchResult.create(findGaps(timeGapsContext, Integer.MAX_VALUE), getTimeGapDataDef());
+    }
 
-        Multimap<Long, Interval> timeGaps = HashMultimap.create();
-        for (Map.Entry<Long, Collection<Interval>> lineIntervals : occupiedIntervals.asMap().entrySet()) {
-            Collection<Interval> gapsForLine = invertOccupiedIntervals(timeGapsContext.getInterval(), lineIntervals.getValue());
-            Collection<Interval> gapsForLineFilteredByDuration = Collections2.filter(gapsForLine, new Predicate<Interval>() {
+    private Multimap<Long, Interval> findGaps(final TimeGapsContext timeGapsContext, final int limitPerLine) {
+        Interval searchInterval = timeGapsContext.getInterval();
+        long minDuration = timeGapsContext.getDuration().getMillis();
 
-                @Override
-                public boolean apply(final Interval interval) {
-                    if (interval == null) {
-                        return false;
-                    }
-                    return interval.toDuration().compareTo(timeGapsContext.getDuration()) >= 0;
-                }
-            });
-            timeGaps.putAll(lineIntervals.getKey(), gapsForLineFilteredByDuration);
-        }
-        return TimeGapsSearchResult.create(timeGaps, getTimeGapDataDef());
-    }
+        EpochIntervals spareTimeIntervals = new EpochIntervals(searchInterval);
+        shiftIntervalsProvider.getSpareTimeIntervals(timeGapsContext).forEach(spareTimeIntervals::add);
 
-    private Multimap<Long, Interval> createMultiMapWithKeys(final Set<Long> keys) {
-        Multimap<Long, Interval> multiMap = HashMultimap.create();
-        Interval emptyInterval = new Interval(new DateTime(0L), Duration.ZERO);
-        for (Long key : keys) {
-            multiMap.put(key, emptyInterval);
+        Map<Long, EpochIntervals> occupiedIntervals = Maps.newHashMap();
+        for (Long productionLineId : timeGapsContext.getProductionLines()) {
+            EpochIntervals lineIntervals = new EpochIntervals(searchInterval);
+            lineIntervals.addAll(spareTimeIntervals);
+            occupiedIntervals.put(productionLineId, lineIntervals);
         }
-        return multiMap;
-    }
+        for (Map.Entry<Long, Interval> lineIdAndInterval : orderAndChangeoverIntervalsProvider
+                .getIntervalsPerProductionLine(timeGapsContext).entries()) {
+            EpochIntervals lineIntervals = occupiedIntervals.get(lineIdAndInterval.getKey());
+            if (lineIntervals != null) {
+                lineIntervals.add(lineIdAndInterval.getValue());
+            }
+        }
+
+        Map<Long, long[]> gapsPerLine = occupiedIntervals.entrySet().parallelStream().collect(
+                Collectors.toMap(Map.Entry::getKey, lineIdAndIntervals -> lineIdAndIntervals.getValue().findGaps(minDuration,
+                        limitPerLine)));
 
-    private Collection<Interval> invertOccupiedIntervals(final Interval domainInterval, final Iterable<Interval> occupiedIntervals) {
-        TimeGapsBuilder gapsBuilder = new TimeGapsBuilderImpl(domainInterval);
-        gapsBuilder.addOccupiedIntervals(occupiedIntervals);
-        return gapsBuilder.calculateGaps();
+        Multimap<Long, Interval> timeGaps = HashMultimap.create();
+        for (Map.Entry<Long, long[]> lineIdAndGaps : gapsPerLine.entrySet()) {
+            timeGaps.putAll(lineIdAndGaps.getKey(), EpochIntervals.toIntervals(lineIdAndGaps.getValue()));
+        }
+        return timeGaps;
     }
 
     private DataDefinition getTimeGapDataDef() {
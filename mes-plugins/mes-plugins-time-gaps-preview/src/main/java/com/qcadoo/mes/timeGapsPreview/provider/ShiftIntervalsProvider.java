@@ -49,8 +49,7 @@ public class ShiftIntervalsProvider implements IntervalsProvider {
 
     @Override
     public Multimap<Long, Interval> getIntervalsPerProductionLine(final TimeGapsContext context) {
-        Set<Interval> workIntervals = getWorkIntervals(context);
-        Collection<Interval> spareTimeIntervals = invertIntervals(context.getInterval(), workIntervals);
+        Collection<Interval> spareTimeIntervals = getSpareTimeIntervals(context);
         Multimap<Long, Interval> spareTimeMultiMap = HashMultimap.create();
         for (Long productionLne : context.getProductionLines()) {
             spareTimeMultiMap.putAll(productionLne, spareTimeIntervals);
@@ -58,6 +57,13 @@ public class ShiftIntervalsProvider implements IntervalsProvider {
         return spareTimeMultiMap;
     }
 
+    /**
+     * Spare time intervals, which are the same for every production line.
+     */
+    public Collection<Interval> getSpareTimeIntervals(final TimeGapsContext context) {
+        return invertIntervals(context.getInterval(), getWorkIntervals(context));
+    }
+
     private Collection<Interval> invertIntervals(final Interval domainInterval, final Iterable<Interval> intervals) {
         TimeGapsBuilder gapsBuilder = new TimeGapsBuilderImpl(domainInterval);
         gapsBuilder.addOccupiedIntervals(intervals);
@@ -0,0 +1,177 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.timeGapsPreview.util;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.joda.time.Interval;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+/**
+ * Occupied intervals of one search interval, kept as epoch milliseconds in primitive arrays.
+ * 
+ * Gaps are found with a single sweep over starts and ends sorted independently of each other, which is enough to tell where
+ * their union begins and ends, so no interval objects are created nor merged on the way.
+ */
+public class EpochIntervals {
+
+    private static final int L_INITIAL_CAPACITY = 16;
+
+    private final long searchStart;
+
+    private final long searchEnd;
+
+    private long[] starts;
+
+    private long[] ends;
+
+    private int size;
+
+    public EpochIntervals(final long searchStart, final long searchEnd) {
+        Preconditions.checkArgument(searchStart <= searchEnd, "Search interval have to end after its start.");
+        this.searchStart = searchStart;
+        this.searchEnd = searchEnd;
+        this.starts = new long[L_INITIAL_CAPACITY];
+        this.ends = new long[L_INITIAL_CAPACITY];
+    }
+
+    public EpochIntervals(final Interval searchInterval) {
+        this(searchInterval.getStartMillis(), searchInterval.getEndMillis());
+    }
+
+    /**
+     * Add occupied interval, clipped to the search interval. Intervals which don't overlap it are ignored.
+     */
+    public void add(final long start, final long end) {
+        long clippedStart = Math.max(start, searchStart);
+        long clippedEnd = Math.min(end, searchEnd);
+
+        if (clippedStart >= clippedEnd) {
+            return;
+        }
+
+        if (size == starts.length) {
+            starts = Arrays.copyOf(starts, size * 2);
+            ends = Arrays.copyOf(ends, size * 2);
+        }
+
+        starts[size] = clippedStart;
+        ends[size] = clippedEnd;
+        size++;
+    }
+
+    public void add(final Interval interval) {
+        if (interval != null) {
+            add(interval.getStartMillis(), interval.getEndMillis());
+        }
+    }
+
+    public void addAll(final EpochIntervals intervals) {
+        for (int i = 0; i < intervals.size; i++) {
+            add(intervals.starts[i], intervals.ends[i]);
+        }
+    }
+
+    /**
+     * Find gaps between occupied intervals.
+     * 
+     * @param minDuration
+     *            minimal duration of gap in milliseconds
+     * @param limit
+     *            maximal number of gaps, the earliest ones are returned
+     * @return starts and ends of gaps, ordered by start, as [start0, end0, start1, end1, ...]
+     */
+    public long[] findGaps(final long minDuration, final int limit) {
+        long[] sortedStarts = Arrays.copyOf(starts, size);
+        long[] sortedEnds = Arrays.copyOf(ends, size);
+
+        Arrays.sort(sortedStarts);
+        Arrays.sort(sortedEnds);
+
+        long[] gaps = new long[L_INITIAL_CAPACITY];
+        int gapsSize = 0;
+
+        long free = searchStart;
+        int active = 0;
+        int endIndex = 0;
+
+        for (int startIndex = 0; startIndex < size && gapsSize / 2 < limit;) {
+            if (sortedStarts[startIndex] <= sortedEnds[endIndex]) {
+                if (active == 0 && sortedStarts[startIndex] - free >= Math.max(minDuration, 1L)) {
+                    gaps = append(gaps, gapsSize, free, sortedStarts[startIndex]);
+                    gapsSize += 2;
+                }
+
+                active++;
+                startIndex++;
+            } else {
+                active--;
+
+                if (active == 0) {
+                    free = sortedEnds[endIndex];
+                }
+
+                endIndex++;
+            }
+        }
+
+        if (size > 0) {
+            free = Math.max(free, sortedEnds[size - 1]);
+        }
+
+        if (gapsSize / 2 < limit && searchEnd - free >= Math.max(minDuration, 1L)) {
+            gaps = append(gaps, gapsSize, free, searchEnd);
+            gapsSize += 2;
+        }
+
+        return Arrays.copyOf(gaps, gapsSize);
+    }
+
+    private static long[] append(final long[] gaps, final int gapsSize, final long start, final long end) {
+        long[] result = gaps;
+
+        if (gapsSize + 2 > gaps.length) {
+            result = Arrays.copyOf(gaps, gaps.length * 2);
+        }
+
+        result[gapsSize] = start;
+        result[gapsSize + 1] = end;
+
+        return result;
+    }
+
+    public static List<Interval> toIntervals(final long[] gaps) {
+        List<Interval> intervals = Lists.newArrayListWithCapacity(gaps.length / 2);
+
+        for (int i = 0; i < gaps.length; i += 2) {
+            intervals.add(new Interval(gaps[i], gaps[i + 1]));
+        }
+
+        return intervals;
+    }
+
+}
@@ -33,14 +33,11 @@ import com.google.common.collect.Sets;
 
 public class TimeGapsBuilderImpl implements TimeGapsBuilder {
 
-    private final Interval searchInterval;
-
-    private final SortedSet<Interval> occupiedIntervals;
+    private final EpochIntervals occupiedIntervals;
 
     public TimeGapsBuilderImpl(final Interval interval) {
         Preconditions.checkArgument(interval != null, "Search interval have to be provided.");
-        searchInterval = interval;
-        occupiedIntervals = Sets.newTreeSet(IntervalsComparator.START_DATE_ASC_AND_DURATION_DESC);
+        occupiedIntervals = new EpochIntervals(interval);
     }
 
     @Override
@@ -53,9 +50,7 @@ public class TimeGapsBuilderImpl implements TimeGapsBuilder {
 
     @Override
     public void addOccupiedInterval(final Interval interval) {
-        if (interval != null && searchInterval.overlaps(interval)) {
-            occupiedIntervals.add(interval);
-        }
+        occupiedIntervals.add(interval);
     }
 
     public static SortedSet<Interval> flatten(final SortedSet<Interval> intervalsSet) {
@@ -63,20 +58,21 @@ public class TimeGapsBuilderImpl implements TimeGapsBuilder {
             return intervalsSet;
         }
         SortedSet<Interval> flattenIntervals = newSortedSet();
-        Interval prev = intervalsSet.first();
+        Interval prev = null;
 
-        flattenIntervals.add(prev);
         for (Interval interval : intervalsSet) {
-            if (interval.contains(prev.getEnd()) || interval.abuts(prev)) {
-                Interval sumInterval = new Interval(prev.getStart(), interval.getEnd());
-                flattenIntervals.remove(prev);
-                flattenIntervals.add(sumInterval);
-                prev = sumInterval;
-            } else if (!prev.contains(interval)) {
-                flattenIntervals.add(interval);
+            if (prev == null) {
+                prev = interval;
+            } else if (interval.getStartMillis() <= prev.getEndMillis()) {
+                if (interval.getEndMillis() > prev.getEndMillis()) {
+                    prev = new Interval(prev.getStart(), interval.getEnd());
+                }
+            } else {
+                flattenIntervals.add(prev);
                 prev = interval;
             }
         }
+        flattenIntervals.add(prev);
         return flattenIntervals;
     }
 
@@ -87,24 +83,7 @@ public class TimeGapsBuilderImpl implements TimeGapsBuilder {
     @Override
     public Collection<Interval> calculateGaps() {
         SortedSet<Interval> gaps = newSortedSet();
-        SortedSet<Interval> flattenOccupiedIntervals = flatten(occupiedIntervals);
-        if (flattenOccupiedIntervals.isEmpty()) {
-            gaps.add(searchInterval);
-            return gaps;
-        }
-
-        Interval prev = flattenOccupiedIntervals.first();
-        if (searchInterval.getStart().isBefore(prev.getStart())) {
-            gaps.add(new Interval(searchInterval.getStart(), prev.getStart()));
-        }
-        flattenOccupiedIntervals.remove(prev);
-        for (Interval occupied : flattenOccupiedIntervals) {
-            gaps.add(prev.gap(occupied));
-            prev = occupied;
-        }
-        if (prev.getEnd().isBefore(searchInterval.getEnd())) {
-            gaps.add(new Interval(prev.getEnd(), searchInterval.getEnd()));
-        }
+        gaps.addAll(EpochIntervals.toIntervals(occupiedIntervals.findGaps(0L, Integer.MAX_VALUE)));
         return gaps;
     }
 
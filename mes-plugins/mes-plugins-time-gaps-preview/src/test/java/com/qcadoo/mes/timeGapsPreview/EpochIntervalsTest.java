@@ -0,0 +1,99 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.timeGapsPreview;
+
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.joda.time.DateTime;
+import org.joda.time.Interval;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.timeGapsPreview.util.EpochIntervals;
+
+public class EpochIntervalsTest {
+
+    private static final DateTime FROM = new DateTime(2013, 1, 8, 0, 0, 0);
+
+    private static final DateTime TO = FROM.plusDays(1);
+
+    private static final long HOUR = 60 * 60 * 1000L;
+
+    private EpochIntervals epochIntervals;
+
+    @Before
+    public void init() {
+        epochIntervals = new EpochIntervals(new Interval(FROM, TO));
+
+        epochIntervals.add(new Interval(FROM.minusHours(2), FROM.plusHours(1)));
+        epochIntervals.add(new Interval(FROM.plusHours(6), FROM.plusHours(8)));
+        epochIntervals.add(new Interval(FROM.plusHours(2), FROM.plusHours(5)));
+        epochIntervals.add(new Interval(FROM.plusHours(3), FROM.plusHours(4)));
+        epochIntervals.add(new Interval(FROM.plusHours(5), FROM.plusHours(6)));
+        epochIntervals.add(new Interval(FROM.plusHours(20), TO.plusHours(3)));
+    }
+
+    @Test
+    public void shouldFindAllGaps() {
+        // given
+        List<Interval> expectedGaps = Lists.newArrayList(new Interval(FROM.plusHours(1), FROM.plusHours(2)),
+                new Interval(FROM.plusHours(8), FROM.plusHours(20)));
+
+        // when
+        List<Interval> gaps = EpochIntervals.toIntervals(epochIntervals.findGaps(0L, Integer.MAX_VALUE));
+
+        // then
+        Assert.assertEquals(expectedGaps, gaps);
+    }
+
+    @Test
+    public void shouldFindEarliestGapsNotShorterThanGivenDuration() {
+        // given
+        epochIntervals.add(new Interval(FROM.plusHours(10), FROM.plusHours(11)));
+
+        List<Interval> expectedGaps = Lists.newArrayList(new Interval(FROM.plusHours(11), FROM.plusHours(20)));
+
+        // when
+        List<Interval> gaps = EpochIntervals.toIntervals(epochIntervals.findGaps(3 * HOUR, 1));
+
+        // then
+        Assert.assertEquals(expectedGaps, gaps);
+    }
+
+    @Test
+    public void shouldReturnSearchIntervalIfThereAreNoOccupiedIntervals() {
+        // given
+        EpochIntervals emptyIntervals = new EpochIntervals(new Interval(FROM, TO));
+
+        // when
+        List<Interval> gaps = EpochIntervals.toIntervals(emptyIntervals.findGaps(HOUR, 10));
+
+        // then
+        Assert.assertEquals(Lists.newArrayList(new Interval(FROM, TO)), gaps);
+    }
+
+}
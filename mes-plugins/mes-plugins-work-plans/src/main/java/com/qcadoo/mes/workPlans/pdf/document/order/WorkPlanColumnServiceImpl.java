@@ -26,13 +26,14 @@ package com.qcadoo.mes.workPlans.pdf.document.order;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.ApplicationContext;
 import org.springframework.stereotype.Service;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.qcadoo.mes.basic.ParameterService;
 import com.qcadoo.mes.columnExtension.constants.ColumnAlignment;
 import com.qcadoo.mes.orders.constants.OrderFields;
@@ -57,16 +58,20 @@ public class WorkPlanColumnServiceImpl implements WorkPlanColumnService {
 
     private static final String L_ALIGNMENT = "alignment";
 
-    private final ApplicationContext applicationContext;
+    private final Map<String, OrderColumn> identifierOrderColumn;
+
+    private final Map<String, OperationProductColumn> identifierOperationProductColumn;
 
     private final EntityTreeUtilsService entityTreeUtilsService;
 
     private final ParameterService parameterService;
 
     @Autowired
-    public WorkPlanColumnServiceImpl(final ApplicationContext applicationContext,
+    public WorkPlanColumnServiceImpl(final Map<String, OrderColumn> identifierOrderColumn,
+            final Map<String, OperationProductColumn> identifierOperationProductColumn,
             final EntityTreeUtilsService entityTreeUtilsService, final ParameterService parameterService) {
-        this.applicationContext = applicationContext;
+        this.identifierOrderColumn = identifierOrderColumn;
+        this.identifierOperationProductColumn = identifierOperationProductColumn;
         this.entityTreeUtilsService = entityTreeUtilsService;
         this.parameterService = parameterService;
     }
@@ -75,8 +80,6 @@ public class WorkPlanColumnServiceImpl implements WorkPlanColumnService {
     public Map<OrderColumn, ColumnAlignment> getOrderColumns(final Entity workPlan) {
         Map<OrderColumn, ColumnAlignment> orderColumnWithAlignment = Maps.newLinkedHashMap();
 
-        Map<String, OrderColumn> identifierOrderColumn = applicationContext.getBeansOfType(OrderColumn.class);
-
         List<Entity> columns = getWorkPlanOrderColumns(workPlan);
 
         for (Entity column : columns) {
@@ -110,34 +113,35 @@ public class WorkPlanColumnServiceImpl implements WorkPlanColumnService {
         Map<Long, Map<OperationProductColumn, ColumnAlignment>> operationComponentIdWithOperationProductColumnAndAlignment = Maps
                 .newHashMap();
 
-        Map<String, OperationProductColumn> identifierOperationProductColumn = applicationContext
-                .getBeansOfType(OperationProductColumn.class);
+        Map<OperationProductColumn, ColumnAlignment> operationProductColumnWithAlignment = Maps.newLinkedHashMap();
 
-        List<Entity> orders = getWorkPlanOrders(workPlan);
+        for (Entity column : getOperationProductColumns(productDirection)) {
+            String identifier = getIdentifier(column);
+            ColumnAlignment alignment = getColumnAlignment(column);
 
-        for (Entity order : orders) {
-            Entity technology = getOrderTechnology(order);
+            OperationProductColumn key = identifierOperationProductColumn.get(identifier);
 
-            List<Entity> operationComponents = getSortedTechnologyOperationComponents(technology);
+            if (Objects.nonNull(key)) {
+                operationProductColumnWithAlignment.put(key, alignment);
+            }
+        }
 
-            for (Entity operationComponent : operationComponents) {
-                List<Entity> columns = getOperationProductColumns(productDirection);
+        List<Entity> orders = getWorkPlanOrders(workPlan);
 
-                Map<OperationProductColumn, ColumnAlignment> operationProductColumnWithAlignment = Maps.newLinkedHashMap();
+        Set<Long> technologyIds = Sets.newHashSet();
 
-                for (Entity column : columns) {
-                    String identifier = getIdentifier(column);
-                    ColumnAlignment alignment = getColumnAlignment(column);
+        for (Entity order : orders) {
+            Entity technology = getOrderTechnology(order);
 
-                    OperationProductColumn key = identifierOperationProductColumn.get(identifier);
+            if (!technologyIds.add(technology.getId())) {
+                continue;
+            }
 
-                    if (Objects.nonNull(key)) {
-                        operationProductColumnWithAlignment.put(key, alignment);
-                    }
-                }
+            List<Entity> operationComponents = getSortedTechnologyOperationComponents(technology);
 
+            for (Entity operationComponent : operationComponents) {
                 operationComponentIdWithOperationProductColumnAndAlignment.put(operationComponent.getId(),
-                        operationProductColumnWithAlignment);
+                        Maps.newLinkedHashMap(operationProductColumnWithAlignment));
             }
         }
 
@@ -27,9 +27,7 @@ import com.lowagie.text.Document;
 import com.lowagie.text.DocumentException;
 import com.lowagie.text.pdf.PdfWriter;
 import com.qcadoo.localization.api.TranslationService;
-import com.qcadoo.mes.orders.constants.OrderFields;
 import com.qcadoo.mes.technologies.ProductQuantitiesServiceImpl;
-import com.qcadoo.mes.technologies.constants.TechnologyFields;
 import com.qcadoo.mes.workPlans.constants.WorkPlanFields;
 import com.qcadoo.mes.workPlans.pdf.document.WorkPlanPdfForDivision;
 import com.qcadoo.mes.workPlans.pdf.document.operation.grouping.container.GroupingContainer;
@@ -37,10 +35,8 @@ import com.qcadoo.mes.workPlans.pdf.document.operation.grouping.factory.Grouping
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.EntityList;
-import com.qcadoo.model.api.utils.EntityTreeUtilsService;
 import com.qcadoo.report.api.pdf.PdfDocumentWithWriterService;
 
-import java.util.List;
 import java.util.Locale;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -61,9 +57,6 @@ public class WorkPlanForDivisionPdfService extends PdfDocumentWithWriterService
     @Autowired
     private ProductQuantitiesServiceImpl productQuantitiesServiceImpl;
 
-    @Autowired
-    private EntityTreeUtilsService entityTreeUtilsService;
-
     @Autowired
     private WorkPlanPdfService workPlanPdfService;
 
@@ -81,26 +74,12 @@ public class WorkPlanForDivisionPdfService extends PdfDocumentWithWriterService
 
         GroupingContainer groupingContainer = groupingContainerFactory.create(workPlan, locale);
 
-        for (Entity order : orders(workPlan)) {
-            for (Entity operationComponent : operationComponents(technology(order))) {
-                List<Entity> productionCountingQuantitiesIn = workPlanPdfService.getProductionCountingQuantitiesIn(order, operationComponent);
-                List<Entity> productionCountingQuantitiesOut = workPlanPdfService.getProductionCountingQuantitiesOut(order, operationComponent);
-                groupingContainer.add(order, operationComponent, productionCountingQuantitiesIn, productionCountingQuantitiesOut);
-            }
-        }
+        workPlanPdfService.addOperationComponents(groupingContainer, orders(workPlan));
 
         workPlanPdfForDivision.print(writer, groupingContainer, workPlan, document, locale);
 
     }
 
-    private List<Entity> operationComponents(Entity technology) {
-        return entityTreeUtilsService.getSortedEntities(technology.getTreeField(TechnologyFields.OPERATION_COMPONENTS));
-    }
-
-    private Entity technology(Entity order) {
-        return order.getBelongsToField(OrderFields.TECHNOLOGY);
-    }
-
     private EntityList orders(Entity workPlan) {
         return workPlan.getHasManyField(WorkPlanFields.ORDERS);
     }
@@ -23,6 +23,10 @@
  */
 package com.qcadoo.mes.workPlans.print;
 
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.lowagie.text.Document;
 import com.lowagie.text.DocumentException;
 import com.lowagie.text.pdf.PdfWriter;
@@ -44,6 +48,9 @@ import com.qcadoo.report.api.pdf.PdfDocumentWithWriterService;
 
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -51,6 +58,14 @@ import org.springframework.stereotype.Service;
 @Service
 public class WorkPlanPdfService extends PdfDocumentWithWriterService {
 
+    private static final int L_PARTITION_SIZE = 1000;
+
+    private static final String L_PRODUCTION_COUNTING_QUANTITIES_IN = "SELECT pcqIn FROM #orderSupplies_productionCountingQuantityInput AS pcqIn "
+            + "WHERE orderId IN (:orderIds)";
+
+    private static final String L_PRODUCTION_COUNTING_QUANTITIES_OUT = "SELECT pcqOut FROM #orderSupplies_productionCountingQuantityOutput AS pcqOut "
+            + "WHERE orderId IN (:orderIds)";
+
     @Autowired
     private TranslationService translationService;
 
@@ -85,40 +100,63 @@ public class WorkPlanPdfService extends PdfDocumentWithWriterService {
             throws DocumentException {
 
         GroupingContainer groupingContainer = groupingContainerFactory.create(workPlan, locale);
-        for (Entity order : orders(workPlan)) {
-            for (Entity operationComponent : operationComponents(technology(order))) {
-                List<Entity> productionCountingQuantitiesIn = getProductionCountingQuantitiesIn(order, operationComponent);
-                List<Entity> productionCountingQuantitiesOut = getProductionCountingQuantitiesOut(order, operationComponent);
-                groupingContainer.add(order, operationComponent, productionCountingQuantitiesIn, productionCountingQuantitiesOut);
-            }
-        }
+
+        addOperationComponents(groupingContainer, orders(workPlan));
 
         workPlanPdf.print(writer, groupingContainer, workPlan, document, locale);
 
     }
 
-    public List<Entity> getProductionCountingQuantitiesOut(Entity order, Entity operationComponent) {
-        StringBuilder query = new StringBuilder();
-        query.append("SELECT pcqOut FROM #orderSupplies_productionCountingQuantityOutput AS pcqOut ");
-        query.append("WHERE orderId = :orderId AND technologyOperationComponentId = :technologyOperationComponentId ");
+    /**
+     * Adds operation components of all orders to grouping container, production counting quantities of all orders are read
+     * with one query per direction.
+     */
+    public void addOperationComponents(final GroupingContainer groupingContainer, final List<Entity> orders) {
+        ListMultimap<String, Entity> productionCountingQuantitiesIn = getProductionCountingQuantities(orders,
+                L_PRODUCTION_COUNTING_QUANTITIES_IN);
+        ListMultimap<String, Entity> productionCountingQuantitiesOut = getProductionCountingQuantities(orders,
+                L_PRODUCTION_COUNTING_QUANTITIES_OUT);
+        Map<Long, List<Entity>> operationComponentsByTechnology = Maps.newHashMap();
+
+        for (Entity order : orders) {
+            Entity technology = technology(order);
+
+            List<Entity> operationComponents = operationComponentsByTechnology.computeIfAbsent(technology.getId(),
+                    technologyId -> operationComponents(technology));
 
-        return dataDefinitionService.get("orderSupplies", "productionCountingQuantityInput")
-                .find(query.toString())
-                .setParameter("orderId", order.getId().intValue())
-                .setParameter("technologyOperationComponentId", operationComponent.getId().intValue())
-                .list().getEntities();
+            for (Entity operationComponent : operationComponents) {
+                String key = key(order.getId(), operationComponent.getId());
+
+                groupingContainer.add(order, operationComponent, Lists.newArrayList(productionCountingQuantitiesIn.get(key)),
+                        Lists.newArrayList(productionCountingQuantitiesOut.get(key)));
+            }
+        }
     }
 
-    public List<Entity> getProductionCountingQuantitiesIn(Entity order, Entity operationComponent) {
-        StringBuilder query = new StringBuilder();
-        query.append("SELECT pcqIn FROM #orderSupplies_productionCountingQuantityInput AS pcqIn ");
-        query.append("WHERE orderId = :orderId AND technologyOperationComponentId = :technologyOperationComponentId ");
+    private ListMultimap<String, Entity> getProductionCountingQuantities(final List<Entity> orders, final String query) {
+        ListMultimap<String, Entity> productionCountingQuantities = ArrayListMultimap.create();
+
+        List<Integer> orderIds = orders.stream().map(order -> order.getId().intValue()).collect(Collectors.toList());
+
+        for (List<Integer> partition : Lists.partition(orderIds, L_PARTITION_SIZE)) {
+            List<Entity> entities = dataDefinitionService.get("orderSupplies", "productionCountingQuantityInput").find(query)
+                    .setParameterList("orderIds", partition).list().getEntities();
+
+            for (Entity entity : entities) {
+                Integer operationComponentId = entity.getIntegerField("technologyOperationComponentId");
+
+                if (Objects.nonNull(operationComponentId)) {
+                    productionCountingQuantities.put(key(entity.getIntegerField("orderId").longValue(),
+                            operationComponentId.longValue()), entity);
+                }
+            }
+        }
+
+        return productionCountingQuantities;
+    }
 
-        return dataDefinitionService.get("orderSupplies", "productionCountingQuantityInput")
-                .find(query.toString())
-                .setParameter("orderId", order.getId().intValue())
-                .setParameter("technologyOperationComponentId", operationComponent.getId().intValue())
-                .list().getEntities();
+    private String key(final Long orderId, final Long operationComponentId) {
+        return orderId + "_" + operationComponentId;
     }
 
     private List<Entity> operationComponents(Entity technology) {